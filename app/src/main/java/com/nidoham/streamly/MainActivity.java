@@ -1,36 +1,75 @@
 package com.nidoham.streamly;
 
+import androidx.activity.OnBackPressedCallback;
 import androidx.annotation.NonNull;
 import androidx.appcompat.app.AppCompatActivity;
-import androidx.viewpager2.widget.ViewPager2;
+import androidx.fragment.app.Fragment;
 import androidx.lifecycle.ViewModelProvider;
 import com.nidoham.streamly.fragments.adapter.FragmentContainerAdapter;
 import com.nidoham.streamly.databinding.ActivityMainBinding;
+import com.nidoham.streamly.fragments.LibraryFragment;
 import com.google.android.material.bottomnavigation.BottomNavigationView;
+import android.content.Context;
+import android.content.res.Configuration;
 import android.os.Bundle;
+import android.util.Log;
+import android.util.TypedValue;
+import android.view.Choreographer;
+import android.view.MotionEvent;
 import android.view.View;
-import androidx.coordinatorlayout.widget.CoordinatorLayout;
+import android.view.ViewGroup;
+import android.view.inputmethod.EditorInfo;
+import android.view.inputmethod.InputMethodManager;
 import android.os.Handler;
 import android.os.Looper;
+import java.io.File;
+import com.nidoham.streamly.inflate.ViewPreinflater;
+import com.nidoham.streamly.library.Library;
+import com.nidoham.streamly.memory.MemoryCoordinator;
+import com.nidoham.streamly.memory.MemoryTier;
+import com.nidoham.streamly.metrics.JankMonitor;
+import com.nidoham.streamly.metrics.TabSwitchTracer;
+import com.nidoham.streamly.search.Search;
+import com.nidoham.streamly.search.Suggestion;
+import com.nidoham.streamly.search.SuggestionAdapter;
+import com.nidoham.streamly.task.Tasks;
 import com.nidoham.streamly.system.SystemControl;
+import com.nidoham.streamly.startup.StartupTasks;
+import com.nidoham.streamly.tabs.ShowHideTabHost;
+import com.nidoham.streamly.tabs.TabPrewarmer;
+import com.nidoham.streamly.tabs.TabUsageStats;
 
 public class MainActivity extends AppCompatActivity {
 
+    private static final String TAG = "MainActivity";
+
+    // Create only the selected tab at cold start and prewarm the rest while idle
+    private static final boolean LAZY_TABS = true;
+    private static final int SUGGESTION_ROWS = 8;
+
     private ActivityMainBinding binding;
-    private ViewPager2 viewPager;
     private BottomNavigationView bottomNavigationView;
-    private FragmentContainerAdapter fragmentAdapter;
-    private ViewPager2.OnPageChangeCallback pageChangeCallback;
+    private ShowHideTabHost tabHost;
     private Handler mainHandler;
+    private TabUsageStats tabUsageStats;
+    private TabPrewarmer tabPrewarmer;
+    private long lastTouchUpNanos = 0;
     
     // State management
     private int currentPosition = 0;
-    private boolean isNavigationInProgress = false;
+    private boolean isPlayerMode = false;
+    private OnBackPressedCallback exitPlayerModeCallback;
+    private OnBackPressedCallback exitSearchModeCallback;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
-        binding = ActivityMainBinding.inflate(getLayoutInflater());
+        // Use the tree built during the splash when it matches this configuration
+        View preinflated = ViewPreinflater.getInstance().take(R.layout.activity_main, this);
+        binding = preinflated != null
+            ? ActivityMainBinding.bind(preinflated)
+            : ActivityMainBinding.inflate(getLayoutInflater());
+        Log.d(TAG, "Main layout pre-inflation " + ViewPreinflater.getInstance().report());
         View view = binding.getRoot();
         setContentView(view);
         
@@ -40,125 +79,286 @@ public class MainActivity extends AppCompatActivity {
         // Restore state if available
         if (savedInstanceState != null) {
             currentPosition = savedInstanceState.getInt("current_position", 0);
+            isPlayerMode = savedInstanceState.getBoolean("player_mode", false);
+        }
+        
+        tabUsageStats = new TabUsageStats(
+            getSharedPreferences(StartupTasks.PREFERENCES_NAME, Context.MODE_PRIVATE),
+            FragmentContainerAdapter.FRAGMENT_COUNT
+        );
+        if (savedInstanceState == null) {
+            tabUsageStats.recordOpen(currentPosition);
         }
         
         initializeViews();
-        setupFragmentAdapter();
+        setupTabHost(savedInstanceState);
         setupBottomNavigation();
+        setupSearch();
+        
+        if (LAZY_TABS) {
+            scheduleTabPrewarming();
+        }
         
-        // Set initial position after all setup is complete
-        mainHandler.post(() -> {
-            if (viewPager != null && !isFinishing()) {
-                viewPager.setCurrentItem(currentPosition, false);
-                bottomNavigationView.setSelectedItemId(
-                    FragmentContainerAdapter.getMenuItemForPosition(currentPosition)
-                );
+        // Back leaves player mode before it leaves the activity
+        exitPlayerModeCallback = new OnBackPressedCallback(isPlayerMode) {
+            @Override
+            public void handleOnBackPressed() {
+                setPlayerMode(false);
             }
-        });
+        };
+        getOnBackPressedDispatcher().addCallback(this, exitPlayerModeCallback);
+        if (isPlayerMode) {
+            applyPlayerMode();
+        }
     }
 
     /**
-     * Initialize view components and create ViewPager2 with proper configuration
+     * Initialize view components
      */
     private void initializeViews() {
         bottomNavigationView = binding.navigation;
+    }
+
+    /**
+     * Hosts the tabs directly in the layout's FragmentContainerView and shows the restored tab.
+     * Only the selected tab is created here, the others are built on first use or prewarmed while idle.
+     */
+    private void setupTabHost(Bundle savedInstanceState) {
+        tabHost = new ShowHideTabHost(this, binding.content.getId(), new FragmentContainerAdapter());
+        tabHost.restoreState(savedInstanceState);
+        MemoryCoordinator.getInstance().register("tab_views", MemoryTier.OFFSCREEN_VIEWS, tabHost);
         
-        // Create ViewPager2 with optimized settings
-        viewPager = new ViewPager2(this);
-        viewPager.setId(View.generateViewId());
-        viewPager.setOffscreenPageLimit(ViewPager2.OFFSCREEN_PAGE_LIMIT_DEFAULT);
-        viewPager.setSaveEnabled(true);
-        
-        // Configure layout parameters for proper positioning
-        CoordinatorLayout.LayoutParams layoutParams = new CoordinatorLayout.LayoutParams(
-            CoordinatorLayout.LayoutParams.MATCH_PARENT,
-            CoordinatorLayout.LayoutParams.MATCH_PARENT
+        showTab(currentPosition);
+    }
+
+    /**
+     * Switches the visible tab synchronously and notifies the instrumentation
+     * @param position The tab to show
+     */
+    private void showTab(int position) {
+        // Selection is reported first because the fragment resumes inside showTab
+        TabSwitchTracer.getInstance().onPageSelected(position);
+        tabHost.showTab(position);
+        // The host refuses to switch after state is saved, so follow whatever it actually shows
+        currentPosition = tabHost.getCurrentPosition();
+        JankMonitor.getInstance().setActiveTab(currentPosition);
+    }
+
+    /**
+     * Starts idle-time prewarming of the other tabs once the first frame has been drawn,
+     * most frequently opened tabs first
+     */
+    private void scheduleTabPrewarming() {
+        tabPrewarmer = new TabPrewarmer(
+            position -> tabHost != null && !isFinishing() && tabHost.prewarm(position, this),
+            tabUsageStats.getPrewarmOrder(currentPosition)
         );
-        layoutParams.setBehavior(new com.google.android.material.appbar.AppBarLayout.ScrollingViewBehavior());
-        viewPager.setLayoutParams(layoutParams);
-        
-        // Replace FragmentContainerView with ViewPager2 in layout hierarchy
-        CoordinatorLayout rootLayout = (CoordinatorLayout) binding.getRoot();
-        int contentIndex = rootLayout.indexOfChild(binding.content);
-        rootLayout.removeView(binding.content);
-        rootLayout.addView(viewPager, contentIndex);
+        // Frame callbacks run before traversal, so the posted start lands after the first frame
+        Choreographer.getInstance().postFrameCallback(frameTimeNanos -> {
+            if (mainHandler != null && tabPrewarmer != null) {
+                mainHandler.post(() -> {
+                    if (tabPrewarmer != null) {
+                        tabPrewarmer.start();
+                    }
+                });
+            }
+        });
+    }
+
+    @Override
+    public boolean dispatchTouchEvent(MotionEvent event) {
+        if (event.getActionMasked() == MotionEvent.ACTION_UP) {
+            // Event times use the same monotonic clock as System.nanoTime()
+            lastTouchUpNanos = event.getEventTime() * 1_000_000L;
+        }
+        return super.dispatchTouchEvent(event);
     }
 
     /**
-     * Configure fragment adapter with memory optimization settings
+     * Uses the touch that triggered the selection so input dispatch is part of the measured latency
      */
-    private void setupFragmentAdapter() {
-        if (fragmentAdapter != null) {
-            fragmentAdapter.clearCache();
+    private long getTapTimeNanos() {
+        long now = System.nanoTime();
+        return now - lastTouchUpNanos < 500_000_000L ? lastTouchUpNanos : now;
+    }
+
+    @Override
+    public void onUserInteraction() {
+        super.onUserInteraction();
+        // Never compete with the user for the main thread
+        if (tabPrewarmer != null) {
+            tabPrewarmer.cancel();
         }
-        
-        fragmentAdapter = new FragmentContainerAdapter(this);
-        viewPager.setAdapter(fragmentAdapter);
-        
-        // Disable user input to control navigation exclusively through bottom nav
-        viewPager.setUserInputEnabled(false);
-        
-        // Configure page change callback with null checks and state management
-        pageChangeCallback = new ViewPager2.OnPageChangeCallback() {
-            @Override
-            public void onPageScrollStateChanged(int state) {
-                super.onPageScrollStateChanged(state);
-                isNavigationInProgress = (state != ViewPager2.SCROLL_STATE_IDLE);
-            }
-            
-            @Override
-            public void onPageSelected(int position) {
-                super.onPageSelected(position);
-                if (!isFinishing() && !isDestroyed()) {
-                    currentPosition = position;
-                    int menuItemId = FragmentContainerAdapter.getMenuItemForPosition(position);
-                    
-                    // Update bottom navigation selection on main thread
-                    mainHandler.post(() -> {
-                        if (bottomNavigationView != null && !isNavigationInProgress) {
-                            bottomNavigationView.setSelectedItemId(menuItemId);
-                        }
-                    });
-                }
-            }
-        };
-        
-        viewPager.registerOnPageChangeCallback(pageChangeCallback);
     }
 
     /**
      * Configure bottom navigation with proper state management and error handling
      */
     private void setupBottomNavigation() {
+        // Reflect the restored tab before listening so the initial selection is not treated as a tap
+        bottomNavigationView.setSelectedItemId(FragmentContainerAdapter.getMenuItemForPosition(currentPosition));
+        
         bottomNavigationView.setOnItemSelectedListener(item -> {
-            if (isFinishing() || isDestroyed() || isNavigationInProgress) {
+            if (isFinishing() || isDestroyed()) {
                 return false;
             }
             
             int position = FragmentContainerAdapter.getPositionForMenuItem(item.getItemId());
             
             // Only navigate if position is different from current
-            if (position != currentPosition && viewPager != null) {
-                isNavigationInProgress = true;
-                currentPosition = position;
-                
-                // Use handler to ensure UI thread execution
-                mainHandler.post(() -> {
-                    if (viewPager != null && !isFinishing()) {
-                        viewPager.setCurrentItem(position, false);
-                        isNavigationInProgress = false;
-                    }
-                });
+            if (position != currentPosition && tabHost != null) {
+                tabUsageStats.recordOpen(position);
+                TabSwitchTracer.getInstance().onTabTapped(position, getTapTimeNanos());
+                showTab(position);
             }
             
             return true;
         });
     }
 
+    /**
+     * The search button swaps the title for an input whose drop-down is filled from the suggestion
+     * index on every keystroke
+     */
+    private void setupSearch() {
+        binding.searchInput.setAdapter(new SuggestionAdapter(this, Search.getSuggestions(this), SUGGESTION_ROWS));
+        binding.search.setOnClickListener(v -> setSearchMode(true));
+        binding.searchInput.setOnItemClickListener((parent, itemView, position, id) ->
+            submitSearch(((Suggestion) parent.getItemAtPosition(position)).getText()));
+        binding.searchInput.setOnEditorActionListener((v, actionId, event) -> {
+            if (actionId != EditorInfo.IME_ACTION_SEARCH) {
+                return false;
+            }
+            submitSearch(v.getText().toString());
+            return true;
+        });
+        exitSearchModeCallback = new OnBackPressedCallback(false) {
+            @Override
+            public void handleOnBackPressed() {
+                setSearchMode(false);
+            }
+        };
+        getOnBackPressedDispatcher().addCallback(this, exitSearchModeCallback);
+    }
+
+    private void setSearchMode(boolean enabled) {
+        if (binding == null) {
+            return;
+        }
+        binding.title.setVisibility(enabled ? View.GONE : View.VISIBLE);
+        binding.searchInput.setVisibility(enabled ? View.VISIBLE : View.GONE);
+        exitSearchModeCallback.setEnabled(enabled);
+        InputMethodManager keyboard = (InputMethodManager) getSystemService(Context.INPUT_METHOD_SERVICE);
+        if (enabled) {
+            binding.searchInput.requestFocus();
+            keyboard.showSoftInput(binding.searchInput, InputMethodManager.SHOW_IMPLICIT);
+        } else {
+            binding.searchInput.dismissDropDown();
+            binding.searchInput.setText(null);
+            keyboard.hideSoftInputFromWindow(binding.searchInput.getWindowToken(), 0);
+        }
+    }
+
+    /**
+     * Keeps the query so it ranks first next time and shows what the library holds for it. There are
+     * no online results yet, so the offline library index is the results screen.
+     */
+    private void submitSearch(String query) {
+        String trimmed = query.trim();
+        setSearchMode(false);
+        if (trimmed.isEmpty() || tabHost == null) {
+            return;
+        }
+        Search.submitQuery(this, trimmed);
+        // Selecting the item runs the navigation listener, which shows the tab synchronously
+        bottomNavigationView.setSelectedItemId(
+            FragmentContainerAdapter.getMenuItemForPosition(FragmentContainerAdapter.LIBRARY_POSITION));
+        Fragment library = getSupportFragmentManager().findFragmentByTag(
+            FragmentContainerAdapter.getTagForPosition(FragmentContainerAdapter.LIBRARY_POSITION));
+        if (library instanceof LibraryFragment) {
+            ((LibraryFragment) library).showSearchResults(trimmed);
+        }
+    }
+
+    /**
+     * Orientation and screen size changes are declared in the manifest, so the existing
+     * view hierarchy, tab host and fragments are kept and only size-dependent values are refreshed
+     */
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        super.onConfigurationChanged(newConfig);
+        if (binding == null) {
+            return;
+        }
+        updateToolbarHeight();
+        SystemControl.handleOrientationChange(this);
+        if (isPlayerMode) {
+            SystemControl.enableImmersiveMode(this);
+        }
+    }
+
+    /**
+     * Re-resolves ?attr/actionBarSize, which differs between portrait and landscape
+     * but is not reapplied to an existing toolbar without recreation
+     */
+    private void updateToolbarHeight() {
+        TypedValue value = new TypedValue();
+        if (!getTheme().resolveAttribute(androidx.appcompat.R.attr.actionBarSize, value, true)) {
+            return;
+        }
+        int height = TypedValue.complexToDimensionPixelSize(value.data, getResources().getDisplayMetrics());
+        ViewGroup.LayoutParams params = binding.toolbar.getLayoutParams();
+        if (params != null && params.height != height) {
+            params.height = height;
+            binding.toolbar.setLayoutParams(params);
+        }
+    }
+
+    /**
+     * Switches between the tabbed UI and fullscreen player mode without rebuilding any views
+     * @param enabled True to hide the app chrome and system bars for media playback
+     */
+    public void setPlayerMode(boolean enabled) {
+        if (isPlayerMode == enabled || binding == null) {
+            return;
+        }
+        isPlayerMode = enabled;
+        applyPlayerMode();
+    }
+
+    public boolean isPlayerMode() {
+        return isPlayerMode;
+    }
+
+    private void applyPlayerMode() {
+        int chromeVisibility = isPlayerMode ? View.GONE : View.VISIBLE;
+        binding.appBar.setVisibility(chromeVisibility);
+        bottomNavigationView.setVisibility(chromeVisibility);
+        exitPlayerModeCallback.setEnabled(isPlayerMode);
+        if (isPlayerMode) {
+            SystemControl.enableImmersiveMode(this);
+        } else {
+            SystemControl.disableImmersiveMode(this);
+        }
+    }
+
     @Override
     protected void onSaveInstanceState(@NonNull Bundle outState) {
         super.onSaveInstanceState(outState);
         outState.putInt("current_position", currentPosition);
+        outState.putBoolean("player_mode", isPlayerMode);
+        if (tabHost != null) {
+            tabHost.saveState(outState);
+        }
+    }
+
+    @Override
+    protected void onStart() {
+        super.onStart();
+        // Undo any retention trim applied while the UI was hidden
+        if (tabHost != null) {
+            tabHost.restoreRetention();
+        }
     }
 
     @Override
@@ -168,26 +368,33 @@ public class MainActivity extends AppCompatActivity {
         if (mainHandler != null) {
             mainHandler.removeCallbacksAndMessages(null);
         }
+        // The process may be killed any time after this, so resume points must reach the disk now
+        Library.getCheckpointer(this).flush();
+    }
+
+    @Override
+    protected void onStop() {
+        super.onStop();
+        TabSwitchTracer.getInstance().dumpAsync(new File(getFilesDir(), "metrics/tab_switch_latency.txt"));
+        Log.d(TAG, "Background tasks\n" + Tasks.getScheduler().report());
     }
 
     @Override
     protected void onDestroy() {
         super.onDestroy();
+        // Positions reported since onPause, e.g. by a player still stopping, would otherwise wait for the timer
+        Library.getCheckpointer(this).flush();
         
         // Comprehensive cleanup to prevent memory leaks
-        if (pageChangeCallback != null && viewPager != null) {
-            viewPager.unregisterOnPageChangeCallback(pageChangeCallback);
-            pageChangeCallback = null;
+        if (tabPrewarmer != null) {
+            tabPrewarmer.cancel();
+            tabPrewarmer = null;
         }
         
-        if (fragmentAdapter != null) {
-            fragmentAdapter.clearCache();
-            fragmentAdapter = null;
-        }
-        
-        if (viewPager != null) {
-            viewPager.setAdapter(null);
-            viewPager = null;
+        if (tabHost != null) {
+            MemoryCoordinator.getInstance().unregister(tabHost);
+            tabHost.clear();
+            tabHost = null;
         }
         
         if (mainHandler != null) {
@@ -201,14 +408,4 @@ public class MainActivity extends AppCompatActivity {
             binding = null;
         }
     }
-
-    @Override
-    public void onLowMemory() {
-        super.onLowMemory();
-        // Clear fragment cache during low memory conditions
-        if (fragmentAdapter != null) {
-            fragmentAdapter.clearCache();
-        }
-        System.gc(); // Suggest garbage collection
-    }
 }
\ No newline at end of file
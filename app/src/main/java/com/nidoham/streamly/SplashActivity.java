@@ -4,25 +4,66 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 
 import androidx.appcompat.app.AppCompatActivity;
+import com.nidoham.streamly.startup.AppStartup;
+import com.nidoham.streamly.startup.SplashGate;
 
 public class SplashActivity extends AppCompatActivity {
 
-    private static final int SPLASH_DELAY = 2000; // 2 seconds
+    private Handler handler;
+    private SplashGate gate;
+    private boolean launched = false;
+
+    private final Runnable criticalReadyCallback = this::onStartupReady;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
         setContentView(R.layout.activity_splash);
 
-        // Delay then launch MainActivity
-        new Handler(Looper.getMainLooper()).postDelayed(() -> {
-            launcher(true);
-        }, SPLASH_DELAY);
+        handler = new Handler(Looper.getMainLooper());
+        int minDisplayMs = getResources().getInteger(R.integer.splash_min_display_ms);
+        int maxDisplayMs = getResources().getInteger(R.integer.splash_max_display_ms);
+        SplashGate.Scheduler scheduler = new SplashGate.Scheduler() {
+            @Override
+            public void postDelayed(Runnable action, long delayMillis) {
+                handler.postDelayed(action, delayMillis);
+            }
+
+            @Override
+            public void cancel(Runnable action) {
+                handler.removeCallbacks(action);
+            }
+        };
+        gate = new SplashGate(scheduler, SystemClock::uptimeMillis, minDisplayMs, maxDisplayMs,
+            () -> launcher(true));
+
+        // Hand off as soon as critical initializers are done, but never later than the max display time
+        AppStartup.start(this);
+        gate.start();
+        AppStartup.whenCriticalReady(criticalReadyCallback);
+    }
+
+    private void onStartupReady() {
+        gate.onCriticalReady();
+    }
+
+    @Override
+    protected void onDestroy() {
+        super.onDestroy();
+        AppStartup.removeCriticalCallback(criticalReadyCallback);
+        if (handler != null) {
+            handler.removeCallbacksAndMessages(null);
+        }
     }
 
     private void launcher(final boolean mode) {
+        if (launched || isFinishing()) {
+            return;
+        }
+        launched = true;
     	if(mode) {
     		Intent intent = new Intent(SplashActivity.this, MainActivity.class);
             startActivity(intent);
@@ -35,4 +76,4 @@ public class SplashActivity extends AppCompatActivity {
             finish(); // close SplashActivity
         }
     }
-}
\ No newline at end of file
+}
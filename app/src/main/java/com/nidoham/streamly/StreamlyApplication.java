@@ -0,0 +1,25 @@
+package com.nidoham.streamly;
+
+import android.app.Application;
+import android.content.pm.ApplicationInfo;
+import com.nidoham.streamly.memory.MemoryCoordinator;
+import com.nidoham.streamly.metrics.JankMonitor;
+import com.nidoham.streamly.startup.AppStartup;
+
+public class StreamlyApplication extends Application {
+
+    @Override
+    public void onCreate() {
+        super.onCreate();
+        // Kick off initializers as early as possible so the splash screen only waits for what is left
+        AppStartup.start(this);
+        // Caches are trimmed in tiers on every onTrimMemory level instead of only on onLowMemory
+        registerComponentCallbacks(MemoryCoordinator.getInstance());
+        
+        // Frame monitoring is cheap enough for production; stack sampling stays debug-only
+        JankMonitor.getInstance().install(this);
+        if ((getApplicationInfo().flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0) {
+            JankMonitor.getInstance().setStackSamplingEnabled(true);
+        }
+    }
+}
@@ -0,0 +1,182 @@
+package com.nidoham.streamly.data;
+
+import com.nidoham.streamly.memory.TrimmableCache;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Thread-safe LRU cache bounded by the total size of its values in bytes rather than entry count.
+ * Callers supply each value's size on insertion. Subclasses can reuse evicted values via
+ * {@link #onEvicted(Object, Object)}, which is called outside the cache lock.
+ * @param <K> Key type
+ * @param <V> Value type
+ */
+public class ByteLruCache<K, V> implements TrimmableCache {
+
+    private static final class Entry<V> {
+        final V value;
+        final long sizeBytes;
+
+        Entry(V value, long sizeBytes) {
+            this.value = value;
+            this.sizeBytes = sizeBytes;
+        }
+    }
+
+    private final long maxBytes;
+    // Access order, least recently used first
+    private final LinkedHashMap<K, Entry<V>> map = new LinkedHashMap<>(16, 0.75f, true);
+    private long sizeBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param maxBytes Upper bound on the summed sizes of all values
+     */
+    public ByteLruCache(long maxBytes) {
+        this.maxBytes = Math.max(1, maxBytes);
+    }
+
+    public V get(K key) {
+        synchronized (this) {
+            Entry<V> entry = map.get(key);
+            if (entry != null) {
+                hits++;
+                return entry.value;
+            }
+            misses++;
+            return null;
+        }
+    }
+
+    /**
+     * Looks up a value without counting a hit or miss, e.g. for bookkeeping checks
+     */
+    public synchronized V peek(K key) {
+        Entry<V> entry = map.get(key);
+        return entry != null ? entry.value : null;
+    }
+
+    /**
+     * Inserts or replaces a value. Values larger than the whole cache are not stored.
+     * @param key Key of the value
+     * @param value The value
+     * @param valueBytes Size the value counts against the limit
+     * @return True if the value was stored
+     */
+    public boolean put(K key, V value, long valueBytes) {
+        if (valueBytes > maxBytes) {
+            remove(key);
+            return false;
+        }
+        Map<K, V> evicted;
+        Entry<V> previous;
+        synchronized (this) {
+            previous = map.put(key, new Entry<>(value, valueBytes));
+            sizeBytes += valueBytes;
+            if (previous != null) {
+                sizeBytes -= previous.sizeBytes;
+            }
+            evicted = evictTo(maxBytes);
+        }
+        if (previous != null && previous.value != value) {
+            onEvicted(key, previous.value);
+        }
+        dispatchEvicted(evicted);
+        return true;
+    }
+
+    public V remove(K key) {
+        Entry<V> entry;
+        synchronized (this) {
+            entry = map.remove(key);
+            if (entry == null) {
+                return null;
+            }
+            sizeBytes -= entry.sizeBytes;
+        }
+        onEvicted(key, entry.value);
+        return entry.value;
+    }
+
+    private Map<K, V> evictTo(long limit) {
+        Map<K, V> evicted = null;
+        Iterator<Map.Entry<K, Entry<V>>> iterator = map.entrySet().iterator();
+        while (sizeBytes > limit && iterator.hasNext()) {
+            Map.Entry<K, Entry<V>> eldest = iterator.next();
+            iterator.remove();
+            sizeBytes -= eldest.getValue().sizeBytes;
+            evictions++;
+            if (evicted == null) {
+                evicted = new LinkedHashMap<>();
+            }
+            evicted.put(eldest.getKey(), eldest.getValue().value);
+        }
+        return evicted;
+    }
+
+    private void dispatchEvicted(Map<K, V> evicted) {
+        if (evicted == null) {
+            return;
+        }
+        for (Map.Entry<K, V> entry : evicted.entrySet()) {
+            onEvicted(entry.getKey(), entry.getValue());
+        }
+    }
+
+    /**
+     * Called after a value leaves the cache through eviction, replacement, removal or trimming
+     * @param key Key of the value
+     * @param value The value that is no longer cached
+     */
+    protected void onEvicted(K key, V value) {
+    }
+
+    @Override
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    @Override
+    public void trimToSize(long maxBytes) {
+        Map<K, V> evicted;
+        synchronized (this) {
+            evicted = evictTo(Math.max(0, maxBytes));
+        }
+        dispatchEvicted(evicted);
+    }
+
+    public void clear() {
+        trimToSize(0);
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    public synchronized int getEntryCount() {
+        return map.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "ByteLruCache[entries=%d, bytes=%d/%d, hits=%d, misses=%d, evictions=%d]",
+            map.size(), sizeBytes, maxBytes, hits, misses, evictions);
+    }
+}
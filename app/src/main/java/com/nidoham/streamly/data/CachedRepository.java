@@ -0,0 +1,302 @@
+package com.nidoham.streamly.data;
+
+import com.nidoham.streamly.metrics.LatencyHistogram;
+import java.io.IOException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.zip.CRC32;
+
+/**
+ * Two-tier read-through cache in front of a slow fetch.
+ * Lookups go memory, then disk, then the fetcher. Entries older than the TTL are still served,
+ * but trigger a background revalidation whose result replaces them and is announced to listeners
+ * when the content changed. Concurrent fetches for one key share a single call to the fetcher.
+ * {@link #get(String, Fetcher)} blocks on disk and network, so it must be called off the main thread.
+ * @param <V> Value type
+ */
+public class CachedRepository<V> {
+
+    public interface Fetcher<V> {
+        V fetch() throws Exception;
+    }
+
+    public interface Listener<V> {
+        /**
+         * Called on the revalidation thread when a background fetch replaced a value with different content
+         */
+        void onRevalidated(String key, V value);
+    }
+
+    public enum Source {
+        MEMORY, DISK, NETWORK
+    }
+
+    public static final class Result<V> {
+        private final V value;
+        private final Source source;
+        private final boolean stale;
+
+        Result(V value, Source source, boolean stale) {
+            this.value = value;
+            this.source = source;
+            this.stale = stale;
+        }
+
+        public V getValue() {
+            return value;
+        }
+
+        public Source getSource() {
+            return source;
+        }
+
+        /**
+         * @return True if the value is past its TTL and a revalidation was started
+         */
+        public boolean isStale() {
+            return stale;
+        }
+    }
+
+    private static final class Entry<V> {
+        final V value;
+        final long writtenAtMillis;
+        final long contentHash;
+
+        Entry(V value, long writtenAtMillis, long contentHash) {
+            this.value = value;
+            this.writtenAtMillis = writtenAtMillis;
+            this.contentHash = contentHash;
+        }
+    }
+
+    private final String name;
+    private final Codec<V> codec;
+    private final ByteLruCache<String, Entry<V>> memory;
+    private final DiskJournal disk;
+    private final long ttlMillis;
+    private final Executor revalidateExecutor;
+    private final LongSupplier wallClock;
+    private final Map<String, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+    private final CopyOnWriteArrayList<Listener<V>> listeners = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong memoryHits = new AtomicLong();
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong staleServed = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong fetchErrors = new AtomicLong();
+    private final AtomicLong diskErrors = new AtomicLong();
+    private final LatencyHistogram diskReadLatency = new LatencyHistogram();
+    private final LatencyHistogram fetchLatency = new LatencyHistogram();
+
+    /**
+     * @param name Name used in stats output
+     * @param codec Serialization for the disk tier; the encoded size is also the memory weight
+     * @param maxMemoryBytes Bound of the memory tier
+     * @param disk Disk tier, or null for memory only
+     * @param ttlMillis Age after which a value is stale and revalidated on access
+     * @param revalidateExecutor Background executor for revalidation fetches
+     * @param wallClock Wall clock in milliseconds, persisted with entries so it must survive restarts
+     */
+    public CachedRepository(String name, Codec<V> codec, long maxMemoryBytes, DiskJournal disk, long ttlMillis,
+                            Executor revalidateExecutor, LongSupplier wallClock) {
+        this.name = name;
+        this.codec = codec;
+        this.memory = new ByteLruCache<>(maxMemoryBytes);
+        this.disk = disk;
+        this.ttlMillis = ttlMillis;
+        this.revalidateExecutor = revalidateExecutor;
+        this.wallClock = wallClock;
+    }
+
+    public void addListener(Listener<V> listener) {
+        listeners.addIfAbsent(listener);
+    }
+
+    public void removeListener(Listener<V> listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Returns the cached value immediately if there is one, revalidating it in the background when stale,
+     * otherwise fetches it, joining a fetch already in flight for the same key
+     * @param key Cache key, also the disk key
+     * @param fetcher Loads the authoritative value
+     * @return The value and where it came from
+     * @throws Exception Whatever the fetcher threw, if nothing was cached
+     */
+    public Result<V> get(String key, Fetcher<V> fetcher) throws Exception {
+        long now = wallClock.getAsLong();
+        Entry<V> entry = memory.get(key);
+        Source source = Source.MEMORY;
+        if (entry == null) {
+            entry = readDisk(key, now);
+            source = Source.DISK;
+        }
+
+        if (entry != null) {
+            (source == Source.MEMORY ? memoryHits : diskHits).incrementAndGet();
+            boolean stale = now - entry.writtenAtMillis > ttlMillis;
+            if (stale) {
+                staleServed.incrementAndGet();
+                fetch(key, fetcher, revalidateExecutor, entry.contentHash);
+            }
+            return new Result<>(entry.value, source, stale);
+        }
+
+        misses.incrementAndGet();
+        // The caller is already off the main thread, so an uncontended fetch runs right here
+        CompletableFuture<V> future = fetch(key, fetcher, Runnable::run, 0);
+        try {
+            return new Result<>(future.get(), Source.NETWORK, false);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        }
+    }
+
+    /**
+     * Fetches regardless of what is cached, e.g. for pull to refresh, joining any fetch in flight
+     */
+    public CompletableFuture<V> refresh(String key, Fetcher<V> fetcher) {
+        Entry<V> entry = memory.get(key);
+        return fetch(key, fetcher, revalidateExecutor, entry != null ? entry.contentHash : 0);
+    }
+
+    private Entry<V> readDisk(String key, long now) {
+        if (disk == null) {
+            return null;
+        }
+        long start = System.nanoTime();
+        try {
+            DiskJournal.Record record = disk.get(key, now);
+            if (record == null) {
+                return null;
+            }
+            V value = codec.decode(record.getPayload());
+            Entry<V> entry = new Entry<>(value, record.getWrittenAtMillis(), hash(record.getPayload()));
+            memory.put(key, entry, record.getPayload().length);
+            return entry;
+        } catch (IOException e) {
+            // An unreadable entry is a miss, the fetch that follows overwrites it
+            diskErrors.incrementAndGet();
+            return null;
+        } finally {
+            diskReadLatency.recordNanos(System.nanoTime() - start);
+        }
+    }
+
+    private CompletableFuture<V> fetch(String key, Fetcher<V> fetcher, Executor executor, long previousHash) {
+        CompletableFuture<V> future = new CompletableFuture<>();
+        CompletableFuture<V> existing = inFlight.putIfAbsent(key, future);
+        if (existing != null) {
+            coalesced.incrementAndGet();
+            return existing;
+        }
+        try {
+            executor.execute(() -> runFetch(key, fetcher, future, previousHash));
+        } catch (RuntimeException e) {
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+        return future;
+    }
+
+    private void runFetch(String key, Fetcher<V> fetcher, CompletableFuture<V> future, long previousHash) {
+        long start = System.nanoTime();
+        try {
+            V value = fetcher.fetch();
+            fetchLatency.recordNanos(System.nanoTime() - start);
+            long contentHash = store(key, value);
+            inFlight.remove(key, future);
+            future.complete(value);
+            if (previousHash != 0 && previousHash != contentHash) {
+                for (Listener<V> listener : listeners) {
+                    listener.onRevalidated(key, value);
+                }
+            }
+        } catch (Exception e) {
+            fetchErrors.incrementAndGet();
+            inFlight.remove(key, future);
+            future.completeExceptionally(e);
+        }
+    }
+
+    private long store(String key, V value) throws IOException {
+        byte[] bytes = codec.encode(value);
+        long now = wallClock.getAsLong();
+        long contentHash = hash(bytes);
+        memory.put(key, new Entry<>(value, now, contentHash), bytes.length);
+        if (disk != null) {
+            try {
+                disk.put(key, bytes, now);
+            } catch (IOException e) {
+                // The memory tier still has it, the disk tier just misses next launch
+                diskErrors.incrementAndGet();
+            }
+        }
+        return contentHash;
+    }
+
+    /**
+     * CRC32 with the top bit set, so 0 can mean "nothing cached"
+     */
+    private static long hash(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue() | (1L << 32);
+    }
+
+    public void invalidate(String key) {
+        memory.remove(key);
+        if (disk != null) {
+            try {
+                disk.remove(key);
+            } catch (IOException e) {
+                diskErrors.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * @return The memory tier, for registration with the memory coordinator
+     */
+    public ByteLruCache<String, ?> getMemoryCache() {
+        return memory;
+    }
+
+    public long getMemoryHitCount() {
+        return memoryHits.get();
+    }
+
+    public long getDiskHitCount() {
+        return diskHits.get();
+    }
+
+    public long getMissCount() {
+        return misses.get();
+    }
+
+    public long getCoalescedCount() {
+        return coalesced.get();
+    }
+
+    public String report() {
+        long total = memoryHits.get() + diskHits.get() + misses.get();
+        return String.format(Locale.US,
+            "%s: requests=%d memoryHits=%d diskHits=%d misses=%d hitRate=%.0f%% stale=%d coalesced=%d "
+                + "fetchErrors=%d diskErrors=%d%n  memory %s%n  disk %s%n  diskRead %s%n  fetch %s",
+            name, total, memoryHits.get(), diskHits.get(), misses.get(),
+            total > 0 ? 100.0 * (memoryHits.get() + diskHits.get()) / total : 0.0,
+            staleServed.get(), coalesced.get(), fetchErrors.get(), diskErrors.get(),
+            memory, disk != null ? disk : "none", diskReadLatency.summary(), fetchLatency.summary());
+    }
+}
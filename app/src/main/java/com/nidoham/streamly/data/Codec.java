@@ -0,0 +1,14 @@
+package com.nidoham.streamly.data;
+
+import java.io.IOException;
+
+/**
+ * Converts cached values to and from the bytes stored on disk
+ * @param <V> Value type
+ */
+public interface Codec<V> {
+
+    byte[] encode(V value) throws IOException;
+
+    V decode(byte[] bytes) throws IOException;
+}
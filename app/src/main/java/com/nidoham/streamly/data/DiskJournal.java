@@ -0,0 +1,345 @@
+package com.nidoham.streamly.data;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Append-only key/value store on a single file.
+ * Every put or remove appends a checksummed record and only the in-memory index points at the
+ * latest one, so a write never modifies existing bytes. Opening scans the file, keeps the newest
+ * record per key and truncates a torn or corrupt tail. Once superseded records make up most of the
+ * file, or live data passes the size limit, it is rewritten with only live, unexpired entries and swapped
+ * in by rename. Trimming for size goes down to three quarters of the limit, so a full journal takes
+ * many puts between rewrites instead of rewriting on every one.
+ * The file is opened and indexed on first access, so constructing a journal does no I/O.
+ */
+public class DiskJournal implements Closeable {
+
+    public static final class Record {
+        private final byte[] payload;
+        private final long writtenAtMillis;
+
+        Record(byte[] payload, long writtenAtMillis) {
+            this.payload = payload;
+            this.writtenAtMillis = writtenAtMillis;
+        }
+
+        public byte[] getPayload() {
+            return payload;
+        }
+
+        public long getWrittenAtMillis() {
+            return writtenAtMillis;
+        }
+    }
+
+    private static final class Location {
+        final long offset;
+        final int keyLength;
+        final int payloadLength;
+        final long writtenAtMillis;
+
+        Location(long offset, int keyLength, int payloadLength, long writtenAtMillis) {
+            this.offset = offset;
+            this.keyLength = keyLength;
+            this.payloadLength = payloadLength;
+            this.writtenAtMillis = writtenAtMillis;
+        }
+
+        long recordLength() {
+            return HEADER_BYTES + keyLength + payloadLength + CHECKSUM_BYTES;
+        }
+    }
+
+    private static final int RECORD_MAGIC = 0x534A524E;
+    // magic, key length, written at, payload length (-1 for a removal)
+    private static final int HEADER_BYTES = 4 + 4 + 8 + 4;
+    private static final int CHECKSUM_BYTES = 4;
+    private static final int MAX_KEY_BYTES = 1024;
+    private static final int TOMBSTONE = -1;
+    private static final long MIN_COMPACTION_BYTES = 256 * 1024;
+    // Share of maxBytes kept when compacting for size
+    private static final float LOW_WATER_FRACTION = 0.75f;
+
+    private final File file;
+    private final long maxBytes;
+    private final long maxAgeMillis;
+    private final Map<String, Location> index = new HashMap<>();
+    private RandomAccessFile randomAccessFile;
+    private FileChannel channel;
+    private long endOffset;
+    private long liveBytes;
+
+    private long truncatedBytes = 0;
+    private long compactions = 0;
+
+    /**
+     * @param file Journal file, created with its parent directory on first access
+     * @param maxBytes Live data beyond this is dropped oldest first at compaction
+     * @param maxAgeMillis Entries older than this are never returned and are dropped at compaction
+     */
+    public DiskJournal(File file, long maxBytes, long maxAgeMillis) {
+        this.file = file;
+        this.maxBytes = maxBytes;
+        this.maxAgeMillis = maxAgeMillis;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (channel != null) {
+            return;
+        }
+        File parent = file.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create " + parent);
+        }
+        openChannel();
+        recover();
+    }
+
+    private void openChannel() throws IOException {
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+    }
+
+    /**
+     * Indexes valid records in order and cuts the file at the first one that fails validation
+     */
+    private void recover() throws IOException {
+        long size = channel.size();
+        long offset = 0;
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        while (offset + HEADER_BYTES + CHECKSUM_BYTES <= size) {
+            header.clear();
+            if (!readFully(header, offset)) {
+                break;
+            }
+            header.flip();
+            int magic = header.getInt();
+            int keyLength = header.getInt();
+            long writtenAt = header.getLong();
+            int payloadLength = header.getInt();
+            if (magic != RECORD_MAGIC || keyLength <= 0 || keyLength > MAX_KEY_BYTES || payloadLength < TOMBSTONE) {
+                break;
+            }
+            int bodyLength = keyLength + Math.max(0, payloadLength);
+            long recordEnd = offset + HEADER_BYTES + bodyLength + CHECKSUM_BYTES;
+            if (recordEnd > size) {
+                break;
+            }
+            ByteBuffer body = ByteBuffer.allocate(bodyLength + CHECKSUM_BYTES);
+            if (!readFully(body, offset + HEADER_BYTES)) {
+                break;
+            }
+            body.flip();
+            byte[] keyBytes = new byte[keyLength];
+            byte[] payload = new byte[Math.max(0, payloadLength)];
+            body.get(keyBytes).get(payload);
+            if (body.getInt() != checksum(keyLength, writtenAt, payloadLength, keyBytes, payload)) {
+                break;
+            }
+            String key = new String(keyBytes, StandardCharsets.UTF_8);
+            if (payloadLength == TOMBSTONE) {
+                unindex(key);
+            } else {
+                index(key, new Location(offset, keyLength, payloadLength, writtenAt));
+            }
+            offset = recordEnd;
+        }
+        if (offset < size) {
+            truncatedBytes += size - offset;
+            channel.truncate(offset);
+        }
+        endOffset = offset;
+    }
+
+    private boolean readFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private void index(String key, Location location) {
+        unindex(key);
+        index.put(key, location);
+        liveBytes += location.recordLength();
+    }
+
+    private void unindex(String key) {
+        Location previous = index.remove(key);
+        if (previous != null) {
+            liveBytes -= previous.recordLength();
+        }
+    }
+
+    /**
+     * @return The newest unexpired record for the key, or null
+     */
+    public synchronized Record get(String key, long nowMillis) throws IOException {
+        ensureOpen();
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        if (nowMillis - location.writtenAtMillis > maxAgeMillis) {
+            return null;
+        }
+        ByteBuffer payload = ByteBuffer.allocate(location.payloadLength);
+        if (!readFully(payload, location.offset + HEADER_BYTES + location.keyLength)) {
+            throw new IOException("Journal truncated under " + key);
+        }
+        return new Record(payload.array(), location.writtenAtMillis);
+    }
+
+    public synchronized void put(String key, byte[] payload, long writtenAtMillis) throws IOException {
+        ensureOpen();
+        Location location = append(key, payload, writtenAtMillis);
+        index(key, location);
+        compactIfNeeded(writtenAtMillis);
+    }
+
+    public synchronized void remove(String key) throws IOException {
+        ensureOpen();
+        if (index.containsKey(key)) {
+            append(key, null, 0);
+            unindex(key);
+        }
+    }
+
+    private Location append(String key, byte[] payload, long writtenAtMillis) throws IOException {
+        byte[] keyBytes = key.getBytes(StandardCharsets.UTF_8);
+        if (keyBytes.length == 0 || keyBytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Key must be 1 to " + MAX_KEY_BYTES + " bytes: " + key);
+        }
+        int payloadLength = payload == null ? TOMBSTONE : payload.length;
+        byte[] body = payload == null ? new byte[0] : payload;
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_BYTES + keyBytes.length + body.length + CHECKSUM_BYTES);
+        buffer.putInt(RECORD_MAGIC).putInt(keyBytes.length).putLong(writtenAtMillis).putInt(payloadLength);
+        buffer.put(keyBytes).put(body);
+        buffer.putInt(checksum(keyBytes.length, writtenAtMillis, payloadLength, keyBytes, body));
+        buffer.flip();
+
+        long offset = endOffset;
+        while (buffer.hasRemaining()) {
+            channel.write(buffer, offset + buffer.position());
+        }
+        endOffset += buffer.limit();
+        return new Location(offset, keyBytes.length, Math.max(0, payloadLength), writtenAtMillis);
+    }
+
+    private static int checksum(int keyLength, long writtenAt, int payloadLength, byte[] key, byte[] payload) {
+        CRC32 crc = new CRC32();
+        ByteBuffer fields = ByteBuffer.allocate(16);
+        fields.putInt(keyLength).putLong(writtenAt).putInt(payloadLength);
+        crc.update(fields.array());
+        crc.update(key);
+        crc.update(payload);
+        return (int) crc.getValue();
+    }
+
+    private void compactIfNeeded(long nowMillis) throws IOException {
+        if (liveBytes > maxBytes) {
+            compact(nowMillis, (long) (maxBytes * LOW_WATER_FRACTION));
+        } else if (endOffset > MIN_COMPACTION_BYTES && liveBytes * 2 < endOffset) {
+            compact(nowMillis, maxBytes);
+        }
+    }
+
+    /**
+     * Rewrites live entries into a new file, newest first until the size limit, then swaps it in
+     */
+    public synchronized void compact(long nowMillis) throws IOException {
+        compact(nowMillis, maxBytes);
+    }
+
+    private void compact(long nowMillis, long limitBytes) throws IOException {
+        ensureOpen();
+        List<Map.Entry<String, Location>> live = new ArrayList<>(index.entrySet());
+        live.sort((a, b) -> Long.compare(b.getValue().writtenAtMillis, a.getValue().writtenAtMillis));
+
+        File compacted = new File(file.getPath() + ".compact");
+        Map<String, Location> newIndex = new HashMap<>();
+        long written = 0;
+        try (RandomAccessFile output = new RandomAccessFile(compacted, "rw")) {
+            output.setLength(0);
+            FileChannel target = output.getChannel();
+            for (Map.Entry<String, Location> entry : live) {
+                Location location = entry.getValue();
+                long length = location.recordLength();
+                if (nowMillis - location.writtenAtMillis > maxAgeMillis || written + length > limitBytes) {
+                    continue;
+                }
+                long transferred = 0;
+                while (transferred < length) {
+                    transferred += channel.transferTo(location.offset + transferred, length - transferred, target);
+                }
+                newIndex.put(entry.getKey(), new Location(written, location.keyLength, location.payloadLength,
+                    location.writtenAtMillis));
+                written += length;
+            }
+            target.force(false);
+        }
+
+        channel.close();
+        randomAccessFile.close();
+        if (!compacted.renameTo(file)) {
+            openChannel();
+            throw new IOException("Cannot replace " + file);
+        }
+        openChannel();
+        index.clear();
+        index.putAll(newIndex);
+        liveBytes = written;
+        endOffset = written;
+        compactions++;
+    }
+
+    /**
+     * @return Keys of all live records, in no particular order
+     */
+    public synchronized List<String> getKeys() throws IOException {
+        ensureOpen();
+        return new ArrayList<>(index.keySet());
+    }
+
+    public synchronized int getEntryCount() {
+        return index.size();
+    }
+
+    public synchronized long getFileBytes() {
+        return endOffset;
+    }
+
+    public synchronized long getCompactionCount() {
+        return compactions;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (channel != null) {
+            channel.close();
+            randomAccessFile.close();
+            channel = null;
+            randomAccessFile = null;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "DiskJournal[entries=%d, live=%d, file=%d, compactions=%d, truncated=%d]",
+            index.size(), liveBytes, endOffset, compactions, truncatedBytes);
+    }
+}
@@ -0,0 +1,1061 @@
+package com.nidoham.streamly.data;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+/**
+ * Append-only record log for small, frequently rewritten records, with group commit.
+ * Writers append into an in-memory buffer and return at once; a writer thread swaps the buffer out
+ * and writes and forces it in one go once it is half full, the commit interval has passed or
+ * someone calls {@link #sync()}. Records therefore become durable in batches, and a crash loses at
+ * most the last commit interval.
+ *
+ * The index lives in primitive arrays: a 64-bit hash of the key maps to the record's offset, length
+ * and type. Keys are compared against the stored record on read, so a hash collision shows up as a
+ * missing record rather than a wrong one. Every record carries a CRC that is checked on each read.
+ *
+ * Recovery is bounded: the index is checkpointed every few megabytes of log, so opening loads the
+ * checkpoint and replays only the tail after it, through a read-only mapping, cutting the file at
+ * the first record that fails validation. {@link #verify()} rescans everything on request.
+ * Once dead records make up most of the file a task on the compaction executor rewrites the live
+ * ones into a new file while writes continue, then briefly stops writers to copy the tail and swap files.
+ */
+public final class RecordLog implements Closeable {
+
+    public static final class Entry {
+        private final String key;
+        private final int type;
+        private final byte[] value;
+
+        Entry(String key, int type, byte[] value) {
+            this.key = key;
+            this.type = type;
+            this.value = value;
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * @return Caller-defined type, 1 to 127
+         */
+        public int getType() {
+            return type;
+        }
+
+        public byte[] getValue() {
+            return value;
+        }
+    }
+
+    private static final String LOG_NAME = "records.log";
+    private static final String CHECKPOINT_NAME = "records.index";
+    private static final int FILE_MAGIC = 0x534C4F47;
+    private static final int CHECKPOINT_MAGIC = 0x534C4358;
+    private static final int VERSION = 1;
+    // magic, version, generation
+    private static final int FILE_HEADER_BYTES = 4 + 4 + 8;
+    private static final int RECORD_MAGIC = 0x52454331;
+    // magic, total length, CRC of everything after it, type, flags, key length
+    private static final int RECORD_HEADER_BYTES = 4 + 4 + 4 + 1 + 1 + 2;
+    private static final int FLAG_TOMBSTONE = 1;
+    private static final int MAX_KEY_BYTES = 1024;
+    private static final long MIN_COMPACTION_BYTES = 1024 * 1024;
+    private static final int MIN_INDEX_CAPACITY = 1024;
+    // Sorting by offset packs offset and slot into one long; 2^24 slots and 2^39 bytes of log are plenty
+    private static final int SLOT_BITS = 24;
+    private static final long SLOT_MASK = (1L << SLOT_BITS) - 1;
+
+    private final File directory;
+    private final File logFile;
+    private final File checkpointFile;
+    private final long commitIntervalNanos;
+    private final long checkpointIntervalBytes;
+    private final Thread writer;
+    private final Executor compactionExecutor;
+
+    // Everything below is guarded by this
+    private RandomAccessFile file;
+    private FileChannel channel;
+    private long generation;
+
+    // Appends go to active; the writer thread owns flushing while it is written out
+    private ByteBuffer active;
+    private ByteBuffer spare;
+    private ByteBuffer flushing;
+    private long activeBase;
+    private long flushingBase;
+    private long firstPendingNanos = 0;
+    private long durableEnd;
+    private long liveBytes;
+    private long lastCheckpointEnd;
+    private boolean syncRequested = false;
+    private boolean writesPaused = false;
+    private boolean compactionRequested = false;
+    // From the start of a requested compaction to the end of its checkpoint, awaited by close
+    private boolean compactionRunning = false;
+    private boolean compacting = false;
+    private boolean closed = false;
+    private IOException writeFailure;
+
+    // Open addressing with linear probing, hash 0 marks a free slot
+    private long[] hashes;
+    private long[] offsets;
+    private int[] lengths;
+    private byte[] types;
+    private int size;
+
+    private long appends = 0;
+    private long groupCommits = 0;
+    private long committedBytes = 0;
+    private long checkpoints = 0;
+    private long compactions = 0;
+    private long corruptReads = 0;
+    private long hashCollisions = 0;
+    private boolean recoveredFromCheckpoint;
+    private long replayedRecords;
+    private long replayedBytes;
+    private long truncatedBytes;
+    private long recoveryNanos;
+
+    private RecordLog(File directory, long commitIntervalMillis, int bufferBytes, long checkpointIntervalBytes,
+                      Executor compactionExecutor) {
+        this.directory = directory;
+        this.logFile = new File(directory, LOG_NAME);
+        this.checkpointFile = new File(directory, CHECKPOINT_NAME);
+        this.commitIntervalNanos = commitIntervalMillis * 1_000_000L;
+        this.checkpointIntervalBytes = checkpointIntervalBytes;
+        this.compactionExecutor = compactionExecutor;
+        active = ByteBuffer.allocate(bufferBytes);
+        spare = ByteBuffer.allocate(bufferBytes);
+        writer = new Thread(this::writeLoop, "record-log-writer");
+        writer.setDaemon(true);
+    }
+
+    /**
+     * Opens or creates the log, recovering from the last checkpoint and the records after it
+     * @param directory Holds the log and its index checkpoint
+     * @param commitIntervalMillis Longest a record waits in memory before it is written and forced
+     * @param bufferBytes Size of each of the two append buffers, also the largest record
+     * @param checkpointIntervalBytes Log growth after which the index is checkpointed, bounds recovery
+     * @param compactionExecutor Runs compactions once dead records dominate, normally the maintenance lane
+     */
+    public static RecordLog open(File directory, long commitIntervalMillis, int bufferBytes,
+                                 long checkpointIntervalBytes, Executor compactionExecutor) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        RecordLog log = new RecordLog(directory, commitIntervalMillis, bufferBytes, checkpointIntervalBytes,
+            compactionExecutor);
+        synchronized (log) {
+            log.recover();
+        }
+        log.writer.start();
+        return log;
+    }
+
+    private void recover() throws IOException {
+        long start = System.nanoTime();
+        file = new RandomAccessFile(logFile, "rw");
+        channel = file.getChannel();
+        if (channel.size() < FILE_HEADER_BYTES || !readFileHeader()) {
+            // Empty, or not a log at all; nothing in it can be trusted
+            truncatedBytes += channel.size();
+            channel.truncate(0);
+            generation = System.currentTimeMillis() ^ System.nanoTime();
+            writeFileHeader(channel, generation);
+            channel.force(false);
+        }
+        resetIndex(MIN_INDEX_CAPACITY);
+        long replayFrom = loadCheckpoint();
+        recoveredFromCheckpoint = replayFrom > 0;
+        if (replayFrom == 0) {
+            resetIndex(MIN_INDEX_CAPACITY);
+            liveBytes = 0;
+            replayFrom = FILE_HEADER_BYTES;
+        }
+        long end = replay(replayFrom);
+        if (end < channel.size()) {
+            truncatedBytes += channel.size() - end;
+            channel.truncate(end);
+            channel.force(false);
+        }
+        durableEnd = end;
+        activeBase = end;
+        lastCheckpointEnd = recoveredFromCheckpoint ? replayFrom : FILE_HEADER_BYTES;
+        recoveryNanos = System.nanoTime() - start;
+    }
+
+    private boolean readFileHeader() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        readFully(channel, header, 0);
+        header.flip();
+        if (header.getInt() != FILE_MAGIC || header.getInt() != VERSION) {
+            return false;
+        }
+        generation = header.getLong();
+        return true;
+    }
+
+    private static void writeFileHeader(FileChannel target, long generation) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(FILE_HEADER_BYTES);
+        header.putInt(FILE_MAGIC).putInt(VERSION).putLong(generation).flip();
+        while (header.hasRemaining()) {
+            target.write(header, header.position());
+        }
+    }
+
+    /**
+     * @return Log offset the checkpoint covers, or 0 if there is no usable one
+     */
+    private long loadCheckpoint() throws IOException {
+        if (!checkpointFile.isFile()) {
+            return 0;
+        }
+        ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(checkpointFile.toPath()));
+        if (data.remaining() < 40) {
+            return 0;
+        }
+        CRC32 crc = new CRC32();
+        crc.update(data.array(), 0, data.limit() - 4);
+        if ((int) crc.getValue() != data.getInt(data.limit() - 4)) {
+            return 0;
+        }
+        if (data.getInt() != CHECKPOINT_MAGIC || data.getInt() != VERSION || data.getLong() != generation) {
+            return 0;
+        }
+        long coveredEnd = data.getLong();
+        long checkpointLive = data.getLong();
+        int count = data.getInt();
+        if (coveredEnd < FILE_HEADER_BYTES || coveredEnd > channel.size() || count < 0
+            || count * 21L != data.remaining() - 4) {
+            return 0;
+        }
+        resetIndex(capacityFor(count));
+        for (int i = 0; i < count; i++) {
+            long hash = data.getLong();
+            long offset = data.getLong();
+            int length = data.getInt();
+            byte type = data.get();
+            if (hash == 0 || offset < FILE_HEADER_BYTES || offset + length > coveredEnd) {
+                return 0;
+            }
+            indexPut(hash, offset, length, type);
+        }
+        // Entries that add up differently than when written mean a bad checkpoint
+        return liveBytes == checkpointLive && size == count ? coveredEnd : 0;
+    }
+
+    /**
+     * Applies records from the offset on through a read-only mapping
+     * @return Offset after the last valid record
+     */
+    private long replay(long from) throws IOException {
+        long size = channel.size();
+        if (from >= size) {
+            return from;
+        }
+        MappedByteBuffer tail = channel.map(FileChannel.MapMode.READ_ONLY, from, size - from);
+        CRC32 crc = new CRC32();
+        int position = 0;
+        while (tail.remaining() - position >= RECORD_HEADER_BYTES) {
+            int length = validRecordLength(tail, position, crc);
+            if (length < 0) {
+                break;
+            }
+            int flags = tail.get(position + 13);
+            int keyLength = tail.getShort(position + 14) & 0xFFFF;
+            long hash = hash(tail, position + RECORD_HEADER_BYTES, keyLength);
+            if ((flags & FLAG_TOMBSTONE) != 0) {
+                indexRemove(hash);
+            } else {
+                indexPut(hash, from + position, length, tail.get(position + 12));
+            }
+            position += length;
+            replayedRecords++;
+        }
+        replayedBytes = position;
+        return from + position;
+    }
+
+    /**
+     * @return Length of the record at the position if its header and CRC check out, else -1
+     */
+    private int validRecordLength(ByteBuffer buffer, int position, CRC32 crc) {
+        int available = buffer.limit() - position;
+        if (buffer.getInt(position) != RECORD_MAGIC) {
+            return -1;
+        }
+        int length = buffer.getInt(position + 4);
+        int keyLength = buffer.getShort(position + 14) & 0xFFFF;
+        if (length < RECORD_HEADER_BYTES + keyLength || length > available || keyLength == 0
+            || keyLength > MAX_KEY_BYTES) {
+            return -1;
+        }
+        ByteBuffer body = buffer.duplicate();
+        body.limit(position + length).position(position + 12);
+        crc.reset();
+        crc.update(body);
+        return (int) crc.getValue() == buffer.getInt(position + 8) ? length : -1;
+    }
+
+    /**
+     * Appends a record; it is readable at once and durable after the next group commit
+     * @param type Caller-defined type from 1 to 127, for {@link #latest(int, int, int)}
+     */
+    public synchronized void put(String key, int type, byte[] value) throws IOException {
+        if (type < 1 || type > 127) {
+            throw new IllegalArgumentException("Type must be 1 to 127: " + type);
+        }
+        byte[] keyBytes = keyBytes(key);
+        long hash = hash(ByteBuffer.wrap(keyBytes), 0, keyBytes.length);
+        long offset = append(keyBytes, type, 0, value);
+        int length = RECORD_HEADER_BYTES + keyBytes.length + value.length;
+        indexPut(hash, offset, length, (byte) type);
+    }
+
+    public synchronized boolean remove(String key) throws IOException {
+        byte[] keyBytes = keyBytes(key);
+        long hash = hash(ByteBuffer.wrap(keyBytes), 0, keyBytes.length);
+        if (findSlot(hash) < 0) {
+            return false;
+        }
+        append(keyBytes, 0, FLAG_TOMBSTONE, new byte[0]);
+        indexRemove(hash);
+        return true;
+    }
+
+    private long append(byte[] keyBytes, int type, int flags, byte[] value) throws IOException {
+        int length = RECORD_HEADER_BYTES + keyBytes.length + value.length;
+        if (length > active.capacity()) {
+            throw new IllegalArgumentException("Record of " + length + " bytes exceeds the buffer");
+        }
+        while (active.remaining() < length || writesPaused) {
+            checkWritable();
+            requestCommit();
+            waitUninterruptibly();
+        }
+        checkWritable();
+        int position = active.position();
+        active.putInt(RECORD_MAGIC).putInt(length).putInt(0).put((byte) type).put((byte) flags)
+            .putShort((short) keyBytes.length).put(keyBytes).put(value);
+        CRC32 crc = new CRC32();
+        crc.update(active.array(), position + 12, length - 12);
+        active.putInt(position + 8, (int) crc.getValue());
+        appends++;
+        if (firstPendingNanos == 0 || active.position() >= active.capacity() / 2) {
+            if (firstPendingNanos == 0) {
+                // Starts the writer's commit timer
+                firstPendingNanos = System.nanoTime();
+            }
+            notifyAll();
+        }
+        return activeBase + position;
+    }
+
+    /**
+     * Asks the writer to commit now rather than at the end of the interval. Only the first request
+     * wakes anyone, waiters notifying each other on every wake-up would starve the writer.
+     */
+    private void requestCommit() {
+        if (!syncRequested) {
+            syncRequested = true;
+            notifyAll();
+        }
+    }
+
+    private void checkWritable() throws IOException {
+        if (closed) {
+            throw new IOException("Record log closed");
+        }
+        if (writeFailure != null) {
+            throw new IOException("Record log failed to write", writeFailure);
+        }
+    }
+
+    /**
+     * @return The live record under the key, or null
+     * @throws IOException If the record fails its checksum
+     */
+    public synchronized Entry get(String key) throws IOException {
+        byte[] keyBytes = keyBytes(key);
+        int slot = findSlot(hash(ByteBuffer.wrap(keyBytes), 0, keyBytes.length));
+        if (slot < 0) {
+            return null;
+        }
+        Entry entry = read(offsets[slot], lengths[slot]);
+        if (!entry.key.equals(key)) {
+            hashCollisions++;
+            return null;
+        }
+        return entry;
+    }
+
+    public synchronized boolean contains(String key) {
+        byte[] keyBytes = keyBytes(key);
+        return findSlot(hash(ByteBuffer.wrap(keyBytes), 0, keyBytes.length)) >= 0;
+    }
+
+    /**
+     * Live records of one type, most recently written first
+     * @param skip Records to pass over, for paging
+     * @param limit Most records returned
+     */
+    public synchronized List<Entry> latest(int type, int skip, int limit) throws IOException {
+        long[] matching = new long[size];
+        int count = 0;
+        for (int slot = 0; slot < hashes.length; slot++) {
+            if (hashes[slot] != 0 && types[slot] == type) {
+                // Offset in the high bits keeps the sort by recency, the slot rides along below
+                matching[count++] = offsets[slot] << SLOT_BITS | slot;
+            }
+        }
+        Arrays.sort(matching, 0, count);
+        List<Entry> result = new ArrayList<>(Math.max(0, Math.min(limit, count - skip)));
+        for (int i = count - 1 - skip; i >= 0 && result.size() < limit; i--) {
+            int slot = (int) (matching[i] & SLOT_MASK);
+            result.add(read(offsets[slot], lengths[slot]));
+        }
+        return result;
+    }
+
+    public synchronized int count(int type) {
+        int count = 0;
+        for (int slot = 0; slot < hashes.length; slot++) {
+            if (hashes[slot] != 0 && types[slot] == type) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Reads a record from whichever buffer or the file currently holds it
+     */
+    private Entry read(long offset, int length) throws IOException {
+        ByteBuffer record;
+        if (offset >= activeBase) {
+            record = ByteBuffer.wrap(active.array(), (int) (offset - activeBase), length).slice();
+        } else if (flushing != null && offset >= flushingBase) {
+            record = ByteBuffer.wrap(flushing.array(), (int) (offset - flushingBase), length).slice();
+        } else {
+            record = ByteBuffer.allocate(length);
+            readFully(channel, record, offset);
+            record.flip();
+        }
+        if (validRecordLength(record, 0, new CRC32()) != length) {
+            corruptReads++;
+            throw new IOException("Corrupt record at " + offset);
+        }
+        int keyLength = record.getShort(14) & 0xFFFF;
+        byte[] keyBytes = new byte[keyLength];
+        byte[] value = new byte[length - RECORD_HEADER_BYTES - keyLength];
+        record.position(RECORD_HEADER_BYTES);
+        record.get(keyBytes).get(value);
+        return new Entry(new String(keyBytes, StandardCharsets.UTF_8), record.get(12), value);
+    }
+
+    /**
+     * Blocks until everything appended so far is on disk
+     */
+    public synchronized void sync() throws IOException {
+        long target = activeBase + active.position();
+        while (durableEnd < target) {
+            checkWritable();
+            requestCommit();
+            waitUninterruptibly();
+        }
+        checkWritable();
+    }
+
+    private void writeLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long base;
+            FileChannel target;
+            synchronized (this) {
+                while (!readyToCommit()) {
+                    if (closed && (active.position() == 0 || writeFailure != null) && !compacting) {
+                        return;
+                    }
+                    if (firstPendingNanos == 0 || writesPaused || flushing != null || writeFailure != null) {
+                        waitUninterruptibly();
+                    } else {
+                        long waitNanos = firstPendingNanos + commitIntervalNanos - System.nanoTime();
+                        waitUninterruptibly(Math.max(1, (waitNanos + 999_999) / 1_000_000L));
+                    }
+                }
+                batch = active;
+                base = activeBase;
+                flushing = active;
+                flushingBase = activeBase;
+                active = spare;
+                active.clear();
+                activeBase = base + batch.position();
+                firstPendingNanos = 0;
+                syncRequested = false;
+                target = channel;
+            }
+            IOException failure = null;
+            try {
+                ByteBuffer out = batch.duplicate();
+                out.flip();
+                while (out.hasRemaining()) {
+                    target.write(out, base + out.position());
+                }
+                target.force(false);
+            } catch (IOException e) {
+                failure = e;
+            }
+            boolean checkpoint;
+            boolean requestCompaction = false;
+            synchronized (this) {
+                if (failure != null) {
+                    writeFailure = failure;
+                } else {
+                    durableEnd = base + batch.position();
+                    groupCommits++;
+                    committedBytes += batch.position();
+                }
+                spare = flushing;
+                flushing = null;
+                checkpoint = failure == null && !compacting
+                    && durableEnd - lastCheckpointEnd >= checkpointIntervalBytes;
+                if (isMostlyDead() && !compacting && !compactionRequested && !closed) {
+                    compactionRequested = true;
+                    requestCompaction = true;
+                }
+                notifyAll();
+            }
+            if (checkpoint) {
+                try {
+                    checkpoint();
+                } catch (IOException e) {
+                    // Only recovery time suffers, the log itself is intact
+                }
+            }
+            if (requestCompaction) {
+                requestCompaction();
+            }
+        }
+    }
+
+    private boolean readyToCommit() {
+        if (flushing != null || writesPaused || active.position() == 0 || writeFailure != null) {
+            return false;
+        }
+        return closed || syncRequested || active.position() >= active.capacity() / 2
+            || System.nanoTime() - firstPendingNanos >= commitIntervalNanos;
+    }
+
+    private boolean isMostlyDead() {
+        long end = activeBase + active.position();
+        return end > MIN_COMPACTION_BYTES && liveBytes * 2 < end;
+    }
+
+    /**
+     * Writes the pending buffer while holding the lock, for when the index must match the file exactly
+     */
+    private void commitLocked() throws IOException {
+        while (flushing != null) {
+            waitUninterruptibly();
+        }
+        // Also runs while closing, so only a failed write stops it
+        if (writeFailure != null) {
+            throw new IOException("Record log failed to write", writeFailure);
+        }
+        if (active.position() > 0) {
+            ByteBuffer out = active.duplicate();
+            out.flip();
+            while (out.hasRemaining()) {
+                channel.write(out, activeBase + out.position());
+            }
+            committedBytes += active.position();
+            activeBase += active.position();
+            active.clear();
+            firstPendingNanos = 0;
+        }
+        channel.force(false);
+        durableEnd = activeBase;
+        groupCommits++;
+    }
+
+    /**
+     * Snapshots the index at a durable point and writes it beside the log
+     */
+    public void checkpoint() throws IOException {
+        long[] snapshotHashes;
+        long[] snapshotOffsets;
+        int[] snapshotLengths;
+        byte[] snapshotTypes;
+        long coveredEnd;
+        long snapshotGeneration;
+        long snapshotLive;
+        int count;
+        synchronized (this) {
+            commitLocked();
+            snapshotHashes = hashes.clone();
+            snapshotOffsets = offsets.clone();
+            snapshotLengths = lengths.clone();
+            snapshotTypes = types.clone();
+            coveredEnd = durableEnd;
+            snapshotGeneration = generation;
+            snapshotLive = liveBytes;
+            count = size;
+            lastCheckpointEnd = coveredEnd;
+        }
+        File temp = new File(directory, CHECKPOINT_NAME + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(temp)) {
+            CheckedOutputStream checked = new CheckedOutputStream(new BufferedOutputStream(stream, 64 * 1024),
+                new CRC32());
+            DataOutputStream out = new DataOutputStream(checked);
+            out.writeInt(CHECKPOINT_MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(snapshotGeneration);
+            out.writeLong(coveredEnd);
+            out.writeLong(snapshotLive);
+            out.writeInt(count);
+            for (int slot = 0; slot < snapshotHashes.length; slot++) {
+                if (snapshotHashes[slot] != 0) {
+                    out.writeLong(snapshotHashes[slot]);
+                    out.writeLong(snapshotOffsets[slot]);
+                    out.writeInt(snapshotLengths[slot]);
+                    out.writeByte(snapshotTypes[slot]);
+                }
+            }
+            out.flush();
+            new DataOutputStream(stream).writeInt((int) checked.getChecksum().getValue());
+            stream.getFD().sync();
+        }
+        if (!temp.renameTo(checkpointFile)) {
+            throw new IOException("Cannot replace " + checkpointFile);
+        }
+        synchronized (this) {
+            checkpoints++;
+        }
+    }
+
+    private void requestCompaction() {
+        try {
+            compactionExecutor.execute(this::runRequestedCompaction);
+        } catch (RejectedExecutionException e) {
+            synchronized (this) {
+                // A later commit asks again
+                compactionRequested = false;
+            }
+        }
+    }
+
+    private void runRequestedCompaction() {
+        synchronized (this) {
+            compactionRequested = false;
+            if (closed) {
+                return;
+            }
+            compactionRunning = true;
+        }
+        try {
+            compact();
+        } catch (IOException e) {
+            // The old file stays in use, a later commit asks again
+        } finally {
+            synchronized (this) {
+                compactionRunning = false;
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Rewrites live records into a new file and swaps it in. Writers only wait while the records
+     * appended during the copy are moved over.
+     */
+    public void compact() throws IOException {
+        long snapshotEnd;
+        long[] liveOffsets;
+        int[] liveLengths;
+        FileChannel source;
+        long newGeneration;
+        synchronized (this) {
+            if (compacting) {
+                return;
+            }
+            compacting = true;
+        }
+        File temp = new File(directory, LOG_NAME + ".compact");
+        RandomAccessFile output = null;
+        try {
+            synchronized (this) {
+                commitLocked();
+                snapshotEnd = durableEnd;
+                liveOffsets = new long[size];
+                int count = 0;
+                for (int slot = 0; slot < hashes.length; slot++) {
+                    if (hashes[slot] != 0) {
+                        liveOffsets[count++] = offsets[slot] << SLOT_BITS | slot;
+                    }
+                }
+                // Keeping file order keeps recency order for latest()
+                Arrays.sort(liveOffsets);
+                liveLengths = new int[count];
+                for (int i = 0; i < count; i++) {
+                    int slot = (int) (liveOffsets[i] & SLOT_MASK);
+                    liveLengths[i] = lengths[slot];
+                    liveOffsets[i] = offsets[slot];
+                }
+                source = channel;
+                newGeneration = generation + 1;
+            }
+
+            output = new RandomAccessFile(temp, "rw");
+            output.setLength(0);
+            FileChannel target = output.getChannel();
+            writeFileHeader(target, newGeneration);
+            long[] newOffsets = new long[liveOffsets.length];
+            long position = FILE_HEADER_BYTES;
+            for (int i = 0; i < liveOffsets.length; i++) {
+                newOffsets[i] = position;
+                transfer(source, liveOffsets[i], liveLengths[i], target, position);
+                position += liveLengths[i];
+            }
+
+            synchronized (this) {
+                writesPaused = true;
+                try {
+                    commitLocked();
+                    long tailStart = position;
+                    transfer(channel, snapshotEnd, durableEnd - snapshotEnd, target, tailStart);
+                    long newEnd = tailStart + durableEnd - snapshotEnd;
+                    target.force(false);
+                    file.close();
+                    if (!temp.renameTo(logFile)) {
+                        file = new RandomAccessFile(logFile, "rw");
+                        channel = file.getChannel();
+                        throw new IOException("Cannot replace " + logFile);
+                    }
+                    file = output;
+                    channel = target;
+                    output = null;
+                    for (int slot = 0; slot < hashes.length; slot++) {
+                        if (hashes[slot] == 0) {
+                            continue;
+                        }
+                        if (offsets[slot] < snapshotEnd) {
+                            int index = Arrays.binarySearch(liveOffsets, offsets[slot]);
+                            offsets[slot] = newOffsets[index];
+                        } else {
+                            offsets[slot] = offsets[slot] - snapshotEnd + tailStart;
+                        }
+                    }
+                    generation = newGeneration;
+                    activeBase = newEnd;
+                    durableEnd = newEnd;
+                    lastCheckpointEnd = 0;
+                    compactions++;
+                } finally {
+                    writesPaused = false;
+                    notifyAll();
+                }
+            }
+        } finally {
+            if (output != null) {
+                output.close();
+                temp.delete();
+            }
+            synchronized (this) {
+                compacting = false;
+                notifyAll();
+            }
+        }
+        // The old checkpoint names the old generation and would be ignored, replace it right away
+        checkpoint();
+    }
+
+    private static void transfer(FileChannel source, long offset, long length, FileChannel target, long position)
+            throws IOException {
+        long done = 0;
+        while (done < length) {
+            long moved = source.transferTo(offset + done, length - done, target.position(position + done));
+            if (moved <= 0) {
+                throw new IOException("Log ended early at " + (offset + done));
+            }
+            done += moved;
+        }
+    }
+
+    /**
+     * Rescans the whole file, checking every record's CRC and that the index points at the newest
+     * version of each key
+     * @return Human readable findings, starting with "ok" when nothing is wrong
+     */
+    public synchronized String verify() throws IOException {
+        commitLocked();
+        MappedByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, durableEnd);
+        CRC32 crc = new CRC32();
+        Map<Long, Long> newest = new HashMap<>();
+        int position = FILE_HEADER_BYTES;
+        long records = 0;
+        while (position < durableEnd) {
+            int length = validRecordLength(data, position, crc);
+            if (length < 0) {
+                return String.format(Locale.US, "corrupt record at %d after %d records", position, records);
+            }
+            long hash = hash(data, position + RECORD_HEADER_BYTES, data.getShort(position + 14) & 0xFFFF);
+            if ((data.get(position + 13) & FLAG_TOMBSTONE) != 0) {
+                newest.remove(hash);
+            } else {
+                newest.put(hash, (long) position);
+            }
+            records++;
+            position += length;
+        }
+        int wrong = 0;
+        for (int slot = 0; slot < hashes.length; slot++) {
+            if (hashes[slot] != 0) {
+                Long offset = newest.remove(hashes[slot]);
+                if (offset == null || offset != offsets[slot]) {
+                    wrong++;
+                }
+            }
+        }
+        // Whatever is left is live in the file but unknown to the index
+        wrong += newest.size();
+        return String.format(Locale.US, "%s: %d records, %d live entries, %d wrong", wrong == 0 ? "ok" : "mismatch",
+            records, size, wrong);
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            notifyAll();
+        }
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted closing record log");
+        }
+        IOException failure;
+        synchronized (this) {
+            // A requested compaction that has not started yet sees closed and does nothing
+            while (compactionRunning) {
+                waitUninterruptibly();
+            }
+            failure = writeFailure;
+        }
+        if (failure == null) {
+            // Next open replays nothing
+            checkpoint();
+        }
+        synchronized (this) {
+            channel.close();
+            file.close();
+        }
+    }
+
+    private void resetIndex(int capacity) {
+        hashes = new long[capacity];
+        offsets = new long[capacity];
+        lengths = new int[capacity];
+        types = new byte[capacity];
+        size = 0;
+    }
+
+    private static int capacityFor(int entries) {
+        int capacity = MIN_INDEX_CAPACITY;
+        while (capacity < entries * 2L) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private int findSlot(long hash) {
+        int mask = hashes.length - 1;
+        for (int slot = (int) hash & mask; hashes[slot] != 0; slot = (slot + 1) & mask) {
+            if (hashes[slot] == hash) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private void indexPut(long hash, long offset, int length, byte type) {
+        int slot = findSlot(hash);
+        if (slot >= 0) {
+            liveBytes -= lengths[slot];
+        } else {
+            if ((size + 1) * 2 > hashes.length) {
+                grow();
+            }
+            int mask = hashes.length - 1;
+            slot = (int) hash & mask;
+            while (hashes[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            hashes[slot] = hash;
+            size++;
+        }
+        offsets[slot] = offset;
+        lengths[slot] = length;
+        types[slot] = type;
+        liveBytes += length;
+    }
+
+    /**
+     * Removes by shifting later members of the probe run back, so no tombstones build up
+     */
+    private void indexRemove(long hash) {
+        int slot = findSlot(hash);
+        if (slot < 0) {
+            return;
+        }
+        liveBytes -= lengths[slot];
+        size--;
+        int mask = hashes.length - 1;
+        int gap = slot;
+        for (int next = (gap + 1) & mask; hashes[next] != 0; next = (next + 1) & mask) {
+            int home = (int) hashes[next] & mask;
+            // Move the entry back unless its home lies cyclically after the gap
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                hashes[gap] = hashes[next];
+                offsets[gap] = offsets[next];
+                lengths[gap] = lengths[next];
+                types[gap] = types[next];
+                gap = next;
+            }
+        }
+        hashes[gap] = 0;
+    }
+
+    private void grow() {
+        long[] oldHashes = hashes;
+        long[] oldOffsets = offsets;
+        int[] oldLengths = lengths;
+        byte[] oldTypes = types;
+        long live = liveBytes;
+        resetIndex(hashes.length * 2);
+        for (int slot = 0; slot < oldHashes.length; slot++) {
+            if (oldHashes[slot] != 0) {
+                indexPut(oldHashes[slot], oldOffsets[slot], oldLengths[slot], oldTypes[slot]);
+            }
+        }
+        liveBytes = live;
+    }
+
+    private static byte[] keyBytes(String key) {
+        byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+        if (bytes.length == 0 || bytes.length > MAX_KEY_BYTES) {
+            throw new IllegalArgumentException("Key must be 1 to " + MAX_KEY_BYTES + " bytes: " + key);
+        }
+        return bytes;
+    }
+
+    /**
+     * FNV-1a with a final mix so the low bits probe well; never 0, which marks a free slot
+     */
+    private static long hash(ByteBuffer buffer, int position, int length) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < length; i++) {
+            hash = (hash ^ (buffer.get(position + i) & 0xFF)) * 0x100000001b3L;
+        }
+        hash ^= hash >>> 33;
+        hash *= 0xff51afd7ed558ccdL;
+        hash ^= hash >>> 33;
+        return hash != 0 ? hash : 1;
+    }
+
+    private static void readFully(FileChannel source, ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (source.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException("Log ended early at " + (position + buffer.position()));
+            }
+        }
+    }
+
+    private void waitUninterruptibly() {
+        waitUninterruptibly(0);
+    }
+
+    private void waitUninterruptibly(long millis) {
+        try {
+            wait(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+
+    public synchronized long getFileBytes() {
+        return activeBase + active.position();
+    }
+
+    public synchronized long getLiveBytes() {
+        return liveBytes;
+    }
+
+    public synchronized long getCompactions() {
+        return compactions;
+    }
+
+    public synchronized long getGroupCommits() {
+        return groupCommits;
+    }
+
+    public synchronized long getAppends() {
+        return appends;
+    }
+
+    /**
+     * @return Record bytes written by group commits since open, compaction copies not included
+     */
+    public synchronized long getCommittedBytes() {
+        return committedBytes;
+    }
+
+    /**
+     * @return What the last open had to do, for judging how bounded recovery was
+     */
+    public synchronized String getRecoveryReport() {
+        return String.format(Locale.US, "%s, replayed %d records / %d KB, truncated %d bytes in %.1f ms",
+            recoveredFromCheckpoint ? "from checkpoint" : "full scan", replayedRecords, replayedBytes / 1024,
+            truncatedBytes, recoveryNanos / 1e6);
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+            "RecordLog[entries=%d, live=%d KB, file=%d KB, appends=%d, commits=%d, committed=%d KB, "
+                + "checkpoints=%d, compactions=%d, corrupt=%d, collisions=%d]",
+            size, liveBytes / 1024, getFileBytes() / 1024, appends, groupCommits, committedBytes / 1024, checkpoints,
+            compactions, corruptReads, hashCollisions);
+    }
+}
@@ -0,0 +1,57 @@
+package com.nidoham.streamly.download;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Rate limit shared by every download connection. Each read reserves its bytes on a single timeline
+ * and waits for its slot, so reservations are served in arrival order and connections reading equally
+ * often get equal shares; with the manager handing out connections round-robin, so do downloads.
+ * Thread safe.
+ */
+public final class BandwidthBudget {
+
+    // Credit a connection may run ahead after an idle spell, smooths start-up without long bursts
+    private static final long BURST_NANOS = 50_000_000L;
+
+    private long bytesPerSecond;
+    private long nextFreeNanos = 0;
+
+    /**
+     * @param bytesPerSecond Combined rate for all downloads, 0 for unlimited
+     */
+    public BandwidthBudget(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public synchronized void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    public synchronized long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    /**
+     * Blocks until the bytes fit in the budget
+     */
+    public void acquire(int bytes) throws InterruptedIOException {
+        long waitNanos;
+        synchronized (this) {
+            if (bytesPerSecond <= 0) {
+                return;
+            }
+            long now = System.nanoTime();
+            long start = Math.max(now - BURST_NANOS, nextFreeNanos);
+            nextFreeNanos = start + bytes * 1_000_000_000L / bytesPerSecond;
+            waitNanos = start - now;
+        }
+        if (waitNanos > 0) {
+            try {
+                Thread.sleep(waitNanos / 1_000_000, (int) (waitNanos % 1_000_000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for bandwidth");
+            }
+        }
+    }
+}
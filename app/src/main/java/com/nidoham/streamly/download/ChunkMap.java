@@ -0,0 +1,103 @@
+package com.nidoham.streamly.download;
+
+import java.util.BitSet;
+
+/**
+ * Splits a file into fixed-size chunks and tracks which are complete.
+ * The bitmap is what gets persisted, so a resumed download only fetches missing chunks.
+ * Not thread safe.
+ */
+final class ChunkMap {
+
+    private final long totalBytes;
+    private final int chunkBytes;
+    private final int chunkCount;
+    private final BitSet done;
+
+    ChunkMap(long totalBytes, int chunkBytes) {
+        this(totalBytes, chunkBytes, new BitSet());
+    }
+
+    private ChunkMap(long totalBytes, int chunkBytes, BitSet done) {
+        if (totalBytes < 0 || chunkBytes <= 0) {
+            throw new IllegalArgumentException("Bad chunk geometry: " + totalBytes + " / " + chunkBytes);
+        }
+        this.totalBytes = totalBytes;
+        this.chunkBytes = chunkBytes;
+        this.chunkCount = (int) ((totalBytes + chunkBytes - 1) / chunkBytes);
+        this.done = done;
+    }
+
+    static ChunkMap restore(long totalBytes, int chunkBytes, byte[] bits) {
+        BitSet done = BitSet.valueOf(bits);
+        ChunkMap map = new ChunkMap(totalBytes, chunkBytes, done);
+        // Bits past the end would come from a corrupt record
+        done.clear(map.chunkCount, Math.max(map.chunkCount, done.length()));
+        return map;
+    }
+
+    long getTotalBytes() {
+        return totalBytes;
+    }
+
+    int getChunkBytes() {
+        return chunkBytes;
+    }
+
+    int getChunkCount() {
+        return chunkCount;
+    }
+
+    long getChunkStart(int chunk) {
+        return (long) chunk * chunkBytes;
+    }
+
+    /**
+     * @return Last byte of the chunk, inclusive as in a Range header
+     */
+    long getChunkEnd(int chunk) {
+        return Math.min(totalBytes, getChunkStart(chunk) + chunkBytes) - 1;
+    }
+
+    boolean isDone(int chunk) {
+        return done.get(chunk);
+    }
+
+    void markDone(int chunk) {
+        done.set(chunk);
+    }
+
+    void markAllDone() {
+        done.set(0, chunkCount);
+    }
+
+    /**
+     * @param busy Chunks already being fetched
+     * @return First chunk neither done nor busy, or -1
+     */
+    int nextPending(BitSet busy) {
+        for (int chunk = done.nextClearBit(0); chunk < chunkCount; chunk = done.nextClearBit(chunk + 1)) {
+            if (!busy.get(chunk)) {
+                return chunk;
+            }
+        }
+        return -1;
+    }
+
+    boolean isComplete() {
+        return done.cardinality() == chunkCount;
+    }
+
+    long getCompletedBytes() {
+        long bytes = (long) done.cardinality() * chunkBytes;
+        if (chunkCount > 0 && done.get(chunkCount - 1)) {
+            // The last chunk is usually short
+            bytes -= (long) chunkCount * chunkBytes - totalBytes;
+        }
+        return bytes;
+    }
+
+    byte[] toByteArray() {
+        return done.toByteArray();
+    }
+}
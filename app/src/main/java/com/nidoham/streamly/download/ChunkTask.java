@@ -0,0 +1,185 @@
+package com.nidoham.streamly.download;
+
+import com.nidoham.streamly.net.BodySink;
+import com.nidoham.streamly.net.HttpRequest;
+import com.nidoham.streamly.net.HttpResponse;
+import com.nidoham.streamly.net.HttpTransport;
+import com.nidoham.streamly.net.RequestPriority;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Map;
+
+/**
+ * Fetches one byte range of a download straight into the partial file with positional writes.
+ * A probe is the first request of a download whose size is not known yet: it asks for the first
+ * chunk and learns the size and validator from the answer, or receives the whole file from a server
+ * that ignores ranges.
+ */
+final class ChunkTask implements BodySink, HttpTransport.Callback {
+
+    /**
+     * The server sent a different version than the chunks already on disk
+     */
+    static final class ResourceChangedException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        ResourceChangedException(String message) {
+            super(message);
+        }
+    }
+
+    static final int PROBE = -1;
+
+    final Download download;
+    final int chunk;
+    private final long start;
+    private final long end;
+    private final FileChannel channel;
+    private final BandwidthBudget budget;
+    private final DownloadManager manager;
+    private volatile boolean canceled = false;
+    private HttpTransport.Call call;
+
+    // Written on the transport thread, read by the manager after the callback
+    private long position;
+    long written;
+    long reportedTotal = -1;
+    String reportedValidator;
+    boolean wholeBody = false;
+
+    ChunkTask(DownloadManager manager, Download download, int chunk, long start, long end, FileChannel channel,
+              BandwidthBudget budget) {
+        this.manager = manager;
+        this.download = download;
+        this.chunk = chunk;
+        this.start = start;
+        this.end = end;
+        this.channel = channel;
+        this.budget = budget;
+    }
+
+    boolean isProbe() {
+        return chunk == PROBE;
+    }
+
+    void start(HttpTransport transport) {
+        // Bulk transfers never hold back what the user is looking at
+        HttpRequest request = HttpRequest.get(download.url).withRevalidation(false)
+            .withPriority(RequestPriority.PREFETCH)
+            .withHeader("Range", "bytes=" + start + "-" + end);
+        if (download.validator != null) {
+            // A changed resource comes back whole with 200 instead of mixing versions
+            request = request.withHeader("If-Range", download.validator);
+        }
+        call = transport.enqueue(request, this, this);
+    }
+
+    void cancel() {
+        canceled = true;
+        if (call != null) {
+            call.cancel();
+        }
+    }
+
+    boolean isCanceled() {
+        return canceled;
+    }
+
+    @Override
+    public void onHeaders(int code, Map<String, String> headers) throws IOException {
+        // A retry on a fresh connection starts the range over
+        download.inFlightBytes.addAndGet(-written);
+        written = 0;
+        position = start;
+        String validator = validatorOf(headers);
+        if (code == 200) {
+            if (!isProbe()) {
+                throw new ResourceChangedException("Server sent the whole resource for " + download.url);
+            }
+            wholeBody = true;
+            reportedValidator = validator;
+            String length = headers.get("content-length");
+            reportedTotal = length != null ? Long.parseLong(length) : -1;
+            return;
+        }
+        long[] range = parseContentRange(headers.get("content-range"));
+        if (range == null || range[0] != start || range[1] > end || range[2] < 0) {
+            throw new ProtocolException("Unexpected Content-Range " + headers.get("content-range"));
+        }
+        if (isProbe()) {
+            reportedTotal = range[2];
+            reportedValidator = validator;
+        } else if (range[1] != end || range[2] != download.getTotalBytes()) {
+            throw new ResourceChangedException("Size changed for " + download.url);
+        }
+    }
+
+    @Override
+    public void write(ByteBuffer data) throws IOException {
+        if (canceled) {
+            throw new IOException("Canceled");
+        }
+        int length = data.remaining();
+        budget.acquire(length);
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+        written += length;
+        download.inFlightBytes.addAndGet(length);
+        manager.onBytes(length);
+    }
+
+    @Override
+    public void onResponse(HttpTransport.Call call, HttpResponse response) {
+        int code = response.getCode();
+        if (code == 200 || code == 206) {
+            manager.onTaskFinished(this, null);
+        } else if (isProbe() && code == 416 && "bytes */0".equals(response.getHeader("content-range"))) {
+            // Nothing to fetch from an empty resource
+            reportedTotal = 0;
+            manager.onTaskFinished(this, null);
+        } else {
+            manager.onTaskFinished(this, new IOException("HTTP " + code + " for " + download.url));
+        }
+    }
+
+    @Override
+    public void onFailure(HttpTransport.Call call, IOException error) {
+        manager.onTaskFinished(this, error);
+    }
+
+    /**
+     * Weak ETags cannot be used with If-Range, Last-Modified is the fallback
+     */
+    private static String validatorOf(Map<String, String> headers) {
+        String etag = headers.get("etag");
+        if (etag != null && !etag.startsWith("W/")) {
+            return etag;
+        }
+        return headers.get("last-modified");
+    }
+
+    /**
+     * @return First byte, last byte and total size of "bytes a-b/n", total -1 for "*", or null
+     */
+    static long[] parseContentRange(String value) {
+        if (value == null || !value.startsWith("bytes ")) {
+            return null;
+        }
+        int dash = value.indexOf('-', 6);
+        int slash = value.indexOf('/', 6);
+        if (dash < 0 || slash < dash) {
+            return null;
+        }
+        try {
+            long first = Long.parseLong(value.substring(6, dash).trim());
+            long last = Long.parseLong(value.substring(dash + 1, slash).trim());
+            String total = value.substring(slash + 1).trim();
+            return new long[] {first, last, "*".equals(total) ? -1 : Long.parseLong(total)};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+}
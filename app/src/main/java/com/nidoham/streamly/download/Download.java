@@ -0,0 +1,123 @@
+package com.nidoham.streamly.download;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One download's persisted description and its runtime bookkeeping.
+ * Owned by the manager thread, except the in-flight byte counter which transfer threads update.
+ */
+final class Download {
+
+    final String id;
+    final String url;
+    final File target;
+    final String title;
+    // Lowercase hex SHA-256 the finished file must match, null to check the length only
+    final String sha256;
+
+    // ETag or Last-Modified of the version being fetched, sent as If-Range
+    String validator;
+    // False once the server has answered a range request with the whole body
+    boolean rangeSupported = true;
+    // Null until the size is known
+    ChunkMap chunks;
+    int chunkBytes;
+    DownloadState state = DownloadState.QUEUED;
+    String error;
+
+    final BitSet busy = new BitSet();
+    final List<ChunkTask> tasks = new ArrayList<>();
+    // Bytes written by chunks that have not completed yet
+    final AtomicLong inFlightBytes = new AtomicLong();
+    int consecutiveFailures = 0;
+    // No new chunk starts before this after a failure
+    long retryAtNanos = 0;
+    private RandomAccessFile file;
+    private FileChannel channel;
+
+    // Throughput smoothing, touched when snapshots are built
+    long rateSampleBytes = -1;
+    long rateSampleNanos;
+    double bytesPerSecond;
+
+    Download(String id, String url, File target, String title, String sha256, int chunkBytes) {
+        this.id = id;
+        this.url = url;
+        this.target = target;
+        this.title = title;
+        this.sha256 = sha256;
+        this.chunkBytes = chunkBytes;
+    }
+
+    File getPartialFile() {
+        return new File(target.getPath() + ".part");
+    }
+
+    long getTotalBytes() {
+        return chunks != null ? chunks.getTotalBytes() : -1;
+    }
+
+    long getDownloadedBytes() {
+        return (chunks != null ? chunks.getCompletedBytes() : 0) + inFlightBytes.get();
+    }
+
+    boolean isActive() {
+        return state == DownloadState.QUEUED || state == DownloadState.RUNNING;
+    }
+
+    /**
+     * @return The partial file's channel, opened on first use
+     */
+    FileChannel channel() throws IOException {
+        if (channel == null) {
+            File parent = getPartialFile().getParentFile();
+            if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+                throw new IOException("Cannot create " + parent);
+            }
+            file = new RandomAccessFile(getPartialFile(), "rw");
+            channel = file.getChannel();
+        }
+        return channel;
+    }
+
+    /**
+     * Sizes the partial file up front so chunks land in place and a full disk fails early
+     */
+    void preallocate(long totalBytes) throws IOException {
+        channel();
+        if (file.length() != totalBytes) {
+            file.setLength(totalBytes);
+        }
+    }
+
+    void closeChannel() {
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException ignored) {
+                // Nothing left to flush that matters, completed chunks were forced
+            }
+            file = null;
+            channel = null;
+        }
+    }
+
+    /**
+     * Forgets all progress, e.g. when the resource changed on the server
+     */
+    void reset() {
+        chunks = null;
+        validator = null;
+        rangeSupported = true;
+        inFlightBytes.set(0);
+        busy.clear();
+        consecutiveFailures = 0;
+    }
+}
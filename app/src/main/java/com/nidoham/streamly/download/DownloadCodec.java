@@ -0,0 +1,90 @@
+package com.nidoham.streamly.download;
+
+import com.nidoham.streamly.data.Codec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Binary form of a download's description, state and chunk bitmap for the manager's journal
+ */
+final class DownloadCodec implements Codec<Download> {
+
+    private static final int VERSION = 1;
+
+    @Override
+    public byte[] encode(Download download) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeUTF(download.id);
+        out.writeUTF(download.url);
+        out.writeUTF(download.target.getPath());
+        out.writeUTF(download.title);
+        writeNullable(out, download.sha256);
+        writeNullable(out, download.validator);
+        out.writeBoolean(download.rangeSupported);
+        out.writeInt(download.chunkBytes);
+        out.writeByte(download.state.ordinal());
+        writeNullable(out, download.error);
+        out.writeLong(download.getTotalBytes());
+        byte[] bits = download.chunks != null ? download.chunks.toByteArray() : new byte[0];
+        out.writeInt(bits.length);
+        out.write(bits);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public Download decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unknown download record version " + version);
+        }
+        String id = in.readUTF();
+        String url = in.readUTF();
+        File target = new File(in.readUTF());
+        String title = in.readUTF();
+        String sha256 = readNullable(in);
+        String validator = readNullable(in);
+        boolean rangeSupported = in.readBoolean();
+        int chunkBytes = in.readInt();
+        int state = in.readUnsignedByte();
+        String error = readNullable(in);
+        long totalBytes = in.readLong();
+        int bitsLength = in.readInt();
+        if (bitsLength < 0 || bitsLength > data.length) {
+            throw new IOException("Corrupt chunk bitmap length " + bitsLength);
+        }
+        byte[] bits = new byte[bitsLength];
+        in.readFully(bits);
+        if (state >= DownloadState.values().length || chunkBytes <= 0) {
+            throw new IOException("Corrupt download record " + id);
+        }
+
+        Download download = new Download(id, url, target, title, sha256, chunkBytes);
+        download.validator = validator;
+        download.rangeSupported = rangeSupported;
+        download.state = DownloadState.values()[state];
+        download.error = error;
+        if (totalBytes >= 0) {
+            download.chunks = ChunkMap.restore(totalBytes, chunkBytes, bits);
+        }
+        return download;
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
@@ -0,0 +1,615 @@
+package com.nidoham.streamly.download;
+
+import com.nidoham.streamly.data.DiskJournal;
+import com.nidoham.streamly.net.HttpTransport;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Resumable downloads fetched as parallel HTTP byte ranges.
+ * Each download is split into fixed-size chunks that are written in place into a preallocated
+ * partial file. A chunk counts as done only after the file is forced and the chunk bitmap is
+ * journaled, so after a crash or restart only missing chunks are fetched again, guarded by If-Range
+ * against the resource changing in between. Connections are handed out round-robin under a global
+ * limit and a per-download limit, and every byte passes one shared {@link BandwidthBudget}, so
+ * concurrent downloads share bandwidth evenly. Finished files are checked against their length and
+ * optional SHA-256 before being renamed into place.
+ * All state lives on one manager thread; listeners receive immutable snapshots on the callback
+ * executor, coalesced while bytes are flowing.
+ */
+public final class DownloadManager {
+
+    public interface Listener {
+        /**
+         * Called on the callback executor with every download, in the order they were added
+         */
+        void onDownloadsChanged(List<DownloadProgress> downloads);
+    }
+
+    private static final long PUBLISH_INTERVAL_NANOS = 250_000_000L;
+    private static final double RATE_HALF_LIFE_SECONDS = 2;
+    private static final int MAX_CONSECUTIVE_FAILURES = 5;
+    private static final long RETRY_BASE_MILLIS = 500;
+    private static final int VERIFY_BUFFER_BYTES = 64 * 1024;
+
+    private final HttpTransport transport;
+    private final DiskJournal journal;
+    private final BandwidthBudget budget;
+    private final int maxConnections;
+    private final int maxConnectionsPerDownload;
+    private final int chunkBytes;
+    private final Executor callbackExecutor;
+    private final DownloadCodec codec = new DownloadCodec();
+    private final ScheduledExecutorService executor;
+    private final ExecutorService verifier;
+
+    // Manager thread only
+    private final Map<String, Download> downloads = new LinkedHashMap<>();
+    private int runningTasks = 0;
+    private int nextTurn = 0;
+    private long retryTimerNanos = Long.MAX_VALUE;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+    private volatile List<DownloadProgress> snapshot = Collections.emptyList();
+    private final AtomicLong lastPublishNanos = new AtomicLong();
+
+    private final AtomicLong bytesReceived = new AtomicLong();
+    private final AtomicLong chunksCompleted = new AtomicLong();
+    private final AtomicLong chunkFailures = new AtomicLong();
+    private final AtomicLong restarts = new AtomicLong();
+    private final AtomicLong journalFailures = new AtomicLong();
+
+    /**
+     * @param transport Shared transport, its per-host limit also applies to chunk requests
+     * @param journal Where download state survives restarts, entries must not expire
+     * @param budget Bandwidth shared by all transfers
+     * @param maxConnections Chunk requests in flight across all downloads
+     * @param maxConnectionsPerDownload Chunk requests in flight for one download
+     * @param chunkBytes Size of the ranges a download is split into
+     * @param callbackExecutor Where listeners are called, e.g. the main thread
+     */
+    public DownloadManager(HttpTransport transport, DiskJournal journal, BandwidthBudget budget, int maxConnections,
+                           int maxConnectionsPerDownload, int chunkBytes, Executor callbackExecutor) {
+        this.transport = transport;
+        this.journal = journal;
+        this.budget = budget;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsPerDownload = maxConnectionsPerDownload;
+        this.chunkBytes = chunkBytes;
+        this.callbackExecutor = callbackExecutor;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "download-manager");
+            thread.setDaemon(true);
+            return thread;
+        });
+        verifier = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "download-verifier");
+            thread.setDaemon(true);
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        executor.execute(this::restore);
+    }
+
+    /**
+     * Starts a download, or resumes it if one with this id is paused or failed
+     * @param target Final location, the data is assembled next to it in a ".part" file
+     * @param sha256 Expected lowercase hex digest, null to check the length only
+     */
+    public void enqueue(String id, String url, File target, String title, String sha256) {
+        executor.execute(() -> {
+            Download existing = downloads.get(id);
+            if (existing != null) {
+                resumeNow(existing);
+                return;
+            }
+            Download download = new Download(id, url, target, title, sha256, chunkBytes);
+            downloads.put(id, download);
+            persist(download);
+            schedule();
+            publish();
+        });
+    }
+
+    public void pause(String id) {
+        executor.execute(() -> {
+            Download download = downloads.get(id);
+            if (download != null && download.isActive()) {
+                cancelTasks(download);
+                download.state = DownloadState.PAUSED;
+                download.bytesPerSecond = 0;
+                persist(download);
+                publish();
+            }
+        });
+    }
+
+    public void resume(String id) {
+        executor.execute(() -> {
+            Download download = downloads.get(id);
+            if (download != null) {
+                resumeNow(download);
+            }
+        });
+    }
+
+    /**
+     * Stops a download and deletes its partial and finished files
+     */
+    public void remove(String id) {
+        executor.execute(() -> {
+            Download download = downloads.remove(id);
+            if (download == null) {
+                return;
+            }
+            cancelTasks(download);
+            if (download.tasks.isEmpty()) {
+                download.closeChannel();
+            }
+            download.getPartialFile().delete();
+            if (download.state == DownloadState.COMPLETED) {
+                download.target.delete();
+            }
+            try {
+                journal.remove(id);
+            } catch (IOException e) {
+                journalFailures.incrementAndGet();
+            }
+            schedule();
+            publish();
+        });
+    }
+
+    /**
+     * Stops all transfers without recording them as paused, so the next manager on the same journal
+     * picks them up where they were
+     */
+    public void shutdown() {
+        executor.execute(() -> {
+            for (Download download : downloads.values()) {
+                cancelTasks(download);
+                download.closeChannel();
+            }
+        });
+        executor.shutdown();
+        try {
+            executor.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        verifier.shutdownNow();
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+        List<DownloadProgress> current = snapshot;
+        callbackExecutor.execute(() -> listener.onDownloadsChanged(current));
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * @return The latest published state, cheap enough to poll from any thread
+     */
+    public List<DownloadProgress> getDownloads() {
+        return snapshot;
+    }
+
+    public BandwidthBudget getBudget() {
+        return budget;
+    }
+
+    private void restore() {
+        List<String> keys;
+        try {
+            keys = journal.getKeys();
+        } catch (IOException e) {
+            journalFailures.incrementAndGet();
+            return;
+        }
+        long now = System.currentTimeMillis();
+        for (String key : keys) {
+            try {
+                DiskJournal.Record record = journal.get(key, now);
+                if (record == null) {
+                    continue;
+                }
+                Download download = codec.decode(record.getPayload());
+                if (download.state == DownloadState.RUNNING || download.state == DownloadState.VERIFYING) {
+                    download.state = DownloadState.QUEUED;
+                }
+                if (download.isActive() && !download.rangeSupported) {
+                    // Without ranges there is nothing to resume from
+                    download.reset();
+                }
+                downloads.put(download.id, download);
+            } catch (IOException e) {
+                journalFailures.incrementAndGet();
+            }
+        }
+        schedule();
+        publish();
+    }
+
+    private void resumeNow(Download download) {
+        if (download.state != DownloadState.PAUSED && download.state != DownloadState.FAILED) {
+            return;
+        }
+        download.state = DownloadState.QUEUED;
+        download.error = null;
+        download.consecutiveFailures = 0;
+        download.retryAtNanos = 0;
+        if (!download.rangeSupported) {
+            download.reset();
+        }
+        persist(download);
+        schedule();
+        publish();
+    }
+
+    /**
+     * Hands out free connections one chunk at a time, evening out connections between downloads and
+     * taking turns on ties
+     */
+    private void schedule() {
+        List<Download> candidates = new ArrayList<>(downloads.values());
+        long now = System.nanoTime();
+        long nextRetryNanos = Long.MAX_VALUE;
+        for (Download download : candidates) {
+            if (download.isActive() && download.chunks != null && download.chunks.isComplete()
+                && download.tasks.isEmpty()) {
+                verify(download);
+            } else if (download.isActive() && download.retryAtNanos > now) {
+                nextRetryNanos = Math.min(nextRetryNanos, download.retryAtNanos);
+            }
+        }
+        int count = candidates.size();
+        while (runningTasks < maxConnections) {
+            // Fewest connections first, so a newcomer catches up with a download that took them all
+            int best = -1;
+            for (int i = 0; i < count; i++) {
+                int index = (nextTurn + i) % count;
+                Download download = candidates.get(index);
+                if (canStart(download, now)
+                    && (best < 0 || download.tasks.size() < candidates.get(best).tasks.size())) {
+                    best = index;
+                }
+            }
+            if (best < 0) {
+                break;
+            }
+            nextTurn = (best + 1) % count;
+            if (!startTask(candidates.get(best))) {
+                candidates.remove(best);
+                count--;
+            }
+        }
+        if (nextRetryNanos < retryTimerNanos || retryTimerNanos <= now) {
+            retryTimerNanos = nextRetryNanos;
+            if (nextRetryNanos != Long.MAX_VALUE) {
+                executor.schedule(this::schedule, nextRetryNanos - now, TimeUnit.NANOSECONDS);
+            }
+        }
+    }
+
+    private boolean canStart(Download download, long now) {
+        if (!download.isActive() || download.retryAtNanos > now
+            || download.tasks.size() >= maxConnectionsPerDownload) {
+            return false;
+        }
+        for (ChunkTask task : download.tasks) {
+            // Canceled requests may still be writing, let them drain before ranges are handed out again
+            if (task.isCanceled()) {
+                return false;
+            }
+        }
+        if (download.chunks == null || !download.rangeSupported) {
+            // The probe learns the size and whether ranges work at all
+            return download.tasks.isEmpty() && (download.chunks == null || !download.chunks.isComplete());
+        }
+        return download.chunks.nextPending(download.busy) >= 0;
+    }
+
+    private boolean startTask(Download download) {
+        int chunk = download.chunks == null ? ChunkTask.PROBE : download.chunks.nextPending(download.busy);
+        long start = chunk == ChunkTask.PROBE ? 0 : download.chunks.getChunkStart(chunk);
+        long end = chunk == ChunkTask.PROBE ? download.chunkBytes - 1 : download.chunks.getChunkEnd(chunk);
+        FileChannel channel;
+        try {
+            channel = download.channel();
+        } catch (IOException e) {
+            fail(download, e.getMessage());
+            return false;
+        }
+        ChunkTask task = new ChunkTask(this, download, chunk, start, end, channel, budget);
+        if (chunk != ChunkTask.PROBE) {
+            download.busy.set(chunk);
+        }
+        download.tasks.add(task);
+        runningTasks++;
+        if (download.state != DownloadState.RUNNING) {
+            download.state = DownloadState.RUNNING;
+            persist(download);
+            publish();
+        }
+        task.start(transport);
+        return true;
+    }
+
+    /**
+     * Called on a transport thread for every chunk of body written
+     */
+    void onBytes(int bytes) {
+        bytesReceived.addAndGet(bytes);
+        long now = System.nanoTime();
+        long last = lastPublishNanos.get();
+        if (now - last >= PUBLISH_INTERVAL_NANOS && lastPublishNanos.compareAndSet(last, now)) {
+            executor.execute(this::publish);
+        }
+    }
+
+    /**
+     * Called on a transport thread, or the manager thread for calls canceled while queued
+     */
+    void onTaskFinished(ChunkTask task, IOException error) {
+        try {
+            executor.execute(() -> finishTask(task, error));
+        } catch (RuntimeException e) {
+            // Shut down, the journal already holds the last completed chunk
+        }
+    }
+
+    private void finishTask(ChunkTask task, IOException error) {
+        Download download = task.download;
+        runningTasks--;
+        download.tasks.remove(task);
+        if (task.chunk != ChunkTask.PROBE) {
+            download.busy.clear(task.chunk);
+        }
+        download.inFlightBytes.addAndGet(-task.written);
+        boolean removed = downloads.get(download.id) != download;
+        if (task.isCanceled() || removed || !download.isActive()) {
+            if (download.tasks.isEmpty() && (removed || !download.isActive())) {
+                download.closeChannel();
+            }
+            schedule();
+            return;
+        }
+        if (error == null) {
+            try {
+                completeChunk(download, task);
+                download.consecutiveFailures = 0;
+            } catch (IOException e) {
+                error = e;
+            }
+        }
+        if (error instanceof ChunkTask.ResourceChangedException) {
+            // Chunks of the old version are worthless, start over once the others have stopped
+            restarts.incrementAndGet();
+            cancelTasks(download);
+            download.reset();
+            persist(download);
+        } else if (error != null) {
+            chunkFailures.incrementAndGet();
+            download.consecutiveFailures++;
+            if (download.consecutiveFailures >= MAX_CONSECUTIVE_FAILURES) {
+                fail(download, error.getMessage());
+            } else {
+                long backoff = RETRY_BASE_MILLIS << (download.consecutiveFailures - 1);
+                download.retryAtNanos = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(backoff);
+            }
+        }
+        schedule();
+        publish();
+    }
+
+    /**
+     * Makes a finished range durable and records it, in that order
+     */
+    private void completeChunk(Download download, ChunkTask task) throws IOException {
+        FileChannel channel = download.channel();
+        if (task.isProbe()) {
+            if (task.wholeBody) {
+                // The server ignored the range and sent everything in one stream
+                channel.truncate(task.written);
+                download.rangeSupported = false;
+                download.validator = task.reportedValidator;
+                download.chunks = new ChunkMap(task.written, download.chunkBytes);
+                download.chunks.markAllDone();
+            } else {
+                download.validator = task.reportedValidator;
+                download.chunks = new ChunkMap(task.reportedTotal, download.chunkBytes);
+                download.preallocate(task.reportedTotal);
+                if (download.chunks.getChunkCount() > 0) {
+                    download.chunks.markDone(0);
+                }
+            }
+        } else {
+            download.chunks.markDone(task.chunk);
+        }
+        channel.force(false);
+        chunksCompleted.incrementAndGet();
+        persist(download);
+    }
+
+    private void cancelTasks(Download download) {
+        for (ChunkTask task : new ArrayList<>(download.tasks)) {
+            task.cancel();
+        }
+    }
+
+    private void fail(Download download, String message) {
+        cancelTasks(download);
+        download.state = DownloadState.FAILED;
+        download.error = message;
+        download.bytesPerSecond = 0;
+        if (download.tasks.isEmpty()) {
+            download.closeChannel();
+        }
+        persist(download);
+    }
+
+    private void verify(Download download) {
+        download.state = DownloadState.VERIFYING;
+        download.closeChannel();
+        persist(download);
+        long expectedBytes = download.getTotalBytes();
+        verifier.execute(() -> {
+            String problem = check(download.getPartialFile(), expectedBytes, download.sha256);
+            try {
+                executor.execute(() -> finishVerify(download, problem));
+            } catch (RuntimeException e) {
+                // Shut down, verification runs again after restore
+            }
+        });
+    }
+
+    /**
+     * @return Why the file is not the expected one, or null if it is
+     */
+    private static String check(File file, long expectedBytes, String sha256) {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            if (channel.size() != expectedBytes) {
+                return "Size is " + channel.size() + ", expected " + expectedBytes;
+            }
+            if (sha256 == null) {
+                return null;
+            }
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            ByteBuffer buffer = ByteBuffer.allocateDirect(VERIFY_BUFFER_BYTES);
+            while (channel.read(buffer) >= 0) {
+                buffer.flip();
+                digest.update(buffer);
+                buffer.clear();
+            }
+            String actual = toHex(digest.digest());
+            return actual.equalsIgnoreCase(sha256) ? null : "SHA-256 mismatch: " + actual;
+        } catch (IOException | NoSuchAlgorithmException e) {
+            return "Cannot verify: " + e.getMessage();
+        }
+    }
+
+    private void finishVerify(Download download, String problem) {
+        if (downloads.get(download.id) != download || download.state != DownloadState.VERIFYING) {
+            return;
+        }
+        if (problem == null) {
+            download.target.delete();
+            if (download.getPartialFile().renameTo(download.target)) {
+                download.state = DownloadState.COMPLETED;
+            } else {
+                problem = "Cannot move to " + download.target;
+            }
+        }
+        if (problem != null) {
+            // Keeping bad bytes would only make a retry fail the same way
+            download.reset();
+            download.getPartialFile().delete();
+            download.state = DownloadState.FAILED;
+            download.error = problem;
+        }
+        download.bytesPerSecond = 0;
+        persist(download);
+        schedule();
+        publish();
+    }
+
+    private void persist(Download download) {
+        if (downloads.get(download.id) != download) {
+            return;
+        }
+        try {
+            journal.put(download.id, codec.encode(download), System.currentTimeMillis());
+        } catch (IOException e) {
+            // The transfer continues, at worst a restart refetches a few chunks
+            journalFailures.incrementAndGet();
+        }
+    }
+
+    /**
+     * Builds a fresh snapshot with smoothed rates and hands it to listeners
+     */
+    private void publish() {
+        long now = System.nanoTime();
+        lastPublishNanos.set(now);
+        List<DownloadProgress> progress = new ArrayList<>(downloads.size());
+        for (Download download : downloads.values()) {
+            long downloaded = download.getDownloadedBytes();
+            if (download.state != DownloadState.RUNNING) {
+                download.rateSampleBytes = -1;
+            } else if (download.rateSampleBytes < 0) {
+                download.rateSampleBytes = downloaded;
+                download.rateSampleNanos = now;
+            } else if (now - download.rateSampleNanos >= PUBLISH_INTERVAL_NANOS / 2) {
+                double seconds = (now - download.rateSampleNanos) / 1e9;
+                double instant = Math.max(0, downloaded - download.rateSampleBytes) / seconds;
+                double alpha = 1 - Math.pow(2, -seconds / RATE_HALF_LIFE_SECONDS);
+                download.bytesPerSecond += alpha * (instant - download.bytesPerSecond);
+                download.rateSampleBytes = downloaded;
+                download.rateSampleNanos = now;
+            }
+            progress.add(new DownloadProgress(download.id, download.title, download.state, download.getTotalBytes(),
+                downloaded, (long) download.bytesPerSecond, download.tasks.size(), download.error));
+        }
+        List<DownloadProgress> published = Collections.unmodifiableList(progress);
+        snapshot = published;
+        for (Listener listener : listeners) {
+            callbackExecutor.execute(() -> listener.onDownloadsChanged(published));
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder hex = new StringBuilder(bytes.length * 2);
+        for (byte b : bytes) {
+            hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+        }
+        return hex.toString();
+    }
+
+    static String sha256Hex(byte[] data) {
+        try {
+            return toHex(MessageDigest.getInstance("SHA-256").digest(data));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public long getBytesReceived() {
+        return bytesReceived.get();
+    }
+
+    public long getChunkFailures() {
+        return chunkFailures.get();
+    }
+
+    public long getRestarts() {
+        return restarts.get();
+    }
+
+    public String report() {
+        return String.format(Locale.US,
+            "DownloadManager[received=%d KB, chunks=%d, chunkFailures=%d, restarts=%d, journalFailures=%d]",
+            bytesReceived.get() / 1024, chunksCompleted.get(), chunkFailures.get(), restarts.get(),
+            journalFailures.get());
+    }
+}
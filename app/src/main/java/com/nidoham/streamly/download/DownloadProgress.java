@@ -0,0 +1,88 @@
+package com.nidoham.streamly.download;
+
+import java.util.Locale;
+
+/**
+ * Immutable snapshot of one download, cheap to hand to the UI
+ */
+public final class DownloadProgress {
+
+    private final String id;
+    private final String title;
+    private final DownloadState state;
+    private final long totalBytes;
+    private final long downloadedBytes;
+    private final long bytesPerSecond;
+    private final int connections;
+    private final String error;
+
+    DownloadProgress(String id, String title, DownloadState state, long totalBytes, long downloadedBytes,
+                     long bytesPerSecond, int connections, String error) {
+        this.id = id;
+        this.title = title;
+        this.state = state;
+        this.totalBytes = totalBytes;
+        this.downloadedBytes = downloadedBytes;
+        this.bytesPerSecond = bytesPerSecond;
+        this.connections = connections;
+        this.error = error;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public DownloadState getState() {
+        return state;
+    }
+
+    /**
+     * @return Size of the file, -1 until the server has reported it
+     */
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public long getDownloadedBytes() {
+        return downloadedBytes;
+    }
+
+    /**
+     * @return Smoothed transfer rate, 0 when not running
+     */
+    public long getBytesPerSecond() {
+        return bytesPerSecond;
+    }
+
+    public int getConnections() {
+        return connections;
+    }
+
+    /**
+     * @return Why the download failed, null otherwise
+     */
+    public String getError() {
+        return error;
+    }
+
+    /**
+     * @return Completed share from 0 to 1, or -1 while the size is unknown
+     */
+    public float getFraction() {
+        if (totalBytes < 0) {
+            return -1;
+        }
+        return totalBytes == 0 ? 1 : Math.min(1f, (float) downloadedBytes / totalBytes);
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s %s %.1f/%sMB %dKB/s x%d%s", title, state, downloadedBytes / 1048576.0,
+            totalBytes < 0 ? "?" : String.format(Locale.US, "%.1f", totalBytes / 1048576.0), bytesPerSecond / 1024,
+            connections, error != null ? " (" + error + ")" : "");
+    }
+}
@@ -0,0 +1,19 @@
+package com.nidoham.streamly.download;
+
+/**
+ * Lifecycle of a download
+ */
+public enum DownloadState {
+    /** Waiting for a connection slot */
+    QUEUED,
+    /** At least one chunk is being fetched */
+    RUNNING,
+    /** Stopped by the user, resumes from the completed chunks */
+    PAUSED,
+    /** All bytes received, the file is being checked */
+    VERIFYING,
+    /** Verified and moved to its final name */
+    COMPLETED,
+    /** Gave up after repeated errors or a failed check, resuming starts over where needed */
+    FAILED
+}
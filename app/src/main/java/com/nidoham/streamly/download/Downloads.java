@@ -0,0 +1,61 @@
+package com.nidoham.streamly.download;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import com.nidoham.streamly.data.DiskJournal;
+import com.nidoham.streamly.net.Network;
+import java.io.File;
+
+/**
+ * Process-wide download manager. Listeners are called on the main thread.
+ */
+public final class Downloads {
+
+    // Leaves transport capacity for the feed and thumbnails while downloads run
+    private static final int MAX_CONNECTIONS = 4;
+    private static final int MAX_CONNECTIONS_PER_DOWNLOAD = 3;
+    // Large enough that request overhead is negligible, small enough that a restart loses little
+    private static final int CHUNK_BYTES = 2 * 1024 * 1024;
+    private static final long JOURNAL_MAX_BYTES = 1024 * 1024;
+
+    private static volatile DownloadManager instance;
+
+    private Downloads() {
+    }
+
+    /**
+     * Creates the manager on first use; restoring journaled downloads happens on its own thread
+     */
+    @AnyThread
+    @NonNull
+    public static DownloadManager getManager(@NonNull Context context) {
+        DownloadManager manager = instance;
+        if (manager == null) {
+            synchronized (Downloads.class) {
+                manager = instance;
+                if (manager == null) {
+                    Context appContext = context.getApplicationContext();
+                    File directory = new File(appContext.getFilesDir(), "downloads");
+                    DiskJournal journal = new DiskJournal(new File(directory, "downloads.journal"), JOURNAL_MAX_BYTES,
+                        Long.MAX_VALUE);
+                    Handler mainHandler = new Handler(Looper.getMainLooper());
+                    manager = new DownloadManager(Network.getTransport(appContext), journal, new BandwidthBudget(0),
+                        MAX_CONNECTIONS, MAX_CONNECTIONS_PER_DOWNLOAD, CHUNK_BYTES, mainHandler::post);
+                    instance = manager;
+                }
+            }
+        }
+        return manager;
+    }
+
+    /**
+     * Where finished downloads are stored
+     */
+    @NonNull
+    public static File getDirectory(@NonNull Context context) {
+        return new File(context.getApplicationContext().getFilesDir(), "downloads");
+    }
+}
@@ -0,0 +1,51 @@
+package com.nidoham.streamly.feed;
+
+import com.nidoham.streamly.data.CachedRepository;
+import java.io.IOException;
+
+/**
+ * Serves feed pages through a {@link CachedRepository}, so a page seen before renders from memory
+ * or disk while a stale copy is revalidated against the upstream source in the background
+ */
+public class CachingFeedSource implements FeedSource {
+
+    private final String feedName;
+    private final FeedSource upstream;
+    private final CachedRepository<FeedPage> repository;
+
+    /**
+     * @param feedName Namespace of this feed's keys within the shared repository
+     * @param upstream Authoritative source
+     * @param repository Shared page cache
+     */
+    public CachingFeedSource(String feedName, FeedSource upstream, CachedRepository<FeedPage> repository) {
+        this.feedName = feedName;
+        this.upstream = upstream;
+        this.repository = repository;
+    }
+
+    @Override
+    public FeedPage loadPage(String cursor, int pageSize) throws IOException {
+        try {
+            return repository.get(keyFor(cursor, pageSize), () -> upstream.loadPage(cursor, pageSize)).getValue();
+        } catch (IOException | RuntimeException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * @return The repository key of a page
+     */
+    public String keyFor(String cursor, int pageSize) {
+        return feedName + '/' + pageSize + '/' + (cursor != null ? cursor : "");
+    }
+
+    /**
+     * @return True if the key belongs to the first page of this feed
+     */
+    public boolean isFirstPageKey(String key) {
+        return key.startsWith(feedName + '/') && key.endsWith("/");
+    }
+}
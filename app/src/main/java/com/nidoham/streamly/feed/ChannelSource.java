@@ -0,0 +1,20 @@
+package com.nidoham.streamly.feed;
+
+import java.io.IOException;
+import java.util.List;
+
+/**
+ * Blocking source of per-channel uploads, asked for several channels per call so hundreds of
+ * subscriptions take a handful of round trips. Called from background threads, possibly in parallel.
+ */
+public interface ChannelSource {
+
+    /**
+     * @param channelIds Channels of one batch
+     * @param sinceMillis Per channel, only items published at or after this are wanted; 0 for all
+     * @param limit Most items per channel, the newest ones win
+     * @return Per channel and aligned with channelIds, items newest first
+     * @throws IOException If the batch could not be loaded
+     */
+    List<List<FeedItem>> loadSince(List<String> channelIds, long[] sinceMillis, int limit) throws IOException;
+}
@@ -0,0 +1,93 @@
+package com.nidoham.streamly.feed;
+
+import java.util.Objects;
+
+/**
+ * Immutable video entry shown in a feed.
+ * Identity is the id alone; {@link #equals(Object)} compares the full content,
+ * which is what list diffing uses to decide whether a row needs rebinding.
+ */
+public final class FeedItem {
+
+    private final String id;
+    private final String title;
+    private final String channelName;
+    private final String thumbnailUrl;
+    private final int durationSeconds;
+    private final long viewCount;
+    private final long publishedAtMillis;
+
+    public FeedItem(String id, String title, String channelName, String thumbnailUrl,
+                    int durationSeconds, long viewCount, long publishedAtMillis) {
+        this.id = Objects.requireNonNull(id, "id");
+        this.title = title;
+        this.channelName = channelName;
+        this.thumbnailUrl = thumbnailUrl;
+        this.durationSeconds = durationSeconds;
+        this.viewCount = viewCount;
+        this.publishedAtMillis = publishedAtMillis;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public String getThumbnailUrl() {
+        return thumbnailUrl;
+    }
+
+    public int getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public long getViewCount() {
+        return viewCount;
+    }
+
+    public long getPublishedAtMillis() {
+        return publishedAtMillis;
+    }
+
+    /**
+     * @return True if both entries describe the same video, regardless of content changes
+     */
+    public boolean isSameItem(FeedItem other) {
+        return id.equals(other.id);
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof FeedItem)) {
+            return false;
+        }
+        FeedItem other = (FeedItem) o;
+        return durationSeconds == other.durationSeconds
+            && viewCount == other.viewCount
+            && publishedAtMillis == other.publishedAtMillis
+            && id.equals(other.id)
+            && Objects.equals(title, other.title)
+            && Objects.equals(channelName, other.channelName)
+            && Objects.equals(thumbnailUrl, other.thumbnailUrl);
+    }
+
+    @Override
+    public int hashCode() {
+        return id.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "FeedItem[" + id + ", " + title + "]";
+    }
+}
@@ -0,0 +1,193 @@
+package com.nidoham.streamly.feed;
+
+import com.nidoham.streamly.json.JsonStreamReader;
+import com.nidoham.streamly.json.StringInterner;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Consumer;
+
+/**
+ * Streams a feed page payload into {@link FeedItem}s without building a JSON tree.
+ * Expected shape, unknown fields are skipped and items without an id are dropped:
+ * <pre>
+ * {"items": [{"id": "...", "title": "...", "channel": "...", "thumbnail": "...",
+ *             "duration": 253 | "4:13" | "PT4M13S", "views": 1234 | "1234", "published": 1700000000000}],
+ *  "next": "cursor" | null}
+ * </pre>
+ * Channel names and keys are interned across pages; one parser may be used from several threads.
+ */
+public final class FeedJsonParser {
+
+    private static final int INTERNER_SLOTS = 4096;
+
+    private final StringInterner interner = new StringInterner(INTERNER_SLOTS);
+
+    /**
+     * Parses a buffered response body into a page
+     */
+    public FeedPage parsePage(byte[] body) throws IOException {
+        List<FeedItem> items = new ArrayList<>();
+        String next = parse(new JsonStreamReader(body, interner), items::add);
+        return new FeedPage(items, next);
+    }
+
+    /**
+     * Parses from a stream, handing over each item as soon as its object closes,
+     * so the caller can show the first rows while the rest is still arriving
+     * @param sink Receives items in document order on the calling thread
+     * @return The next page cursor, null on the last page
+     */
+    public String parse(InputStream in, Consumer<FeedItem> sink) throws IOException {
+        try (JsonStreamReader reader = new JsonStreamReader(in, interner)) {
+            return parse(reader, sink);
+        }
+    }
+
+    private String parse(JsonStreamReader reader, Consumer<FeedItem> sink) throws IOException {
+        String next = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            switch (reader.nextName()) {
+                case "items":
+                    reader.beginArray();
+                    while (reader.hasNext()) {
+                        FeedItem item = readItem(reader);
+                        if (item != null) {
+                            sink.accept(item);
+                        }
+                    }
+                    reader.endArray();
+                    break;
+                case "next":
+                    next = reader.skipNull() ? null : reader.nextString();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return next;
+    }
+
+    private FeedItem readItem(JsonStreamReader reader) throws IOException {
+        if (reader.skipNull()) {
+            return null;
+        }
+        String id = null;
+        String title = null;
+        String channelName = null;
+        String thumbnailUrl = null;
+        int durationSeconds = 0;
+        long viewCount = 0;
+        long publishedAtMillis = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (reader.skipNull()) {
+                continue;
+            }
+            switch (name) {
+                case "id":
+                    id = reader.nextString();
+                    break;
+                case "title":
+                    title = reader.nextString();
+                    break;
+                case "channel":
+                case "channelName":
+                    channelName = reader.nextInternedString();
+                    break;
+                case "thumbnail":
+                case "thumbnailUrl":
+                    thumbnailUrl = reader.nextString();
+                    break;
+                case "duration":
+                    durationSeconds = readDuration(reader);
+                    break;
+                case "views":
+                case "viewCount":
+                    viewCount = reader.nextLong();
+                    break;
+                case "published":
+                case "publishedAt":
+                    publishedAtMillis = reader.nextLong();
+                    break;
+                default:
+                    reader.skipValue();
+                    break;
+            }
+        }
+        reader.endObject();
+        return id != null ? new FeedItem(id, title, channelName, thumbnailUrl, durationSeconds, viewCount,
+            publishedAtMillis) : null;
+    }
+
+    /**
+     * Accepts seconds as a number, "H:MM:SS" / "M:SS" or ISO 8601 "PT#H#M#S"; anything else reads as 0
+     */
+    private static int readDuration(JsonStreamReader reader) throws IOException {
+        if (reader.peek() == JsonStreamReader.Token.NUMBER) {
+            return reader.nextInt();
+        }
+        CharSequence text = reader.nextCharSequence();
+        return text.length() > 1 && text.charAt(0) == 'P' ? parseIsoDuration(text) : parseClockDuration(text);
+    }
+
+    static int parseClockDuration(CharSequence text) {
+        int total = 0;
+        int field = 0;
+        boolean digits = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                field = field * 10 + (c - '0');
+                digits = true;
+            } else if (c == ':' && digits) {
+                total = total * 60 + field;
+                field = 0;
+                digits = false;
+            } else {
+                return 0;
+            }
+        }
+        return digits ? total * 60 + field : 0;
+    }
+
+    static int parseIsoDuration(CharSequence text) {
+        int total = 0;
+        int field = 0;
+        boolean inTime = false;
+        for (int i = 1; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c >= '0' && c <= '9') {
+                field = field * 10 + (c - '0');
+                continue;
+            }
+            switch (c) {
+                case 'T':
+                    inTime = true;
+                    break;
+                case 'D':
+                    total += field * 86_400;
+                    break;
+                case 'H':
+                    total += field * 3_600;
+                    break;
+                case 'M':
+                    // Months are meaningless for a video length, only minutes are honoured
+                    total += inTime ? field * 60 : 0;
+                    break;
+                case 'S':
+                    total += field;
+                    break;
+                default:
+                    return 0;
+            }
+            field = 0;
+        }
+        return total;
+    }
+}
@@ -0,0 +1,34 @@
+package com.nidoham.streamly.feed;
+
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * One page of a cursor-paged feed
+ */
+public final class FeedPage {
+
+    private final List<FeedItem> items;
+    private final String nextCursor;
+
+    /**
+     * @param items Entries in display order
+     * @param nextCursor Opaque cursor of the following page, or null if this is the last page
+     */
+    public FeedPage(List<FeedItem> items, String nextCursor) {
+        this.items = Collections.unmodifiableList(items);
+        this.nextCursor = nextCursor;
+    }
+
+    public List<FeedItem> getItems() {
+        return items;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public boolean isLast() {
+        return nextCursor == null;
+    }
+}
@@ -0,0 +1,69 @@
+package com.nidoham.streamly.feed;
+
+import com.nidoham.streamly.data.Codec;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Compact binary form of a feed page for the disk cache
+ */
+public final class FeedPageCodec implements Codec<FeedPage> {
+
+    private static final int VERSION = 1;
+
+    @Override
+    public byte[] encode(FeedPage page) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64 + page.getItems().size() * 96);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        writeNullable(out, page.getNextCursor());
+        out.writeInt(page.getItems().size());
+        for (FeedItem item : page.getItems()) {
+            out.writeUTF(item.getId());
+            writeNullable(out, item.getTitle());
+            writeNullable(out, item.getChannelName());
+            writeNullable(out, item.getThumbnailUrl());
+            out.writeInt(item.getDurationSeconds());
+            out.writeLong(item.getViewCount());
+            out.writeLong(item.getPublishedAtMillis());
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    @Override
+    public FeedPage decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported feed page version " + version);
+        }
+        String nextCursor = readNullable(in);
+        int count = in.readInt();
+        if (count < 0 || count > data.length) {
+            throw new IOException("Corrupt item count " + count);
+        }
+        List<FeedItem> items = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            items.add(new FeedItem(in.readUTF(), readNullable(in), readNullable(in), readNullable(in),
+                in.readInt(), in.readLong(), in.readLong()));
+        }
+        return new FeedPage(items, nextCursor);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
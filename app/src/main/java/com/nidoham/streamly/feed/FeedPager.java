@@ -0,0 +1,303 @@
+package com.nidoham.streamly.feed;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.function.LongSupplier;
+
+/**
+ * Cursor pager that keeps a bounded window of pages over an arbitrarily long feed.
+ * Pages are appended or prepended as the viewport comes within the prefetch distance of either
+ * edge, and once the window exceeds its page limit the page farthest from the viewport is dropped;
+ * its cursor is kept so it can be reloaded when scrolled back to. Each change publishes an immutable
+ * snapshot for the UI to diff against.
+ *
+ * Loads run on the load executor. Results, listener calls and every public method belong to the
+ * callback executor's thread, which for the UI is the main thread. There is no Android code here,
+ * so the pager can be driven with direct executors and {@link LocalFeedSource} on the JVM.
+ */
+public class FeedPager {
+
+    public interface Listener {
+        /**
+         * @param items New immutable snapshot of the window
+         */
+        void onFeedChanged(List<FeedItem> items);
+
+        void onLoadError(Exception error);
+    }
+
+    private enum Direction {
+        REFRESH, APPEND, PREPEND
+    }
+
+    private static final class Page {
+        final String requestCursor;
+        final String nextCursor;
+        final List<FeedItem> items;
+
+        Page(String requestCursor, String nextCursor, List<FeedItem> items) {
+            this.requestCursor = requestCursor;
+            this.nextCursor = nextCursor;
+            this.items = items;
+        }
+    }
+
+    private static final int MIN_PAGES = 3;
+
+    private final FeedSource source;
+    private final int pageSize;
+    private final int prefetchDistance;
+    private final int maxPages;
+    private final long freshnessMillis;
+    private final Executor loadExecutor;
+    private final Executor callbackExecutor;
+    private final LongSupplier clock;
+
+    private final ArrayDeque<Page> pages = new ArrayDeque<>();
+    // Request cursors of pages dropped from the front, nearest to the window last. The first page's is null.
+    private final List<String> droppedCursors = new ArrayList<>();
+    private final Set<String> windowIds = new HashSet<>();
+    private List<FeedItem> snapshot = Collections.emptyList();
+
+    private Listener listener;
+    private boolean loading = false;
+    private boolean refreshing = false;
+    private int generation = 0;
+    private long lastRefreshMillis = -1;
+    private Exception lastError;
+    private int firstVisible = -1;
+    private int lastVisible = -1;
+
+    private long pagesLoaded = 0;
+    private long pagesDropped = 0;
+    private long duplicatesSkipped = 0;
+
+    /**
+     * @param source Source of pages
+     * @param pageSize Items requested per page
+     * @param prefetchDistance Load the next page once the viewport is this many items from an edge
+     * @param maxPages Pages kept in memory, at least three so the viewport never loses its own page
+     * @param freshnessMillis Age after which {@link #refreshIfStale()} reloads from the top
+     * @param loadExecutor Background executor the source is called on
+     * @param callbackExecutor Executor owning the pager state, usually the main thread
+     * @param clock Monotonic clock in milliseconds
+     */
+    public FeedPager(FeedSource source, int pageSize, int prefetchDistance, int maxPages, long freshnessMillis,
+                     Executor loadExecutor, Executor callbackExecutor, LongSupplier clock) {
+        this.source = source;
+        this.pageSize = Math.max(1, pageSize);
+        this.prefetchDistance = Math.max(1, Math.min(prefetchDistance, this.pageSize));
+        this.maxPages = Math.max(MIN_PAGES, maxPages);
+        this.freshnessMillis = freshnessMillis;
+        this.loadExecutor = loadExecutor;
+        this.callbackExecutor = callbackExecutor;
+        this.clock = clock;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+
+    /**
+     * Discards the window and loads the first page
+     */
+    public void refresh() {
+        generation++;
+        refreshing = true;
+        load(Direction.REFRESH, null);
+    }
+
+    /**
+     * Refreshes only if nothing has been loaded yet or the data is older than the freshness window
+     * @return True if a refresh was started
+     */
+    public boolean refreshIfStale() {
+        if (refreshing) {
+            return false;
+        }
+        if (lastRefreshMillis >= 0 && clock.getAsLong() - lastRefreshMillis < freshnessMillis) {
+            return false;
+        }
+        refresh();
+        return true;
+    }
+
+    /**
+     * Reports the visible range and loads a page if it is near either edge of the window.
+     * Positions are only meaningful against the list they were measured on, so reports for any
+     * list other than the current snapshot are remembered but not acted on.
+     * @param displayed The list the positions refer to, as currently shown by the UI
+     * @param first First visible position
+     * @param last Last visible position
+     */
+    public void onViewportChanged(List<FeedItem> displayed, int first, int last) {
+        if (displayed != snapshot) {
+            return;
+        }
+        firstVisible = first;
+        lastVisible = last;
+        maybeLoadAround();
+    }
+
+    /**
+     * Retries after a failed load using the last reported viewport
+     */
+    public void retry() {
+        lastError = null;
+        if (pages.isEmpty()) {
+            refresh();
+        } else {
+            maybeLoadAround();
+        }
+    }
+
+    private void maybeLoadAround() {
+        if (loading || lastError != null || pages.isEmpty() || firstVisible < 0) {
+            return;
+        }
+        String appendCursor = pages.peekLast().nextCursor;
+        if (appendCursor != null && lastVisible >= snapshot.size() - prefetchDistance) {
+            load(Direction.APPEND, appendCursor);
+        } else if (!droppedCursors.isEmpty() && firstVisible < prefetchDistance) {
+            load(Direction.PREPEND, droppedCursors.get(droppedCursors.size() - 1));
+        }
+    }
+
+    private void load(Direction direction, String cursor) {
+        loading = true;
+        final int requestGeneration = generation;
+        loadExecutor.execute(() -> {
+            FeedPage page = null;
+            Exception error = null;
+            try {
+                page = source.loadPage(cursor, pageSize);
+            } catch (Exception e) {
+                error = e;
+            }
+            final FeedPage result = page;
+            final Exception failure = error;
+            callbackExecutor.execute(() -> onLoaded(requestGeneration, direction, cursor, result, failure));
+        });
+    }
+
+    private void onLoaded(int requestGeneration, Direction direction, String cursor, FeedPage page, Exception error) {
+        // A refresh started since owns the loading flag
+        if (requestGeneration != generation) {
+            return;
+        }
+        loading = false;
+        refreshing = false;
+        if (error != null) {
+            lastError = error;
+            if (listener != null) {
+                listener.onLoadError(error);
+            }
+            return;
+        }
+        lastError = null;
+        pagesLoaded++;
+
+        switch (direction) {
+            case REFRESH:
+                pages.clear();
+                droppedCursors.clear();
+                windowIds.clear();
+                lastRefreshMillis = clock.getAsLong();
+                pages.addLast(new Page(cursor, page.getNextCursor(), admit(page.getItems())));
+                break;
+            case APPEND:
+                pages.addLast(new Page(cursor, page.getNextCursor(), admit(page.getItems())));
+                while (pages.size() > maxPages) {
+                    Page dropped = pages.removeFirst();
+                    droppedCursors.add(dropped.requestCursor);
+                    release(dropped);
+                }
+                break;
+            case PREPEND:
+                droppedCursors.remove(droppedCursors.size() - 1);
+                pages.addFirst(new Page(cursor, page.getNextCursor(), admit(page.getItems())));
+                // The tail reloads through the previous page's next cursor, so nothing else is kept
+                while (pages.size() > maxPages) {
+                    release(pages.removeLast());
+                }
+                break;
+        }
+        publish();
+    }
+
+    /**
+     * Filters out items already in the window, which cursor feeds can repeat when new items arrive
+     */
+    private List<FeedItem> admit(List<FeedItem> items) {
+        List<FeedItem> admitted = new ArrayList<>(items.size());
+        for (FeedItem item : items) {
+            if (windowIds.add(item.getId())) {
+                admitted.add(item);
+            } else {
+                duplicatesSkipped++;
+            }
+        }
+        return admitted;
+    }
+
+    private void release(Page page) {
+        pagesDropped++;
+        for (FeedItem item : page.items) {
+            windowIds.remove(item.getId());
+        }
+    }
+
+    private void publish() {
+        int size = 0;
+        for (Page page : pages) {
+            size += page.items.size();
+        }
+        List<FeedItem> items = new ArrayList<>(size);
+        for (Page page : pages) {
+            items.addAll(page.items);
+        }
+        snapshot = Collections.unmodifiableList(items);
+        if (listener != null) {
+            listener.onFeedChanged(snapshot);
+        }
+    }
+
+    public List<FeedItem> getSnapshot() {
+        return snapshot;
+    }
+
+    public boolean isLoading() {
+        return loading;
+    }
+
+    public boolean hasMore() {
+        return pages.isEmpty() || pages.peekLast().nextCursor != null;
+    }
+
+    /**
+     * @return True if pages before the window were dropped and can be reloaded
+     */
+    public boolean hasPrevious() {
+        return !droppedCursors.isEmpty();
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public Exception getLastError() {
+        return lastError;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "FeedPager[pages=%d, items=%d, loaded=%d, dropped=%d, duplicates=%d]",
+            pages.size(), snapshot.size(), pagesLoaded, pagesDropped, duplicatesSkipped);
+    }
+}
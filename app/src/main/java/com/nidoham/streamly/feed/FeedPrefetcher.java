@@ -0,0 +1,177 @@
+package com.nidoham.streamly.feed;
+
+import android.util.Log;
+import android.view.View;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.nidoham.streamly.image.ImageLoader;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.Tasks;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Scroll listener that prefetches thumbnails for the rows a {@link PrefetchPlanner} expects next.
+ * Rows near the predicted landing zone are decoded into memory, the rest of the lookahead is only
+ * fetched to disk, and on metered networks only the decode window is fetched at all. Work for rows
+ * that fall out of the plan, e.g. because a fling went past them, is cancelled on every replan.
+ */
+@MainThread
+public class FeedPrefetcher extends RecyclerView.OnScrollListener {
+
+    private static final String TAG = "FeedPrefetcher";
+    private static final int MIN_LOOKAHEAD = 4;
+    private static final int MAX_LOOKAHEAD = 30;
+    private static final int DECODE_ROWS = 6;
+    private static final float LOOKAHEAD_SECONDS = 0.5f;
+
+    private final PrefetchPlanner planner = new PrefetchPlanner(MIN_LOOKAHEAD, MAX_LOOKAHEAD, DECODE_ROWS, LOOKAHEAD_SECONDS);
+    private final LinearLayoutManager layoutManager;
+    private final ImageLoader imageLoader;
+    private final Object owner;
+    private final boolean metered;
+    private final Set<String> wanted = new HashSet<>();
+    private List<FeedItem> items = Collections.emptyList();
+    private int thumbnailWidth = 0;
+    private int thumbnailHeight = 0;
+    private int plannedFirst = -1;
+    private int plannedLast = -1;
+    private boolean plannedBackward = false;
+
+    /**
+     * @param layoutManager Layout manager of the list
+     * @param imageLoader Loader that runs the prefetches
+     * @param owner Owner of the prefetches, the same as for the rows' own loads
+     * @param metered True if the active network costs the user money
+     */
+    public FeedPrefetcher(@NonNull LinearLayoutManager layoutManager, @NonNull ImageLoader imageLoader,
+                          @NonNull Object owner, boolean metered) {
+        this.layoutManager = layoutManager;
+        this.imageLoader = imageLoader;
+        this.owner = owner;
+        this.metered = metered;
+    }
+
+    /**
+     * @param items The list the layout manager's positions currently refer to
+     */
+    public void setItems(@NonNull List<FeedItem> items) {
+        this.items = items;
+        plannedFirst = -1;
+        replan();
+    }
+
+    /**
+     * @param width Width the rows load thumbnails at, prefetches must match it to be reused
+     * @param height Height the rows load thumbnails at
+     */
+    public void setThumbnailSize(int width, int height) {
+        thumbnailWidth = width;
+        thumbnailHeight = height;
+    }
+
+    @Override
+    public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        View firstView = layoutManager.findViewByPosition(first);
+        float offset = firstView != null && firstView.getHeight() > 0
+            ? -firstView.getTop() / (float) firstView.getHeight()
+            : 0f;
+        planner.onScrolled(System.nanoTime(), first + offset);
+        replan();
+    }
+
+    @Override
+    public void onScrollStateChanged(@NonNull RecyclerView recyclerView, int newState) {
+        if (newState == RecyclerView.SCROLL_STATE_IDLE) {
+            planner.onIdle();
+            plannedFirst = -1;
+            replan();
+        }
+    }
+
+    /**
+     * Replans only when the visible range or direction changed, not on every scrolled pixel
+     */
+    private void replan() {
+        int first = layoutManager.findFirstVisibleItemPosition();
+        int last = layoutManager.findLastVisibleItemPosition();
+        boolean backward = planner.isBackward();
+        if (first == RecyclerView.NO_POSITION || items.isEmpty()
+                || (first == plannedFirst && last == plannedLast && backward == plannedBackward)) {
+            return;
+        }
+        plannedFirst = first;
+        plannedLast = last;
+        plannedBackward = backward;
+        planner.plan(first, last, items.size());
+        if (thumbnailWidth <= 0) {
+            return;
+        }
+
+        wanted.clear();
+        int start = planner.getFetchStart();
+        int end = planner.getFetchEnd();
+        int step = start <= end ? 1 : -1;
+        for (int position = start; position != end + step && position >= 0 && position < items.size(); position += step) {
+            String url = items.get(position).getThumbnailUrl();
+            boolean decode = planner.shouldDecode(position);
+            if (url == null || (metered && !decode)) {
+                continue;
+            }
+            imageLoader.prefetch(url, thumbnailWidth, thumbnailHeight, decode, owner);
+            wanted.add(ImageLoader.keyFor(url, thumbnailWidth, thumbnailHeight));
+        }
+        imageLoader.retainPrefetches(owner, wanted);
+    }
+
+    /**
+     * @return The farthest row expected soon, in the direction of travel, for early metadata paging
+     */
+    public int getPredictedEdge() {
+        return planner.getFetchEnd();
+    }
+
+    public boolean isBackward() {
+        return planner.isBackward();
+    }
+
+    @NonNull
+    public String report() {
+        return planner + " images[hitRate=" + Math.round(imageLoader.getPrefetchHitRate() * 100)
+            + "%, wastedBytes=" + imageLoader.getWastedPrefetchBytes() + "]";
+    }
+
+    /**
+     * Writes the current report, hit rate and wasted bytes included, to a local file in the maintenance lane
+     * @param file Destination, parent directories are created as needed
+     */
+    public void dumpAsync(@NonNull File file) {
+        String report = report();
+        Tasks.getScheduler().submit(TaskPriority.MAINTENANCE, () -> {
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                Log.w(TAG, "Cannot create " + parent);
+                return null;
+            }
+            try (Writer out = new FileWriter(file, false)) {
+                out.write(report);
+                out.write('\n');
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write prefetch report", e);
+            }
+            return null;
+        });
+    }
+}
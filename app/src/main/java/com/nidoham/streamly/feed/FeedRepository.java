@@ -0,0 +1,69 @@
+package com.nidoham.streamly.feed;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import com.nidoham.streamly.data.CachedRepository;
+import com.nidoham.streamly.data.DiskJournal;
+import com.nidoham.streamly.memory.MemoryCoordinator;
+import com.nidoham.streamly.memory.MemoryTier;
+import java.io.File;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide cache of feed pages shared by every tab.
+ * Construction does no disk I/O, the journal is opened by the first background read.
+ */
+public final class FeedRepository {
+
+    private static final long MEMORY_BYTES = 2 * 1024 * 1024;
+    private static final long DISK_BYTES = 8 * 1024 * 1024;
+    private static final long TTL_MS = 5 * 60 * 1000L;
+    // Stale pages are still shown offline for a week before they expire entirely
+    private static final long MAX_AGE_MS = 7 * 24 * 60 * 60 * 1000L;
+    private static final int REVALIDATE_THREADS = 2;
+
+    private static volatile CachedRepository<FeedPage> instance;
+
+    private FeedRepository() {
+    }
+
+    @NonNull
+    public static CachedRepository<FeedPage> getInstance(@NonNull Context context) {
+        CachedRepository<FeedPage> repository = instance;
+        if (repository == null) {
+            synchronized (FeedRepository.class) {
+                repository = instance;
+                if (repository == null) {
+                    repository = create(context.getApplicationContext());
+                    instance = repository;
+                }
+            }
+        }
+        return repository;
+    }
+
+    private static CachedRepository<FeedPage> create(Context appContext) {
+        DiskJournal journal = new DiskJournal(new File(new File(appContext.getCacheDir(), "feed"), "pages.journal"),
+            DISK_BYTES, MAX_AGE_MS);
+        CachedRepository<FeedPage> repository = new CachedRepository<>("feed_pages", new FeedPageCodec(),
+            MEMORY_BYTES, journal, TTL_MS, createRevalidateExecutor(), System::currentTimeMillis);
+        MemoryCoordinator.getInstance().register("feed_pages", MemoryTier.PREFETCHED_DATA, repository.getMemoryCache());
+        return repository;
+    }
+
+    private static ExecutorService createRevalidateExecutor() {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(REVALIDATE_THREADS, REVALIDATE_THREADS,
+            30, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "feed-revalidate-" + count.incrementAndGet());
+                thread.setPriority(Thread.NORM_PRIORITY - 1);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
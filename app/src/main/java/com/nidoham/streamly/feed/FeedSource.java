@@ -0,0 +1,17 @@
+package com.nidoham.streamly.feed;
+
+import java.io.IOException;
+
+/**
+ * Blocking source of feed pages. Called from a background executor, never from the main thread.
+ */
+public interface FeedSource {
+
+    /**
+     * @param cursor Cursor returned with the previous page, or null for the first page
+     * @param pageSize Preferred number of items, sources may return fewer
+     * @return The requested page
+     * @throws IOException If the page could not be loaded or the cursor is no longer valid
+     */
+    FeedPage loadPage(String cursor, int pageSize) throws IOException;
+}
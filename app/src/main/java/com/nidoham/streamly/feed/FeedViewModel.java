@@ -0,0 +1,79 @@
+package com.nidoham.streamly.feed;
+
+import android.app.Application;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import androidx.annotation.NonNull;
+import androidx.lifecycle.AndroidViewModel;
+import com.nidoham.streamly.data.CachedRepository;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Owns a feed pager so the loaded window survives view destruction and tab hiding.
+ * Pages come through the shared {@link FeedRepository}, so a cold start renders the cached feed.
+ * Subclasses only choose the feed's name and upstream source.
+ */
+public abstract class FeedViewModel extends AndroidViewModel {
+
+    private static final int PAGE_SIZE = 20;
+    private static final int PREFETCH_DISTANCE = 8;
+    // About four screens of rows on a phone, enough to fling without hitting an unloaded edge
+    private static final int MAX_PAGES = 6;
+    private static final long FRESHNESS_MS = 5 * 60 * 1000L;
+
+    private final ExecutorService loadExecutor;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final CachedRepository<FeedPage> repository;
+    private final FeedPager pager;
+    private final CachedRepository.Listener<FeedPage> revalidationListener;
+
+    /**
+     * @param application Application for the shared repository
+     * @param feedName Name of the feed, keys its cached pages and names its loader thread
+     * @param upstream Authoritative source of the feed
+     */
+    protected FeedViewModel(@NonNull Application application, @NonNull String feedName, @NonNull FeedSource upstream) {
+        super(application);
+        loadExecutor = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, feedName + "-feed-loader");
+            thread.setPriority(Thread.NORM_PRIORITY - 1);
+            return thread;
+        });
+        repository = FeedRepository.getInstance(application);
+        CachingFeedSource source = new CachingFeedSource(feedName, upstream, repository);
+        pager = new FeedPager(source, PAGE_SIZE, PREFETCH_DISTANCE, MAX_PAGES, FRESHNESS_MS,
+            loadExecutor, mainHandler::post, SystemClock::elapsedRealtime);
+
+        // Revalidation runs on a background thread, the pager is only touched on the main thread
+        revalidationListener = (key, page) -> {
+            if (source.isFirstPageKey(key)) {
+                mainHandler.post(this::onFirstPageRevalidated);
+            }
+        };
+        repository.addListener(revalidationListener);
+    }
+
+    /**
+     * Swaps in the revalidated first page, unless the user has already scrolled past it
+     */
+    private void onFirstPageRevalidated() {
+        if (pager.getPageCount() <= 1 && !pager.hasPrevious()) {
+            pager.refresh();
+        }
+    }
+
+    @NonNull
+    public FeedPager getPager() {
+        return pager;
+    }
+
+    @Override
+    protected void onCleared() {
+        repository.removeListener(revalidationListener);
+        mainHandler.removeCallbacksAndMessages(null);
+        pager.setListener(null);
+        loadExecutor.shutdownNow();
+    }
+}
@@ -0,0 +1,14 @@
+package com.nidoham.streamly.feed;
+
+import android.app.Application;
+import androidx.annotation.NonNull;
+
+/**
+ * Recommended videos shown on the home tab
+ */
+public class HomeFeedViewModel extends FeedViewModel {
+
+    public HomeFeedViewModel(@NonNull Application application) {
+        super(application, "home", new LocalFeedSource("home_", 5_000, 150, System.currentTimeMillis()));
+    }
+}
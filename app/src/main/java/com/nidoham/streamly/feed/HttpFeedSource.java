@@ -0,0 +1,46 @@
+package com.nidoham.streamly.feed;
+
+import com.nidoham.streamly.net.HttpRequest;
+import com.nidoham.streamly.net.HttpResponse;
+import com.nidoham.streamly.net.HttpTransport;
+import com.nidoham.streamly.net.RequestPriority;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Loads feed pages from an HTTP endpoint answering {@code GET <endpoint>?limit=<n>[&cursor=<c>]}
+ * with the payload described in {@link FeedJsonParser}. The first page is what the user waits for,
+ * so it goes out at {@link RequestPriority#IMMEDIATE}; later pages are prefetches of a sort.
+ */
+public class HttpFeedSource implements FeedSource {
+
+    private final HttpTransport transport;
+    private final String endpoint;
+    private final FeedJsonParser parser;
+
+    /**
+     * @param endpoint Absolute URL without query
+     * @param parser Parser, shared between sources so they share its interned strings
+     */
+    public HttpFeedSource(HttpTransport transport, String endpoint, FeedJsonParser parser) {
+        this.transport = transport;
+        this.endpoint = endpoint;
+        this.parser = parser;
+    }
+
+    @Override
+    public FeedPage loadPage(String cursor, int pageSize) throws IOException {
+        StringBuilder url = new StringBuilder(endpoint).append("?limit=").append(pageSize);
+        if (cursor != null) {
+            url.append("&cursor=").append(URLEncoder.encode(cursor, StandardCharsets.UTF_8.name()));
+        }
+        HttpResponse response = transport.execute(HttpRequest.get(url.toString())
+            .withHeader("Accept", "application/json")
+            .withPriority(cursor == null ? RequestPriority.IMMEDIATE : RequestPriority.NORMAL));
+        if (!response.isSuccessful()) {
+            throw new IOException("HTTP " + response.getCode() + " for " + url);
+        }
+        return parser.parsePage(response.getBody());
+    }
+}
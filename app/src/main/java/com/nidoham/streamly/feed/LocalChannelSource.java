@@ -0,0 +1,82 @@
+package com.nidoham.streamly.feed;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.LongSupplier;
+
+/**
+ * Deterministic in-process channels that keep uploading as the clock advances, each on its own
+ * schedule. Stands in for the subscriptions backend and drives {@link SubscriptionTimeline} on the JVM.
+ */
+public class LocalChannelSource implements ChannelSource {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    private final long latencyMillis;
+    private final LongSupplier clock;
+
+    /**
+     * @param latencyMillis Simulated latency per batch, 0 for none
+     * @param clock Wall clock in milliseconds, uploads published after it do not exist yet
+     */
+    public LocalChannelSource(long latencyMillis, LongSupplier clock) {
+        this.latencyMillis = latencyMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @return Ids of the first count channels, the subscription list of a local user
+     */
+    public static List<String> channelIds(int count) {
+        List<String> ids = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            ids.add("ch" + i);
+        }
+        return ids;
+    }
+
+    @Override
+    public List<List<FeedItem>> loadSince(List<String> channelIds, long[] sinceMillis, int limit) throws IOException {
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Channel batch interrupted");
+            }
+        }
+        long now = clock.getAsLong();
+        List<List<FeedItem>> result = new ArrayList<>(channelIds.size());
+        for (int i = 0; i < channelIds.size(); i++) {
+            result.add(uploads(channelIds.get(i), sinceMillis[i], limit, now));
+        }
+        return result;
+    }
+
+    private static List<FeedItem> uploads(String channelId, long sinceMillis, int limit, long now) throws IOException {
+        int channel = parseChannel(channelId);
+        // Between a few uploads a day and one every few days
+        long interval = (4 + (channel * 7L) % 80) * HOUR_MILLIS;
+        long phase = (channel * 7_919L * 60_000L) % interval;
+        List<FeedItem> items = new ArrayList<>();
+        for (long upload = Math.floorDiv(now - phase, interval); items.size() < limit; upload--) {
+            long publishedAt = upload * interval + phase;
+            if (publishedAt < sinceMillis || publishedAt < 0) {
+                break;
+            }
+            items.add(new FeedItem(channelId + "_" + upload, "Upload " + upload, "Channel " + (channel + 1), null,
+                60 + (int) ((upload * 37) % 1200), 1_000L + (upload * 7_919L) % 2_000_000L, publishedAt));
+        }
+        return items;
+    }
+
+    private static int parseChannel(String channelId) throws IOException {
+        try {
+            return Integer.parseInt(channelId.substring(2));
+        } catch (RuntimeException e) {
+            throw new IOException("Unknown channel " + channelId, e);
+        }
+    }
+}
@@ -0,0 +1,90 @@
+package com.nidoham.streamly.feed;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Deterministic in-process feed of generated videos. Stands in for the network until a backend
+ * is wired up, and doubles as the fake source when exercising the pager on the JVM.
+ * Cursors are item offsets.
+ */
+public class LocalFeedSource implements FeedSource {
+
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+
+    private final String idPrefix;
+    private final int totalItems;
+    private final long latencyMillis;
+    private final long newestPublishedAtMillis;
+
+    /**
+     * @param idPrefix Prefix keeping ids unique between feeds
+     * @param totalItems Number of items before the feed ends
+     * @param latencyMillis Simulated per-page latency, 0 for none
+     * @param newestPublishedAtMillis Publish time of the first item, later items are an hour apart
+     */
+    public LocalFeedSource(String idPrefix, int totalItems, long latencyMillis, long newestPublishedAtMillis) {
+        this.idPrefix = idPrefix;
+        this.totalItems = totalItems;
+        this.latencyMillis = latencyMillis;
+        this.newestPublishedAtMillis = newestPublishedAtMillis;
+    }
+
+    @Override
+    public FeedPage loadPage(String cursor, int pageSize) throws IOException {
+        int offset = parseCursor(cursor);
+        if (latencyMillis > 0) {
+            try {
+                Thread.sleep(latencyMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Page load interrupted");
+            }
+        }
+
+        int end = Math.min(totalItems, offset + Math.max(1, pageSize));
+        List<FeedItem> items = new ArrayList<>(end - offset);
+        for (int index = offset; index < end; index++) {
+            items.add(createItem(index));
+        }
+        return new FeedPage(items, end < totalItems ? String.valueOf(end) : null);
+    }
+
+    private int parseCursor(String cursor) throws IOException {
+        if (cursor == null) {
+            return 0;
+        }
+        try {
+            int offset = Integer.parseInt(cursor);
+            if (offset < 0 || offset > totalItems) {
+                throw new IOException("Cursor out of range: " + cursor);
+            }
+            return offset;
+        } catch (NumberFormatException e) {
+            throw new IOException("Malformed cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * @param index Position of the item in the full feed
+     * @return The item at that position, identical on every call
+     */
+    public FeedItem createItem(int index) {
+        String id = idPrefix + index;
+        return new FeedItem(
+            id,
+            "Video " + (index + 1),
+            "Channel " + (index % 25 + 1),
+            null,
+            60 + (index * 37) % 1200,
+            1_000L + (index * 7919L) % 2_000_000L,
+            newestPublishedAtMillis - index * HOUR_MILLIS
+        );
+    }
+
+    public int getTotalItems() {
+        return totalItems;
+    }
+}
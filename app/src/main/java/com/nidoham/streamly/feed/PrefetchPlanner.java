@@ -0,0 +1,156 @@
+package com.nidoham.streamly.feed;
+
+import java.util.Locale;
+
+/**
+ * Predicts which rows of a vertical list are about to become visible.
+ * Scroll velocity in rows per second is smoothed from successive positions, and the lookahead
+ * grows with it in the direction of travel. Rows close to the viewport are worth decoding, rows
+ * further out only worth fetching; a fast fling pushes the decode window past the rows it will
+ * fly over. Pure Java so predictions can be replayed from recorded scroll traces.
+ */
+public class PrefetchPlanner {
+
+    // Smoothing factor of the velocity average, higher reacts faster
+    private static final float VELOCITY_ALPHA = 0.3f;
+    // Above this, rows right next to the viewport scroll past before a decode could finish
+    private static final float FLING_ROWS_PER_SECOND = 40f;
+
+    private final int minLookahead;
+    private final int maxLookahead;
+    private final int decodeRows;
+    private final float lookaheadSeconds;
+
+    private long lastTimeNanos = -1;
+    private float lastPosition;
+    private float velocity = 0f;
+
+    private int decodeStart = -1;
+    private int decodeEnd = -1;
+    private int fetchStart = -1;
+    private int fetchEnd = -1;
+
+    private long plans = 0;
+    private long flingPlans = 0;
+
+    /**
+     * @param minLookahead Rows prefetched ahead of an idle or slow list
+     * @param maxLookahead Upper bound on rows ahead, however fast the list moves
+     * @param decodeRows Rows nearest the predicted landing zone that are fully decoded
+     * @param lookaheadSeconds How far ahead in time the prediction reaches
+     */
+    public PrefetchPlanner(int minLookahead, int maxLookahead, int decodeRows, float lookaheadSeconds) {
+        this.minLookahead = Math.max(1, minLookahead);
+        this.maxLookahead = Math.max(this.minLookahead, maxLookahead);
+        this.decodeRows = Math.max(1, Math.min(decodeRows, this.maxLookahead));
+        this.lookaheadSeconds = lookaheadSeconds;
+    }
+
+    /**
+     * Feeds a scroll sample
+     * @param timeNanos Monotonic time of the sample
+     * @param position Continuous scroll position in rows, e.g. first visible row plus the fraction scrolled off
+     */
+    public void onScrolled(long timeNanos, float position) {
+        if (lastTimeNanos >= 0 && timeNanos > lastTimeNanos) {
+            float instant = (position - lastPosition) * 1e9f / (timeNanos - lastTimeNanos);
+            velocity += VELOCITY_ALPHA * (instant - velocity);
+        }
+        lastTimeNanos = timeNanos;
+        lastPosition = position;
+    }
+
+    /**
+     * Called when the list comes to rest, so a stale fling velocity does not skew the next plan
+     */
+    public void onIdle() {
+        velocity = 0f;
+        lastTimeNanos = -1;
+    }
+
+    /**
+     * Recomputes the decode and fetch windows around the viewport
+     * @param first First visible row
+     * @param last Last visible row
+     * @param itemCount Rows currently in the list
+     */
+    public void plan(int first, int last, int itemCount) {
+        plans++;
+        float speed = Math.abs(velocity);
+        int lookahead = (int) Math.min(maxLookahead, minLookahead + speed * lookaheadSeconds);
+        boolean backward = velocity < 0;
+        // Rows the fling will cross before a decode started now could be shown
+        int skip = 0;
+        if (speed > FLING_ROWS_PER_SECOND) {
+            flingPlans++;
+            skip = Math.max(0, Math.min(lookahead - decodeRows, (int) (speed * 0.1f)));
+        }
+
+        if (!backward) {
+            int start = last + 1;
+            int end = Math.min(itemCount - 1, last + lookahead);
+            decodeStart = Math.min(end + 1, start + skip);
+            decodeEnd = Math.min(end, decodeStart + decodeRows - 1);
+            fetchStart = start;
+            fetchEnd = end;
+        } else {
+            int start = first - 1;
+            int end = Math.max(0, first - lookahead);
+            decodeStart = Math.max(end - 1, start - skip);
+            decodeEnd = Math.max(end, decodeStart - decodeRows + 1);
+            fetchStart = start;
+            fetchEnd = end;
+        }
+    }
+
+    /**
+     * @return True if the current plan walks toward the top of the list
+     */
+    public boolean isBackward() {
+        return velocity < 0;
+    }
+
+    /**
+     * @param position A row
+     * @return True if the row should be decoded into memory ahead of time
+     */
+    public boolean shouldDecode(int position) {
+        return isBackward()
+            ? position <= decodeStart && position >= decodeEnd
+            : position >= decodeStart && position <= decodeEnd;
+    }
+
+    /**
+     * @param position A row
+     * @return True if the row is anywhere in the lookahead, decoded or fetch-only
+     */
+    public boolean shouldFetch(int position) {
+        return isBackward()
+            ? position <= fetchStart && position >= fetchEnd
+            : position >= fetchStart && position <= fetchEnd;
+    }
+
+    /**
+     * @return The row the plan starts from, nearest to the viewport
+     */
+    public int getFetchStart() {
+        return fetchStart;
+    }
+
+    /**
+     * @return The farthest row of the lookahead, which also bounds how early metadata pages load
+     */
+    public int getFetchEnd() {
+        return fetchEnd;
+    }
+
+    public float getVelocityRowsPerSecond() {
+        return velocity;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "PrefetchPlanner[velocity=%.1f rows/s, decode=%d..%d, fetch=%d..%d, plans=%d, flings=%d]",
+            velocity, decodeStart, decodeEnd, fetchStart, fetchEnd, plans, flingPlans);
+    }
+}
@@ -0,0 +1,23 @@
+package com.nidoham.streamly.feed;
+
+import android.app.Application;
+import androidx.annotation.NonNull;
+
+/**
+ * Videos from subscribed channels shown on the subscription tab, merged into one timeline
+ */
+public class SubscriptionFeedViewModel extends FeedViewModel {
+
+    private static final int SUBSCRIBED_CHANNELS = 500;
+    private static final int CHANNELS_PER_REQUEST = 50;
+    private static final int REQUESTS_IN_FLIGHT = 4;
+    // A few screens per channel; older uploads are rarely scrolled to and bound the memory held
+    private static final int ITEMS_PER_CHANNEL = 30;
+
+    public SubscriptionFeedViewModel(@NonNull Application application) {
+        super(application, "subscriptions", new SubscriptionTimeline(
+            new LocalChannelSource(40, System::currentTimeMillis),
+            LocalChannelSource.channelIds(SUBSCRIBED_CHANNELS), CHANNELS_PER_REQUEST, REQUESTS_IN_FLIGHT,
+            ITEMS_PER_CHANNEL));
+    }
+}
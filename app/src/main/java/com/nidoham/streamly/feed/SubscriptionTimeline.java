@@ -0,0 +1,418 @@
+package com.nidoham.streamly.feed;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * One time-ordered feed over many subscribed channels.
+ * A refresh asks the {@link ChannelSource} only for items at or after each channel's high-water
+ * mark, in batches with a bounded number in flight, and prepends what is new to that channel's
+ * newest-first list. Pages are never built by concatenating and sorting: a heap over the channels'
+ * heads merges the already sorted lists and stops after one page, so a page costs
+ * O(channels log items + page log channels) however much is retained.
+ * The cursor is the sort key of the page's last item, so it stays valid across refreshes.
+ * Loading the first page refreshes; later pages come from memory.
+ */
+public class SubscriptionTimeline implements FeedSource {
+
+    /**
+     * Newest first, ties by id so every item has one place
+     */
+    static final Comparator<FeedItem> NEWEST_FIRST = (a, b) -> {
+        int byTime = Long.compare(b.getPublishedAtMillis(), a.getPublishedAtMillis());
+        return byTime != 0 ? byTime : a.getId().compareTo(b.getId());
+    };
+
+    private static final FeedItem[] NO_ITEMS = new FeedItem[0];
+
+    private static final class Channel {
+        final String id;
+        // Newest first, at most maxItemsPerChannel
+        FeedItem[] items = NO_ITEMS;
+        // Publish time of the newest item seen, the next refresh asks from here
+        long highWaterMillis = 0;
+        // Items published exactly at the mark come back again and are recognised by id
+        String[] idsAtHighWater = new String[0];
+
+        Channel(String id) {
+            this.id = id;
+        }
+    }
+
+    private final ChannelSource source;
+    private final int batchSize;
+    private final int parallelism;
+    private final int maxItemsPerChannel;
+    private final ThreadPoolExecutor fetchExecutor;
+    private final Object refreshLock = new Object();
+
+    // Guarded by this
+    private final Map<String, Channel> channels = new HashMap<>();
+    private Channel[] order = new Channel[0];
+
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private volatile long lastRefreshMillis;
+    private volatile int lastItemsFetched;
+    private volatile int lastChannelsChanged;
+    private volatile int lastBatchesFailed;
+
+    /**
+     * @param source Where channel uploads come from
+     * @param channelIds Subscribed channels
+     * @param batchSize Channels per source call
+     * @param parallelism Source calls in flight during a refresh
+     * @param maxItemsPerChannel Items retained per channel, older ones fall off the end of the timeline
+     */
+    public SubscriptionTimeline(ChannelSource source, List<String> channelIds, int batchSize, int parallelism,
+                                int maxItemsPerChannel) {
+        this.source = source;
+        this.batchSize = Math.max(1, batchSize);
+        this.parallelism = Math.max(1, parallelism);
+        this.maxItemsPerChannel = Math.max(1, maxItemsPerChannel);
+        AtomicInteger threadCount = new AtomicInteger();
+        fetchExecutor = new ThreadPoolExecutor(this.parallelism, this.parallelism, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "subscriptions-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        fetchExecutor.allowCoreThreadTimeOut(true);
+        setChannels(channelIds);
+    }
+
+    /**
+     * Replaces the subscription list, keeping what is known about channels still in it
+     */
+    public synchronized void setChannels(List<String> channelIds) {
+        Map<String, Channel> kept = new HashMap<>(channels);
+        channels.clear();
+        List<Channel> newOrder = new ArrayList<>(channelIds.size());
+        for (String id : channelIds) {
+            if (channels.containsKey(id)) {
+                continue;
+            }
+            Channel channel = kept.get(id);
+            if (channel == null) {
+                channel = new Channel(id);
+            }
+            channels.put(id, channel);
+            newOrder.add(channel);
+        }
+        order = newOrder.toArray(new Channel[0]);
+    }
+
+    @Override
+    public FeedPage loadPage(String cursor, int pageSize) throws IOException {
+        if (cursor == null) {
+            refresh();
+        }
+        return page(cursor == null ? null : parseCursor(cursor), Math.max(1, pageSize));
+    }
+
+    /**
+     * Fetches what each channel published since its high-water mark.
+     * Channels of failed batches keep their marks and catch up next time.
+     * @return Number of new items
+     * @throws IOException If every batch failed
+     */
+    public int refresh() throws IOException {
+        // Concurrent refreshes would fetch the same deltas twice, the second one finds little left
+        synchronized (refreshLock) {
+            long start = System.nanoTime();
+            Channel[] snapshot;
+            long[] marks;
+            synchronized (this) {
+                snapshot = order;
+                marks = new long[snapshot.length];
+                for (int i = 0; i < snapshot.length; i++) {
+                    marks[i] = snapshot[i].highWaterMillis;
+                }
+            }
+            int batchCount = (snapshot.length + batchSize - 1) / batchSize;
+            AtomicReferenceArray<List<List<FeedItem>>> results = new AtomicReferenceArray<>(batchCount);
+            AtomicReference<IOException> failure = new AtomicReference<>();
+            fetchAll(snapshot, marks, results, failure);
+            int failedBatches = 0;
+            for (int batch = 0; batch < batchCount; batch++) {
+                if (results.get(batch) == null) {
+                    failedBatches++;
+                }
+            }
+            if (batchCount > 0 && failedBatches == batchCount) {
+                throw failure.get();
+            }
+
+            int fetched = 0;
+            int changed = 0;
+            synchronized (this) {
+                for (int batch = 0; batch < batchCount; batch++) {
+                    List<List<FeedItem>> deltas = results.get(batch);
+                    if (deltas == null) {
+                        continue;
+                    }
+                    for (int i = 0; i < deltas.size(); i++) {
+                        Channel channel = snapshot[batch * batchSize + i];
+                        if (channels.get(channel.id) != channel) {
+                            // Unsubscribed while the batch was in flight
+                            continue;
+                        }
+                        int added = apply(channel, deltas.get(i));
+                        fetched += added;
+                        if (added > 0) {
+                            changed++;
+                        }
+                    }
+                }
+            }
+            refreshes.incrementAndGet();
+            lastRefreshMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+            lastItemsFetched = fetched;
+            lastChannelsChanged = changed;
+            lastBatchesFailed = failedBatches;
+            return fetched;
+        }
+    }
+
+    /**
+     * Runs the batches on at most parallelism threads, each pulling the next batch when done
+     */
+    private void fetchAll(Channel[] snapshot, long[] marks, AtomicReferenceArray<List<List<FeedItem>>> results,
+                          AtomicReference<IOException> failure) throws IOException {
+        int batchCount = results.length();
+        int workers = Math.min(parallelism, batchCount);
+        AtomicInteger nextBatch = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(workers);
+        for (int w = 0; w < workers; w++) {
+            fetchExecutor.execute(() -> {
+                try {
+                    for (int batch = nextBatch.getAndIncrement(); batch < batchCount;
+                         batch = nextBatch.getAndIncrement()) {
+                        int from = batch * batchSize;
+                        int to = Math.min(snapshot.length, from + batchSize);
+                        List<String> ids = new ArrayList<>(to - from);
+                        for (int i = from; i < to; i++) {
+                            ids.add(snapshot[i].id);
+                        }
+                        try {
+                            List<List<FeedItem>> deltas = source.loadSince(ids, Arrays.copyOfRange(marks, from, to),
+                                maxItemsPerChannel);
+                            if (deltas.size() != ids.size()) {
+                                throw new IOException("Expected " + ids.size() + " channels, got " + deltas.size());
+                            }
+                            results.set(batch, deltas);
+                        } catch (IOException | RuntimeException e) {
+                            failure.set(e instanceof IOException ? (IOException) e : new IOException(e));
+                        }
+                    }
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        try {
+            done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Refresh interrupted");
+        }
+    }
+
+    /**
+     * Prepends the new part of a delta, which is sorted newest first like the channel's list
+     * @return Number of items added
+     */
+    private int apply(Channel channel, List<FeedItem> delta) {
+        List<FeedItem> fresh = new ArrayList<>(delta.size());
+        for (FeedItem item : delta) {
+            if (item.getPublishedAtMillis() < channel.highWaterMillis
+                || (item.getPublishedAtMillis() == channel.highWaterMillis
+                    && Arrays.asList(channel.idsAtHighWater).contains(item.getId()))) {
+                continue;
+            }
+            fresh.add(item);
+        }
+        if (fresh.isEmpty()) {
+            return 0;
+        }
+        fresh.sort(NEWEST_FIRST);
+        // A full delta may have skipped items, so it replaces the list rather than leave a gap
+        int keptOld = delta.size() >= maxItemsPerChannel ? 0
+            : Math.min(channel.items.length, maxItemsPerChannel - fresh.size());
+        FeedItem[] merged = new FeedItem[Math.min(maxItemsPerChannel, fresh.size()) + keptOld];
+        for (int i = 0; i < merged.length - keptOld; i++) {
+            merged[i] = fresh.get(i);
+        }
+        System.arraycopy(channel.items, 0, merged, merged.length - keptOld, keptOld);
+        channel.items = merged;
+
+        long mark = merged[0].getPublishedAtMillis();
+        List<String> idsAtMark = new ArrayList<>();
+        for (FeedItem item : merged) {
+            if (item.getPublishedAtMillis() != mark) {
+                break;
+            }
+            idsAtMark.add(item.getId());
+        }
+        channel.highWaterMillis = mark;
+        channel.idsAtHighWater = idsAtMark.toArray(new String[0]);
+        return fresh.size();
+    }
+
+    /**
+     * Merges the channels' lists from just after the cursor, stopping after one page
+     */
+    private synchronized FeedPage page(FeedItem after, int pageSize) {
+        Channel[] channels = order;
+        // Min-heap of channel indices keyed by each channel's next item
+        int[] heap = new int[channels.length];
+        int[] position = new int[channels.length];
+        int heapSize = 0;
+        for (int c = 0; c < channels.length; c++) {
+            FeedItem[] items = channels[c].items;
+            int start = after == null ? 0 : firstAfter(items, after);
+            if (start < items.length) {
+                position[c] = start;
+                heap[heapSize] = c;
+                siftUp(heap, heapSize++, channels, position);
+            }
+        }
+        List<FeedItem> page = new ArrayList<>(pageSize);
+        while (page.size() < pageSize && heapSize > 0) {
+            int c = heap[0];
+            page.add(channels[c].items[position[c]++]);
+            if (position[c] == channels[c].items.length) {
+                heap[0] = heap[--heapSize];
+            }
+            siftDown(heap, heapSize, channels, position);
+        }
+        String next = heapSize > 0 && !page.isEmpty() ? cursorOf(page.get(page.size() - 1)) : null;
+        return new FeedPage(page, next);
+    }
+
+    private static boolean before(int a, int b, Channel[] channels, int[] position) {
+        return NEWEST_FIRST.compare(channels[a].items[position[a]], channels[b].items[position[b]]) < 0;
+    }
+
+    private static void siftUp(int[] heap, int index, Channel[] channels, int[] position) {
+        int value = heap[index];
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (!before(value, heap[parent], channels, position)) {
+                break;
+            }
+            heap[index] = heap[parent];
+            index = parent;
+        }
+        heap[index] = value;
+    }
+
+    private static void siftDown(int[] heap, int size, Channel[] channels, int[] position) {
+        if (size == 0) {
+            return;
+        }
+        int index = 0;
+        int value = heap[0];
+        while (true) {
+            int child = 2 * index + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && before(heap[child + 1], heap[child], channels, position)) {
+                child++;
+            }
+            if (!before(heap[child], value, channels, position)) {
+                break;
+            }
+            heap[index] = heap[child];
+            index = child;
+        }
+        heap[index] = value;
+    }
+
+    /**
+     * @return Index of the first item sorting after the given one
+     */
+    private static int firstAfter(FeedItem[] items, FeedItem after) {
+        int low = 0;
+        int high = items.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (NEWEST_FIRST.compare(items[mid], after) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    private static String cursorOf(FeedItem item) {
+        return item.getPublishedAtMillis() + ":" + item.getId();
+    }
+
+    /**
+     * @return A key-only item standing for the cursor's position
+     */
+    private static FeedItem parseCursor(String cursor) throws IOException {
+        int colon = cursor.indexOf(':');
+        try {
+            return new FeedItem(cursor.substring(colon + 1), null, null, null, 0, 0,
+                Long.parseLong(cursor.substring(0, colon)));
+        } catch (RuntimeException e) {
+            throw new IOException("Malformed cursor: " + cursor, e);
+        }
+    }
+
+    /**
+     * @return Items currently retained across all channels
+     */
+    public synchronized int getItemCount() {
+        int count = 0;
+        for (Channel channel : order) {
+            count += channel.items.length;
+        }
+        return count;
+    }
+
+    /**
+     * @return Every retained item, grouped by channel rather than in timeline order
+     */
+    synchronized List<FeedItem> getRetainedItems() {
+        List<FeedItem> items = new ArrayList<>(getItemCount());
+        for (Channel channel : order) {
+            items.addAll(Arrays.asList(channel.items));
+        }
+        return items;
+    }
+
+    public synchronized int getChannelCount() {
+        return order.length;
+    }
+
+    public int getLastItemsFetched() {
+        return lastItemsFetched;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US,
+            "SubscriptionTimeline[channels=%d, items=%d, refreshes=%d, last: %d ms, %d new in %d channels, "
+                + "%d failed batches]",
+            getChannelCount(), getItemCount(), refreshes.get(), lastRefreshMillis, lastItemsFetched,
+            lastChannelsChanged, lastBatchesFailed);
+    }
+}
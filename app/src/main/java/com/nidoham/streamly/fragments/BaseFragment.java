@@ -1,17 +1,27 @@
 package com.nidoham.streamly.fragments;
 
+import android.content.Context;
+import android.graphics.Color;
 import android.os.Bundle;
+import android.view.Gravity;
 import android.view.View;
 import androidx.annotation.CallSuper;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import androidx.fragment.app.Fragment;
+import com.google.android.material.textview.MaterialTextView;
+import com.nidoham.streamly.image.ImageLoader;
+import com.nidoham.streamly.metrics.TabSwitchTracer;
+import com.nidoham.streamly.task.TaskScope;
+import com.nidoham.streamly.task.Tasks;
 import java.lang.ref.WeakReference;
 
 public abstract class BaseFragment extends Fragment {
     
     private WeakReference<View> viewRef;
     private boolean isViewCreated = false;
+    private View prewarmedView;
+    private TaskScope taskScope;
     
     @Override
     @CallSuper
@@ -21,6 +31,13 @@ public abstract class BaseFragment extends Fragment {
         isViewCreated = true;
     }
     
+    @Override
+    @CallSuper
+    public void onResume() {
+        super.onResume();
+        TabSwitchTracer.getInstance().onFragmentResumed();
+    }
+    
     @Override
     @CallSuper
     public void onDestroyView() {
@@ -30,6 +47,13 @@ public abstract class BaseFragment extends Fragment {
             viewRef = null;
         }
         isViewCreated = false;
+        // Image requests die with the views they were loading into
+        ImageLoader.cancelRequestsFor(this);
+        // So does background work started for them, and none of its results reach a dead view
+        if (taskScope != null) {
+            taskScope.cancel();
+            taskScope = null;
+        }
         onCleanupResources();
     }
     
@@ -41,6 +65,75 @@ public abstract class BaseFragment extends Fragment {
         return isViewValid() ? viewRef.get() : null;
     }
     
+    /**
+     * Background work for the current view. Listeners run on the main thread, and the scope is
+     * cancelled in onDestroyView, so a listener never sees a destroyed view. Main thread only.
+     */
+    @NonNull
+    protected final TaskScope getTaskScope() {
+        if (taskScope == null) {
+            taskScope = Tasks.newScope();
+        }
+        return taskScope;
+    }
+    
+    /**
+     * Call once the tab's content has been bound to its views, so tab switch latency
+     * can be measured up to the first frame that shows it
+     */
+    protected final void reportContentBound() {
+        TabSwitchTracer.getInstance().onContentBound();
+    }
+    
+    /**
+     * Builds this fragment's view hierarchy ahead of time, before the fragment is added.
+     * The result is handed back through {@link #consumePrewarmedView()} in onCreateView.
+     * @param context Themed activity context used to build the views
+     */
+    public final void prewarm(@NonNull Context context) {
+        if (prewarmedView == null && !isAdded()) {
+            prewarmedView = onPrewarmView(context);
+        }
+    }
+    
+    public boolean isPrewarmed() {
+        return prewarmedView != null;
+    }
+    
+    /**
+     * Override this method to build the content view while the main looper is idle
+     * @param context Themed activity context used to build the views
+     * @return The prewarmed view, or null if this fragment does not support prewarming
+     */
+    @Nullable
+    protected View onPrewarmView(@NonNull Context context) {
+        return null;
+    }
+    
+    /**
+     * Content of a tab that only shows text, built the same way in onCreateView and onPrewarmView
+     * @param text Shown until the tab has loaded
+     */
+    @NonNull
+    protected static MaterialTextView createContentView(@NonNull Context context, @NonNull String text) {
+        MaterialTextView view = new MaterialTextView(context);
+        view.setText(text);
+        view.setTextSize(24);
+        view.setTextColor(Color.BLACK);
+        view.setGravity(Gravity.CENTER);
+        return view;
+    }
+    
+    /**
+     * Returns the prewarmed view once, so it is never attached to two parents
+     */
+    @Nullable
+    protected final View consumePrewarmedView() {
+        View view = prewarmedView;
+        prewarmedView = null;
+        return view;
+    }
+    
     /**
      * Override this method to cleanup resources specific to each fragment
      */
@@ -1,5 +1,6 @@
 package com.nidoham.streamly.fragments;
 
+import android.content.Context;
 import android.os.Bundle;
 import android.view.LayoutInflater;
 import android.view.View;
@@ -7,10 +8,10 @@ import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.android.material.textview.MaterialTextView;
-import android.graphics.Color;
 
 public class CommunityFragment extends BaseFragment {
     
+    private static final String TITLE = "Community Fragment";
     private MaterialTextView textView;
     
     public static CommunityFragment newInstance() {
@@ -25,14 +26,19 @@ public class CommunityFragment extends BaseFragment {
     public View onCreateView(@NonNull LayoutInflater inflater, 
                             @Nullable ViewGroup container, 
                             @Nullable Bundle savedInstanceState) {
-        textView = new MaterialTextView(requireContext());
-        textView.setText("Community Fragment");
-        textView.setTextSize(24);
-        textView.setTextColor(Color.BLACK);
-        textView.setGravity(android.view.Gravity.CENTER);
+        View prewarmed = consumePrewarmedView();
+        textView = prewarmed instanceof MaterialTextView
+            ? (MaterialTextView) prewarmed
+            : createContentView(requireContext(), TITLE);
         return textView;
     }
     
+    @Nullable
+    @Override
+    protected View onPrewarmView(@NonNull Context context) {
+        return createContentView(context, TITLE);
+    }
+    
     @Override
     public void onResume() {
         super.onResume();
@@ -43,7 +49,8 @@ public class CommunityFragment extends BaseFragment {
     
     private void loadCommunityContent() {
         if (textView != null && isViewValid()) {
-            textView.setText("Community Fragment - Loaded");
+            textView.setText(TITLE + " - Loaded");
+            reportContentBound();
         }
     }
     
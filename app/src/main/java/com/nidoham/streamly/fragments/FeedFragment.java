@@ -0,0 +1,239 @@
+package com.nidoham.streamly.fragments;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import android.os.Bundle;
+import android.util.Log;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.lifecycle.ViewModelProvider;
+import androidx.recyclerview.widget.LinearLayoutManager;
+import androidx.recyclerview.widget.RecyclerView;
+import com.nidoham.streamly.databinding.FragmentFeedBinding;
+import com.nidoham.streamly.feed.FeedItem;
+import com.nidoham.streamly.feed.FeedPager;
+import com.nidoham.streamly.feed.FeedPrefetcher;
+import com.nidoham.streamly.feed.FeedViewModel;
+import com.nidoham.streamly.fragments.adapter.FeedAdapter;
+import com.nidoham.streamly.image.ImageLoader;
+import com.nidoham.streamly.library.Library;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Base of the tabs that show a paged video feed.
+ * Binds the {@link FeedPager} of the subclass's view model to a list, prefetching thumbnails and
+ * pages ahead of the scroll, and only reloads on resume when the feed is empty or stale.
+ * Resume points for the whole snapshot are loaded in one batch whenever it changes or the tab returns.
+ */
+public abstract class FeedFragment extends BaseFragment {
+
+    private static final String TAG = "FeedFragment";
+
+    private FragmentFeedBinding binding;
+    private LinearLayoutManager layoutManager;
+    private FeedAdapter adapter;
+    private FeedPager pager;
+    private FeedPrefetcher prefetcher;
+    // Snapshot the adapter has committed, the only list visible positions are valid against
+    private List<FeedItem> displayedItems = Collections.emptyList();
+    private boolean contentBoundPending = false;
+
+    /**
+     * @return View model class owning this tab's pager
+     */
+    @NonNull
+    protected abstract Class<? extends FeedViewModel> getViewModelClass();
+
+    @Nullable
+    @Override
+    public View onCreateView(@NonNull LayoutInflater inflater,
+                            @Nullable ViewGroup container,
+                            @Nullable Bundle savedInstanceState) {
+        View prewarmed = consumePrewarmedView();
+        binding = prewarmed != null
+            ? FragmentFeedBinding.bind(prewarmed)
+            : FragmentFeedBinding.inflate(inflater, container, false);
+        return binding.getRoot();
+    }
+
+    @Nullable
+    @Override
+    protected View onPrewarmView(@NonNull Context context) {
+        return FragmentFeedBinding.inflate(LayoutInflater.from(context)).getRoot();
+    }
+
+    @Override
+    public void onViewCreated(@NonNull View view, @Nullable Bundle savedInstanceState) {
+        super.onViewCreated(view, savedInstanceState);
+        pager = new ViewModelProvider(this).get(getViewModelClass()).getPager();
+        ImageLoader imageLoader = ImageLoader.getInstance(requireContext());
+        adapter = new FeedAdapter(imageLoader, this);
+        layoutManager = new LinearLayoutManager(requireContext());
+        prefetcher = new FeedPrefetcher(layoutManager, imageLoader, this, isNetworkMetered());
+
+        RecyclerView list = binding.feedList;
+        list.setHasFixedSize(true);
+        list.setLayoutManager(layoutManager);
+        list.setAdapter(adapter);
+        list.addOnScrollListener(prefetcher);
+        list.addOnScrollListener(new RecyclerView.OnScrollListener() {
+            @Override
+            public void onScrolled(@NonNull RecyclerView recyclerView, int dx, int dy) {
+                reportViewport();
+            }
+        });
+
+        pager.setListener(new FeedPager.Listener() {
+            @Override
+            public void onFeedChanged(List<FeedItem> items) {
+                submitItems(items);
+            }
+
+            @Override
+            public void onLoadError(Exception error) {
+                Log.w(TAG, "Feed page failed to load", error);
+            }
+        });
+        // A recreated view shows the retained window straight away
+        submitItems(pager.getSnapshot());
+    }
+
+    private boolean isNetworkMetered() {
+        ConnectivityManager connectivityManager =
+            (ConnectivityManager) requireContext().getSystemService(Context.CONNECTIVITY_SERVICE);
+        return connectivityManager == null || connectivityManager.isActiveNetworkMetered();
+    }
+
+    private void submitItems(List<FeedItem> items) {
+        if (adapter == null) {
+            return;
+        }
+        adapter.submitList(items, () -> onItemsCommitted(items));
+    }
+
+    /**
+     * Runs once the background diff has been applied, so positions match the new snapshot
+     */
+    private void onItemsCommitted(List<FeedItem> items) {
+        if (!isViewValid()) {
+            return;
+        }
+        displayedItems = items;
+        prefetcher.setThumbnailSize(adapter.getThumbnailWidth(), adapter.getThumbnailHeight());
+        prefetcher.setItems(items);
+        if (contentBoundPending && !items.isEmpty()) {
+            contentBoundPending = false;
+            reportContentBound();
+        }
+        reportViewport();
+        loadResumePositions();
+        onItemsShown(items);
+    }
+
+    /**
+     * Called on the main thread with every list that reached the screen
+     */
+    protected void onItemsShown(@NonNull List<FeedItem> items) {
+    }
+
+    /**
+     * One lookup for every row instead of one per bind, answered on the main thread
+     */
+    private void loadResumePositions() {
+        if (displayedItems.isEmpty()) {
+            return;
+        }
+        List<String> ids = new ArrayList<>(displayedItems.size());
+        for (FeedItem item : displayedItems) {
+            ids.add(item.getId());
+        }
+        Library.getCheckpointer(requireContext()).loadResumePositions(ids, positions -> {
+            if (adapter != null && isViewValid()) {
+                adapter.setResumePositions(positions);
+            }
+        });
+    }
+
+    /**
+     * Reports the visible range stretched to the prefetcher's predicted edge, so pages load as early
+     * as the scroll speed calls for instead of at a fixed distance from the end
+     */
+    private void reportViewport() {
+        if (pager == null || layoutManager == null) {
+            return;
+        }
+        int first = layoutManager.findFirstVisibleItemPosition();
+        if (first == RecyclerView.NO_POSITION) {
+            return;
+        }
+        int last = layoutManager.findLastVisibleItemPosition();
+        int edge = prefetcher.getPredictedEdge();
+        if (edge >= 0) {
+            if (prefetcher.isBackward()) {
+                first = Math.min(first, edge);
+            } else {
+                last = Math.max(last, edge);
+            }
+        }
+        pager.onViewportChanged(displayedItems, first, last);
+    }
+
+    @Override
+    public void onResume() {
+        super.onResume();
+        // Load data or refresh content when fragment becomes visible
+        if (isViewValid()) {
+            loadContent();
+        }
+    }
+
+    @Override
+    public void onPause() {
+        super.onPause();
+        if (prefetcher != null) {
+            String name = getClass().getSimpleName();
+            Log.d(TAG, name + " prefetch " + prefetcher.report());
+            prefetcher.dumpAsync(new File(requireContext().getFilesDir(), "metrics/prefetch_" + name + ".txt"));
+        }
+    }
+
+    /**
+     * Reloads only when the feed is empty or stale, otherwise the retained window is already on screen
+     */
+    private void loadContent() {
+        if (pager == null) {
+            return;
+        }
+        if (pager.refreshIfStale() || displayedItems.isEmpty()) {
+            contentBoundPending = true;
+        } else {
+            reportContentBound();
+            // Videos may have been watched since the rows were bound
+            loadResumePositions();
+        }
+    }
+
+    @Override
+    protected void onCleanupResources() {
+        if (pager != null) {
+            pager.setListener(null);
+            pager = null;
+        }
+        if (binding != null) {
+            binding.feedList.clearOnScrollListeners();
+            binding.feedList.setAdapter(null);
+            binding = null;
+        }
+        layoutManager = null;
+        adapter = null;
+        prefetcher = null;
+        displayedItems = Collections.emptyList();
+        contentBoundPending = false;
+    }
+}
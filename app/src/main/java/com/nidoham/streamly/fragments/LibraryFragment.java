@@ -1,17 +1,38 @@
 package com.nidoham.streamly.fragments;
 
+import android.content.Context;
 import android.os.Bundle;
+import android.text.format.DateUtils;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
 import androidx.annotation.NonNull;
 import androidx.annotation.Nullable;
 import com.google.android.material.textview.MaterialTextView;
-import android.graphics.Color;
+import com.nidoham.streamly.download.DownloadManager;
+import com.nidoham.streamly.download.DownloadProgress;
+import com.nidoham.streamly.download.Downloads;
+import com.nidoham.streamly.library.Library;
+import com.nidoham.streamly.library.LibraryEntry;
+import com.nidoham.streamly.search.LibraryIndex;
+import com.nidoham.streamly.search.Search;
+import com.nidoham.streamly.search.SearchHit;
+import com.nidoham.streamly.task.TaskPriority;
+import java.util.List;
 
 public class LibraryFragment extends BaseFragment {
     
+    private static final String TITLE = "Library Fragment";
+    private static final int HISTORY_ROWS = 10;
+    private static final int SEARCH_ROWS = 20;
+    
     private MaterialTextView textView;
+    private DownloadManager downloads;
+    private final DownloadManager.Listener downloadListener = this::showDownloads;
+    private CharSequence historyText = "";
+    private CharSequence downloadsText = "";
+    private CharSequence searchText = "";
+    private String searchQuery;
     
     public static LibraryFragment newInstance() {
         LibraryFragment fragment = new LibraryFragment();
@@ -25,14 +46,19 @@ public class LibraryFragment extends BaseFragment {
     public View onCreateView(@NonNull LayoutInflater inflater, 
                             @Nullable ViewGroup container, 
                             @Nullable Bundle savedInstanceState) {
-        textView = new MaterialTextView(requireContext());
-        textView.setText("Library Fragment");
-        textView.setTextSize(24);
-        textView.setTextColor(Color.BLACK);
-        textView.setGravity(android.view.Gravity.CENTER);
+        View prewarmed = consumePrewarmedView();
+        textView = prewarmed instanceof MaterialTextView
+            ? (MaterialTextView) prewarmed
+            : createContentView(requireContext(), TITLE);
         return textView;
     }
     
+    @Nullable
+    @Override
+    protected View onPrewarmView(@NonNull Context context) {
+        return createContentView(context, TITLE);
+    }
+    
     @Override
     public void onResume() {
         super.onResume();
@@ -41,14 +67,114 @@ public class LibraryFragment extends BaseFragment {
         }
     }
     
+    @Override
+    public void onPause() {
+        super.onPause();
+        stopObservingDownloads();
+    }
+    
     private void loadLibraryContent() {
         if (textView != null && isViewValid()) {
-            textView.setText("Library Fragment - Loaded");
+            textView.setText(TITLE + " - Loaded");
+            reportContentBound();
+            // The listener gets the current list right away, then coalesced updates while bytes flow
+            downloads = Downloads.getManager(requireContext());
+            downloads.addListener(downloadListener);
+            // Resume points come with the entries in one read, including positions not yet written
+            Library.getCheckpointer(requireContext()).loadHistory(HISTORY_ROWS, this::showHistory);
+            // Only items whose text changed since the last visit are indexed again
+            Search.syncLibraryIndex(requireContext());
+            if (searchQuery != null) {
+                search(searchQuery);
+            }
+        }
+    }
+    
+    /**
+     * Lists library items matching a submitted search, found in the on-device index so it works offline
+     */
+    public void showSearchResults(@NonNull String query) {
+        searchQuery = query;
+        if (isViewValid()) {
+            search(query);
+        }
+    }
+    
+    private void search(String query) {
+        LibraryIndex index = Search.getLibraryIndex(requireContext());
+        // Ranked from mapped segment files, no network, so it cannot hold a worker for long
+        getTaskScope().submit(TaskPriority.USER_VISIBLE, () -> index.search(query, SEARCH_ROWS),
+            hits -> showSearchHits(query, hits));
+    }
+    
+    private void showSearchHits(String query, List<SearchHit> hits) {
+        if (!query.equals(searchQuery)) {
+            return;
+        }
+        StringBuilder text = new StringBuilder(hits.isEmpty() ? "No results in your library for " : "Results for ")
+            .append('"').append(query).append('"');
+        for (SearchHit hit : hits) {
+            text.append('\n').append(hit.getTitle());
+        }
+        searchText = text;
+        render();
+    }
+    
+    private void showHistory(List<LibraryEntry> history) {
+        if (history.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder("Continue watching");
+        for (LibraryEntry entry : history) {
+            text.append('\n').append(entry.getItem().getTitle())
+                .append("  ").append(DateUtils.formatElapsedTime(entry.getPositionMillis() / 1000))
+                .append(" / ").append(DateUtils.formatElapsedTime(entry.getItem().getDurationSeconds()));
+        }
+        historyText = text;
+        render();
+    }
+    
+    private void showDownloads(List<DownloadProgress> progress) {
+        if (progress.isEmpty()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder("Downloads");
+        for (DownloadProgress download : progress) {
+            text.append('\n').append(download);
+        }
+        downloadsText = text;
+        render();
+    }
+    
+    private void render() {
+        if (textView == null || !isViewValid()) {
+            return;
+        }
+        StringBuilder text = new StringBuilder();
+        for (CharSequence section : new CharSequence[] {searchText, historyText, downloadsText}) {
+            if (section.length() > 0) {
+                text.append(text.length() > 0 ? "\n\n" : "").append(section);
+            }
+        }
+        if (text.length() > 0) {
+            textView.setText(text);
+        }
+    }
+    
+    private void stopObservingDownloads() {
+        if (downloads != null) {
+            downloads.removeListener(downloadListener);
+            downloads = null;
         }
     }
     
     @Override
     protected void onCleanupResources() {
+        stopObservingDownloads();
         textView = null;
+        historyText = "";
+        downloadsText = "";
+        searchText = "";
+        searchQuery = null;
     }
 }
\ No newline at end of file
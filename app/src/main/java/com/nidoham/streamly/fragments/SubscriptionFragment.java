@@ -1,54 +1,42 @@
 package com.nidoham.streamly.fragments;
 
 import android.os.Bundle;
-import android.view.LayoutInflater;
-import android.view.View;
-import android.view.ViewGroup;
 import androidx.annotation.NonNull;
-import androidx.annotation.Nullable;
-import com.google.android.material.textview.MaterialTextView;
-import android.graphics.Color;
+import com.nidoham.streamly.feed.FeedItem;
+import com.nidoham.streamly.feed.FeedViewModel;
+import com.nidoham.streamly.feed.SubscriptionFeedViewModel;
+import com.nidoham.streamly.search.Search;
+import com.nidoham.streamly.search.SuggestionKind;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+public class SubscriptionFragment extends FeedFragment {
 
-public class SubscriptionFragment extends BaseFragment {
-    
-    private MaterialTextView textView;
-    
     public static SubscriptionFragment newInstance() {
         SubscriptionFragment fragment = new SubscriptionFragment();
         Bundle args = new Bundle();
         fragment.setArguments(args);
         return fragment;
     }
-    
-    @Nullable
+
+    @NonNull
     @Override
-    public View onCreateView(@NonNull LayoutInflater inflater, 
-                            @Nullable ViewGroup container, 
-                            @Nullable Bundle savedInstanceState) {
-        textView = new MaterialTextView(requireContext());
-        textView.setText("Subscription Fragment");
-        textView.setTextSize(24);
-        textView.setTextColor(Color.BLACK);
-        textView.setGravity(android.view.Gravity.CENTER);
-        return textView;
+    protected Class<? extends FeedViewModel> getViewModelClass() {
+        return SubscriptionFeedViewModel.class;
     }
-    
+
+    /**
+     * Subscribed channels are suggested before the user has searched for or watched any of them
+     */
     @Override
-    public void onResume() {
-        super.onResume();
-        if (isViewValid()) {
-            loadSubscriptionContent();
+    protected void onItemsShown(@NonNull List<FeedItem> items) {
+        Set<String> channels = new LinkedHashSet<>();
+        for (FeedItem item : items) {
+            if (item.getChannelName() != null) {
+                channels.add(item.getChannelName());
+            }
         }
+        Search.getSuggestions(requireContext()).offer(channels, SuggestionKind.CHANNEL);
     }
-    
-    private void loadSubscriptionContent() {
-        if (textView != null && isViewValid()) {
-            textView.setText("Subscription Fragment - Loaded");
-        }
-    }
-    
-    @Override
-    protected void onCleanupResources() {
-        textView = null;
-    }
-}
\ No newline at end of file
+}
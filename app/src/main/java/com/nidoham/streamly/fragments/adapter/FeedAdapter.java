@@ -0,0 +1,147 @@
+package com.nidoham.streamly.fragments.adapter;
+
+import android.text.format.DateUtils;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import androidx.annotation.NonNull;
+import androidx.recyclerview.widget.DiffUtil;
+import androidx.recyclerview.widget.ListAdapter;
+import androidx.recyclerview.widget.RecyclerView;
+import com.nidoham.streamly.R;
+import com.nidoham.streamly.databinding.ItemFeedBinding;
+import com.nidoham.streamly.feed.FeedItem;
+import com.nidoham.streamly.image.ImageLoader;
+import java.text.NumberFormat;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Binds feed snapshots to rows. ListAdapter diffs each submitted snapshot against the
+ * displayed one on its background executor, so merged pages only rebind rows that changed.
+ * Thumbnails are decoded at the row's width and cancelled as soon as a row is recycled.
+ * Watched videos show how far they were played, from resume points loaded in bulk per snapshot.
+ */
+public class FeedAdapter extends ListAdapter<FeedItem, FeedAdapter.ViewHolder> {
+
+    private static final DiffUtil.ItemCallback<FeedItem> DIFF_CALLBACK = new DiffUtil.ItemCallback<FeedItem>() {
+        @Override
+        public boolean areItemsTheSame(@NonNull FeedItem oldItem, @NonNull FeedItem newItem) {
+            return oldItem.isSameItem(newItem);
+        }
+
+        @Override
+        public boolean areContentsTheSame(@NonNull FeedItem oldItem, @NonNull FeedItem newItem) {
+            return oldItem.equals(newItem);
+        }
+    };
+
+    // Rebinds only the watch progress of a row
+    private static final Object PAYLOAD_RESUME = new Object();
+
+    private final NumberFormat viewCountFormat = NumberFormat.getIntegerInstance();
+    private final ImageLoader imageLoader;
+    private final Object imageOwner;
+    private int thumbnailWidth = 0;
+    private Map<String, Long> resumePositions = Collections.emptyMap();
+
+    /**
+     * @param imageLoader Loader for row thumbnails
+     * @param imageOwner Owner whose teardown cancels the thumbnails, usually the hosting fragment
+     */
+    public FeedAdapter(@NonNull ImageLoader imageLoader, @NonNull Object imageOwner) {
+        super(DIFF_CALLBACK);
+        this.imageLoader = imageLoader;
+        this.imageOwner = imageOwner;
+    }
+
+    @NonNull
+    @Override
+    public ViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        if (thumbnailWidth == 0) {
+            // Thumbnails span the list, which may not be laid out yet for the first rows
+            thumbnailWidth = parent.getWidth() > 0
+                ? parent.getWidth()
+                : parent.getResources().getDisplayMetrics().widthPixels;
+        }
+        return new ViewHolder(ItemFeedBinding.inflate(LayoutInflater.from(parent.getContext()), parent, false));
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position) {
+        FeedItem item = getItem(position);
+        holder.binding.itemTitle.setText(item.getTitle());
+        holder.binding.itemMeta.setText(holder.itemView.getContext().getString(R.string.feed_item_meta,
+            item.getChannelName(),
+            viewCountFormat.format(item.getViewCount()),
+            DateUtils.formatElapsedTime(item.getDurationSeconds())));
+        imageLoader.load(holder.binding.itemThumbnail, item.getThumbnailUrl(),
+            thumbnailWidth, getThumbnailHeight(), imageOwner);
+        bindResumePosition(holder, item);
+    }
+
+    @Override
+    public void onBindViewHolder(@NonNull ViewHolder holder, int position, @NonNull List<Object> payloads) {
+        if (!payloads.isEmpty() && payloads.stream().allMatch(payload -> payload == PAYLOAD_RESUME)) {
+            bindResumePosition(holder, getItem(position));
+        } else {
+            onBindViewHolder(holder, position);
+        }
+    }
+
+    private void bindResumePosition(@NonNull ViewHolder holder, @NonNull FeedItem item) {
+        Long positionMillis = resumePositions.get(item.getId());
+        long durationMillis = item.getDurationSeconds() * 1000L;
+        if (positionMillis == null || positionMillis <= 0 || durationMillis <= 0) {
+            holder.binding.itemProgress.setVisibility(View.GONE);
+            return;
+        }
+        int percent = (int) Math.min(100, positionMillis * 100 / durationMillis);
+        holder.binding.itemProgress.setProgressCompat(percent, false);
+        holder.binding.itemProgress.setVisibility(View.VISIBLE);
+    }
+
+    /**
+     * Replaces the resume points and rebinds the progress of the rows whose point changed
+     * @param positions Playback positions by video id, covering the whole current list
+     */
+    public void setResumePositions(@NonNull Map<String, Long> positions) {
+        Map<String, Long> previous = resumePositions;
+        resumePositions = positions;
+        List<FeedItem> items = getCurrentList();
+        for (int i = 0; i < items.size(); i++) {
+            String id = items.get(i).getId();
+            if (!Objects.equals(previous.get(id), positions.get(id))) {
+                notifyItemChanged(i, PAYLOAD_RESUME);
+            }
+        }
+    }
+
+    /**
+     * @return Width thumbnails are loaded at, 0 until the first row has been created
+     */
+    public int getThumbnailWidth() {
+        return thumbnailWidth;
+    }
+
+    public int getThumbnailHeight() {
+        return thumbnailWidth * 9 / 16;
+    }
+
+    @Override
+    public void onViewRecycled(@NonNull ViewHolder holder) {
+        imageLoader.clear(holder.binding.itemThumbnail);
+    }
+
+    public static class ViewHolder extends RecyclerView.ViewHolder {
+
+        final ItemFeedBinding binding;
+
+        ViewHolder(@NonNull ItemFeedBinding binding) {
+            super(binding.getRoot());
+            this.binding = binding;
+        }
+    }
+}
@@ -2,60 +2,35 @@ package com.nidoham.streamly.fragments.adapter;
 
 import androidx.annotation.NonNull;
 import androidx.fragment.app.Fragment;
-import androidx.fragment.app.FragmentActivity;
-import androidx.lifecycle.Lifecycle;
-import androidx.viewpager2.adapter.FragmentStateAdapter;
 import com.nidoham.streamly.fragments.HomeFragment;
 import com.nidoham.streamly.fragments.CommunityFragment;
 import com.nidoham.streamly.fragments.SubscriptionFragment;
 import com.nidoham.streamly.fragments.LibraryFragment;
 import com.nidoham.streamly.R;
-import java.lang.ref.WeakReference;
-import java.util.HashMap;
-import java.util.Map;
 
 /**
- * Memory-safe FragmentContainerAdapter with proper fragment lifecycle management
- * and memory leak prevention mechanisms for bottom navigation fragments.
+ * Maps bottom navigation positions to tab fragments, menu items and fragment tags.
+ * Fragment lifecycle, retention and prewarming are owned by the tab host; this class only
+ * knows how to build each tab, so every call returns a fresh, never-added instance.
  */
-public class FragmentContainerAdapter extends FragmentStateAdapter {
+public class FragmentContainerAdapter {
     
-    private static final int FRAGMENT_COUNT = 4;
-    private final Map<Integer, WeakReference<Fragment>> fragmentCache = new HashMap<>();
+    public static final int FRAGMENT_COUNT = 4;
+    private static final String TAG_PREFIX = "tab_";
     
     // Fragment position constants
     public static final int HOME_POSITION = 0;
     public static final int COMMUNITY_POSITION = 1;
     public static final int SUBSCRIPTION_POSITION = 2;
     public static final int LIBRARY_POSITION = 3;
-    
-    public FragmentContainerAdapter(@NonNull FragmentActivity fragmentActivity) {
-        super(fragmentActivity.getSupportFragmentManager(), fragmentActivity.getLifecycle());
-    }
-
-    @NonNull
-    @Override
-    public Fragment createFragment(int position) {
-        // Check cache first to prevent unnecessary fragment recreation
-        WeakReference<Fragment> cachedFragmentRef = fragmentCache.get(position);
-        if (cachedFragmentRef != null) {
-            Fragment cachedFragment = cachedFragmentRef.get();
-            if (cachedFragment != null && !cachedFragment.isDetached()) {
-                return cachedFragment;
-            }
-        }
-
-        Fragment fragment = createFragmentInstance(position);
-        fragmentCache.put(position, new WeakReference<>(fragment));
-        return fragment;
-    }
 
     /**
      * Creates the appropriate fragment instance based on position
      * @param position The fragment position
      * @return New fragment instance
      */
-    private Fragment createFragmentInstance(int position) {
+    @NonNull
+    public Fragment createFragment(int position) {
         switch (position) {
             case HOME_POSITION:
                 return HomeFragment.newInstance();
@@ -70,20 +45,18 @@ public class FragmentContainerAdapter extends FragmentStateAdapter {
         }
     }
     
-    @Override
     public int getItemCount() {
         return FRAGMENT_COUNT;
     }
 
-    @Override
-    public long getItemId(int position) {
-        // Provide stable IDs for fragment lifecycle management
-        return position;
-    }
-
-    @Override
-    public boolean containsItem(long itemId) {
-        return itemId >= 0 && itemId < FRAGMENT_COUNT;
+    /**
+     * Provides a stable fragment tag so tabs can be found again after process recreation
+     * @param position The fragment position
+     * @return Fragment manager tag for the position
+     */
+    @NonNull
+    public static String getTagForPosition(int position) {
+        return TAG_PREFIX + position;
     }
     
     /**
@@ -124,12 +97,4 @@ public class FragmentContainerAdapter extends FragmentStateAdapter {
                 return R.id.nav_home;
         }
     }
-
-    /**
-     * Clears fragment cache to prevent memory leaks
-     * Should be called when the adapter is no longer needed
-     */
-    public void clearCache() {
-        fragmentCache.clear();
-    }
-}
\ No newline at end of file
+}
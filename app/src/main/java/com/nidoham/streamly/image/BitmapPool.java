@@ -0,0 +1,143 @@
+package com.nidoham.streamly.image;
+
+import android.graphics.Bitmap;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.nidoham.streamly.memory.TrimmableCache;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Byte-bounded pool of mutable software bitmaps handed to the decoder as inBitmap.
+ * Since API 19 any bitmap with a large enough allocation can be reused, so bitmaps are keyed by
+ * allocation size and a request takes the smallest one that fits, within a waste bound.
+ * Bitmaps put here must no longer be displayed or cached anywhere.
+ */
+public class BitmapPool implements TrimmableCache {
+
+    // A reused allocation may be at most this many times the size needed
+    private static final int MAX_WASTE_FACTOR = 2;
+
+    private final long maxBytes;
+    private final TreeMap<Integer, ArrayDeque<Bitmap>> bySize = new TreeMap<>();
+    // Insertion order, oldest first, for eviction
+    private final LinkedHashSet<Bitmap> order = new LinkedHashSet<>();
+    private long sizeBytes = 0;
+
+    private long hits = 0;
+    private long misses = 0;
+    private long rejected = 0;
+
+    public BitmapPool(long maxBytes) {
+        this.maxBytes = maxBytes;
+    }
+
+    /**
+     * @param bitmap A bitmap nothing references any more
+     * @return True if it was pooled. A mutable bitmap too large to pool is recycled; an immutable or
+     * hardware one stays with the caller, as it may be shared.
+     */
+    public boolean put(@NonNull Bitmap bitmap) {
+        if (bitmap.isRecycled() || !bitmap.isMutable() || bitmap.getConfig() == Bitmap.Config.HARDWARE) {
+            synchronized (this) {
+                rejected++;
+            }
+            return false;
+        }
+        int bytes = bitmap.getAllocationByteCount();
+        if (bytes > maxBytes / 2) {
+            synchronized (this) {
+                rejected++;
+            }
+            bitmap.recycle();
+            return false;
+        }
+        synchronized (this) {
+            if (!order.add(bitmap)) {
+                return true;
+            }
+            ArrayDeque<Bitmap> bucket = bySize.get(bytes);
+            if (bucket == null) {
+                bucket = new ArrayDeque<>();
+                bySize.put(bytes, bucket);
+            }
+            bucket.addLast(bitmap);
+            sizeBytes += bytes;
+            evictTo(maxBytes);
+        }
+        return true;
+    }
+
+    /**
+     * Takes a bitmap whose allocation can hold the given dimensions, to be reconfigured by the decoder
+     * @return A pooled bitmap, or null if none fits
+     */
+    @Nullable
+    public synchronized Bitmap get(int width, int height, @NonNull Bitmap.Config config) {
+        int needed = width * height * bytesPerPixel(config);
+        Map.Entry<Integer, ArrayDeque<Bitmap>> entry = bySize.ceilingEntry(needed);
+        if (entry == null || entry.getKey() > (long) needed * MAX_WASTE_FACTOR) {
+            misses++;
+            return null;
+        }
+        ArrayDeque<Bitmap> bucket = entry.getValue();
+        Bitmap bitmap = bucket.pollLast();
+        if (bucket.isEmpty()) {
+            bySize.remove(entry.getKey());
+        }
+        order.remove(bitmap);
+        sizeBytes -= entry.getKey();
+        hits++;
+        return bitmap;
+    }
+
+    private void evictTo(long limit) {
+        Iterator<Bitmap> iterator = order.iterator();
+        while (sizeBytes > limit && iterator.hasNext()) {
+            Bitmap bitmap = iterator.next();
+            iterator.remove();
+            int bytes = bitmap.getAllocationByteCount();
+            ArrayDeque<Bitmap> bucket = bySize.get(bytes);
+            if (bucket != null) {
+                bucket.remove(bitmap);
+                if (bucket.isEmpty()) {
+                    bySize.remove(bytes);
+                }
+            }
+            sizeBytes -= bytes;
+        }
+    }
+
+    static int bytesPerPixel(Bitmap.Config config) {
+        switch (config) {
+            case ALPHA_8:
+                return 1;
+            case RGB_565:
+                return 2;
+            case RGBA_F16:
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    @Override
+    public synchronized long getSizeBytes() {
+        return sizeBytes;
+    }
+
+    @Override
+    public synchronized void trimToSize(long maxBytes) {
+        evictTo(Math.max(0, maxBytes));
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "BitmapPool[bitmaps=%d, bytes=%d/%d, hits=%d, misses=%d, rejected=%d]",
+            order.size(), sizeBytes, maxBytes, hits, misses, rejected);
+    }
+}
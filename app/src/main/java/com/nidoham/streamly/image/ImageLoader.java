@@ -0,0 +1,691 @@
+package com.nidoham.streamly.image;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+import android.widget.ImageView;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import com.nidoham.streamly.R;
+import com.nidoham.streamly.data.ByteLruCache;
+import com.nidoham.streamly.data.DiskJournal;
+import com.nidoham.streamly.memory.MemoryCoordinator;
+import com.nidoham.streamly.memory.MemoryTier;
+import com.nidoham.streamly.metrics.LatencyHistogram;
+import com.nidoham.streamly.net.HttpRequest;
+import com.nidoham.streamly.net.HttpResponse;
+import com.nidoham.streamly.net.HttpTransport;
+import com.nidoham.streamly.net.Network;
+import com.nidoham.streamly.net.RequestPriority;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.TaskScheduler;
+import com.nidoham.streamly.task.Tasks;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Loads thumbnails into ImageViews through memory cache, disk cache and network.
+ * Bitmaps are decoded at the requested size with inSampleSize, as hardware bitmaps on API 28+
+ * and otherwise as software bitmaps reusing allocations from a {@link BitmapPool}. Displayed
+ * bitmaps are reference counted, so a bitmap only returns to the pool once it is neither cached
+ * nor shown. Requests are tied to an owner and cancelled when the view is cleared or rebound,
+ * or when the owner goes away. All public methods must be called on the main thread.
+ */
+@MainThread
+public final class ImageLoader {
+
+    private static final String TAG = "ImageLoader";
+    private static final int IO_THREADS = 3;
+    private static final int MAX_IMAGE_BYTES = 4 * 1024 * 1024;
+    private static final long DISK_BYTES = 48 * 1024 * 1024;
+    // A full shard rewrites only its own file, and only blocks disk hits that hash to it
+    private static final int DISK_SHARDS = 8;
+    private static final long DISK_MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+    private static final int MAX_DISK_KEY_BYTES = 1024;
+    private static final int TEMP_STORAGE_BYTES = 16 * 1024;
+    private static final int MAX_TRACKED_PREFETCHES = 256;
+
+    private static volatile ImageLoader instance;
+
+    // Decode scratch space, reused per thread instead of allocated per decode
+    private static final ThreadLocal<byte[]> TEMP_STORAGE = ThreadLocal.withInitial(() -> new byte[TEMP_STORAGE_BYTES]);
+
+    /**
+     * Per-view state kept in the view's tag
+     */
+    private static final class Binding {
+        Object owner;
+        Request request;
+        Bitmap bitmap;
+    }
+
+    private static final class Active {
+        final String key;
+        int count;
+
+        Active(String key) {
+            this.key = key;
+        }
+    }
+
+    /**
+     * One load, either bound to a view or a prefetch that only fills the caches.
+     * A prefetch adopted by a view gains the view and loses its deferred priority, in the I/O pool and for
+     * its decode.
+     */
+    private final class Request implements Runnable, LifoBlockingDeque.Prioritized {
+        final String url;
+        final String key;
+        final int width;
+        final int height;
+        final boolean decode;
+        final Object owner;
+        // Main thread only
+        ImageView view;
+        Binding binding;
+        volatile boolean deferred;
+        volatile boolean cancelled = false;
+        volatile DecodeTask decodeTask;
+        volatile long networkBytes = 0;
+
+        Request(@Nullable ImageView view, @Nullable Binding binding, String url, String key, int width, int height,
+                boolean decode, Object owner, boolean deferred) {
+            this.view = view;
+            this.binding = binding;
+            this.url = url;
+            this.key = key;
+            this.width = width;
+            this.height = height;
+            this.decode = decode;
+            this.owner = owner;
+            this.deferred = deferred;
+        }
+
+        @Override
+        public boolean isDeferred() {
+            return deferred;
+        }
+
+        /**
+         * Loads the encoded bytes on the I/O pool, then queues the decode
+         */
+        @Override
+        public void run() {
+            if (cancelled) {
+                return;
+            }
+            byte[] data = readEncoded(this);
+            if (deferred) {
+                // Recorded even if cancelled meanwhile, the bytes are on disk either way
+                long bytes = networkBytes;
+                mainHandler.post(() -> recordPrefetched(url, bytes));
+            }
+            if (data == null || cancelled) {
+                return;
+            }
+            if (!decode) {
+                mainHandler.post(() -> finishPrefetch(this));
+                return;
+            }
+            decodeTask = new DecodeTask(this, data);
+            submitDecode(decodeTask);
+        }
+
+        void cancel() {
+            cancelled = true;
+            // Drop queued work right away rather than when a worker reaches it
+            ioExecutor.remove(this);
+            DecodeTask decode = decodeTask;
+            if (decode != null && decode.future != null) {
+                decode.future.cancel(false);
+            }
+        }
+    }
+
+    private final class DecodeTask implements Runnable {
+        final Request request;
+        final byte[] data;
+        final AtomicBoolean started = new AtomicBoolean();
+        volatile Future<?> future;
+
+        DecodeTask(Request request, byte[] data) {
+            this.request = request;
+            this.data = data;
+        }
+
+        @Override
+        public void run() {
+            if (request.cancelled || !started.compareAndSet(false, true)) {
+                return;
+            }
+            long start = System.nanoTime();
+            Bitmap bitmap = decode(data, request.width, request.height);
+            decodeLatency.recordNanos(System.nanoTime() - start);
+            mainHandler.post(() -> deliver(request, bitmap));
+        }
+    }
+
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    // Blocks on disk and network, so it has its own threads rather than holding the scheduler's workers
+    private final ThreadPoolExecutor ioExecutor;
+    // Decodes run in the visible image lane, or the prefetch lane for prefetches
+    private final TaskScheduler scheduler = Tasks.getScheduler();
+    private final boolean hardwareBitmaps = Build.VERSION.SDK_INT >= Build.VERSION_CODES.P;
+    private final BitmapPool pool;
+    private final ByteLruCache<String, Bitmap> memoryCache;
+    private final DiskJournal[] diskShards = new DiskJournal[DISK_SHARDS];
+    private final HttpTransport transport;
+    private final Map<Bitmap, Active> activeBitmaps = new IdentityHashMap<>();
+    private final Map<Object, Set<ImageView>> viewsByOwner = new IdentityHashMap<>();
+    private final Map<String, Request> prefetches = new HashMap<>();
+    // Prefetched URLs not yet shown and the network bytes spent on them, oldest first
+    private final LinkedHashMap<String, Long> prefetchedUrls = new LinkedHashMap<String, Long>() {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            if (size() > MAX_TRACKED_PREFETCHES) {
+                // Pushed out by newer prefetches without ever being shown
+                wastedPrefetchBytes += eldest.getValue();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private long memoryHits = 0;
+    private long cancelledRequests = 0;
+    private long prefetchesIssued = 0;
+    private long prefetchesCancelled = 0;
+    private long prefetchHits = 0;
+    private long prefetchMisses = 0;
+    private long wastedPrefetchBytes = 0;
+    private final AtomicLong diskHits = new AtomicLong();
+    private final AtomicLong networkLoads = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong pooledDecodes = new AtomicLong();
+    private final LatencyHistogram decodeLatency = new LatencyHistogram();
+
+    private ImageLoader(Context appContext) {
+        ActivityManager activityManager = (ActivityManager) appContext.getSystemService(Context.ACTIVITY_SERVICE);
+        long heapBytes = activityManager.getMemoryClass() * 1024L * 1024L;
+
+        pool = new BitmapPool(heapBytes / 16);
+        memoryCache = new ByteLruCache<String, Bitmap>(heapBytes / 8) {
+            @Override
+            protected void onEvicted(String key, Bitmap value) {
+                onCacheEvicted(value);
+            }
+        };
+        transport = Network.getTransport(appContext);
+        File diskDirectory = new File(appContext.getCacheDir(), "images");
+        for (int i = 0; i < DISK_SHARDS; i++) {
+            diskShards[i] = new DiskJournal(new File(diskDirectory, "thumbnails-" + i + ".journal"),
+                DISK_BYTES / DISK_SHARDS, DISK_MAX_AGE_MS);
+        }
+
+        ioExecutor = createExecutor("image-io", IO_THREADS);
+
+        MemoryCoordinator.getInstance().register("thumbnail_bitmaps", MemoryTier.DECODED_BITMAPS, memoryCache);
+        MemoryCoordinator.getInstance().register("bitmap_pool", MemoryTier.DECODED_BITMAPS, pool);
+    }
+
+    @NonNull
+    public static ImageLoader getInstance(@NonNull Context context) {
+        ImageLoader loader = instance;
+        if (loader == null) {
+            synchronized (ImageLoader.class) {
+                loader = instance;
+                if (loader == null) {
+                    loader = new ImageLoader(context.getApplicationContext());
+                    instance = loader;
+                }
+            }
+        }
+        return loader;
+    }
+
+    /**
+     * Cancels the owner's requests if the loader was ever used, without creating it
+     * @param owner The owner passed to {@link #load}
+     */
+    public static void cancelRequestsFor(@NonNull Object owner) {
+        ImageLoader loader = instance;
+        if (loader != null) {
+            loader.cancelAll(owner);
+        }
+    }
+
+    private static ThreadPoolExecutor createExecutor(String name, int threads) {
+        AtomicInteger count = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 5, TimeUnit.SECONDS,
+            new LifoBlockingDeque<>(), runnable -> new Thread(() -> {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                runnable.run();
+            }, name + "-" + count.incrementAndGet()));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Shows an image in a view, replacing and cancelling whatever the view was showing or loading
+     * @param view Target view
+     * @param url Image location, null just clears the view
+     * @param width Target width in pixels, the image is decoded no smaller than this
+     * @param height Target height in pixels
+     * @param owner Lifetime owner, typically the fragment, see {@link #cancelAll(Object)}
+     */
+    public void load(@NonNull ImageView view, @Nullable String url, int width, int height, @NonNull Object owner) {
+        Binding binding = bind(view, owner);
+        String key = url != null ? keyFor(url, width, height) : null;
+        if (binding.request != null) {
+            if (!binding.request.cancelled && binding.request.key.equals(key)) {
+                return;
+            }
+            cancel(binding);
+        }
+        if (key == null) {
+            display(view, binding, null, null);
+            return;
+        }
+
+        boolean prefetched = prefetchedUrls.remove(url) != null;
+        Bitmap cached = memoryCache.get(key);
+        if (cached != null) {
+            memoryHits++;
+            if (prefetched) {
+                prefetchHits++;
+            }
+            display(view, binding, cached, key);
+            return;
+        }
+
+        display(view, binding, null, null);
+        Request inFlight = prefetches.remove(key);
+        if (inFlight != null && inFlight.decode) {
+            // Take over the prefetch instead of loading twice, and move it to the front of the queues
+            prefetchHits++;
+            adopt(inFlight, view, binding);
+            return;
+        }
+        if (inFlight != null) {
+            inFlight.cancel();
+        }
+        if (prefetched) {
+            prefetchHits++;
+        } else {
+            prefetchMisses++;
+        }
+        Request request = new Request(view, binding, url, key, Math.max(1, width), Math.max(1, height),
+            true, owner, false);
+        binding.request = request;
+        ioExecutor.execute(request);
+    }
+
+    private void adopt(Request request, ImageView view, Binding binding) {
+        request.view = view;
+        request.binding = binding;
+        request.deferred = false;
+        binding.request = request;
+        if (ioExecutor.remove(request)) {
+            ioExecutor.execute(request);
+        }
+        DecodeTask decode = request.decodeTask;
+        if (decode != null && !decode.started.get()) {
+            Future<?> queued = decode.future;
+            submitDecode(decode);
+            if (queued != null) {
+                queued.cancel(false);
+            }
+        }
+    }
+
+    private void submitDecode(DecodeTask decode) {
+        TaskPriority priority = decode.request.deferred ? TaskPriority.PREFETCH : TaskPriority.VISIBLE_IMAGE;
+        decode.future = scheduler.submit(priority, Executors.callable(decode));
+    }
+
+    /**
+     * Fetches an image ahead of need, queued behind visible loads and decoded in the prefetch lane
+     * @param url Image location
+     * @param width Target width in pixels, must match the later {@link #load} for the decode to be reused
+     * @param height Target height in pixels
+     * @param decode True to decode into the memory cache, false to only fetch the bytes to disk
+     * @param owner Lifetime owner, see {@link #retainPrefetches(Object, Set)}
+     */
+    public void prefetch(@NonNull String url, int width, int height, boolean decode, @NonNull Object owner) {
+        String key = keyFor(url, width, height);
+        if (memoryCache.peek(key) != null) {
+            return;
+        }
+        Request existing = prefetches.get(key);
+        if (existing != null) {
+            if (existing.decode || !decode) {
+                return;
+            }
+            // Upgrade a fetch-only prefetch that moved close to the viewport
+            existing.cancel();
+        }
+        Request request = new Request(null, null, url, key, Math.max(1, width), Math.max(1, height),
+            decode, owner, true);
+        prefetches.put(key, request);
+        prefetchesIssued++;
+        ioExecutor.execute(request);
+    }
+
+    /**
+     * Cancels the owner's prefetches that are no longer wanted, e.g. after a fling went past them
+     * @param owner Owner of the prefetches
+     * @param keys Keys from {@link #keyFor} that should keep running
+     */
+    public void retainPrefetches(@NonNull Object owner, @NonNull Set<String> keys) {
+        Iterator<Request> iterator = prefetches.values().iterator();
+        while (iterator.hasNext()) {
+            Request request = iterator.next();
+            if (request.owner == owner && !keys.contains(request.key)) {
+                request.cancel();
+                iterator.remove();
+                prefetchesCancelled++;
+            }
+        }
+    }
+
+    /**
+     * @return The cache key of an image at a size, as used by {@link #retainPrefetches(Object, Set)}
+     */
+    @NonNull
+    public static String keyFor(@NonNull String url, int width, int height) {
+        return url + '@' + width + 'x' + height;
+    }
+
+    private void finishPrefetch(Request request) {
+        if (prefetches.get(request.key) == request) {
+            prefetches.remove(request.key);
+        }
+    }
+
+    private void recordPrefetched(String url, long networkBytes) {
+        prefetchedUrls.put(url, networkBytes);
+    }
+
+    /**
+     * Cancels the view's request and releases its bitmap, e.g. from onViewRecycled
+     */
+    public void clear(@NonNull ImageView view) {
+        Binding binding = (Binding) view.getTag(R.id.image_request);
+        if (binding == null) {
+            return;
+        }
+        cancel(binding);
+        display(view, binding, null, null);
+        Set<ImageView> views = viewsByOwner.get(binding.owner);
+        if (views != null) {
+            views.remove(view);
+            if (views.isEmpty()) {
+                viewsByOwner.remove(binding.owner);
+            }
+        }
+        view.setTag(R.id.image_request, null);
+    }
+
+    /**
+     * Clears every view loaded for an owner, e.g. when a fragment's view is destroyed
+     */
+    public void cancelAll(@NonNull Object owner) {
+        retainPrefetches(owner, Collections.emptySet());
+        Set<ImageView> views = viewsByOwner.remove(owner);
+        if (views == null) {
+            return;
+        }
+        for (ImageView view : views.toArray(new ImageView[0])) {
+            clear(view);
+        }
+    }
+
+    private Binding bind(ImageView view, Object owner) {
+        Binding binding = (Binding) view.getTag(R.id.image_request);
+        if (binding == null) {
+            binding = new Binding();
+            view.setTag(R.id.image_request, binding);
+        }
+        if (binding.owner != owner) {
+            Set<ImageView> previous = binding.owner != null ? viewsByOwner.get(binding.owner) : null;
+            if (previous != null) {
+                previous.remove(view);
+            }
+            binding.owner = owner;
+        }
+        Set<ImageView> views = viewsByOwner.get(owner);
+        if (views == null) {
+            views = new HashSet<>();
+            viewsByOwner.put(owner, views);
+        }
+        views.add(view);
+        return binding;
+    }
+
+    private void cancel(Binding binding) {
+        if (binding.request != null) {
+            binding.request.cancel();
+            binding.request = null;
+            cancelledRequests++;
+        }
+    }
+
+    private void deliver(Request request, @Nullable Bitmap bitmap) {
+        finishPrefetch(request);
+        if (bitmap == null) {
+            failures.incrementAndGet();
+            if (request.binding != null && request.binding.request == request) {
+                request.binding.request = null;
+            }
+            return;
+        }
+        // Cached even when cancelled, the row that wanted it is likely to scroll back
+        boolean cached = memoryCache.put(request.key, bitmap, bitmap.getAllocationByteCount());
+        if (request.cancelled || request.binding == null || request.binding.request != request) {
+            if (!cached) {
+                pool.put(bitmap);
+            }
+            return;
+        }
+        request.binding.request = null;
+        display(request.view, request.binding, bitmap, request.key);
+    }
+
+    /**
+     * Sets the view's bitmap before releasing the old one, so a released bitmap is never still drawn
+     */
+    private void display(ImageView view, Binding binding, @Nullable Bitmap bitmap, @Nullable String key) {
+        Bitmap previous = binding.bitmap;
+        if (previous == bitmap) {
+            return;
+        }
+        if (bitmap != null) {
+            view.setImageBitmap(bitmap);
+            acquire(bitmap, key);
+        } else {
+            view.setImageDrawable(null);
+        }
+        binding.bitmap = bitmap;
+        if (previous != null) {
+            release(previous);
+        }
+    }
+
+    private void acquire(Bitmap bitmap, @Nullable String key) {
+        Active active = activeBitmaps.get(bitmap);
+        if (active == null) {
+            active = new Active(key);
+            activeBitmaps.put(bitmap, active);
+        }
+        active.count++;
+    }
+
+    private void release(Bitmap bitmap) {
+        Active active = activeBitmaps.get(bitmap);
+        if (active == null || --active.count > 0) {
+            return;
+        }
+        activeBitmaps.remove(bitmap);
+        if (active.key == null || memoryCache.peek(active.key) != bitmap) {
+            pool.put(bitmap);
+        }
+    }
+
+    private void onCacheEvicted(Bitmap bitmap) {
+        // Still on screen, the last release pools it
+        if (!activeBitmaps.containsKey(bitmap)) {
+            pool.put(bitmap);
+        }
+    }
+
+    /**
+     * Disk cache first, then the network, writing what was fetched back to disk
+     */
+    @Nullable
+    private byte[] readEncoded(Request request) {
+        String url = request.url;
+        boolean diskKey = url.getBytes(StandardCharsets.UTF_8).length <= MAX_DISK_KEY_BYTES;
+        DiskJournal diskCache = diskShards[(url.hashCode() & Integer.MAX_VALUE) % DISK_SHARDS];
+        try {
+            if (diskKey) {
+                DiskJournal.Record record = diskCache.get(url, System.currentTimeMillis());
+                if (record != null) {
+                    diskHits.incrementAndGet();
+                    return record.getPayload();
+                }
+            }
+            byte[] data = fetch(request);
+            networkLoads.incrementAndGet();
+            request.networkBytes = data.length;
+            if (diskKey) {
+                diskCache.put(url, data, System.currentTimeMillis());
+            }
+            return data;
+        } catch (IOException e) {
+            failures.incrementAndGet();
+            Log.w(TAG, "Failed to load " + url + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * Images have their own disk cache, so they skip the transport's revalidation store
+     */
+    private byte[] fetch(Request request) throws IOException {
+        HttpResponse response = transport.execute(HttpRequest.get(request.url)
+            .withRevalidation(false)
+            .withPriority(request.deferred ? RequestPriority.PREFETCH : RequestPriority.VISIBLE));
+        if (response.getCode() != 200) {
+            throw new IOException("HTTP " + response.getCode());
+        }
+        if (response.getBody().length > MAX_IMAGE_BYTES) {
+            throw new IOException("Image too large: " + response.getBody().length);
+        }
+        return response.getBody();
+    }
+
+    /**
+     * Decodes at the smallest power-of-two subsample that still covers the target size
+     */
+    @Nullable
+    private Bitmap decode(byte[] data, int targetWidth, int targetHeight) {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inTempStorage = TEMP_STORAGE.get();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        int sampleSize = 1;
+        while (options.outWidth / (sampleSize * 2) >= targetWidth && options.outHeight / (sampleSize * 2) >= targetHeight) {
+            sampleSize *= 2;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize;
+        options.inScaled = false;
+
+        if (hardwareBitmaps) {
+            options.inPreferredConfig = Bitmap.Config.HARDWARE;
+            try {
+                Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+                if (bitmap != null) {
+                    return bitmap;
+                }
+            } catch (IllegalArgumentException | IllegalStateException e) {
+                // Out of graphics memory or an unsupported format, decode in software instead
+            }
+        }
+
+        options.inPreferredConfig = Bitmap.Config.ARGB_8888;
+        options.inMutable = true;
+        int width = (options.outWidth + sampleSize - 1) / sampleSize;
+        int height = (options.outHeight + sampleSize - 1) / sampleSize;
+        Bitmap reusable = pool.get(width, height, Bitmap.Config.ARGB_8888);
+        options.inBitmap = reusable;
+        try {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data, 0, data.length, options);
+            if (reusable != null && bitmap == reusable) {
+                pooledDecodes.incrementAndGet();
+            }
+            return bitmap;
+        } catch (IllegalArgumentException e) {
+            // The pooled allocation did not fit after all, it is dropped rather than returned
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data, 0, data.length, options);
+        }
+    }
+
+    /**
+     * Share of visible loads that a prefetch had already started or finished
+     */
+    public double getPrefetchHitRate() {
+        long total = prefetchHits + prefetchMisses;
+        return total > 0 ? (double) prefetchHits / total : 0.0;
+    }
+
+    /**
+     * Network bytes spent on prefetches that were displaced before their image was ever shown
+     */
+    public long getWastedPrefetchBytes() {
+        return wastedPrefetchBytes;
+    }
+
+    @NonNull
+    public String report() {
+        long requests = memoryHits + diskHits.get() + networkLoads.get();
+        return String.format(Locale.US,
+            "requests=%d memoryHits=%d diskHits=%d network=%d cancelled=%d failures=%d pooledDecodes=%d "
+                + "hardware=%b%n  prefetch issued=%d cancelled=%d hits=%d misses=%d hitRate=%.0f%% wastedBytes=%d"
+                + "%n  decode %s%n  memory %s%n  %s%n  disk %s",
+            requests, memoryHits, diskHits.get(), networkLoads.get(), cancelledRequests, failures.get(),
+            pooledDecodes.get(), hardwareBitmaps, prefetchesIssued, prefetchesCancelled, prefetchHits,
+            prefetchMisses, getPrefetchHitRate() * 100, wastedPrefetchBytes,
+            decodeLatency.summary(), memoryCache, pool, Arrays.toString(diskShards));
+    }
+}
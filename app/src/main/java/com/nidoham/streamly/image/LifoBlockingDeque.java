@@ -0,0 +1,28 @@
+package com.nidoham.streamly.image;
+
+import java.util.concurrent.LinkedBlockingDeque;
+
+/**
+ * Work queue that hands out the newest task first. While flinging, the rows that just came
+ * on screen are served before requests for rows that have already scrolled away.
+ * Deferred tasks, i.e. speculative prefetches, queue behind everything else instead.
+ */
+class LifoBlockingDeque<E> extends LinkedBlockingDeque<E> {
+
+    private static final long serialVersionUID = 1L;
+
+    interface Prioritized {
+        /**
+         * @return True if the task should only run once no other work is queued
+         */
+        boolean isDeferred();
+    }
+
+    @Override
+    public boolean offer(E e) {
+        if (e instanceof Prioritized && ((Prioritized) e).isDeferred()) {
+            return offerLast(e);
+        }
+        return offerFirst(e);
+    }
+}
@@ -0,0 +1,199 @@
+package com.nidoham.streamly.inflate;
+
+import android.app.Activity;
+import android.content.Context;
+import android.content.MutableContextWrapper;
+import android.content.res.Configuration;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.SystemClock;
+import android.util.Log;
+import android.util.SparseArray;
+import android.util.SparseBooleanArray;
+import android.view.ContextThemeWrapper;
+import android.view.LayoutInflater;
+import android.view.View;
+import androidx.annotation.DrawableRes;
+import androidx.annotation.LayoutRes;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.annotation.StyleRes;
+import androidx.appcompat.content.res.AppCompatResources;
+import java.util.Locale;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Inflates layout trees on a background looper thread before their activity exists.
+ * Views are built against a {@link MutableContextWrapper} around a themed application context;
+ * when an activity takes a tree the wrapper is re-pointed at the activity, so the views behave as if
+ * the activity had inflated them. A tree is only handed out if the configuration still matches, and one
+ * finished after its activity gave up on it and inflated itself is dropped.
+ * AppCompat's widget substitution is not installed on this inflater, so pre-inflated layouts must
+ * name their widget classes explicitly, as activity_main does.
+ */
+public final class ViewPreinflater {
+
+    private static final String TAG = "ViewPreinflater";
+    private static final ViewPreinflater INSTANCE = new ViewPreinflater();
+
+    private static final class Entry {
+        final View root;
+        final MutableContextWrapper context;
+        final Configuration configuration;
+        final long inflateNanos;
+
+        Entry(View root, MutableContextWrapper context, Configuration configuration, long inflateNanos) {
+            this.root = root;
+            this.context = context;
+            this.configuration = configuration;
+            this.inflateNanos = inflateNanos;
+        }
+    }
+
+    private final SparseArray<Entry> ready = new SparseArray<>();
+    // Layouts an activity asked for, a tree finished after that would never be taken
+    private final SparseBooleanArray taken = new SparseBooleanArray();
+    private long hits = 0;
+    private long misses = 0;
+    private long savedNanos = 0;
+
+    private ViewPreinflater() {
+    }
+
+    public static ViewPreinflater getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Inflates a layout on a dedicated looper thread and waits for it, for use from a startup task
+     * @param context Any context, only the application context is retained
+     * @param theme Theme of the activity that will take the tree
+     * @param layout Layout to inflate
+     * @param timeoutMs Maximum time to wait before giving up on the result
+     * @param drawables Drawables to decode into the resources cache alongside the layout
+     * @return True if the tree is ready to be taken
+     */
+    public boolean preinflateBlocking(@NonNull Context context, @StyleRes int theme, @LayoutRes int layout,
+                                      long timeoutMs, @DrawableRes int... drawables) throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(1);
+        Context appContext = context.getApplicationContext();
+        synchronized (this) {
+            taken.delete(layout);
+        }
+
+        // Views may create handlers in their constructors, so inflation needs a looper thread
+        HandlerThread thread = new HandlerThread("preinflater");
+        thread.start();
+        new Handler(thread.getLooper()).post(() -> {
+            try {
+                inflate(appContext, theme, layout, drawables);
+            } catch (RuntimeException e) {
+                Log.w(TAG, "Pre-inflation failed, activity will inflate synchronously", e);
+            } finally {
+                done.countDown();
+            }
+        });
+        thread.quitSafely();
+
+        return done.await(timeoutMs, TimeUnit.MILLISECONDS) && isReady(layout);
+    }
+
+    private void inflate(Context appContext, int theme, int layout, int[] drawables) {
+        long start = SystemClock.elapsedRealtimeNanos();
+        MutableContextWrapper wrapper = new MutableContextWrapper(new ContextThemeWrapper(appContext, theme));
+
+        // Warm the drawable cache so the inflated and later inflated views share decoded state
+        for (int drawable : drawables) {
+            AppCompatResources.getDrawable(wrapper, drawable);
+        }
+        View root = LayoutInflater.from(wrapper).inflate(layout, null, false);
+        long elapsed = SystemClock.elapsedRealtimeNanos() - start;
+
+        Configuration configuration = new Configuration(appContext.getResources().getConfiguration());
+        synchronized (this) {
+            if (!taken.get(layout)) {
+                ready.put(layout, new Entry(root, wrapper, configuration, elapsed));
+            }
+        }
+    }
+
+    public synchronized boolean isReady(@LayoutRes int layout) {
+        return ready.get(layout) != null;
+    }
+
+    /**
+     * Hands a pre-inflated tree to an activity, at most once per inflation
+     * @param layout Layout that was pre-inflated
+     * @param activity Activity that will own the views
+     * @return The root view, or null if nothing usable is ready and the caller must inflate itself
+     */
+    @MainThread
+    @Nullable
+    public View take(@LayoutRes int layout, @NonNull Activity activity) {
+        Entry entry;
+        synchronized (this) {
+            entry = ready.get(layout);
+            ready.remove(layout);
+            taken.put(layout, true);
+        }
+
+        if (entry == null || !isCompatible(entry.configuration, activity.getResources().getConfiguration())) {
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+
+        entry.context.setBaseContext(activity);
+        synchronized (this) {
+            hits++;
+            savedNanos += entry.inflateNanos;
+        }
+        return entry.root;
+    }
+
+    /**
+     * Only configuration fields that change resolved resources are compared
+     */
+    private static boolean isCompatible(Configuration inflated, Configuration current) {
+        return inflated.orientation == current.orientation
+            && inflated.uiMode == current.uiMode
+            && inflated.densityDpi == current.densityDpi
+            && inflated.fontScale == current.fontScale
+            && inflated.screenWidthDp == current.screenWidthDp
+            && inflated.screenHeightDp == current.screenHeightDp
+            && inflated.getLayoutDirection() == current.getLayoutDirection()
+            && inflated.getLocales().equals(current.getLocales());
+    }
+
+    /**
+     * Drops any tree that has not been taken, e.g. under memory pressure
+     */
+    public synchronized void clear() {
+        ready.clear();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    /**
+     * @return Main-thread inflation time avoided by hits, in nanoseconds
+     */
+    public synchronized long getSavedNanos() {
+        return savedNanos;
+    }
+
+    @NonNull
+    public synchronized String report() {
+        long total = hits + misses;
+        return String.format(Locale.US, "hits=%d misses=%d hitRate=%.0f%% saved=%.1fms",
+            hits, misses, total > 0 ? 100.0 * hits / total : 0.0, savedNanos / 1_000_000.0);
+    }
+}
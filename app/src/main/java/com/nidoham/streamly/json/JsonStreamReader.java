@@ -0,0 +1,677 @@
+package com.nidoham.streamly.json;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Pull parser over UTF-8 JSON in the style of {@code android.util.JsonReader}, tuned to allocate little:
+ * bytes are decoded into one reusable char buffer, object keys and chosen values go through a
+ * {@link StringInterner}, numbers are parsed without intermediate Strings and
+ * {@link #nextCharSequence()} exposes a string value without copying it.
+ * Strict RFC 8259 syntax, except that {@link #nextLong()} and {@link #nextInt()} accept numeric strings.
+ * Not thread safe.
+ */
+public final class JsonStreamReader implements Closeable {
+
+    public enum Token {
+        BEGIN_OBJECT, END_OBJECT, BEGIN_ARRAY, END_ARRAY, NAME, STRING, NUMBER, BOOLEAN, NULL, END_DOCUMENT
+    }
+
+    /**
+     * Read-only view of the reader's char buffer, valid until the next call on the reader
+     */
+    private final class CharView implements CharSequence {
+        int length;
+
+        @Override
+        public int length() {
+            return length;
+        }
+
+        @Override
+        public char charAt(int index) {
+            if (index < 0 || index >= length) {
+                throw new IndexOutOfBoundsException("index " + index + ", length " + length);
+            }
+            return chars[index];
+        }
+
+        @Override
+        public CharSequence subSequence(int start, int end) {
+            return new String(chars, start, end - start);
+        }
+
+        @Override
+        public String toString() {
+            return new String(chars, 0, length);
+        }
+    }
+
+    private static final int EMPTY_DOCUMENT = 0;
+    private static final int NONEMPTY_DOCUMENT = 1;
+    private static final int EMPTY_ARRAY = 2;
+    private static final int NONEMPTY_ARRAY = 3;
+    private static final int EMPTY_OBJECT = 4;
+    private static final int DANGLING_NAME = 5;
+    private static final int NONEMPTY_OBJECT = 6;
+    private static final int BUFFER_BYTES = 8 * 1024;
+
+    private final InputStream in;
+    private final StringInterner interner;
+    private byte[] buffer;
+    private int pos = 0;
+    private int limit;
+    // Bytes consumed before the current buffer, for error positions
+    private long bufferStart = 0;
+
+    private char[] chars = new char[64];
+    private int charCount = 0;
+    private final CharView charView = new CharView();
+
+    private int[] stack = new int[32];
+    private int depth = 1;
+    private Token peeked;
+    private boolean peekedBoolean;
+
+    /**
+     * Reads from a stream, buffering internally
+     */
+    public JsonStreamReader(InputStream in, StringInterner interner) {
+        this.in = in;
+        this.interner = interner;
+        this.buffer = new byte[BUFFER_BYTES];
+        this.limit = 0;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    /**
+     * Reads an in-memory document without copying it
+     */
+    public JsonStreamReader(byte[] data, StringInterner interner) {
+        this.in = null;
+        this.interner = interner;
+        this.buffer = data;
+        this.limit = data.length;
+        stack[0] = EMPTY_DOCUMENT;
+    }
+
+    public Token peek() throws IOException {
+        if (peeked != null) {
+            return peeked;
+        }
+        int scope = stack[depth - 1];
+        int c;
+        switch (scope) {
+            case EMPTY_ARRAY:
+                stack[depth - 1] = NONEMPTY_ARRAY;
+                c = peekNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                return peeked = valueToken(c);
+            case NONEMPTY_ARRAY:
+                c = peekNonWhitespace();
+                if (c == ']') {
+                    return peeked = Token.END_ARRAY;
+                }
+                expect(c, ',');
+                return peeked = valueToken(peekNonWhitespace());
+            case EMPTY_OBJECT:
+            case NONEMPTY_OBJECT:
+                c = peekNonWhitespace();
+                if (c == '}') {
+                    return peeked = Token.END_OBJECT;
+                }
+                if (scope == NONEMPTY_OBJECT) {
+                    expect(c, ',');
+                    c = peekNonWhitespace();
+                }
+                if (c != '"') {
+                    throw syntaxError("Expected name");
+                }
+                stack[depth - 1] = DANGLING_NAME;
+                return peeked = Token.NAME;
+            case DANGLING_NAME:
+                expect(peekNonWhitespace(), ':');
+                stack[depth - 1] = NONEMPTY_OBJECT;
+                return peeked = valueToken(peekNonWhitespace());
+            case EMPTY_DOCUMENT:
+                stack[depth - 1] = NONEMPTY_DOCUMENT;
+                return peeked = valueToken(peekNonWhitespace());
+            default:
+                if (peekNonWhitespace() != -1) {
+                    throw syntaxError("Trailing content after document");
+                }
+                return peeked = Token.END_DOCUMENT;
+        }
+    }
+
+    /**
+     * Consumes a separator byte that {@link #peekNonWhitespace()} left in place
+     */
+    private void expect(int c, char expected) throws IOException {
+        if (c != expected) {
+            throw syntaxError("Expected '" + expected + "'");
+        }
+        pos++;
+    }
+
+    /**
+     * Classifies the value starting at c. Literals are consumed here, everything else when read.
+     */
+    private Token valueToken(int c) throws IOException {
+        switch (c) {
+            case '{':
+                return Token.BEGIN_OBJECT;
+            case '[':
+                return Token.BEGIN_ARRAY;
+            case '"':
+                return Token.STRING;
+            case 't':
+                consumeLiteral("true");
+                peekedBoolean = true;
+                return Token.BOOLEAN;
+            case 'f':
+                consumeLiteral("false");
+                peekedBoolean = false;
+                return Token.BOOLEAN;
+            case 'n':
+                consumeLiteral("null");
+                return Token.NULL;
+            case -1:
+                throw syntaxError("Unexpected end of input");
+            default:
+                if (c == '-' || (c >= '0' && c <= '9')) {
+                    return Token.NUMBER;
+                }
+                throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+    }
+
+    private void consumeLiteral(String literal) throws IOException {
+        for (int i = 0; i < literal.length(); i++) {
+            if (read() != literal.charAt(i)) {
+                throw syntaxError("Expected " + literal);
+            }
+        }
+    }
+
+    public boolean hasNext() throws IOException {
+        Token token = peek();
+        return token != Token.END_OBJECT && token != Token.END_ARRAY && token != Token.END_DOCUMENT;
+    }
+
+    public void beginObject() throws IOException {
+        consumeStructural(Token.BEGIN_OBJECT);
+        push(EMPTY_OBJECT);
+    }
+
+    public void endObject() throws IOException {
+        consumeStructural(Token.END_OBJECT);
+        depth--;
+    }
+
+    public void beginArray() throws IOException {
+        consumeStructural(Token.BEGIN_ARRAY);
+        push(EMPTY_ARRAY);
+    }
+
+    public void endArray() throws IOException {
+        consumeStructural(Token.END_ARRAY);
+        depth--;
+    }
+
+    private void consumeStructural(Token expected) throws IOException {
+        if (peek() != expected) {
+            throw syntaxError("Expected " + expected + " but was " + peeked);
+        }
+        pos++;
+        peeked = null;
+    }
+
+    private void push(int scope) {
+        if (depth == stack.length) {
+            stack = Arrays.copyOf(stack, depth * 2);
+        }
+        stack[depth++] = scope;
+    }
+
+    /**
+     * @return The key, interned, so dispatching on it with switch or equals allocates nothing
+     */
+    public String nextName() throws IOException {
+        if (peek() != Token.NAME) {
+            throw syntaxError("Expected NAME but was " + peeked);
+        }
+        pos++;
+        readString();
+        peeked = null;
+        return interner.intern(chars, 0, charCount);
+    }
+
+    /**
+     * @return A string value, or the literal text of a number
+     */
+    public String nextString() throws IOException {
+        readStringOrNumber();
+        return new String(chars, 0, charCount);
+    }
+
+    /**
+     * Like {@link #nextString()} for values that repeat across a document, e.g. channel names
+     */
+    public String nextInternedString() throws IOException {
+        readStringOrNumber();
+        return interner.intern(chars, 0, charCount);
+    }
+
+    /**
+     * @return The value in a reused buffer, valid only until the next call on this reader
+     */
+    public CharSequence nextCharSequence() throws IOException {
+        readStringOrNumber();
+        charView.length = charCount;
+        return charView;
+    }
+
+    private void readStringOrNumber() throws IOException {
+        Token token = peek();
+        if (token == Token.STRING) {
+            pos++;
+            readString();
+        } else if (token == Token.NUMBER) {
+            readNumberChars();
+        } else {
+            throw syntaxError("Expected STRING but was " + token);
+        }
+        peeked = null;
+    }
+
+    /**
+     * @throws NumberFormatException If the value is fractional or out of range
+     */
+    public long nextLong() throws IOException {
+        readStringOrNumberForNumeric();
+        return parseLong();
+    }
+
+    public int nextInt() throws IOException {
+        readStringOrNumberForNumeric();
+        long value = parseLong();
+        if (value != (int) value) {
+            throw new NumberFormatException("Out of int range: " + value);
+        }
+        return (int) value;
+    }
+
+    public double nextDouble() throws IOException {
+        readStringOrNumberForNumeric();
+        return Double.parseDouble(new String(chars, 0, charCount));
+    }
+
+    private void readStringOrNumberForNumeric() throws IOException {
+        Token token = peek();
+        if (token != Token.NUMBER && token != Token.STRING) {
+            throw syntaxError("Expected NUMBER but was " + token);
+        }
+        readStringOrNumber();
+    }
+
+    /**
+     * Parses the char buffer, accepting integral values written with a fraction or exponent, e.g. 1.0 or 1e3
+     */
+    private long parseLong() {
+        int start = charCount > 0 && chars[0] == '-' ? 1 : 0;
+        if (charCount == start) {
+            throw new NumberFormatException("Empty number");
+        }
+        // Accumulated negatively so Long.MIN_VALUE fits
+        long value = 0;
+        for (int i = start; i < charCount; i++) {
+            char c = chars[i];
+            if (c < '0' || c > '9') {
+                return parseIntegralDouble();
+            }
+            int digit = c - '0';
+            if (value < (Long.MIN_VALUE + digit) / 10) {
+                throw new NumberFormatException("Out of long range: " + new String(chars, 0, charCount));
+            }
+            value = value * 10 - digit;
+        }
+        if (start == 0) {
+            if (value == Long.MIN_VALUE) {
+                throw new NumberFormatException("Out of long range: " + new String(chars, 0, charCount));
+            }
+            return -value;
+        }
+        return value;
+    }
+
+    private long parseIntegralDouble() {
+        String text = new String(chars, 0, charCount);
+        double value = Double.parseDouble(text);
+        long result = (long) value;
+        if (result != value) {
+            throw new NumberFormatException("Not an integer: " + text);
+        }
+        return result;
+    }
+
+    public boolean nextBoolean() throws IOException {
+        if (peek() != Token.BOOLEAN) {
+            throw syntaxError("Expected BOOLEAN but was " + peeked);
+        }
+        peeked = null;
+        return peekedBoolean;
+    }
+
+    public void nextNull() throws IOException {
+        if (peek() != Token.NULL) {
+            throw syntaxError("Expected NULL but was " + peeked);
+        }
+        peeked = null;
+    }
+
+    /**
+     * @return True and consumes the value if it is null, so optional fields read as
+     * {@code reader.skipNull() ? null : reader.nextString()}
+     */
+    public boolean skipNull() throws IOException {
+        if (peek() == Token.NULL) {
+            peeked = null;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Skips the next value, including everything nested in it
+     */
+    public void skipValue() throws IOException {
+        int nesting = 0;
+        do {
+            switch (peek()) {
+                case BEGIN_OBJECT:
+                    beginObject();
+                    nesting++;
+                    break;
+                case BEGIN_ARRAY:
+                    beginArray();
+                    nesting++;
+                    break;
+                case END_OBJECT:
+                    endObject();
+                    nesting--;
+                    break;
+                case END_ARRAY:
+                    endArray();
+                    nesting--;
+                    break;
+                case NAME:
+                    pos++;
+                    skipString();
+                    peeked = null;
+                    break;
+                case STRING:
+                    pos++;
+                    skipString();
+                    peeked = null;
+                    break;
+                case NUMBER:
+                    readNumberChars();
+                    peeked = null;
+                    break;
+                case END_DOCUMENT:
+                    throw syntaxError("Unexpected end of document");
+                default:
+                    peeked = null;
+                    break;
+            }
+        } while (nesting > 0);
+    }
+
+    /**
+     * Decodes a string body after its opening quote into the char buffer
+     */
+    private void readString() throws IOException {
+        charCount = 0;
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int b = buffer[pos++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                appendChar(readEscape());
+            } else if (b >= 0) {
+                if (b < 0x20) {
+                    throw syntaxError("Unescaped control character");
+                }
+                appendChar((char) b);
+            } else {
+                readUtf8Sequence(b & 0xFF);
+            }
+        }
+    }
+
+    /**
+     * Scans past a string without decoding it
+     */
+    private void skipString() throws IOException {
+        while (true) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Unterminated string");
+            }
+            int b = buffer[pos++];
+            if (b == '"') {
+                return;
+            }
+            if (b == '\\') {
+                // The escaped byte can never be a quote that ends the string
+                read();
+            }
+        }
+    }
+
+    private char readEscape() throws IOException {
+        int c = read();
+        switch (c) {
+            case '"':
+            case '\\':
+            case '/':
+                return (char) c;
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit < 0) {
+                        throw syntaxError("Bad \\u escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            default:
+                throw syntaxError("Bad escape");
+        }
+    }
+
+    /**
+     * Decodes a multi-byte UTF-8 sequence, replacing malformed input with U+FFFD
+     */
+    private void readUtf8Sequence(int lead) throws IOException {
+        int extra;
+        int codePoint;
+        if ((lead & 0xE0) == 0xC0) {
+            extra = 1;
+            codePoint = lead & 0x1F;
+        } else if ((lead & 0xF0) == 0xE0) {
+            extra = 2;
+            codePoint = lead & 0x0F;
+        } else if ((lead & 0xF8) == 0xF0) {
+            extra = 3;
+            codePoint = lead & 0x07;
+        } else {
+            appendChar('\uFFFD');
+            return;
+        }
+        for (int i = 0; i < extra; i++) {
+            if (pos == limit && !fill()) {
+                throw syntaxError("Truncated UTF-8 sequence");
+            }
+            int next = buffer[pos] & 0xFF;
+            if ((next & 0xC0) != 0x80) {
+                // Leave the byte for the next character
+                appendChar('\uFFFD');
+                return;
+            }
+            pos++;
+            codePoint = (codePoint << 6) | (next & 0x3F);
+        }
+        if (codePoint >= Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            appendChar(Character.highSurrogate(codePoint));
+            appendChar(Character.lowSurrogate(codePoint));
+        } else {
+            appendChar((char) codePoint);
+        }
+    }
+
+    /**
+     * Copies a number literal into the char buffer, checking the RFC 8259 grammar as it goes:
+     * an optional minus, 0 or digits without a leading zero, then an optional fraction and exponent
+     */
+    private void readNumberChars() throws IOException {
+        charCount = 0;
+        int c = peekByte();
+        if (c == '-') {
+            c = takeAndPeek(c);
+        }
+        if (c == '0') {
+            c = takeAndPeek(c);
+            if (c >= '0' && c <= '9') {
+                throw syntaxError("Leading zero in number");
+            }
+        } else {
+            c = readDigits(c);
+        }
+        if (c == '.') {
+            c = readDigits(takeAndPeek(c));
+        }
+        if (c == 'e' || c == 'E') {
+            c = takeAndPeek(c);
+            if (c == '+' || c == '-') {
+                c = takeAndPeek(c);
+            }
+            readDigits(c);
+        }
+    }
+
+    /**
+     * Copies one or more digits starting with c
+     * @return The byte after them, not consumed
+     */
+    private int readDigits(int c) throws IOException {
+        if (c < '0' || c > '9') {
+            throw syntaxError("Expected digit in number");
+        }
+        do {
+            c = takeAndPeek(c);
+        } while (c >= '0' && c <= '9');
+        return c;
+    }
+
+    /**
+     * Copies c, the byte at pos, and moves past it
+     * @return The next byte, not consumed
+     */
+    private int takeAndPeek(int c) throws IOException {
+        appendChar((char) c);
+        pos++;
+        return peekByte();
+    }
+
+    /**
+     * @return The byte at pos without consuming it, -1 at end of input
+     */
+    private int peekByte() throws IOException {
+        return pos < limit || fill() ? buffer[pos] & 0xFF : -1;
+    }
+
+    private void appendChar(char c) {
+        if (charCount == chars.length) {
+            chars = Arrays.copyOf(chars, charCount * 2);
+        }
+        chars[charCount++] = c;
+    }
+
+    /**
+     * @return The next non-whitespace byte without consuming it, -1 at end of input
+     */
+    private int peekNonWhitespace() throws IOException {
+        while (pos < limit || fill()) {
+            int b = buffer[pos];
+            if (b == ' ' || b == '\n' || b == '\r' || b == '\t') {
+                pos++;
+            } else {
+                return b & 0xFF;
+            }
+        }
+        return -1;
+    }
+
+    private int read() throws IOException {
+        if (pos == limit && !fill()) {
+            return -1;
+        }
+        return buffer[pos++] & 0xFF;
+    }
+
+    /**
+     * Refills the buffer once it has been fully consumed
+     * @return False at end of input
+     */
+    private boolean fill() throws IOException {
+        if (in == null) {
+            return false;
+        }
+        bufferStart += limit;
+        pos = 0;
+        limit = 0;
+        int read;
+        while ((read = in.read(buffer, 0, buffer.length)) == 0) {
+            continue;
+        }
+        if (read == -1) {
+            return false;
+        }
+        limit = read;
+        return true;
+    }
+
+    private IOException syntaxError(String message) {
+        return new IOException(message + " at byte " + (bufferStart + pos));
+    }
+
+    @Override
+    public void close() throws IOException {
+        peeked = null;
+        depth = 1;
+        stack[0] = NONEMPTY_DOCUMENT;
+        if (in != null) {
+            in.close();
+        }
+    }
+}
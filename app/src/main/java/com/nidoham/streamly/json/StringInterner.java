@@ -0,0 +1,57 @@
+package com.nidoham.streamly.json;
+
+/**
+ * Fixed-size, direct-mapped table that returns an existing String for repeated character runs,
+ * so values such as channel names and object keys are allocated once rather than per occurrence.
+ * A collision simply replaces the slot, which bounds memory without any eviction bookkeeping.
+ * Safe to share between threads: Strings are immutable, so a racy slot read sees either a complete
+ * String or a stale one, and a stale one only costs an extra allocation.
+ */
+public final class StringInterner {
+
+    private static final int MAX_INTERNED_LENGTH = 64;
+
+    private final String[] table;
+    private final int mask;
+
+    /**
+     * @param capacity Number of slots, rounded up to a power of two
+     */
+    public StringInterner(int capacity) {
+        int size = Integer.highestOneBit(Math.max(16, capacity - 1)) << 1;
+        table = new String[size];
+        mask = size - 1;
+    }
+
+    /**
+     * @return A String equal to the given characters, shared with earlier calls where possible
+     */
+    public String intern(char[] chars, int offset, int length) {
+        if (length > MAX_INTERNED_LENGTH) {
+            // Long values are rarely repeated, keep them out of the table
+            return new String(chars, offset, length);
+        }
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[offset + i];
+        }
+        int index = (hash ^ (hash >>> 16)) & mask;
+        String cached = table[index];
+        if (cached != null && cached.length() == length && cached.hashCode() == hash
+                && regionEquals(cached, chars, offset, length)) {
+            return cached;
+        }
+        String created = new String(chars, offset, length);
+        table[index] = created;
+        return created;
+    }
+
+    private static boolean regionEquals(String value, char[] chars, int offset, int length) {
+        for (int i = 0; i < length; i++) {
+            if (value.charAt(i) != chars[offset + i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,82 @@
+package com.nidoham.streamly.library;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+import com.nidoham.streamly.data.RecordLog;
+import com.nidoham.streamly.task.SerialExecutor;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.Tasks;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Process-wide library store, opened once and kept for the life of the process, and the checkpointer
+ * that players report their positions to
+ */
+public final class Library {
+
+    // Positions are written every few seconds per player, losing a quarter second of them is harmless
+    private static final long COMMIT_INTERVAL_MILLIS = 250;
+    private static final int BUFFER_BYTES = 256 * 1024;
+    // Caps what a cold start replays after a crash to a few milliseconds of scanning
+    private static final long CHECKPOINT_INTERVAL_BYTES = 4 * 1024 * 1024;
+    // Players tick every few hundred milliseconds, a crash may cost this much progress
+    private static final long POSITION_FLUSH_INTERVAL_MILLIS = 10_000;
+    // Feed previews can play several videos at once, more than this is written straight away
+    private static final int MAX_PENDING_POSITIONS = 16;
+
+    private static volatile LibraryStore instance;
+    private static volatile PositionCheckpointer checkpointer;
+
+    private Library() {
+    }
+
+    /**
+     * Opens the store on first use, which loads the index checkpoint and replays the log after it
+     */
+    @WorkerThread
+    @NonNull
+    public static LibraryStore getStore(@NonNull Context context) throws IOException {
+        LibraryStore store = instance;
+        if (store == null) {
+            synchronized (Library.class) {
+                store = instance;
+                if (store == null) {
+                    File directory = new File(context.getApplicationContext().getFilesDir(), "library");
+                    SerialExecutor compaction = new SerialExecutor(Tasks.getScheduler(), TaskPriority.MAINTENANCE);
+                    store = new LibraryStore(RecordLog.open(directory, COMMIT_INTERVAL_MILLIS, BUFFER_BYTES,
+                        CHECKPOINT_INTERVAL_BYTES, compaction));
+                    instance = store;
+                }
+            }
+        }
+        return store;
+    }
+
+    /**
+     * Creates the checkpointer on first use without touching the disk, the store is opened on its
+     * thread. Listeners are called on the main thread.
+     */
+    @AnyThread
+    @NonNull
+    public static PositionCheckpointer getCheckpointer(@NonNull Context context) {
+        PositionCheckpointer positions = checkpointer;
+        if (positions == null) {
+            synchronized (Library.class) {
+                positions = checkpointer;
+                if (positions == null) {
+                    Context appContext = context.getApplicationContext();
+                    Handler mainHandler = new Handler(Looper.getMainLooper());
+                    positions = new PositionCheckpointer(() -> getStore(appContext), POSITION_FLUSH_INTERVAL_MILLIS,
+                        MAX_PENDING_POSITIONS, mainHandler::post);
+                    checkpointer = positions;
+                }
+            }
+        }
+        return positions;
+    }
+}
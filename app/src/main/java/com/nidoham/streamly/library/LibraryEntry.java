@@ -0,0 +1,42 @@
+package com.nidoham.streamly.library;
+
+import com.nidoham.streamly.feed.FeedItem;
+
+/**
+ * A video in the user's library: watched, saved or on a playlist
+ */
+public final class LibraryEntry {
+
+    private final FeedItem item;
+    private final long positionMillis;
+    private final long updatedAtMillis;
+
+    LibraryEntry(FeedItem item, long positionMillis, long updatedAtMillis) {
+        this.item = item;
+        this.positionMillis = positionMillis;
+        this.updatedAtMillis = updatedAtMillis;
+    }
+
+    public FeedItem getItem() {
+        return item;
+    }
+
+    /**
+     * @return Where playback stopped, 0 for entries that were never played
+     */
+    public long getPositionMillis() {
+        return positionMillis;
+    }
+
+    /**
+     * @return When the entry was last watched, saved or added
+     */
+    public long getUpdatedAtMillis() {
+        return updatedAtMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryEntry[" + item.getId() + " @" + positionMillis + "ms]";
+    }
+}
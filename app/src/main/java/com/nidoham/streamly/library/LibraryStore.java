@@ -0,0 +1,230 @@
+package com.nidoham.streamly.library;
+
+import com.nidoham.streamly.data.RecordLog;
+import com.nidoham.streamly.feed.FeedItem;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Watch history, saved videos, playlists and past search queries on one {@link RecordLog}.
+ * Every watch rewrites the video's history record, so the log's write order is the history order
+ * and listing the newest entries needs no separate sort key. Writes return before they are durable;
+ * a crash loses at most the log's commit interval, which is acceptable for playback positions.
+ */
+public final class LibraryStore implements Closeable {
+
+    private static final int TYPE_HISTORY = 1;
+    private static final int TYPE_SAVED = 2;
+    private static final int TYPE_PLAYLIST = 3;
+    private static final int TYPE_QUERY = 4;
+    private static final int VERSION = 1;
+
+    private final RecordLog log;
+
+    public LibraryStore(RecordLog log) {
+        this.log = log;
+    }
+
+    /**
+     * Moves the video to the top of the history with the given position
+     */
+    public void recordWatch(FeedItem item, long positionMillis, long nowMillis) throws IOException {
+        log.put(historyKey(item.getId()), TYPE_HISTORY, encode(item, positionMillis, nowMillis));
+    }
+
+    /**
+     * @return The history entry of a video, e.g. to resume it, or null
+     */
+    public LibraryEntry getHistoryEntry(String videoId) throws IOException {
+        RecordLog.Entry entry = log.get(historyKey(videoId));
+        return entry != null ? decode(entry.getValue()) : null;
+    }
+
+    /**
+     * @return Watched videos, most recent first
+     */
+    public List<LibraryEntry> getHistory(int offset, int limit) throws IOException {
+        return decodeAll(log.latest(TYPE_HISTORY, offset, limit));
+    }
+
+    public boolean removeFromHistory(String videoId) throws IOException {
+        return log.remove(historyKey(videoId));
+    }
+
+    public int getHistorySize() {
+        return log.count(TYPE_HISTORY);
+    }
+
+    public void save(FeedItem item, long nowMillis) throws IOException {
+        log.put(savedKey(item.getId()), TYPE_SAVED, encode(item, 0, nowMillis));
+    }
+
+    public boolean unsave(String videoId) throws IOException {
+        return log.remove(savedKey(videoId));
+    }
+
+    public boolean isSaved(String videoId) {
+        return log.contains(savedKey(videoId));
+    }
+
+    /**
+     * @return Saved videos, most recently saved first
+     */
+    public List<LibraryEntry> getSaved(int offset, int limit) throws IOException {
+        return decodeAll(log.latest(TYPE_SAVED, offset, limit));
+    }
+
+    public void addToPlaylist(String playlistId, FeedItem item, long nowMillis) throws IOException {
+        log.put(playlistKey(playlistId, item.getId()), TYPE_PLAYLIST, encode(item, 0, nowMillis));
+    }
+
+    public boolean removeFromPlaylist(String playlistId, String videoId) throws IOException {
+        return log.remove(playlistKey(playlistId, videoId));
+    }
+
+    /**
+     * @return Videos on the playlist, most recently added first
+     */
+    public List<LibraryEntry> getPlaylist(String playlistId) throws IOException {
+        String prefix = playlistKey(playlistId, "");
+        List<LibraryEntry> entries = new ArrayList<>();
+        // Playlist entries of every playlist share a type, they are few enough to filter by key
+        for (RecordLog.Entry entry : log.latest(TYPE_PLAYLIST, 0, Integer.MAX_VALUE)) {
+            if (entry.getKey().startsWith(prefix)) {
+                entries.add(decode(entry.getValue()));
+            }
+        }
+        return entries;
+    }
+
+    /**
+     * Counts a submitted search and moves it to the top of the past queries
+     */
+    public void recordQuery(String query, long nowMillis) throws IOException {
+        String key = queryKey(query);
+        RecordLog.Entry existing = log.get(key);
+        int uses = existing != null ? readQueryUses(existing.getValue()) : 0;
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeUTF(query);
+        out.writeInt(uses + 1);
+        out.writeLong(nowMillis);
+        out.flush();
+        log.put(key, TYPE_QUERY, bytes.toByteArray());
+    }
+
+    /**
+     * @return Past queries, most recent first, with how often each was submitted
+     */
+    public Map<String, Integer> getQueries(int limit) throws IOException {
+        Map<String, Integer> queries = new LinkedHashMap<>();
+        for (RecordLog.Entry entry : log.latest(TYPE_QUERY, 0, limit)) {
+            DataInputStream in = new DataInputStream(new ByteArrayInputStream(entry.getValue()));
+            checkVersion(in.readUnsignedByte());
+            queries.put(in.readUTF(), in.readInt());
+        }
+        return queries;
+    }
+
+    public boolean removeQuery(String query) throws IOException {
+        return log.remove(queryKey(query));
+    }
+
+    /**
+     * Blocks until every change so far is on disk
+     */
+    public void sync() throws IOException {
+        log.sync();
+    }
+
+    @Override
+    public void close() throws IOException {
+        log.close();
+    }
+
+    public RecordLog getLog() {
+        return log;
+    }
+
+    private static String historyKey(String videoId) {
+        return "h/" + videoId;
+    }
+
+    private static String savedKey(String videoId) {
+        return "s/" + videoId;
+    }
+
+    private static String playlistKey(String playlistId, String videoId) {
+        return "p/" + playlistId + "/" + videoId;
+    }
+
+    private static String queryKey(String query) {
+        return "q/" + query;
+    }
+
+    private static int readQueryUses(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in.readUnsignedByte());
+        in.readUTF();
+        return in.readInt();
+    }
+
+    private static void checkVersion(int version) throws IOException {
+        if (version != VERSION) {
+            throw new IOException("Unsupported library entry version " + version);
+        }
+    }
+
+    private static List<LibraryEntry> decodeAll(List<RecordLog.Entry> records) throws IOException {
+        List<LibraryEntry> entries = new ArrayList<>(records.size());
+        for (RecordLog.Entry record : records) {
+            entries.add(decode(record.getValue()));
+        }
+        return entries;
+    }
+
+    private static byte[] encode(FeedItem item, long positionMillis, long updatedAtMillis) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeByte(VERSION);
+        out.writeUTF(item.getId());
+        writeNullable(out, item.getTitle());
+        writeNullable(out, item.getChannelName());
+        writeNullable(out, item.getThumbnailUrl());
+        out.writeInt(item.getDurationSeconds());
+        out.writeLong(item.getViewCount());
+        out.writeLong(item.getPublishedAtMillis());
+        out.writeLong(positionMillis);
+        out.writeLong(updatedAtMillis);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static LibraryEntry decode(byte[] data) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(data));
+        checkVersion(in.readUnsignedByte());
+        FeedItem item = new FeedItem(in.readUTF(), readNullable(in), readNullable(in), readNullable(in),
+            in.readInt(), in.readLong(), in.readLong());
+        return new LibraryEntry(item, in.readLong(), in.readLong());
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+}
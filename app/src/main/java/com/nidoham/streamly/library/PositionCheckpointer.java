@@ -0,0 +1,374 @@
+package com.nidoham.streamly.library;
+
+import com.nidoham.streamly.feed.FeedItem;
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keeps playback positions in memory and writes them to the {@link LibraryStore} in batches.
+ * Players report every progress tick; only the latest position per video is kept, a position equal
+ * to the one pending or last written is dropped, and the batch is written once the oldest pending
+ * update is a flush interval old or too many videos are pending; a failed batch stays pending and the
+ * timer retries it. {@link #flush()} writes and forces everything at once, for the activity's onPause
+ * and onDestroy. Reads see pending positions, so resume points are exact even before they reach the
+ * disk; a crash loses at most one flush interval of progress.
+ * The store is opened lazily on the checkpointer's own thread, so every method here is cheap to
+ * call from the main thread except the blocking getters.
+ */
+public final class PositionCheckpointer implements Closeable {
+
+    public interface StoreOpener {
+        /**
+         * Called on the checkpointer thread the first time something has to be read or written
+         */
+        LibraryStore open() throws IOException;
+    }
+
+    public interface ResumeListener {
+        /**
+         * Called on the callback executor with the positions of the requested videos that have one
+         */
+        void onResumePositions(Map<String, Long> positions);
+    }
+
+    public interface HistoryListener {
+        /**
+         * Called on the callback executor with the newest history entries, pending positions applied
+         */
+        void onHistory(List<LibraryEntry> entries);
+    }
+
+    // Enough to recognise a repeated position for every video watched recently
+    private static final int WRITTEN_MEMORY = 256;
+
+    private static final class Pending {
+        FeedItem item;
+        long positionMillis;
+        long updatedAtMillis;
+    }
+
+    private final StoreOpener opener;
+    private final long flushIntervalMillis;
+    private final int maxPending;
+    private final Executor callbackExecutor;
+    private final ScheduledExecutorService executor;
+
+    // Guarded by this
+    private final Map<String, Pending> pending = new HashMap<>();
+    private final Map<String, Long> written = new LinkedHashMap<String, Long>(16, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Long> eldest) {
+            return size() > WRITTEN_MEMORY;
+        }
+    };
+    private boolean timerScheduled = false;
+    private boolean drainQueued = false;
+    private long updates = 0;
+    private long duplicates = 0;
+    private long writes = 0;
+    private long batches = 0;
+    private long failures = 0;
+
+    // Checkpointer thread only
+    private LibraryStore store;
+    private boolean unsynced = false;
+
+    /**
+     * @param opener Supplies the store on first use
+     * @param flushIntervalMillis Longest a position stays in memory only, bounds what a crash loses
+     * @param maxPending Distinct videos pending before a batch is written early
+     * @param callbackExecutor Where listeners are called, e.g. the main thread
+     */
+    public PositionCheckpointer(StoreOpener opener, long flushIntervalMillis, int maxPending,
+                                Executor callbackExecutor) {
+        this.opener = opener;
+        this.flushIntervalMillis = flushIntervalMillis;
+        this.maxPending = maxPending;
+        this.callbackExecutor = callbackExecutor;
+        executor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "position-checkpointer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Records the playback position of a video, called on every progress tick from any thread
+     */
+    public void update(FeedItem item, long positionMillis) {
+        long now = System.currentTimeMillis();
+        boolean drainNow = false;
+        boolean startTimer = false;
+        synchronized (this) {
+            updates++;
+            Pending entry = pending.get(item.getId());
+            if (entry == null) {
+                Long last = written.get(item.getId());
+                if (last != null && last == positionMillis) {
+                    duplicates++;
+                    return;
+                }
+                entry = new Pending();
+                pending.put(item.getId(), entry);
+            } else if (entry.positionMillis == positionMillis) {
+                duplicates++;
+                return;
+            }
+            entry.item = item;
+            entry.positionMillis = positionMillis;
+            entry.updatedAtMillis = now;
+            startTimer = armTimer();
+            if (pending.size() >= maxPending && !drainQueued) {
+                drainQueued = true;
+                drainNow = true;
+            }
+        }
+        if (startTimer) {
+            scheduleTimer();
+        }
+        if (drainNow) {
+            executor.execute(this::drainQuietly);
+        }
+    }
+
+    /**
+     * Writes every pending position and forces the store to disk, without blocking the caller
+     * @return Completes once the positions are durable, fails if they could not be written
+     */
+    public Future<?> flush() {
+        return executor.submit(() -> {
+            drain();
+            if (unsynced) {
+                store.sync();
+                unsynced = false;
+            }
+            return null;
+        });
+    }
+
+    /**
+     * Blocking lookup of one resume point, pending positions included
+     * @return The position, or 0 if the video was never played
+     */
+    public long getResumePosition(String videoId) throws IOException {
+        Long position = getResumePositions(Collections.singletonList(videoId)).get(videoId);
+        return position != null ? position : 0;
+    }
+
+    /**
+     * Blocking bulk lookup, one pass on the checkpointer thread for the whole list
+     * @return Positions of the videos that have one
+     */
+    public Map<String, Long> getResumePositions(Collection<String> videoIds) throws IOException {
+        return await(executor.submit(() -> readPositions(videoIds)));
+    }
+
+    /**
+     * Looks up the resume points of the videos a list is about to show
+     */
+    public void loadResumePositions(Collection<String> videoIds, ResumeListener listener) {
+        List<String> ids = new ArrayList<>(videoIds);
+        executor.execute(() -> {
+            Map<String, Long> positions;
+            try {
+                positions = readPositions(ids);
+            } catch (IOException e) {
+                countFailure();
+                positions = overlayPending(ids, new HashMap<>());
+            }
+            Map<String, Long> result = Collections.unmodifiableMap(positions);
+            callbackExecutor.execute(() -> listener.onResumePositions(result));
+        });
+    }
+
+    /**
+     * Loads the newest history entries for the library, pending positions applied
+     */
+    public void loadHistory(int limit, HistoryListener listener) {
+        executor.execute(() -> {
+            List<LibraryEntry> entries;
+            try {
+                // Writing first keeps the history order right for videos played since the last batch
+                drain();
+                entries = Collections.unmodifiableList(openStore().getHistory(0, limit));
+            } catch (IOException e) {
+                countFailure();
+                entries = Collections.emptyList();
+            }
+            List<LibraryEntry> result = entries;
+            callbackExecutor.execute(() -> listener.onHistory(result));
+        });
+    }
+
+    /**
+     * Flushes and stops the checkpointer thread, the store itself stays open
+     */
+    @Override
+    public void close() throws IOException {
+        Future<?> last = flush();
+        executor.shutdown();
+        await(last);
+    }
+
+    /**
+     * Caller holds the lock. Marks the timer armed if positions are pending and it is not yet.
+     * @return Whether the caller has to call {@link #scheduleTimer()}, outside the lock
+     */
+    private boolean armTimer() {
+        if (timerScheduled || pending.isEmpty()) {
+            return false;
+        }
+        timerScheduled = true;
+        return true;
+    }
+
+    private void scheduleTimer() {
+        try {
+            executor.schedule(this::onTimer, flushIntervalMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Closed; the flush in close() was the last write
+            synchronized (this) {
+                timerScheduled = false;
+            }
+        }
+    }
+
+    private void onTimer() {
+        synchronized (this) {
+            timerScheduled = false;
+        }
+        drainQuietly();
+    }
+
+    private void drainQuietly() {
+        try {
+            drain();
+        } catch (IOException e) {
+            countFailure();
+        }
+    }
+
+    /**
+     * Writes the pending batch. Runs on the checkpointer thread; on failure the batch goes back to
+     * pending unless newer positions arrived meanwhile, and the timer is armed again to retry it.
+     */
+    private void drain() throws IOException {
+        List<Pending> batch;
+        synchronized (this) {
+            drainQueued = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = new ArrayList<>(pending.values());
+            pending.clear();
+        }
+        // The store orders history by write order, so the most recently played goes last
+        batch.sort((a, b) -> Long.compare(a.updatedAtMillis, b.updatedAtMillis));
+        int done = 0;
+        boolean rearm;
+        try {
+            LibraryStore target = openStore();
+            for (Pending entry : batch) {
+                target.recordWatch(entry.item, entry.positionMillis, entry.updatedAtMillis);
+                done++;
+            }
+        } finally {
+            synchronized (this) {
+                for (int i = 0; i < batch.size(); i++) {
+                    Pending entry = batch.get(i);
+                    if (i < done) {
+                        written.put(entry.item.getId(), entry.positionMillis);
+                    } else {
+                        pending.putIfAbsent(entry.item.getId(), entry);
+                    }
+                }
+                writes += done;
+                batches++;
+                rearm = armTimer();
+            }
+            unsynced |= done > 0;
+            if (rearm) {
+                scheduleTimer();
+            }
+        }
+    }
+
+    private Map<String, Long> readPositions(Collection<String> videoIds) throws IOException {
+        Map<String, Long> positions = new HashMap<>();
+        LibraryStore target = openStore();
+        for (String id : videoIds) {
+            LibraryEntry entry = target.getHistoryEntry(id);
+            if (entry != null) {
+                positions.put(id, entry.getPositionMillis());
+            }
+        }
+        return overlayPending(videoIds, positions);
+    }
+
+    private synchronized Map<String, Long> overlayPending(Collection<String> videoIds, Map<String, Long> positions) {
+        if (!pending.isEmpty()) {
+            for (String id : videoIds) {
+                Pending entry = pending.get(id);
+                if (entry != null) {
+                    positions.put(id, entry.positionMillis);
+                }
+            }
+        }
+        return positions;
+    }
+
+    private LibraryStore openStore() throws IOException {
+        if (store == null) {
+            store = opener.open();
+        }
+        return store;
+    }
+
+    private synchronized void countFailure() {
+        failures++;
+    }
+
+    private static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while waiting for the checkpointer", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    public synchronized long getUpdates() {
+        return updates;
+    }
+
+    public synchronized long getWrites() {
+        return writes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US,
+            "PositionCheckpointer[updates=%d, duplicates=%d, writes=%d, batches=%d, pending=%d, failures=%d]",
+            updates, duplicates, writes, batches, pending.size(), failures);
+    }
+}
@@ -0,0 +1,124 @@
+package com.nidoham.streamly.memory;
+
+import android.content.ComponentCallbacks2;
+import android.content.res.Configuration;
+import android.util.Log;
+import androidx.annotation.NonNull;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * App-wide memory pressure coordinator.
+ * Caches register with a tier and report their own size; on every trim level the
+ * coordinator shrinks them tier by tier according to {@link TrimPolicy}.
+ * It never requests a garbage collection, the runtime reclaims released memory on its own schedule.
+ */
+public final class MemoryCoordinator implements ComponentCallbacks2 {
+
+    private static final String TAG = "MemoryCoordinator";
+    private static final MemoryCoordinator INSTANCE = new MemoryCoordinator();
+
+    private static final class Registration {
+        final String name;
+        final MemoryTier tier;
+        final TrimmableCache cache;
+
+        Registration(String name, MemoryTier tier, TrimmableCache cache) {
+            this.name = name;
+            this.tier = tier;
+            this.cache = cache;
+        }
+    }
+
+    private final List<Registration> registrations = new CopyOnWriteArrayList<>();
+    private volatile int lastTrimLevel = 0;
+
+    private MemoryCoordinator() {
+    }
+
+    public static MemoryCoordinator getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Registers a cache for tiered trimming
+     * @param name Stable name used in size reports and logs
+     * @param tier Trim priority of the cache
+     * @param cache The cache to trim
+     */
+    public void register(@NonNull String name, @NonNull MemoryTier tier, @NonNull TrimmableCache cache) {
+        unregister(cache);
+        registrations.add(new Registration(name, tier, cache));
+    }
+
+    public void unregister(@NonNull TrimmableCache cache) {
+        for (Registration registration : registrations) {
+            if (registration.cache == cache) {
+                registrations.remove(registration);
+            }
+        }
+    }
+
+    @Override
+    public void onTrimMemory(int level) {
+        lastTrimLevel = level;
+        long before = getTotalSizeBytes();
+
+        for (MemoryTier tier : MemoryTier.values()) {
+            float fraction = TrimPolicy.retainedFraction(level, tier);
+            if (fraction >= 1f) {
+                continue;
+            }
+            for (Registration registration : registrations) {
+                if (registration.tier == tier) {
+                    long size = registration.cache.getSizeBytes();
+                    registration.cache.trimToSize((long) (size * fraction));
+                }
+            }
+        }
+
+        long after = getTotalSizeBytes();
+        if (before != after) {
+            Log.d(TAG, "Trim level " + level + " released " + (before - after) + " bytes, " + after + " bytes retained");
+        }
+    }
+
+    @Override
+    public void onLowMemory() {
+        onTrimMemory(TRIM_MEMORY_COMPLETE);
+    }
+
+    @Override
+    public void onConfigurationChanged(@NonNull Configuration newConfig) {
+        // Not relevant for memory management
+    }
+
+    /**
+     * @return Current size of every registered cache in bytes, keyed by registration name
+     */
+    @NonNull
+    public Map<String, Long> getCacheSizes() {
+        Map<String, Long> sizes = new LinkedHashMap<>();
+        for (Registration registration : registrations) {
+            Long previous = sizes.get(registration.name);
+            long size = registration.cache.getSizeBytes();
+            sizes.put(registration.name, previous != null ? previous + size : size);
+        }
+        return Collections.unmodifiableMap(sizes);
+    }
+
+    public long getTotalSizeBytes() {
+        long total = 0;
+        for (Registration registration : registrations) {
+            total += registration.cache.getSizeBytes();
+        }
+        return total;
+    }
+
+    public int getLastTrimLevel() {
+        return lastTrimLevel;
+    }
+}
@@ -0,0 +1,11 @@
+package com.nidoham.streamly.memory;
+
+/**
+ * Trim priority of a registered cache. Tiers are trimmed in declaration order,
+ * so cheap-to-rebuild data is released before anything the user will see again soon.
+ */
+public enum MemoryTier {
+    PREFETCHED_DATA,
+    OFFSCREEN_VIEWS,
+    DECODED_BITMAPS
+}
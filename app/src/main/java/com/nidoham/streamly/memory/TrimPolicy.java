@@ -0,0 +1,55 @@
+package com.nidoham.streamly.memory;
+
+import android.content.ComponentCallbacks2;
+
+/**
+ * Maps ComponentCallbacks2 trim levels to the fraction of each tier that may be kept.
+ * Lower tiers are always released at least as aggressively as higher ones.
+ */
+public final class TrimPolicy {
+
+    private TrimPolicy() {
+    }
+
+    /**
+     * @param level One of the ComponentCallbacks2.TRIM_MEMORY_* constants
+     * @param tier The cache tier being trimmed
+     * @return Fraction of the tier's current size to retain, between 0 and 1
+     */
+    public static float retainedFraction(int level, MemoryTier tier) {
+        // Order matters: the process is being considered for kill, keep nothing
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_MODERATE) {
+            return 0f;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_BACKGROUND) {
+            return tier == MemoryTier.DECODED_BITMAPS ? 0.5f : 0f;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_UI_HIDDEN) {
+            switch (tier) {
+                case PREFETCHED_DATA:
+                    return 0f;
+                case OFFSCREEN_VIEWS:
+                    return 0.5f;
+                default:
+                    return 1f;
+            }
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_CRITICAL) {
+            return tier == MemoryTier.DECODED_BITMAPS ? 0.5f : 0f;
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_LOW) {
+            switch (tier) {
+                case PREFETCHED_DATA:
+                    return 0f;
+                case OFFSCREEN_VIEWS:
+                    return 0.5f;
+                default:
+                    return 1f;
+            }
+        }
+        if (level >= ComponentCallbacks2.TRIM_MEMORY_RUNNING_MODERATE) {
+            return tier == MemoryTier.PREFETCHED_DATA ? 0.5f : 1f;
+        }
+        return 1f;
+    }
+}
@@ -0,0 +1,19 @@
+package com.nidoham.streamly.memory;
+
+/**
+ * A cache that can report its approximate footprint and shrink on request.
+ * Implementations are trimmed from the main thread and must be safe to call there.
+ */
+public interface TrimmableCache {
+
+    /**
+     * @return Best-effort estimate of the memory currently held, in bytes
+     */
+    long getSizeBytes();
+
+    /**
+     * Evicts entries until the cache holds at most the given number of bytes
+     * @param maxBytes Target size, 0 means drop everything
+     */
+    void trimToSize(long maxBytes);
+}
@@ -0,0 +1,85 @@
+package com.nidoham.streamly.metrics;
+
+/**
+ * Fixed-capacity ring buffer of frame durations.
+ * Recording overwrites the oldest sample and never allocates; counters cover the whole session.
+ * Not thread-safe, intended to be written from the main thread only.
+ */
+public final class FrameRingBuffer {
+
+    private final long[] durations;
+    private int next = 0;
+    private int size = 0;
+    private long totalFrames = 0;
+    private long slowFrames = 0;
+    private long frozenFrames = 0;
+
+    public FrameRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("capacity must be positive");
+        }
+        durations = new long[capacity];
+    }
+
+    /**
+     * @param durationNanos Frame duration
+     * @param slow Whether the frame exceeded the slow threshold
+     * @param frozen Whether the frame exceeded the frozen threshold
+     */
+    public void record(long durationNanos, boolean slow, boolean frozen) {
+        durations[next] = durationNanos;
+        next = (next + 1) % durations.length;
+        if (size < durations.length) {
+            size++;
+        }
+        totalFrames++;
+        if (slow) {
+            slowFrames++;
+        }
+        if (frozen) {
+            frozenFrames++;
+        }
+    }
+
+    /**
+     * Copies the retained samples, oldest first
+     * @param destination Array of at least {@link #size()} elements
+     * @return Number of samples copied
+     */
+    public int copyTo(long[] destination) {
+        int count = Math.min(size, destination.length);
+        int start = (next - size + durations.length) % durations.length;
+        for (int i = 0; i < count; i++) {
+            destination[i] = durations[(start + i) % durations.length];
+        }
+        return count;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public int capacity() {
+        return durations.length;
+    }
+
+    public long getTotalFrames() {
+        return totalFrames;
+    }
+
+    public long getSlowFrames() {
+        return slowFrames;
+    }
+
+    public long getFrozenFrames() {
+        return frozenFrames;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+        totalFrames = 0;
+        slowFrames = 0;
+        frozenFrames = 0;
+    }
+}
@@ -0,0 +1,396 @@
+package com.nidoham.streamly.metrics;
+
+import android.app.Activity;
+import android.app.Application;
+import android.os.Build;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.HandlerThread;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import android.view.Display;
+import android.view.View;
+import android.view.ViewTreeObserver;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Main-thread jank monitor built on Choreographer frame callbacks.
+ * The callback chain only runs while an activity is visible and something is actually being drawn,
+ * stopping after a short idle grace period, so an idle app does not wake up every vsync.
+ * Frame durations go into a {@link FrameRingBuffer}; slow and frozen frames are tagged with the
+ * active tab and the last lifecycle event without allocating on the normal path.
+ */
+public final class JankMonitor implements Choreographer.FrameCallback, ViewTreeObserver.OnDrawListener {
+
+    private static final String TAG = "JankMonitor";
+    private static final JankMonitor INSTANCE = new JankMonitor();
+
+    private static final long DEFAULT_FRAME_INTERVAL_NANOS = 16_666_667L;
+    private static final long FROZEN_FRAME_NANOS = 700_000_000L;
+    // Keep sampling for about a second after the last draw to catch stalls in input handlers
+    private static final int IDLE_GRACE_FRAMES = 60;
+    private static final int FRAME_BUFFER_SIZE = 512;
+    private static final int BAD_FRAME_LOG_SIZE = 64;
+    private static final int MAX_STACK_SAMPLES = 8;
+    private static final long STACK_SAMPLE_INTERVAL_MS = 100;
+
+    /**
+     * Lifecycle events used to attribute bad frames
+     */
+    public enum LifecycleEvent {
+        CREATED,
+        STARTED,
+        RESUMED,
+        PAUSED,
+        STOPPED,
+        DESTROYED,
+        VIEW_CREATED,
+        VIEW_DESTROYED
+    }
+
+    /**
+     * Snapshot of one slow or frozen frame, created only when queried or logged
+     */
+    public static final class BadFrame {
+        public final long durationNanos;
+        public final long frameTimeNanos;
+        public final boolean frozen;
+        public final int tab;
+        public final String lastEventOwner;
+        public final LifecycleEvent lastEvent;
+        @Nullable
+        public final StackTraceElement[][] stackSamples;
+
+        BadFrame(long durationNanos, long frameTimeNanos, boolean frozen, int tab,
+                 String lastEventOwner, LifecycleEvent lastEvent, @Nullable StackTraceElement[][] stackSamples) {
+            this.durationNanos = durationNanos;
+            this.frameTimeNanos = frameTimeNanos;
+            this.frozen = frozen;
+            this.tab = tab;
+            this.lastEventOwner = lastEventOwner;
+            this.lastEvent = lastEvent;
+            this.stackSamples = stackSamples;
+        }
+
+        @NonNull
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "%s frame %.1fms tab=%d after %s.%s",
+                frozen ? "Frozen" : "Slow", durationNanos / 1_000_000.0, tab, lastEventOwner, lastEvent);
+        }
+    }
+
+    private final FrameRingBuffer frames = new FrameRingBuffer(FRAME_BUFFER_SIZE);
+
+    // Bad frame log as parallel arrays so recording does not allocate
+    private final long[] badDurations = new long[BAD_FRAME_LOG_SIZE];
+    private final long[] badFrameTimes = new long[BAD_FRAME_LOG_SIZE];
+    private final int[] badTabs = new int[BAD_FRAME_LOG_SIZE];
+    private final Class<?>[] badOwners = new Class<?>[BAD_FRAME_LOG_SIZE];
+    private final LifecycleEvent[] badEvents = new LifecycleEvent[BAD_FRAME_LOG_SIZE];
+    private final StackTraceElement[][][] badStacks = new StackTraceElement[BAD_FRAME_LOG_SIZE][][];
+    private int badNext = 0;
+    private int badSize = 0;
+
+    private int startedActivities = 0;
+    private boolean chainActive = false;
+    private boolean drawnSinceLastFrame = false;
+    private int idleFrames = 0;
+    private long lastFrameTimeNanos = 0;
+    private long slowThresholdNanos = DEFAULT_FRAME_INTERVAL_NANOS * 3 / 2;
+
+    private int activeTab = -1;
+    private Class<?> lastEventOwner = JankMonitor.class;
+    private LifecycleEvent lastEvent = LifecycleEvent.CREATED;
+
+    // Frozen-frame stack sampling, off by default
+    private Handler watchdogHandler;
+    private volatile long frameSequence = 0;
+    private volatile long armedSequence = -1;
+    private final Object stackLock = new Object();
+    private final StackTraceElement[][] stackSamples = new StackTraceElement[MAX_STACK_SAMPLES][];
+    private volatile int stackSampleCount = 0;
+    private final Runnable watchdogCheck = this::sampleMainThreadIfStuck;
+
+    private JankMonitor() {
+    }
+
+    public static JankMonitor getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts tracking activity visibility and lifecycle events for the whole process
+     */
+    @MainThread
+    public void install(@NonNull Application application) {
+        application.registerActivityLifecycleCallbacks(lifecycleCallbacks);
+    }
+
+    /**
+     * Enables sampling the main thread's stack while a frame is frozen.
+     * Costs one watchdog message per frame while enabled, so keep it for debug builds or targeted sessions.
+     */
+    @MainThread
+    public void setStackSamplingEnabled(boolean enabled) {
+        if (enabled && watchdogHandler == null) {
+            HandlerThread thread = new HandlerThread("jank-watchdog");
+            thread.start();
+            watchdogHandler = new Handler(thread.getLooper());
+        } else if (!enabled && watchdogHandler != null) {
+            watchdogHandler.removeCallbacks(watchdogCheck);
+            watchdogHandler.getLooper().quitSafely();
+            watchdogHandler = null;
+        }
+    }
+
+    /**
+     * @param position Tab position that is currently visible, used to attribute bad frames
+     */
+    @MainThread
+    public void setActiveTab(int position) {
+        activeTab = position;
+    }
+
+    @Override
+    public void onDraw() {
+        drawnSinceLastFrame = true;
+        if (!chainActive && startedActivities > 0) {
+            chainActive = true;
+            idleFrames = 0;
+            lastFrameTimeNanos = 0;
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameSequence++;
+        if (startedActivities == 0) {
+            stopChain();
+            return;
+        }
+
+        if (lastFrameTimeNanos != 0) {
+            long duration = frameTimeNanos - lastFrameTimeNanos;
+            boolean slow = duration > slowThresholdNanos;
+            boolean frozen = duration > FROZEN_FRAME_NANOS;
+            frames.record(duration, slow, frozen);
+            if (slow) {
+                onBadFrame(duration, frameTimeNanos, frozen);
+            }
+        }
+        lastFrameTimeNanos = frameTimeNanos;
+
+        if (drawnSinceLastFrame) {
+            drawnSinceLastFrame = false;
+            idleFrames = 0;
+        } else if (++idleFrames > IDLE_GRACE_FRAMES) {
+            // Nothing is being drawn; the next draw re-arms the chain
+            stopChain();
+            return;
+        }
+
+        Choreographer.getInstance().postFrameCallback(this);
+        Handler watchdog = watchdogHandler;
+        if (watchdog != null) {
+            armedSequence = frameSequence;
+            watchdog.removeCallbacks(watchdogCheck);
+            watchdog.postDelayed(watchdogCheck, FROZEN_FRAME_NANOS / 1_000_000L);
+        }
+    }
+
+    private void stopChain() {
+        chainActive = false;
+        lastFrameTimeNanos = 0;
+        Choreographer.getInstance().removeFrameCallback(this);
+        if (watchdogHandler != null) {
+            watchdogHandler.removeCallbacks(watchdogCheck);
+        }
+    }
+
+    private void onBadFrame(long duration, long frameTimeNanos, boolean frozen) {
+        StackTraceElement[][] stacks = null;
+        if (frozen && stackSampleCount > 0) {
+            synchronized (stackLock) {
+                stacks = new StackTraceElement[stackSampleCount][];
+                System.arraycopy(stackSamples, 0, stacks, 0, stackSampleCount);
+                stackSampleCount = 0;
+            }
+        }
+
+        int index = badNext;
+        badDurations[index] = duration;
+        badFrameTimes[index] = frameTimeNanos;
+        badTabs[index] = activeTab;
+        badOwners[index] = lastEventOwner;
+        badEvents[index] = lastEvent;
+        badStacks[index] = stacks;
+        badNext = (badNext + 1) % BAD_FRAME_LOG_SIZE;
+        if (badSize < BAD_FRAME_LOG_SIZE) {
+            badSize++;
+        }
+
+        if (frozen) {
+            BadFrame frame = snapshot(index);
+            if (stacks != null && stacks.length > 0 && stacks[0].length > 0) {
+                Log.w(TAG, frame + " at " + stacks[0][0]);
+            } else {
+                Log.w(TAG, frame.toString());
+            }
+        }
+    }
+
+    /**
+     * Runs on the watchdog thread; samples the main thread while the armed frame has not completed
+     */
+    private void sampleMainThreadIfStuck() {
+        if (frameSequence != armedSequence) {
+            return;
+        }
+        StackTraceElement[] stack = Looper.getMainLooper().getThread().getStackTrace();
+        synchronized (stackLock) {
+            if (stackSampleCount < MAX_STACK_SAMPLES) {
+                stackSamples[stackSampleCount] = stack;
+                stackSampleCount++;
+            }
+        }
+        Handler watchdog = watchdogHandler;
+        if (watchdog != null && stackSampleCount < MAX_STACK_SAMPLES) {
+            watchdog.postDelayed(watchdogCheck, STACK_SAMPLE_INTERVAL_MS);
+        }
+    }
+
+    private BadFrame snapshot(int index) {
+        return new BadFrame(badDurations[index], badFrameTimes[index],
+            badDurations[index] > FROZEN_FRAME_NANOS, badTabs[index],
+            badOwners[index].getSimpleName(), badEvents[index], badStacks[index]);
+    }
+
+    /**
+     * @return Logged slow and frozen frames, oldest first
+     */
+    @MainThread
+    @NonNull
+    public List<BadFrame> getBadFrames() {
+        List<BadFrame> list = new ArrayList<>(badSize);
+        int start = (badNext - badSize + BAD_FRAME_LOG_SIZE) % BAD_FRAME_LOG_SIZE;
+        for (int i = 0; i < badSize; i++) {
+            list.add(snapshot((start + i) % BAD_FRAME_LOG_SIZE));
+        }
+        return list;
+    }
+
+    @NonNull
+    public FrameRingBuffer getFrames() {
+        return frames;
+    }
+
+    /**
+     * @return One-line frame statistics summary
+     */
+    @MainThread
+    @NonNull
+    public String report() {
+        return String.format(Locale.US, "frames=%d slow=%d frozen=%d slowThreshold=%.1fms",
+            frames.getTotalFrames(), frames.getSlowFrames(), frames.getFrozenFrames(),
+            slowThresholdNanos / 1_000_000.0);
+    }
+
+    private void onLifecycleEvent(Object owner, LifecycleEvent event) {
+        lastEventOwner = owner.getClass();
+        lastEvent = event;
+    }
+
+    private void updateFrameInterval(Activity activity) {
+        Display display = Build.VERSION.SDK_INT >= Build.VERSION_CODES.R
+            ? activity.getDisplay()
+            : activity.getWindowManager().getDefaultDisplay();
+        float refreshRate = display != null ? display.getRefreshRate() : 60f;
+        long interval = refreshRate > 1f ? (long) (1_000_000_000L / refreshRate) : DEFAULT_FRAME_INTERVAL_NANOS;
+        // A frame is slow once it misses half a vsync beyond its own budget
+        slowThresholdNanos = interval * 3 / 2;
+    }
+
+    private final FragmentManager.FragmentLifecycleCallbacks fragmentCallbacks =
+        new FragmentManager.FragmentLifecycleCallbacks() {
+            @Override
+            public void onFragmentViewCreated(@NonNull FragmentManager fm, @NonNull Fragment f,
+                                              @NonNull View v, @Nullable Bundle savedInstanceState) {
+                onLifecycleEvent(f, LifecycleEvent.VIEW_CREATED);
+            }
+
+            @Override
+            public void onFragmentResumed(@NonNull FragmentManager fm, @NonNull Fragment f) {
+                onLifecycleEvent(f, LifecycleEvent.RESUMED);
+            }
+
+            @Override
+            public void onFragmentPaused(@NonNull FragmentManager fm, @NonNull Fragment f) {
+                onLifecycleEvent(f, LifecycleEvent.PAUSED);
+            }
+
+            @Override
+            public void onFragmentViewDestroyed(@NonNull FragmentManager fm, @NonNull Fragment f) {
+                onLifecycleEvent(f, LifecycleEvent.VIEW_DESTROYED);
+            }
+        };
+
+    private final Application.ActivityLifecycleCallbacks lifecycleCallbacks =
+        new Application.ActivityLifecycleCallbacks() {
+            @Override
+            public void onActivityCreated(@NonNull Activity activity, @Nullable Bundle savedInstanceState) {
+                onLifecycleEvent(activity, LifecycleEvent.CREATED);
+                if (activity instanceof FragmentActivity) {
+                    ((FragmentActivity) activity).getSupportFragmentManager()
+                        .registerFragmentLifecycleCallbacks(fragmentCallbacks, true);
+                }
+            }
+
+            @Override
+            public void onActivityStarted(@NonNull Activity activity) {
+                onLifecycleEvent(activity, LifecycleEvent.STARTED);
+                startedActivities++;
+                updateFrameInterval(activity);
+                activity.getWindow().getDecorView().getViewTreeObserver().addOnDrawListener(JankMonitor.this);
+            }
+
+            @Override
+            public void onActivityResumed(@NonNull Activity activity) {
+                onLifecycleEvent(activity, LifecycleEvent.RESUMED);
+            }
+
+            @Override
+            public void onActivityPaused(@NonNull Activity activity) {
+                onLifecycleEvent(activity, LifecycleEvent.PAUSED);
+            }
+
+            @Override
+            public void onActivityStopped(@NonNull Activity activity) {
+                onLifecycleEvent(activity, LifecycleEvent.STOPPED);
+                activity.getWindow().getDecorView().getViewTreeObserver().removeOnDrawListener(JankMonitor.this);
+                startedActivities = Math.max(0, startedActivities - 1);
+                if (startedActivities == 0) {
+                    stopChain();
+                }
+            }
+
+            @Override
+            public void onActivitySaveInstanceState(@NonNull Activity activity, @NonNull Bundle outState) {
+            }
+
+            @Override
+            public void onActivityDestroyed(@NonNull Activity activity) {
+                onLifecycleEvent(activity, LifecycleEvent.DESTROYED);
+            }
+        };
+}
@@ -0,0 +1,125 @@
+package com.nidoham.streamly.metrics;
+
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free, fixed-size latency histogram with log-linear buckets.
+ * Each power of two is split into 8 sub-buckets, so reported values are within about 6%
+ * over a range of one microsecond to several hours. Recording never allocates.
+ */
+public final class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKET_COUNT = SUB_BUCKETS + (34 - SUB_BUCKET_BITS + 1) * SUB_BUCKETS;
+
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sumMicros = new AtomicLong();
+    private final AtomicLong maxMicros = new AtomicLong();
+
+    /**
+     * Records one sample, safe to call concurrently from any thread
+     * @param nanos Latency in nanoseconds, negative values are clamped to zero
+     */
+    public void recordNanos(long nanos) {
+        long micros = Math.max(0, nanos / 1000);
+        buckets.incrementAndGet(bucketFor(micros));
+        count.incrementAndGet();
+        sumMicros.addAndGet(micros);
+
+        long currentMax = maxMicros.get();
+        while (micros > currentMax && !maxMicros.compareAndSet(currentMax, micros)) {
+            currentMax = maxMicros.get();
+        }
+    }
+
+    static int bucketFor(long micros) {
+        if (micros < SUB_BUCKETS) {
+            return (int) micros;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(micros);
+        int shift = exponent - SUB_BUCKET_BITS;
+        int subBucket = (int) ((micros >>> shift) & (SUB_BUCKETS - 1));
+        return Math.min(BUCKET_COUNT - 1, SUB_BUCKETS + shift * SUB_BUCKETS + subBucket);
+    }
+
+    /**
+     * @return Midpoint of the bucket's value range in microseconds
+     */
+    static long bucketMidpoint(int index) {
+        if (index < SUB_BUCKETS) {
+            return index;
+        }
+        int shift = (index - SUB_BUCKETS) / SUB_BUCKETS;
+        int subBucket = (index - SUB_BUCKETS) % SUB_BUCKETS;
+        long lower = (long) (SUB_BUCKETS + subBucket) << shift;
+        long width = 1L << shift;
+        return lower + width / 2;
+    }
+
+    /**
+     * @param percentile Value between 0 and 100
+     * @return Approximate latency at the percentile in microseconds, 0 if empty
+     */
+    public long getPercentileMicros(double percentile) {
+        long[] snapshot = new long[BUCKET_COUNT];
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            snapshot[i] = buckets.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long rank = Math.max(1, (long) Math.ceil(total * percentile / 100.0));
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += snapshot[i];
+            if (seen >= rank) {
+                return Math.min(bucketMidpoint(i), maxMicros.get());
+            }
+        }
+        return maxMicros.get();
+    }
+
+    public long getCount() {
+        return count.get();
+    }
+
+    public long getMaxMicros() {
+        return maxMicros.get();
+    }
+
+    public long getMeanMicros() {
+        long samples = count.get();
+        return samples > 0 ? sumMicros.get() / samples : 0;
+    }
+
+    /**
+     * Clears all samples. Not atomic with respect to concurrent recording.
+     */
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            buckets.set(i, 0);
+        }
+        count.set(0);
+        sumMicros.set(0);
+        maxMicros.set(0);
+    }
+
+    /**
+     * @return One-line summary with millisecond values
+     */
+    public String summary() {
+        return String.format(Locale.US, "count=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+            getCount(),
+            getPercentileMicros(50) / 1000.0,
+            getPercentileMicros(95) / 1000.0,
+            getPercentileMicros(99) / 1000.0,
+            getMaxMicros() / 1000.0);
+    }
+}
@@ -0,0 +1,184 @@
+package com.nidoham.streamly.metrics;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import android.view.Choreographer;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.Locale;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Measures tab switches from the bottom-navigation tap to the first frame drawn with the new content.
+ * Milestones are reported on the main thread; each completed switch is recorded into per-tab,
+ * per-phase {@link LatencyHistogram}s, which can be read from any thread and dumped to a file.
+ */
+public final class TabSwitchTracer {
+
+    private static final String TAG = "TabSwitchTracer";
+    // A switch whose content is not bound within this window is abandoned
+    private static final long ABANDON_AFTER_NANOS = 5_000_000_000L;
+
+    /**
+     * Consecutive segments of a tab switch, TOTAL spans all of them
+     */
+    public enum Phase {
+        TAP_TO_SELECT,
+        SELECT_TO_RESUME,
+        RESUME_TO_BIND,
+        BIND_TO_FRAME,
+        TOTAL
+    }
+
+    private static final String[] TAB_NAMES = { "home", "community", "subscription", "library" };
+    private static final TabSwitchTracer INSTANCE = new TabSwitchTracer(TAB_NAMES);
+
+    private final String[] tabNames;
+    private final LatencyHistogram[][] histograms;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService writer = Executors.newSingleThreadExecutor(
+        runnable -> new Thread(runnable, "metrics-writer"));
+
+    // Main-thread state of the switch in flight, -1 means no switch pending
+    private int pendingPosition = -1;
+    private long tapNanos;
+    private long selectNanos;
+    private long resumeNanos;
+    private long bindNanos;
+    private boolean awaitingFrame = false;
+
+    private final Choreographer.FrameCallback frameCallback = frameTimeNanos ->
+        // Frame callbacks run before traversal; the posted message runs once the frame is drawn
+        mainHandler.post(this::onFrameDrawn);
+
+    private TabSwitchTracer(String[] tabNames) {
+        this.tabNames = tabNames;
+        this.histograms = new LatencyHistogram[tabNames.length][Phase.values().length];
+        for (int tab = 0; tab < tabNames.length; tab++) {
+            for (int phase = 0; phase < Phase.values().length; phase++) {
+                histograms[tab][phase] = new LatencyHistogram();
+            }
+        }
+    }
+
+    public static TabSwitchTracer getInstance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts measuring a switch
+     * @param position Target tab position
+     * @param tapTimeNanos Time of the input event on the System.nanoTime() clock
+     */
+    @MainThread
+    public void onTabTapped(int position, long tapTimeNanos) {
+        if (position < 0 || position >= tabNames.length) {
+            return;
+        }
+        pendingPosition = position;
+        tapNanos = tapTimeNanos;
+        selectNanos = 0;
+        resumeNanos = 0;
+        bindNanos = 0;
+        if (awaitingFrame) {
+            Choreographer.getInstance().removeFrameCallback(frameCallback);
+            awaitingFrame = false;
+        }
+    }
+
+    @MainThread
+    public void onPageSelected(int position) {
+        if (position == pendingPosition && selectNanos == 0) {
+            selectNanos = System.nanoTime();
+        }
+    }
+
+    @MainThread
+    public void onFragmentResumed() {
+        if (pendingPosition >= 0 && selectNanos != 0 && resumeNanos == 0) {
+            resumeNanos = System.nanoTime();
+        }
+    }
+
+    @MainThread
+    public void onContentBound() {
+        if (pendingPosition < 0 || resumeNanos == 0 || bindNanos != 0) {
+            return;
+        }
+        bindNanos = System.nanoTime();
+        if (bindNanos - tapNanos > ABANDON_AFTER_NANOS) {
+            pendingPosition = -1;
+            return;
+        }
+        awaitingFrame = true;
+        Choreographer.getInstance().postFrameCallback(frameCallback);
+    }
+
+    private void onFrameDrawn() {
+        if (!awaitingFrame || pendingPosition < 0) {
+            return;
+        }
+        long frameNanos = System.nanoTime();
+        LatencyHistogram[] tab = histograms[pendingPosition];
+        tab[Phase.TAP_TO_SELECT.ordinal()].recordNanos(selectNanos - tapNanos);
+        tab[Phase.SELECT_TO_RESUME.ordinal()].recordNanos(resumeNanos - selectNanos);
+        tab[Phase.RESUME_TO_BIND.ordinal()].recordNanos(bindNanos - resumeNanos);
+        tab[Phase.BIND_TO_FRAME.ordinal()].recordNanos(frameNanos - bindNanos);
+        tab[Phase.TOTAL.ordinal()].recordNanos(frameNanos - tapNanos);
+        awaitingFrame = false;
+        pendingPosition = -1;
+    }
+
+    @NonNull
+    public LatencyHistogram getHistogram(int position, @NonNull Phase phase) {
+        return histograms[position][phase.ordinal()];
+    }
+
+    /**
+     * @return Multi-line report of every tab and phase that has samples
+     */
+    @NonNull
+    public String report() {
+        StringBuilder builder = new StringBuilder();
+        for (int tab = 0; tab < tabNames.length; tab++) {
+            for (Phase phase : Phase.values()) {
+                LatencyHistogram histogram = histograms[tab][phase.ordinal()];
+                if (histogram.getCount() > 0) {
+                    builder.append(tabNames[tab]).append(' ')
+                        .append(phase.name().toLowerCase(Locale.US)).append(' ')
+                        .append(histogram.summary()).append('\n');
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Writes the current report to a local file on a background thread
+     * @param file Destination, parent directories are created as needed
+     */
+    public void dumpAsync(@NonNull File file) {
+        writer.execute(() -> {
+            String report = report();
+            if (report.isEmpty()) {
+                return;
+            }
+            File parent = file.getParentFile();
+            if (parent != null && !parent.exists() && !parent.mkdirs()) {
+                Log.w(TAG, "Cannot create " + parent);
+                return;
+            }
+            try (Writer out = new FileWriter(file, false)) {
+                out.write(report);
+            } catch (IOException e) {
+                Log.w(TAG, "Failed to write tab switch report", e);
+            }
+        });
+    }
+}
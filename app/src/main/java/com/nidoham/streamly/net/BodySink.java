@@ -0,0 +1,27 @@
+package com.nidoham.streamly.net;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Map;
+
+/**
+ * Receives a successful response body as it comes off the socket, instead of the transport
+ * collecting it in memory. Used for downloads that go straight to a file.
+ * Only 200 and 206 responses are streamed; anything else is read as usual and returned with its body.
+ * The request is sent with Accept-Encoding: identity, so the bytes are the resource's own.
+ */
+public interface BodySink {
+
+    /**
+     * Called before the first body byte. Called again from the start if the request is retried on
+     * a fresh connection, so anything written so far must be considered overwritten.
+     * @param headers Response headers with lowercase names
+     * @throws IOException To refuse the body, e.g. on an unexpected Content-Range; fails the request
+     */
+    void onHeaders(int code, Map<String, String> headers) throws IOException;
+
+    /**
+     * @param data Next body bytes, only valid during the call
+     */
+    void write(ByteBuffer data) throws IOException;
+}
@@ -0,0 +1,144 @@
+package com.nidoham.streamly.net;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Keep-alive connections waiting for their next request, grouped by scheme, host and port.
+ * The most recently used connection is handed out first so rarely needed extras age out,
+ * and connections idle longer than the keep-alive window are closed on the next access.
+ */
+public final class ConnectionPool {
+
+    private final int maxIdlePerAddress;
+    private final long keepAliveNanos;
+    private final Map<String, ArrayDeque<HttpConnection>> idle = new HashMap<>();
+    private long reused = 0;
+    private long pooled = 0;
+    private long expired = 0;
+
+    /**
+     * @param maxIdlePerAddress Idle connections kept per address, 0 disables keep-alive
+     * @param keepAliveMillis How long an idle connection is kept, servers commonly close after 5 to 60 s
+     */
+    public ConnectionPool(int maxIdlePerAddress, long keepAliveMillis) {
+        this.maxIdlePerAddress = maxIdlePerAddress;
+        this.keepAliveNanos = TimeUnit.MILLISECONDS.toNanos(keepAliveMillis);
+    }
+
+    /**
+     * @return A healthy idle connection to the address, or null if a new one must be opened
+     */
+    HttpConnection acquire(String address) {
+        List<HttpConnection> closing = new ArrayList<>();
+        HttpConnection found = null;
+        synchronized (this) {
+            evictExpired(System.nanoTime(), closing);
+            ArrayDeque<HttpConnection> connections = idle.get(address);
+            if (connections != null) {
+                found = connections.pollFirst();
+                if (connections.isEmpty()) {
+                    idle.remove(address);
+                }
+            }
+        }
+        closeAll(closing);
+        // Checked outside the lock, the probe waits up to a millisecond
+        while (found != null && !found.isHealthy()) {
+            found.close();
+            synchronized (this) {
+                expired++;
+                ArrayDeque<HttpConnection> connections = idle.get(address);
+                found = connections != null ? connections.pollFirst() : null;
+            }
+        }
+        if (found != null) {
+            synchronized (this) {
+                reused++;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Returns a connection after a complete exchange, closing it if the pool for its address is full
+     */
+    void release(HttpConnection connection) {
+        List<HttpConnection> closing = new ArrayList<>();
+        synchronized (this) {
+            long now = System.nanoTime();
+            evictExpired(now, closing);
+            ArrayDeque<HttpConnection> connections = idle.computeIfAbsent(connection.getAddress(), key -> new ArrayDeque<>());
+            if (connections.size() < maxIdlePerAddress) {
+                connection.markIdle(now);
+                connections.addFirst(connection);
+                pooled++;
+                connection = null;
+            } else if (connections.isEmpty()) {
+                idle.remove(connection.getAddress());
+            }
+        }
+        if (connection != null) {
+            connection.close();
+        }
+        closeAll(closing);
+    }
+
+    private void evictExpired(long nowNanos, List<HttpConnection> closing) {
+        Iterator<ArrayDeque<HttpConnection>> addresses = idle.values().iterator();
+        while (addresses.hasNext()) {
+            ArrayDeque<HttpConnection> connections = addresses.next();
+            // Oldest at the tail
+            while (!connections.isEmpty() && nowNanos - connections.peekLast().getIdleSinceNanos() > keepAliveNanos) {
+                closing.add(connections.pollLast());
+                expired++;
+            }
+            if (connections.isEmpty()) {
+                addresses.remove();
+            }
+        }
+    }
+
+    private static void closeAll(List<HttpConnection> connections) {
+        for (HttpConnection connection : connections) {
+            connection.close();
+        }
+    }
+
+    /**
+     * Closes every idle connection, e.g. when the network changed and they point at a dead route
+     */
+    public void evictAll() {
+        List<HttpConnection> closing = new ArrayList<>();
+        synchronized (this) {
+            for (ArrayDeque<HttpConnection> connections : idle.values()) {
+                closing.addAll(connections);
+            }
+            idle.clear();
+        }
+        closeAll(closing);
+    }
+
+    public synchronized int getIdleCount() {
+        int count = 0;
+        for (ArrayDeque<HttpConnection> connections : idle.values()) {
+            count += connections.size();
+        }
+        return count;
+    }
+
+    public synchronized long getReuseCount() {
+        return reused;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ConnectionPool[idle=" + getIdleCount() + ", reused=" + reused + ", pooled=" + pooled
+            + ", expired=" + expired + "]";
+    }
+}
@@ -0,0 +1,482 @@
+package com.nidoham.streamly.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+import javax.net.ssl.HttpsURLConnection;
+import javax.net.ssl.SSLPeerUnverifiedException;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * One HTTP/1.1 connection. Not thread safe, a connection serves one exchange at a time
+ * and is handed back to the {@link ConnectionPool} between exchanges.
+ */
+final class HttpConnection implements Closeable {
+
+    /**
+     * Response as read off the wire, body already de-chunked and decompressed
+     */
+    static final class Exchange {
+        final int code;
+        final Map<String, String> headers;
+        final byte[] body;
+        final long wireBytes;
+        final boolean keepAlive;
+
+        Exchange(int code, Map<String, String> headers, byte[] body, long wireBytes, boolean keepAlive) {
+            this.code = code;
+            this.headers = headers;
+            this.body = body;
+            this.wireBytes = wireBytes;
+            this.keepAlive = keepAlive;
+        }
+    }
+
+    private static final int MAX_LINE_BYTES = 16 * 1024;
+    private static final int MAX_HEADERS = 256;
+    private static final int STREAM_BUFFER_BYTES = 32 * 1024;
+
+    private final String address;
+    private final Socket socket;
+    private final InputStream in;
+    private final OutputStream out;
+    private long idleSinceNanos;
+    private int exchanges = 0;
+    // Allocated on the first streamed response, reused for the connection's lifetime
+    private byte[] streamBuffer;
+
+    private HttpConnection(String address, Socket socket) throws IOException {
+        this.address = address;
+        this.socket = socket;
+        this.in = new BufferedInputStream(socket.getInputStream(), 16 * 1024);
+        this.out = new BufferedOutputStream(socket.getOutputStream(), 8 * 1024);
+    }
+
+    /**
+     * Opens a connection, doing the TLS handshake and host name check for https
+     */
+    static HttpConnection open(URL url, int connectTimeoutMs, int readTimeoutMs) throws IOException {
+        String host = url.getHost();
+        int port = portOf(url);
+        Socket socket = new Socket();
+        try {
+            socket.setTcpNoDelay(true);
+            socket.setSoTimeout(readTimeoutMs);
+            socket.connect(new InetSocketAddress(host, port), connectTimeoutMs);
+            if ("https".equals(url.getProtocol())) {
+                SSLSocket ssl = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault())
+                    .createSocket(socket, host, port, true);
+                ssl.startHandshake();
+                if (!HttpsURLConnection.getDefaultHostnameVerifier().verify(host, ssl.getSession())) {
+                    throw new SSLPeerUnverifiedException("Certificate does not match " + host);
+                }
+                socket = ssl;
+            }
+            return new HttpConnection(addressOf(url), socket);
+        } catch (IOException | RuntimeException e) {
+            socket.close();
+            throw e;
+        }
+    }
+
+    static int portOf(URL url) {
+        return url.getPort() != -1 ? url.getPort() : url.getDefaultPort();
+    }
+
+    /**
+     * @return Pooling key, connections are only shared between requests with equal addresses
+     */
+    static String addressOf(URL url) {
+        return url.getProtocol() + "://" + url.getHost().toLowerCase(Locale.US) + ":" + portOf(url);
+    }
+
+    String getAddress() {
+        return address;
+    }
+
+    int getExchangeCount() {
+        return exchanges;
+    }
+
+    void markIdle(long nowNanos) {
+        idleSinceNanos = nowNanos;
+    }
+
+    long getIdleSinceNanos() {
+        return idleSinceNanos;
+    }
+
+    /**
+     * Detects a connection the server closed while it sat in the pool,
+     * which otherwise only shows up as a failed write or an empty response
+     */
+    boolean isHealthy() {
+        if (socket.isClosed() || socket.isInputShutdown() || socket.isOutputShutdown()) {
+            return false;
+        }
+        int readTimeout = 0;
+        try {
+            readTimeout = socket.getSoTimeout();
+            socket.setSoTimeout(1);
+            // End of stream means the server closed it, unsolicited bytes mean the stream is out of sync;
+            // only a timeout shows an idle open connection
+            in.read();
+            return false;
+        } catch (SocketTimeoutException e) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        } finally {
+            try {
+                socket.setSoTimeout(readTimeout);
+            } catch (IOException ignored) {
+                // The next read fails on its own
+            }
+        }
+    }
+
+    /**
+     * Sends the request and reads the complete response
+     * @param extraHeaders Headers added by the transport, e.g. conditional ones
+     * @param maxBodyBytes Limit on the decoded body
+     */
+    Exchange execute(HttpRequest request, Map<String, String> extraHeaders, int maxBodyBytes) throws IOException {
+        return execute(request, extraHeaders, maxBodyBytes, null);
+    }
+
+    /**
+     * @param sink Receives a 200 or 206 body instead of the exchange, null to read it into memory
+     */
+    Exchange execute(HttpRequest request, Map<String, String> extraHeaders, int maxBodyBytes, BodySink sink)
+            throws IOException {
+        exchanges++;
+        writeRequest(request, extraHeaders, sink == null);
+        while (true) {
+            int code = readStatus();
+            Map<String, String> headers = readHeaders();
+            if (code >= 100 && code < 200 && code != 101) {
+                // Informational responses precede the real one
+                continue;
+            }
+            if (sink != null && (code == 200 || code == 206) && !"HEAD".equals(request.getMethod())) {
+                return streamBody(code, headers, sink);
+            }
+            return readBody(request, code, headers, maxBodyBytes);
+        }
+    }
+
+    private void writeRequest(HttpRequest request, Map<String, String> extraHeaders, boolean acceptGzip)
+            throws IOException {
+        URL url = request.getUrl();
+        String path = url.getFile().isEmpty() ? "/" : url.getFile();
+        StringBuilder head = new StringBuilder(256)
+            .append(request.getMethod()).append(' ').append(path).append(" HTTP/1.1\r\n")
+            .append("Host: ").append(url.getHost());
+        if (url.getPort() != -1 && url.getPort() != url.getDefaultPort()) {
+            head.append(':').append(url.getPort());
+        }
+        // Streamed bodies are written where they land, which only works for the unencoded bytes
+        head.append("\r\nConnection: keep-alive\r\nAccept-Encoding: ").append(acceptGzip ? "gzip" : "identity")
+            .append("\r\n");
+        for (Map.Entry<String, String> header : request.getHeaders().entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        for (Map.Entry<String, String> header : extraHeaders.entrySet()) {
+            head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+        }
+        byte[] body = request.getBody();
+        if (body != null) {
+            head.append("Content-Length: ").append(body.length).append("\r\n");
+        }
+        head.append("\r\n");
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if (body != null) {
+            out.write(body);
+        }
+        out.flush();
+    }
+
+    private int readStatus() throws IOException {
+        String line = readLine();
+        if (line == null) {
+            throw new EOFException("Connection closed before response");
+        }
+        // HTTP/1.1 200 OK
+        if (!line.startsWith("HTTP/1.") || line.length() < 12) {
+            throw new ProtocolException("Bad status line: " + line);
+        }
+        try {
+            return Integer.parseInt(line.substring(9, 12));
+        } catch (NumberFormatException e) {
+            throw new ProtocolException("Bad status line: " + line);
+        }
+    }
+
+    private Map<String, String> readHeaders() throws IOException {
+        Map<String, String> headers = new LinkedHashMap<>();
+        String line;
+        while ((line = readLine()) != null && !line.isEmpty()) {
+            int colon = line.indexOf(':');
+            if (colon <= 0) {
+                throw new ProtocolException("Bad header: " + line);
+            }
+            if (headers.size() >= MAX_HEADERS) {
+                throw new ProtocolException("Too many headers");
+            }
+            String name = line.substring(0, colon).trim().toLowerCase(Locale.US);
+            String value = line.substring(colon + 1).trim();
+            headers.merge(name, value, (first, second) -> first + ", " + second);
+        }
+        if (line == null) {
+            throw new EOFException("Connection closed in headers");
+        }
+        return headers;
+    }
+
+    private Exchange readBody(HttpRequest request, int code, Map<String, String> headers, int maxBodyBytes)
+            throws IOException {
+        boolean keepAlive = !containsToken(headers.get("connection"), "close");
+        byte[] wire;
+        if ("HEAD".equals(request.getMethod()) || code == 204 || code == 304) {
+            wire = new byte[0];
+        } else if (containsToken(headers.get("transfer-encoding"), "chunked")) {
+            wire = readChunked(maxBodyBytes);
+        } else if (headers.containsKey("content-length")) {
+            long length;
+            try {
+                length = Long.parseLong(headers.get("content-length"));
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Bad Content-Length: " + headers.get("content-length"));
+            }
+            if (length < 0 || length > maxBodyBytes) {
+                throw new ProtocolException("Body too large: " + length);
+            }
+            wire = readExactly((int) length);
+        } else {
+            // Delimited by the end of the connection, which then cannot be reused
+            wire = readToEnd(maxBodyBytes);
+            keepAlive = false;
+        }
+
+        byte[] body = wire;
+        if (wire.length > 0 && containsToken(headers.get("content-encoding"), "gzip")) {
+            body = gunzip(wire, maxBodyBytes);
+            headers.remove("content-encoding");
+            headers.put("content-length", Integer.toString(body.length));
+        }
+        return new Exchange(code, headers, body, wire.length, keepAlive);
+    }
+
+    /**
+     * Passes the body to the sink through one reused buffer, never holding more than a buffer's worth
+     */
+    private Exchange streamBody(int code, Map<String, String> headers, BodySink sink) throws IOException {
+        if (containsToken(headers.get("content-encoding"), "gzip")) {
+            throw new ProtocolException("Encoded body refused for a streamed request");
+        }
+        sink.onHeaders(code, headers);
+        if (streamBuffer == null) {
+            streamBuffer = new byte[STREAM_BUFFER_BYTES];
+        }
+        boolean keepAlive = !containsToken(headers.get("connection"), "close");
+        long wireBytes = 0;
+        if (containsToken(headers.get("transfer-encoding"), "chunked")) {
+            while (true) {
+                String sizeLine = readLine();
+                if (sizeLine == null) {
+                    throw new EOFException("Connection closed in chunked body");
+                }
+                int extension = sizeLine.indexOf(';');
+                long size;
+                try {
+                    size = Long.parseLong((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+                } catch (NumberFormatException e) {
+                    throw new ProtocolException("Bad chunk size: " + sizeLine);
+                }
+                if (size == 0) {
+                    String trailer;
+                    while ((trailer = readLine()) != null && !trailer.isEmpty()) {
+                        continue;
+                    }
+                    break;
+                }
+                wireBytes += streamExactly(size, sink);
+                String end = readLine();
+                if (end == null || !end.isEmpty()) {
+                    throw new ProtocolException("Missing chunk terminator");
+                }
+            }
+        } else if (headers.containsKey("content-length")) {
+            long length;
+            try {
+                length = Long.parseLong(headers.get("content-length"));
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Bad Content-Length: " + headers.get("content-length"));
+            }
+            wireBytes = streamExactly(length, sink);
+        } else {
+            int read;
+            while ((read = in.read(streamBuffer)) != -1) {
+                sink.write(ByteBuffer.wrap(streamBuffer, 0, read));
+                wireBytes += read;
+            }
+            keepAlive = false;
+        }
+        return new Exchange(code, headers, new byte[0], wireBytes, keepAlive);
+    }
+
+    private long streamExactly(long length, BodySink sink) throws IOException {
+        long remaining = length;
+        while (remaining > 0) {
+            int read = in.read(streamBuffer, 0, (int) Math.min(streamBuffer.length, remaining));
+            if (read == -1) {
+                throw new EOFException("Body truncated at " + (length - remaining) + " of " + length + " bytes");
+            }
+            sink.write(ByteBuffer.wrap(streamBuffer, 0, read));
+            remaining -= read;
+        }
+        return length;
+    }
+
+    private byte[] readChunked(int maxBodyBytes) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        while (true) {
+            String sizeLine = readLine();
+            if (sizeLine == null) {
+                throw new EOFException("Connection closed in chunked body");
+            }
+            int extension = sizeLine.indexOf(';');
+            int size;
+            try {
+                size = Integer.parseInt((extension >= 0 ? sizeLine.substring(0, extension) : sizeLine).trim(), 16);
+            } catch (NumberFormatException e) {
+                throw new ProtocolException("Bad chunk size: " + sizeLine);
+            }
+            if (size < 0 || body.size() + (long) size > maxBodyBytes) {
+                throw new ProtocolException("Body too large");
+            }
+            if (size == 0) {
+                // Trailers are read and dropped
+                String trailer;
+                while ((trailer = readLine()) != null && !trailer.isEmpty()) {
+                    continue;
+                }
+                return body.toByteArray();
+            }
+            body.write(readExactly(size));
+            String end = readLine();
+            if (end == null || !end.isEmpty()) {
+                throw new ProtocolException("Missing chunk terminator");
+            }
+        }
+    }
+
+    private byte[] readExactly(int length) throws IOException {
+        byte[] data = new byte[length];
+        int offset = 0;
+        while (offset < length) {
+            int read = in.read(data, offset, length - offset);
+            if (read == -1) {
+                throw new EOFException("Body truncated at " + offset + " of " + length + " bytes");
+            }
+            offset += read;
+        }
+        return data;
+    }
+
+    private byte[] readToEnd(int maxBodyBytes) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buffer = new byte[8 * 1024];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            body.write(buffer, 0, read);
+            if (body.size() > maxBodyBytes) {
+                throw new ProtocolException("Body too large");
+            }
+        }
+        return body.toByteArray();
+    }
+
+    private static byte[] gunzip(byte[] compressed, int maxBodyBytes) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream(compressed.length * 4);
+        byte[] buffer = new byte[8 * 1024];
+        try (GZIPInputStream gzip = new GZIPInputStream(new ByteArrayInputStream(compressed))) {
+            int read;
+            while ((read = gzip.read(buffer)) != -1) {
+                body.write(buffer, 0, read);
+                if (body.size() > maxBodyBytes) {
+                    throw new ProtocolException("Decompressed body too large");
+                }
+            }
+        }
+        return body.toByteArray();
+    }
+
+    /**
+     * Reads a CRLF (or bare LF) terminated line as ISO-8859-1
+     * @return The line without terminator, or null at end of stream before any byte
+     */
+    private String readLine() throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            line.write(b);
+            if (line.size() > MAX_LINE_BYTES) {
+                throw new ProtocolException("Line too long");
+            }
+        }
+        if (line.size() == 0) {
+            return null;
+        }
+        throw new EOFException("Connection closed mid-line");
+    }
+
+    static boolean containsToken(String header, String token) {
+        if (header == null) {
+            return false;
+        }
+        for (String part : header.split(",")) {
+            if (part.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public void close() {
+        try {
+            socket.close();
+        } catch (IOException ignored) {
+            // Nothing left to release
+        }
+    }
+
+    @Override
+    public String toString() {
+        return address + " exchanges=" + exchanges;
+    }
+}
@@ -0,0 +1,139 @@
+package com.nidoham.streamly.net;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Immutable HTTP request. Variants are derived with the {@code with*} methods.
+ */
+public final class HttpRequest {
+
+    private final URL url;
+    private final String method;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final RequestPriority priority;
+    private final boolean revalidate;
+
+    private HttpRequest(URL url, String method, Map<String, String> headers, byte[] body,
+                        RequestPriority priority, boolean revalidate) {
+        this.url = url;
+        this.method = method;
+        this.headers = headers;
+        this.body = body;
+        this.priority = priority;
+        this.revalidate = revalidate;
+    }
+
+    /**
+     * @param url Absolute http or https URL
+     * @return A GET at normal priority that revalidates stored copies with ETag / Last-Modified
+     * @throws IllegalArgumentException If the URL is malformed or not http(s)
+     */
+    public static HttpRequest get(String url) {
+        return new HttpRequest(parse(url), "GET", Collections.emptyMap(), null, RequestPriority.NORMAL, true);
+    }
+
+    public static HttpRequest head(String url) {
+        return new HttpRequest(parse(url), "HEAD", Collections.emptyMap(), null, RequestPriority.NORMAL, false);
+    }
+
+    /**
+     * @param contentType Value of the Content-Type header
+     */
+    public static HttpRequest post(String url, byte[] body, String contentType) {
+        Map<String, String> headers = new LinkedHashMap<>();
+        headers.put("Content-Type", contentType);
+        return new HttpRequest(parse(url), "POST", Collections.unmodifiableMap(headers), body.clone(),
+            RequestPriority.NORMAL, false);
+    }
+
+    private static URL parse(String url) {
+        try {
+            URL parsed = new URL(url);
+            String protocol = parsed.getProtocol();
+            if (!"http".equals(protocol) && !"https".equals(protocol)) {
+                throw new IllegalArgumentException("Unsupported scheme: " + url);
+            }
+            return parsed;
+        } catch (MalformedURLException e) {
+            throw new IllegalArgumentException("Malformed URL: " + url, e);
+        }
+    }
+
+    /**
+     * @return A copy with the header set, replacing any value for the same name
+     */
+    public HttpRequest withHeader(String name, String value) {
+        Map<String, String> copy = new LinkedHashMap<>();
+        for (Map.Entry<String, String> entry : headers.entrySet()) {
+            if (!entry.getKey().equalsIgnoreCase(name)) {
+                copy.put(entry.getKey(), entry.getValue());
+            }
+        }
+        copy.put(name, value);
+        return new HttpRequest(url, method, Collections.unmodifiableMap(copy), body, priority, revalidate);
+    }
+
+    public HttpRequest withPriority(RequestPriority priority) {
+        return new HttpRequest(url, method, headers, body, priority, revalidate);
+    }
+
+    /**
+     * @param revalidate False for content that is cached elsewhere, e.g. images in their own disk cache
+     */
+    public HttpRequest withRevalidation(boolean revalidate) {
+        return new HttpRequest(url, method, headers, body, priority, revalidate && "GET".equals(method));
+    }
+
+    /**
+     * @return The request as sent to a redirect target; headers, which may carry credentials,
+     * only follow redirects within the same host
+     */
+    HttpRequest redirectTo(URL target, String method) {
+        boolean sameHost = target.getHost().equalsIgnoreCase(url.getHost());
+        boolean keepBody = method.equals(this.method);
+        return new HttpRequest(target, method, sameHost ? headers : Collections.emptyMap(),
+            keepBody ? body : null, priority, revalidate && "GET".equals(method));
+    }
+
+    public URL getUrl() {
+        return url;
+    }
+
+    public String getMethod() {
+        return method;
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    public byte[] getBody() {
+        return body;
+    }
+
+    public RequestPriority getPriority() {
+        return priority;
+    }
+
+    public boolean isRevalidated() {
+        return revalidate;
+    }
+
+    /**
+     * @return Key for per-host limits; hosts are compared case-insensitively, ports are not distinguished
+     */
+    String getHostKey() {
+        return url.getHost().toLowerCase(Locale.US);
+    }
+
+    @Override
+    public String toString() {
+        return method + " " + url + " (" + priority + ")";
+    }
+}
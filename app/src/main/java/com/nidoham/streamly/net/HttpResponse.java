@@ -0,0 +1,104 @@
+package com.nidoham.streamly.net;
+
+import java.nio.charset.Charset;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Fully read HTTP response. Header names are lower case, repeated headers are joined with ", ".
+ * A 304 to a conditional request is surfaced as the stored 200 with {@link #isNotModified()} set.
+ */
+public final class HttpResponse {
+
+    private final int code;
+    private final Map<String, String> headers;
+    private final byte[] body;
+    private final boolean notModified;
+    private final long wireBytes;
+    private final boolean connectionReused;
+
+    HttpResponse(int code, Map<String, String> headers, byte[] body, boolean notModified,
+                 long wireBytes, boolean connectionReused) {
+        this.code = code;
+        this.headers = Collections.unmodifiableMap(headers);
+        this.body = body;
+        this.notModified = notModified;
+        this.wireBytes = wireBytes;
+        this.connectionReused = connectionReused;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    public boolean isSuccessful() {
+        return code >= 200 && code < 300;
+    }
+
+    /**
+     * @param name Header name, any case
+     * @return The header value or null
+     */
+    public String getHeader(String name) {
+        return headers.get(name.toLowerCase(Locale.US));
+    }
+
+    public Map<String, String> getHeaders() {
+        return headers;
+    }
+
+    /**
+     * @return The decoded body, empty for responses without one
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    /**
+     * @return The body decoded with the charset from Content-Type, UTF-8 if absent or unknown
+     */
+    public String getBodyString() {
+        return new String(body, charsetOf(getHeader("content-type")));
+    }
+
+    private static Charset charsetOf(String contentType) {
+        if (contentType != null) {
+            for (String parameter : contentType.split(";")) {
+                String trimmed = parameter.trim();
+                if (trimmed.regionMatches(true, 0, "charset=", 0, 8)) {
+                    try {
+                        return Charset.forName(trimmed.substring(8).replace("\"", ""));
+                    } catch (IllegalArgumentException ignored) {
+                        break;
+                    }
+                }
+            }
+        }
+        return StandardCharsets.UTF_8;
+    }
+
+    /**
+     * @return True if the server answered 304 and the body came from the validator cache
+     */
+    public boolean isNotModified() {
+        return notModified;
+    }
+
+    /**
+     * @return Body bytes as received, before gzip decoding
+     */
+    public long getWireBytes() {
+        return wireBytes;
+    }
+
+    public boolean isConnectionReused() {
+        return connectionReused;
+    }
+
+    @Override
+    public String toString() {
+        return "HTTP " + code + (notModified ? " (not modified)" : "") + ", " + body.length + " bytes";
+    }
+}
@@ -0,0 +1,464 @@
+package com.nidoham.streamly.net;
+
+import com.nidoham.streamly.metrics.LatencyHistogram;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.net.ProtocolException;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeSet;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * HTTP/1.1 client over pooled keep-alive connections.
+ * Requests wait in a priority queue and are dispatched while both the global and the per-host limits
+ * have room, so a burst of prefetches never holds back a visible request for longer than one exchange.
+ * Responses are read completely; gzip bodies are decoded; GETs are revalidated against the
+ * {@link ValidatorCache} with If-None-Match / If-Modified-Since so unchanged content costs a 304.
+ */
+public final class HttpTransport {
+
+    public interface Callback {
+        /**
+         * Called on a transport thread for any status code, check {@link HttpResponse#isSuccessful()}
+         */
+        void onResponse(Call call, HttpResponse response);
+
+        /**
+         * Called on a transport thread, or the canceling thread for calls canceled while queued
+         */
+        void onFailure(Call call, IOException error);
+    }
+
+    /**
+     * A queued or running request
+     */
+    public final class Call implements Runnable {
+        private final HttpRequest request;
+        private final Callback callback;
+        private final BodySink sink;
+        private final long sequence;
+        private final long enqueuedNanos;
+        private final CompletableFuture<HttpResponse> result = new CompletableFuture<>();
+        private volatile boolean canceled = false;
+        private volatile HttpConnection connection;
+
+        Call(HttpRequest request, Callback callback, BodySink sink, long sequence) {
+            this.request = request;
+            this.callback = callback;
+            this.sink = sink;
+            this.sequence = sequence;
+            this.enqueuedNanos = System.nanoTime();
+        }
+
+        public HttpRequest getRequest() {
+            return request;
+        }
+
+        public boolean isCanceled() {
+            return canceled;
+        }
+
+        /**
+         * Drops a queued call, or aborts a running one by closing its connection
+         */
+        public void cancel() {
+            canceled = true;
+            boolean dequeued;
+            synchronized (HttpTransport.this) {
+                dequeued = ready.remove(this);
+            }
+            if (dequeued) {
+                canceledCalls.incrementAndGet();
+                fail(new IOException("Canceled"));
+                return;
+            }
+            HttpConnection active = connection;
+            if (active != null) {
+                active.close();
+            }
+        }
+
+        @Override
+        public void run() {
+            long startNanos = System.nanoTime();
+            queueWait[request.getPriority().ordinal()].recordNanos(startNanos - enqueuedNanos);
+            try {
+                if (canceled) {
+                    throw new IOException("Canceled");
+                }
+                HttpResponse response = send(this);
+                latency.recordNanos(System.nanoTime() - startNanos);
+                if (result.complete(response) && callback != null) {
+                    callback.onResponse(this, response);
+                }
+            } catch (IOException | RuntimeException e) {
+                if (canceled) {
+                    canceledCalls.incrementAndGet();
+                } else {
+                    failures.incrementAndGet();
+                }
+                fail(e instanceof IOException ? (IOException) e : new IOException(e));
+            } finally {
+                finished(this);
+            }
+        }
+
+        private void fail(IOException error) {
+            if (result.completeExceptionally(error) && callback != null) {
+                callback.onFailure(this, error);
+            }
+        }
+    }
+
+    private static final int MAX_REDIRECTS = 5;
+    private static final Comparator<Call> DISPATCH_ORDER = (a, b) -> {
+        int byPriority = a.request.getPriority().compareTo(b.request.getPriority());
+        return byPriority != 0 ? byPriority : Long.compare(a.sequence, b.sequence);
+    };
+
+    private final ConnectionPool pool;
+    private final ValidatorCache validators;
+    private final int maxRequests;
+    private final int maxRequestsPerHost;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final int maxBodyBytes;
+    private final ThreadPoolExecutor executor;
+
+    // Guarded by this
+    private final TreeSet<Call> ready = new TreeSet<>(DISPATCH_ORDER);
+    private final Map<String, Integer> runningPerHost = new HashMap<>();
+    private int running = 0;
+    private long nextSequence = 0;
+
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final AtomicLong canceledCalls = new AtomicLong();
+    private final AtomicLong connectionsOpened = new AtomicLong();
+    private final AtomicLong retriedStale = new AtomicLong();
+    private final AtomicLong conditionalRequests = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private final AtomicLong bytesSavedByRevalidation = new AtomicLong();
+    private final AtomicLong wireBytes = new AtomicLong();
+    private final AtomicLong bodyBytes = new AtomicLong();
+    private final LatencyHistogram latency = new LatencyHistogram();
+    private final LatencyHistogram[] queueWait = new LatencyHistogram[RequestPriority.values().length];
+
+    /**
+     * @param pool Keep-alive pool, may be shared between transports
+     * @param validators Store for conditional requests, null to always fetch in full
+     * @param maxRequests Requests in flight across all hosts, also the thread count
+     * @param maxRequestsPerHost Requests in flight to one host
+     * @param connectTimeoutMs Connect and TLS handshake timeout
+     * @param readTimeoutMs Timeout of each socket read
+     * @param maxBodyBytes Responses with a larger decoded body fail
+     */
+    public HttpTransport(ConnectionPool pool, ValidatorCache validators, int maxRequests, int maxRequestsPerHost,
+                         int connectTimeoutMs, int readTimeoutMs, int maxBodyBytes) {
+        this.pool = pool;
+        this.validators = validators;
+        this.maxRequests = maxRequests;
+        this.maxRequestsPerHost = maxRequestsPerHost;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+        this.maxBodyBytes = maxBodyBytes;
+        for (int i = 0; i < queueWait.length; i++) {
+            queueWait[i] = new LatencyHistogram();
+        }
+
+        AtomicInteger threadCount = new AtomicInteger();
+        executor = new ThreadPoolExecutor(maxRequests, maxRequests, 30, TimeUnit.SECONDS,
+            new LinkedBlockingQueue<>(), runnable -> {
+                Thread thread = new Thread(runnable, "http-" + threadCount.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        executor.allowCoreThreadTimeOut(true);
+    }
+
+    /**
+     * Queues a request
+     * @param callback Told about the outcome, may be null when only {@link #await(Call)} is used
+     */
+    public Call enqueue(HttpRequest request, Callback callback) {
+        return enqueue(request, callback, null);
+    }
+
+    /**
+     * Queues a request whose 200 or 206 body is streamed to the sink, see {@link #execute(HttpRequest, BodySink)}
+     */
+    public Call enqueue(HttpRequest request, Callback callback, BodySink sink) {
+        Call call;
+        synchronized (this) {
+            call = new Call(request, callback, sink, nextSequence++);
+            ready.add(call);
+        }
+        requests.incrementAndGet();
+        promote();
+        return call;
+    }
+
+    /**
+     * Runs a request through the queue and blocks until it completes, interruption cancels it
+     */
+    public HttpResponse execute(HttpRequest request) throws IOException {
+        return await(enqueue(request, null));
+    }
+
+    /**
+     * Like {@link #execute(HttpRequest)}, but a 200 or 206 body goes to the sink as it arrives and the
+     * returned response has an empty body. Streamed requests bypass the validator cache.
+     */
+    public HttpResponse execute(HttpRequest request, BodySink sink) throws IOException {
+        return await(enqueue(request, null, sink));
+    }
+
+    public HttpResponse await(Call call) throws IOException {
+        try {
+            return call.result.get();
+        } catch (InterruptedException e) {
+            call.cancel();
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for " + call.request);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof IOException ? (IOException) cause : new IOException(cause);
+        }
+    }
+
+    /**
+     * Starts the highest priority queued calls whose host still has room
+     */
+    private void promote() {
+        List<Call> starting = new ArrayList<>();
+        synchronized (this) {
+            Iterator<Call> iterator = ready.iterator();
+            while (running < maxRequests && iterator.hasNext()) {
+                Call call = iterator.next();
+                String host = call.request.getHostKey();
+                int hostRunning = runningPerHost.getOrDefault(host, 0);
+                if (hostRunning >= maxRequestsPerHost) {
+                    continue;
+                }
+                iterator.remove();
+                runningPerHost.put(host, hostRunning + 1);
+                running++;
+                starting.add(call);
+            }
+        }
+        for (Call call : starting) {
+            executor.execute(call);
+        }
+    }
+
+    private void finished(Call call) {
+        synchronized (this) {
+            String host = call.request.getHostKey();
+            int hostRunning = runningPerHost.getOrDefault(host, 1) - 1;
+            if (hostRunning > 0) {
+                runningPerHost.put(host, hostRunning);
+            } else {
+                runningPerHost.remove(host);
+            }
+            running--;
+        }
+        promote();
+    }
+
+    /**
+     * Follows redirects and applies conditional request handling
+     */
+    private HttpResponse send(Call call) throws IOException {
+        HttpRequest request = call.request;
+        for (int redirects = 0; ; redirects++) {
+            String cacheKey = request.getUrl().toString();
+            boolean cacheable = validators != null && request.isRevalidated() && call.sink == null;
+            ValidatorCache.Entry stored = cacheable ? validators.get(cacheKey) : null;
+            Map<String, String> conditional = Collections.emptyMap();
+            if (stored != null) {
+                conditional = new LinkedHashMap<>();
+                if (stored.etag != null) {
+                    conditional.put("If-None-Match", stored.etag);
+                }
+                if (stored.lastModified != null) {
+                    conditional.put("If-Modified-Since", stored.lastModified);
+                }
+                conditionalRequests.incrementAndGet();
+            }
+
+            boolean[] reused = new boolean[1];
+            HttpConnection.Exchange exchange = exchange(call, request, conditional, reused);
+            wireBytes.addAndGet(exchange.wireBytes);
+
+            String location = exchange.headers.get("location");
+            if (isRedirect(exchange.code) && location != null) {
+                if (redirects >= MAX_REDIRECTS) {
+                    throw new ProtocolException("Too many redirects: " + call.request.getUrl());
+                }
+                URL target = new URL(request.getUrl(), location);
+                if (!"http".equals(target.getProtocol()) && !"https".equals(target.getProtocol())) {
+                    throw new ProtocolException("Redirect to unsupported scheme: " + target);
+                }
+                boolean toGet = exchange.code == 303
+                    || ((exchange.code == 301 || exchange.code == 302) && "POST".equals(request.getMethod()));
+                request = request.redirectTo(target, toGet ? "GET" : request.getMethod());
+                continue;
+            }
+
+            if (exchange.code == 304 && stored != null) {
+                notModified.incrementAndGet();
+                bytesSavedByRevalidation.addAndGet(stored.body.length);
+                bodyBytes.addAndGet(stored.body.length);
+                Map<String, String> headers = new LinkedHashMap<>(exchange.headers);
+                if (stored.contentType != null) {
+                    headers.putIfAbsent("content-type", stored.contentType);
+                }
+                headers.putIfAbsent("etag", stored.etag);
+                headers.putIfAbsent("last-modified", stored.lastModified);
+                headers.values().removeIf(value -> value == null);
+                headers.put("content-length", Integer.toString(stored.body.length));
+                HttpResponse response = new HttpResponse(200, headers, stored.body, true, exchange.wireBytes, reused[0]);
+                // Refreshed validators, if the server sent any
+                if (exchange.headers.containsKey("etag") || exchange.headers.containsKey("last-modified")) {
+                    validators.store(cacheKey, response);
+                }
+                return response;
+            }
+
+            bodyBytes.addAndGet(call.sink != null ? exchange.wireBytes : exchange.body.length);
+            HttpResponse response = new HttpResponse(exchange.code, exchange.headers, exchange.body, false,
+                exchange.wireBytes, reused[0]);
+            if (cacheable) {
+                if (exchange.code == 200) {
+                    if (!validators.store(cacheKey, response) && stored != null) {
+                        validators.remove(cacheKey);
+                    }
+                } else if (exchange.code == 404 || exchange.code == 410) {
+                    validators.remove(cacheKey);
+                }
+            }
+            return response;
+        }
+    }
+
+    private static boolean isRedirect(int code) {
+        return code == 301 || code == 302 || code == 303 || code == 307 || code == 308;
+    }
+
+    /**
+     * One request/response on a pooled or new connection. A pooled connection can turn out to have
+     * been closed by the server after the health check, so idempotent requests that fail on one are
+     * retried once on a fresh connection.
+     */
+    private HttpConnection.Exchange exchange(Call call, HttpRequest request, Map<String, String> extraHeaders,
+                                             boolean[] reused) throws IOException {
+        URL url = request.getUrl();
+        HttpConnection connection = pool.acquire(HttpConnection.addressOf(url));
+        reused[0] = connection != null;
+        while (true) {
+            if (connection == null) {
+                connection = HttpConnection.open(url, connectTimeoutMs, readTimeoutMs);
+                connectionsOpened.incrementAndGet();
+            }
+            call.connection = connection;
+            try {
+                if (call.canceled) {
+                    throw new IOException("Canceled");
+                }
+                HttpConnection.Exchange exchange = connection.execute(request, extraHeaders, maxBodyBytes, call.sink);
+                if (exchange.keepAlive) {
+                    pool.release(connection);
+                } else {
+                    connection.close();
+                }
+                return exchange;
+            } catch (IOException e) {
+                connection.close();
+                boolean idempotent = "GET".equals(request.getMethod()) || "HEAD".equals(request.getMethod());
+                if (!reused[0] || !idempotent || call.canceled) {
+                    throw e;
+                }
+                retriedStale.incrementAndGet();
+                reused[0] = false;
+                connection = null;
+            } finally {
+                call.connection = null;
+            }
+        }
+    }
+
+    /**
+     * Cancels every queued call; running calls finish
+     */
+    public void cancelQueued() {
+        List<Call> canceled;
+        synchronized (this) {
+            canceled = new ArrayList<>(ready);
+        }
+        for (Call call : canceled) {
+            call.cancel();
+        }
+    }
+
+    public ConnectionPool getConnectionPool() {
+        return pool;
+    }
+
+    public long getConnectionsOpened() {
+        return connectionsOpened.get();
+    }
+
+    public long getNotModifiedCount() {
+        return notModified.get();
+    }
+
+    /**
+     * @return Body bytes that did not have to be transferred because a 304 confirmed the stored copy
+     */
+    public long getBytesSavedByRevalidation() {
+        return bytesSavedByRevalidation.get();
+    }
+
+    public long getWireBytes() {
+        return wireBytes.get();
+    }
+
+    public LatencyHistogram getLatency() {
+        return latency;
+    }
+
+    public LatencyHistogram getQueueWait(RequestPriority priority) {
+        return queueWait[priority.ordinal()];
+    }
+
+    public String report() {
+        StringBuilder builder = new StringBuilder(String.format(Locale.US,
+            "HttpTransport: requests=%d failures=%d canceled=%d connectionsOpened=%d staleRetries=%d "
+                + "conditional=%d notModified=%d savedBytes=%d wireBytes=%d bodyBytes=%d%n  %s%n  latency %s",
+            requests.get(), failures.get(), canceledCalls.get(), connectionsOpened.get(), retriedStale.get(),
+            conditionalRequests.get(), notModified.get(), bytesSavedByRevalidation.get(), wireBytes.get(),
+            bodyBytes.get(), pool, latency.summary()));
+        for (RequestPriority priority : RequestPriority.values()) {
+            LatencyHistogram wait = queueWait[priority.ordinal()];
+            if (wait.getCount() > 0) {
+                builder.append(String.format(Locale.US, "%n  queue %s %s", priority, wait.summary()));
+            }
+        }
+        return builder.toString();
+    }
+}
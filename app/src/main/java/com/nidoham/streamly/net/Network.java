@@ -0,0 +1,76 @@
+package com.nidoham.streamly.net;
+
+import android.content.Context;
+import android.net.ConnectivityManager;
+import androidx.annotation.NonNull;
+import com.nidoham.streamly.data.DiskJournal;
+import com.nidoham.streamly.memory.MemoryCoordinator;
+import com.nidoham.streamly.memory.MemoryTier;
+import java.io.File;
+
+/**
+ * Process-wide {@link HttpTransport} shared by every feature, so all requests to a host
+ * share one keep-alive pool and one set of per-host limits.
+ */
+public final class Network {
+
+    private static final int MAX_REQUESTS = 8;
+    // Matches what browsers allow per HTTP/1.1 origin, minus headroom for other apps' traffic
+    private static final int MAX_REQUESTS_PER_HOST = 4;
+    private static final int MAX_IDLE_PER_ADDRESS = 5;
+    private static final long KEEP_ALIVE_MS = 5 * 60 * 1000L;
+    private static final int CONNECT_TIMEOUT_MS = 10_000;
+    private static final int READ_TIMEOUT_MS = 15_000;
+    private static final int MAX_BODY_BYTES = 8 * 1024 * 1024;
+    private static final long VALIDATOR_MEMORY_BYTES = 1024 * 1024;
+    private static final long VALIDATOR_DISK_BYTES = 8 * 1024 * 1024;
+    private static final long VALIDATOR_MAX_AGE_MS = 30L * 24 * 60 * 60 * 1000;
+    private static final long MAX_VALIDATED_BODY_BYTES = 512 * 1024;
+
+    private static volatile HttpTransport instance;
+
+    private Network() {
+    }
+
+    @NonNull
+    public static HttpTransport getTransport(@NonNull Context context) {
+        HttpTransport transport = instance;
+        if (transport == null) {
+            synchronized (Network.class) {
+                transport = instance;
+                if (transport == null) {
+                    transport = create(context.getApplicationContext());
+                    instance = transport;
+                }
+            }
+        }
+        return transport;
+    }
+
+    private static HttpTransport create(Context appContext) {
+        DiskJournal journal = new DiskJournal(new File(new File(appContext.getCacheDir(), "http"), "validators.journal"),
+            VALIDATOR_DISK_BYTES, VALIDATOR_MAX_AGE_MS);
+        ValidatorCache validators = new ValidatorCache(VALIDATOR_MEMORY_BYTES, journal, MAX_VALIDATED_BODY_BYTES);
+        ConnectionPool pool = new ConnectionPool(MAX_IDLE_PER_ADDRESS, KEEP_ALIVE_MS);
+        MemoryCoordinator.getInstance().register("http_validators", MemoryTier.PREFETCHED_DATA, validators.getMemoryCache());
+
+        // Pooled sockets are bound to the old route after a network switch and would only time out
+        ConnectivityManager connectivityManager =
+            (ConnectivityManager) appContext.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (connectivityManager != null) {
+            connectivityManager.registerDefaultNetworkCallback(new ConnectivityManager.NetworkCallback() {
+                @Override
+                public void onAvailable(@NonNull android.net.Network network) {
+                    pool.evictAll();
+                }
+
+                @Override
+                public void onLost(@NonNull android.net.Network network) {
+                    pool.evictAll();
+                }
+            });
+        }
+        return new HttpTransport(pool, validators, MAX_REQUESTS, MAX_REQUESTS_PER_HOST,
+            CONNECT_TIMEOUT_MS, READ_TIMEOUT_MS, MAX_BODY_BYTES);
+    }
+}
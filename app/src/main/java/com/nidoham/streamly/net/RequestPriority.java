@@ -0,0 +1,15 @@
+package com.nidoham.streamly.net;
+
+/**
+ * Order in which queued requests are dispatched, earlier constants first.
+ * Requests of equal priority run in the order they were enqueued.
+ */
+public enum RequestPriority {
+    /** Blocks what the user is looking at, e.g. the first feed page */
+    IMMEDIATE,
+    /** Content for views that are on screen */
+    VISIBLE,
+    NORMAL,
+    /** Speculative work that may never be used */
+    PREFETCH
+}
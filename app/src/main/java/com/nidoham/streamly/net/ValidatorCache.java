@@ -0,0 +1,166 @@
+package com.nidoham.streamly.net;
+
+import com.nidoham.streamly.data.ByteLruCache;
+import com.nidoham.streamly.data.DiskJournal;
+import com.nidoham.streamly.memory.TrimmableCache;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Last good response per URL together with its validators, so a refetch can be sent as a
+ * conditional request and a 304 answered from here. Kept in memory and, if given, in a disk journal
+ * so validators survive process death.
+ */
+public final class ValidatorCache {
+
+    static final class Entry {
+        final String etag;
+        final String lastModified;
+        final String contentType;
+        final byte[] body;
+
+        Entry(String etag, String lastModified, String contentType, byte[] body) {
+            this.etag = etag;
+            this.lastModified = lastModified;
+            this.contentType = contentType;
+            this.body = body;
+        }
+
+        long sizeBytes() {
+            return body.length + 64L + length(etag) + length(lastModified) + length(contentType);
+        }
+
+        private static int length(String value) {
+            return value != null ? value.length() * 2 : 0;
+        }
+    }
+
+    private static final int MAX_DISK_KEY_BYTES = 1024;
+
+    private final ByteLruCache<String, Entry> memory;
+    private final DiskJournal disk;
+    private final long maxEntryBytes;
+
+    /**
+     * @param maxMemoryBytes Budget of the memory tier
+     * @param disk Journal for the disk tier, null for memory only
+     * @param maxEntryBytes Larger bodies are not stored and always fetched in full
+     */
+    public ValidatorCache(long maxMemoryBytes, DiskJournal disk, long maxEntryBytes) {
+        this.memory = new ByteLruCache<>(maxMemoryBytes);
+        this.disk = disk;
+        this.maxEntryBytes = maxEntryBytes;
+    }
+
+    /**
+     * May read the disk journal, call off the main thread
+     */
+    Entry get(String url) {
+        Entry entry = memory.get(url);
+        if (entry != null || disk == null || !fitsDisk(url)) {
+            return entry;
+        }
+        try {
+            DiskJournal.Record record = disk.get(url, System.currentTimeMillis());
+            if (record != null) {
+                entry = decode(record.getPayload());
+                memory.put(url, entry, entry.sizeBytes());
+            }
+        } catch (IOException e) {
+            // A damaged entry only costs a full fetch
+            return null;
+        }
+        return entry;
+    }
+
+    /**
+     * Stores a 200 response if it carries a validator and allows storing
+     * @return True if stored
+     */
+    boolean store(String url, HttpResponse response) {
+        String etag = response.getHeader("etag");
+        String lastModified = response.getHeader("last-modified");
+        if ((etag == null && lastModified == null) || response.getBody().length > maxEntryBytes
+                || HttpConnection.containsToken(response.getHeader("cache-control"), "no-store")) {
+            return false;
+        }
+        Entry entry = new Entry(etag, lastModified, response.getHeader("content-type"), response.getBody());
+        memory.put(url, entry, entry.sizeBytes());
+        if (disk != null && fitsDisk(url)) {
+            try {
+                disk.put(url, encode(entry), System.currentTimeMillis());
+            } catch (IOException ignored) {
+                // Memory still has it
+            }
+        }
+        return true;
+    }
+
+    void remove(String url) {
+        memory.remove(url);
+        if (disk != null && fitsDisk(url)) {
+            try {
+                disk.remove(url);
+            } catch (IOException ignored) {
+                // Validators of a stale entry are harmless, the server decides
+            }
+        }
+    }
+
+    /**
+     * @return The memory tier, for registration with the memory coordinator
+     */
+    public TrimmableCache getMemoryCache() {
+        return memory;
+    }
+
+    private static boolean fitsDisk(String url) {
+        return url.getBytes(StandardCharsets.UTF_8).length <= MAX_DISK_KEY_BYTES;
+    }
+
+    private static byte[] encode(Entry entry) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(entry.body.length + 128);
+        DataOutputStream out = new DataOutputStream(bytes);
+        writeNullable(out, entry.etag);
+        writeNullable(out, entry.lastModified);
+        writeNullable(out, entry.contentType);
+        out.writeInt(entry.body.length);
+        out.write(entry.body);
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    private static Entry decode(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        String etag = readNullable(in);
+        String lastModified = readNullable(in);
+        String contentType = readNullable(in);
+        int length = in.readInt();
+        if (length < 0 || length > payload.length) {
+            throw new IOException("Bad body length " + length);
+        }
+        byte[] body = new byte[length];
+        in.readFully(body);
+        return new Entry(etag, lastModified, contentType, body);
+    }
+
+    private static void writeNullable(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    private static String readNullable(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    @Override
+    public String toString() {
+        return "ValidatorCache[memory=" + memory + ", disk=" + (disk != null ? disk : "none") + "]";
+    }
+}
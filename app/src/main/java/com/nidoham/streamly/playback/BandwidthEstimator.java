@@ -0,0 +1,149 @@
+package com.nidoham.streamly.playback;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Throughput estimate from completed downloads.
+ * Two exponentially weighted moving averages with different half-lives, weighted by transfer time,
+ * are combined by taking the lower, so drops register quickly and recoveries slowly. While too few
+ * bytes have been seen for the averages to mean much, and whenever the recent window is volatile,
+ * a byte-weighted percentile of the sliding window is used instead, which is robust to the single
+ * outliers that skew an average. Tiny transfers are ignored, their time is mostly latency.
+ * Not thread safe.
+ */
+public final class BandwidthEstimator {
+
+    private static final double FAST_HALF_LIFE_SECONDS = 2;
+    private static final double SLOW_HALF_LIFE_SECONDS = 5;
+    private static final long MIN_SAMPLE_BYTES = 16 * 1024;
+    private static final long MIN_EWMA_BYTES = 128 * 1024;
+    // Coefficient of variation above which the window counts as volatile
+    private static final double VOLATILE_VARIATION = 0.5;
+    private static final double VOLATILE_PERCENTILE = 30;
+
+    private final long initialEstimateBps;
+    private final double fastAlpha = Math.pow(0.5, 1 / FAST_HALF_LIFE_SECONDS);
+    private final double slowAlpha = Math.pow(0.5, 1 / SLOW_HALF_LIFE_SECONDS);
+    private double fastEstimate = 0;
+    private double slowEstimate = 0;
+    private double totalSeconds = 0;
+    private long totalBytes = 0;
+
+    // Ring of recent samples
+    private final double[] windowBps;
+    private final long[] windowBytes;
+    private int windowStart = 0;
+    private int windowSize = 0;
+
+    /**
+     * @param initialEstimateBps Estimate before any sample, e.g. the last session's
+     * @param windowSamples Samples kept for the percentile fallback
+     */
+    public BandwidthEstimator(long initialEstimateBps, int windowSamples) {
+        this.initialEstimateBps = initialEstimateBps;
+        this.windowBps = new double[windowSamples];
+        this.windowBytes = new long[windowSamples];
+    }
+
+    /**
+     * @param bytes Bytes transferred
+     * @param durationNanos Time from request to last byte
+     */
+    public void addSample(long bytes, long durationNanos) {
+        if (bytes < MIN_SAMPLE_BYTES || durationNanos <= 0) {
+            return;
+        }
+        double seconds = durationNanos / 1e9;
+        double bps = bytes * 8 / seconds;
+
+        double fastWeight = Math.pow(fastAlpha, seconds);
+        fastEstimate = bps * (1 - fastWeight) + fastEstimate * fastWeight;
+        double slowWeight = Math.pow(slowAlpha, seconds);
+        slowEstimate = bps * (1 - slowWeight) + slowEstimate * slowWeight;
+        totalSeconds += seconds;
+        totalBytes += bytes;
+
+        int slot = (windowStart + windowSize) % windowBps.length;
+        if (windowSize == windowBps.length) {
+            windowStart = (windowStart + 1) % windowBps.length;
+        } else {
+            windowSize++;
+        }
+        windowBps[slot] = bps;
+        windowBytes[slot] = bytes;
+    }
+
+    /**
+     * @return Estimated throughput in bits per second
+     */
+    public long getEstimateBps() {
+        if (windowSize == 0) {
+            return initialEstimateBps;
+        }
+        if (totalBytes < MIN_EWMA_BYTES) {
+            return getPercentileBps(50);
+        }
+        // Averages start at zero, dividing by the accumulated weight removes that bias
+        double fast = fastEstimate / (1 - Math.pow(fastAlpha, totalSeconds));
+        double slow = slowEstimate / (1 - Math.pow(slowAlpha, totalSeconds));
+        double estimate = Math.min(fast, slow);
+        if (isVolatile()) {
+            estimate = Math.min(estimate, getPercentileBps(VOLATILE_PERCENTILE));
+        }
+        return (long) estimate;
+    }
+
+    /**
+     * @param percentile 0 to 100
+     * @return The throughput below which the given share of recent bytes were transferred
+     */
+    public long getPercentileBps(double percentile) {
+        if (windowSize == 0) {
+            return initialEstimateBps;
+        }
+        Integer[] sorted = new Integer[windowSize];
+        long total = 0;
+        for (int i = 0; i < windowSize; i++) {
+            sorted[i] = (windowStart + i) % windowBps.length;
+            total += windowBytes[sorted[i]];
+        }
+        Arrays.sort(sorted, (a, b) -> Double.compare(windowBps[a], windowBps[b]));
+        double target = total * percentile / 100;
+        long cumulative = 0;
+        for (int slot : sorted) {
+            cumulative += windowBytes[slot];
+            if (cumulative >= target) {
+                return (long) windowBps[slot];
+            }
+        }
+        return (long) windowBps[sorted[windowSize - 1]];
+    }
+
+    private boolean isVolatile() {
+        if (windowSize < 3) {
+            return false;
+        }
+        double mean = 0;
+        for (int i = 0; i < windowSize; i++) {
+            mean += windowBps[(windowStart + i) % windowBps.length];
+        }
+        mean /= windowSize;
+        double variance = 0;
+        for (int i = 0; i < windowSize; i++) {
+            double delta = windowBps[(windowStart + i) % windowBps.length] - mean;
+            variance += delta * delta;
+        }
+        return Math.sqrt(variance / windowSize) / mean > VOLATILE_VARIATION;
+    }
+
+    public long getSampledBytes() {
+        return totalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "BandwidthEstimator[estimate=%dkbps, p50=%dkbps, samples=%d, bytes=%d]",
+            getEstimateBps() / 1000, getPercentileBps(50) / 1000, windowSize, totalBytes);
+    }
+}
@@ -0,0 +1,79 @@
+package com.nidoham.streamly.playback;
+
+/**
+ * Buffer-based rate selection after Huang et al., "A Buffer-Based Approach to Rate Adaptation" (BBA-1).
+ * Across a cushion above a small reservoir, the buffer level maps linearly onto the bitrate range,
+ * and the rendition only changes once that mapped rate passes a neighbouring bitrate, which damps
+ * oscillation. Throughput still matters where the buffer cannot speak for itself: the first segment
+ * is chosen from the estimate, upswitches are capped by it, and when the buffer is low, in the reservoir
+ * or the lower half of the cushion, a rendition the estimate cannot sustain is dropped straight to one it can
+ * rather than stepping down one rendition at a time.
+ */
+public final class BufferBasedQualityPolicy implements QualityPolicy {
+
+    private final double reservoirSeconds;
+    private final double cushionSeconds;
+    private final double startupSafety;
+    private final double upswitchSafety;
+
+    /**
+     * @param reservoirSeconds Buffer below which the lowest rendition is always used
+     * @param cushionSeconds Buffer range over which the selection climbs from lowest to highest
+     * @param startupSafety Fraction of the estimate the first segment may use
+     * @param upswitchSafety Fraction of the estimate an upswitch may use
+     */
+    public BufferBasedQualityPolicy(double reservoirSeconds, double cushionSeconds, double startupSafety,
+                                    double upswitchSafety) {
+        this.reservoirSeconds = reservoirSeconds;
+        this.cushionSeconds = cushionSeconds;
+        this.startupSafety = startupSafety;
+        this.upswitchSafety = upswitchSafety;
+    }
+
+    @Override
+    public int selectInitial(long[] bitrates, long estimateBps) {
+        return ThroughputQualityPolicy.highestFitting(bitrates, estimateBps * startupSafety);
+    }
+
+    @Override
+    public int select(long[] bitrates, int current, double bufferSeconds, long estimateBps) {
+        int last = bitrates.length - 1;
+        current = Math.max(0, Math.min(current, last));
+        if (bufferSeconds <= reservoirSeconds) {
+            // Emergency: keep whatever still fits the throughput, never more than the current
+            return Math.min(current, ThroughputQualityPolicy.highestFitting(bitrates, estimateBps * startupSafety));
+        }
+
+        double mapped = mapBufferToRate(bitrates, bufferSeconds);
+        long above = current < last ? bitrates[current + 1] : bitrates[last];
+        long below = current > 0 ? bitrates[current - 1] : bitrates[0];
+        int target = current;
+        if (current < last && mapped >= above) {
+            // Highest bitrate strictly below the mapped rate
+            target = current;
+            while (target < last && bitrates[target + 1] < mapped) {
+                target++;
+            }
+            int affordable = ThroughputQualityPolicy.highestFitting(bitrates, estimateBps * upswitchSafety);
+            target = Math.max(current, Math.min(target, affordable));
+        } else if (current > 0 && mapped <= below) {
+            // Lowest bitrate strictly above the mapped rate
+            target = 0;
+            while (target < current && bitrates[target] <= mapped) {
+                target++;
+            }
+        }
+        if (bitrates[target] > estimateBps && bufferSeconds < reservoirSeconds + cushionSeconds / 2) {
+            // The buffer is draining faster than the map reacts to, follow the throughput down
+            target = Math.min(target, ThroughputQualityPolicy.highestFitting(bitrates, estimateBps * upswitchSafety));
+        }
+        return target;
+    }
+
+    private double mapBufferToRate(long[] bitrates, double bufferSeconds) {
+        double fraction = Math.min(1, (bufferSeconds - reservoirSeconds) / cushionSeconds);
+        long min = bitrates[0];
+        long max = bitrates[bitrates.length - 1];
+        return min + fraction * (max - min);
+    }
+}
@@ -0,0 +1,373 @@
+package com.nidoham.streamly.playback;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+import org.w3c.dom.NodeList;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/**
+ * Parses a DASH MPD into a {@link Manifest}.
+ * Supports SegmentTemplate (fixed duration or SegmentTimeline), SegmentList and single-file
+ * SegmentBase representations, BaseURL at every level and template inheritance from the AdaptationSet.
+ * Only the first Period is read, and SegmentBase files are a single segment since their sidx
+ * index would need a further request.
+ */
+public final class DashManifestParser {
+
+    /**
+     * @param manifestUrl Where the MPD was loaded from, relative URLs resolve against it
+     */
+    public Manifest parse(String manifestUrl, byte[] xml) throws IOException {
+        Element mpd = parseXml(xml).getDocumentElement();
+        if (!"MPD".equals(localName(mpd))) {
+            throw new IOException("Not an MPD: " + localName(mpd));
+        }
+        boolean live = "dynamic".equals(mpd.getAttribute("type"));
+        double presentationSeconds = parseDuration(mpd.getAttribute("mediaPresentationDuration"));
+        double minBufferSeconds = parseDuration(mpd.getAttribute("minBufferTime"));
+        URI base = resolveBase(URI.create(manifestUrl), mpd);
+
+        Element period = firstChild(mpd, "Period");
+        if (period == null) {
+            throw new IOException("MPD without a Period");
+        }
+        double periodSeconds = parseDuration(period.getAttribute("duration"));
+        if (Double.isNaN(periodSeconds)) {
+            periodSeconds = presentationSeconds;
+        }
+        URI periodBase = resolveBase(base, period);
+
+        List<Rendition> video = new ArrayList<>();
+        List<Rendition> audio = new ArrayList<>();
+        for (Element adaptationSet : children(period, "AdaptationSet")) {
+            URI setBase = resolveBase(periodBase, adaptationSet);
+            String setType = contentTypeOf(adaptationSet);
+            for (Element representation : children(adaptationSet, "Representation")) {
+                String type = representation.hasAttribute("mimeType") || representation.hasAttribute("contentType")
+                    ? contentTypeOf(representation) : setType;
+                if (!"video".equals(type) && !"audio".equals(type)) {
+                    continue;
+                }
+                Rendition rendition = parseRepresentation(resolveBase(setBase, representation), adaptationSet,
+                    representation, periodSeconds);
+                if (rendition != null) {
+                    ("video".equals(type) ? video : audio).add(rendition);
+                }
+            }
+        }
+        if (video.isEmpty() && audio.isEmpty()) {
+            throw new IOException("MPD has no playable representations");
+        }
+        // Audio-only content adapts between its audio representations
+        return new Manifest(Manifest.Format.DASH, video.isEmpty() ? audio : video,
+            video.isEmpty() ? new ArrayList<>() : audio, live ? Double.NaN : periodSeconds, live,
+            Double.isNaN(minBufferSeconds) ? 0 : minBufferSeconds);
+    }
+
+    private Rendition parseRepresentation(URI base, Element adaptationSet, Element representation, double periodSeconds)
+            throws IOException {
+        String id = representation.getAttribute("id");
+        long bandwidth = parseLong(representation.getAttribute("bandwidth"), -1);
+        if (id.isEmpty() || bandwidth <= 0) {
+            throw new IOException("Representation without id or bandwidth");
+        }
+        int width = (int) parseLong(attribute(representation, adaptationSet, "width"), 0);
+        int height = (int) parseLong(attribute(representation, adaptationSet, "height"), 0);
+        String codecs = attribute(representation, adaptationSet, "codecs");
+
+        Element template = firstChild(representation, "SegmentTemplate");
+        Element setTemplate = firstChild(adaptationSet, "SegmentTemplate");
+        if (template != null || setTemplate != null) {
+            return parseTemplate(base, id, bandwidth, width, height, codecs, setTemplate, template, periodSeconds);
+        }
+        Element list = firstChild(representation, "SegmentList");
+        if (list == null) {
+            list = firstChild(adaptationSet, "SegmentList");
+        }
+        if (list != null) {
+            return parseSegmentList(base, id, bandwidth, width, height, codecs, list, periodSeconds);
+        }
+        // SegmentBase or a bare BaseURL: the whole file is one segment
+        Segment whole = new Segment(base.toString(), 0, -1, 0, Double.isNaN(periodSeconds) ? 0 : periodSeconds);
+        List<Segment> segments = new ArrayList<>();
+        segments.add(whole);
+        return new Rendition(id, bandwidth, width, height, codecs, null, null, new SegmentList(segments));
+    }
+
+    private Rendition parseTemplate(URI base, String id, long bandwidth, int width, int height, String codecs,
+                                    Element outer, Element inner, double periodSeconds) throws IOException {
+        Map<String, String> attributes = new HashMap<>();
+        copyAttributes(outer, attributes);
+        copyAttributes(inner, attributes);
+        String media = attributes.get("media");
+        if (media == null) {
+            throw new IOException("SegmentTemplate without media in " + id);
+        }
+        long timescale = parseLong(attributes.get("timescale"), 1);
+        long startNumber = parseLong(attributes.get("startNumber"), 1);
+        long presentationTimeOffset = parseLong(attributes.get("presentationTimeOffset"), 0);
+
+        Segment init = null;
+        String initialization = attributes.get("initialization");
+        if (initialization != null) {
+            init = new Segment(base.resolve(SegmentTemplate.expand(initialization, id, bandwidth, 0, 0)).toString(),
+                0, -1, 0, 0);
+        }
+
+        Element timeline = inner != null ? firstChild(inner, "SegmentTimeline") : null;
+        if (timeline == null && outer != null) {
+            timeline = firstChild(outer, "SegmentTimeline");
+        }
+        SegmentIndex index;
+        if (timeline != null) {
+            index = parseTimeline(base, media, id, bandwidth, timescale, startNumber, presentationTimeOffset,
+                timeline, periodSeconds);
+        } else {
+            long duration = parseLong(attributes.get("duration"), -1);
+            if (duration <= 0 || Double.isNaN(periodSeconds)) {
+                throw new IOException("SegmentTemplate needs a duration and a known period length in " + id);
+            }
+            index = SegmentTemplate.withDuration(base, media, id, bandwidth, timescale, startNumber, duration,
+                periodSeconds);
+        }
+        return new Rendition(id, bandwidth, width, height, codecs, null, init, index);
+    }
+
+    private SegmentIndex parseTimeline(URI base, String media, String id, long bandwidth, long timescale,
+                                       long startNumber, long presentationTimeOffset, Element timeline,
+                                       double periodSeconds) throws IOException {
+        List<long[]> entries = new ArrayList<>();
+        long time = presentationTimeOffset;
+        long periodEnd = Double.isNaN(periodSeconds) ? Long.MAX_VALUE
+            : presentationTimeOffset + (long) (periodSeconds * timescale);
+        List<Element> spans = children(timeline, "S");
+        for (int s = 0; s < spans.size(); s++) {
+            Element span = spans.get(s);
+            long duration = parseLong(span.getAttribute("d"), -1);
+            if (duration <= 0) {
+                throw new IOException("SegmentTimeline entry without duration in " + id);
+            }
+            if (span.hasAttribute("t")) {
+                time = parseLong(span.getAttribute("t"), time);
+            }
+            long repeat = parseLong(span.getAttribute("r"), 0);
+            if (repeat < 0) {
+                // Repeats up to the next entry's start, or the period end
+                long end = s + 1 < spans.size() && spans.get(s + 1).hasAttribute("t")
+                    ? parseLong(spans.get(s + 1).getAttribute("t"), periodEnd) : periodEnd;
+                if (end == Long.MAX_VALUE) {
+                    throw new IOException("Open-ended SegmentTimeline repeat without a period length in " + id);
+                }
+                repeat = Math.max(0, (end - time + duration - 1) / duration - 1);
+            }
+            for (long r = 0; r <= repeat; r++) {
+                entries.add(new long[] {time, duration});
+                time += duration;
+            }
+        }
+        long[] times = new long[entries.size()];
+        long[] durations = new long[entries.size()];
+        for (int i = 0; i < times.length; i++) {
+            times[i] = entries.get(i)[0];
+            durations[i] = entries.get(i)[1];
+        }
+        return SegmentTemplate.withTimeline(base, media, id, bandwidth, timescale, startNumber, times, durations,
+            presentationTimeOffset);
+    }
+
+    private Rendition parseSegmentList(URI base, String id, long bandwidth, int width, int height, String codecs,
+                                       Element list, double periodSeconds) throws IOException {
+        long timescale = parseLong(list.getAttribute("timescale"), 1);
+        long duration = parseLong(list.getAttribute("duration"), -1);
+        List<Element> urls = children(list, "SegmentURL");
+        double segmentSeconds = duration > 0 ? (double) duration / timescale
+            : Double.isNaN(periodSeconds) || urls.isEmpty() ? 0 : periodSeconds / urls.size();
+
+        Segment init = null;
+        Element initialization = firstChild(list, "Initialization");
+        if (initialization != null) {
+            String source = initialization.getAttribute("sourceURL");
+            long[] range = parseRange(initialization.getAttribute("range"));
+            init = new Segment(source.isEmpty() ? base.toString() : base.resolve(source).toString(),
+                range[0], range[1], 0, 0);
+        }
+        List<Segment> segments = new ArrayList<>(urls.size());
+        for (int i = 0; i < urls.size(); i++) {
+            Element url = urls.get(i);
+            String media = url.getAttribute("media");
+            long[] range = parseRange(url.getAttribute("mediaRange"));
+            segments.add(new Segment(media.isEmpty() ? base.toString() : base.resolve(media).toString(),
+                range[0], range[1], i * segmentSeconds, segmentSeconds));
+        }
+        return new Rendition(id, bandwidth, width, height, codecs, null, init, new SegmentList(segments));
+    }
+
+    /**
+     * @return {offset, length}, length -1 when absent
+     */
+    private static long[] parseRange(String range) throws IOException {
+        if (range == null || range.isEmpty()) {
+            return new long[] {0, -1};
+        }
+        int dash = range.indexOf('-');
+        try {
+            long first = Long.parseLong(range.substring(0, dash));
+            long last = Long.parseLong(range.substring(dash + 1));
+            return new long[] {first, last - first + 1};
+        } catch (RuntimeException e) {
+            throw new IOException("Bad byte range: " + range);
+        }
+    }
+
+    /**
+     * Parses an xs:duration such as "PT1H2M3.5S" into seconds
+     * @return The duration, NaN if absent or malformed
+     */
+    static double parseDuration(String value) {
+        if (value == null || value.isEmpty() || value.charAt(0) != 'P') {
+            return Double.NaN;
+        }
+        double total = 0;
+        boolean inTime = false;
+        int fieldStart = 1;
+        for (int i = 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if ((c >= '0' && c <= '9') || c == '.') {
+                continue;
+            }
+            if (c == 'T') {
+                inTime = true;
+                fieldStart = i + 1;
+                continue;
+            }
+            double field;
+            try {
+                field = Double.parseDouble(value.substring(fieldStart, i));
+            } catch (NumberFormatException e) {
+                return Double.NaN;
+            }
+            switch (c) {
+                case 'Y':
+                    total += field * 365 * 86_400;
+                    break;
+                case 'D':
+                    total += field * 86_400;
+                    break;
+                case 'H':
+                    total += field * 3_600;
+                    break;
+                case 'M':
+                    total += inTime ? field * 60 : field * 30 * 86_400;
+                    break;
+                case 'S':
+                    total += field;
+                    break;
+                default:
+                    return Double.NaN;
+            }
+            fieldStart = i + 1;
+        }
+        return total;
+    }
+
+    private static Document parseXml(byte[] xml) throws IOException {
+        try {
+            DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
+            factory.setNamespaceAware(true);
+            factory.setExpandEntityReferences(false);
+            try {
+                // Manifests never need a DTD, refusing one rules out entity expansion attacks
+                factory.setFeature("http://apache.org/xml/features/disallow-doctype-decl", true);
+            } catch (ParserConfigurationException ignored) {
+                // Not supported by this parser
+            }
+            DocumentBuilder builder = factory.newDocumentBuilder();
+            // Errors surface as exceptions only, the default handler also prints them to stderr
+            builder.setErrorHandler(new DefaultHandler());
+            return builder.parse(new ByteArrayInputStream(xml));
+        } catch (ParserConfigurationException | SAXException e) {
+            throw new IOException("Malformed MPD: " + e.getMessage(), e);
+        }
+    }
+
+    private static URI resolveBase(URI parent, Element element) {
+        Element baseUrl = firstChild(element, "BaseURL");
+        if (baseUrl == null) {
+            return parent;
+        }
+        String text = baseUrl.getTextContent().trim();
+        return text.isEmpty() ? parent : parent.resolve(text);
+    }
+
+    private static String contentTypeOf(Element element) {
+        String type = element.getAttribute("contentType");
+        if (type.isEmpty()) {
+            String mimeType = element.getAttribute("mimeType");
+            int slash = mimeType.indexOf('/');
+            type = slash > 0 ? mimeType.substring(0, slash) : "";
+        }
+        return type;
+    }
+
+    private static String attribute(Element element, Element fallback, String name) {
+        return element.hasAttribute(name) ? element.getAttribute(name) : fallback.getAttribute(name);
+    }
+
+    private static void copyAttributes(Element element, Map<String, String> into) {
+        if (element == null) {
+            return;
+        }
+        for (int i = 0; i < element.getAttributes().getLength(); i++) {
+            Node attribute = element.getAttributes().item(i);
+            into.put(localName(attribute), attribute.getNodeValue());
+        }
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null || value.isEmpty()) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+
+    private static Element firstChild(Element parent, String name) {
+        for (Node node = parent.getFirstChild(); node != null; node = node.getNextSibling()) {
+            if (node instanceof Element && name.equals(localName(node))) {
+                return (Element) node;
+            }
+        }
+        return null;
+    }
+
+    private static List<Element> children(Element parent, String name) {
+        List<Element> matches = new ArrayList<>();
+        NodeList nodes = parent.getChildNodes();
+        for (int i = 0; i < nodes.getLength(); i++) {
+            Node node = nodes.item(i);
+            if (node instanceof Element && name.equals(localName(node))) {
+                matches.add((Element) node);
+            }
+        }
+        return matches;
+    }
+
+    private static String localName(Node node) {
+        return node.getLocalName() != null ? node.getLocalName() : node.getNodeName();
+    }
+}
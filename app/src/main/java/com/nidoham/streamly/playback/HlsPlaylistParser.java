@@ -0,0 +1,238 @@
+package com.nidoham.streamly.playback;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Parses HLS playlists. A master playlist gives renditions without segments, each media playlist
+ * is parsed separately into that rendition's segments. Encrypted (EXT-X-KEY) streams are rejected.
+ */
+public final class HlsPlaylistParser {
+
+    /**
+     * Segments of one media playlist
+     */
+    public static final class MediaPlaylist {
+        private final Segment initSegment;
+        private final SegmentList segments;
+        private final double targetDurationSeconds;
+        private final long mediaSequence;
+        private final boolean ended;
+
+        MediaPlaylist(Segment initSegment, SegmentList segments, double targetDurationSeconds, long mediaSequence,
+                      boolean ended) {
+            this.initSegment = initSegment;
+            this.segments = segments;
+            this.targetDurationSeconds = targetDurationSeconds;
+            this.mediaSequence = mediaSequence;
+            this.ended = ended;
+        }
+
+        public Segment getInitSegment() {
+            return initSegment;
+        }
+
+        public SegmentList getSegments() {
+            return segments;
+        }
+
+        public double getTargetDurationSeconds() {
+            return targetDurationSeconds;
+        }
+
+        public long getMediaSequence() {
+            return mediaSequence;
+        }
+
+        /**
+         * @return True for VOD or a finished live stream (EXT-X-ENDLIST)
+         */
+        public boolean isEnded() {
+            return ended;
+        }
+
+        public double getDurationSeconds() {
+            int count = segments.getSegmentCount();
+            return count == 0 ? 0 : segments.getSegment(count - 1).getEndSeconds();
+        }
+    }
+
+    public static boolean isMasterPlaylist(String text) {
+        return text.contains("#EXT-X-STREAM-INF");
+    }
+
+    /**
+     * @param playlistUrl Where the playlist was loaded from, relative URIs resolve against it
+     * @return Renditions still to be filled from their media playlists
+     */
+    public Manifest parseMaster(String playlistUrl, String text) throws IOException {
+        URI base = URI.create(playlistUrl);
+        List<Rendition> renditions = new ArrayList<>();
+        Map<String, String> pending = null;
+        for (String line : lines(text)) {
+            if (line.startsWith("#EXT-X-STREAM-INF:")) {
+                pending = parseAttributes(line.substring("#EXT-X-STREAM-INF:".length()));
+            } else if (!line.startsWith("#") && pending != null) {
+                long bandwidth = parseLong(pending.get("BANDWIDTH"), -1);
+                if (bandwidth <= 0) {
+                    throw new IOException("EXT-X-STREAM-INF without BANDWIDTH before " + line);
+                }
+                int width = 0;
+                int height = 0;
+                String resolution = pending.get("RESOLUTION");
+                if (resolution != null && resolution.indexOf('x') > 0) {
+                    width = (int) parseLong(resolution.substring(0, resolution.indexOf('x')), 0);
+                    height = (int) parseLong(resolution.substring(resolution.indexOf('x') + 1), 0);
+                }
+                String url = base.resolve(line).toString();
+                renditions.add(new Rendition(Integer.toString(renditions.size()), bandwidth, width, height,
+                    pending.getOrDefault("CODECS", ""), url, null, null));
+                pending = null;
+            }
+        }
+        if (renditions.isEmpty()) {
+            throw new IOException("Master playlist without variants");
+        }
+        return new Manifest(Manifest.Format.HLS, renditions, new ArrayList<>(), Double.NaN, false, 0);
+    }
+
+    public MediaPlaylist parseMedia(String playlistUrl, String text) throws IOException {
+        URI base = URI.create(playlistUrl);
+        List<Segment> segments = new ArrayList<>();
+        Segment init = null;
+        double targetDuration = 0;
+        long mediaSequence = 0;
+        boolean ended = false;
+        double time = 0;
+        double pendingDuration = -1;
+        long rangeLength = -1;
+        long rangeOffset = -1;
+        // A byte range without offset continues where the previous one of the same URI ended
+        long nextOffset = 0;
+        boolean first = true;
+        for (String line : lines(text)) {
+            if (first) {
+                if (!line.startsWith("#EXTM3U")) {
+                    throw new IOException("Not an M3U8 playlist");
+                }
+                first = false;
+            } else if (line.startsWith("#EXTINF:")) {
+                String value = line.substring("#EXTINF:".length());
+                int comma = value.indexOf(',');
+                try {
+                    pendingDuration = Double.parseDouble(comma >= 0 ? value.substring(0, comma) : value);
+                } catch (NumberFormatException e) {
+                    throw new IOException("Bad EXTINF: " + line);
+                }
+            } else if (line.startsWith("#EXT-X-TARGETDURATION:")) {
+                targetDuration = parseLong(line.substring("#EXT-X-TARGETDURATION:".length()), 0);
+            } else if (line.startsWith("#EXT-X-MEDIA-SEQUENCE:")) {
+                mediaSequence = parseLong(line.substring("#EXT-X-MEDIA-SEQUENCE:".length()), 0);
+            } else if (line.startsWith("#EXT-X-BYTERANGE:")) {
+                String range = line.substring("#EXT-X-BYTERANGE:".length());
+                int at = range.indexOf('@');
+                rangeLength = parseLong(at >= 0 ? range.substring(0, at) : range, -1);
+                rangeOffset = at >= 0 ? parseLong(range.substring(at + 1), 0) : nextOffset;
+            } else if (line.startsWith("#EXT-X-MAP:")) {
+                Map<String, String> attributes = parseAttributes(line.substring("#EXT-X-MAP:".length()));
+                String uri = attributes.get("URI");
+                if (uri == null) {
+                    throw new IOException("EXT-X-MAP without URI");
+                }
+                long[] range = parseByteRange(attributes.get("BYTERANGE"));
+                init = new Segment(base.resolve(uri).toString(), range[0], range[1], 0, 0);
+            } else if (line.startsWith("#EXT-X-KEY:")) {
+                if (!"NONE".equals(parseAttributes(line.substring("#EXT-X-KEY:".length())).get("METHOD"))) {
+                    throw new IOException("Encrypted HLS is not supported");
+                }
+            } else if (line.startsWith("#EXT-X-ENDLIST")) {
+                ended = true;
+            } else if (line.startsWith("#EXT-X-PLAYLIST-TYPE:VOD")) {
+                ended = true;
+            } else if (!line.startsWith("#")) {
+                if (pendingDuration < 0) {
+                    throw new IOException("Segment without EXTINF: " + line);
+                }
+                long offset = rangeLength >= 0 ? rangeOffset : 0;
+                segments.add(new Segment(base.resolve(line).toString(), offset, rangeLength, time, pendingDuration));
+                nextOffset = rangeLength >= 0 ? offset + rangeLength : 0;
+                time += pendingDuration;
+                pendingDuration = -1;
+                rangeLength = -1;
+            }
+        }
+        if (first) {
+            throw new IOException("Empty playlist");
+        }
+        return new MediaPlaylist(init, new SegmentList(segments), targetDuration, mediaSequence, ended);
+    }
+
+    /**
+     * Parses NAME=value,NAME="quoted, value" attribute lists
+     */
+    static Map<String, String> parseAttributes(String list) {
+        Map<String, String> attributes = new HashMap<>();
+        int pos = 0;
+        while (pos < list.length()) {
+            int equals = list.indexOf('=', pos);
+            if (equals < 0) {
+                break;
+            }
+            String name = list.substring(pos, equals).trim();
+            String value;
+            if (equals + 1 < list.length() && list.charAt(equals + 1) == '"') {
+                int close = list.indexOf('"', equals + 2);
+                if (close < 0) {
+                    close = list.length();
+                }
+                value = list.substring(equals + 2, close);
+                pos = list.indexOf(',', close);
+            } else {
+                int comma = list.indexOf(',', equals);
+                value = list.substring(equals + 1, comma >= 0 ? comma : list.length());
+                pos = comma;
+            }
+            attributes.put(name, value);
+            if (pos < 0) {
+                break;
+            }
+            pos++;
+        }
+        return attributes;
+    }
+
+    private static long[] parseByteRange(String range) {
+        if (range == null) {
+            return new long[] {0, -1};
+        }
+        int at = range.indexOf('@');
+        long length = parseLong(at >= 0 ? range.substring(0, at) : range, -1);
+        return new long[] {at >= 0 ? parseLong(range.substring(at + 1), 0) : 0, length};
+    }
+
+    private static List<String> lines(String text) {
+        List<String> lines = new ArrayList<>();
+        for (String line : text.split("\r?\n")) {
+            String trimmed = line.trim();
+            if (!trimmed.isEmpty()) {
+                lines.add(trimmed);
+            }
+        }
+        return lines;
+    }
+
+    private static long parseLong(String value, long fallback) {
+        if (value == null) {
+            return fallback;
+        }
+        try {
+            return Long.parseLong(value.trim());
+        } catch (NumberFormatException e) {
+            return fallback;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package com.nidoham.streamly.playback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+/**
+ * Parsed presentation: the video renditions to adapt between, lowest bitrate first,
+ * and any separate audio renditions.
+ */
+public final class Manifest {
+
+    public enum Format {
+        DASH, HLS
+    }
+
+    private final Format format;
+    private final List<Rendition> renditions;
+    private final List<Rendition> audioRenditions;
+    private final double durationSeconds;
+    private final boolean live;
+    private final double minBufferSeconds;
+
+    /**
+     * @param durationSeconds Presentation duration, NaN if unknown, e.g. for live streams
+     * @param minBufferSeconds Buffer the packager asks for before playback, 0 if unspecified
+     */
+    public Manifest(Format format, List<Rendition> renditions, List<Rendition> audioRenditions,
+                    double durationSeconds, boolean live, double minBufferSeconds) {
+        List<Rendition> sorted = new ArrayList<>(renditions);
+        sorted.sort(Comparator.comparingLong(Rendition::getBandwidthBps));
+        this.format = format;
+        this.renditions = Collections.unmodifiableList(sorted);
+        this.audioRenditions = Collections.unmodifiableList(new ArrayList<>(audioRenditions));
+        this.durationSeconds = durationSeconds;
+        this.live = live;
+        this.minBufferSeconds = minBufferSeconds;
+    }
+
+    public Manifest withRenditions(List<Rendition> renditions) {
+        return new Manifest(format, renditions, audioRenditions, durationSeconds, live, minBufferSeconds);
+    }
+
+    public Format getFormat() {
+        return format;
+    }
+
+    /**
+     * @return Video (or muxed) renditions in ascending bandwidth order
+     */
+    public List<Rendition> getRenditions() {
+        return renditions;
+    }
+
+    public List<Rendition> getAudioRenditions() {
+        return audioRenditions;
+    }
+
+    /**
+     * @return Declared bitrates in the order of {@link #getRenditions()}
+     */
+    public long[] getBitrates() {
+        long[] bitrates = new long[renditions.size()];
+        for (int i = 0; i < bitrates.length; i++) {
+            bitrates[i] = renditions.get(i).getBandwidthBps();
+        }
+        return bitrates;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public boolean isLive() {
+        return live;
+    }
+
+    public double getMinBufferSeconds() {
+        return minBufferSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return format + " " + (live ? "live" : durationSeconds + "s") + " " + renditions;
+    }
+}
@@ -0,0 +1,90 @@
+package com.nidoham.streamly.playback;
+
+import com.nidoham.streamly.net.HttpRequest;
+import com.nidoham.streamly.net.HttpResponse;
+import com.nidoham.streamly.net.HttpTransport;
+import com.nidoham.streamly.net.RequestPriority;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Loads a DASH or HLS manifest into a {@link Manifest} whose renditions all have segments.
+ * The format is detected from the content. HLS media playlists are requested in parallel, they gate
+ * startup. Blocking, call off the main thread.
+ */
+public final class ManifestLoader {
+
+    private final HttpTransport transport;
+    private final DashManifestParser dashParser = new DashManifestParser();
+    private final HlsPlaylistParser hlsParser = new HlsPlaylistParser();
+
+    public ManifestLoader(HttpTransport transport) {
+        this.transport = transport;
+    }
+
+    public Manifest load(String url) throws IOException {
+        HttpResponse response = fetch(url);
+        String text = response.getBodyString();
+        String head = text.substring(0, Math.min(text.length(), 512)).trim();
+        if (head.startsWith("#EXTM3U")) {
+            return loadHls(url, text);
+        }
+        if (head.contains("<MPD")) {
+            return dashParser.parse(url, response.getBody());
+        }
+        throw new IOException("Unrecognised manifest format at " + url);
+    }
+
+    private Manifest loadHls(String url, String text) throws IOException {
+        if (!HlsPlaylistParser.isMasterPlaylist(text)) {
+            // A lone media playlist is a single-rendition stream
+            HlsPlaylistParser.MediaPlaylist media = hlsParser.parseMedia(url, text);
+            List<Rendition> single = new ArrayList<>();
+            single.add(new Rendition("0", 1, 0, 0, "", url, media.getInitSegment(), media.getSegments()));
+            return new Manifest(Manifest.Format.HLS, single, new ArrayList<>(),
+                media.isEnded() ? media.getDurationSeconds() : Double.NaN, !media.isEnded(), 0);
+        }
+
+        Manifest master = hlsParser.parseMaster(url, text);
+        List<HttpTransport.Call> calls = new ArrayList<>();
+        for (Rendition rendition : master.getRenditions()) {
+            calls.add(transport.enqueue(request(rendition.getPlaylistUrl()), null));
+        }
+        List<Rendition> loaded = new ArrayList<>();
+        double duration = Double.NaN;
+        boolean live = false;
+        double targetDuration = 0;
+        for (int i = 0; i < calls.size(); i++) {
+            Rendition rendition = master.getRenditions().get(i);
+            HttpResponse response = checked(transport.await(calls.get(i)), rendition.getPlaylistUrl());
+            HlsPlaylistParser.MediaPlaylist media = hlsParser.parseMedia(rendition.getPlaylistUrl(),
+                response.getBodyString());
+            loaded.add(rendition.withSegments(media.getInitSegment(), media.getSegments()));
+            live |= !media.isEnded();
+            if (media.isEnded()) {
+                duration = Double.isNaN(duration) ? media.getDurationSeconds()
+                    : Math.max(duration, media.getDurationSeconds());
+            }
+            targetDuration = Math.max(targetDuration, media.getTargetDurationSeconds());
+        }
+        return new Manifest(Manifest.Format.HLS, loaded, new ArrayList<>(), live ? Double.NaN : duration, live,
+            targetDuration);
+    }
+
+    private HttpResponse fetch(String url) throws IOException {
+        return checked(transport.execute(request(url)), url);
+    }
+
+    private static HttpRequest request(String url) {
+        // Nothing plays until the manifest is in
+        return HttpRequest.get(url).withPriority(RequestPriority.IMMEDIATE);
+    }
+
+    private static HttpResponse checked(HttpResponse response, String url) throws IOException {
+        if (!response.isSuccessful()) {
+            throw new IOException("HTTP " + response.getCode() + " for " + url);
+        }
+        return response;
+    }
+}
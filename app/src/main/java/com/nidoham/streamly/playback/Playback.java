@@ -0,0 +1,53 @@
+package com.nidoham.streamly.playback;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.annotation.WorkerThread;
+import com.nidoham.streamly.net.Network;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Process-wide segment cache and loader, so every player instance shares one on-disk cache.
+ */
+public final class Playback {
+
+    private static final int SLAB_BYTES = 64 * 1024 * 1024;
+    private static final int MAX_SLABS = 4;
+    // A quarter of a typical 720p segment, keeps per-segment waste low without tiny runs
+    private static final int BLOCK_BYTES = 64 * 1024;
+    // Never take more than this share of the free space
+    private static final int FREE_SPACE_DIVISOR = 10;
+
+    private static volatile SegmentLoader instance;
+
+    private Playback() {
+    }
+
+    /**
+     * Opens the cache on first use, which maps its files and replays the index journal
+     */
+    @WorkerThread
+    @NonNull
+    public static SegmentLoader getSegmentLoader(@NonNull Context context) throws IOException {
+        SegmentLoader loader = instance;
+        if (loader == null) {
+            synchronized (Playback.class) {
+                loader = instance;
+                if (loader == null) {
+                    Context appContext = context.getApplicationContext();
+                    loader = new SegmentLoader(Network.getTransport(appContext), openCache(appContext));
+                    instance = loader;
+                }
+            }
+        }
+        return loader;
+    }
+
+    private static SegmentCache openCache(Context appContext) throws IOException {
+        File directory = new File(appContext.getCacheDir(), "segments");
+        long budget = appContext.getCacheDir().getUsableSpace() / FREE_SPACE_DIVISOR;
+        int slabs = (int) Math.max(1, Math.min(MAX_SLABS, budget / SLAB_BYTES));
+        return SegmentCache.open(directory, slabs, SLAB_BYTES, BLOCK_BYTES);
+    }
+}
@@ -0,0 +1,21 @@
+package com.nidoham.streamly.playback;
+
+/**
+ * Chooses the rendition for the next segment.
+ */
+public interface QualityPolicy {
+
+    /**
+     * @param bitrates Declared bitrates, ascending
+     * @param estimateBps Current throughput estimate
+     * @return Index of the rendition for the first segment
+     */
+    int selectInitial(long[] bitrates, long estimateBps);
+
+    /**
+     * @param current Index of the rendition of the previous segment
+     * @param bufferSeconds Media buffered ahead of the playhead
+     * @return Index of the rendition for the next segment
+     */
+    int select(long[] bitrates, int current, double bufferSeconds, long estimateBps);
+}
@@ -0,0 +1,76 @@
+package com.nidoham.streamly.playback;
+
+/**
+ * One encoding of the content. HLS variants start without segments, they are filled in once
+ * their media playlist has been loaded.
+ */
+public final class Rendition {
+
+    private final String id;
+    private final long bandwidthBps;
+    private final int width;
+    private final int height;
+    private final String codecs;
+    private final String playlistUrl;
+    private final Segment initSegment;
+    private final SegmentIndex segments;
+
+    /**
+     * @param bandwidthBps Declared peak bitrate in bits per second
+     * @param playlistUrl HLS media playlist, null for DASH
+     * @param initSegment Initialization segment, null if segments are self-contained
+     * @param segments Segments, null until known
+     */
+    public Rendition(String id, long bandwidthBps, int width, int height, String codecs, String playlistUrl,
+                     Segment initSegment, SegmentIndex segments) {
+        this.id = id;
+        this.bandwidthBps = bandwidthBps;
+        this.width = width;
+        this.height = height;
+        this.codecs = codecs;
+        this.playlistUrl = playlistUrl;
+        this.initSegment = initSegment;
+        this.segments = segments;
+    }
+
+    public Rendition withSegments(Segment initSegment, SegmentIndex segments) {
+        return new Rendition(id, bandwidthBps, width, height, codecs, playlistUrl, initSegment, segments);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public long getBandwidthBps() {
+        return bandwidthBps;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public String getCodecs() {
+        return codecs;
+    }
+
+    public String getPlaylistUrl() {
+        return playlistUrl;
+    }
+
+    public Segment getInitSegment() {
+        return initSegment;
+    }
+
+    public SegmentIndex getSegments() {
+        return segments;
+    }
+
+    @Override
+    public String toString() {
+        return id + " " + bandwidthBps / 1000 + "kbps" + (height > 0 ? " " + width + "x" + height : "");
+    }
+}
@@ -0,0 +1,67 @@
+package com.nidoham.streamly.playback;
+
+/**
+ * One media segment: a URL, optionally narrowed to a byte range, and the time span it covers.
+ */
+public final class Segment {
+
+    private final String url;
+    private final long rangeOffset;
+    private final long rangeLength;
+    private final double startSeconds;
+    private final double durationSeconds;
+
+    /**
+     * @param rangeLength Length of the byte range, -1 for the whole resource
+     */
+    public Segment(String url, long rangeOffset, long rangeLength, double startSeconds, double durationSeconds) {
+        this.url = url;
+        this.rangeOffset = rangeOffset;
+        this.rangeLength = rangeLength;
+        this.startSeconds = startSeconds;
+        this.durationSeconds = durationSeconds;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public long getRangeOffset() {
+        return rangeOffset;
+    }
+
+    /**
+     * @return Length of the byte range, -1 if the segment is the whole resource
+     */
+    public long getRangeLength() {
+        return rangeLength;
+    }
+
+    public boolean hasRange() {
+        return rangeLength >= 0;
+    }
+
+    /**
+     * @return Value for an HTTP Range header, null for the whole resource
+     */
+    public String getRangeHeader() {
+        return hasRange() ? "bytes=" + rangeOffset + "-" + (rangeOffset + rangeLength - 1) : null;
+    }
+
+    public double getStartSeconds() {
+        return startSeconds;
+    }
+
+    public double getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public double getEndSeconds() {
+        return startSeconds + durationSeconds;
+    }
+
+    @Override
+    public String toString() {
+        return url + (hasRange() ? " [" + getRangeHeader() + "]" : "") + " @" + startSeconds + "s+" + durationSeconds;
+    }
+}
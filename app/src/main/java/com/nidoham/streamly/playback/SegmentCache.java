@@ -0,0 +1,683 @@
+package com.nidoham.streamly.playback;
+
+import com.nidoham.streamly.data.DiskJournal;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Disk cache of downloaded media segments, so replays and seeks backwards are served locally.
+ * Segments live in a few large slab files that are sized up front and memory-mapped once. Each slab
+ * is divided into fixed blocks and a segment takes a contiguous run of them, so a read is a view of
+ * the mapping without copying. The least recently used segments are evicted when space runs out.
+ * <p>
+ * The index is kept in primitive arrays keyed by (content id, rendition id, segment number), and every
+ * insert and removal is appended to a {@link DiskJournal} after the data is in place. After a restart
+ * the journal rebuilds the index in write order, and each recovered segment is checked against its
+ * stored CRC on first read, so data torn by a crash is dropped rather than served.
+ * <p>
+ * Thread safe. Opening does disk I/O and belongs off the main thread.
+ */
+public final class SegmentCache implements Closeable {
+
+    /**
+     * A pinned, read-only view of a cached segment. The entry cannot be evicted or overwritten until
+     * the lease is closed, so the buffer stays valid for as long as the caller holds it.
+     */
+    public final class Lease implements Closeable {
+        private final int slot;
+        private final ByteBuffer buffer;
+        private boolean closed;
+
+        Lease(int slot, ByteBuffer buffer) {
+            this.slot = slot;
+            this.buffer = buffer;
+        }
+
+        /**
+         * @return Read-only buffer positioned at the segment start, independent per lease
+         */
+        public ByteBuffer getBuffer() {
+            return buffer;
+        }
+
+        /**
+         * @return False when the data only lives on the heap because it could not be cached
+         */
+        public boolean isCached() {
+            return slot >= 0;
+        }
+
+        @Override
+        public void close() {
+            synchronized (SegmentCache.this) {
+                if (closed) {
+                    return;
+                }
+                closed = true;
+                if (slot >= 0) {
+                    unpin(slot);
+                }
+            }
+        }
+    }
+
+    private static final String JOURNAL_NAME = "segments.journal";
+    private static final byte FLAG_VERIFIED = 1;
+    // Removed from the index while leased, blocks are freed when the last lease closes
+    private static final byte FLAG_DOOMED = 2;
+    private static final int NONE = -1;
+
+    private final File directory;
+    private final int slabBytes;
+    private final int blockBytes;
+    private final int blocksPerSlab;
+    private final MappedByteBuffer[] slabs;
+    private final RandomAccessFile[] slabFiles;
+    private final BitSet[] usedBlocks;
+    private final DiskJournal journal;
+
+    // Content and rendition pairs, numbered so an index key fits in one long
+    private final Map<String, Integer> trackIds = new HashMap<>();
+    private final List<String> trackNames = new ArrayList<>();
+
+    // Entry table, one slot per possible segment (every segment takes at least one block)
+    private final long[] keys;
+    private final int[] slabOf;
+    private final int[] firstBlock;
+    private final int[] lengths;
+    private final int[] checksums;
+    private final int[] pins;
+    private final byte[] flags;
+    private final int[] newer;
+    private final int[] older;
+    private int freeSlot;
+    private int newest = NONE;
+    private int oldest = NONE;
+
+    // Open addressing from key to slot + 1, linear probing with backward-shift deletion
+    private final long[] tableKeys;
+    private final int[] tableSlots;
+    private final int tableMask;
+
+    private int entryCount;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private long evictedBytes;
+    private long corrupted;
+    private long recovered;
+
+    private SegmentCache(File directory, int slabCount, int slabBytes, int blockBytes) {
+        this.directory = directory;
+        this.slabBytes = slabBytes;
+        this.blockBytes = blockBytes;
+        this.blocksPerSlab = slabBytes / blockBytes;
+        this.slabs = new MappedByteBuffer[slabCount];
+        this.slabFiles = new RandomAccessFile[slabCount];
+        this.usedBlocks = new BitSet[slabCount];
+        this.journal = new DiskJournal(new File(directory, JOURNAL_NAME), Long.MAX_VALUE, Long.MAX_VALUE);
+
+        int maxEntries = slabCount * blocksPerSlab;
+        keys = new long[maxEntries];
+        slabOf = new int[maxEntries];
+        firstBlock = new int[maxEntries];
+        lengths = new int[maxEntries];
+        checksums = new int[maxEntries];
+        pins = new int[maxEntries];
+        flags = new byte[maxEntries];
+        newer = new int[maxEntries];
+        older = new int[maxEntries];
+        for (int slot = 0; slot < maxEntries; slot++) {
+            older[slot] = slot + 1 < maxEntries ? slot + 1 : NONE;
+        }
+        freeSlot = 0;
+
+        int tableSize = Integer.highestOneBit(Math.max(2, maxEntries * 2 - 1)) << 1;
+        tableKeys = new long[tableSize];
+        tableSlots = new int[tableSize];
+        tableMask = tableSize - 1;
+    }
+
+    /**
+     * Opens or creates a cache, mapping its slabs and recovering the index from the journal.
+     * Slabs of a different size are discarded along with everything cached in them.
+     * @param slabCount Number of slab files, capacity is slabCount * slabBytes
+     * @param slabBytes Size of each slab, a multiple of blockBytes and at most 1 GB
+     * @param blockBytes Allocation unit, larger blocks waste more per segment but fragment less
+     */
+    public static SegmentCache open(File directory, int slabCount, int slabBytes, int blockBytes) throws IOException {
+        if (slabCount <= 0 || blockBytes <= 0 || slabBytes < blockBytes || slabBytes % blockBytes != 0
+                || slabBytes > (1 << 30)) {
+            throw new IllegalArgumentException(
+                "Bad slab geometry: " + slabCount + " x " + slabBytes + " / " + blockBytes);
+        }
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        SegmentCache cache = new SegmentCache(directory, slabCount, slabBytes, blockBytes);
+        try {
+            cache.mapSlabs();
+            cache.recover();
+        } catch (IOException e) {
+            cache.close();
+            throw e;
+        }
+        return cache;
+    }
+
+    private void mapSlabs() throws IOException {
+        boolean reset = false;
+        for (int i = 0; i < slabs.length; i++) {
+            File file = slabFile(i);
+            reset |= file.exists() && file.length() != slabBytes;
+        }
+        if (reset) {
+            // Block addresses in the journal no longer mean anything
+            journal.close();
+            deleteOrThrow(new File(directory, JOURNAL_NAME));
+        }
+        // Left over from a larger configuration, their entries are dropped at recovery
+        for (int i = slabs.length; slabFile(i).exists(); i++) {
+            deleteOrThrow(slabFile(i));
+        }
+        for (int i = 0; i < slabs.length; i++) {
+            RandomAccessFile file = new RandomAccessFile(slabFile(i), "rw");
+            slabFiles[i] = file;
+            if (file.length() != slabBytes) {
+                // Sets the length without writing; blocks get real storage as segments are written
+                file.setLength(slabBytes);
+            }
+            slabs[i] = file.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, slabBytes);
+            usedBlocks[i] = new BitSet(blocksPerSlab);
+        }
+    }
+
+    private File slabFile(int index) {
+        return new File(directory, "slab-" + index + ".bin");
+    }
+
+    private static void deleteOrThrow(File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+
+    /**
+     * Rebuilds the index from the journal, oldest write first so recency roughly survives a restart
+     */
+    private void recover() throws IOException {
+        List<Map.Entry<String, DiskJournal.Record>> records = new ArrayList<>();
+        for (String journalKey : journal.getKeys()) {
+            DiskJournal.Record record = journal.get(journalKey, 0);
+            if (record != null) {
+                records.add(new AbstractMap.SimpleImmutableEntry<>(journalKey, record));
+            }
+        }
+        records.sort((a, b) -> Long.compare(a.getValue().getWrittenAtMillis(), b.getValue().getWrittenAtMillis()));
+        for (Map.Entry<String, DiskJournal.Record> record : records) {
+            if (!restore(record.getKey(), record.getValue().getPayload())) {
+                journal.remove(record.getKey());
+            }
+        }
+    }
+
+    private boolean restore(String journalKey, byte[] payload) {
+        int split = journalKey.lastIndexOf('\n');
+        if (split <= 0 || payload.length != 16) {
+            return false;
+        }
+        int segmentNumber;
+        try {
+            segmentNumber = Integer.parseInt(journalKey.substring(split + 1));
+        } catch (NumberFormatException e) {
+            return false;
+        }
+        ByteBuffer fields = ByteBuffer.wrap(payload);
+        int slab = fields.getInt();
+        int offset = fields.getInt();
+        int length = fields.getInt();
+        int checksum = fields.getInt();
+        // Offsets are stored in bytes so a change of block size cannot misplace an entry
+        int block = offset / blockBytes;
+        int blocks = blocksFor(length);
+        if (slab < 0 || slab >= slabs.length || offset < 0 || offset % blockBytes != 0 || length <= 0
+                || block + blocks > blocksPerSlab) {
+            return false;
+        }
+        int overlap = usedBlocks[slab].nextSetBit(block);
+        if (overlap >= 0 && overlap < block + blocks) {
+            return false;
+        }
+        long key = packKey(trackId(journalKey.substring(0, split)), segmentNumber);
+        if (find(key) != NONE) {
+            return false;
+        }
+        insert(key, slab, block, length, checksum, (byte) 0);
+        recovered++;
+        return true;
+    }
+
+    /**
+     * Pins and returns a cached segment
+     * @return A lease to close once the bytes are consumed, or null on a miss
+     */
+    public synchronized Lease acquire(String contentId, String renditionId, int segmentNumber)
+            throws IOException {
+        Integer track = trackIds.get(trackName(contentId, renditionId));
+        int slot = track != null ? find(packKey(track, segmentNumber)) : NONE;
+        if (slot == NONE) {
+            misses++;
+            return null;
+        }
+        ByteBuffer view = view(slot);
+        if ((flags[slot] & FLAG_VERIFIED) == 0) {
+            if (crc(view) != checksums[slot]) {
+                // Written before a crash that lost part of the data
+                corrupted++;
+                misses++;
+                removeSlot(slot);
+                return null;
+            }
+            flags[slot] |= FLAG_VERIFIED;
+        }
+        hits++;
+        pins[slot]++;
+        touch(slot);
+        return new Lease(slot, view.asReadOnlyBuffer());
+    }
+
+    /**
+     * Wraps bytes that could not be cached in a lease, so callers handle both cases alike
+     */
+    Lease uncached(ByteBuffer data) {
+        return new Lease(NONE, data.asReadOnlyBuffer());
+    }
+
+    public synchronized boolean contains(String contentId, String renditionId, int segmentNumber) {
+        Integer track = trackIds.get(trackName(contentId, renditionId));
+        return track != null && find(packKey(track, segmentNumber)) != NONE;
+    }
+
+    /**
+     * Stores a segment, evicting the least recently used ones to make room. Segments are immutable,
+     * so storing a key that is already cached only marks it as used.
+     * @param data Bytes from position to limit, the buffer position is left unchanged
+     * @return False if the segment is larger than a slab or room cannot be made because everything is leased
+     */
+    public synchronized boolean put(String contentId, String renditionId, int segmentNumber, ByteBuffer data)
+            throws IOException {
+        int length = data.remaining();
+        int blocks = blocksFor(length);
+        if (length == 0 || blocks > blocksPerSlab) {
+            return false;
+        }
+        String track = trackName(contentId, renditionId);
+        long key = packKey(trackId(track), segmentNumber);
+        int existing = find(key);
+        if (existing != NONE) {
+            touch(existing);
+            return true;
+        }
+
+        long placement = allocate(blocks);
+        if (placement < 0) {
+            return false;
+        }
+        int slab = (int) (placement >>> 32);
+        int block = (int) placement;
+        ByteBuffer target = slabs[slab].duplicate();
+        target.position(block * blockBytes);
+        target.put(data.duplicate());
+        int checksum = crc(sliceOf(slab, block, length));
+
+        int slot = insert(key, slab, block, length, checksum, FLAG_VERIFIED);
+        try {
+            byte[] location = ByteBuffer.allocate(16)
+                .putInt(slab).putInt(block * blockBytes).putInt(length).putInt(checksum).array();
+            journal.put(track + '\n' + segmentNumber, location, System.currentTimeMillis());
+        } catch (IOException e) {
+            // Without a journal record the entry would be lost on restart anyway
+            unindex(slot);
+            freeSlot(slot);
+            throw e;
+        }
+        return true;
+    }
+
+    /**
+     * Removes a segment; if it is leased, its space is reclaimed when the last lease closes
+     */
+    public synchronized void remove(String contentId, String renditionId, int segmentNumber) throws IOException {
+        Integer track = trackIds.get(trackName(contentId, renditionId));
+        int slot = track != null ? find(packKey(track, segmentNumber)) : NONE;
+        if (slot != NONE) {
+            removeSlot(slot);
+        }
+    }
+
+    /**
+     * Finds a contiguous run of free blocks, evicting from the old end of the LRU list until one appears
+     * @return Slab in the high and first block in the low 32 bits, or -1
+     */
+    private long allocate(int blocks) throws IOException {
+        int candidate = oldest;
+        while (true) {
+            for (int slab = 0; slab < slabs.length; slab++) {
+                int block = findRun(usedBlocks[slab], blocks);
+                if (block >= 0) {
+                    usedBlocks[slab].set(block, block + blocks);
+                    return ((long) slab << 32) | block;
+                }
+            }
+            while (candidate != NONE && pins[candidate] > 0) {
+                candidate = newer[candidate];
+            }
+            if (candidate == NONE) {
+                return -1;
+            }
+            int victim = candidate;
+            candidate = newer[candidate];
+            evictions++;
+            evictedBytes += lengths[victim];
+            removeSlot(victim);
+        }
+    }
+
+    private int findRun(BitSet used, int blocks) {
+        int start = used.nextClearBit(0);
+        while (start + blocks <= blocksPerSlab) {
+            int end = used.nextSetBit(start);
+            if (end < 0) {
+                end = blocksPerSlab;
+            }
+            if (end - start >= blocks) {
+                return start;
+            }
+            start = used.nextClearBit(end);
+        }
+        return -1;
+    }
+
+    private void removeSlot(int slot) throws IOException {
+        String journalKey = trackNames.get((int) (keys[slot] >>> 32)) + '\n' + (int) keys[slot];
+        unindex(slot);
+        if (pins[slot] > 0) {
+            flags[slot] |= FLAG_DOOMED;
+        } else {
+            freeSlot(slot);
+        }
+        journal.remove(journalKey);
+    }
+
+    private void unpin(int slot) {
+        if (--pins[slot] == 0 && (flags[slot] & FLAG_DOOMED) != 0) {
+            freeSlot(slot);
+        }
+    }
+
+    private int insert(long key, int slab, int block, int length, int checksum, byte flag) {
+        int slot = freeSlot;
+        freeSlot = older[slot];
+        keys[slot] = key;
+        slabOf[slot] = slab;
+        firstBlock[slot] = block;
+        lengths[slot] = length;
+        checksums[slot] = checksum;
+        pins[slot] = 0;
+        flags[slot] = flag;
+        usedBlocks[slab].set(block, block + blocksFor(length));
+        linkNewest(slot);
+        tablePut(key, slot);
+        entryCount++;
+        usedBytes += (long) blocksFor(length) * blockBytes;
+        return slot;
+    }
+
+    /**
+     * Drops the entry from the key table and the LRU list, the blocks stay allocated until {@link #freeSlot}
+     */
+    private void unindex(int slot) {
+        tableRemove(keys[slot]);
+        unlink(slot);
+        entryCount--;
+    }
+
+    private void freeSlot(int slot) {
+        int blocks = blocksFor(lengths[slot]);
+        usedBlocks[slabOf[slot]].clear(firstBlock[slot], firstBlock[slot] + blocks);
+        usedBytes -= (long) blocks * blockBytes;
+        flags[slot] = 0;
+        older[slot] = freeSlot;
+        freeSlot = slot;
+    }
+
+    private void touch(int slot) {
+        if (slot != newest) {
+            unlink(slot);
+            linkNewest(slot);
+        }
+    }
+
+    private void linkNewest(int slot) {
+        newer[slot] = NONE;
+        older[slot] = newest;
+        if (newest != NONE) {
+            newer[newest] = slot;
+        }
+        newest = slot;
+        if (oldest == NONE) {
+            oldest = slot;
+        }
+    }
+
+    private void unlink(int slot) {
+        if (newer[slot] != NONE) {
+            older[newer[slot]] = older[slot];
+        } else {
+            newest = older[slot];
+        }
+        if (older[slot] != NONE) {
+            newer[older[slot]] = newer[slot];
+        } else {
+            oldest = newer[slot];
+        }
+        newer[slot] = NONE;
+        older[slot] = NONE;
+    }
+
+    private int find(long key) {
+        int index = hash(key);
+        while (tableSlots[index] != 0) {
+            if (tableKeys[index] == key) {
+                return tableSlots[index] - 1;
+            }
+            index = (index + 1) & tableMask;
+        }
+        return NONE;
+    }
+
+    private void tablePut(long key, int slot) {
+        int index = hash(key);
+        while (tableSlots[index] != 0) {
+            index = (index + 1) & tableMask;
+        }
+        tableKeys[index] = key;
+        tableSlots[index] = slot + 1;
+    }
+
+    private void tableRemove(long key) {
+        int index = hash(key);
+        while (tableSlots[index] != 0 && tableKeys[index] != key) {
+            index = (index + 1) & tableMask;
+        }
+        if (tableSlots[index] == 0) {
+            return;
+        }
+        // Pull later entries of the probe run back so lookups never stop at the hole
+        int hole = index;
+        int next = (hole + 1) & tableMask;
+        while (tableSlots[next] != 0) {
+            int home = hash(tableKeys[next]);
+            if (((next - home) & tableMask) >= ((next - hole) & tableMask)) {
+                tableKeys[hole] = tableKeys[next];
+                tableSlots[hole] = tableSlots[next];
+                hole = next;
+            }
+            next = (next + 1) & tableMask;
+        }
+        tableSlots[hole] = 0;
+    }
+
+    private int hash(long key) {
+        long mixed = key * 0x9E3779B97F4A7C15L;
+        return (int) (mixed ^ (mixed >>> 32)) & tableMask;
+    }
+
+    private int trackId(String track) {
+        Integer id = trackIds.get(track);
+        if (id == null) {
+            id = trackNames.size();
+            trackIds.put(track, id);
+            trackNames.add(track);
+        }
+        return id;
+    }
+
+    private static String trackName(String contentId, String renditionId) {
+        if (contentId.indexOf('\n') >= 0 || renditionId.indexOf('\n') >= 0) {
+            throw new IllegalArgumentException("Ids must not contain line breaks");
+        }
+        return contentId + '\n' + renditionId;
+    }
+
+    private static long packKey(int track, int segmentNumber) {
+        return ((long) track << 32) | (segmentNumber & 0xFFFFFFFFL);
+    }
+
+    private int blocksFor(int length) {
+        return (int) ((length + (long) blockBytes - 1) / blockBytes);
+    }
+
+    private ByteBuffer view(int slot) {
+        return sliceOf(slabOf[slot], firstBlock[slot], lengths[slot]);
+    }
+
+    private ByteBuffer sliceOf(int slab, int block, int length) {
+        ByteBuffer view = slabs[slab].duplicate();
+        int start = block * blockBytes;
+        view.position(start).limit(start + length);
+        return view.slice();
+    }
+
+    private static int crc(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    /**
+     * Flushes written segment data to storage, e.g. when the app goes to the background.
+     * Not needed for process death, only for power loss, which the checksums detect anyway.
+     */
+    public synchronized void sync() {
+        for (MappedByteBuffer slab : slabs) {
+            if (slab != null) {
+                slab.force();
+            }
+        }
+    }
+
+    public synchronized int getEntryCount() {
+        return entryCount;
+    }
+
+    /**
+     * @return Bytes held by cached segments, rounded up to whole blocks
+     */
+    public synchronized long getSizeBytes() {
+        return usedBytes;
+    }
+
+    public long getMaxBytes() {
+        return (long) slabs.length * slabBytes;
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictedBytes() {
+        return evictedBytes;
+    }
+
+    public synchronized long getCorruptedCount() {
+        return corrupted;
+    }
+
+    /**
+     * @return Keys in LRU order, most recent first, formatted as content/rendition/segment
+     */
+    synchronized List<String> getKeysByRecency() {
+        List<String> result = new ArrayList<>(entryCount);
+        for (int slot = newest; slot != NONE; slot = older[slot]) {
+            result.add(trackNames.get((int) (keys[slot] >>> 32)).replace('\n', '/') + '/' + (int) keys[slot]);
+        }
+        return result;
+    }
+
+    /**
+     * @return Largest run of free blocks per slab, in bytes
+     */
+    synchronized long[] getLargestFreeRuns() {
+        long[] runs = new long[slabs.length];
+        for (int slab = 0; slab < slabs.length; slab++) {
+            int start = usedBlocks[slab].nextClearBit(0);
+            while (start < blocksPerSlab) {
+                int end = usedBlocks[slab].nextSetBit(start);
+                end = end < 0 ? blocksPerSlab : end;
+                runs[slab] = Math.max(runs[slab], (long) (end - start) * blockBytes);
+                start = usedBlocks[slab].nextClearBit(end);
+            }
+        }
+        return runs;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        journal.close();
+        for (int i = 0; i < slabFiles.length; i++) {
+            if (slabFiles[i] != null) {
+                slabFiles[i].close();
+                slabFiles[i] = null;
+            }
+        }
+        // Mappings are released by the garbage collector, there is no supported way to unmap
+        Arrays.fill(slabs, null);
+    }
+
+    public synchronized String report() {
+        long lookups = hits + misses;
+        return String.format(Locale.US, "SegmentCache[entries=%d, used=%.1f/%.1fMB, hitRate=%.1f%%,"
+                + " evicted=%d (%.1fMB), recovered=%d, corrupted=%d]", entryCount, usedBytes / 1048576.0, getMaxBytes() / 1048576.0,
+            lookups > 0 ? 100.0 * hits / lookups : 0, evictions, evictedBytes / 1048576.0, recovered, corrupted);
+    }
+}
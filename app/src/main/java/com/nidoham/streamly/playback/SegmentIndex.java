@@ -0,0 +1,34 @@
+package com.nidoham.streamly.playback;
+
+/**
+ * Ordered, gap-free segments of one rendition. Implementations may compute segments on demand
+ * rather than hold them, a two hour template-based stream has thousands.
+ */
+public interface SegmentIndex {
+
+    int getSegmentCount();
+
+    Segment getSegment(int index);
+
+    /**
+     * @param timeSeconds Presentation time
+     * @return Index of the segment containing the time, the last segment past the end,
+     * or -1 if there are no segments
+     */
+    default int findSegment(double timeSeconds) {
+        int low = 0;
+        int high = getSegmentCount() - 1;
+        if (high < 0) {
+            return -1;
+        }
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (getSegment(mid).getStartSeconds() <= timeSeconds) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        return low;
+    }
+}
@@ -0,0 +1,32 @@
+package com.nidoham.streamly.playback;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Segment index backed by explicit segments, as listed by an HLS media playlist or a DASH SegmentList.
+ */
+public final class SegmentList implements SegmentIndex {
+
+    private final List<Segment> segments;
+
+    public SegmentList(List<Segment> segments) {
+        this.segments = Collections.unmodifiableList(new ArrayList<>(segments));
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    @Override
+    public Segment getSegment(int index) {
+        return segments.get(index);
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentList[" + segments.size() + " segments]";
+    }
+}
@@ -0,0 +1,80 @@
+package com.nidoham.streamly.playback;
+
+import com.nidoham.streamly.net.HttpRequest;
+import com.nidoham.streamly.net.HttpResponse;
+import com.nidoham.streamly.net.HttpTransport;
+import com.nidoham.streamly.net.RequestPriority;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Loads media segments through the {@link SegmentCache}, going to the network only on a miss,
+ * so replaying or seeking back into already watched content costs no traffic.
+ * Blocking; call from a loader thread.
+ */
+public final class SegmentLoader {
+
+    private final HttpTransport transport;
+    private final SegmentCache cache;
+
+    public SegmentLoader(HttpTransport transport, SegmentCache cache) {
+        this.transport = transport;
+        this.cache = cache;
+    }
+
+    /**
+     * @param contentId Stable id of the video, shared by all of its renditions
+     * @param segmentNumber Position of the segment in the rendition's {@link SegmentIndex}
+     * @return A lease on the segment bytes, close it once they are consumed
+     */
+    public SegmentCache.Lease load(String contentId, Rendition rendition, int segmentNumber, RequestPriority priority)
+            throws IOException {
+        SegmentCache.Lease cached = cache.acquire(contentId, rendition.getId(), segmentNumber);
+        if (cached != null) {
+            return cached;
+        }
+        Segment segment = rendition.getSegments().getSegment(segmentNumber);
+        ByteBuffer data = fetch(segment, priority);
+        if (cache.put(contentId, rendition.getId(), segmentNumber, data)) {
+            SegmentCache.Lease stored = cache.acquire(contentId, rendition.getId(), segmentNumber);
+            if (stored != null) {
+                return stored;
+            }
+        }
+        // Larger than a slab, or everything is leased
+        return cache.uncached(data);
+    }
+
+    /**
+     * @return True if the segment would be served without a request
+     */
+    public boolean isCached(String contentId, Rendition rendition, int segmentNumber) {
+        return cache.contains(contentId, rendition.getId(), segmentNumber);
+    }
+
+    private ByteBuffer fetch(Segment segment, RequestPriority priority) throws IOException {
+        // Segments never change under a URL, revalidating them would only add a round trip
+        HttpRequest request = HttpRequest.get(segment.getUrl()).withRevalidation(false).withPriority(priority);
+        if (segment.hasRange()) {
+            request = request.withHeader("Range", segment.getRangeHeader());
+        }
+        HttpResponse response = transport.execute(request);
+        if (!response.isSuccessful()) {
+            throw new IOException("HTTP " + response.getCode() + " for " + segment);
+        }
+        byte[] body = response.getBody();
+        if (segment.hasRange() && response.getCode() == 200) {
+            // The server ignored the range and sent the whole resource
+            long end = segment.getRangeOffset() + segment.getRangeLength();
+            if (end > body.length) {
+                throw new IOException("Range beyond resource end for " + segment);
+            }
+            return ByteBuffer.wrap(body, (int) segment.getRangeOffset(), (int) segment.getRangeLength()).slice();
+        }
+        return ByteBuffer.wrap(body);
+    }
+
+    public SegmentCache getCache() {
+        return cache;
+    }
+}
@@ -0,0 +1,240 @@
+package com.nidoham.streamly.playback;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Decides which segment to fetch next and at what quality, keeping the forward buffer near a target.
+ * Clock and I/O free: the caller reports the playhead and buffer, runs the returned request and
+ * reports its outcome, so the same logic drives the player and the trace simulator.
+ * One request is outstanding at a time. Not thread safe.
+ */
+public final class SegmentScheduler {
+
+    /**
+     * A segment to fetch
+     */
+    public static final class Request {
+        private final int renditionIndex;
+        private final Rendition rendition;
+        private final Segment segment;
+        private final long expectedBytes;
+
+        Request(int renditionIndex, Rendition rendition, Segment segment) {
+            this.renditionIndex = renditionIndex;
+            this.rendition = rendition;
+            this.segment = segment;
+            this.expectedBytes = (long) (rendition.getBandwidthBps() * segment.getDurationSeconds() / 8);
+        }
+
+        public int getRenditionIndex() {
+            return renditionIndex;
+        }
+
+        public Rendition getRendition() {
+            return rendition;
+        }
+
+        public Segment getSegment() {
+            return segment;
+        }
+
+        /**
+         * @return Size implied by the declared bitrate, the real size is known once loaded
+         */
+        public long getExpectedBytes() {
+            return expectedBytes;
+        }
+
+        @Override
+        public String toString() {
+            return rendition + " " + segment;
+        }
+    }
+
+    // Half a frame at 60 fps, absorbs rounding in segment start times
+    private static final double TIME_EPSILON = 0.008;
+
+    private final List<Rendition> renditions;
+    private final long[] bitrates;
+    private final BandwidthEstimator estimator;
+    private final QualityPolicy policy;
+    private final double targetBufferSeconds;
+    private final double startBufferSeconds;
+    private final double resumeBufferSeconds;
+
+    private double nextStartSeconds = 0;
+    private int currentRendition = -1;
+    private Request pending;
+    private int switches = 0;
+    private int abandoned = 0;
+
+    /**
+     * @param manifest Manifest whose renditions all have segments
+     * @param targetBufferSeconds Forward buffer kept; fetching pauses once it is reached
+     * @param startBufferSeconds Buffer needed before playback first starts, small for a quick start
+     * @param resumeBufferSeconds Buffer needed to resume after a stall, larger so a stall is not followed by another
+     */
+    public SegmentScheduler(Manifest manifest, BandwidthEstimator estimator, QualityPolicy policy,
+                            double targetBufferSeconds, double startBufferSeconds, double resumeBufferSeconds) {
+        this.renditions = manifest.getRenditions();
+        this.bitrates = manifest.getBitrates();
+        this.estimator = estimator;
+        this.policy = policy;
+        this.targetBufferSeconds = targetBufferSeconds;
+        this.startBufferSeconds = Math.max(startBufferSeconds, manifest.getMinBufferSeconds() > 0
+            ? Math.min(manifest.getMinBufferSeconds(), resumeBufferSeconds) : 0);
+        this.resumeBufferSeconds = resumeBufferSeconds;
+        for (Rendition rendition : renditions) {
+            if (rendition.getSegments() == null) {
+                throw new IllegalArgumentException("Rendition without segments: " + rendition);
+            }
+        }
+    }
+
+    /**
+     * @param playheadSeconds Current playback position
+     * @param bufferedUntilSeconds End of the contiguous buffered range from the playhead
+     * @return The next segment to fetch, or null while the buffer is full, a request is pending or the end is reached
+     */
+    public Request nextRequest(double playheadSeconds, double bufferedUntilSeconds) {
+        if (pending != null || bufferedUntilSeconds - playheadSeconds >= targetBufferSeconds) {
+            return null;
+        }
+        double bufferSeconds = Math.max(0, bufferedUntilSeconds - playheadSeconds);
+        long estimate = estimator.getEstimateBps();
+        int index = currentRendition < 0
+            ? policy.selectInitial(bitrates, estimate)
+            : policy.select(bitrates, currentRendition, bufferSeconds, estimate);
+        Segment segment = segmentAt(index, nextStartSeconds);
+        if (segment == null) {
+            return null;
+        }
+        pending = new Request(index, renditions.get(index), segment);
+        return pending;
+    }
+
+    private Segment segmentAt(int renditionIndex, double timeSeconds) {
+        SegmentIndex segments = renditions.get(renditionIndex).getSegments();
+        int position = segments.findSegment(timeSeconds + TIME_EPSILON);
+        if (position < 0) {
+            return null;
+        }
+        Segment segment = segments.getSegment(position);
+        return segment.getEndSeconds() > timeSeconds + TIME_EPSILON ? segment : null;
+    }
+
+    /**
+     * @param bytes Bytes actually received
+     * @param durationNanos Time from request to last byte
+     */
+    public void onLoaded(Request request, long bytes, long durationNanos) {
+        checkPending(request);
+        estimator.addSample(bytes, durationNanos);
+        if (currentRendition >= 0 && request.renditionIndex != currentRendition) {
+            switches++;
+        }
+        currentRendition = request.renditionIndex;
+        nextStartSeconds = request.segment.getEndSeconds();
+        pending = null;
+    }
+
+    /**
+     * Clears a failed or abandoned request, the same time span is requested again
+     * @param bytes Bytes received before the failure, still useful as a throughput sample
+     */
+    public void onFailed(Request request, long bytes, long durationNanos) {
+        checkPending(request);
+        estimator.addSample(bytes, durationNanos);
+        pending = null;
+    }
+
+    /**
+     * Checks an in-flight download against the buffer it has to outrun. A download that would finish
+     * after the buffer runs dry is worth abandoning when the lowest rendition would get the same span
+     * in sooner than the rest of this one, trading the bytes spent for a shorter or avoided stall.
+     * @param loadedBytes Bytes received so far
+     * @param elapsedNanos Time since the request was sent
+     * @param bufferSeconds Current forward buffer
+     * @return True if the caller should cancel and report {@link #onFailed}
+     */
+    public boolean shouldAbandon(Request request, long loadedBytes, long elapsedNanos, double bufferSeconds) {
+        if (request.renditionIndex == 0 || elapsedNanos <= 0 || loadedBytes >= request.expectedBytes) {
+            return false;
+        }
+        double elapsedSeconds = elapsedNanos / 1e9;
+        double observedBps = loadedBytes > 0 ? loadedBytes * 8 / elapsedSeconds : 0;
+        // Too early to judge from the transfer itself, lean on the estimate
+        double bps = loadedBytes < request.expectedBytes / 8 ? Math.max(observedBps, estimator.getEstimateBps() / 2.0)
+            : observedBps;
+        if (bps <= 0) {
+            return elapsedSeconds > bufferSeconds;
+        }
+        double remainingSeconds = (request.expectedBytes - loadedBytes) * 8 / bps;
+        if (remainingSeconds <= bufferSeconds) {
+            return false;
+        }
+        Segment lowest = segmentAt(0, request.segment.getStartSeconds());
+        double lowestSeconds = lowest != null ? bitrates[0] * lowest.getDurationSeconds() / bps : 0;
+        return lowestSeconds < remainingSeconds;
+    }
+
+    /**
+     * Records an abandonment and lowers the quality the retry will use
+     */
+    public void onAbandoned(Request request, long bytes, long durationNanos) {
+        onFailed(request, bytes, durationNanos);
+        abandoned++;
+        currentRendition = Math.max(0, request.renditionIndex - 1);
+    }
+
+    /**
+     * @param rebuffering True after a stall, false before first playback
+     * @return True once enough is buffered to start or resume playback
+     */
+    public boolean canPlay(double bufferSeconds, boolean rebuffering) {
+        double needed = rebuffering ? resumeBufferSeconds : startBufferSeconds;
+        return bufferSeconds >= needed || isComplete();
+    }
+
+    /**
+     * Restarts fetching from a new position, keeping the rendition and throughput history
+     */
+    public void seekTo(double positionSeconds) {
+        pending = null;
+        SegmentIndex segments = renditions.get(Math.max(0, currentRendition)).getSegments();
+        int position = segments.findSegment(positionSeconds + TIME_EPSILON);
+        nextStartSeconds = position >= 0 ? segments.getSegment(position).getStartSeconds() : positionSeconds;
+    }
+
+    /**
+     * @return True once the last segment has been loaded
+     */
+    public boolean isComplete() {
+        return pending == null && segmentAt(Math.max(0, currentRendition), nextStartSeconds) == null;
+    }
+
+    public int getCurrentRendition() {
+        return currentRendition;
+    }
+
+    public int getSwitchCount() {
+        return switches;
+    }
+
+    public int getAbandonCount() {
+        return abandoned;
+    }
+
+    private void checkPending(Request request) {
+        if (request != pending) {
+            throw new IllegalStateException("Not the pending request: " + request);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "SegmentScheduler[next=%.1fs, rendition=%d, switches=%d, abandoned=%d, %s]",
+            nextStartSeconds, currentRendition, switches, abandoned, estimator);
+    }
+}
@@ -0,0 +1,130 @@
+package com.nidoham.streamly.playback;
+
+import java.net.URI;
+import java.util.Locale;
+
+/**
+ * DASH SegmentTemplate index. Segment URLs are expanded from the media template when asked for,
+ * either from a fixed duration or from an expanded SegmentTimeline.
+ */
+public final class SegmentTemplate implements SegmentIndex {
+
+    private final URI base;
+    private final String mediaTemplate;
+    private final String representationId;
+    private final long bandwidth;
+    private final long timescale;
+    private final long startNumber;
+    // Fixed duration form
+    private final long duration;
+    private final int count;
+    // Timeline form, null with a fixed duration
+    private final long[] times;
+    private final long[] durations;
+    private final long presentationTimeOffset;
+    // Period length in timescale units, caps the last fixed-duration segment
+    private final long periodDuration;
+
+    private SegmentTemplate(URI base, String mediaTemplate, String representationId, long bandwidth, long timescale,
+                            long startNumber, long duration, int count, long[] times, long[] durations,
+                            long presentationTimeOffset, long periodDuration) {
+        this.base = base;
+        this.mediaTemplate = mediaTemplate;
+        this.representationId = representationId;
+        this.bandwidth = bandwidth;
+        this.timescale = timescale;
+        this.startNumber = startNumber;
+        this.duration = duration;
+        this.count = count;
+        this.times = times;
+        this.durations = durations;
+        this.presentationTimeOffset = presentationTimeOffset;
+        this.periodDuration = periodDuration;
+    }
+
+    /**
+     * Template with segments of equal duration, the last one possibly cut short by the period end
+     */
+    static SegmentTemplate withDuration(URI base, String mediaTemplate, String representationId, long bandwidth,
+                                        long timescale, long startNumber, long duration, double periodSeconds) {
+        int count = (int) Math.ceil(periodSeconds * timescale / duration - 1e-9);
+        return new SegmentTemplate(base, mediaTemplate, representationId, bandwidth, timescale, startNumber,
+            duration, Math.max(0, count), null, null, 0, Math.round(periodSeconds * timescale));
+    }
+
+    /**
+     * Template with an explicit timeline, times in timescale units
+     */
+    static SegmentTemplate withTimeline(URI base, String mediaTemplate, String representationId, long bandwidth,
+                                        long timescale, long startNumber, long[] times, long[] durations,
+                                        long presentationTimeOffset) {
+        return new SegmentTemplate(base, mediaTemplate, representationId, bandwidth, timescale, startNumber,
+            0, times.length, times, durations, presentationTimeOffset, Long.MAX_VALUE);
+    }
+
+    @Override
+    public int getSegmentCount() {
+        return count;
+    }
+
+    @Override
+    public Segment getSegment(int index) {
+        if (index < 0 || index >= count) {
+            throw new IndexOutOfBoundsException("Segment " + index + " of " + count);
+        }
+        long time = times != null ? times[index] : index * duration;
+        long length = durations != null ? durations[index] : Math.min(duration, periodDuration - time);
+        String url = base.resolve(expand(mediaTemplate, representationId, bandwidth, startNumber + index, time)).toString();
+        return new Segment(url, 0, -1, (double) (time - presentationTimeOffset) / timescale, (double) length / timescale);
+    }
+
+    /**
+     * Substitutes $RepresentationID$, $Number$, $Bandwidth$ and $Time$, with optional %0Nd widths, and $$
+     */
+    static String expand(String template, String representationId, long bandwidth, long number, long time) {
+        StringBuilder out = new StringBuilder(template.length() + 16);
+        int pos = 0;
+        while (pos < template.length()) {
+            int start = template.indexOf('$', pos);
+            int end = start >= 0 ? template.indexOf('$', start + 1) : -1;
+            if (start < 0 || end < 0) {
+                out.append(template, pos, template.length());
+                break;
+            }
+            out.append(template, pos, start);
+            String identifier = template.substring(start + 1, end);
+            pos = end + 1;
+            if (identifier.isEmpty()) {
+                out.append('$');
+                continue;
+            }
+            int formatStart = identifier.indexOf('%');
+            String name = formatStart >= 0 ? identifier.substring(0, formatStart) : identifier;
+            String format = formatStart >= 0 ? identifier.substring(formatStart) : "%d";
+            switch (name) {
+                case "RepresentationID":
+                    out.append(representationId);
+                    break;
+                case "Number":
+                    out.append(String.format(Locale.US, format, number));
+                    break;
+                case "Bandwidth":
+                    out.append(String.format(Locale.US, format, bandwidth));
+                    break;
+                case "Time":
+                    out.append(String.format(Locale.US, format, time));
+                    break;
+                default:
+                    // Unknown identifiers are left as written
+                    out.append('$').append(identifier).append('$');
+                    break;
+            }
+        }
+        return out.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "SegmentTemplate[" + mediaTemplate + ", " + count + " segments]";
+    }
+}
@@ -0,0 +1,38 @@
+package com.nidoham.streamly.playback;
+
+/**
+ * Picks the highest bitrate that fits a fraction of the estimated throughput, ignoring the buffer.
+ * Simple and quick to react, but it oscillates with noisy estimates; kept as the baseline the
+ * buffer-based policy is simulated against.
+ */
+public final class ThroughputQualityPolicy implements QualityPolicy {
+
+    private final double safety;
+
+    /**
+     * @param safety Fraction of the estimate a bitrate may use, e.g. 0.75
+     */
+    public ThroughputQualityPolicy(double safety) {
+        this.safety = safety;
+    }
+
+    @Override
+    public int selectInitial(long[] bitrates, long estimateBps) {
+        return highestFitting(bitrates, estimateBps * safety);
+    }
+
+    @Override
+    public int select(long[] bitrates, int current, double bufferSeconds, long estimateBps) {
+        return highestFitting(bitrates, estimateBps * safety);
+    }
+
+    static int highestFitting(long[] bitrates, double budgetBps) {
+        int index = 0;
+        for (int i = 1; i < bitrates.length; i++) {
+            if (bitrates[i] <= budgetBps) {
+                index = i;
+            }
+        }
+        return index;
+    }
+}
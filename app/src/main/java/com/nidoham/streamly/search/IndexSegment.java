@@ -0,0 +1,405 @@
+package com.nidoham.streamly.search;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.CRC32;
+
+/**
+ * One immutable segment of the library index, read through a read-only memory mapping so a query
+ * touches only the pages of the terms it looks up. Big-endian layout:
+ * <ul>
+ * <li>Header: magic, version, document count, term count, total document length (long), offsets of the
+ * document table and the term table.</li>
+ * <li>Document table, 20 bytes per document: offset of its UTF-8 id followed by its title, id bytes,
+ * title bytes, weighted length, content hash.</li>
+ * <li>Term table, 16 bytes per term, sorted by the UTF-8 bytes of the term: offset and length of the
+ * term, document frequency, offset of its postings. A last entry holds only the end of the postings.</li>
+ * <li>Strings: ids, titles and terms.</li>
+ * <li>Postings: for every term, (document - previous document, weighted frequency) as varints, documents
+ * ascending, so most entries take two bytes.</li>
+ * <li>Trailer: CRC32 of everything before it, checked when the segment is opened.</li>
+ * </ul>
+ */
+final class IndexSegment {
+
+    static final class PostingsCursor {
+        private final ByteBuffer data;
+        private int position;
+        private final int end;
+        int doc = 0;
+        int freq;
+
+        PostingsCursor(ByteBuffer data, int position, int end) {
+            this.data = data;
+            this.position = position;
+            this.end = end;
+        }
+
+        /**
+         * Moves to the next posting
+         * @return False once the postings are exhausted
+         */
+        boolean next() {
+            if (position >= end) {
+                return false;
+            }
+            doc += readVarInt();
+            freq = readVarInt();
+            return true;
+        }
+
+        private int readVarInt() {
+            int value = 0;
+            int shift = 0;
+            int b;
+            do {
+                b = data.get(position++);
+                value |= (b & 0x7F) << shift;
+                shift += 7;
+            } while ((b & 0x80) != 0);
+            return value;
+        }
+    }
+
+    /**
+     * Writes a segment in one pass. Every document is added first, numbered in the order added; then
+     * the terms in UTF-8 byte order, each followed by its postings in document order.
+     */
+    static final class Writer {
+        private byte[] strings = new byte[4096];
+        private int stringsLength = 0;
+        // Per document: strings offset, id bytes, title bytes, length, content hash
+        private int[] docs = new int[5 * 64];
+        private int docCount = 0;
+        private long totalLength = 0;
+        // Per term: strings offset, term bytes, document frequency, postings offset
+        private int[] terms = new int[4 * 256];
+        private int termCount = 0;
+        private byte[] postings = new byte[4096];
+        private int postingsLength = 0;
+        private boolean termOpen = false;
+        private int termOffset;
+        private int termLength;
+        private int termPostingsStart;
+        private int termDocFreq;
+        private int lastDoc;
+
+        /**
+         * @return The document's number in the segment
+         */
+        int addDocument(String id, String title, int length, int contentHash) {
+            if (termOpen || termCount > 0) {
+                throw new IllegalStateException("Documents must be added before terms");
+            }
+            byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+            byte[] titleBytes = (title != null ? title : "").getBytes(StandardCharsets.UTF_8);
+            if (docs.length < (docCount + 1) * 5) {
+                docs = Arrays.copyOf(docs, docs.length * 2);
+            }
+            int entry = docCount * 5;
+            docs[entry] = stringsLength;
+            docs[entry + 1] = idBytes.length;
+            docs[entry + 2] = titleBytes.length;
+            docs[entry + 3] = length;
+            docs[entry + 4] = contentHash;
+            appendString(idBytes);
+            appendString(titleBytes);
+            totalLength += length;
+            return docCount++;
+        }
+
+        void startTerm(byte[] term) {
+            finishTerm();
+            termOpen = true;
+            termOffset = stringsLength;
+            termLength = term.length;
+            termPostingsStart = postingsLength;
+            termDocFreq = 0;
+            lastDoc = 0;
+            appendString(term);
+        }
+
+        void addPosting(int doc, int freq) {
+            if (postings.length < postingsLength + 10) {
+                postings = Arrays.copyOf(postings, postings.length * 2);
+            }
+            writeVarInt(doc - lastDoc);
+            writeVarInt(freq);
+            lastDoc = doc;
+            termDocFreq++;
+        }
+
+        int getDocCount() {
+            return docCount;
+        }
+
+        /**
+         * Writes and forces the segment. The file is complete on disk when this returns.
+         */
+        void finish(File file) throws IOException {
+            finishTerm();
+            int docTable = HEADER_BYTES;
+            int termTable = docTable + docCount * DOC_ENTRY_BYTES;
+            int stringsStart = termTable + (termCount + 1) * TERM_ENTRY_BYTES;
+            int postingsStart = stringsStart + stringsLength;
+            int size = postingsStart + postingsLength + CHECKSUM_BYTES;
+            ByteBuffer out = ByteBuffer.allocate(size);
+            out.putInt(MAGIC).putInt(VERSION).putInt(docCount).putInt(termCount).putLong(totalLength)
+                .putInt(docTable).putInt(termTable);
+            for (int d = 0; d < docCount; d++) {
+                int entry = d * 5;
+                out.putInt(stringsStart + docs[entry]).putInt(docs[entry + 1]).putInt(docs[entry + 2])
+                    .putInt(docs[entry + 3]).putInt(docs[entry + 4]);
+            }
+            for (int t = 0; t < termCount; t++) {
+                int entry = t * 4;
+                out.putInt(stringsStart + terms[entry]).putInt(terms[entry + 1]).putInt(terms[entry + 2])
+                    .putInt(postingsStart + terms[entry + 3]);
+            }
+            out.putInt(0).putInt(0).putInt(0).putInt(postingsStart + postingsLength);
+            out.put(strings, 0, stringsLength);
+            out.put(postings, 0, postingsLength);
+            CRC32 crc = new CRC32();
+            crc.update(out.array(), 0, out.position());
+            out.putInt((int) crc.getValue());
+            out.flip();
+            try (RandomAccessFile target = new RandomAccessFile(file, "rw")) {
+                FileChannel channel = target.getChannel();
+                channel.truncate(0);
+                while (out.hasRemaining()) {
+                    channel.write(out);
+                }
+                channel.force(false);
+            }
+        }
+
+        /**
+         * Keeps the current term, or drops it again if none of its postings survived, e.g. in a merge
+         * where every document containing it was deleted
+         */
+        private void finishTerm() {
+            if (!termOpen) {
+                return;
+            }
+            termOpen = false;
+            if (termDocFreq == 0) {
+                stringsLength = termOffset;
+                return;
+            }
+            if (terms.length < (termCount + 1) * 4) {
+                terms = Arrays.copyOf(terms, terms.length * 2);
+            }
+            int entry = termCount * 4;
+            terms[entry] = termOffset;
+            terms[entry + 1] = termLength;
+            terms[entry + 2] = termDocFreq;
+            terms[entry + 3] = termPostingsStart;
+            termCount++;
+        }
+
+        private void appendString(byte[] bytes) {
+            if (strings.length < stringsLength + bytes.length) {
+                strings = Arrays.copyOf(strings, Math.max(strings.length * 2, stringsLength + bytes.length));
+            }
+            System.arraycopy(bytes, 0, strings, stringsLength, bytes.length);
+            stringsLength += bytes.length;
+        }
+
+        private void writeVarInt(int value) {
+            while ((value & ~0x7F) != 0) {
+                postings[postingsLength++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            postings[postingsLength++] = (byte) value;
+        }
+    }
+
+    static final int MAGIC = 0x4C495831;
+    static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    private static final int DOC_ENTRY_BYTES = 20;
+    private static final int TERM_ENTRY_BYTES = 16;
+    private static final int CHECKSUM_BYTES = 4;
+
+    private final long generation;
+    private final File file;
+    private final ByteBuffer data;
+    private final int docCount;
+    private final int termCount;
+    private final long totalLength;
+    private final int docTable;
+    private final int termTable;
+
+    private IndexSegment(long generation, File file, ByteBuffer data) throws IOException {
+        this.generation = generation;
+        this.file = file;
+        this.data = data;
+        if (data.capacity() < HEADER_BYTES + TERM_ENTRY_BYTES + CHECKSUM_BYTES || data.getInt(0) != MAGIC
+                || data.getInt(4) != VERSION) {
+            throw new IOException("Not an index segment: " + file);
+        }
+        docCount = data.getInt(8);
+        termCount = data.getInt(12);
+        totalLength = data.getLong(16);
+        docTable = data.getInt(24);
+        termTable = data.getInt(28);
+        long tablesEnd = termTable + (long) (termCount + 1) * TERM_ENTRY_BYTES;
+        if (docCount < 0 || termCount < 0 || docTable != HEADER_BYTES
+                || termTable != docTable + (long) docCount * DOC_ENTRY_BYTES || tablesEnd > data.capacity()) {
+            throw new IOException("Corrupt segment header: " + file);
+        }
+    }
+
+    /**
+     * Maps a segment and verifies its checksum, which reads it once
+     */
+    static IndexSegment open(File file, long generation) throws IOException {
+        ByteBuffer data;
+        try (RandomAccessFile source = new RandomAccessFile(file, "r")) {
+            long size = source.length();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException("Segment too large: " + file);
+            }
+            data = source.getChannel().map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        int bodyLength = data.capacity() - CHECKSUM_BYTES;
+        if (bodyLength < 0) {
+            throw new IOException("Truncated segment: " + file);
+        }
+        CRC32 crc = new CRC32();
+        ByteBuffer body = data.duplicate();
+        body.limit(bodyLength);
+        crc.update(body);
+        if ((int) crc.getValue() != data.getInt(bodyLength)) {
+            throw new IOException("Checksum mismatch in " + file);
+        }
+        return new IndexSegment(generation, file, data);
+    }
+
+    long getGeneration() {
+        return generation;
+    }
+
+    File getFile() {
+        return file;
+    }
+
+    int getDocCount() {
+        return docCount;
+    }
+
+    int getTermCount() {
+        return termCount;
+    }
+
+    long getTotalLength() {
+        return totalLength;
+    }
+
+    long getSizeBytes() {
+        return data.capacity();
+    }
+
+    String getId(int doc) {
+        int entry = docTable + doc * DOC_ENTRY_BYTES;
+        return readString(data.getInt(entry), data.getInt(entry + 4));
+    }
+
+    String getTitle(int doc) {
+        int entry = docTable + doc * DOC_ENTRY_BYTES;
+        return readString(data.getInt(entry) + data.getInt(entry + 4), data.getInt(entry + 8));
+    }
+
+    int getLength(int doc) {
+        return data.getInt(docTable + doc * DOC_ENTRY_BYTES + 12);
+    }
+
+    int getContentHash(int doc) {
+        return data.getInt(docTable + doc * DOC_ENTRY_BYTES + 16);
+    }
+
+    /**
+     * @return The term's number, or -1 if no document in this segment contains it
+     */
+    int findTerm(byte[] term) {
+        int low = 0;
+        int high = termCount - 1;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int order = compareTerm(middle, term);
+            if (order < 0) {
+                low = middle + 1;
+            } else if (order > 0) {
+                high = middle - 1;
+            } else {
+                return middle;
+            }
+        }
+        return -1;
+    }
+
+    int getDocFreq(int term) {
+        return data.getInt(termTable + term * TERM_ENTRY_BYTES + 8);
+    }
+
+    byte[] getTerm(int term) {
+        int entry = termTable + term * TERM_ENTRY_BYTES;
+        byte[] bytes = new byte[data.getInt(entry + 4)];
+        ByteBuffer source = data.duplicate();
+        source.position(data.getInt(entry));
+        source.get(bytes);
+        return bytes;
+    }
+
+    PostingsCursor postings(int term) {
+        int entry = termTable + term * TERM_ENTRY_BYTES;
+        return new PostingsCursor(data, data.getInt(entry + 12), data.getInt(entry + TERM_ENTRY_BYTES + 12));
+    }
+
+    /**
+     * Compares a term of this segment with UTF-8 bytes, unsigned, as terms are sorted
+     */
+    int compareTerm(int term, byte[] key) {
+        int entry = termTable + term * TERM_ENTRY_BYTES;
+        int offset = data.getInt(entry);
+        int length = data.getInt(entry + 4);
+        int common = Math.min(length, key.length);
+        for (int i = 0; i < common; i++) {
+            int order = (data.get(offset + i) & 0xFF) - (key[i] & 0xFF);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return length - key.length;
+    }
+
+    static int compareBytes(byte[] a, byte[] b) {
+        int common = Math.min(a.length, b.length);
+        for (int i = 0; i < common; i++) {
+            int order = (a[i] & 0xFF) - (b[i] & 0xFF);
+            if (order != 0) {
+                return order;
+            }
+        }
+        return a.length - b.length;
+    }
+
+    private String readString(int offset, int length) {
+        byte[] bytes = new byte[length];
+        ByteBuffer source = data.duplicate();
+        source.position(offset);
+        source.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return "IndexSegment[" + file.getName() + ", " + docCount + " docs, " + termCount + " terms, "
+            + data.capacity() / 1024 + " KB]";
+    }
+}
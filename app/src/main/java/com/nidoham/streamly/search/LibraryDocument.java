@@ -0,0 +1,55 @@
+package com.nidoham.streamly.search;
+
+import java.util.Objects;
+
+/**
+ * Text of one library item as the full-text index sees it. Fields that are not known are null.
+ */
+public final class LibraryDocument {
+
+    private final String id;
+    private final String title;
+    private final String channelName;
+    private final String description;
+    private final String captions;
+
+    public LibraryDocument(String id, String title, String channelName, String description, String captions) {
+        this.id = id;
+        this.title = title;
+        this.channelName = channelName;
+        this.description = description;
+        this.captions = captions;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    public String getChannelName() {
+        return channelName;
+    }
+
+    public String getDescription() {
+        return description;
+    }
+
+    public String getCaptions() {
+        return captions;
+    }
+
+    /**
+     * Changes whenever any indexed text changes, so an unchanged item is not indexed again
+     */
+    int contentHash() {
+        return Objects.hash(title, channelName, description, captions);
+    }
+
+    @Override
+    public String toString() {
+        return "LibraryDocument[" + id + ", " + title + "]";
+    }
+}
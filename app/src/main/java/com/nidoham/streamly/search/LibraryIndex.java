@@ -0,0 +1,866 @@
+package com.nidoham.streamly.search;
+
+import com.nidoham.streamly.task.SerialExecutor;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Offline full-text search over library items, ranked with BM25.
+ * Documents live in immutable, memory-mapped {@link IndexSegment}s. Changes collect for a short delay
+ * and are written as one small segment; replacing or removing a document only marks its old copy
+ * deleted. Once enough segments of similar size exist they are merged into one, and a segment that is
+ * mostly deleted documents is rewritten, so the segment count stays logarithmic in the library size.
+ * Merges stream the sorted term lists and postings of their inputs and never tokenize again.
+ * A manifest replaced by rename lists the live segments and their deletions; files of merged segments
+ * are removed only after a manifest without them is on disk, so a crash leaves either state.
+ * All writes run one at a time on a maintenance executor and queries read a published snapshot without locking.
+ * The index is derived from the library, so a damaged segment is dropped and {@link #sync} adds its
+ * documents back.
+ */
+public final class LibraryIndex implements Closeable {
+
+    public interface DocumentSource {
+        /**
+         * Runs on the index executor
+         * @return Every item that should be searchable
+         */
+        Collection<LibraryDocument> load() throws IOException;
+    }
+
+    private static final class Snapshot {
+        final IndexSegment[] segments;
+        final BitSet[] deleted;
+        final int docCount;
+        final int liveDocs;
+        final long totalLength;
+
+        Snapshot(IndexSegment[] segments, BitSet[] deleted) {
+            this.segments = segments;
+            this.deleted = deleted;
+            int docs = 0;
+            int live = 0;
+            long length = 0;
+            for (int s = 0; s < segments.length; s++) {
+                docs += segments[s].getDocCount();
+                live += segments[s].getDocCount() - deleted[s].cardinality();
+                length += segments[s].getTotalLength();
+            }
+            docCount = docs;
+            liveDocs = live;
+            totalLength = length;
+        }
+    }
+
+    private static final class Location {
+        final IndexSegment segment;
+        final int doc;
+        final int contentHash;
+
+        Location(IndexSegment segment, int doc, int contentHash) {
+            this.segment = segment;
+            this.doc = doc;
+            this.contentHash = contentHash;
+        }
+    }
+
+    /**
+     * Segment list being changed on the index executor, published only once its manifest is written
+     */
+    private static final class Changes {
+        final List<IndexSegment> segments = new ArrayList<>();
+        final List<BitSet> deleted = new ArrayList<>();
+        final Map<String, Location> moved = new HashMap<>();
+        final Set<String> removed = new HashSet<>();
+        final List<IndexSegment> obsolete = new ArrayList<>();
+
+        Changes(Snapshot current) {
+            segments.addAll(Arrays.asList(current.segments));
+            for (BitSet bits : current.deleted) {
+                deleted.add((BitSet) bits.clone());
+            }
+        }
+
+        void delete(Location location) {
+            deleted.get(segments.indexOf(location.segment)).set(location.doc);
+        }
+
+        int liveDocs(int segment) {
+            return segments.get(segment).getDocCount() - deleted.get(segment).cardinality();
+        }
+    }
+
+    private static final class TermPostings {
+        final byte[] term;
+        int[] data = new int[8];
+        int size = 0;
+
+        TermPostings(String term) {
+            this.term = term.getBytes(StandardCharsets.UTF_8);
+        }
+
+        void add(int doc, int freq) {
+            if (size + 2 > data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            data[size++] = doc;
+            data[size++] = freq;
+        }
+    }
+
+    /**
+     * The best hits so far in a min-heap on score, ties going to the earlier document
+     */
+    private static final class TopHits {
+        final float[] scores;
+        final int[] segments;
+        final int[] docs;
+        int size = 0;
+
+        TopHits(int limit) {
+            scores = new float[limit];
+            segments = new int[limit];
+            docs = new int[limit];
+        }
+
+        void offer(float score, int segment, int doc) {
+            if (size < scores.length) {
+                scores[size] = score;
+                segments[size] = segment;
+                docs[size] = doc;
+                siftUp(size++);
+            } else if (score > scores[0]) {
+                scores[0] = score;
+                segments[0] = segment;
+                docs[0] = doc;
+                siftDown(0);
+            }
+        }
+
+        private boolean worse(int a, int b) {
+            if (scores[a] != scores[b]) {
+                return scores[a] < scores[b];
+            }
+            return segments[a] != segments[b] ? segments[a] > segments[b] : docs[a] > docs[b];
+        }
+
+        private void siftUp(int i) {
+            while (i > 0) {
+                int parent = (i - 1) / 2;
+                if (!worse(i, parent)) {
+                    return;
+                }
+                swap(i, parent);
+                i = parent;
+            }
+        }
+
+        private void siftDown(int i) {
+            while (true) {
+                int left = 2 * i + 1;
+                int smallest = i;
+                if (left < size && worse(left, smallest)) {
+                    smallest = left;
+                }
+                if (left + 1 < size && worse(left + 1, smallest)) {
+                    smallest = left + 1;
+                }
+                if (smallest == i) {
+                    return;
+                }
+                swap(i, smallest);
+                i = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            float score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+            int segment = segments[a];
+            segments[a] = segments[b];
+            segments[b] = segment;
+            int doc = docs[a];
+            docs[a] = docs[b];
+            docs[b] = doc;
+        }
+    }
+
+    private static final Snapshot EMPTY = new Snapshot(new IndexSegment[0], new BitSet[0]);
+
+    // The usual BM25 parameters
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    // A title word counts three times and a channel name twice as much as a word in the captions
+    private static final int TITLE_WEIGHT = 3;
+    private static final int CHANNEL_WEIGHT = 2;
+    private static final int TEXT_WEIGHT = 1;
+    // Segments are tiered by live documents: under 64, under 256, under 1024 and so on; four in the same
+    // tier are merged into one of the next
+    private static final int SMALLEST_TIER_DOCS = 64;
+    private static final int MERGE_FACTOR = 4;
+    private static final float MAX_DELETED_SHARE = 0.3f;
+    private static final String MANIFEST = "manifest";
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final int MANIFEST_MAGIC = 0x4C49584D;
+    private static final int MANIFEST_VERSION = 1;
+
+    private final File directory;
+    private final long batchDelayMillis;
+    private final SerialExecutor executor;
+    private volatile Snapshot snapshot = EMPTY;
+
+    // Index executor only
+    private final Map<String, Location> locations = new HashMap<>();
+    private long nextGeneration = 1;
+
+    // Guarded by this; a null document removes its id
+    private Map<String, LibraryDocument> pending = new HashMap<>();
+    private boolean batchScheduled = false;
+    private long batches = 0;
+    private long merges = 0;
+    private long mergedDocs = 0;
+    private long droppedSegments = 0;
+    private long failures = 0;
+    private long lastBatchNanos = 0;
+
+    /**
+     * Does no I/O; the existing index is opened as the first task on the executor
+     * @param executor Runs every write one at a time, normally in the maintenance lane; shut down on close
+     * @param batchDelayMillis How long changes wait to be written together
+     */
+    public LibraryIndex(File directory, SerialExecutor executor, long batchDelayMillis) {
+        this.directory = directory;
+        this.executor = executor;
+        this.batchDelayMillis = batchDelayMillis;
+        executor.execute(() -> runCounted(this::load));
+    }
+
+    /**
+     * Indexes a document, replacing an earlier one with the same id. A document whose text is
+     * unchanged is skipped when the batch is written.
+     */
+    public void add(LibraryDocument document) {
+        enqueue(document.getId(), document);
+    }
+
+    public void remove(String id) {
+        enqueue(id, null);
+    }
+
+    /**
+     * Makes the index match the source: new and changed documents are added, documents the source
+     * no longer has are removed
+     */
+    public void sync(DocumentSource source) {
+        executor.execute(() -> runCounted(() -> {
+            Collection<LibraryDocument> documents = source.load();
+            Set<String> ids = new HashSet<>();
+            synchronized (this) {
+                for (LibraryDocument document : documents) {
+                    ids.add(document.getId());
+                    pending.put(document.getId(), document);
+                }
+                for (String id : locations.keySet()) {
+                    if (!ids.contains(id) && !pending.containsKey(id)) {
+                        pending.put(id, null);
+                    }
+                }
+            }
+            applyPending();
+        }));
+    }
+
+    /**
+     * Writes pending changes now instead of after the batch delay
+     * @return Completes once they are visible to queries, failing if they could not be written
+     */
+    public Future<?> flush() {
+        return executor.submit(() -> {
+            runChecked(this::applyPending);
+            return null;
+        });
+    }
+
+    /**
+     * Merges every segment into one without deleted documents, e.g. while the device is idle and charging
+     */
+    public Future<?> forceMerge() {
+        return executor.submit(() -> {
+            runChecked(this::mergeAll);
+            return null;
+        });
+    }
+
+    private void mergeAll() throws IOException {
+        applyPending();
+        Snapshot current = snapshot;
+        if (current.segments.length <= 1 && current.liveDocs == current.docCount) {
+            return;
+        }
+        Changes changes = new Changes(current);
+        List<Integer> all = new ArrayList<>();
+        for (int s = 0; s < changes.segments.size(); s++) {
+            all.add(s);
+        }
+        merge(changes, all);
+        commit(changes);
+    }
+
+    /**
+     * Ranks live documents against the query. Reads mapped pages, so call it off the main thread.
+     * @return Up to limit hits, best first
+     */
+    public List<SearchHit> search(String query, int limit) {
+        Set<String> distinct = new LinkedHashSet<>(TextTokenizer.tokenize(query));
+        Snapshot current = snapshot;
+        if (distinct.isEmpty() || current.liveDocs == 0 || limit <= 0) {
+            return new ArrayList<>();
+        }
+        IndexSegment[] segments = current.segments;
+        int termCount = distinct.size();
+        int[][] found = new int[segments.length][termCount];
+        float[] idf = new float[termCount];
+        int t = 0;
+        for (String term : distinct) {
+            byte[] key = term.getBytes(StandardCharsets.UTF_8);
+            // Frequencies include deleted documents until a merge drops them, as the counts stored per
+            // segment do; it shifts scores slightly, never the set of matches
+            int docFreq = 0;
+            for (int s = 0; s < segments.length; s++) {
+                found[s][t] = segments[s].findTerm(key);
+                if (found[s][t] >= 0) {
+                    docFreq += segments[s].getDocFreq(found[s][t]);
+                }
+            }
+            idf[t] = docFreq > 0 ? (float) Math.log(1 + (current.docCount - docFreq + 0.5) / (docFreq + 0.5)) : 0;
+            t++;
+        }
+        float averageLength = current.totalLength > 0 ? (float) current.totalLength / current.docCount : 1;
+        TopHits top = new TopHits(Math.min(limit, current.liveDocs));
+        for (int s = 0; s < segments.length; s++) {
+            IndexSegment segment = segments[s];
+            float[] scores = null;
+            for (t = 0; t < termCount; t++) {
+                if (found[s][t] < 0 || idf[t] == 0) {
+                    continue;
+                }
+                if (scores == null) {
+                    scores = new float[segment.getDocCount()];
+                }
+                IndexSegment.PostingsCursor postings = segment.postings(found[s][t]);
+                while (postings.next()) {
+                    float norm = K1 * (1 - B + B * segment.getLength(postings.doc) / averageLength);
+                    scores[postings.doc] += idf[t] * postings.freq * (K1 + 1) / (postings.freq + norm);
+                }
+            }
+            if (scores == null) {
+                continue;
+            }
+            BitSet deleted = current.deleted[s];
+            for (int doc = 0; doc < scores.length; doc++) {
+                if (scores[doc] > 0 && !deleted.get(doc)) {
+                    top.offer(scores[doc], s, doc);
+                }
+            }
+        }
+        SearchHit[] hits = new SearchHit[top.size];
+        for (int i = top.size - 1; i >= 0; i--) {
+            IndexSegment segment = segments[top.segments[0]];
+            int doc = top.docs[0];
+            hits[i] = new SearchHit(segment.getId(doc), segment.getTitle(doc), top.scores[0]);
+            top.size--;
+            top.swap(0, top.size);
+            top.siftDown(0);
+        }
+        return new ArrayList<>(Arrays.asList(hits));
+    }
+
+    public int getDocumentCount() {
+        return snapshot.liveDocs;
+    }
+
+    public int getSegmentCount() {
+        return snapshot.segments.length;
+    }
+
+    public long getSizeBytes() {
+        long bytes = 0;
+        for (IndexSegment segment : snapshot.segments) {
+            bytes += segment.getSizeBytes();
+        }
+        return bytes;
+    }
+
+    public synchronized long getFailures() {
+        return failures;
+    }
+
+    public synchronized long getMerges() {
+        return merges;
+    }
+
+    /**
+     * Writes what is pending and shuts the executor down
+     */
+    @Override
+    public void close() throws IOException {
+        Future<?> last = flush();
+        executor.shutdown();
+        try {
+            last.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException("Interrupted while closing the library index", e);
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private interface IndexTask {
+        void run() throws IOException;
+    }
+
+    private void runCounted(IndexTask task) {
+        try {
+            runChecked(task);
+        } catch (IOException e) {
+            // Counted; the next sync repairs whatever was not written
+        }
+    }
+
+    private void runChecked(IndexTask task) throws IOException {
+        try {
+            task.run();
+        } catch (IOException e) {
+            synchronized (this) {
+                failures++;
+            }
+            throw e;
+        }
+    }
+
+    private void enqueue(String id, LibraryDocument document) {
+        boolean schedule = false;
+        synchronized (this) {
+            pending.put(id, document);
+            if (!batchScheduled) {
+                batchScheduled = true;
+                schedule = true;
+            }
+        }
+        if (schedule) {
+            executor.executeLater(() -> runCounted(this::applyPending), batchDelayMillis);
+        }
+    }
+
+    /**
+     * Index executor only: writes the pending documents as a new segment, marks their old copies deleted
+     * and merges whatever the policy asks for. A batch that fails to be written is dropped; the next
+     * {@link #sync} brings it back.
+     */
+    private void applyPending() throws IOException {
+        Map<String, LibraryDocument> batch;
+        synchronized (this) {
+            batchScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new HashMap<>();
+        }
+        long start = System.nanoTime();
+        Changes changes = new Changes(snapshot);
+        List<LibraryDocument> added = new ArrayList<>();
+        for (Map.Entry<String, LibraryDocument> entry : batch.entrySet()) {
+            LibraryDocument document = entry.getValue();
+            Location old = locations.get(entry.getKey());
+            if (document != null && old != null && old.contentHash == document.contentHash()) {
+                continue;
+            }
+            if (old != null) {
+                changes.delete(old);
+            }
+            if (document != null) {
+                added.add(document);
+            } else if (old != null) {
+                changes.removed.add(entry.getKey());
+            }
+        }
+        if (added.isEmpty() && changes.removed.isEmpty()) {
+            return;
+        }
+        if (!added.isEmpty()) {
+            writeSegment(changes, added);
+        }
+        while (mergeNext(changes)) {
+            // Merging one tier can fill the next
+        }
+        commit(changes);
+        synchronized (this) {
+            batches++;
+            lastBatchNanos = System.nanoTime() - start;
+        }
+    }
+
+    private void writeSegment(Changes changes, List<LibraryDocument> documents) throws IOException {
+        IndexSegment.Writer writer = new IndexSegment.Writer();
+        Map<String, TermPostings> postings = new HashMap<>();
+        Map<String, Integer> freqs = new HashMap<>();
+        int[] hashes = new int[documents.size()];
+        for (LibraryDocument document : documents) {
+            freqs.clear();
+            count(freqs, document.getTitle(), TITLE_WEIGHT);
+            count(freqs, document.getChannelName(), CHANNEL_WEIGHT);
+            count(freqs, document.getDescription(), TEXT_WEIGHT);
+            count(freqs, document.getCaptions(), TEXT_WEIGHT);
+            int length = 0;
+            for (int freq : freqs.values()) {
+                length += freq;
+            }
+            int hash = document.contentHash();
+            int doc = writer.addDocument(document.getId(), document.getTitle(), length, hash);
+            hashes[doc] = hash;
+            for (Map.Entry<String, Integer> freq : freqs.entrySet()) {
+                TermPostings term = postings.get(freq.getKey());
+                if (term == null) {
+                    term = new TermPostings(freq.getKey());
+                    postings.put(freq.getKey(), term);
+                }
+                term.add(doc, freq.getValue());
+            }
+        }
+        TermPostings[] sorted = postings.values().toArray(new TermPostings[0]);
+        Arrays.sort(sorted, (a, b) -> IndexSegment.compareBytes(a.term, b.term));
+        for (TermPostings term : sorted) {
+            writer.startTerm(term.term);
+            for (int i = 0; i < term.size; i += 2) {
+                writer.addPosting(term.data[i], term.data[i + 1]);
+            }
+        }
+        long generation = nextGeneration++;
+        File file = segmentFile(generation);
+        writer.finish(file);
+        IndexSegment segment = IndexSegment.open(file, generation);
+        changes.segments.add(segment);
+        changes.deleted.add(new BitSet());
+        for (int doc = 0; doc < documents.size(); doc++) {
+            changes.moved.put(documents.get(doc).getId(), new Location(segment, doc, hashes[doc]));
+        }
+    }
+
+    private static void count(Map<String, Integer> freqs, String text, int weight) {
+        for (String term : TextTokenizer.tokenize(text)) {
+            Integer freq = freqs.get(term);
+            freqs.put(term, freq != null ? freq + weight : weight);
+        }
+    }
+
+    /**
+     * Drops segments with no live documents, then merges the smallest tier that has filled up, or
+     * else rewrites one segment that is mostly deleted documents
+     * @return False if there was nothing to merge
+     */
+    private boolean mergeNext(Changes changes) throws IOException {
+        for (int s = changes.segments.size() - 1; s >= 0; s--) {
+            if (changes.liveDocs(s) == 0) {
+                changes.obsolete.add(changes.segments.remove(s));
+                changes.deleted.remove(s);
+            }
+        }
+        Map<Integer, List<Integer>> tiers = new HashMap<>();
+        int mergeTier = Integer.MAX_VALUE;
+        for (int s = 0; s < changes.segments.size(); s++) {
+            int tier = tier(changes.liveDocs(s));
+            List<Integer> members = tiers.get(tier);
+            if (members == null) {
+                members = new ArrayList<>();
+                tiers.put(tier, members);
+            }
+            members.add(s);
+            if (members.size() >= MERGE_FACTOR) {
+                mergeTier = Math.min(mergeTier, tier);
+            }
+        }
+        if (mergeTier != Integer.MAX_VALUE) {
+            merge(changes, tiers.get(mergeTier));
+            return true;
+        }
+        for (int s = 0; s < changes.segments.size(); s++) {
+            IndexSegment segment = changes.segments.get(s);
+            if (segment.getDocCount() - changes.liveDocs(s) > MAX_DELETED_SHARE * segment.getDocCount()) {
+                merge(changes, Collections.singletonList(s));
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int tier(int liveDocs) {
+        int tier = 0;
+        for (long bound = SMALLEST_TIER_DOCS; liveDocs >= bound; bound *= MERGE_FACTOR) {
+            tier++;
+        }
+        return tier;
+    }
+
+    /**
+     * Replaces the given segments with one holding their live documents. Documents keep their relative
+     * order, so every term's postings can be copied source by source and stay sorted.
+     */
+    private void merge(Changes changes, List<Integer> chosen) throws IOException {
+        int count = chosen.size();
+        IndexSegment[] sources = new IndexSegment[count];
+        BitSet[] deleted = new BitSet[count];
+        for (int i = 0; i < count; i++) {
+            sources[i] = changes.segments.get(chosen.get(i));
+            deleted[i] = changes.deleted.get(chosen.get(i));
+        }
+        IndexSegment.Writer writer = new IndexSegment.Writer();
+        int[][] docMap = new int[count][];
+        List<String> ids = new ArrayList<>();
+        List<Integer> hashes = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            IndexSegment source = sources[i];
+            docMap[i] = new int[source.getDocCount()];
+            for (int doc = 0; doc < source.getDocCount(); doc++) {
+                if (deleted[i].get(doc)) {
+                    docMap[i][doc] = -1;
+                    continue;
+                }
+                String id = source.getId(doc);
+                int hash = source.getContentHash(doc);
+                docMap[i][doc] = writer.addDocument(id, source.getTitle(doc), source.getLength(doc), hash);
+                ids.add(id);
+                hashes.add(hash);
+            }
+        }
+        // A k-way merge of the sorted term tables; there are only a few sources, so a scan finds the smallest
+        int[] next = new int[count];
+        byte[][] current = new byte[count][];
+        for (int i = 0; i < count; i++) {
+            current[i] = sources[i].getTermCount() > 0 ? sources[i].getTerm(0) : null;
+        }
+        while (true) {
+            byte[] smallest = null;
+            for (byte[] term : current) {
+                if (term != null && (smallest == null || IndexSegment.compareBytes(term, smallest) < 0)) {
+                    smallest = term;
+                }
+            }
+            if (smallest == null) {
+                break;
+            }
+            writer.startTerm(smallest);
+            for (int i = 0; i < count; i++) {
+                if (current[i] == null || !Arrays.equals(current[i], smallest)) {
+                    continue;
+                }
+                IndexSegment.PostingsCursor postings = sources[i].postings(next[i]);
+                while (postings.next()) {
+                    int doc = docMap[i][postings.doc];
+                    if (doc >= 0) {
+                        writer.addPosting(doc, postings.freq);
+                    }
+                }
+                next[i]++;
+                current[i] = next[i] < sources[i].getTermCount() ? sources[i].getTerm(next[i]) : null;
+            }
+        }
+        long generation = nextGeneration++;
+        File file = segmentFile(generation);
+        writer.finish(file);
+        IndexSegment merged = IndexSegment.open(file, generation);
+        List<Integer> descending = new ArrayList<>(chosen);
+        Collections.sort(descending, Collections.reverseOrder());
+        for (int s : descending) {
+            changes.obsolete.add(changes.segments.remove(s));
+            changes.deleted.remove(s);
+        }
+        changes.segments.add(merged);
+        changes.deleted.add(new BitSet());
+        for (int doc = 0; doc < ids.size(); doc++) {
+            changes.moved.put(ids.get(doc), new Location(merged, doc, hashes.get(doc)));
+        }
+        synchronized (this) {
+            merges++;
+            mergedDocs += ids.size();
+        }
+    }
+
+    /**
+     * Writes the manifest, then publishes the segments and deletes the files no longer listed
+     */
+    private void commit(Changes changes) throws IOException {
+        writeManifest(changes.segments, changes.deleted);
+        for (String id : changes.removed) {
+            locations.remove(id);
+        }
+        locations.putAll(changes.moved);
+        snapshot = new Snapshot(changes.segments.toArray(new IndexSegment[0]),
+            changes.deleted.toArray(new BitSet[0]));
+        for (IndexSegment segment : changes.obsolete) {
+            // Queries still holding the old snapshot keep reading the mapping after the file is gone
+            segment.getFile().delete();
+        }
+    }
+
+    /**
+     * Index executor only: opens the segments the manifest lists and removes files it does not
+     */
+    private void load() throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create " + directory);
+        }
+        List<IndexSegment> segments = new ArrayList<>();
+        List<BitSet> deleted = new ArrayList<>();
+        boolean dropped = false;
+        File manifest = new File(directory, MANIFEST);
+        if (manifest.exists()) {
+            try {
+                dropped = readManifest(manifest, segments, deleted);
+            } catch (IOException e) {
+                segments.clear();
+                deleted.clear();
+                dropped = true;
+            }
+        }
+        Set<String> listed = new HashSet<>();
+        listed.add(MANIFEST);
+        for (IndexSegment segment : segments) {
+            listed.add(segment.getFile().getName());
+        }
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                if (!listed.contains(file.getName())) {
+                    file.delete();
+                }
+            }
+        }
+        for (int s = 0; s < segments.size(); s++) {
+            IndexSegment segment = segments.get(s);
+            for (int doc = 0; doc < segment.getDocCount(); doc++) {
+                if (!deleted.get(s).get(doc)) {
+                    locations.put(segment.getId(doc), new Location(segment, doc, segment.getContentHash(doc)));
+                }
+            }
+        }
+        if (dropped) {
+            writeManifest(segments, deleted);
+        }
+        snapshot = new Snapshot(segments.toArray(new IndexSegment[0]), deleted.toArray(new BitSet[0]));
+    }
+
+    /**
+     * @return True if a listed segment could not be opened and was left out
+     */
+    private boolean readManifest(File manifest, List<IndexSegment> segments, List<BitSet> deleted)
+            throws IOException {
+        byte[] bytes = Files.readAllBytes(manifest.toPath());
+        if (bytes.length < 4) {
+            throw new IOException("Truncated manifest");
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - 4);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        in.skipBytes(bytes.length - 4);
+        if ((int) crc.getValue() != in.readInt()) {
+            throw new IOException("Checksum mismatch in manifest");
+        }
+        in = new DataInputStream(new ByteArrayInputStream(bytes, 0, bytes.length - 4));
+        if (in.readInt() != MANIFEST_MAGIC || in.readInt() != MANIFEST_VERSION) {
+            throw new IOException("Unknown manifest format");
+        }
+        nextGeneration = in.readLong();
+        int count = in.readInt();
+        boolean dropped = false;
+        for (int s = 0; s < count; s++) {
+            long generation = in.readLong();
+            int deletedCount = in.readInt();
+            BitSet bits = new BitSet();
+            for (int i = 0; i < deletedCount; i++) {
+                bits.set(in.readInt());
+            }
+            nextGeneration = Math.max(nextGeneration, generation + 1);
+            try {
+                segments.add(IndexSegment.open(segmentFile(generation), generation));
+                deleted.add(bits);
+            } catch (IOException e) {
+                dropped = true;
+                synchronized (this) {
+                    droppedSegments++;
+                }
+            }
+        }
+        return dropped;
+    }
+
+    private void writeManifest(List<IndexSegment> segments, List<BitSet> deleted) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MANIFEST_MAGIC);
+        out.writeInt(MANIFEST_VERSION);
+        out.writeLong(nextGeneration);
+        out.writeInt(segments.size());
+        for (int s = 0; s < segments.size(); s++) {
+            BitSet bits = deleted.get(s);
+            out.writeLong(segments.get(s).getGeneration());
+            out.writeInt(bits.cardinality());
+            for (int doc = bits.nextSetBit(0); doc >= 0; doc = bits.nextSetBit(doc + 1)) {
+                out.writeInt(doc);
+            }
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+        out.flush();
+        File temporary = new File(directory, MANIFEST + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(temporary)) {
+            bytes.writeTo(file);
+            file.getFD().sync();
+        }
+        if (!temporary.renameTo(new File(directory, MANIFEST))) {
+            throw new IOException("Cannot replace the manifest in " + directory);
+        }
+    }
+
+    private File segmentFile(long generation) {
+        return new File(directory, SEGMENT_PREFIX + generation);
+    }
+
+    @Override
+    public synchronized String toString() {
+        Snapshot current = snapshot;
+        return String.format(Locale.US,
+            "LibraryIndex[docs=%d live / %d stored, segments=%d, ~%d KB, batches=%d, merges=%d (%d docs), "
+                + "lastBatch=%.1f ms, dropped=%d, failures=%d]",
+            current.liveDocs, current.docCount, current.segments.length, getSizeBytes() / 1024, batches, merges,
+            mergedDocs, lastBatchNanos / 1e6, droppedSegments, failures);
+    }
+}
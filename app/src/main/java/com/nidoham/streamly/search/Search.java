@@ -0,0 +1,155 @@
+package com.nidoham.streamly.search;
+
+import android.content.Context;
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+import com.nidoham.streamly.download.DownloadProgress;
+import com.nidoham.streamly.download.Downloads;
+import com.nidoham.streamly.feed.FeedItem;
+import com.nidoham.streamly.library.Library;
+import com.nidoham.streamly.library.LibraryEntry;
+import com.nidoham.streamly.library.LibraryStore;
+import com.nidoham.streamly.task.SerialExecutor;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.Tasks;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Process-wide search suggestions, seeded from past queries and watch history in the library store,
+ * and the full-text index that finds library items offline
+ */
+public final class Search {
+
+    // Long enough that seeding and a burst of channel names land in one batch
+    private static final long BATCH_DELAY_MILLIS = 300;
+    private static final int SEED_QUERIES = 2_000;
+    private static final int SEED_HISTORY = 5_000;
+
+    // Saving or watching several videos in a row ends up in one segment
+    private static final long INDEX_BATCH_DELAY_MILLIS = 2_000;
+    // Newest saved and watched items beyond this are not searchable offline
+    private static final int INDEXED_ITEMS = 20_000;
+
+    private static volatile SuggestionProvider instance;
+    private static volatile LibraryIndex libraryIndex;
+
+    private Search() {
+    }
+
+    /**
+     * Creates the provider on first use; it starts empty and fills from storage in the maintenance lane
+     */
+    @AnyThread
+    @NonNull
+    public static SuggestionProvider getSuggestions(@NonNull Context context) {
+        SuggestionProvider provider = instance;
+        if (provider == null) {
+            synchronized (Search.class) {
+                provider = instance;
+                if (provider == null) {
+                    Context appContext = context.getApplicationContext();
+                    SerialExecutor executor = new SerialExecutor(Tasks.getScheduler(), TaskPriority.MAINTENANCE);
+                    SuggestionProvider created = new SuggestionProvider(executor, BATCH_DELAY_MILLIS);
+                    created.execute(() -> seed(created, Library.getStore(appContext)));
+                    provider = created;
+                    instance = provider;
+                }
+            }
+        }
+        return provider;
+    }
+
+    /**
+     * Ranks a submitted query up right away and stores it for the next start
+     */
+    @AnyThread
+    public static void submitQuery(@NonNull Context context, @NonNull String query) {
+        Context appContext = context.getApplicationContext();
+        SuggestionProvider provider = getSuggestions(appContext);
+        provider.record(query, SuggestionKind.QUERY);
+        long now = System.currentTimeMillis();
+        provider.execute(() -> Library.getStore(appContext).recordQuery(query, now));
+    }
+
+    /**
+     * Creates the index on first use; its files are opened in the maintenance lane
+     */
+    @AnyThread
+    @NonNull
+    public static LibraryIndex getLibraryIndex(@NonNull Context context) {
+        LibraryIndex index = libraryIndex;
+        if (index == null) {
+            synchronized (Search.class) {
+                index = libraryIndex;
+                if (index == null) {
+                    File directory = new File(context.getApplicationContext().getFilesDir(), "library-index");
+                    SerialExecutor executor = new SerialExecutor(Tasks.getScheduler(), TaskPriority.MAINTENANCE);
+                    index = new LibraryIndex(directory, executor, INDEX_BATCH_DELAY_MILLIS);
+                    libraryIndex = index;
+                }
+            }
+        }
+        return index;
+    }
+
+    /**
+     * Brings the library index in line with saved videos, watch history and downloads. Reading the
+     * library and comparing happens in the maintenance lane; only what changed is written.
+     */
+    @AnyThread
+    public static void syncLibraryIndex(@NonNull Context context) {
+        Context appContext = context.getApplicationContext();
+        getLibraryIndex(appContext).sync(() -> loadLibraryDocuments(appContext));
+    }
+
+    private static Collection<LibraryDocument> loadLibraryDocuments(Context context) throws IOException {
+        LibraryStore store = Library.getStore(context);
+        Map<String, LibraryDocument> documents = new LinkedHashMap<>();
+        for (LibraryEntry entry : store.getSaved(0, INDEXED_ITEMS)) {
+            addDocument(documents, entry.getItem());
+        }
+        for (LibraryEntry entry : store.getHistory(0, INDEXED_ITEMS)) {
+            addDocument(documents, entry.getItem());
+        }
+        for (DownloadProgress download : Downloads.getManager(context).getDownloads()) {
+            if (!documents.containsKey(download.getId())) {
+                documents.put(download.getId(), new LibraryDocument(download.getId(), download.getTitle(), null, null,
+                    null));
+            }
+        }
+        return documents.values();
+    }
+
+    /**
+     * Items carry no description or captions yet, so titles and channel names are what is searchable
+     */
+    private static void addDocument(Map<String, LibraryDocument> documents, FeedItem item) {
+        if (!documents.containsKey(item.getId())) {
+            documents.put(item.getId(), new LibraryDocument(item.getId(), item.getTitle(), item.getChannelName(),
+                null, null));
+        }
+    }
+
+    private static void seed(SuggestionProvider provider, LibraryStore store) throws IOException {
+        for (Map.Entry<String, Integer> query : store.getQueries(SEED_QUERIES).entrySet()) {
+            provider.record(query.getKey(), SuggestionKind.QUERY, query.getValue());
+        }
+        List<String> channels = new ArrayList<>();
+        for (LibraryEntry entry : store.getHistory(0, SEED_HISTORY)) {
+            FeedItem item = entry.getItem();
+            if (item.getTitle() != null) {
+                provider.record(item.getTitle(), SuggestionKind.WATCHED);
+            }
+            if (item.getChannelName() != null) {
+                channels.add(item.getChannelName());
+            }
+        }
+        provider.offer(channels, SuggestionKind.CHANNEL);
+    }
+}
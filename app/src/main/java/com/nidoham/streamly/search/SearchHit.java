@@ -0,0 +1,39 @@
+package com.nidoham.streamly.search;
+
+import java.util.Locale;
+
+/**
+ * One ranked match from the library index
+ */
+public final class SearchHit {
+
+    private final String id;
+    private final String title;
+    private final float score;
+
+    SearchHit(String id, String title, float score) {
+        this.id = id;
+        this.title = title;
+        this.score = score;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getTitle() {
+        return title;
+    }
+
+    /**
+     * @return BM25 score, only comparable with other hits of the same query
+     */
+    public float getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return String.format(Locale.US, "%s (%s) %.3f", title, id, score);
+    }
+}
@@ -0,0 +1,86 @@
+package com.nidoham.streamly.search;
+
+import java.text.Normalizer;
+
+/**
+ * Folds text into the form suggestion keys are compared in. Both terms and typed prefixes go through
+ * the same folding, so a prefix matches whenever the user could have been on the way to typing the term.
+ * <ul>
+ * <li>Compatibility decomposition (NFKD), so a precomposed Bengali vowel sign like O (U+09CB) becomes
+ * E + AA, which is the order it is typed in, and the keystroke after E still matches.</li>
+ * <li>Latin diacritics are dropped and case is folded without a locale, so "Cafe" finds "caf&eacute;".</li>
+ * <li>Zero-width joiners are dropped and khanda ta is spelled TA + virama, as keyboards differ there.</li>
+ * <li>Bengali digits become ASCII digits.</li>
+ * <li>Anything that is not a letter, digit or combining mark separates words. Bengali vowel signs and
+ * the virama are marks, so they stay inside their word.</li>
+ * </ul>
+ */
+public final class SearchText {
+
+    private static final char BENGALI_KHANDA_TA = '\u09CE';
+    private static final char BENGALI_TA = '\u09A4';
+    private static final char BENGALI_VIRAMA = '\u09CD';
+    private static final char BENGALI_DIGIT_ZERO = '\u09E6';
+
+    private SearchText() {
+    }
+
+    /**
+     * @return The folded term: words separated by single spaces, no leading or trailing space
+     */
+    public static String normalize(CharSequence text) {
+        return fold(text, false);
+    }
+
+    /**
+     * Folds typed input. A trailing separator is kept as one space, so "lofi " completes to
+     * "lofi beats" but no longer to "lofibeats".
+     */
+    public static String normalizePrefix(CharSequence text) {
+        return fold(text, true);
+    }
+
+    private static String fold(CharSequence text, boolean keepTrailingSpace) {
+        String decomposed = Normalizer.normalize(text, Normalizer.Form.NFKD);
+        StringBuilder out = new StringBuilder(decomposed.length());
+        boolean separated = true;
+        boolean pendingSpace = false;
+        for (int i = 0; i < decomposed.length(); ) {
+            int codePoint = decomposed.codePointAt(i);
+            i += Character.charCount(codePoint);
+            if ((codePoint >= 0x0300 && codePoint <= 0x036f) || codePoint == 0x200c || codePoint == 0x200d) {
+                continue;
+            }
+            if (!isWordPart(codePoint)) {
+                pendingSpace |= !separated;
+                separated = true;
+                continue;
+            }
+            if (pendingSpace) {
+                out.append(' ');
+                pendingSpace = false;
+            }
+            separated = false;
+            if (codePoint == BENGALI_KHANDA_TA) {
+                out.append(BENGALI_TA).append(BENGALI_VIRAMA);
+            } else if (codePoint >= BENGALI_DIGIT_ZERO && codePoint <= BENGALI_DIGIT_ZERO + 9) {
+                out.append((char) ('0' + codePoint - BENGALI_DIGIT_ZERO));
+            } else {
+                out.appendCodePoint(Character.toLowerCase(codePoint));
+            }
+        }
+        if (keepTrailingSpace && pendingSpace) {
+            out.append(' ');
+        }
+        return out.toString();
+    }
+
+    private static boolean isWordPart(int codePoint) {
+        if (Character.isLetterOrDigit(codePoint)) {
+            return true;
+        }
+        int type = Character.getType(codePoint);
+        return type == Character.NON_SPACING_MARK || type == Character.COMBINING_SPACING_MARK
+            || type == Character.ENCLOSING_MARK;
+    }
+}
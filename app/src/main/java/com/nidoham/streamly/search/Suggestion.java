@@ -0,0 +1,46 @@
+package com.nidoham.streamly.search;
+
+/**
+ * A completion offered for the text typed so far
+ */
+public final class Suggestion {
+
+    private final String text;
+    private final String key;
+    private final SuggestionKind kind;
+    private final int score;
+
+    Suggestion(String text, String key, SuggestionKind kind, int score) {
+        this.text = text;
+        this.key = key;
+        this.kind = kind;
+        this.score = score;
+    }
+
+    /**
+     * @return The term as it was first seen, e.g. a title with its original case
+     */
+    public String getText() {
+        return text;
+    }
+
+    /**
+     * @return The folded form the index compares, see {@link SearchText#normalize}
+     */
+    String getKey() {
+        return key;
+    }
+
+    public SuggestionKind getKind() {
+        return kind;
+    }
+
+    public int getScore() {
+        return score;
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
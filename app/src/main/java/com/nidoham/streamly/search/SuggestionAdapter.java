@@ -0,0 +1,92 @@
+package com.nidoham.streamly.search;
+
+import android.content.Context;
+import android.view.LayoutInflater;
+import android.view.View;
+import android.view.ViewGroup;
+import android.widget.BaseAdapter;
+import android.widget.Filter;
+import android.widget.Filterable;
+import android.widget.TextView;
+import androidx.annotation.NonNull;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Drop-down rows for an AutoCompleteTextView, filled from a {@link SuggestionProvider}.
+ * The widget runs the filter off the main thread; a lookup takes microseconds, so every
+ * keystroke gets its own result instead of waiting for typing to pause.
+ */
+public class SuggestionAdapter extends BaseAdapter implements Filterable {
+
+    private final SuggestionProvider provider;
+    private final LayoutInflater inflater;
+    private final int limit;
+    private List<Suggestion> suggestions = Collections.emptyList();
+
+    private final Filter filter = new Filter() {
+        @Override
+        protected FilterResults performFiltering(CharSequence constraint) {
+            List<Suggestion> found = provider.suggest(constraint != null ? constraint : "", limit);
+            FilterResults results = new FilterResults();
+            results.values = found;
+            results.count = found.size();
+            return results;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        protected void publishResults(CharSequence constraint, FilterResults results) {
+            suggestions = results.values != null ? (List<Suggestion>) results.values : Collections.emptyList();
+            if (suggestions.isEmpty()) {
+                notifyDataSetInvalidated();
+            } else {
+                notifyDataSetChanged();
+            }
+        }
+
+        @Override
+        public CharSequence convertResultToString(Object resultValue) {
+            return ((Suggestion) resultValue).getText();
+        }
+    };
+
+    /**
+     * @param limit Rows shown at most
+     */
+    public SuggestionAdapter(@NonNull Context context, @NonNull SuggestionProvider provider, int limit) {
+        this.provider = provider;
+        this.inflater = LayoutInflater.from(context);
+        this.limit = limit;
+    }
+
+    @Override
+    public int getCount() {
+        return suggestions.size();
+    }
+
+    @Override
+    public Suggestion getItem(int position) {
+        return suggestions.get(position);
+    }
+
+    @Override
+    public long getItemId(int position) {
+        return position;
+    }
+
+    @Override
+    public View getView(int position, View convertView, ViewGroup parent) {
+        TextView row = convertView instanceof TextView
+            ? (TextView) convertView
+            : (TextView) inflater.inflate(android.R.layout.simple_dropdown_item_1line, parent, false);
+        row.setText(getItem(position).getText());
+        return row;
+    }
+
+    @NonNull
+    @Override
+    public Filter getFilter() {
+        return filter;
+    }
+}
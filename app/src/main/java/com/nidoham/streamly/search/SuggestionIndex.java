@@ -0,0 +1,519 @@
+package com.nidoham.streamly.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Immutable prefix index over scored terms.
+ * Folded terms are stored back to back in one char array, sorted. Every word start of every term is
+ * a key, an offset into that array, and the keys are sorted by the text from there to the end of
+ * their term, so the keys completing a prefix form one contiguous range found by two binary
+ * searches. A segment tree over the range holds the position of the best-scoring key, and the
+ * top results come out of it best first by splitting the range around each hit, so a query costs
+ * about limit * log(keys) no matter how many terms share the prefix.
+ * Updates never modify an index: {@link #merge} builds a new one from two sorted inputs in linear time.
+ */
+public final class SuggestionIndex {
+
+    public static final SuggestionIndex EMPTY = build(Collections.emptyList());
+
+    // Terms, sorted by folded text
+    private final String[] texts;
+    private final SuggestionKind[] kinds;
+    private final int[] scores;
+    private final char[] pool;
+    private final int[] termStart;
+
+    // Keys, sorted by the folded text from their offset to the end of their term
+    private final int[] keyOffset;
+    private final int[] keyTerm;
+    // Implicit segment tree over keys, leaves at keyCount..2 * keyCount - 1, each node the best key below it
+    private final int[] best;
+
+    private SuggestionIndex(String[] texts, SuggestionKind[] kinds, int[] scores, char[] pool, int[] termStart,
+                            int[] keyOffset, int[] keyTerm) {
+        this.texts = texts;
+        this.kinds = kinds;
+        this.scores = scores;
+        this.pool = pool;
+        this.termStart = termStart;
+        this.keyOffset = keyOffset;
+        this.keyTerm = keyTerm;
+        int keys = keyOffset.length;
+        best = new int[2 * keys];
+        for (int i = 0; i < keys; i++) {
+            best[keys + i] = i;
+        }
+        for (int node = keys - 1; node > 0; node--) {
+            best[node] = better(best[2 * node], best[2 * node + 1]);
+        }
+    }
+
+    /**
+     * Sorts the terms and their keys. Terms with the same folded text are collapsed into the best scoring one.
+     * @param terms Terms with their keys already folded
+     */
+    static SuggestionIndex build(Collection<Suggestion> terms) {
+        Suggestion[] sorted = terms.toArray(new Suggestion[0]);
+        Arrays.sort(sorted, (a, b) -> {
+            int order = a.getKey().compareTo(b.getKey());
+            return order != 0 ? order : Integer.compare(b.getScore(), a.getScore());
+        });
+        int count = 0;
+        for (Suggestion term : sorted) {
+            boolean duplicate = count > 0 && sorted[count - 1].getKey().equals(term.getKey());
+            if (!term.getKey().isEmpty() && !duplicate) {
+                sorted[count++] = term;
+            }
+        }
+        String[] texts = new String[count];
+        SuggestionKind[] kinds = new SuggestionKind[count];
+        int[] scores = new int[count];
+        int[] termStart = new int[count + 1];
+        int poolLength = 0;
+        int keyCount = 0;
+        for (int t = 0; t < count; t++) {
+            String key = sorted[t].getKey();
+            termStart[t] = poolLength;
+            poolLength += key.length();
+            keyCount += wordCount(key);
+        }
+        termStart[count] = poolLength;
+        char[] pool = new char[poolLength];
+        int[] keyOffset = new int[keyCount];
+        int[] keyTerm = new int[keyCount];
+        int k = 0;
+        for (int t = 0; t < count; t++) {
+            Suggestion term = sorted[t];
+            texts[t] = term.getText();
+            kinds[t] = term.getKind();
+            scores[t] = term.getScore();
+            String key = term.getKey();
+            key.getChars(0, key.length(), pool, termStart[t]);
+            for (int i = 0; i < key.length(); i++) {
+                if (i == 0 || key.charAt(i - 1) == ' ') {
+                    keyOffset[k] = termStart[t] + i;
+                    keyTerm[k] = t;
+                    k++;
+                }
+            }
+        }
+        sortKeys(pool, termStart, keyOffset, keyTerm);
+        return new SuggestionIndex(texts, kinds, scores, pool, termStart, keyOffset, keyTerm);
+    }
+
+    /**
+     * Combines this index with a newer one. A term in both takes the newer one's text, kind and score.
+     * Both term lists and both key lists are already sorted, so this is two linear merges.
+     */
+    SuggestionIndex merge(SuggestionIndex newer) {
+        if (newer.texts.length == 0) {
+            return this;
+        }
+        if (texts.length == 0) {
+            return newer;
+        }
+        int[] oldToMerged = new int[texts.length];
+        int[] newToMerged = new int[newer.texts.length];
+        int capacity = texts.length + newer.texts.length;
+        String[] mergedTexts = new String[capacity];
+        SuggestionKind[] mergedKinds = new SuggestionKind[capacity];
+        int[] mergedScores = new int[capacity];
+        int[] mergedStart = new int[capacity + 1];
+        char[] mergedPool = new char[pool.length + newer.pool.length];
+        int count = 0;
+        int poolLength = 0;
+        int i = 0;
+        int j = 0;
+        while (i < texts.length || j < newer.texts.length) {
+            int order;
+            if (i == texts.length) {
+                order = 1;
+            } else if (j == newer.texts.length) {
+                order = -1;
+            } else {
+                order = compareRanges(pool, termStart[i], termStart[i + 1], newer.pool, newer.termStart[j],
+                    newer.termStart[j + 1]);
+            }
+            SuggestionIndex source;
+            int term;
+            if (order < 0) {
+                source = this;
+                term = i;
+                oldToMerged[i++] = count;
+            } else {
+                if (order == 0) {
+                    oldToMerged[i++] = -1;
+                }
+                source = newer;
+                term = j;
+                newToMerged[j++] = count;
+            }
+            mergedTexts[count] = source.texts[term];
+            mergedKinds[count] = source.kinds[term];
+            mergedScores[count] = source.scores[term];
+            int length = source.termStart[term + 1] - source.termStart[term];
+            System.arraycopy(source.pool, source.termStart[term], mergedPool, poolLength, length);
+            mergedStart[count] = poolLength;
+            poolLength += length;
+            count++;
+        }
+        mergedStart[count] = poolLength;
+
+        int capacityKeys = keyOffset.length + newer.keyOffset.length;
+        int[] mergedOffset = new int[capacityKeys];
+        int[] mergedTerm = new int[capacityKeys];
+        int keys = 0;
+        i = 0;
+        j = 0;
+        while (true) {
+            while (i < keyOffset.length && oldToMerged[keyTerm[i]] < 0) {
+                i++;
+            }
+            if (i == keyOffset.length && j == newer.keyOffset.length) {
+                break;
+            }
+            boolean takeOld;
+            if (i == keyOffset.length) {
+                takeOld = false;
+            } else if (j == newer.keyOffset.length) {
+                takeOld = true;
+            } else {
+                takeOld = compareRanges(pool, keyOffset[i], termStart[keyTerm[i] + 1], newer.pool,
+                    newer.keyOffset[j], newer.termStart[newer.keyTerm[j] + 1]) <= 0;
+            }
+            SuggestionIndex source = takeOld ? this : newer;
+            int key = takeOld ? i++ : j++;
+            int sourceTerm = source.keyTerm[key];
+            int term = takeOld ? oldToMerged[sourceTerm] : newToMerged[sourceTerm];
+            mergedOffset[keys] = mergedStart[term] + source.keyOffset[key] - source.termStart[sourceTerm];
+            mergedTerm[keys] = term;
+            keys++;
+        }
+        return new SuggestionIndex(Arrays.copyOf(mergedTexts, count), Arrays.copyOf(mergedKinds, count),
+            Arrays.copyOf(mergedScores, count), Arrays.copyOf(mergedPool, poolLength),
+            Arrays.copyOf(mergedStart, count + 1), Arrays.copyOf(mergedOffset, keys), Arrays.copyOf(mergedTerm, keys));
+    }
+
+    /**
+     * @param prefix Typed text folded with {@link SearchText#normalizePrefix}
+     * @return Up to limit distinct terms with a word starting with the prefix, best score first
+     */
+    List<Suggestion> query(String prefix, int limit) {
+        int keys = keyOffset.length;
+        if (keys == 0 || limit <= 0) {
+            return Collections.emptyList();
+        }
+        int from = lowerBound(prefix);
+        int to = upperBound(prefix, from);
+        if (from >= to) {
+            return Collections.emptyList();
+        }
+        limit = Math.min(limit, to - from);
+        List<Suggestion> results = new ArrayList<>(limit);
+        int[] emitted = new int[limit];
+        // Max-heap of ranges keyed by the score of their best key
+        int[] heapFrom = new int[2 * limit + 2];
+        int[] heapTo = new int[heapFrom.length];
+        int[] heapBest = new int[heapFrom.length];
+        int size = 0;
+        heapFrom[0] = from;
+        heapTo[0] = to;
+        heapBest[0] = bestIn(from, to);
+        size++;
+        while (size > 0 && results.size() < limit) {
+            int rangeFrom = heapFrom[0];
+            int rangeTo = heapTo[0];
+            int hit = heapBest[0];
+            size--;
+            heapFrom[0] = heapFrom[size];
+            heapTo[0] = heapTo[size];
+            heapBest[0] = heapBest[size];
+            siftDown(heapFrom, heapTo, heapBest, size);
+
+            int term = keyTerm[hit];
+            boolean seen = false;
+            for (int e = 0; e < results.size(); e++) {
+                if (emitted[e] == term) {
+                    seen = true;
+                    break;
+                }
+            }
+            if (!seen) {
+                emitted[results.size()] = term;
+                results.add(toSuggestion(term));
+            }
+            if (size + 2 > heapFrom.length) {
+                heapFrom = Arrays.copyOf(heapFrom, heapFrom.length * 2);
+                heapTo = Arrays.copyOf(heapTo, heapFrom.length);
+                heapBest = Arrays.copyOf(heapBest, heapFrom.length);
+            }
+            if (rangeFrom < hit) {
+                size = push(heapFrom, heapTo, heapBest, size, rangeFrom, hit, bestIn(rangeFrom, hit));
+            }
+            if (hit + 1 < rangeTo) {
+                size = push(heapFrom, heapTo, heapBest, size, hit + 1, rangeTo, bestIn(hit + 1, rangeTo));
+            }
+        }
+        return results;
+    }
+
+    /**
+     * @param key Folded text of a whole term
+     * @return The term, or null if it is not in the index
+     */
+    Suggestion find(String key) {
+        int low = 0;
+        int high = texts.length - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int order = compareRanges(pool, termStart[mid], termStart[mid + 1], key);
+            if (order < 0) {
+                low = mid + 1;
+            } else if (order > 0) {
+                high = mid - 1;
+            } else {
+                return toSuggestion(mid);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return Every term in key order, for checks and for moving terms elsewhere
+     */
+    List<Suggestion> terms() {
+        List<Suggestion> terms = new ArrayList<>(texts.length);
+        for (int t = 0; t < texts.length; t++) {
+            terms.add(toSuggestion(t));
+        }
+        return terms;
+    }
+
+    public int size() {
+        return texts.length;
+    }
+
+    public int getKeyCount() {
+        return keyOffset.length;
+    }
+
+    /**
+     * @return Approximate heap footprint: the arrays plus the term strings, assuming UTF-16 strings
+     */
+    public long estimateBytes() {
+        long bytes = 16L * 9 + 2L * pool.length + 4L * (scores.length + termStart.length + keyOffset.length
+            + keyTerm.length + best.length) + 4L * 2 * texts.length;
+        for (String text : texts) {
+            bytes += 40 + 2L * text.length();
+        }
+        return bytes;
+    }
+
+    private Suggestion toSuggestion(int term) {
+        return new Suggestion(texts[term], new String(pool, termStart[term], termStart[term + 1] - termStart[term]),
+            kinds[term], scores[term]);
+    }
+
+    private int better(int a, int b) {
+        int scoreA = scores[keyTerm[a]];
+        int scoreB = scores[keyTerm[b]];
+        return scoreA > scoreB || (scoreA == scoreB && a < b) ? a : b;
+    }
+
+    /**
+     * @return The best key in [from, to)
+     */
+    private int bestIn(int from, int to) {
+        int keys = keyOffset.length;
+        int result = from;
+        for (int low = from + keys, high = to + keys; low < high; low >>= 1, high >>= 1) {
+            if ((low & 1) != 0) {
+                result = better(result, best[low++]);
+            }
+            if ((high & 1) != 0) {
+                result = better(result, best[--high]);
+            }
+        }
+        return result;
+    }
+
+    private int push(int[] heapFrom, int[] heapTo, int[] heapBest, int size, int from, int to, int hit) {
+        int child = size;
+        while (child > 0) {
+            int parent = (child - 1) / 2;
+            if (better(heapBest[parent], hit) == heapBest[parent]) {
+                break;
+            }
+            heapFrom[child] = heapFrom[parent];
+            heapTo[child] = heapTo[parent];
+            heapBest[child] = heapBest[parent];
+            child = parent;
+        }
+        heapFrom[child] = from;
+        heapTo[child] = to;
+        heapBest[child] = hit;
+        return size + 1;
+    }
+
+    private void siftDown(int[] heapFrom, int[] heapTo, int[] heapBest, int size) {
+        if (size == 0) {
+            return;
+        }
+        int from = heapFrom[0];
+        int to = heapTo[0];
+        int hit = heapBest[0];
+        int parent = 0;
+        while (true) {
+            int child = 2 * parent + 1;
+            if (child >= size) {
+                break;
+            }
+            if (child + 1 < size && better(heapBest[child + 1], heapBest[child]) == heapBest[child + 1]) {
+                child++;
+            }
+            if (better(hit, heapBest[child]) == hit) {
+                break;
+            }
+            heapFrom[parent] = heapFrom[child];
+            heapTo[parent] = heapTo[child];
+            heapBest[parent] = heapBest[child];
+            parent = child;
+        }
+        heapFrom[parent] = from;
+        heapTo[parent] = to;
+        heapBest[parent] = hit;
+    }
+
+    /**
+     * @return The first key that does not sort before the prefix
+     */
+    private int lowerBound(String prefix) {
+        int low = 0;
+        int high = keyOffset.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, prefix) < 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return The first key from {@code from} on that does not start with the prefix
+     */
+    private int upperBound(String prefix, int from) {
+        int low = from;
+        int high = keyOffset.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (comparePrefix(mid, prefix) <= 0) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * @return Negative if the key sorts before the prefix, 0 if it starts with it, positive after it
+     */
+    private int comparePrefix(int key, String prefix) {
+        int start = keyOffset[key];
+        int end = termStart[keyTerm[key] + 1];
+        for (int i = 0; i < prefix.length(); i++) {
+            if (start + i == end) {
+                return -1;
+            }
+            char c = pool[start + i];
+            char p = prefix.charAt(i);
+            if (c != p) {
+                return c < p ? -1 : 1;
+            }
+        }
+        return 0;
+    }
+
+    private static int compareRanges(char[] a, int aFrom, int aTo, char[] b, int bFrom, int bTo) {
+        int length = Math.min(aTo - aFrom, bTo - bFrom);
+        for (int i = 0; i < length; i++) {
+            char x = a[aFrom + i];
+            char y = b[bFrom + i];
+            if (x != y) {
+                return x < y ? -1 : 1;
+            }
+        }
+        return Integer.compare(aTo - aFrom, bTo - bFrom);
+    }
+
+    private static int compareRanges(char[] a, int aFrom, int aTo, String b) {
+        int length = Math.min(aTo - aFrom, b.length());
+        for (int i = 0; i < length; i++) {
+            char x = a[aFrom + i];
+            char y = b.charAt(i);
+            if (x != y) {
+                return x < y ? -1 : 1;
+            }
+        }
+        return Integer.compare(aTo - aFrom, b.length());
+    }
+
+    private static int wordCount(String key) {
+        int words = key.isEmpty() ? 0 : 1;
+        for (int i = 0; i < key.length(); i++) {
+            if (key.charAt(i) == ' ') {
+                words++;
+            }
+        }
+        return words;
+    }
+
+    /**
+     * Bottom-up merge sort of the key arrays by key text, on primitives to avoid boxing a few hundred
+     * thousand offsets
+     */
+    private static void sortKeys(char[] pool, int[] termStart, int[] keyOffset, int[] keyTerm) {
+        int keys = keyOffset.length;
+        int[] order = new int[keys];
+        int[] buffer = new int[keys];
+        for (int i = 0; i < keys; i++) {
+            order[i] = i;
+        }
+        for (int width = 1; width < keys; width *= 2) {
+            for (int low = 0; low < keys - width; low += 2 * width) {
+                int mid = low + width;
+                int high = Math.min(low + 2 * width, keys);
+                int a = low;
+                int b = mid;
+                int out = low;
+                while (a < mid && b < high) {
+                    int x = order[a];
+                    int y = order[b];
+                    boolean takeB = compareRanges(pool, keyOffset[y], termStart[keyTerm[y] + 1], pool, keyOffset[x],
+                        termStart[keyTerm[x] + 1]) < 0;
+                    buffer[out++] = takeB ? order[b++] : order[a++];
+                }
+                while (a < mid) {
+                    buffer[out++] = order[a++];
+                }
+                while (b < high) {
+                    buffer[out++] = order[b++];
+                }
+                System.arraycopy(buffer, low, order, low, high - low);
+            }
+        }
+        int[] offsets = keyOffset.clone();
+        int[] terms = keyTerm.clone();
+        for (int i = 0; i < keys; i++) {
+            keyOffset[i] = offsets[order[i]];
+            keyTerm[i] = terms[order[i]];
+        }
+    }
+}
@@ -0,0 +1,24 @@
+package com.nidoham.streamly.search;
+
+/**
+ * Where a suggestion came from. Each use of a term adds its kind's weight to the term's score,
+ * so something the user typed outranks a title they only watched.
+ */
+public enum SuggestionKind {
+    /** Submitted in the search box */
+    QUERY(8),
+    /** Title of a watched video */
+    WATCHED(4),
+    /** Name of a channel the user follows */
+    CHANNEL(2);
+
+    private final int weight;
+
+    SuggestionKind(int weight) {
+        this.weight = weight;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
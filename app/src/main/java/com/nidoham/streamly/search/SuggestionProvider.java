@@ -0,0 +1,288 @@
+package com.nidoham.streamly.search;
+
+import com.nidoham.streamly.task.SerialExecutor;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+
+/**
+ * Search suggestions answered from memory on every keystroke.
+ * Terms live in two immutable {@link SuggestionIndex}es, a large base and a small delta, published
+ * together so queries never lock. New terms collect in a pending map; shortly after the first one the
+ * index executor turns them into a sorted batch and merges it into the delta, and once the delta has
+ * grown past a share of the base it is merged into the base. Both merges are linear, nothing is
+ * re-sorted, so the index stays current while the user keeps typing and watching.
+ */
+public final class SuggestionProvider {
+
+    public interface IndexTask {
+        /**
+         * Runs on the index executor, e.g. to read stored terms or to persist a query
+         */
+        void run() throws IOException;
+    }
+
+    private static final class Snapshot {
+        final SuggestionIndex base;
+        final SuggestionIndex delta;
+
+        Snapshot(SuggestionIndex base, SuggestionIndex delta) {
+            this.base = base;
+            this.delta = delta;
+        }
+    }
+
+    private static final class PendingTerm {
+        String text;
+        SuggestionKind kind;
+        int uses;
+        boolean offerOnly;
+    }
+
+    // The delta is merged into the base when it reaches this size or an eighth of the base
+    private static final int MIN_DELTA_TERMS = 1024;
+    private static final int BASE_TO_DELTA_RATIO = 8;
+
+    private final long batchDelayMillis;
+    private final SerialExecutor executor;
+    private volatile Snapshot snapshot = new Snapshot(SuggestionIndex.EMPTY, SuggestionIndex.EMPTY);
+
+    // Guarded by this
+    private Map<String, PendingTerm> pending = new HashMap<>();
+    private boolean batchScheduled = false;
+    private long batches = 0;
+    private long baseMerges = 0;
+    private long failures = 0;
+    private long lastBatchNanos = 0;
+
+    /**
+     * @param executor Runs batches and index tasks one at a time, normally in the maintenance lane
+     * @param batchDelayMillis How long new terms wait to be batched, e.g. a bulk load arriving in pieces
+     */
+    public SuggestionProvider(SerialExecutor executor, long batchDelayMillis) {
+        this.executor = executor;
+        this.batchDelayMillis = batchDelayMillis;
+    }
+
+    /**
+     * Counts one use of a term, raising its rank. Safe from any thread, the index catches up shortly.
+     */
+    public void record(String text, SuggestionKind kind) {
+        record(text, kind, 1);
+    }
+
+    /**
+     * @param uses Number of uses to count at once, e.g. for a query loaded from storage
+     */
+    public void record(String text, SuggestionKind kind, int uses) {
+        add(text, kind, uses, false);
+    }
+
+    /**
+     * Adds terms that should be suggested but were not used, e.g. channel names. Terms already known
+     * keep their score, so offering the same list again changes nothing.
+     */
+    public void offer(Collection<String> texts, SuggestionKind kind) {
+        for (String text : texts) {
+            add(text, kind, 1, true);
+        }
+    }
+
+    /**
+     * Completions for the text typed so far, cheap enough to call on every keystroke on any thread
+     * @return Up to limit terms, best first. Terms added since the last batch show up once it has run.
+     */
+    public List<Suggestion> suggest(CharSequence input, int limit) {
+        String prefix = SearchText.normalizePrefix(input);
+        Snapshot current = snapshot;
+        List<Suggestion> fresh = current.delta.query(prefix, limit);
+        List<Suggestion> old = current.base.query(prefix, limit);
+        if (fresh.isEmpty()) {
+            return old;
+        }
+        // A term in both is stale in the base; its delta copy scores higher, so dropping the base copy
+        // never lets a worse term into the results
+        List<Suggestion> merged = new ArrayList<>(fresh);
+        for (Suggestion candidate : old) {
+            boolean replaced = false;
+            for (Suggestion newer : fresh) {
+                if (newer.getKey().equals(candidate.getKey())) {
+                    replaced = true;
+                    break;
+                }
+            }
+            if (!replaced) {
+                merged.add(candidate);
+            }
+        }
+        merged.sort((a, b) -> a.getScore() != b.getScore()
+            ? Integer.compare(b.getScore(), a.getScore())
+            : a.getKey().compareTo(b.getKey()));
+        return merged.size() > limit ? new ArrayList<>(merged.subList(0, limit)) : merged;
+    }
+
+    /**
+     * Runs blocking work on the index executor, after every batch already scheduled
+     */
+    public void execute(IndexTask task) {
+        executor.execute(() -> {
+            try {
+                task.run();
+            } catch (IOException e) {
+                synchronized (this) {
+                    failures++;
+                }
+            }
+        });
+    }
+
+    /**
+     * Merges pending terms now instead of after the batch delay
+     * @return Completes once they are visible to {@link #suggest}
+     */
+    public Future<?> flush() {
+        return executor.submit(this::applyPending);
+    }
+
+    /**
+     * Waits for {@link #flush()}, for callers that need the terms visible before going on
+     */
+    public void awaitFlush() throws InterruptedException {
+        try {
+            flush().get();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * @return Terms in both indexes; a term whose score changed recently is in both and counts twice
+     */
+    public int size() {
+        Snapshot current = snapshot;
+        return current.base.size() + current.delta.size();
+    }
+
+    public int getKeyCount() {
+        Snapshot current = snapshot;
+        return current.base.getKeyCount() + current.delta.getKeyCount();
+    }
+
+    /**
+     * @return Every indexed term once, with its current score, in no particular order
+     */
+    List<Suggestion> allTerms() {
+        Snapshot current = snapshot;
+        List<Suggestion> terms = current.delta.terms();
+        for (Suggestion term : current.base.terms()) {
+            if (current.delta.find(term.getKey()) == null) {
+                terms.add(term);
+            }
+        }
+        return terms;
+    }
+
+    /**
+     * @return Approximate heap footprint of both indexes
+     */
+    public long estimateBytes() {
+        Snapshot current = snapshot;
+        return current.base.estimateBytes() + current.delta.estimateBytes();
+    }
+
+    private void add(String text, SuggestionKind kind, int uses, boolean offerOnly) {
+        String key = SearchText.normalize(text);
+        if (key.isEmpty()) {
+            return;
+        }
+        boolean schedule = false;
+        synchronized (this) {
+            PendingTerm term = pending.get(key);
+            if (term == null) {
+                term = new PendingTerm();
+                term.text = text;
+                term.kind = kind;
+                term.offerOnly = offerOnly;
+                pending.put(key, term);
+            } else if (!offerOnly) {
+                if (term.offerOnly || kind.getWeight() > term.kind.getWeight()) {
+                    term.kind = kind;
+                }
+                term.text = text;
+                term.offerOnly = false;
+            }
+            if (!offerOnly) {
+                term.uses += uses;
+            }
+            if (!batchScheduled) {
+                batchScheduled = true;
+                schedule = true;
+            }
+        }
+        if (schedule) {
+            executor.executeLater(this::applyPending, batchDelayMillis);
+        }
+    }
+
+    /**
+     * Index executor only: scores the pending terms against what is indexed and merges them in
+     */
+    private void applyPending() {
+        Map<String, PendingTerm> batch;
+        synchronized (this) {
+            batchScheduled = false;
+            if (pending.isEmpty()) {
+                return;
+            }
+            batch = pending;
+            pending = new HashMap<>();
+        }
+        long start = System.nanoTime();
+        Snapshot current = snapshot;
+        List<Suggestion> terms = new ArrayList<>(batch.size());
+        for (Map.Entry<String, PendingTerm> entry : batch.entrySet()) {
+            String key = entry.getKey();
+            PendingTerm term = entry.getValue();
+            Suggestion known = current.delta.find(key);
+            if (known == null) {
+                known = current.base.find(key);
+            }
+            if (known == null) {
+                int uses = Math.max(1, term.uses);
+                terms.add(new Suggestion(term.text, key, term.kind, term.kind.getWeight() * uses));
+            } else if (!term.offerOnly) {
+                SuggestionKind kind = known.getKind().getWeight() > term.kind.getWeight() ? known.getKind() : term.kind;
+                terms.add(new Suggestion(term.text, key, kind, known.getScore() + term.kind.getWeight() * term.uses));
+            }
+        }
+        SuggestionIndex base = current.base;
+        SuggestionIndex delta = current.delta.merge(SuggestionIndex.build(terms));
+        boolean mergeBase = delta.size() >= Math.max(MIN_DELTA_TERMS, base.size() / BASE_TO_DELTA_RATIO);
+        if (mergeBase) {
+            base = base.merge(delta);
+            delta = SuggestionIndex.EMPTY;
+        }
+        snapshot = new Snapshot(base, delta);
+        synchronized (this) {
+            batches++;
+            baseMerges += mergeBase ? 1 : 0;
+            lastBatchNanos = System.nanoTime() - start;
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        Snapshot current = snapshot;
+        return String.format(Locale.US,
+            "SuggestionProvider[base=%d terms / %d keys, delta=%d terms, ~%d KB, batches=%d, baseMerges=%d, "
+                + "lastBatch=%.1f ms, pending=%d, failures=%d]",
+            current.base.size(), current.base.getKeyCount(), current.delta.size(), estimateBytes() / 1024, batches,
+            baseMerges, lastBatchNanos / 1e6, pending.size(), failures);
+    }
+}
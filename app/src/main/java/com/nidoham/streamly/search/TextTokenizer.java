@@ -0,0 +1,67 @@
+package com.nidoham.streamly.search;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Splits titles, descriptions and captions into the terms the full-text index stores. Words are folded
+ * by {@link SearchText}, so case, diacritics and the ways keyboards spell Bengali do not matter. Bengali
+ * inflects by appending case and plural markers, e.g. "gaaner" (of the song) or "gaangulo" (songs);
+ * the common ones are cut off so they match "gaan". Nothing is done to English words beyond dropping
+ * a handful that occur in nearly every caption.
+ */
+public final class TextTokenizer {
+
+    // Longer terms are almost always URLs or hashes, which nobody types into a library search
+    private static final int MAX_TERM_LENGTH = 48;
+    // Folded (NFKD) spellings, longest first: -gulo, -der, -er, -ke, -ti, -ta, -te
+    private static final String[] BENGALI_SUFFIXES = {"\u0997\u09C1\u09B2\u09C7\u09BE", "\u09A6\u09C7\u09B0",
+        "\u09C7\u09B0", "\u0995\u09C7", "\u099F\u09BF", "\u099F\u09BE", "\u09A4\u09C7"};
+    // A stem must keep at least a consonant and one more character
+    private static final int MIN_BENGALI_STEM = 2;
+    private static final Set<String> STOP_WORDS = new HashSet<>(Arrays.asList("a", "an", "and", "are", "at",
+        "be", "by", "for", "in", "is", "it", "of", "on", "or", "the", "to", "with"));
+
+    private TextTokenizer() {
+    }
+
+    /**
+     * @return Terms in text order, repeats included
+     */
+    public static List<String> tokenize(CharSequence text) {
+        List<String> terms = new ArrayList<>();
+        if (text == null) {
+            return terms;
+        }
+        String folded = SearchText.normalize(text);
+        int start = 0;
+        while (start < folded.length()) {
+            int end = folded.indexOf(' ', start);
+            if (end < 0) {
+                end = folded.length();
+            }
+            String term = stem(folded.substring(start, end));
+            if (term.length() <= MAX_TERM_LENGTH && !STOP_WORDS.contains(term)) {
+                terms.add(term);
+            }
+            start = end + 1;
+        }
+        return terms;
+    }
+
+    private static String stem(String word) {
+        char first = word.charAt(0);
+        if (first < '\u0980' || first > '\u09FF') {
+            return word;
+        }
+        for (String suffix : BENGALI_SUFFIXES) {
+            if (word.length() - suffix.length() >= MIN_BENGALI_STEM && word.endsWith(suffix)) {
+                return word.substring(0, word.length() - suffix.length());
+            }
+        }
+        return word;
+    }
+}
@@ -0,0 +1,124 @@
+package com.nidoham.streamly.startup;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Log;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Process-wide entry point for the startup pipeline.
+ * Owns the bounded worker pool, runs {@link StartupTasks} once per process and lets
+ * the splash screen wait for the critical subset instead of a fixed delay.
+ */
+public final class AppStartup {
+
+    private static final String TAG = "AppStartup";
+    private static final long WORKER_KEEP_ALIVE_MS = 2000;
+
+    private static final List<Runnable> criticalCallbacks = new ArrayList<>();
+    private static StartupRunner runner;
+    private static boolean criticalReady = false;
+    private static boolean allReady = false;
+
+    private AppStartup() {
+    }
+
+    /**
+     * Starts the startup graph once per process. Safe to call from every entry point.
+     * @param context Any context, the application context is retained
+     */
+    @MainThread
+    public static void start(@NonNull Context context) {
+        if (runner != null) {
+            return;
+        }
+
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        StartupGraph graph = new StartupGraph(StartupTasks.create(context));
+        runner = new StartupRunner(graph, mainHandler::post, createWorkerPool(), new StartupRunner.Listener() {
+            @Override
+            public void onCriticalTasksFinished(StartupTimings timings) {
+                criticalReady = true;
+                List<Runnable> pending = new ArrayList<>(criticalCallbacks);
+                criticalCallbacks.clear();
+                for (Runnable callback : pending) {
+                    callback.run();
+                }
+            }
+
+            @Override
+            public void onAllTasksFinished(StartupTimings timings) {
+                allReady = true;
+                Log.d(TAG, "Startup finished\n" + timings.describe());
+            }
+        });
+        runner.start();
+    }
+
+    /**
+     * Runs the callback on the main thread once all critical tasks have finished,
+     * immediately if they already have
+     * @param callback Action to run when the app is ready to show MainActivity
+     */
+    @MainThread
+    public static void whenCriticalReady(@NonNull Runnable callback) {
+        if (criticalReady) {
+            callback.run();
+        } else {
+            criticalCallbacks.add(callback);
+        }
+    }
+
+    /**
+     * Removes a callback registered with {@link #whenCriticalReady(Runnable)} that has not run yet
+     */
+    @MainThread
+    public static void removeCriticalCallback(@NonNull Runnable callback) {
+        criticalCallbacks.remove(callback);
+    }
+
+    public static boolean isCriticalReady() {
+        return criticalReady;
+    }
+
+    public static boolean isFinished() {
+        return allReady;
+    }
+
+    /**
+     * @return Timings of the current run, or null if startup has not begun
+     */
+    @Nullable
+    public static StartupTimings getTimings() {
+        return runner != null ? runner.getTimings() : null;
+    }
+
+    private static ThreadPoolExecutor createWorkerPool() {
+        int workers = Math.max(1, Math.min(3, Runtime.getRuntime().availableProcessors() - 1));
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(
+            workers, workers,
+            WORKER_KEEP_ALIVE_MS, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>(),
+            new ThreadFactory() {
+                private final AtomicInteger count = new AtomicInteger(1);
+
+                @Override
+                public Thread newThread(@NonNull Runnable runnable) {
+                    return new Thread(runnable, "startup-" + count.getAndIncrement());
+                }
+            });
+        // Workers exit once startup is done instead of idling for the process lifetime
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+}
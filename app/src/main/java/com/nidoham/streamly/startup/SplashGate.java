@@ -0,0 +1,87 @@
+package com.nidoham.streamly.startup;
+
+import java.util.function.LongSupplier;
+
+/**
+ * Decides when the splash screen hands off: once the critical startup tasks are done, but not before
+ * the minimum display time, and at the maximum display time even if they never finish. The clock and
+ * the delayed posting are injected so the timing can be driven by plain JVM code.
+ */
+public final class SplashGate {
+
+    /**
+     * Delayed execution on the thread that owns the gate, e.g. a main-looper Handler
+     */
+    public interface Scheduler {
+        void postDelayed(Runnable action, long delayMillis);
+
+        void cancel(Runnable action);
+    }
+
+    private final Scheduler scheduler;
+    private final LongSupplier clockMillis;
+    private final long minDisplayMillis;
+    private final long maxDisplayMillis;
+    private final Runnable onRelease;
+    private final Runnable releaseRunnable = this::release;
+    private long shownAt;
+    private boolean released = false;
+
+    /**
+     * @param clockMillis Monotonic clock, e.g. SystemClock::uptimeMillis
+     * @param onRelease Runs once, on the scheduler's thread or the caller's
+     */
+    public SplashGate(Scheduler scheduler, LongSupplier clockMillis, long minDisplayMillis, long maxDisplayMillis,
+                      Runnable onRelease) {
+        if (minDisplayMillis > maxDisplayMillis) {
+            throw new IllegalArgumentException("Minimum display time exceeds the maximum");
+        }
+        this.scheduler = scheduler;
+        this.clockMillis = clockMillis;
+        this.minDisplayMillis = minDisplayMillis;
+        this.maxDisplayMillis = maxDisplayMillis;
+        this.onRelease = onRelease;
+    }
+
+    /**
+     * Call when the splash is shown; arms the maximum display timeout
+     */
+    public void start() {
+        shownAt = clockMillis.getAsLong();
+        scheduler.postDelayed(releaseRunnable, maxDisplayMillis);
+    }
+
+    /**
+     * Call when the critical startup tasks have finished
+     */
+    public void onCriticalReady() {
+        if (released) {
+            return;
+        }
+        scheduler.cancel(releaseRunnable);
+        long elapsed = clockMillis.getAsLong() - shownAt;
+        if (elapsed >= minDisplayMillis) {
+            release();
+        } else {
+            scheduler.postDelayed(releaseRunnable, minDisplayMillis - elapsed);
+        }
+    }
+
+    /**
+     * Drops the pending timeout, e.g. when the splash is destroyed before handing off
+     */
+    public void cancel() {
+        scheduler.cancel(releaseRunnable);
+    }
+
+    public boolean isReleased() {
+        return released;
+    }
+
+    private void release() {
+        if (!released) {
+            released = true;
+            onRelease.run();
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.nidoham.streamly.startup;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable, validated dependency graph of startup tasks.
+ * Construction rejects duplicate names, unknown dependencies and cycles, so a graph
+ * that exists can always be executed to completion. Contains no Android dependencies.
+ */
+public final class StartupGraph {
+
+    private final Map<String, StartupTask> tasks;
+    private final Map<String, List<StartupTask>> dependents;
+    private final List<StartupTask> topologicalOrder;
+    private final Set<String> criticalClosure;
+
+    public StartupGraph(Collection<? extends StartupTask> taskList) {
+        Map<String, StartupTask> byName = new LinkedHashMap<>();
+        for (StartupTask task : taskList) {
+            if (byName.put(task.getName(), task) != null) {
+                throw new IllegalArgumentException("Duplicate startup task: " + task.getName());
+            }
+        }
+
+        Map<String, List<StartupTask>> reverse = new HashMap<>();
+        for (StartupTask task : byName.values()) {
+            reverse.put(task.getName(), new ArrayList<>());
+        }
+        for (StartupTask task : byName.values()) {
+            for (String dependency : task.getDependencies()) {
+                List<StartupTask> list = reverse.get(dependency);
+                if (list == null) {
+                    throw new IllegalArgumentException(
+                        "Startup task '" + task.getName() + "' depends on unknown task '" + dependency + "'");
+                }
+                list.add(task);
+            }
+        }
+
+        this.tasks = Collections.unmodifiableMap(byName);
+        this.dependents = reverse;
+        this.topologicalOrder = Collections.unmodifiableList(sort(byName, reverse));
+        this.criticalClosure = Collections.unmodifiableSet(computeCriticalClosure(byName));
+    }
+
+    /**
+     * Kahn's algorithm; fails if any task is left unsorted, which means a cycle exists
+     */
+    private static List<StartupTask> sort(Map<String, StartupTask> byName, Map<String, List<StartupTask>> reverse) {
+        Map<String, Integer> inDegree = new HashMap<>();
+        Deque<StartupTask> ready = new ArrayDeque<>();
+        for (StartupTask task : byName.values()) {
+            int degree = task.getDependencies().size();
+            inDegree.put(task.getName(), degree);
+            if (degree == 0) {
+                ready.add(task);
+            }
+        }
+
+        List<StartupTask> order = new ArrayList<>(byName.size());
+        while (!ready.isEmpty()) {
+            StartupTask task = ready.poll();
+            order.add(task);
+            for (StartupTask dependent : reverse.get(task.getName())) {
+                int remaining = inDegree.get(dependent.getName()) - 1;
+                inDegree.put(dependent.getName(), remaining);
+                if (remaining == 0) {
+                    ready.add(dependent);
+                }
+            }
+        }
+
+        if (order.size() != byName.size()) {
+            List<String> cyclic = new ArrayList<>();
+            for (Map.Entry<String, Integer> entry : inDegree.entrySet()) {
+                if (entry.getValue() > 0) {
+                    cyclic.add(entry.getKey());
+                }
+            }
+            Collections.sort(cyclic);
+            throw new IllegalArgumentException("Startup task graph contains a cycle among " + cyclic);
+        }
+        return order;
+    }
+
+    /**
+     * Critical tasks plus everything they transitively depend on
+     */
+    private static Set<String> computeCriticalClosure(Map<String, StartupTask> byName) {
+        Set<String> closure = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        for (StartupTask task : byName.values()) {
+            if (task.isCritical()) {
+                pending.add(task.getName());
+            }
+        }
+        while (!pending.isEmpty()) {
+            String name = pending.poll();
+            if (closure.add(name)) {
+                pending.addAll(byName.get(name).getDependencies());
+            }
+        }
+        return closure;
+    }
+
+    public int size() {
+        return tasks.size();
+    }
+
+    public StartupTask getTask(String name) {
+        return tasks.get(name);
+    }
+
+    /**
+     * @return Tasks ordered so that every task appears after all of its dependencies
+     */
+    public List<StartupTask> getTopologicalOrder() {
+        return topologicalOrder;
+    }
+
+    /**
+     * @return Tasks that directly depend on the named task
+     */
+    public List<StartupTask> getDependents(String name) {
+        List<StartupTask> list = dependents.get(name);
+        return list != null ? Collections.unmodifiableList(list) : Collections.<StartupTask>emptyList();
+    }
+
+    /**
+     * @return Names of the tasks the splash screen must wait for, including dependencies of critical tasks
+     */
+    public Set<String> getCriticalClosure() {
+        return criticalClosure;
+    }
+}
@@ -0,0 +1,127 @@
+package com.nidoham.streamly.startup;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Executes a {@link StartupGraph}, dispatching each task as soon as its dependencies finish.
+ * Background tasks go to the supplied worker executor, main-thread tasks to the main executor.
+ * Executors are injected so the scheduling logic can be driven by plain JVM code.
+ */
+public final class StartupRunner {
+
+    /**
+     * Completion callbacks, always delivered through the main executor
+     */
+    public interface Listener {
+        void onCriticalTasksFinished(StartupTimings timings);
+
+        void onAllTasksFinished(StartupTimings timings);
+    }
+
+    private final StartupGraph graph;
+    private final Executor mainExecutor;
+    private final Executor backgroundExecutor;
+    private final Listener listener;
+
+    private final Map<String, AtomicInteger> pendingDependencies = new ConcurrentHashMap<>();
+    private final Set<String> unsuccessful = Collections.newSetFromMap(new ConcurrentHashMap<>());
+    private final AtomicInteger criticalRemaining;
+    private final AtomicInteger totalRemaining;
+    private final AtomicBoolean started = new AtomicBoolean(false);
+    private StartupTimings timings;
+
+    public StartupRunner(StartupGraph graph, Executor mainExecutor, Executor backgroundExecutor, Listener listener) {
+        this.graph = graph;
+        this.mainExecutor = mainExecutor;
+        this.backgroundExecutor = backgroundExecutor;
+        this.listener = listener;
+        this.criticalRemaining = new AtomicInteger(graph.getCriticalClosure().size());
+        this.totalRemaining = new AtomicInteger(graph.size());
+        for (StartupTask task : graph.getTopologicalOrder()) {
+            pendingDependencies.put(task.getName(), new AtomicInteger(task.getDependencies().size()));
+        }
+    }
+
+    /**
+     * Starts all root tasks. Subsequent calls are ignored.
+     */
+    public void start() {
+        if (!started.compareAndSet(false, true)) {
+            return;
+        }
+        timings = new StartupTimings(graph, System.nanoTime());
+
+        if (graph.size() == 0 || criticalRemaining.get() == 0) {
+            final StartupTimings snapshot = timings;
+            mainExecutor.execute(() -> listener.onCriticalTasksFinished(snapshot));
+        }
+        if (graph.size() == 0) {
+            final StartupTimings snapshot = timings;
+            mainExecutor.execute(() -> listener.onAllTasksFinished(snapshot));
+            return;
+        }
+
+        for (StartupTask task : graph.getTopologicalOrder()) {
+            if (task.getDependencies().isEmpty()) {
+                dispatch(task);
+            }
+        }
+    }
+
+    public StartupTimings getTimings() {
+        return timings;
+    }
+
+    private void dispatch(StartupTask task) {
+        Executor executor = task.isMainThread() ? mainExecutor : backgroundExecutor;
+        executor.execute(() -> execute(task));
+    }
+
+    private void execute(StartupTask task) {
+        long start = System.nanoTime();
+        StartupTimings.Status status = StartupTimings.Status.COMPLETED;
+        Throwable error = null;
+
+        boolean dependencyFailed = false;
+        for (String dependency : task.getDependencies()) {
+            if (unsuccessful.contains(dependency)) {
+                dependencyFailed = true;
+                break;
+            }
+        }
+
+        if (dependencyFailed) {
+            status = StartupTimings.Status.SKIPPED;
+        } else {
+            try {
+                task.run();
+            } catch (Throwable t) {
+                status = StartupTimings.Status.FAILED;
+                error = t;
+            }
+        }
+        if (status != StartupTimings.Status.COMPLETED) {
+            unsuccessful.add(task.getName());
+        }
+        timings.record(task, start, System.nanoTime(), status, error);
+
+        for (StartupTask dependent : graph.getDependents(task.getName())) {
+            if (pendingDependencies.get(dependent.getName()).decrementAndGet() == 0) {
+                dispatch(dependent);
+            }
+        }
+
+        if (graph.getCriticalClosure().contains(task.getName()) && criticalRemaining.decrementAndGet() == 0) {
+            mainExecutor.execute(() -> listener.onCriticalTasksFinished(timings));
+        }
+        if (totalRemaining.decrementAndGet() == 0) {
+            mainExecutor.execute(() -> listener.onAllTasksFinished(timings));
+        }
+    }
+}
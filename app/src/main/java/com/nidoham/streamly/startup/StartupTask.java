@@ -0,0 +1,61 @@
+package com.nidoham.streamly.startup;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * A single named unit of application initialization work.
+ * Tasks declare the names of the tasks they depend on, whether they must run on the
+ * main looper, and whether the splash screen has to wait for them before handing off.
+ */
+public abstract class StartupTask {
+
+    private final String name;
+    private final boolean mainThread;
+    private final boolean critical;
+    private final List<String> dependencies;
+
+    /**
+     * @param name Unique task name used for dependency lookup and timing reports
+     * @param mainThread True if the task touches main-thread-bound state and must run on the looper
+     * @param critical True if the splash screen must wait for this task to finish
+     * @param dependencies Names of tasks that must complete before this one starts
+     */
+    protected StartupTask(String name, boolean mainThread, boolean critical, String... dependencies) {
+        if (name == null || name.isEmpty()) {
+            throw new IllegalArgumentException("Startup task name must not be empty");
+        }
+        this.name = name;
+        this.mainThread = mainThread;
+        this.critical = critical;
+        this.dependencies = Collections.unmodifiableList(Arrays.asList(dependencies));
+    }
+
+    /**
+     * Performs the initialization work. Exceptions are recorded in the timings
+     * and cause dependent tasks to be skipped, but never crash the startup pipeline.
+     */
+    public abstract void run() throws Exception;
+
+    public final String getName() {
+        return name;
+    }
+
+    public final boolean isMainThread() {
+        return mainThread;
+    }
+
+    public final boolean isCritical() {
+        return critical;
+    }
+
+    public final List<String> getDependencies() {
+        return dependencies;
+    }
+
+    @Override
+    public String toString() {
+        return name;
+    }
+}
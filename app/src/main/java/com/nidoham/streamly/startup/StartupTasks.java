@@ -0,0 +1,69 @@
+package com.nidoham.streamly.startup;
+
+import android.content.Context;
+import androidx.annotation.NonNull;
+import androidx.core.content.res.ResourcesCompat;
+import com.nidoham.streamly.R;
+import com.nidoham.streamly.inflate.ViewPreinflater;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Declares the application's startup task graph.
+ * Add new initializers here with the narrowest dependencies and thread affinity possible,
+ * and mark them critical only if MainActivity cannot render its first frame without them.
+ */
+public final class StartupTasks {
+
+    public static final String PREFERENCES_NAME = "streamly_preferences";
+
+    public static final String TASK_PREFERENCES = "preferences";
+    public static final String TASK_FONTS = "fonts";
+    public static final String TASK_PREINFLATE_MAIN = "preinflate_main";
+
+    // Past this the startup worker stops waiting, the tree is still kept if it finishes in time
+    private static final long PREINFLATE_TIMEOUT_MS = 1000;
+
+    private StartupTasks() {
+    }
+
+    /**
+     * Builds the task list for the application process
+     * @param context Application context captured by the tasks
+     * @return Startup tasks in declaration order
+     */
+    @NonNull
+    public static List<StartupTask> create(@NonNull Context context) {
+        final Context appContext = context.getApplicationContext();
+        List<StartupTask> tasks = new ArrayList<>();
+
+        // Forces the shared preferences file to be read from disk off the main thread
+        tasks.add(new StartupTask(TASK_PREFERENCES, false, true) {
+            @Override
+            public void run() {
+                appContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE).getAll();
+            }
+        });
+
+        // Warms ResourcesCompat's typeface cache for the toolbar title font
+        tasks.add(new StartupTask(TASK_FONTS, false, false) {
+            @Override
+            public void run() {
+                ResourcesCompat.getFont(appContext, R.font.poppins_semibold);
+            }
+        });
+
+        // Builds MainActivity's view tree while the splash is showing. Not critical, the splash never waits
+        // for it: MainActivity inflates synchronously if the tree is not ready or was built for another
+        // configuration
+        tasks.add(new StartupTask(TASK_PREINFLATE_MAIN, false, false, TASK_FONTS) {
+            @Override
+            public void run() throws Exception {
+                ViewPreinflater.getInstance().preinflateBlocking(appContext, R.style.AppTheme, R.layout.activity_main,
+                    PREINFLATE_TIMEOUT_MS, R.drawable.ic_home, R.drawable.ic_search);
+            }
+        });
+
+        return tasks;
+    }
+}
@@ -0,0 +1,123 @@
+package com.nidoham.streamly.startup;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Thread-safe per-task timing record for a single startup run.
+ * All timestamps are nanoseconds relative to the moment the run started.
+ */
+public final class StartupTimings {
+
+    public enum Status {
+        COMPLETED,
+        FAILED,
+        SKIPPED
+    }
+
+    /**
+     * Timing entry for one task
+     */
+    public static final class Entry {
+        public final String name;
+        public final boolean mainThread;
+        public final long startNanos;
+        public final long endNanos;
+        public final Status status;
+        public final Throwable error;
+
+        Entry(String name, boolean mainThread, long startNanos, long endNanos, Status status, Throwable error) {
+            this.name = name;
+            this.mainThread = mainThread;
+            this.startNanos = startNanos;
+            this.endNanos = endNanos;
+            this.status = status;
+            this.error = error;
+        }
+
+        public long getDurationNanos() {
+            return endNanos - startNanos;
+        }
+    }
+
+    private final StartupGraph graph;
+    private final long originNanos;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    StartupTimings(StartupGraph graph, long originNanos) {
+        this.graph = graph;
+        this.originNanos = originNanos;
+    }
+
+    void record(StartupTask task, long startNanos, long endNanos, Status status, Throwable error) {
+        entries.put(task.getName(), new Entry(task.getName(), task.isMainThread(),
+            startNanos - originNanos, endNanos - originNanos, status, error));
+    }
+
+    public Entry get(String name) {
+        return entries.get(name);
+    }
+
+    /**
+     * @return Entries recorded so far, ordered by start time
+     */
+    public List<Entry> getEntries() {
+        List<Entry> list = new ArrayList<>(entries.values());
+        Collections.sort(list, (a, b) -> Long.compare(a.startNanos, b.startNanos));
+        return list;
+    }
+
+    /**
+     * Walks back from the latest-finishing critical task, following the dependency that
+     * finished last at each step. The result is the chain that actually gated the splash hand-off.
+     * @return Critical path ordered from first to last task, empty if no critical task finished yet
+     */
+    public List<Entry> getCriticalPath() {
+        Entry last = null;
+        for (String name : graph.getCriticalClosure()) {
+            Entry entry = entries.get(name);
+            if (entry != null && (last == null || entry.endNanos > last.endNanos)) {
+                last = entry;
+            }
+        }
+
+        List<Entry> path = new ArrayList<>();
+        while (last != null) {
+            path.add(last);
+            Entry gating = null;
+            for (String dependency : graph.getTask(last.name).getDependencies()) {
+                Entry entry = entries.get(dependency);
+                if (entry != null && (gating == null || entry.endNanos > gating.endNanos)) {
+                    gating = entry;
+                }
+            }
+            last = gating;
+        }
+        Collections.reverse(path);
+        return path;
+    }
+
+    /**
+     * @return Multi-line human readable summary suitable for logcat
+     */
+    public String describe() {
+        StringBuilder builder = new StringBuilder();
+        for (Entry entry : getEntries()) {
+            builder.append(String.format(Locale.US, "%-20s %-4s %-9s start=%6.1fms took=%6.1fms%n",
+                entry.name,
+                entry.mainThread ? "main" : "bg",
+                entry.status,
+                entry.startNanos / 1_000_000.0,
+                entry.getDurationNanos() / 1_000_000.0));
+        }
+        builder.append("critical path:");
+        for (Entry entry : getCriticalPath()) {
+            builder.append(' ').append(entry.name);
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,59 @@
+package com.nidoham.streamly.system;
+
+/**
+ * Relative luminance classification of ARGB colours.
+ * Channel gamma expansion uses a precomputed 256-entry table instead of Math.pow, and results
+ * are memoised in a small direct-mapped cache since only a handful of bar colours are ever used.
+ */
+public final class ColorLuminance {
+
+    private static final int CACHE_SIZE = 64;
+    private static final double[] LINEAR = new double[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            double channel = i / 255.0;
+            LINEAR[i] = channel <= 0.03928 ? channel / 12.92 : Math.pow((channel + 0.055) / 1.055, 2.4);
+        }
+    }
+
+    private static final int[] cachedColors = new int[CACHE_SIZE];
+    private static final byte[] cachedResults = new byte[CACHE_SIZE]; // 0 = empty, 1 = dark, 2 = light
+
+    private ColorLuminance() {
+    }
+
+    /**
+     * @param color ARGB colour value
+     * @return Relative luminance between 0 and 1 per WCAG 2.0
+     */
+    public static double luminance(int color) {
+        return 0.2126 * LINEAR[(color >> 16) & 0xFF]
+            + 0.7152 * LINEAR[(color >> 8) & 0xFF]
+            + 0.0722 * LINEAR[color & 0xFF];
+    }
+
+    /**
+     * Determines whether dark content is needed on top of the colour.
+     * Fully transparent counts as light, matching the previous SystemControl behaviour.
+     * @param color ARGB colour value
+     * @return True if the colour is considered light
+     */
+    public static boolean isLight(int color) {
+        if (color == 0) {
+            return true;
+        }
+        int slot = (color ^ (color >>> 16)) & (CACHE_SIZE - 1);
+        synchronized (cachedColors) {
+            if (cachedResults[slot] != 0 && cachedColors[slot] == color) {
+                return cachedResults[slot] == 2;
+            }
+        }
+        boolean light = luminance(color) > 0.5;
+        synchronized (cachedColors) {
+            cachedColors[slot] = color;
+            cachedResults[slot] = (byte) (light ? 2 : 1);
+        }
+        return light;
+    }
+}
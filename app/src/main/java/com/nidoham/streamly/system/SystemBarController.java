@@ -0,0 +1,327 @@
+package com.nidoham.streamly.system;
+
+import android.app.Activity;
+import android.os.Build;
+import android.view.Choreographer;
+import android.view.View;
+import android.view.Window;
+import android.view.WindowInsetsController;
+import android.view.WindowManager;
+import androidx.annotation.ColorInt;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.RequiresApi;
+import androidx.core.view.WindowCompat;
+import androidx.core.view.WindowInsetsCompat;
+import androidx.core.view.WindowInsetsControllerCompat;
+import com.nidoham.streamly.R;
+
+/**
+ * Stateful per-window system bar controller.
+ * Callers describe the desired bar state through setters; the controller remembers what it last
+ * applied and, once per frame, writes only the properties that actually changed. This avoids the
+ * redundant window flag, colour and insets-controller writes that each relayout the decor view.
+ */
+@MainThread
+public final class SystemBarController implements Choreographer.FrameCallback {
+
+    private static final int STATUS_BAR_COLOR = 1;
+    private static final int NAVIGATION_BAR_COLOR = 1 << 1;
+    private static final int LIGHT_STATUS_BARS = 1 << 2;
+    private static final int LIGHT_NAVIGATION_BARS = 1 << 3;
+    private static final int TRANSLUCENT_STATUS = 1 << 4;
+    private static final int EDGE_TO_EDGE = 1 << 5;
+    private static final int IMMERSIVE = 1 << 6;
+
+    private final Window window;
+
+    // Desired state, which properties have ever been requested and which since the last pass
+    private int requested = 0;
+    private int dirty = 0;
+    private int statusBarColor;
+    private int navigationBarColor;
+    private boolean lightStatusBars;
+    private boolean lightNavigationBars;
+    private boolean translucentStatus;
+    private boolean edgeToEdge;
+    private boolean immersive;
+
+    // State last written to the window and which properties have been written at least once
+    private int applied = 0;
+    private int appliedStatusBarColor;
+    private int appliedNavigationBarColor;
+    private boolean appliedLightStatusBars;
+    private boolean appliedLightNavigationBars;
+    private boolean appliedTranslucentStatus;
+    private boolean appliedEdgeToEdge;
+    private boolean appliedImmersive;
+
+    private boolean frameScheduled = false;
+    private boolean drawsBarBackgrounds = false;
+    private long writeCount = 0;
+    private long skippedCount = 0;
+
+    private SystemBarController(@NonNull Window window) {
+        this.window = window;
+    }
+
+    /**
+     * Returns the controller bound to the activity's window, creating it on first use.
+     * The controller is stored as a decor view tag so it lives exactly as long as the window.
+     */
+    @NonNull
+    public static SystemBarController of(@NonNull Activity activity) {
+        Window window = activity.getWindow();
+        View decorView = window.getDecorView();
+        Object tag = decorView.getTag(R.id.system_bar_controller);
+        if (tag instanceof SystemBarController) {
+            return (SystemBarController) tag;
+        }
+        SystemBarController controller = new SystemBarController(window);
+        decorView.setTag(R.id.system_bar_controller, controller);
+        return controller;
+    }
+
+    public SystemBarController setStatusBarColor(@ColorInt int color) {
+        statusBarColor = color;
+        return request(STATUS_BAR_COLOR);
+    }
+
+    public SystemBarController setNavigationBarColor(@ColorInt int color) {
+        navigationBarColor = color;
+        return request(NAVIGATION_BAR_COLOR);
+    }
+
+    /**
+     * @param light True for dark status bar icons on a light background
+     */
+    public SystemBarController setLightStatusBars(boolean light) {
+        lightStatusBars = light;
+        return request(LIGHT_STATUS_BARS);
+    }
+
+    /**
+     * @param light True for dark navigation bar buttons on a light background
+     */
+    public SystemBarController setLightNavigationBars(boolean light) {
+        lightNavigationBars = light;
+        return request(LIGHT_NAVIGATION_BARS);
+    }
+
+    public SystemBarController setTranslucentStatus(boolean translucent) {
+        translucentStatus = translucent;
+        return request(TRANSLUCENT_STATUS);
+    }
+
+    /**
+     * @param enabled True to lay content out behind the system bars
+     */
+    public SystemBarController setEdgeToEdge(boolean enabled) {
+        edgeToEdge = enabled;
+        return request(EDGE_TO_EDGE);
+    }
+
+    public SystemBarController setImmersive(boolean enabled) {
+        immersive = enabled;
+        return request(IMMERSIVE);
+    }
+
+    /**
+     * @return The status bar colour that will be on screen after the pending pass, for callers
+     * that previously read it back from the window
+     */
+    @ColorInt
+    public int getStatusBarColor() {
+        return (requested & STATUS_BAR_COLOR) != 0 ? statusBarColor : window.getStatusBarColor();
+    }
+
+    public boolean isImmersive() {
+        return immersive;
+    }
+
+    private SystemBarController request(int property) {
+        requested |= property;
+        dirty |= property;
+        if (!frameScheduled) {
+            frameScheduled = true;
+            // Frame callbacks run before traversal, so changes land before the next frame is drawn
+            Choreographer.getInstance().postFrameCallback(this);
+        }
+        return this;
+    }
+
+    @Override
+    public void doFrame(long frameTimeNanos) {
+        frameScheduled = false;
+        applyNow();
+    }
+
+    /**
+     * Writes every changed property immediately instead of waiting for the next frame
+     */
+    public void applyNow() {
+        if (frameScheduled) {
+            Choreographer.getInstance().removeFrameCallback(this);
+            frameScheduled = false;
+        }
+
+        int changed = 0;
+        changed |= differs(STATUS_BAR_COLOR, statusBarColor != appliedStatusBarColor) ? STATUS_BAR_COLOR : 0;
+        changed |= differs(NAVIGATION_BAR_COLOR, navigationBarColor != appliedNavigationBarColor) ? NAVIGATION_BAR_COLOR : 0;
+        changed |= differs(LIGHT_STATUS_BARS, lightStatusBars != appliedLightStatusBars) ? LIGHT_STATUS_BARS : 0;
+        changed |= differs(LIGHT_NAVIGATION_BARS, lightNavigationBars != appliedLightNavigationBars) ? LIGHT_NAVIGATION_BARS : 0;
+        changed |= differs(TRANSLUCENT_STATUS, translucentStatus != appliedTranslucentStatus) ? TRANSLUCENT_STATUS : 0;
+        changed |= differs(EDGE_TO_EDGE, edgeToEdge != appliedEdgeToEdge) ? EDGE_TO_EDGE : 0;
+        changed |= differs(IMMERSIVE, immersive != appliedImmersive) ? IMMERSIVE : 0;
+
+        skippedCount += Integer.bitCount(dirty & ~changed);
+        dirty = 0;
+        if (changed == 0) {
+            return;
+        }
+
+        applyWindowProperties(changed);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
+            applyInsetsController(changed);
+        } else if ((changed & (LIGHT_STATUS_BARS | LIGHT_NAVIGATION_BARS | EDGE_TO_EDGE | IMMERSIVE)) != 0) {
+            applySystemUiVisibility();
+        }
+
+        applied |= changed;
+        appliedStatusBarColor = statusBarColor;
+        appliedNavigationBarColor = navigationBarColor;
+        appliedLightStatusBars = lightStatusBars;
+        appliedLightNavigationBars = lightNavigationBars;
+        appliedTranslucentStatus = translucentStatus;
+        appliedEdgeToEdge = edgeToEdge;
+        appliedImmersive = immersive;
+    }
+
+    private boolean differs(int property, boolean valueChanged) {
+        return (dirty & property) != 0 && ((applied & property) == 0 || valueChanged);
+    }
+
+    private void applyWindowProperties(int changed) {
+        if ((changed & (STATUS_BAR_COLOR | NAVIGATION_BAR_COLOR)) != 0 && !drawsBarBackgrounds) {
+            window.addFlags(WindowManager.LayoutParams.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS);
+            drawsBarBackgrounds = true;
+            writeCount++;
+        }
+        if ((changed & STATUS_BAR_COLOR) != 0) {
+            window.setStatusBarColor(statusBarColor);
+            writeCount++;
+        }
+        if ((changed & NAVIGATION_BAR_COLOR) != 0) {
+            window.setNavigationBarColor(navigationBarColor);
+            writeCount++;
+        }
+        if ((changed & TRANSLUCENT_STATUS) != 0) {
+            if (translucentStatus) {
+                window.addFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
+            } else {
+                window.clearFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
+            }
+            writeCount++;
+        }
+    }
+
+    @RequiresApi(Build.VERSION_CODES.R)
+    private void applyInsetsController(int changed) {
+        // Decor fitting is shared between edge-to-edge and immersive, write it only if the combination changed
+        if ((changed & (EDGE_TO_EDGE | IMMERSIVE)) != 0) {
+            boolean fits = !(edgeToEdge || immersive);
+            boolean appliedFits = !(appliedEdgeToEdge || appliedImmersive);
+            if ((applied & (EDGE_TO_EDGE | IMMERSIVE)) == 0 || fits != appliedFits) {
+                WindowCompat.setDecorFitsSystemWindows(window, fits);
+                writeCount++;
+            }
+        }
+
+        WindowInsetsController insetsController = window.getInsetsController();
+        if (insetsController != null && (changed & (LIGHT_STATUS_BARS | LIGHT_NAVIGATION_BARS)) != 0) {
+            int mask = 0;
+            int appearance = 0;
+            if ((changed & LIGHT_STATUS_BARS) != 0) {
+                mask |= WindowInsetsController.APPEARANCE_LIGHT_STATUS_BARS;
+                if (lightStatusBars) {
+                    appearance |= WindowInsetsController.APPEARANCE_LIGHT_STATUS_BARS;
+                }
+            }
+            if ((changed & LIGHT_NAVIGATION_BARS) != 0) {
+                mask |= WindowInsetsController.APPEARANCE_LIGHT_NAVIGATION_BARS;
+                if (lightNavigationBars) {
+                    appearance |= WindowInsetsController.APPEARANCE_LIGHT_NAVIGATION_BARS;
+                }
+            }
+            insetsController.setSystemBarsAppearance(appearance, mask);
+            writeCount++;
+        }
+
+        if ((changed & IMMERSIVE) != 0) {
+            WindowInsetsControllerCompat controller = WindowCompat.getInsetsController(window, window.getDecorView());
+            if (immersive) {
+                controller.hide(WindowInsetsCompat.Type.systemBars());
+                controller.setSystemBarsBehavior(WindowInsetsControllerCompat.BEHAVIOR_SHOW_TRANSIENT_BARS_BY_SWIPE);
+            } else {
+                controller.show(WindowInsetsCompat.Type.systemBars());
+            }
+            writeCount++;
+        }
+    }
+
+    /**
+     * Pre-R devices encode appearance, layout and immersive state in one visibility bitmask.
+     * Only bits owned by requested properties are rewritten, so theme-provided flags survive,
+     * and the mask is written only if the result differs.
+     */
+    @SuppressWarnings("deprecation")
+    private void applySystemUiVisibility() {
+        View decorView = window.getDecorView();
+        int current = decorView.getSystemUiVisibility();
+        int flags = current;
+
+        if ((requested & LIGHT_STATUS_BARS) != 0) {
+            flags = lightStatusBars
+                ? flags | View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR
+                : flags & ~View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR;
+        }
+        if ((requested & LIGHT_NAVIGATION_BARS) != 0) {
+            flags = lightNavigationBars
+                ? flags | View.SYSTEM_UI_FLAG_LIGHT_NAVIGATION_BAR
+                : flags & ~View.SYSTEM_UI_FLAG_LIGHT_NAVIGATION_BAR;
+        }
+        if ((requested & (EDGE_TO_EDGE | IMMERSIVE)) != 0) {
+            int layoutFlags = View.SYSTEM_UI_FLAG_LAYOUT_STABLE | View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN;
+            int immersiveFlags = View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY
+                | View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION
+                | View.SYSTEM_UI_FLAG_HIDE_NAVIGATION
+                | View.SYSTEM_UI_FLAG_FULLSCREEN;
+            flags &= ~(layoutFlags | immersiveFlags);
+            if (edgeToEdge || immersive) {
+                flags |= layoutFlags;
+            }
+            if (immersive) {
+                flags |= immersiveFlags;
+            }
+        }
+
+        if (flags != current) {
+            decorView.setSystemUiVisibility(flags);
+            writeCount++;
+        }
+    }
+
+    /**
+     * @return Number of window writes performed so far
+     */
+    public long getWriteCount() {
+        return writeCount;
+    }
+
+    /**
+     * @return Number of requested properties skipped because they were already applied
+     */
+    public long getSkippedCount() {
+        return skippedCount;
+    }
+}
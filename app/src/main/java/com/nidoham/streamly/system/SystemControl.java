@@ -5,18 +5,11 @@ import android.content.Context;
 import android.content.res.Resources;
 import android.graphics.Color;
 import android.os.Build;
-import android.view.View;
 import android.view.Window;
-import android.view.WindowInsetsController;
-import android.view.WindowManager;
 import androidx.annotation.ColorInt;
 import androidx.annotation.ColorRes;
 import androidx.annotation.NonNull;
-import androidx.annotation.RequiresApi;
 import androidx.core.content.ContextCompat;
-import androidx.core.view.WindowCompat;
-import androidx.core.view.WindowInsetsCompat;
-import androidx.core.view.WindowInsetsControllerCompat;
 
 /**
  * SystemControl provides comprehensive status bar and system UI management functionality
@@ -76,15 +69,10 @@ public class SystemControl {
      * @param color Direct color value for status bar background
      */
     private static void setStatusBarColorValue(@NonNull Activity activity, @ColorInt int color) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            Window window = activity.getWindow();
-            window.addFlags(WindowManager.LayoutParams.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS);
-            window.setStatusBarColor(color);
-            
-            // Automatically determine appropriate content color based on background luminance
-            boolean isLightBackground = isColorLight(color);
-            setStatusBarContentColor(activity, isLightBackground ? StatusBarMode.DARK_CONTENT : StatusBarMode.LIGHT_CONTENT);
-        }
+        // Automatically determine appropriate content color based on background luminance
+        SystemBarController.of(activity)
+            .setStatusBarColor(color)
+            .setLightStatusBars(isColorLight(color));
     }
 
     /**
@@ -131,35 +119,7 @@ public class SystemControl {
      * @param mode Content color mode selection
      */
     private static void setStatusBarContentColor(@NonNull Activity activity, @NonNull StatusBarMode mode) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            // Android 11+ implementation using WindowInsetsController
-            WindowInsetsController insetsController = activity.getWindow().getInsetsController();
-            if (insetsController != null) {
-                if (mode == StatusBarMode.DARK_CONTENT) {
-                    insetsController.setSystemBarsAppearance(
-                        WindowInsetsController.APPEARANCE_LIGHT_STATUS_BARS,
-                        WindowInsetsController.APPEARANCE_LIGHT_STATUS_BARS
-                    );
-                } else {
-                    insetsController.setSystemBarsAppearance(
-                        0,
-                        WindowInsetsController.APPEARANCE_LIGHT_STATUS_BARS
-                    );
-                }
-            }
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.M) {
-            // Android 6.0+ implementation using system UI visibility flags
-            View decorView = activity.getWindow().getDecorView();
-            int systemUiVisibility = decorView.getSystemUiVisibility();
-            
-            if (mode == StatusBarMode.DARK_CONTENT) {
-                systemUiVisibility |= View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR;
-            } else {
-                systemUiVisibility &= ~View.SYSTEM_UI_FLAG_LIGHT_STATUS_BAR;
-            }
-            
-            decorView.setSystemUiVisibility(systemUiVisibility);
-        }
+        SystemBarController.of(activity).setLightStatusBars(mode == StatusBarMode.DARK_CONTENT);
     }
 
     /**
@@ -167,21 +127,9 @@ public class SystemControl {
      * @param activity The target activity for transparent status bar configuration
      */
     public static void setTransparentStatusBar(@NonNull Activity activity) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            Window window = activity.getWindow();
-            window.addFlags(WindowManager.LayoutParams.FLAG_DRAWS_SYSTEM_BAR_BACKGROUNDS);
-            window.setStatusBarColor(Color.TRANSPARENT);
-            
-            if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-                window.setDecorFitsSystemWindows(false);
-            } else {
-                View decorView = window.getDecorView();
-                decorView.setSystemUiVisibility(
-                    View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
-                    View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN
-                );
-            }
-        }
+        SystemBarController.of(activity)
+            .setStatusBarColor(Color.TRANSPARENT)
+            .setEdgeToEdge(true);
     }
 
     /**
@@ -189,10 +137,7 @@ public class SystemControl {
      * @param activity The target activity for translucent status bar setup
      */
     public static void setTranslucentStatusBar(@NonNull Activity activity) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.KITKAT) {
-            Window window = activity.getWindow();
-            window.addFlags(WindowManager.LayoutParams.FLAG_TRANSLUCENT_STATUS);
-        }
+        SystemBarController.of(activity).setTranslucentStatus(true);
     }
 
     /**
@@ -201,30 +146,29 @@ public class SystemControl {
      * @param mode Navigation bar appearance configuration
      */
     public static void setNavigationBarMode(@NonNull Activity activity, @NonNull NavigationBarMode mode) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.LOLLIPOP) {
-            Window window = activity.getWindow();
-            
-            switch (mode) {
-                case TRANSPARENT:
-                    window.setNavigationBarColor(Color.TRANSPARENT);
-                    break;
-                    
-                case LIGHT:
-                    window.setNavigationBarColor(Color.WHITE);
-                    setNavigationBarContentColor(activity, true);
-                    break;
-                    
-                case DARK:
-                    window.setNavigationBarColor(Color.BLACK);
-                    setNavigationBarContentColor(activity, false);
-                    break;
-                    
-                case MATCH_STATUS_BAR:
-                    int statusBarColor = window.getStatusBarColor();
-                    window.setNavigationBarColor(statusBarColor);
-                    setNavigationBarContentColor(activity, isColorLight(statusBarColor));
-                    break;
-            }
+        SystemBarController controller = SystemBarController.of(activity);
+        
+        switch (mode) {
+            case TRANSPARENT:
+                controller.setNavigationBarColor(Color.TRANSPARENT);
+                break;
+                
+            case LIGHT:
+                controller.setNavigationBarColor(Color.WHITE);
+                setNavigationBarContentColor(activity, true);
+                break;
+                
+            case DARK:
+                controller.setNavigationBarColor(Color.BLACK);
+                setNavigationBarContentColor(activity, false);
+                break;
+                
+            case MATCH_STATUS_BAR:
+                // Read the pending state rather than the window, which may not be updated until the next frame
+                int statusBarColor = controller.getStatusBarColor();
+                controller.setNavigationBarColor(statusBarColor);
+                setNavigationBarContentColor(activity, isColorLight(statusBarColor));
+                break;
         }
     }
 
@@ -234,33 +178,7 @@ public class SystemControl {
      * @param lightContent Whether to use light content on navigation bar
      */
     private static void setNavigationBarContentColor(@NonNull Activity activity, boolean lightContent) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            WindowInsetsController insetsController = activity.getWindow().getInsetsController();
-            if (insetsController != null) {
-                if (lightContent) {
-                    insetsController.setSystemBarsAppearance(
-                        WindowInsetsController.APPEARANCE_LIGHT_NAVIGATION_BARS,
-                        WindowInsetsController.APPEARANCE_LIGHT_NAVIGATION_BARS
-                    );
-                } else {
-                    insetsController.setSystemBarsAppearance(
-                        0,
-                        WindowInsetsController.APPEARANCE_LIGHT_NAVIGATION_BARS
-                    );
-                }
-            }
-        } else if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
-            View decorView = activity.getWindow().getDecorView();
-            int systemUiVisibility = decorView.getSystemUiVisibility();
-            
-            if (lightContent) {
-                systemUiVisibility |= View.SYSTEM_UI_FLAG_LIGHT_NAVIGATION_BAR;
-            } else {
-                systemUiVisibility &= ~View.SYSTEM_UI_FLAG_LIGHT_NAVIGATION_BAR;
-            }
-            
-            decorView.setSystemUiVisibility(systemUiVisibility);
-        }
+        SystemBarController.of(activity).setLightNavigationBars(lightContent);
     }
 
     /**
@@ -268,22 +186,7 @@ public class SystemControl {
      * @param activity The target activity for immersive mode configuration
      */
     public static void enableImmersiveMode(@NonNull Activity activity) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            WindowCompat.setDecorFitsSystemWindows(activity.getWindow(), false);
-            WindowInsetsControllerCompat controller = WindowCompat.getInsetsController(activity.getWindow(), activity.getWindow().getDecorView());
-            controller.hide(WindowInsetsCompat.Type.systemBars());
-            controller.setSystemBarsBehavior(WindowInsetsControllerCompat.BEHAVIOR_SHOW_TRANSIENT_BARS_BY_SWIPE);
-        } else {
-            View decorView = activity.getWindow().getDecorView();
-            decorView.setSystemUiVisibility(
-                View.SYSTEM_UI_FLAG_IMMERSIVE_STICKY |
-                View.SYSTEM_UI_FLAG_LAYOUT_STABLE |
-                View.SYSTEM_UI_FLAG_LAYOUT_HIDE_NAVIGATION |
-                View.SYSTEM_UI_FLAG_LAYOUT_FULLSCREEN |
-                View.SYSTEM_UI_FLAG_HIDE_NAVIGATION |
-                View.SYSTEM_UI_FLAG_FULLSCREEN
-            );
-        }
+        SystemBarController.of(activity).setImmersive(true);
     }
 
     /**
@@ -291,14 +194,7 @@ public class SystemControl {
      * @param activity The target activity for immersive mode deactivation
      */
     public static void disableImmersiveMode(@NonNull Activity activity) {
-        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.R) {
-            WindowCompat.setDecorFitsSystemWindows(activity.getWindow(), true);
-            WindowInsetsControllerCompat controller = WindowCompat.getInsetsController(activity.getWindow(), activity.getWindow().getDecorView());
-            controller.show(WindowInsetsCompat.Type.systemBars());
-        } else {
-            View decorView = activity.getWindow().getDecorView();
-            decorView.setSystemUiVisibility(View.SYSTEM_UI_FLAG_VISIBLE);
-        }
+        SystemBarController.of(activity).setImmersive(false);
     }
 
     /**
@@ -386,6 +282,7 @@ public class SystemControl {
     /**
      * Handles orientation change events with proper status bar adjustment for consistent theming
      * This method should be called from onConfigurationChanged to maintain visual consistency
+     * Unchanged properties are skipped by the window's SystemBarController, so this is cheap to repeat
      * @param activity The target activity experiencing configuration changes
      */
     public static void handleOrientationChange(@NonNull Activity activity) {
@@ -413,9 +310,6 @@ public class SystemControl {
         if (isLandscapeOrientation(activity)) {
             // In landscape, consider using translucent or transparent status bar for media content
             setStatusBarMode(activity, StatusBarMode.TRANSLUCENT);
-        } else {
-            // In portrait, maintain standard status bar appearance with seed color
-            applySeedColorTheme(activity);
         }
     }
 
@@ -425,19 +319,7 @@ public class SystemControl {
      * @return True if the color is considered light, false for dark colors
      */
     private static boolean isColorLight(@ColorInt int color) {
-        if (color == Color.TRANSPARENT) return true;
-        
-        double red = Color.red(color) / 255.0;
-        double green = Color.green(color) / 255.0;
-        double blue = Color.blue(color) / 255.0;
-        
-        // Apply gamma correction for accurate luminance calculation
-        red = red <= 0.03928 ? red / 12.92 : Math.pow((red + 0.055) / 1.055, 2.4);
-        green = green <= 0.03928 ? green / 12.92 : Math.pow((green + 0.055) / 1.055, 2.4);
-        blue = blue <= 0.03928 ? blue / 12.92 : Math.pow((blue + 0.055) / 1.055, 2.4);
-        
-        double luminance = 0.2126 * red + 0.7152 * green + 0.0722 * blue;
-        return luminance > 0.5;
+        return ColorLuminance.isLight(color);
     }
 
     /**
@@ -0,0 +1,255 @@
+package com.nidoham.streamly.tabs;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.os.Bundle;
+import android.util.Log;
+import android.util.SparseArray;
+import androidx.annotation.IdRes;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+import androidx.annotation.Nullable;
+import androidx.fragment.app.Fragment;
+import androidx.fragment.app.FragmentActivity;
+import androidx.fragment.app.FragmentManager;
+import androidx.fragment.app.FragmentTransaction;
+import androidx.lifecycle.Lifecycle;
+import com.nidoham.streamly.fragments.BaseFragment;
+import com.nidoham.streamly.fragments.adapter.FragmentContainerAdapter;
+import com.nidoham.streamly.memory.TrimmableCache;
+import java.util.List;
+
+/**
+ * Hosts the bottom navigation tabs as fragments in a single container, switching with show/hide.
+ * The visible tab is capped at RESUMED and background tabs at STARTED, so they are paused but keep
+ * their views. How many tabs stay alive is decided by {@link TabRetentionPolicy}; evicted tabs are
+ * removed after their instance state is saved and rebuilt from it on the next visit.
+ */
+@MainThread
+public class ShowHideTabHost implements TrimmableCache {
+
+    private static final String TAG = "ShowHideTabHost";
+    private static final String STATE_CURRENT_POSITION = "tab_host_current_position";
+    private static final String STATE_SAVED_TABS = "tab_host_saved_tabs";
+    // Rough footprint of one live tab's fragment and view tree
+    private static final long TAB_VIEW_BYTES = 64 * 1024;
+
+    private final FragmentManager fragmentManager;
+    private final int containerId;
+    private final FragmentContainerAdapter adapter;
+    private final TabRetentionPolicy retentionPolicy;
+    private final SparseArray<Fragment> prewarmedFragments = new SparseArray<>();
+    private SparseArray<Fragment.SavedState> savedStates = new SparseArray<>();
+    private int currentPosition = -1;
+
+    /**
+     * @param activity Host activity whose fragment manager owns the tabs
+     * @param containerId Id of the container view the tabs are added to
+     * @param adapter Source of tab fragments and tags
+     */
+    public ShowHideTabHost(@NonNull FragmentActivity activity, @IdRes int containerId,
+                           @NonNull FragmentContainerAdapter adapter) {
+        this.fragmentManager = activity.getSupportFragmentManager();
+        this.containerId = containerId;
+        this.adapter = adapter;
+        ActivityManager activityManager = (ActivityManager) activity.getSystemService(Context.ACTIVITY_SERVICE);
+        this.retentionPolicy = new TabRetentionPolicy(TabRetentionPolicy.capacityForMemoryClass(
+            activityManager.getMemoryClass(), activityManager.isLowRamDevice()));
+    }
+
+    /**
+     * Restores host bookkeeping after recreation; the fragments themselves are restored by the fragment manager
+     * @param savedInstanceState Bundle previously produced by {@link #saveState(Bundle)}, may be null
+     */
+    public void restoreState(@Nullable Bundle savedInstanceState) {
+        if (savedInstanceState == null) {
+            return;
+        }
+        SparseArray<Fragment.SavedState> restored = savedInstanceState.getSparseParcelableArray(STATE_SAVED_TABS);
+        if (restored != null) {
+            savedStates = restored;
+        }
+        currentPosition = savedInstanceState.getInt(STATE_CURRENT_POSITION, -1);
+
+        // Rebuild the LRU order from the tabs that are still alive, visible tab last
+        for (int position = 0; position < adapter.getItemCount(); position++) {
+            if (position != currentPosition && findTab(position) != null) {
+                retentionPolicy.onTabShown(position);
+            }
+        }
+        if (currentPosition >= 0) {
+            retentionPolicy.onTabShown(currentPosition);
+        }
+    }
+
+    public void saveState(@NonNull Bundle outState) {
+        outState.putInt(STATE_CURRENT_POSITION, currentPosition);
+        outState.putSparseParcelableArray(STATE_SAVED_TABS, savedStates);
+    }
+
+    /**
+     * Makes a tab visible synchronously, creating it if needed and evicting tabs beyond the retention capacity
+     * @param position The tab to show
+     * @return True if the visible tab changed
+     */
+    public boolean showTab(int position) {
+        if (position == currentPosition || fragmentManager.isStateSaved()) {
+            return false;
+        }
+
+        FragmentTransaction transaction = fragmentManager.beginTransaction().setReorderingAllowed(true);
+
+        Fragment current = currentPosition >= 0 ? findTab(currentPosition) : null;
+        if (current != null) {
+            transaction.hide(current);
+            transaction.setMaxLifecycle(current, Lifecycle.State.STARTED);
+        }
+
+        Fragment target = findTab(position);
+        if (target == null) {
+            target = obtainFragment(position);
+            transaction.add(containerId, target, FragmentContainerAdapter.getTagForPosition(position));
+        } else {
+            transaction.show(target);
+        }
+        transaction.setMaxLifecycle(target, Lifecycle.State.RESUMED);
+
+        evict(transaction, retentionPolicy.onTabShown(position));
+        currentPosition = position;
+        transaction.commitNow();
+        return true;
+    }
+
+    /**
+     * Prefers an idle-time prewarmed instance, otherwise builds a new one seeded with any saved state
+     */
+    private Fragment obtainFragment(int position) {
+        Fragment fragment = prewarmedFragments.get(position);
+        if (fragment != null) {
+            prewarmedFragments.remove(position);
+            return fragment;
+        }
+        fragment = adapter.createFragment(position);
+        Fragment.SavedState savedState = savedStates.get(position);
+        if (savedState != null) {
+            fragment.setInitialSavedState(savedState);
+            savedStates.remove(position);
+        }
+        return fragment;
+    }
+
+    /**
+     * Reduces evicted tabs to their saved instance state and removes them in the given transaction
+     */
+    private void evict(FragmentTransaction transaction, List<Integer> positions) {
+        for (int position : positions) {
+            Fragment fragment = findTab(position);
+            if (fragment == null) {
+                continue;
+            }
+            Fragment.SavedState state = fragmentManager.saveFragmentInstanceState(fragment);
+            if (state != null) {
+                savedStates.put(position, state);
+            }
+            transaction.remove(fragment);
+        }
+        if (!positions.isEmpty()) {
+            Log.d(TAG, "Evicted tabs " + positions + ", " + retentionPolicy);
+        }
+    }
+
+    /**
+     * Creates a tab's fragment and builds its view ahead of time without adding it,
+     * so the first switch to that tab skips construction and view building
+     * @param position The tab to prewarm
+     * @param context Themed activity context used to build the views
+     * @return True if work was done, false if the tab is alive, saved or already prewarmed
+     */
+    public boolean prewarm(int position, @NonNull Context context) {
+        if (position < 0 || position >= adapter.getItemCount()
+                || findTab(position) != null
+                || savedStates.get(position) != null
+                || prewarmedFragments.get(position) != null) {
+            return false;
+        }
+        Fragment fragment = adapter.createFragment(position);
+        if (fragment instanceof BaseFragment) {
+            ((BaseFragment) fragment).prewarm(context);
+        }
+        prewarmedFragments.put(position, fragment);
+        return true;
+    }
+
+    @Nullable
+    private Fragment findTab(int position) {
+        return fragmentManager.findFragmentByTag(FragmentContainerAdapter.getTagForPosition(position));
+    }
+
+    public int getCurrentPosition() {
+        return currentPosition;
+    }
+
+    @NonNull
+    public TabRetentionPolicy getRetentionPolicy() {
+        return retentionPolicy;
+    }
+
+    /**
+     * @return Number of tab fragments currently added, visible or hidden
+     */
+    public int getLiveTabCount() {
+        int count = 0;
+        for (int position = 0; position < adapter.getItemCount(); position++) {
+            if (findTab(position) != null) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Restores the retention capacity after a memory-pressure trim, e.g. when the UI returns
+     */
+    public void restoreRetention() {
+        retentionPolicy.restoreCapacity();
+    }
+
+    /**
+     * Counts prewarmed tabs and hidden live tabs, the visible tab is never trimmable
+     */
+    @Override
+    public long getSizeBytes() {
+        int hidden = Math.max(0, getLiveTabCount() - 1);
+        return (prewarmedFragments.size() + hidden) * TAB_VIEW_BYTES;
+    }
+
+    /**
+     * Drops prewarmed tabs first, they were never shown and are cheap to rebuild,
+     * then lowers the retention capacity so hidden tabs fall back to saved state
+     * @param maxBytes Target size, 0 keeps only the visible tab
+     */
+    @Override
+    public void trimToSize(long maxBytes) {
+        while (prewarmedFragments.size() > 0 && getSizeBytes() > maxBytes) {
+            prewarmedFragments.removeAt(prewarmedFragments.size() - 1);
+        }
+        if (getSizeBytes() <= maxBytes || fragmentManager.isDestroyed()) {
+            return;
+        }
+        List<Integer> evicted = retentionPolicy.setCapacity((int) (maxBytes / TAB_VIEW_BYTES) + 1);
+        if (!evicted.isEmpty()) {
+            FragmentTransaction transaction = fragmentManager.beginTransaction().setReorderingAllowed(true);
+            evict(transaction, evicted);
+            // Trims usually arrive after onStop; the saved states collected above cover what would be lost
+            transaction.commitNowAllowingStateLoss();
+        }
+    }
+
+    /**
+     * Drops prewarmed fragments to prevent memory leaks
+     * Should be called when the host is no longer needed
+     */
+    public void clear() {
+        prewarmedFragments.clear();
+    }
+}
@@ -0,0 +1,77 @@
+package com.nidoham.streamly.tabs;
+
+import android.os.Looper;
+import android.os.MessageQueue;
+import androidx.annotation.MainThread;
+import androidx.annotation.NonNull;
+
+/**
+ * Prewarms background tabs one at a time whenever the main looper goes idle.
+ * Each idle pass does at most one unit of work so a frame is never delayed by
+ * more than a single tab build, and the whole sequence stops on the first user interaction.
+ */
+public class TabPrewarmer implements MessageQueue.IdleHandler {
+
+    /**
+     * Performs the actual prewarm work for a tab
+     */
+    public interface Target {
+        /**
+         * @param position The tab to prewarm
+         * @return True if work was done, false if the tab was already created or prewarmed
+         */
+        boolean prewarm(int position);
+    }
+
+    private final Target target;
+    private final int[] order;
+    private int nextIndex = 0;
+    private boolean scheduled = false;
+    private boolean cancelled = false;
+
+    /**
+     * @param target Receiver of prewarm requests
+     * @param order Tab positions in the order they should be prewarmed
+     */
+    public TabPrewarmer(@NonNull Target target, @NonNull int[] order) {
+        this.target = target;
+        this.order = order;
+    }
+
+    @MainThread
+    public void start() {
+        if (scheduled || cancelled || nextIndex >= order.length) {
+            return;
+        }
+        scheduled = true;
+        Looper.getMainLooper().getQueue().addIdleHandler(this);
+    }
+
+    /**
+     * Stops prewarming permanently, e.g. as soon as the user touches the screen
+     */
+    @MainThread
+    public void cancel() {
+        cancelled = true;
+        if (scheduled) {
+            scheduled = false;
+            Looper.getMainLooper().getQueue().removeIdleHandler(this);
+        }
+    }
+
+    @Override
+    public boolean queueIdle() {
+        if (cancelled) {
+            scheduled = false;
+            return false;
+        }
+        // Skip tabs that need no work so each idle pass builds at most one tab
+        while (nextIndex < order.length) {
+            if (target.prewarm(order[nextIndex++])) {
+                break;
+            }
+        }
+        scheduled = nextIndex < order.length;
+        return scheduled;
+    }
+}
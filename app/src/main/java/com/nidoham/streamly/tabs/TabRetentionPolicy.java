@@ -0,0 +1,123 @@
+package com.nidoham.streamly.tabs;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * LRU policy deciding which tab view hierarchies stay alive.
+ * The most recently shown tabs up to the capacity are retained; anything older is
+ * evicted and must be reduced to its saved state by the host. Contains no Android dependencies.
+ */
+public class TabRetentionPolicy {
+
+    private final int configuredCapacity;
+    private int capacity;
+    // Iteration order is least recently used first
+    private final LinkedHashSet<Integer> retained = new LinkedHashSet<>();
+
+    private long hits = 0;
+    private long misses = 0;
+    private long evictions = 0;
+
+    /**
+     * @param capacity Number of tab view hierarchies to keep alive, including the visible one
+     */
+    public TabRetentionPolicy(int capacity) {
+        this.configuredCapacity = Math.max(1, capacity);
+        this.capacity = configuredCapacity;
+    }
+
+    /**
+     * Chooses how many tabs to keep alive for a device
+     * @param memoryClassMb Per-app heap limit from ActivityManager.getMemoryClass()
+     * @param lowRamDevice Result of ActivityManager.isLowRamDevice()
+     * @return Retention capacity including the visible tab
+     */
+    public static int capacityForMemoryClass(int memoryClassMb, boolean lowRamDevice) {
+        if (lowRamDevice || memoryClassMb <= 64) {
+            return 1;
+        } else if (memoryClassMb <= 128) {
+            return 2;
+        } else if (memoryClassMb <= 256) {
+            return 3;
+        } else {
+            return 4;
+        }
+    }
+
+    /**
+     * Marks a tab as most recently used
+     * @param position The tab that became visible
+     * @return Positions evicted as a result, least recently used first
+     */
+    public synchronized List<Integer> onTabShown(int position) {
+        if (retained.remove(position)) {
+            hits++;
+        } else {
+            misses++;
+        }
+        retained.add(position);
+        return evictOverflow();
+    }
+
+    /**
+     * Temporarily lowers the capacity, e.g. under memory pressure
+     * @param newCapacity New capacity, clamped to at least 1 and at most the configured capacity
+     * @return Positions evicted as a result, least recently used first
+     */
+    public synchronized List<Integer> setCapacity(int newCapacity) {
+        capacity = Math.max(1, Math.min(configuredCapacity, newCapacity));
+        return evictOverflow();
+    }
+
+    /**
+     * Restores the capacity chosen at construction
+     */
+    public synchronized void restoreCapacity() {
+        capacity = configuredCapacity;
+    }
+
+    private List<Integer> evictOverflow() {
+        List<Integer> evicted = new ArrayList<>();
+        Iterator<Integer> iterator = retained.iterator();
+        while (retained.size() > capacity && iterator.hasNext()) {
+            evicted.add(iterator.next());
+            iterator.remove();
+            evictions++;
+        }
+        return evicted;
+    }
+
+    public synchronized boolean isRetained(int position) {
+        return retained.contains(position);
+    }
+
+    public synchronized int getCapacity() {
+        return capacity;
+    }
+
+    public synchronized int getRetainedCount() {
+        return retained.size();
+    }
+
+    public synchronized long getHitCount() {
+        return hits;
+    }
+
+    public synchronized long getMissCount() {
+        return misses;
+    }
+
+    public synchronized long getEvictionCount() {
+        return evictions;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return String.format(Locale.US, "TabRetentionPolicy[capacity=%d, retained=%s, hits=%d, misses=%d, evictions=%d]",
+            capacity, retained, hits, misses, evictions);
+    }
+}
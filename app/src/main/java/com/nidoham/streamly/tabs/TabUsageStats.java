@@ -0,0 +1,68 @@
+package com.nidoham.streamly.tabs;
+
+import android.content.SharedPreferences;
+import androidx.annotation.NonNull;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Persistent per-tab open counters used to decide which tabs are worth prewarming first.
+ */
+public class TabUsageStats {
+
+    private static final String KEY_PREFIX = "tab_open_count_";
+
+    private final SharedPreferences preferences;
+    private final int[] openCounts;
+
+    public TabUsageStats(@NonNull SharedPreferences preferences, int tabCount) {
+        this.preferences = preferences;
+        this.openCounts = new int[tabCount];
+        for (int i = 0; i < tabCount; i++) {
+            openCounts[i] = preferences.getInt(KEY_PREFIX + i, 0);
+        }
+    }
+
+    /**
+     * Records that the user opened a tab
+     * @param position The tab position that became visible
+     */
+    public void recordOpen(int position) {
+        if (position < 0 || position >= openCounts.length) {
+            return;
+        }
+        openCounts[position]++;
+        preferences.edit().putInt(KEY_PREFIX + position, openCounts[position]).apply();
+    }
+
+    /**
+     * @param excludedPosition Position to leave out, usually the currently selected tab
+     * @return Tab positions ordered from most to least frequently opened
+     */
+    @NonNull
+    public int[] getPrewarmOrder(int excludedPosition) {
+        return rank(openCounts, excludedPosition);
+    }
+
+    /**
+     * Orders positions by descending count, breaking ties by position
+     */
+    static int[] rank(int[] counts, int excludedPosition) {
+        List<Integer> positions = new ArrayList<>(counts.length);
+        for (int i = 0; i < counts.length; i++) {
+            if (i != excludedPosition) {
+                positions.add(i);
+            }
+        }
+        Collections.sort(positions, (a, b) -> counts[a] != counts[b]
+            ? Integer.compare(counts[b], counts[a])
+            : Integer.compare(a, b));
+
+        int[] order = new int[positions.size()];
+        for (int i = 0; i < order.length; i++) {
+            order[i] = positions.get(i);
+        }
+        return order;
+    }
+}
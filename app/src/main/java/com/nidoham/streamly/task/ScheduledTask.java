@@ -0,0 +1,170 @@
+package com.nidoham.streamly.task;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * One unit of work in a {@link TaskScheduler} lane. Its state moves once from queued to running or
+ * cancelled, and whoever makes that move adjusts the lane's queue depth, so the depth stays exact
+ * even while scopes cancel tasks that workers are about to take.
+ */
+final class ScheduledTask<T> implements Future<T> {
+
+    private static final int QUEUED = 0;
+    private static final int RUNNING = 1;
+    private static final int DONE = 2;
+    private static final int FAILED = 3;
+    private static final int CANCELLED = 4;
+
+    final TaskPriority priority;
+    final long enqueuedNanos;
+    private final TaskScheduler scheduler;
+    private final Callable<T> work;
+    private final TaskScope scope;
+    private final TaskScope.ResultListener<T> onResult;
+    private final TaskScope.ErrorListener onError;
+    private final AtomicInteger state = new AtomicInteger(QUEUED);
+    // Written before the state leaves RUNNING, read after it is seen
+    private T result;
+    private Exception error;
+
+    ScheduledTask(TaskScheduler scheduler, TaskPriority priority, Callable<T> work, TaskScope scope,
+                  TaskScope.ResultListener<T> onResult, TaskScope.ErrorListener onError) {
+        this.scheduler = scheduler;
+        this.priority = priority;
+        this.work = work;
+        this.scope = scope;
+        this.onResult = onResult;
+        this.onError = onError;
+        enqueuedNanos = System.nanoTime();
+    }
+
+    /**
+     * Claims a queued task for a worker
+     * @return False if it was cancelled first
+     */
+    boolean start() {
+        return state.compareAndSet(QUEUED, RUNNING);
+    }
+
+    /**
+     * Worker only, after {@link #start()}
+     */
+    void run() {
+        T value = null;
+        Exception failure = null;
+        try {
+            value = work.call();
+        } catch (Exception e) {
+            failure = e;
+        }
+        result = value;
+        error = failure;
+        if (state.compareAndSet(RUNNING, failure == null ? DONE : FAILED)) {
+            finish();
+            if (scope != null) {
+                scope.deliver(this);
+            }
+        }
+    }
+
+    /**
+     * For a scope that was cancelled before the task could be queued
+     */
+    void markCancelled() {
+        state.set(CANCELLED);
+    }
+
+    /**
+     * Never interrupts: an interrupt during FileChannel I/O closes the channel for every other user of it.
+     * A running task's result is discarded instead, and long tasks can poll {@link #isCancelled()}.
+     */
+    @Override
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        while (true) {
+            int current = state.get();
+            if (current != QUEUED && current != RUNNING) {
+                return false;
+            }
+            if (state.compareAndSet(current, CANCELLED)) {
+                if (current == QUEUED) {
+                    scheduler.onCancelled(this);
+                }
+                finish();
+                return true;
+            }
+        }
+    }
+
+    @Override
+    public boolean isCancelled() {
+        return state.get() == CANCELLED;
+    }
+
+    @Override
+    public boolean isDone() {
+        return state.get() >= DONE;
+    }
+
+    @Override
+    public T get() throws InterruptedException, ExecutionException {
+        synchronized (this) {
+            while (!isDone()) {
+                wait();
+            }
+        }
+        return report();
+    }
+
+    @Override
+    public T get(long timeout, TimeUnit unit) throws InterruptedException, ExecutionException, TimeoutException {
+        long deadline = System.nanoTime() + unit.toNanos(timeout);
+        synchronized (this) {
+            while (!isDone()) {
+                long remaining = deadline - System.nanoTime();
+                if (remaining <= 0) {
+                    throw new TimeoutException();
+                }
+                TimeUnit.NANOSECONDS.timedWait(this, remaining);
+            }
+        }
+        return report();
+    }
+
+    /**
+     * Callback thread only, after the scope has checked it is still active
+     */
+    void notifyListeners() {
+        int current = state.get();
+        if (current == DONE && onResult != null) {
+            onResult.onResult(result);
+        } else if (current == FAILED && onError != null) {
+            onError.onError(error);
+        }
+    }
+
+    private T report() throws ExecutionException {
+        int current = state.get();
+        if (current == CANCELLED) {
+            throw new CancellationException();
+        }
+        if (current == FAILED) {
+            throw new ExecutionException(error);
+        }
+        return result;
+    }
+
+    private void finish() {
+        synchronized (this) {
+            notifyAll();
+        }
+        if (scope != null) {
+            scope.onFinished(this);
+        }
+    }
+}
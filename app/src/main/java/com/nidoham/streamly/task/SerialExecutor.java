@@ -0,0 +1,110 @@
+package com.nidoham.streamly.task;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+
+/**
+ * Runs tasks one at a time, in submission order, in one lane of a {@link TaskScheduler}. Stands in
+ * for a private single-thread executor where a component relies on only its own tasks touching its
+ * state, e.g. an index writer. Each task queues in the lane on its own, so work in higher lanes goes
+ * first between two of them, and nothing holds a thread while the queue is empty.
+ */
+public final class SerialExecutor implements Executor {
+
+    private final TaskScheduler scheduler;
+    private final TaskPriority priority;
+
+    // Guarded by this
+    private final ArrayDeque<Runnable> queue = new ArrayDeque<>();
+    private boolean scheduled = false;
+    private boolean shutdown = false;
+
+    public SerialExecutor(TaskScheduler scheduler, TaskPriority priority) {
+        this.scheduler = scheduler;
+        this.priority = priority;
+    }
+
+    /**
+     * @throws RejectedExecutionException Once {@link #shutdown()} was called
+     */
+    @Override
+    public void execute(Runnable task) {
+        boolean start;
+        synchronized (this) {
+            if (shutdown) {
+                throw new RejectedExecutionException("Serial executor is shut down");
+            }
+            queue.add(task);
+            start = !scheduled;
+            scheduled = true;
+        }
+        if (start) {
+            try {
+                scheduler.submit(priority, this::runNext);
+            } catch (RejectedExecutionException e) {
+                synchronized (this) {
+                    queue.remove(task);
+                    scheduled = false;
+                }
+                throw e;
+            }
+        }
+    }
+
+    public <T> Future<T> submit(Callable<T> task) {
+        FutureTask<T> future = new FutureTask<>(task);
+        execute(future);
+        return future;
+    }
+
+    public Future<?> submit(Runnable task) {
+        FutureTask<Void> future = new FutureTask<>(task, null);
+        execute(future);
+        return future;
+    }
+
+    /**
+     * Queues the task once the delay has passed, behind whatever was queued by then. Dropped if the
+     * executor was shut down meanwhile.
+     */
+    public void executeLater(Runnable task, long delayMillis) {
+        scheduler.postDelayed(() -> {
+            try {
+                execute(task);
+            } catch (RejectedExecutionException e) {
+                // Shut down while the task was waiting
+            }
+        }, delayMillis);
+    }
+
+    /**
+     * Rejects new tasks; those already queued still run
+     */
+    public synchronized void shutdown() {
+        shutdown = true;
+    }
+
+    private Void runNext() {
+        Runnable task;
+        synchronized (this) {
+            task = queue.poll();
+        }
+        try {
+            task.run();
+        } finally {
+            boolean more;
+            synchronized (this) {
+                more = !queue.isEmpty();
+                scheduled = more;
+            }
+            if (more) {
+                scheduler.submit(priority, this::runNext);
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,17 @@
+package com.nidoham.streamly.task;
+
+/**
+ * Lanes of the {@link TaskScheduler}, earlier constants first. A worker only takes a task from a lane
+ * when every lane before it is empty, and the two lowest lanes may occupy only part of the workers, so
+ * a fetch the user is waiting for never queues behind a pool full of speculative work.
+ */
+public enum TaskPriority {
+    /** Data the user is waiting to see, e.g. a search or the first page of a list */
+    USER_VISIBLE,
+    /** Decoding images for views on screen */
+    VISIBLE_IMAGE,
+    /** Speculative work that may never be used */
+    PREFETCH,
+    /** Housekeeping nobody waits for, e.g. compaction or index syncs */
+    MAINTENANCE
+}
@@ -0,0 +1,369 @@
+package com.nidoham.streamly.task;
+
+import com.nidoham.streamly.metrics.LatencyHistogram;
+
+import java.util.Locale;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Fixed set of workers shared by every {@link TaskScope}, with one lane per {@link TaskPriority}.
+ * Tasks submitted from outside land in the lane's shared queue; tasks a worker submits while running
+ * go to that worker's own deque, newest first, and idle workers steal the oldest from its tail.
+ * Workers scan lanes in priority order, so a queued fetch is the next thing any free worker picks up,
+ * and {@link TaskPriority#PREFETCH} and {@link TaskPriority#MAINTENANCE} may occupy only some of them.
+ * ForkJoinPool steals work too but has no notion of priority, hence the hand-rolled queues.
+ */
+public final class TaskScheduler {
+
+    private static final TaskPriority[] PRIORITIES = TaskPriority.values();
+
+    private final Lane[] lanes = new Lane[PRIORITIES.length];
+    private final Worker[] workers;
+    private final ConcurrentLinkedQueue<Worker> idle = new ConcurrentLinkedQueue<>();
+    // Guarded by this, created with the first delayed task
+    private ScheduledThreadPoolExecutor timer;
+    private volatile boolean shutdown = false;
+
+    /**
+     * @param threads Workers, started immediately as daemon threads
+     */
+    public TaskScheduler(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be positive");
+        }
+        for (TaskPriority priority : PRIORITIES) {
+            lanes[priority.ordinal()] = new Lane(priority, maxRunning(priority, threads));
+        }
+        workers = new Worker[threads];
+        for (int i = 0; i < threads; i++) {
+            workers[i] = new Worker(i);
+        }
+        for (Worker worker : workers) {
+            worker.start();
+        }
+    }
+
+    /**
+     * @param callbackExecutor Where the scope's listeners run, usually the main thread
+     */
+    public TaskScope newScope(Executor callbackExecutor) {
+        return new TaskScope(this, callbackExecutor);
+    }
+
+    /**
+     * Runs work that belongs to no scope and reports only through the returned future
+     */
+    public <T> Future<T> submit(TaskPriority priority, Callable<T> work) {
+        ScheduledTask<T> task = new ScheduledTask<>(this, priority, work, null, null, null);
+        schedule(task);
+        return task;
+    }
+
+    /**
+     * Stops the workers once their current tasks finish and cancels everything still queued
+     */
+    public void shutdown() {
+        shutdown = true;
+        synchronized (this) {
+            if (timer != null) {
+                timer.shutdownNow();
+            }
+        }
+        for (Worker worker : workers) {
+            LockSupport.unpark(worker);
+        }
+        for (Lane lane : lanes) {
+            ScheduledTask<?> task;
+            while ((task = lane.injected.poll()) != null) {
+                task.cancel(false);
+            }
+        }
+        for (Worker worker : workers) {
+            for (ConcurrentLinkedDeque<ScheduledTask<?>> deque : worker.local) {
+                ScheduledTask<?> task;
+                while ((task = deque.poll()) != null) {
+                    task.cancel(false);
+                }
+            }
+        }
+    }
+
+    public int getThreadCount() {
+        return workers.length;
+    }
+
+    /**
+     * @return Tasks waiting in the lane, not counting running ones
+     */
+    public int getQueueDepth(TaskPriority priority) {
+        return lanes[priority.ordinal()].queued.get();
+    }
+
+    public int getMaxQueueDepth(TaskPriority priority) {
+        return lanes[priority.ordinal()].maxQueued.get();
+    }
+
+    /**
+     * @return Time from submission until a worker started the task
+     */
+    public LatencyHistogram getWaitTimes(TaskPriority priority) {
+        return lanes[priority.ordinal()].waits;
+    }
+
+    public long getCompletedCount(TaskPriority priority) {
+        return lanes[priority.ordinal()].completed.get();
+    }
+
+    public long getCancelledCount(TaskPriority priority) {
+        return lanes[priority.ordinal()].cancelled.get();
+    }
+
+    /**
+     * @return Tasks one worker took from another's deque
+     */
+    public long getStolenCount(TaskPriority priority) {
+        return lanes[priority.ordinal()].stolen.get();
+    }
+
+    /**
+     * @return One line per lane with depth, counts and wait percentiles
+     */
+    public String report() {
+        StringBuilder report = new StringBuilder();
+        for (Lane lane : lanes) {
+            if (report.length() > 0) {
+                report.append('\n');
+            }
+            report.append(String.format(Locale.US, "%s queued=%d (max %d) running=%d/%d submitted=%d"
+                    + " completed=%d cancelled=%d stolen=%d wait %s",
+                lane.priority, lane.queued.get(), lane.maxQueued.get(), lane.running.get(), lane.maxRunning,
+                lane.submitted.get(), lane.completed.get(), lane.cancelled.get(), lane.stolen.get(),
+                lane.waits.summary()));
+        }
+        return report.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "TaskScheduler{threads=" + workers.length + ", idle=" + idle.size() + "}";
+    }
+
+    void schedule(ScheduledTask<?> task) {
+        if (shutdown) {
+            throw new RejectedExecutionException("Scheduler is shut down");
+        }
+        Lane lane = lanes[task.priority.ordinal()];
+        lane.submitted.incrementAndGet();
+        int depth = lane.queued.incrementAndGet();
+        int max;
+        while (depth > (max = lane.maxQueued.get()) && !lane.maxQueued.compareAndSet(max, depth)) {
+            // Retry until the maximum is at least this depth
+        }
+        Thread current = Thread.currentThread();
+        if (current instanceof Worker && ((Worker) current).owner() == this) {
+            ((Worker) current).local[lane.priority.ordinal()].offerFirst(task);
+        } else {
+            lane.injected.offer(task);
+        }
+        wakeOne();
+    }
+
+    /**
+     * Runs the hand-off after the delay on a timer thread that does nothing else, so delayed work
+     * still queues in its lane and runs on the workers. Dropped once the scheduler is shut down.
+     */
+    void postDelayed(Runnable handOff, long delayMillis) {
+        ScheduledThreadPoolExecutor current;
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            if (timer == null) {
+                timer = new ScheduledThreadPoolExecutor(1, runnable -> {
+                    Thread thread = new Thread(runnable, "task-timer");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+                timer.setRemoveOnCancelPolicy(true);
+            }
+            current = timer;
+        }
+        try {
+            current.schedule(handOff, delayMillis, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down meanwhile
+        }
+    }
+
+    void onCancelled(ScheduledTask<?> task) {
+        Lane lane = lanes[task.priority.ordinal()];
+        lane.queued.decrementAndGet();
+        lane.cancelled.incrementAndGet();
+    }
+
+    private static int maxRunning(TaskPriority priority, int threads) {
+        switch (priority) {
+            case PREFETCH:
+                return Math.max(1, threads / 2);
+            case MAINTENANCE:
+                return 1;
+            default:
+                return threads;
+        }
+    }
+
+    private void wakeOne() {
+        Worker worker = idle.poll();
+        if (worker != null) {
+            LockSupport.unpark(worker);
+        }
+    }
+
+    /**
+     * @return A claimed task with a running slot held in its lane, or null
+     */
+    private ScheduledTask<?> next(Worker self) {
+        for (Lane lane : lanes) {
+            if (lane.queued.get() <= 0) {
+                continue;
+            }
+            if (lane.running.incrementAndGet() > lane.maxRunning) {
+                lane.running.decrementAndGet();
+                continue;
+            }
+            ScheduledTask<?> task = take(lane, self);
+            if (task != null) {
+                return task;
+            }
+            lane.running.decrementAndGet();
+        }
+        return null;
+    }
+
+    private ScheduledTask<?> take(Lane lane, Worker self) {
+        int index = lane.priority.ordinal();
+        ScheduledTask<?> task;
+        while ((task = self.local[index].pollFirst()) != null) {
+            if (claim(lane, task)) {
+                return task;
+            }
+        }
+        while ((task = lane.injected.poll()) != null) {
+            if (claim(lane, task)) {
+                return task;
+            }
+        }
+        int offset = ThreadLocalRandom.current().nextInt(workers.length);
+        for (int i = 0; i < workers.length; i++) {
+            Worker victim = workers[(offset + i) % workers.length];
+            if (victim == self) {
+                continue;
+            }
+            while ((task = victim.local[index].pollLast()) != null) {
+                if (claim(lane, task)) {
+                    lane.stolen.incrementAndGet();
+                    return task;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static boolean claim(Lane lane, ScheduledTask<?> task) {
+        if (!task.start()) {
+            // Cancelled while queued, already taken off the depth
+            return false;
+        }
+        lane.queued.decrementAndGet();
+        lane.waits.recordNanos(System.nanoTime() - task.enqueuedNanos);
+        return true;
+    }
+
+    private void execute(Worker worker, ScheduledTask<?> task) {
+        Lane lane = lanes[task.priority.ordinal()];
+        // The two lowest lanes also yield the CPU to the UI thread and visible work
+        int threadPriority = lane.maxRunning < workers.length ? Thread.MIN_PRIORITY : Thread.NORM_PRIORITY;
+        if (worker.getPriority() != threadPriority) {
+            worker.setPriority(threadPriority);
+        }
+        try {
+            task.run();
+        } finally {
+            lane.running.decrementAndGet();
+            lane.completed.incrementAndGet();
+            if (lane.maxRunning < workers.length && lane.queued.get() > 0) {
+                // A slot freed up, and an idle worker may have passed this lane over while it was full
+                wakeOne();
+            }
+        }
+    }
+
+    private static final class Lane {
+        final TaskPriority priority;
+        final int maxRunning;
+        final ConcurrentLinkedQueue<ScheduledTask<?>> injected = new ConcurrentLinkedQueue<>();
+        final AtomicInteger queued = new AtomicInteger();
+        final AtomicInteger maxQueued = new AtomicInteger();
+        final AtomicInteger running = new AtomicInteger();
+        final AtomicLong submitted = new AtomicLong();
+        final AtomicLong completed = new AtomicLong();
+        final AtomicLong cancelled = new AtomicLong();
+        final AtomicLong stolen = new AtomicLong();
+        final LatencyHistogram waits = new LatencyHistogram();
+
+        Lane(TaskPriority priority, int maxRunning) {
+            this.priority = priority;
+            this.maxRunning = maxRunning;
+        }
+    }
+
+    private final class Worker extends Thread {
+        final ConcurrentLinkedDeque<ScheduledTask<?>>[] local;
+
+        @SuppressWarnings({"unchecked", "rawtypes"})
+        Worker(int index) {
+            super("task-" + index);
+            setDaemon(true);
+            local = new ConcurrentLinkedDeque[PRIORITIES.length];
+            for (int i = 0; i < local.length; i++) {
+                local[i] = new ConcurrentLinkedDeque<>();
+            }
+        }
+
+        TaskScheduler owner() {
+            return TaskScheduler.this;
+        }
+
+        @Override
+        public void run() {
+            while (!shutdown) {
+                ScheduledTask<?> task = next(this);
+                if (task == null) {
+                    // Register first, then look again, so a submit between the two cannot be missed
+                    idle.add(this);
+                    task = next(this);
+                    if (task == null) {
+                        if (!shutdown) {
+                            LockSupport.park(this);
+                        }
+                        idle.remove(this);
+                        continue;
+                    }
+                    idle.remove(this);
+                }
+                execute(this, task);
+            }
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package com.nidoham.streamly.task;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
+
+/**
+ * Tasks that belong to one owner, e.g. a fragment's view. Cancelling the scope cancels all of them at
+ * once, and results reach listeners on the callback executor only while the scope is still active.
+ * Checking happens on the callback executor itself, so once {@link #cancel()} has returned on that
+ * thread no listener of the scope runs again.
+ */
+public final class TaskScope {
+
+    public interface ResultListener<T> {
+        void onResult(T result);
+    }
+
+    public interface ErrorListener {
+        void onError(Exception error);
+    }
+
+    private final TaskScheduler scheduler;
+    private final Executor callbackExecutor;
+
+    // Guarded by this
+    private final Set<ScheduledTask<?>> tasks = new HashSet<>();
+    private boolean cancelled = false;
+
+    TaskScope(TaskScheduler scheduler, Executor callbackExecutor) {
+        this.scheduler = scheduler;
+        this.callbackExecutor = callbackExecutor;
+    }
+
+    /**
+     * @param onResult Called on the callback executor, null if only the work matters
+     * @return Cancels just this task; it is never interrupted
+     */
+    public <T> Future<T> submit(TaskPriority priority, Callable<T> work, ResultListener<T> onResult) {
+        return submit(priority, work, onResult, null);
+    }
+
+    /**
+     * @param onError Called on the callback executor if the work throws
+     */
+    public <T> Future<T> submit(TaskPriority priority, Callable<T> work, ResultListener<T> onResult,
+                                ErrorListener onError) {
+        ScheduledTask<T> task = new ScheduledTask<>(scheduler, priority, work, this, onResult, onError);
+        synchronized (this) {
+            if (cancelled) {
+                task.markCancelled();
+                return task;
+            }
+            tasks.add(task);
+            // Queued under the lock, so a concurrent cancel() either sees the task or prevents it
+            scheduler.schedule(task);
+        }
+        return task;
+    }
+
+    /**
+     * Cancels every queued and running task and refuses new ones. Running tasks finish, their results
+     * are dropped.
+     * @return Number of tasks cancelled
+     */
+    public int cancel() {
+        List<ScheduledTask<?>> cancelling;
+        synchronized (this) {
+            cancelled = true;
+            cancelling = new ArrayList<>(tasks);
+            tasks.clear();
+        }
+        int count = 0;
+        for (ScheduledTask<?> task : cancelling) {
+            if (task.cancel(false)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * @return Tasks queued or running
+     */
+    public synchronized int getPendingCount() {
+        return tasks.size();
+    }
+
+    void onFinished(ScheduledTask<?> task) {
+        synchronized (this) {
+            tasks.remove(task);
+        }
+    }
+
+    void deliver(ScheduledTask<?> task) {
+        callbackExecutor.execute(() -> {
+            if (!isCancelled() && !task.isCancelled()) {
+                task.notifyListeners();
+            }
+        });
+    }
+}
@@ -0,0 +1,47 @@
+package com.nidoham.streamly.task;
+
+import android.os.Handler;
+import android.os.Looper;
+import androidx.annotation.AnyThread;
+import androidx.annotation.NonNull;
+
+/**
+ * Process-wide task scheduler. One worker per core but one, leaving a core for the UI thread.
+ * Sized for CPU work, so its tasks may read local files but never wait on the network; network I/O
+ * has its own pools, e.g. in ImageLoader, HttpTransport and DownloadManager.
+ */
+public final class Tasks {
+
+    private static volatile TaskScheduler instance;
+    private static volatile Handler mainHandler;
+
+    private Tasks() {
+    }
+
+    @AnyThread
+    @NonNull
+    public static TaskScheduler getScheduler() {
+        TaskScheduler scheduler = instance;
+        if (scheduler == null) {
+            synchronized (Tasks.class) {
+                scheduler = instance;
+                if (scheduler == null) {
+                    mainHandler = new Handler(Looper.getMainLooper());
+                    scheduler = new TaskScheduler(Math.max(2, Runtime.getRuntime().availableProcessors() - 1));
+                    instance = scheduler;
+                }
+            }
+        }
+        return scheduler;
+    }
+
+    /**
+     * @return A scope whose listeners run on the main thread
+     */
+    @AnyThread
+    @NonNull
+    public static TaskScope newScope() {
+        TaskScheduler scheduler = getScheduler();
+        return scheduler.newScope(mainHandler::post);
+    }
+}
@@ -0,0 +1,8 @@
+package com.nidoham.streamly;
+
+/**
+ * JUnit category for tests that time real work or run large workloads and print what they measured.
+ * Left out of the default unit test run; {@code ./gradlew testDebugUnitTest -Pbenchmarks} runs only these.
+ */
+public interface Benchmark {
+}
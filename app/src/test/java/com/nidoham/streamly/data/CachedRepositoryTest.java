@@ -0,0 +1,241 @@
+package com.nidoham.streamly.data;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class CachedRepositoryTest {
+
+    private static final long TTL_MILLIS = 60_000;
+    private static final String KEY = "page-1";
+
+    private static final Codec<String> CODEC = new Codec<String>() {
+        @Override
+        public byte[] encode(String value) {
+            return value.getBytes(StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public String decode(byte[] bytes) {
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    };
+
+    /**
+     * Returns a fixed value, or throws once failing is set, and counts calls
+     */
+    private static final class FakeFetcher implements CachedRepository.Fetcher<String> {
+        final AtomicInteger calls = new AtomicInteger();
+        volatile String value;
+        volatile boolean failing = false;
+
+        FakeFetcher(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public String fetch() throws IOException {
+            calls.incrementAndGet();
+            if (failing) {
+                throw new IOException("offline");
+            }
+            return value;
+        }
+    }
+
+    /**
+     * Revalidation executor that only runs what it was given when told to
+     */
+    private static final class ManualExecutor implements Executor {
+        final ArrayDeque<Runnable> queued = new ArrayDeque<>();
+
+        @Override
+        public synchronized void execute(Runnable task) {
+            queued.add(task);
+        }
+
+        synchronized int size() {
+            return queued.size();
+        }
+
+        void runAll() {
+            Runnable task;
+            while ((task = poll()) != null) {
+                task.run();
+            }
+        }
+
+        private synchronized Runnable poll() {
+            return queued.poll();
+        }
+    }
+
+    private final AtomicLong clock = new AtomicLong(1_000_000);
+    private final ManualExecutor revalidations = new ManualExecutor();
+    private File directory;
+    private DiskJournal disk;
+    private CachedRepository<String> repository;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("repository").toFile();
+        disk = new DiskJournal(new File(directory, "pages.journal"), 1024 * 1024, Long.MAX_VALUE);
+        repository = new CachedRepository<>("pages", CODEC, 64 * 1024, disk, TTL_MILLIS, revalidations,
+            clock::get);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        disk.close();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void secondReadIsAMemoryHit() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher("v1");
+        CachedRepository.Result<String> first = repository.get(KEY, fetcher);
+        assertEquals(CachedRepository.Source.NETWORK, first.getSource());
+        assertEquals("v1", first.getValue());
+
+        CachedRepository.Result<String> second = repository.get(KEY, fetcher);
+        assertEquals(CachedRepository.Source.MEMORY, second.getSource());
+        assertEquals("v1", second.getValue());
+        assertFalse(second.isStale());
+        assertEquals(1, fetcher.calls.get());
+        assertEquals(1, repository.getMemoryHitCount());
+    }
+
+    @Test
+    public void readsFromDiskOnceMemoryIsCleared() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher("v1");
+        repository.get(KEY, fetcher);
+        repository.getMemoryCache().clear();
+
+        CachedRepository.Result<String> result = repository.get(KEY, fetcher);
+        assertEquals(CachedRepository.Source.DISK, result.getSource());
+        assertEquals("v1", result.getValue());
+        assertEquals(1, fetcher.calls.get());
+        // The disk hit refills memory
+        assertEquals(CachedRepository.Source.MEMORY, repository.get(KEY, fetcher).getSource());
+    }
+
+    @Test
+    public void servesStaleWhileOneRevalidationRuns() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher("v1");
+        repository.get(KEY, fetcher);
+        List<String> announced = new ArrayList<>();
+        repository.addListener((key, value) -> announced.add(key + "=" + value));
+
+        clock.addAndGet(TTL_MILLIS + 1);
+        fetcher.value = "v2";
+        for (int i = 0; i < 3; i++) {
+            CachedRepository.Result<String> stale = repository.get(KEY, fetcher);
+            assertTrue(stale.isStale());
+            assertEquals("v1", stale.getValue());
+        }
+        assertEquals("one revalidation for three stale reads", 1, revalidations.size());
+        assertEquals(2, repository.getCoalescedCount());
+
+        revalidations.runAll();
+        assertEquals(2, fetcher.calls.get());
+        assertEquals(Collections.singletonList(KEY + "=v2"), announced);
+        CachedRepository.Result<String> fresh = repository.get(KEY, fetcher);
+        assertEquals("v2", fresh.getValue());
+        assertFalse(fresh.isStale());
+    }
+
+    @Test
+    public void concurrentMissesShareOneFetch() throws Exception {
+        CountDownLatch entered = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        CachedRepository.Fetcher<String> slow = () -> {
+            calls.incrementAndGet();
+            entered.countDown();
+            assertTrue(release.await(10, TimeUnit.SECONDS));
+            return "v1";
+        };
+        int readers = 4;
+        ExecutorService threads = Executors.newFixedThreadPool(readers);
+        try {
+            List<Future<CachedRepository.Result<String>>> results = new ArrayList<>();
+            results.add(threads.submit(() -> repository.get(KEY, slow)));
+            assertTrue(entered.await(10, TimeUnit.SECONDS));
+            for (int i = 1; i < readers; i++) {
+                results.add(threads.submit(() -> repository.get(KEY, slow)));
+            }
+            long deadline = System.currentTimeMillis() + 10_000;
+            while (repository.getCoalescedCount() < readers - 1) {
+                assertTrue("readers never joined the fetch", System.currentTimeMillis() < deadline);
+                Thread.sleep(1);
+            }
+            release.countDown();
+            for (Future<CachedRepository.Result<String>> result : results) {
+                assertEquals("v1", result.get(10, TimeUnit.SECONDS).getValue());
+            }
+        } finally {
+            threads.shutdownNow();
+        }
+        assertEquals(1, calls.get());
+        assertEquals(readers, repository.getMissCount());
+    }
+
+    @Test
+    public void failedFetchKeepsStaleValueAndClearsInFlight() throws Exception {
+        FakeFetcher fetcher = new FakeFetcher("v1");
+        try {
+            fetcher.failing = true;
+            repository.get(KEY, fetcher);
+            fail("a miss with a failing fetch has nothing to serve");
+        } catch (IOException expected) {
+            // Nothing cached yet
+        }
+        fetcher.failing = false;
+        assertEquals("v1", repository.get(KEY, fetcher).getValue());
+
+        clock.addAndGet(TTL_MILLIS + 1);
+        fetcher.failing = true;
+        CachedRepository.Result<String> stale = repository.get(KEY, fetcher);
+        assertEquals("v1", stale.getValue());
+        revalidations.runAll();
+
+        // The failure neither evicted the value nor left a dead future behind for the key
+        CachedRepository.Result<String> after = repository.get(KEY, fetcher);
+        assertEquals("v1", after.getValue());
+        assertTrue(after.isStale());
+        assertEquals("a new revalidation was started", 1, revalidations.size());
+        fetcher.failing = false;
+        fetcher.value = "v2";
+        revalidations.runAll();
+        assertEquals("v2", repository.get(KEY, fetcher).getValue());
+        assertSame(CachedRepository.Source.MEMORY, repository.get(KEY, fetcher).getSource());
+    }
+}
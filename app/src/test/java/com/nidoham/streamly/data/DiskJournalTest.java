@@ -0,0 +1,112 @@
+package com.nidoham.streamly.data;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class DiskJournalTest {
+
+    private static final long MAX_BYTES = 1024 * 1024;
+    private static final int RECORD_BYTES = 10 * 1024;
+    private static final long MAX_AGE = Long.MAX_VALUE;
+
+    private File directory;
+    private File file;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("journal").toFile();
+        file = new File(directory, "test.journal");
+    }
+
+    @After
+    public void tearDown() {
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    private static byte[] payload(int seed) {
+        byte[] bytes = new byte[RECORD_BYTES];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) (seed + i);
+        }
+        return bytes;
+    }
+
+    @Test
+    public void fullJournalCompactsRarely() throws IOException {
+        int puts = 1_000;
+        try (DiskJournal journal = new DiskJournal(file, MAX_BYTES, MAX_AGE)) {
+            for (int i = 0; i < puts; i++) {
+                journal.put("key" + i, payload(i), i);
+                assertTrue(journal.getFileBytes() <= MAX_BYTES + RECORD_BYTES * 2);
+            }
+            // Each size compaction frees about a quarter of the limit, so one per that many bytes written
+            long written = (long) puts * RECORD_BYTES;
+            long allowed = written / (MAX_BYTES / 4) + 1;
+            assertTrue(journal.toString(), journal.getCompactionCount() <= allowed);
+            assertTrue(journal.toString(), journal.getCompactionCount() >= allowed / 2);
+
+            // Oldest entries go first, the newest survive
+            assertNull(journal.get("key0", puts));
+            assertArrayEquals(payload(puts - 1), journal.get("key" + (puts - 1), puts).getPayload());
+        }
+    }
+
+    @Test
+    public void garbageIsCompactedWithoutDroppingLiveData() throws IOException {
+        try (DiskJournal journal = new DiskJournal(file, MAX_BYTES, MAX_AGE)) {
+            for (int i = 0; i < 200; i++) {
+                journal.put("key" + (i % 10), payload(i), i);
+            }
+            assertEquals(10, journal.getEntryCount());
+            assertTrue(journal.getCompactionCount() > 0);
+            for (int k = 0; k < 10; k++) {
+                assertArrayEquals(payload(190 + k), journal.get("key" + k, 200).getPayload());
+            }
+        }
+    }
+
+    @Test
+    public void reopenKeepsEntriesAndCutsATornTail() throws IOException {
+        try (DiskJournal journal = new DiskJournal(file, MAX_BYTES, MAX_AGE)) {
+            journal.put("a", payload(1), 1);
+            journal.put("b", payload(2), 2);
+            journal.remove("a");
+        }
+        long intact = file.length();
+        try (RandomAccessFile raw = new RandomAccessFile(file, "rw")) {
+            raw.seek(intact);
+            raw.write(new byte[] {0x53, 0x4A, 0x52});
+        }
+        try (DiskJournal journal = new DiskJournal(file, MAX_BYTES, MAX_AGE)) {
+            assertNull(journal.get("a", 3));
+            assertNotNull(journal.get("b", 3));
+            assertEquals(intact, journal.getFileBytes());
+        }
+    }
+
+    @Test
+    public void expiredEntriesAreHidden() throws IOException {
+        try (DiskJournal journal = new DiskJournal(file, MAX_BYTES, 100)) {
+            journal.put("a", payload(1), 1_000);
+            assertNotNull(journal.get("a", 1_100));
+            assertNull(journal.get("a", 1_101));
+        }
+    }
+}
@@ -0,0 +1,334 @@
+package com.nidoham.streamly.download;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.nidoham.streamly.Benchmark;
+import com.nidoham.streamly.data.DiskJournal;
+import com.nidoham.streamly.net.ConnectionPool;
+import com.nidoham.streamly.net.HttpTransport;
+import com.nidoham.streamly.net.LocalHttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Exercises {@link DownloadManager} against a {@link LocalHttpServer} that paces every response.
+ * Compares parallel ranges with a single connection, restarts a manager half way on the same
+ * journal, cuts connections, changes the resource mid-download, feeds a wrong checksum and runs two
+ * downloads under one bandwidth budget. Every finished file is compared byte for byte.
+ */
+@Category(Benchmark.class)
+public class DownloadBenchmark {
+
+    private static final int FILE_BYTES = 6 * 1024 * 1024;
+    private static final int CHUNK_BYTES = 1024 * 1024;
+    // Per response, so parallel ranges can beat a single stream
+    private static final long SERVER_BYTES_PER_SECOND = 3 * 1024 * 1024;
+    private static final long TIMEOUT_MILLIS = 60_000;
+
+    private final byte[] content = content(FILE_BYTES, 1);
+    private final StringBuilder report = new StringBuilder();
+    private File directory;
+    private LocalHttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("downloads").toFile();
+        server = new LocalHttpServer();
+        server.putResource("/video.mp4", content, "video/mp4");
+        server.setBytesPerSecond(SERVER_BYTES_PER_SECOND);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+        deleteTree(directory);
+        System.out.print(report);
+    }
+
+    @Test
+    public void parallelRangesBeatOneConnection() throws IOException {
+        double single = timed(server, new File(directory, "single"), content, 1, report);
+        double parallel = timed(server, new File(directory, "parallel"), content, 4, report);
+        report.append(String.format(Locale.US, "speedup with 4 connections: %.1fx%n", single / parallel));
+        assertTrue("4 connections took " + parallel + " s, 1 took " + single + " s", parallel < single);
+    }
+
+    @Test
+    public void resumesFromTheJournalAfterRestart() throws IOException {
+        resumeAfterRestart(server, new File(directory, "resume"), content, report);
+    }
+
+    @Test
+    public void retriesCutConnections() throws IOException {
+        retryCutConnections(server, new File(directory, "cuts"), content, report);
+    }
+
+    @Test
+    public void restartsWhenTheResourceChanges() throws IOException {
+        restartOnChange(server, new File(directory, "changed"), report);
+    }
+
+    @Test
+    public void rejectsAMismatchingChecksum() throws IOException {
+        rejectBadChecksum(server, new File(directory, "checksum"), report);
+    }
+
+    @Test
+    public void fallsBackToOneStreamWithoutRanges() throws IOException {
+        withoutRanges(server, new File(directory, "norange"), content, report);
+    }
+
+    @Test
+    public void sharesTheBudgetBetweenDownloads() throws IOException {
+        fairness(server, new File(directory, "fair"), report);
+    }
+
+    private static double timed(LocalHttpServer server, File directory, byte[] content, int connections,
+                                StringBuilder report) throws IOException {
+        File target = new File(directory, "video.mp4");
+        try (DiskJournal journal = journal(directory)) {
+            DownloadManager manager = manager(journal, new BandwidthBudget(0), connections);
+            long start = System.nanoTime();
+            manager.enqueue("v", server.url("/video.mp4"), target, "Video", DownloadManager.sha256Hex(content));
+            await(manager, "v", DownloadState.COMPLETED);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            manager.shutdown();
+            expectContent(target, content);
+            report.append(String.format(Locale.US, "%d connection(s): %.2f s, %.1f MB/s, %s%n", connections, seconds,
+                content.length / seconds / (1024 * 1024), manager.report()));
+            return seconds;
+        }
+    }
+
+    /**
+     * Stops a manager part way as if the process died, then lets a new one finish from the journal. The new
+     * one may fetch only the chunks the journal does not mark done, and the bytes lost at the restart are at
+     * most the chunk each connection had in flight.
+     */
+    private static void resumeAfterRestart(LocalHttpServer server, File directory, byte[] content,
+                                           StringBuilder report) throws IOException {
+        File target = new File(directory, "video.mp4");
+        int connections = 4;
+        try (DiskJournal journal = journal(directory)) {
+            DownloadManager first = manager(journal, new BandwidthBudget(0), connections);
+            first.enqueue("v", server.url("/video.mp4"), target, "Video", DownloadManager.sha256Hex(content));
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (find(first, "v") == null || find(first, "v").getDownloadedBytes() < content.length / 2) {
+                assertTrue("first half never arrived", System.currentTimeMillis() < deadline);
+                sleep(20);
+            }
+            first.shutdown();
+            long firstBytes = first.getBytesReceived();
+            ChunkMap journaled = new DownloadCodec().decode(journal.get("v", System.currentTimeMillis()).getPayload())
+                .chunks;
+            long missing = content.length - journaled.getCompletedBytes();
+
+            DownloadManager second = manager(journal, new BandwidthBudget(0), connections);
+            await(second, "v", DownloadState.COMPLETED);
+            second.shutdown();
+            expectContent(target, content);
+            long secondBytes = second.getBytesReceived();
+            long lost = firstBytes + secondBytes - content.length;
+            assertTrue("restart fetched " + secondBytes + " bytes, " + missing + " were missing",
+                secondBytes <= missing);
+            assertTrue("restart lost " + lost + " bytes", lost <= (long) connections * CHUNK_BYTES);
+            report.append(String.format(Locale.US,
+                "resume: %d KB before restart, %d KB missing in the journal, %d KB after, %d KB refetched%n",
+                firstBytes / 1024, missing / 1024, secondBytes / 1024, lost / 1024));
+        }
+    }
+
+    private static void retryCutConnections(LocalHttpServer server, File directory, byte[] content,
+                                            StringBuilder report) throws IOException {
+        File target = new File(directory, "video.mp4");
+        try (DiskJournal journal = journal(directory)) {
+            DownloadManager manager = manager(journal, new BandwidthBudget(0), 4);
+            server.cutResponses(3, 200 * 1024);
+            manager.enqueue("v", server.url("/video.mp4"), target, "Video", DownloadManager.sha256Hex(content));
+            await(manager, "v", DownloadState.COMPLETED);
+            manager.shutdown();
+            expectContent(target, content);
+            assertTrue("cut connections went unnoticed", manager.getChunkFailures() >= 1);
+            report.append("cut connections: completed, ").append(manager.report()).append('\n');
+        }
+    }
+
+    /**
+     * Replaces the resource after the first chunks, If-Range must turn the next chunk into a restart
+     */
+    private static void restartOnChange(LocalHttpServer server, File directory, StringBuilder report)
+            throws IOException {
+        byte[] original = content(FILE_BYTES, 2);
+        byte[] replacement = content(FILE_BYTES, 3);
+        server.putResource("/changing.mp4", original, "video/mp4");
+        File target = new File(directory, "changing.mp4");
+        try (DiskJournal journal = journal(directory)) {
+            DownloadManager manager = manager(journal, new BandwidthBudget(0), 2);
+            manager.enqueue("c", server.url("/changing.mp4"), target, "Changing", null);
+            long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+            while (find(manager, "c") == null || find(manager, "c").getDownloadedBytes() < 3 * CHUNK_BYTES) {
+                assertTrue("first chunks never arrived", System.currentTimeMillis() < deadline);
+                sleep(20);
+            }
+            server.putResource("/changing.mp4", replacement, "video/mp4");
+            await(manager, "c", DownloadState.COMPLETED);
+            manager.shutdown();
+            expectContent(target, replacement);
+            assertTrue("change was not detected", manager.getRestarts() >= 1);
+            report.append("changed resource: restarted ").append(manager.getRestarts())
+                .append(" time(s), result matches the new version\n");
+        }
+    }
+
+    private static void rejectBadChecksum(LocalHttpServer server, File directory, StringBuilder report)
+            throws IOException {
+        File target = new File(directory, "video.mp4");
+        try (DiskJournal journal = journal(directory)) {
+            DownloadManager manager = manager(journal, new BandwidthBudget(0), 4);
+            manager.enqueue("v", server.url("/video.mp4"), target, "Video", DownloadManager.sha256Hex(new byte[1]));
+            DownloadProgress failed = await(manager, "v", DownloadState.FAILED);
+            manager.shutdown();
+            assertFalse("mismatching file was moved into place", target.exists());
+            report.append("wrong checksum: ").append(failed.getError()).append('\n');
+        }
+    }
+
+    private static void withoutRanges(LocalHttpServer server, File directory, byte[] content, StringBuilder report)
+            throws IOException {
+        File target = new File(directory, "video.mp4");
+        server.setRangeSupport(false);
+        try (DiskJournal journal = journal(directory)) {
+            DownloadManager manager = manager(journal, new BandwidthBudget(0), 4);
+            long start = System.nanoTime();
+            manager.enqueue("v", server.url("/video.mp4"), target, "Video", DownloadManager.sha256Hex(content));
+            await(manager, "v", DownloadState.COMPLETED);
+            manager.shutdown();
+            expectContent(target, content);
+            report.append(String.format(Locale.US, "no range support: single stream in %.2f s%n",
+                (System.nanoTime() - start) / 1e9));
+        } finally {
+            server.setRangeSupport(true);
+        }
+    }
+
+    /**
+     * Two downloads, the first with a head start, under a budget well below what the server can send
+     */
+    private static void fairness(LocalHttpServer server, File directory, StringBuilder report) throws IOException {
+        // Large enough that both are still running while shares are sampled
+        byte[] a = content(2 * FILE_BYTES, 4);
+        byte[] b = content(2 * FILE_BYTES, 5);
+        server.putResource("/a.mp4", a, "video/mp4");
+        server.putResource("/b.mp4", b, "video/mp4");
+        server.setBytesPerSecond(0);
+        long budgetBytesPerSecond = 4 * 1024 * 1024;
+        try (DiskJournal journal = journal(directory)) {
+            DownloadManager manager = manager(journal, new BandwidthBudget(budgetBytesPerSecond), 4);
+            long start = System.nanoTime();
+            manager.enqueue("a", server.url("/a.mp4"), new File(directory, "a.mp4"), "A", null);
+            sleep(500);
+            manager.enqueue("b", server.url("/b.mp4"), new File(directory, "b.mp4"), "B", null);
+            // The newcomer's probe is a single connection, shares even out as the first chunks complete
+            sleep(1500);
+            long aStart = find(manager, "a").getDownloadedBytes();
+            long bStart = find(manager, "b").getDownloadedBytes();
+            sleep(1500);
+            long aShare = find(manager, "a").getDownloadedBytes() - aStart;
+            long bShare = find(manager, "b").getDownloadedBytes() - bStart;
+            DownloadProgress sample = find(manager, "a");
+            await(manager, "a", DownloadState.COMPLETED);
+            await(manager, "b", DownloadState.COMPLETED);
+            double seconds = (System.nanoTime() - start) / 1e9;
+            manager.shutdown();
+            expectContent(new File(directory, "a.mp4"), a);
+            expectContent(new File(directory, "b.mp4"), b);
+            double total = (a.length + b.length) / seconds;
+            report.append(String.format(Locale.US,
+                "fairness under %d MB/s: shares %.0f%% / %.0f%% once both ran, overall %.2f MB/s, reported %s%n",
+                budgetBytesPerSecond / (1024 * 1024), 100.0 * aShare / (aShare + bShare),
+                100.0 * bShare / (aShare + bShare), total / (1024 * 1024), sample));
+            assertTrue("newcomer starved: " + bShare + " of " + (aShare + bShare), bShare * 4 > aShare + bShare);
+            assertTrue("budget exceeded: " + total, total < budgetBytesPerSecond * 1.25);
+        } finally {
+            server.setBytesPerSecond(SERVER_BYTES_PER_SECOND);
+        }
+    }
+
+    private static DownloadManager manager(DiskJournal journal, BandwidthBudget budget, int connections) {
+        HttpTransport transport = new HttpTransport(new ConnectionPool(8, 30_000), null, 8, 8, 5_000, 10_000,
+            1024 * 1024);
+        return new DownloadManager(transport, journal, budget, connections, connections, CHUNK_BYTES, Runnable::run);
+    }
+
+    private static DiskJournal journal(File directory) throws IOException {
+        deleteTree(directory);
+        return new DiskJournal(new File(directory, "downloads.journal"), 1024 * 1024, Long.MAX_VALUE);
+    }
+
+    private static DownloadProgress await(DownloadManager manager, String id, DownloadState state) {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (true) {
+            DownloadProgress progress = find(manager, id);
+            if (progress != null && progress.getState() == state) {
+                return progress;
+            }
+            if (System.currentTimeMillis() >= deadline) {
+                fail("timed out waiting for " + state + ": " + progress);
+            }
+            sleep(10);
+        }
+    }
+
+    private static DownloadProgress find(DownloadManager manager, String id) {
+        List<DownloadProgress> downloads = manager.getDownloads();
+        for (DownloadProgress progress : downloads) {
+            if (progress.getId().equals(id)) {
+                return progress;
+            }
+        }
+        return null;
+    }
+
+    private static void expectContent(File file, byte[] expected) throws IOException {
+        assertArrayEquals("content differs in " + file, expected, Files.readAllBytes(file.toPath()));
+        assertFalse("partial file left behind for " + file, new File(file.getPath() + ".part").exists());
+    }
+
+    private static byte[] content(int length, long seed) {
+        byte[] data = new byte[length];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static void deleteTree(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+}
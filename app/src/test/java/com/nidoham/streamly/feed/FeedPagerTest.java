@@ -0,0 +1,203 @@
+package com.nidoham.streamly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import org.junit.Test;
+
+public class FeedPagerTest {
+
+    private static final int PAGE_SIZE = 10;
+    private static final int PREFETCH = 3;
+    private static final int MAX_PAGES = 3;
+    private static final long FRESHNESS = 60_000;
+
+    private final LocalFeedSource local = new LocalFeedSource("v", 100, 0, 0);
+    private final List<String> cursors = new ArrayList<>();
+    private long now = 0;
+
+    /**
+     * Loads run inline, so every call below has finished and published before it returns
+     */
+    private FeedPager pager(FeedSource source) {
+        FeedSource recording = (cursor, pageSize) -> {
+            cursors.add(cursor);
+            return source.loadPage(cursor, pageSize);
+        };
+        return new FeedPager(recording, PAGE_SIZE, PREFETCH, MAX_PAGES, FRESHNESS, Runnable::run, Runnable::run,
+            () -> now);
+    }
+
+    private static void scrollTo(FeedPager pager, int first, int last) {
+        pager.onViewportChanged(pager.getSnapshot(), first, last);
+    }
+
+    private static String firstId(FeedPager pager) {
+        return pager.getSnapshot().get(0).getId();
+    }
+
+    private static String lastId(FeedPager pager) {
+        List<FeedItem> items = pager.getSnapshot();
+        return items.get(items.size() - 1).getId();
+    }
+
+    @Test
+    public void appendsNearTheEndAndSlidesTheWindow() {
+        FeedPager pager = pager(local);
+        pager.refresh();
+        assertEquals(PAGE_SIZE, pager.getSnapshot().size());
+
+        // Not yet within the prefetch distance
+        scrollTo(pager, 0, PAGE_SIZE - PREFETCH - 1);
+        assertEquals(1, pager.getPageCount());
+
+        scrollTo(pager, 5, PAGE_SIZE - PREFETCH);
+        scrollTo(pager, 15, 19);
+        assertEquals(MAX_PAGES, pager.getPageCount());
+        assertFalse(pager.hasPrevious());
+
+        scrollTo(pager, 25, 29);
+        assertEquals(MAX_PAGES, pager.getPageCount());
+        assertEquals(MAX_PAGES * PAGE_SIZE, pager.getSnapshot().size());
+        assertEquals("v10", firstId(pager));
+        assertEquals("v39", lastId(pager));
+        assertTrue(pager.hasPrevious());
+    }
+
+    @Test
+    public void reloadsDroppedPagesThroughTheirCursors() {
+        FeedPager pager = pager(local);
+        pager.refresh();
+        for (int i = 0; i < 4; i++) {
+            int size = pager.getSnapshot().size();
+            scrollTo(pager, size - 5, size - 1);
+        }
+        assertEquals("v20", firstId(pager));
+        assertEquals("v49", lastId(pager));
+
+        cursors.clear();
+        scrollTo(pager, 1, 6);
+        assertEquals(1, cursors.size());
+        assertEquals("10", cursors.get(0));
+        assertEquals("v10", firstId(pager));
+        assertEquals("v39", lastId(pager));
+
+        // The first page was requested without a cursor and comes back the same way
+        scrollTo(pager, 0, 4);
+        assertNull(cursors.get(1));
+        assertEquals("v0", firstId(pager));
+        assertFalse(pager.hasPrevious());
+
+        // The tail dropped by the prepends is loaded again from its predecessor's next cursor
+        cursors.clear();
+        scrollTo(pager, 22, 29);
+        assertEquals("30", cursors.get(0));
+        assertEquals("v39", lastId(pager));
+    }
+
+    @Test
+    public void keepsABoundedWindowToTheEndOfTheFeed() {
+        FeedPager pager = pager(local);
+        pager.refresh();
+        int guard = 0;
+        while (pager.hasMore() && guard++ < 100) {
+            int size = pager.getSnapshot().size();
+            scrollTo(pager, size - 5, size - 1);
+            assertTrue(pager.getSnapshot().size() <= MAX_PAGES * PAGE_SIZE);
+        }
+        assertFalse(pager.hasMore());
+        assertEquals("v99", lastId(pager));
+        assertEquals(local.getTotalItems() / PAGE_SIZE, cursors.size());
+    }
+
+    @Test
+    public void skipsItemsRepeatedAcrossPages() {
+        // Every page after the first starts two items early, as a feed does when new items push it down
+        FeedSource overlapping = (cursor, pageSize) -> {
+            if (cursor == null) {
+                return local.loadPage(null, pageSize);
+            }
+            return local.loadPage(String.valueOf(Integer.parseInt(cursor) - 2), pageSize);
+        };
+        FeedPager pager = pager(overlapping);
+        pager.refresh();
+        scrollTo(pager, 5, 9);
+        scrollTo(pager, 10, 17);
+
+        Set<String> ids = new HashSet<>();
+        for (FeedItem item : pager.getSnapshot()) {
+            assertTrue("repeated " + item.getId(), ids.add(item.getId()));
+        }
+        assertEquals(3 * PAGE_SIZE - 2 * 2, pager.getSnapshot().size());
+        assertTrue(pager.toString(), pager.toString().contains("duplicates=4"));
+    }
+
+    @Test
+    public void refreshesOnlyWhenStale() {
+        FeedPager pager = pager(local);
+        assertTrue(pager.refreshIfStale());
+        List<FeedItem> first = pager.getSnapshot();
+
+        now += FRESHNESS - 1;
+        assertFalse(pager.refreshIfStale());
+        assertSame(first, pager.getSnapshot());
+
+        now += 1;
+        assertTrue(pager.refreshIfStale());
+        assertEquals(2, cursors.size());
+    }
+
+    @Test
+    public void ignoresViewportsOfOlderSnapshots() {
+        FeedPager pager = pager(local);
+        pager.refresh();
+        List<FeedItem> old = pager.getSnapshot();
+        scrollTo(pager, 5, 9);
+        pager.onViewportChanged(old, 5, 9);
+        assertEquals(2, pager.getPageCount());
+    }
+
+    @Test
+    public void retriesAfterAFailedLoad() {
+        boolean[] failNext = {false};
+        FeedSource flaky = (cursor, pageSize) -> {
+            if (failNext[0]) {
+                failNext[0] = false;
+                throw new IOException("offline");
+            }
+            return local.loadPage(cursor, pageSize);
+        };
+        List<Exception> errors = new ArrayList<>();
+        FeedPager pager = pager(flaky);
+        pager.setListener(new FeedPager.Listener() {
+            @Override
+            public void onFeedChanged(List<FeedItem> items) {
+            }
+
+            @Override
+            public void onLoadError(Exception error) {
+                errors.add(error);
+            }
+        });
+        pager.refresh();
+        failNext[0] = true;
+        scrollTo(pager, 5, 9);
+        assertEquals(1, errors.size());
+        assertEquals(1, pager.getPageCount());
+
+        // No new attempt until retry()
+        scrollTo(pager, 6, 9);
+        assertEquals(1, pager.getPageCount());
+        pager.retry();
+        assertNull(pager.getLastError());
+        assertEquals(2, pager.getPageCount());
+    }
+}
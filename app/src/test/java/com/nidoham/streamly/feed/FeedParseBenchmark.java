@@ -0,0 +1,259 @@
+package com.nidoham.streamly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Compares {@link FeedJsonParser} with building a JSON tree and mapping it to items, the way an
+ * org.json style parser works, on a generated payload. Reports time per parse, bytes allocated per
+ * parse and the time until the first item is available. Both must produce the same items, and the
+ * streaming parser must allocate less and hand out its first item before the tree is built. Allocation
+ * figures need a HotSpot-compatible VM; elsewhere they are reported as n/a and not compared.
+ */
+@Category(Benchmark.class)
+public class FeedParseBenchmark {
+
+    private static final int ITEMS = 5000;
+    private static final int WARMUP_ROUNDS = 20;
+    private static final int MEASURED_ROUNDS = 30;
+
+    /**
+     * Minimal recursive-descent tree parser standing in for a DOM-style JSON library
+     */
+    private static final class TreeParser {
+        private final String text;
+        private int pos = 0;
+
+        TreeParser(String text) {
+            this.text = text;
+        }
+
+        Object parseValue() {
+            skipWhitespace();
+            char c = text.charAt(pos);
+            switch (c) {
+                case '{':
+                    pos++;
+                    Map<String, Object> object = new LinkedHashMap<>();
+                    skipWhitespace();
+                    if (text.charAt(pos) == '}') {
+                        pos++;
+                        return object;
+                    }
+                    while (true) {
+                        skipWhitespace();
+                        String key = parseString();
+                        skipWhitespace();
+                        pos++;
+                        object.put(key, parseValue());
+                        skipWhitespace();
+                        if (text.charAt(pos++) == '}') {
+                            return object;
+                        }
+                    }
+                case '[':
+                    pos++;
+                    List<Object> array = new ArrayList<>();
+                    skipWhitespace();
+                    if (text.charAt(pos) == ']') {
+                        pos++;
+                        return array;
+                    }
+                    while (true) {
+                        array.add(parseValue());
+                        skipWhitespace();
+                        if (text.charAt(pos++) == ']') {
+                            return array;
+                        }
+                    }
+                case '"':
+                    return parseString();
+                case 't':
+                    pos += 4;
+                    return Boolean.TRUE;
+                case 'f':
+                    pos += 5;
+                    return Boolean.FALSE;
+                case 'n':
+                    pos += 4;
+                    return null;
+                default:
+                    int start = pos;
+                    while (pos < text.length() && "+-.eE0123456789".indexOf(text.charAt(pos)) >= 0) {
+                        pos++;
+                    }
+                    return Double.valueOf(text.substring(start, pos));
+            }
+        }
+
+        private String parseString() {
+            pos++;
+            StringBuilder value = new StringBuilder();
+            while (true) {
+                char c = text.charAt(pos++);
+                if (c == '"') {
+                    return value.toString();
+                }
+                if (c == '\\') {
+                    char escaped = text.charAt(pos++);
+                    value.append(escaped == 'n' ? '\n' : escaped == 't' ? '\t' : escaped);
+                } else {
+                    value.append(c);
+                }
+            }
+        }
+
+        private void skipWhitespace() {
+            while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+                pos++;
+            }
+        }
+    }
+
+    private static final Method ALLOCATED_BYTES;
+    private static final Object THREAD_BEAN;
+
+    static {
+        Method method = null;
+        Object bean = null;
+        try {
+            bean = Class.forName("java.lang.management.ManagementFactory").getMethod("getThreadMXBean").invoke(null);
+            method = Class.forName("com.sun.management.ThreadMXBean").getMethod("getThreadAllocatedBytes", long.class);
+        } catch (ReflectiveOperationException | RuntimeException | LinkageError e) {
+            // Not available on this VM
+        }
+        ALLOCATED_BYTES = method;
+        THREAD_BEAN = bean;
+    }
+
+    @Test
+    public void streamingParserMatchesTreeAndAllocatesLess() throws IOException {
+        int itemCount = ITEMS;
+        byte[] payload = samplePayload(itemCount);
+        FeedJsonParser parser = new FeedJsonParser();
+        // Both paths must agree before their numbers mean anything
+        List<FeedItem> streamed = parser.parsePage(payload).getItems();
+        List<FeedItem> tree = parseWithTree(payload);
+        assertEquals(itemCount, streamed.size());
+        assertEquals(tree, streamed);
+        assertSame("channel names are not interned", streamed.get(0).getChannelName(),
+            streamed.get(40).getChannelName());
+
+        for (int i = 0; i < WARMUP_ROUNDS; i++) {
+            parser.parsePage(payload);
+            parseWithTree(payload);
+        }
+        long streamNanos = 0;
+        long streamBytes = 0;
+        long treeNanos = 0;
+        long treeBytes = 0;
+        long streamFirstItemNanos = 0;
+        for (int i = 0; i < MEASURED_ROUNDS; i++) {
+            long allocated = allocatedBytes();
+            long start = System.nanoTime();
+            parser.parsePage(payload);
+            streamNanos += System.nanoTime() - start;
+            streamBytes += allocatedBytes() - allocated;
+
+            allocated = allocatedBytes();
+            start = System.nanoTime();
+            parseWithTree(payload);
+            treeNanos += System.nanoTime() - start;
+            treeBytes += allocatedBytes() - allocated;
+
+            long[] firstItemAt = {0};
+            long streamStart = System.nanoTime();
+            parser.parse(new ByteArrayInputStream(payload), item -> {
+                if (firstItemAt[0] == 0) {
+                    firstItemAt[0] = System.nanoTime();
+                }
+            });
+            streamFirstItemNanos += firstItemAt[0] - streamStart;
+        }
+
+        boolean allocationKnown = ALLOCATED_BYTES != null;
+        if (allocationKnown) {
+            assertTrue("streaming allocated " + streamBytes + " bytes, tree " + treeBytes, streamBytes < treeBytes);
+        }
+        assertTrue("first item only after a whole tree parse", streamFirstItemNanos < treeNanos);
+        System.out.println(String.format(Locale.US,
+            "%d items, %d KB payload%n"
+                + "streaming: %.2f ms/parse, %s/parse, first item after %.3f ms%n"
+                + "tree:      %.2f ms/parse, %s/parse, first item after %.2f ms (whole document)%n"
+                + "streaming interned channel names: %s",
+            itemCount, payload.length / 1024,
+            streamNanos / 1e6 / MEASURED_ROUNDS, allocationKnown ? kilobytes(streamBytes / MEASURED_ROUNDS) : "n/a",
+            streamFirstItemNanos / 1e6 / MEASURED_ROUNDS,
+            treeNanos / 1e6 / MEASURED_ROUNDS, allocationKnown ? kilobytes(treeBytes / MEASURED_ROUNDS) : "n/a",
+            treeNanos / 1e6 / MEASURED_ROUNDS,
+            streamed.get(0).getChannelName() == streamed.get(40).getChannelName() ? "shared" : "distinct"));
+    }
+
+    private static String kilobytes(long bytes) {
+        return String.format(Locale.US, "%d KB", bytes / 1024);
+    }
+
+    private static long allocatedBytes() {
+        if (ALLOCATED_BYTES == null) {
+            return -1;
+        }
+        try {
+            return (Long) ALLOCATED_BYTES.invoke(THREAD_BEAN, Thread.currentThread().getId());
+        } catch (ReflectiveOperationException e) {
+            return -1;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static List<FeedItem> parseWithTree(byte[] payload) {
+        Map<String, Object> root = (Map<String, Object>) new TreeParser(new String(payload, StandardCharsets.UTF_8))
+            .parseValue();
+        List<Object> array = (List<Object>) root.get("items");
+        List<FeedItem> items = new ArrayList<>(array.size());
+        for (Object element : array) {
+            Map<String, Object> object = (Map<String, Object>) element;
+            items.add(new FeedItem((String) object.get("id"), (String) object.get("title"),
+                (String) object.get("channel"), (String) object.get("thumbnail"),
+                ((Double) object.get("duration")).intValue(), ((Double) object.get("views")).longValue(),
+                ((Double) object.get("published")).longValue()));
+        }
+        return items;
+    }
+
+    /**
+     * Payload with a realistic mix: unique ids, titles and URLs, channel names repeating across items
+     */
+    static byte[] samplePayload(int itemCount) {
+        StringBuilder json = new StringBuilder(itemCount * 260).append("{\"items\":[");
+        long published = 1_700_000_000_000L;
+        for (int i = 0; i < itemCount; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("\n  {\"id\":\"v").append(Integer.toHexString(i * 7919 + 4099))
+                .append("\",\"title\":\"Video ").append(i).append(": a long enough title \u2014 \u09AD\u09BF\u09A1\u09BF\u0993 ").append(i % 97)
+                .append("\",\"channel\":\"Channel ").append(i % 40)
+                .append("\",\"thumbnail\":\"https://img.example.com/vi/").append(i).append("/mqdefault.jpg\"")
+                .append(",\"duration\":").append(30 + (i * 37) % 3600)
+                .append(",\"views\":").append((long) i * 104_729 % 50_000_000)
+                .append(",\"published\":").append(published - i * 3_600_000L)
+                .append(",\"tags\":[\"music\",\"live\"],\"live\":false}");
+        }
+        return json.append("\n],\"next\":\"").append(itemCount).append("\"}").toString()
+            .getBytes(StandardCharsets.UTF_8);
+    }
+}
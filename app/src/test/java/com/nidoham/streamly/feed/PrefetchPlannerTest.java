@@ -0,0 +1,150 @@
+package com.nidoham.streamly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+public class PrefetchPlannerTest {
+
+    private static final int MIN_LOOKAHEAD = 4;
+    private static final int MAX_LOOKAHEAD = 30;
+    private static final int DECODE_ROWS = 6;
+    private static final long FRAME_NANOS = 16_666_667L;
+    private static final int ITEMS = 1_000;
+    // Rows on screen at once
+    private static final int VISIBLE = 5;
+
+    /**
+     * Replays a steady scroll, one sample per frame, the way RecyclerView reports it
+     */
+    private static final class Trace {
+        final PrefetchPlanner planner = new PrefetchPlanner(MIN_LOOKAHEAD, MAX_LOOKAHEAD, DECODE_ROWS, 0.5f);
+        long timeNanos = 0;
+        float position;
+
+        Trace(float position) {
+            this.position = position;
+        }
+
+        Trace scroll(float rowsPerSecond, int frames) {
+            for (int i = 0; i < frames; i++) {
+                planner.onScrolled(timeNanos, position);
+                timeNanos += FRAME_NANOS;
+                position = Math.max(0, position + rowsPerSecond * FRAME_NANOS / 1e9f);
+            }
+            return this;
+        }
+
+        int first() {
+            return (int) position;
+        }
+
+        int last() {
+            return Math.min(ITEMS - 1, first() + VISIBLE - 1);
+        }
+
+        PrefetchPlanner plan(int itemCount) {
+            planner.plan(first(), last(), itemCount);
+            return planner;
+        }
+
+        PrefetchPlanner plan() {
+            return plan(ITEMS);
+        }
+    }
+
+    private static int lookahead(Trace trace) {
+        PrefetchPlanner planner = trace.plan();
+        return Math.abs(planner.getFetchEnd() - planner.getFetchStart()) + 1;
+    }
+
+    @Test
+    public void lookaheadGrowsWithVelocity() {
+        int idle = lookahead(new Trace(100));
+        int slow = lookahead(new Trace(100).scroll(8, 60));
+        int medium = lookahead(new Trace(100).scroll(25, 60));
+        int fast = lookahead(new Trace(100).scroll(200, 60));
+        assertEquals(MIN_LOOKAHEAD, idle);
+        assertTrue(idle + " < " + slow, idle < slow);
+        assertTrue(slow + " < " + medium, slow < medium);
+        assertTrue(medium + " < " + fast, medium < fast);
+        assertEquals("capped however fast the list moves", MAX_LOOKAHEAD, fast);
+    }
+
+    @Test
+    public void idleDropsTheFlingVelocity() {
+        Trace trace = new Trace(100).scroll(200, 60);
+        trace.planner.onIdle();
+        assertEquals(0, trace.planner.getVelocityRowsPerSecond(), 0);
+        assertEquals(MIN_LOOKAHEAD, lookahead(trace));
+    }
+
+    @Test
+    public void flingDecodesPastTheRowsItWillCross() {
+        Trace trace = new Trace(100).scroll(120, 60);
+        PrefetchPlanner planner = trace.plan();
+        int next = trace.last() + 1;
+        assertFalse(planner.isBackward());
+        assertTrue("still fetched", planner.shouldFetch(next));
+        assertFalse("flown over before a decode could land", planner.shouldDecode(next));
+        int decoded = 0;
+        int firstDecoded = -1;
+        for (int row = next; row <= planner.getFetchEnd(); row++) {
+            if (planner.shouldDecode(row)) {
+                decoded++;
+                firstDecoded = firstDecoded < 0 ? row : firstDecoded;
+            }
+        }
+        assertEquals(DECODE_ROWS, decoded);
+        assertTrue(firstDecoded > next);
+
+        // A slow scroll decodes the rows right next to the viewport
+        Trace slow = new Trace(100).scroll(8, 60);
+        assertTrue(slow.plan().shouldDecode(slow.last() + 1));
+    }
+
+    @Test
+    public void scrollingBackPredictsTheTopEdge() {
+        Trace trace = new Trace(500).scroll(-30, 60);
+        PrefetchPlanner planner = trace.plan();
+        assertTrue(planner.isBackward());
+        assertEquals(trace.first() - 1, planner.getFetchStart());
+        assertTrue(planner.getFetchEnd() < planner.getFetchStart());
+        assertTrue(planner.shouldFetch(trace.first() - 1));
+        assertTrue(planner.shouldDecode(trace.first() - 1));
+        assertFalse("nothing below the viewport", planner.shouldFetch(trace.last() + 1));
+    }
+
+    @Test
+    public void predictionsStayInsideTheList() {
+        // Racing toward the end of a short list
+        int itemCount = 40;
+        Trace down = new Trace(itemCount - VISIBLE - 3).scroll(200, 10);
+        PrefetchPlanner planner = down.plan(itemCount);
+        assertEquals(itemCount - 1, planner.getFetchEnd());
+        assertFalse(planner.shouldFetch(itemCount));
+        assertFalse(planner.shouldDecode(itemCount));
+
+        // Flinging back to the top
+        Trace up = new Trace(3).scroll(-200, 2);
+        planner = up.plan();
+        assertTrue(planner.isBackward());
+        assertEquals(0, planner.getFetchEnd());
+        assertFalse(planner.shouldFetch(-1));
+        assertFalse(planner.shouldDecode(-1));
+        for (int row = 0; row < up.first(); row++) {
+            assertTrue("row " + row, planner.shouldFetch(row));
+        }
+
+        // Already at an edge there is nothing left to fetch
+        Trace top = new Trace(2).scroll(-50, 4);
+        planner = top.plan();
+        assertEquals(0, top.first());
+        assertTrue(planner.isBackward());
+        for (int row = 0; row < ITEMS; row++) {
+            assertFalse("row " + row, planner.shouldFetch(row));
+        }
+    }
+}
@@ -0,0 +1,160 @@
+package com.nidoham.streamly.feed;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Measures {@link SubscriptionTimeline} on a {@link LocalChannelSource} with hundreds of channels:
+ * a full first refresh at different fan-out widths, delta refreshes after the clock moves on, and
+ * paging by k-way merge against concatenating and sorting every retained item. Pages are checked
+ * against the sorted concatenation, and cursors against refreshes that happen between pages.
+ */
+@Category(Benchmark.class)
+public class SubscriptionTimelineBenchmark {
+
+    private static final int CHANNELS = 300;
+    private static final long HOUR_MILLIS = 60 * 60 * 1000L;
+    private static final long START_MILLIS = 1_700_000_000_000L;
+    private static final int BATCH_SIZE = 50;
+    private static final int ITEMS_PER_CHANNEL = 100;
+    private static final long BATCH_LATENCY_MILLIS = 40;
+    private static final int PAGE_SIZE = 20;
+    private static final int PAGES = 10;
+    private static final int PAGING_ROUNDS = 50;
+
+    @Test
+    public void fanOutShortensTheFirstRefresh() throws IOException {
+        List<String> channels = LocalChannelSource.channelIds(CHANNELS);
+        LocalChannelSource source = new LocalChannelSource(BATCH_LATENCY_MILLIS, () -> START_MILLIS);
+        double serialMillis = 0;
+        for (int parallelism : new int[] {1, 4, 8}) {
+            SubscriptionTimeline timeline = new SubscriptionTimeline(source, channels, BATCH_SIZE, parallelism,
+                ITEMS_PER_CHANNEL);
+            long start = System.nanoTime();
+            int fetched = timeline.refresh();
+            double millis = (System.nanoTime() - start) / 1e6;
+            System.out.println(String.format(Locale.US, "first refresh, %d in flight: %.0f ms, %d items",
+                parallelism, millis, fetched));
+            assertEquals(CHANNELS * ITEMS_PER_CHANNEL, fetched);
+            if (parallelism == 1) {
+                serialMillis = millis;
+            } else {
+                assertTrue(parallelism + " in flight took " + millis + " ms", millis < serialMillis);
+            }
+        }
+    }
+
+    @Test
+    public void pagesMatchSortingAndCursorsSurviveRefreshes() throws IOException {
+        StringBuilder report = new StringBuilder();
+        List<String> channels = LocalChannelSource.channelIds(CHANNELS);
+        AtomicLong clock = new AtomicLong(START_MILLIS);
+        LocalChannelSource source = new LocalChannelSource(BATCH_LATENCY_MILLIS, clock::get);
+        SubscriptionTimeline timeline = new SubscriptionTimeline(source, channels, BATCH_SIZE, 4, ITEMS_PER_CHANNEL);
+        timeline.refresh();
+        checkPages(timeline);
+        comparePaging(timeline, report);
+
+        // A cursor taken before a refresh must continue exactly where it left off
+        FeedPage first = timeline.loadPage(null, PAGE_SIZE);
+        FeedPage second = timeline.loadPage(first.getNextCursor(), PAGE_SIZE);
+        for (long hours : new long[] {1, 6, 24}) {
+            clock.addAndGet(hours * HOUR_MILLIS);
+            long start = System.nanoTime();
+            int fetched = timeline.refresh();
+            double millis = (System.nanoTime() - start) / 1e6;
+            FeedPage again = timeline.loadPage(first.getNextCursor(), PAGE_SIZE);
+            assertEquals("cursor moved after a refresh", second.getItems(), again.getItems());
+            SubscriptionTimeline cold = new SubscriptionTimeline(source, channels, BATCH_SIZE, 4, ITEMS_PER_CHANNEL);
+            int coldFetched = cold.refresh();
+            report.append(String.format(Locale.US,
+                "after %2d h: delta refresh %.0f ms, %d new items (a full refetch transfers %d)%n",
+                hours, millis, fetched, coldFetched));
+            assertTrue("delta refresh fetched " + fetched, fetched < coldFetched);
+            checkPages(timeline);
+        }
+        assertEquals("a refresh without time passing found new items", 0, timeline.refresh());
+        report.append(timeline);
+        System.out.println(report);
+    }
+
+    /**
+     * Walks the whole timeline and compares it with the retained items sorted in one go
+     */
+    private static void checkPages(SubscriptionTimeline timeline) throws IOException {
+        List<FeedItem> expected = sortedConcatenation(timeline);
+        List<FeedItem> paged = new ArrayList<>(expected.size());
+        Set<String> ids = new HashSet<>();
+        String cursor = null;
+        do {
+            FeedPage page = pageFromMemory(timeline, cursor);
+            for (FeedItem item : page.getItems()) {
+                assertTrue("duplicate " + item, ids.add(item.getId()));
+            }
+            paged.addAll(page.getItems());
+            cursor = page.getNextCursor();
+        } while (cursor != null);
+        assertEquals("merged pages differ from sorting", expected, paged);
+    }
+
+    private static void comparePaging(SubscriptionTimeline timeline, StringBuilder report) throws IOException {
+        for (int i = 0; i < PAGING_ROUNDS; i++) {
+            mergePages(timeline);
+            sortPages(timeline);
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < PAGING_ROUNDS; i++) {
+            mergePages(timeline);
+        }
+        double mergeMicros = (System.nanoTime() - start) / 1e3 / PAGING_ROUNDS / PAGES;
+        start = System.nanoTime();
+        for (int i = 0; i < PAGING_ROUNDS; i++) {
+            sortPages(timeline);
+        }
+        double sortMicros = (System.nanoTime() - start) / 1e3 / PAGING_ROUNDS / PAGES;
+        report.append(String.format(Locale.US,
+            "page of %d over %d items: k-way merge %.0f us, concatenate and sort %.0f us%n", PAGE_SIZE,
+            timeline.getItemCount(), mergeMicros, sortMicros));
+    }
+
+    private static void mergePages(SubscriptionTimeline timeline) throws IOException {
+        String cursor = null;
+        for (int i = 0; i < PAGES; i++) {
+            cursor = pageFromMemory(timeline, cursor).getNextCursor();
+        }
+    }
+
+    /**
+     * What the timeline would do without a merge: gather everything, sort, then skip to the page
+     */
+    private static void sortPages(SubscriptionTimeline timeline) {
+        for (int i = 0; i < PAGES; i++) {
+            List<FeedItem> all = sortedConcatenation(timeline);
+            all.subList(i * PAGE_SIZE, Math.min(all.size(), (i + 1) * PAGE_SIZE));
+        }
+    }
+
+    private static List<FeedItem> sortedConcatenation(SubscriptionTimeline timeline) {
+        List<FeedItem> all = timeline.getRetainedItems();
+        all.sort(SubscriptionTimeline.NEWEST_FIRST);
+        return all;
+    }
+
+    /**
+     * A null cursor would refresh, so the first page starts from a cursor sorting before everything
+     */
+    private static FeedPage pageFromMemory(SubscriptionTimeline timeline, String cursor) throws IOException {
+        return timeline.loadPage(cursor != null ? cursor : Long.MAX_VALUE + ":", PAGE_SIZE);
+    }
+}
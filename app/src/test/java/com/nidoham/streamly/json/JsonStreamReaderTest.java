@@ -0,0 +1,86 @@
+package com.nidoham.streamly.json;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import org.junit.Test;
+
+public class JsonStreamReaderTest {
+
+    private static JsonStreamReader reader(String json) {
+        return new JsonStreamReader(json.getBytes(StandardCharsets.UTF_8), new StringInterner(64));
+    }
+
+    @Test
+    public void readsValidNumbers() throws IOException {
+        JsonStreamReader reader = reader("[0, -0, 12, -7, 1.5, -0.25, 1e3, 2E-2, 3.5e+1, 9223372036854775807]");
+        reader.beginArray();
+        assertEquals(0, reader.nextLong());
+        assertEquals(0, reader.nextLong());
+        assertEquals(12, reader.nextInt());
+        assertEquals(-7, reader.nextInt());
+        assertEquals(1.5, reader.nextDouble(), 0);
+        assertEquals(-0.25, reader.nextDouble(), 0);
+        assertEquals(1000, reader.nextLong());
+        assertEquals(0.02, reader.nextDouble(), 0);
+        assertEquals(35, reader.nextLong());
+        assertEquals(Long.MAX_VALUE, reader.nextLong());
+        reader.endArray();
+        assertEquals(JsonStreamReader.Token.END_DOCUMENT, reader.peek());
+    }
+
+    @Test
+    public void rejectsMalformedNumbersAtTheirOffset() {
+        String[] inputs = {"[-]", "[1.]", "[01]", "[1e]", "[-01]", "[.5]", "[1.e3]", "[1e+]", "[--1]", "[+1]"};
+        int[] offsets = {2, 3, 2, 3, 3, 1, 3, 4, 2, 1};
+        for (int i = 0; i < inputs.length; i++) {
+            JsonStreamReader reader = reader(inputs[i]);
+            try {
+                reader.beginArray();
+                reader.nextDouble();
+                fail("accepted " + inputs[i]);
+            } catch (IOException expected) {
+                assertTrue(inputs[i] + ": " + expected.getMessage(),
+                    expected.getMessage().endsWith(" at byte " + offsets[i]));
+            }
+        }
+    }
+
+    @Test
+    public void skippedNumbersAreCheckedToo() throws IOException {
+        JsonStreamReader reader = reader("{\"a\": 1., \"b\": 2}");
+        reader.beginObject();
+        assertEquals("a", reader.nextName());
+        try {
+            reader.skipValue();
+            fail("skipped a malformed number");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().endsWith(" at byte 8"));
+        }
+    }
+
+    @Test
+    public void numberSplitAcrossBuffersIsChecked() throws IOException {
+        // One byte per read, so every character of the number arrives in a buffer of its own
+        InputStream in = new ByteArrayInputStream("[-1.25e2, 1.]".getBytes(StandardCharsets.UTF_8)) {
+            @Override
+            public synchronized int read(byte[] b, int off, int len) {
+                return super.read(b, off, Math.min(len, 1));
+            }
+        };
+        JsonStreamReader reader = new JsonStreamReader(in, new StringInterner(64));
+        reader.beginArray();
+        assertEquals(-125, reader.nextLong());
+        try {
+            reader.nextDouble();
+            fail("accepted 1.");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().endsWith(" at byte 12"));
+        }
+    }
+}
@@ -0,0 +1,275 @@
+package com.nidoham.streamly.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import com.nidoham.streamly.data.RecordLog;
+import com.nidoham.streamly.feed.FeedItem;
+import com.nidoham.streamly.task.SerialExecutor;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.TaskScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicLong;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Drives {@link LibraryStore} the way playback does: tens of thousands of history entries whose
+ * positions are rewritten over and over from several threads. Measures group-committed writes
+ * against forcing every write, point reads and history pages, background compaction under load,
+ * and recovery from a clean close, from a crash image and from a torn tail. Every phase is checked
+ * against an in-memory model of the latest position per video.
+ */
+@Category(Benchmark.class)
+public class LibraryStoreBenchmark {
+
+    private static final int VIDEOS = 30_000;
+    private static final int UPDATES = 300_000;
+    private static final int WRITER_THREADS = 4;
+    private static final int FORCED_WRITES = 1_000;
+    private static final int READS = 200_000;
+    private static final long COMMIT_INTERVAL_MILLIS = 20;
+    private static final int BUFFER_BYTES = 256 * 1024;
+    private static final long CHECKPOINT_INTERVAL_BYTES = 4 * 1024 * 1024;
+
+    private File directory;
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("library").toFile();
+        scheduler = new TaskScheduler(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        scheduler.shutdown();
+        deleteTree(directory);
+    }
+
+    @Test
+    public void matchesTheModelThroughCompactionCrashAndTornTail() throws Exception {
+        StringBuilder report = new StringBuilder();
+        File live = new File(directory, "live");
+        Map<String, Long> model = new HashMap<>();
+
+        LibraryStore store = open(live);
+        forcedWrites(store, report);
+        long start = System.nanoTime();
+        for (int i = 0; i < VIDEOS; i++) {
+            store.recordWatch(item(i), 1_000, i);
+            model.put(id(i), 1_000L);
+        }
+        store.sync();
+        report.append(rate("initial history", VIDEOS, start)).append('\n');
+
+        long filePeak = updates(store, model, report);
+        store.sync();
+        assertEquals("history size", VIDEOS, store.getHistorySize());
+        reads(store, model, report);
+        awaitCompaction(store.getLog());
+        report.append(String.format(Locale.US, "compaction under load: file peaked at %d KB, now %d KB, %s%n",
+            filePeak / 1024, store.getLog().getFileBytes() / 1024, store.getLog().verify()));
+        assertTrue(store.getLog().verify(), store.getLog().verify().startsWith("ok"));
+        expectModel(store, model);
+
+        // A crash image: copy the files while the store is open and writing
+        for (int i = 0; i < 20_000; i++) {
+            String id = id(i % VIDEOS);
+            store.recordWatch(item(i % VIDEOS), 5_000 + i, 10_000_000L + i);
+            model.put(id, 5_000L + i);
+        }
+        store.sync();
+        File crashed = new File(directory, "crashed");
+        deleteTree(crashed);
+        copyTree(live, crashed);
+        store.close();
+
+        LibraryStore reopened = open(live);
+        report.append("clean reopen: ").append(reopened.getLog().getRecoveryReport()).append('\n');
+        expectModel(reopened, model);
+        reopened.close();
+
+        LibraryStore afterCrash = open(crashed);
+        report.append("crash image: ").append(afterCrash.getLog().getRecoveryReport()).append('\n');
+        expectModel(afterCrash, model);
+        afterCrash.close();
+
+        // Half a record of garbage where a write was cut off
+        try (RandomAccessFile torn = new RandomAccessFile(new File(crashed, "records.log"), "rw")) {
+            torn.seek(torn.length());
+            torn.write(new byte[] {0x52, 0x45, 0x43, 0x31, 0, 0, 0, 90, 1, 2, 3});
+        }
+        new File(crashed, "records.index").delete();
+        LibraryStore afterTear = open(crashed);
+        report.append("torn tail, no checkpoint: ").append(afterTear.getLog().getRecoveryReport()).append(", ")
+            .append(afterTear.getLog().verify()).append('\n');
+        assertTrue(afterTear.getLog().verify(), afterTear.getLog().verify().startsWith("ok"));
+        expectModel(afterTear, model);
+        report.append(afterTear.getLog());
+        afterTear.close();
+        System.out.println(report);
+    }
+
+    /**
+     * The baseline: every write waits for its own force
+     */
+    private static void forcedWrites(LibraryStore store, StringBuilder report) throws IOException {
+        long start = System.nanoTime();
+        for (int i = 0; i < FORCED_WRITES; i++) {
+            store.recordWatch(item(i), i, i);
+            store.sync();
+        }
+        report.append(rate("forced per write", FORCED_WRITES, start)).append('\n');
+    }
+
+    /**
+     * Position updates from several threads, each owning a slice of the videos so the model stays exact
+     * @return Largest file size seen, before compaction caught up
+     */
+    private static long updates(LibraryStore store, Map<String, Long> model, StringBuilder report)
+            throws Exception {
+        long commitsBefore = store.getLog().getGroupCommits();
+        AtomicLong filePeak = new AtomicLong();
+        long[][] lastPositions = new long[WRITER_THREADS][VIDEOS];
+        Thread[] threads = new Thread[WRITER_THREADS];
+        Exception[] failure = new Exception[1];
+        long start = System.nanoTime();
+        for (int t = 0; t < WRITER_THREADS; t++) {
+            int thread = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(thread);
+                try {
+                    for (int i = 0; i < UPDATES / WRITER_THREADS; i++) {
+                        int video = random.nextInt(VIDEOS / WRITER_THREADS) * WRITER_THREADS + thread;
+                        long position = 2_000 + i;
+                        store.recordWatch(item(video), position, 1_000_000L + i);
+                        lastPositions[thread][video] = position;
+                        if ((i & 1023) == 0) {
+                            filePeak.accumulateAndGet(store.getLog().getFileBytes(), Math::max);
+                        }
+                    }
+                } catch (IOException e) {
+                    failure[0] = e;
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        store.sync();
+        for (int t = 0; t < WRITER_THREADS; t++) {
+            for (int video = 0; video < VIDEOS; video++) {
+                if (lastPositions[t][video] != 0) {
+                    model.put(id(video), lastPositions[t][video]);
+                }
+            }
+        }
+        long commits = store.getLog().getGroupCommits() - commitsBefore;
+        assertTrue("writes were not grouped: " + commits + " commits", commits * 10 < UPDATES);
+        report.append(rate("group-committed updates, " + WRITER_THREADS + " threads", UPDATES, start))
+            .append(String.format(Locale.US, ", %d commits, %.0f records per commit%n", commits,
+                (double) UPDATES / Math.max(1, commits)));
+        return filePeak.get();
+    }
+
+    private static void reads(LibraryStore store, Map<String, Long> model, StringBuilder report) throws IOException {
+        Random random = new Random(42);
+        long start = System.nanoTime();
+        for (int i = 0; i < READS; i++) {
+            String id = id(random.nextInt(VIDEOS));
+            LibraryEntry entry = store.getHistoryEntry(id);
+            assertNotNull("missing " + id, entry);
+            assertEquals("wrong position for " + id, (long) model.get(id), entry.getPositionMillis());
+        }
+        report.append(rate("point reads", READS, start)).append('\n');
+        start = System.nanoTime();
+        int pages = 200;
+        for (int i = 0; i < pages; i++) {
+            List<LibraryEntry> page = store.getHistory(0, 50);
+            assertEquals("short history page", 50, page.size());
+        }
+        report.append(String.format(Locale.US, "newest 50 of %d history entries: %.2f ms per page%n", VIDEOS,
+            (System.nanoTime() - start) / 1e6 / pages));
+    }
+
+    private static void awaitCompaction(RecordLog log) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 30_000;
+        while (log.getCompactions() == 0) {
+            assertTrue("no compaction: " + log, System.currentTimeMillis() < deadline);
+            Thread.sleep(10);
+        }
+    }
+
+    private static void expectModel(LibraryStore store, Map<String, Long> model) throws IOException {
+        assertEquals("history size", model.size(), store.getHistorySize());
+        for (Map.Entry<String, Long> expected : model.entrySet()) {
+            LibraryEntry entry = store.getHistoryEntry(expected.getKey());
+            assertNotNull("lost " + expected.getKey(), entry);
+            assertEquals("lost update for " + expected.getKey(), (long) expected.getValue(),
+                entry.getPositionMillis());
+        }
+    }
+
+    private LibraryStore open(File directory) throws IOException {
+        return new LibraryStore(RecordLog.open(directory, COMMIT_INTERVAL_MILLIS, BUFFER_BYTES,
+            CHECKPOINT_INTERVAL_BYTES, new SerialExecutor(scheduler, TaskPriority.MAINTENANCE)));
+    }
+
+    private static String rate(String label, int operations, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        return String.format(Locale.US, "%s: %d ops in %.2f s, %.0f ops/s", label, operations, seconds,
+            operations / seconds);
+    }
+
+    private static String id(int video) {
+        return "v" + Integer.toHexString(video * 7919 + 4099);
+    }
+
+    private static FeedItem item(int video) {
+        return new FeedItem(id(video), "Video " + video, "Channel " + video % 300,
+            "https://img.example.com/vi/" + video + "/mqdefault.jpg", 60 + video % 3600, video * 31L, video);
+    }
+
+    private static void copyTree(File from, File to) throws IOException {
+        if (!to.isDirectory() && !to.mkdirs()) {
+            throw new IOException("Cannot create " + to);
+        }
+        File[] children = from.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                Files.copy(child.toPath(), new File(to, child.getName()).toPath(),
+                    StandardCopyOption.REPLACE_EXISTING);
+            }
+        }
+    }
+
+    private static void deleteTree(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+}
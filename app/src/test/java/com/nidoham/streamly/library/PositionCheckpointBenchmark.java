@@ -0,0 +1,321 @@
+package com.nidoham.streamly.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import com.nidoham.streamly.data.RecordLog;
+import com.nidoham.streamly.feed.FeedItem;
+import com.nidoham.streamly.task.SerialExecutor;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.TaskScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Replays the same playback sessions against {@link LibraryStore} twice: writing every progress tick,
+ * and through a {@link PositionCheckpointer} that flushes when a session ends, as onPause would.
+ * Players pause (repeating their position), seek and switch videos; the last session of every player
+ * is cut off without a flush, like a crash. Reports the write volume of both runs, how far a crash
+ * image lags behind the true positions, and that positions after the final flush are exact.
+ * Time is compressed: one millisecond stands for one 250 ms progress tick, and the flush and commit
+ * intervals are scaled the same way.
+ */
+@Category(Benchmark.class)
+public class PositionCheckpointBenchmark {
+
+    private static final int PLAYERS = 4;
+    private static final int TICKS_PER_PLAYER = 3_000;
+    private static final long TICK_MILLIS = 250;
+    private static final int VIDEOS = 2_000;
+    // 10 s of playback and 250 ms of commit interval at one tick per millisecond
+    private static final long FLUSH_INTERVAL_MILLIS = 40;
+    private static final long COMMIT_INTERVAL_MILLIS = 1;
+    private static final int MAX_PENDING = 16;
+    private static final int PAGE_SIZE = 100;
+
+    private interface PositionSink {
+        void onTick(FeedItem item, long positionMillis) throws IOException;
+
+        /**
+         * @return Completes once the session's position is durable, null if there is nothing to wait for
+         */
+        Future<?> onSessionEnded() throws IOException;
+    }
+
+    private static final class Run {
+        final Map<String, Long> truth = new ConcurrentHashMap<>();
+        // Videos whose last session ended normally, their saved position must be exact
+        final Map<String, Boolean> ended = new ConcurrentHashMap<>();
+        // Every position of each video's latest session, to tell how old a recovered position is
+        final Map<String, List<Long>> sessions = new ConcurrentHashMap<>();
+        final List<Future<?>> flushes = new ArrayList<>();
+        int ticks = 0;
+    }
+
+    private File directory;
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("positions").toFile();
+        scheduler = new TaskScheduler(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        scheduler.shutdown();
+        deleteTree(directory);
+    }
+
+    @Test
+    public void checkpointingWritesLessAndKeepsFinishedSessionsExact() throws Exception {
+        StringBuilder report = new StringBuilder();
+
+        File perTickDirectory = new File(directory, "per-tick");
+        LibraryStore perTick = open(perTickDirectory);
+        Run baseline = play(new PositionSink() {
+            @Override
+            public void onTick(FeedItem item, long positionMillis) throws IOException {
+                perTick.recordWatch(item, positionMillis, System.currentTimeMillis());
+            }
+
+            @Override
+            public Future<?> onSessionEnded() {
+                return null;
+            }
+        });
+        long perTickAppends = perTick.getLog().getAppends();
+        long perTickBytes = perTick.getLog().getCommittedBytes();
+        report.append(String.format(Locale.US, "per tick: %d ticks, %d writes, %d KB%n", baseline.ticks,
+            perTickAppends, perTickBytes / 1024));
+        report.append("  crash image: ").append(crashLag(perTickDirectory, baseline)).append('\n');
+        perTick.sync();
+        expectExact(perTick, baseline);
+        perTick.close();
+
+        File checkpointedDirectory = new File(directory, "checkpointed");
+        LibraryStore store = open(checkpointedDirectory);
+        PositionCheckpointer checkpointer = new PositionCheckpointer(() -> store, FLUSH_INTERVAL_MILLIS, MAX_PENDING,
+            Runnable::run);
+        Run checkpointed = play(new PositionSink() {
+            @Override
+            public void onTick(FeedItem item, long positionMillis) {
+                checkpointer.update(item, positionMillis);
+            }
+
+            @Override
+            public Future<?> onSessionEnded() {
+                return checkpointer.flush();
+            }
+        });
+        for (Future<?> flush : checkpointed.flushes) {
+            flush.get();
+        }
+        long appends = store.getLog().getAppends();
+        long bytes = store.getLog().getCommittedBytes();
+        report.append(String.format(Locale.US, "checkpointed: %d ticks, %d writes, %d KB, %.1fx fewer writes, "
+                + "%.1fx fewer bytes%n", checkpointed.ticks, appends, bytes / 1024, (double) perTickAppends / appends,
+            (double) perTickBytes / bytes));
+        report.append("  crash image: ").append(crashLag(checkpointedDirectory, checkpointed)).append('\n');
+        assertTrue(appends + " writes against " + perTickAppends + " per tick", appends * 2 < perTickAppends);
+
+        // What a list sees before the final flush already includes pending positions
+        List<String> ids = new ArrayList<>(checkpointed.truth.keySet());
+        assertEquals("pending positions not visible", checkpointed.truth, checkpointer.getResumePositions(ids));
+        checkpointer.flush().get();
+        expectExact(store, checkpointed);
+        bulkReads(checkpointer, ids, report);
+        report.append(checkpointer).append('\n');
+        checkpointer.close();
+        report.append(store.getLog());
+        store.close();
+        System.out.println(report);
+    }
+
+    /**
+     * Each player owns a disjoint set of videos, so the latest position per video is well defined
+     */
+    private static Run play(PositionSink sink) throws Exception {
+        Run run = new Run();
+        Thread[] players = new Thread[PLAYERS];
+        Exception[] failure = new Exception[1];
+        for (int p = 0; p < PLAYERS; p++) {
+            int player = p;
+            players[p] = new Thread(() -> {
+                try {
+                    play(player, sink, run);
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            });
+            players[p].start();
+        }
+        for (Thread player : players) {
+            player.join();
+        }
+        if (failure[0] != null) {
+            throw failure[0];
+        }
+        return run;
+    }
+
+    private static void play(int player, PositionSink sink, Run run) throws Exception {
+        Random random = new Random(player);
+        int ticks = 0;
+        while (ticks < TICKS_PER_PLAYER) {
+            int video = random.nextInt(VIDEOS / PLAYERS) * PLAYERS + player;
+            FeedItem item = item(video);
+            String id = item.getId();
+            Long previous = run.truth.get(id);
+            long position = previous != null ? previous : 0;
+            run.ended.remove(id);
+            List<Long> session = new ArrayList<>();
+            run.sessions.put(id, session);
+            int sessionTicks = 100 + random.nextInt(900);
+            boolean paused = false;
+            for (int i = 0; i < sessionTicks && ticks < TICKS_PER_PLAYER; i++, ticks++) {
+                if (random.nextInt(20) == 0) {
+                    paused = !paused;
+                }
+                if (random.nextInt(200) == 0) {
+                    position = random.nextInt(item.getDurationSeconds()) * 1000L;
+                } else if (!paused) {
+                    position += TICK_MILLIS;
+                }
+                sink.onTick(item, position);
+                run.truth.put(id, position);
+                session.add(position);
+                Thread.sleep(1);
+            }
+            if (ticks < TICKS_PER_PLAYER) {
+                Future<?> flush = sink.onSessionEnded();
+                run.ended.put(id, true);
+                if (flush != null) {
+                    synchronized (run) {
+                        run.flushes.add(flush);
+                    }
+                }
+            }
+        }
+        synchronized (run) {
+            run.ticks += ticks;
+        }
+    }
+
+    /**
+     * Copies the store's files while it is open, as a crash would leave them, and compares the
+     * recovered positions with the truth. How far behind a position is counts in ticks since the
+     * player was last there, since a seek makes the difference in position meaningless.
+     */
+    private String crashLag(File directory, Run run) throws IOException {
+        File image = new File(directory.getParentFile(), directory.getName() + "-crashed");
+        deleteTree(image);
+        image.mkdirs();
+        for (File file : directory.listFiles()) {
+            Files.copy(file.toPath(), new File(image, file.getName()).toPath(), StandardCopyOption.REPLACE_EXISTING);
+        }
+        LibraryStore recovered = reopen(image);
+        int endedWrong = 0;
+        int lagging = 0;
+        int maxLagTicks = 0;
+        for (Map.Entry<String, Long> truth : run.truth.entrySet()) {
+            LibraryEntry entry = recovered.getHistoryEntry(truth.getKey());
+            long saved = entry != null ? entry.getPositionMillis() : 0;
+            if (saved == truth.getValue()) {
+                continue;
+            }
+            if (run.ended.containsKey(truth.getKey())) {
+                endedWrong++;
+            } else {
+                lagging++;
+                List<Long> session = run.sessions.get(truth.getKey());
+                int last = session.lastIndexOf(saved);
+                maxLagTicks = Math.max(maxLagTicks, session.size() - 1 - last);
+            }
+        }
+        recovered.close();
+        assertEquals("finished sessions that lost their position", 0, endedWrong);
+        return String.format(Locale.US, "%d finished sessions exact, %d of %d cut-off sessions behind by at most "
+            + "%.1f s of playback", run.ended.size(), lagging, PLAYERS, maxLagTicks * TICK_MILLIS / 1000.0);
+    }
+
+    private static void expectExact(LibraryStore store, Run run) throws IOException {
+        for (Map.Entry<String, Long> truth : run.truth.entrySet()) {
+            LibraryEntry entry = store.getHistoryEntry(truth.getKey());
+            assertNotNull("missing " + truth.getKey(), entry);
+            assertEquals("wrong position for " + truth.getKey(), (long) truth.getValue(), entry.getPositionMillis());
+        }
+    }
+
+    /**
+     * A feed page is mostly videos that were never played, mixed with a few that were
+     */
+    private static void bulkReads(PositionCheckpointer checkpointer, List<String> ids, StringBuilder report)
+            throws IOException {
+        List<String> page = new ArrayList<>(ids.subList(0, Math.min(PAGE_SIZE / 4, ids.size())));
+        for (int video = VIDEOS; page.size() < PAGE_SIZE; video++) {
+            page.add(item(video).getId());
+        }
+        int rounds = 200;
+        for (int i = 0; i < rounds; i++) {
+            checkpointer.getResumePositions(page);
+            checkpointer.getResumePosition(page.get(i % page.size()));
+        }
+        long start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            checkpointer.getResumePositions(page);
+        }
+        double bulkMicros = (System.nanoTime() - start) / 1e3 / rounds;
+        start = System.nanoTime();
+        for (int i = 0; i < rounds; i++) {
+            for (String id : page) {
+                checkpointer.getResumePosition(id);
+            }
+        }
+        double singleMicros = (System.nanoTime() - start) / 1e3 / rounds;
+        report.append(String.format(Locale.US, "resume points for %d rows: %.0f us in bulk, %.0f us one by one%n",
+            page.size(), bulkMicros, singleMicros));
+    }
+
+    private LibraryStore open(File directory) throws IOException {
+        deleteTree(directory);
+        return reopen(directory);
+    }
+
+    private LibraryStore reopen(File directory) throws IOException {
+        return new LibraryStore(RecordLog.open(directory, COMMIT_INTERVAL_MILLIS, 256 * 1024, 4 * 1024 * 1024,
+            new SerialExecutor(scheduler, TaskPriority.MAINTENANCE)));
+    }
+
+    private static FeedItem item(int video) {
+        return new FeedItem("v" + Integer.toHexString(video * 7919 + 4099), "Video " + video, "Channel " + video % 50,
+            "https://img.example.com/vi/" + video + "/mqdefault.jpg", 300 + video % 3000, video * 31L, video);
+    }
+
+    private static void deleteTree(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.nidoham.streamly.library;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.data.RecordLog;
+import com.nidoham.streamly.feed.FeedItem;
+import com.nidoham.streamly.task.SerialExecutor;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.TaskScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+public class PositionCheckpointerTest {
+
+    private static final long FLUSH_INTERVAL_MILLIS = 20;
+    private static final long TIMEOUT_MILLIS = 10_000;
+
+    private static final FeedItem VIDEO = new FeedItem("v1", "Video", "Channel",
+        "https://img.example.com/vi/1/mqdefault.jpg", 600, 1_000, 1);
+
+    private File directory;
+    private TaskScheduler scheduler;
+    private LibraryStore store;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("checkpointer").toFile();
+        scheduler = new TaskScheduler(2);
+        store = new LibraryStore(RecordLog.open(directory, 1, 64 * 1024, 1024 * 1024,
+            new SerialExecutor(scheduler, TaskPriority.MAINTENANCE)));
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        store.close();
+        scheduler.shutdown();
+        File[] files = directory.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                child.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void timerWritesPositionsWithoutAFlush() throws Exception {
+        PositionCheckpointer checkpointer = new PositionCheckpointer(() -> store, FLUSH_INTERVAL_MILLIS, 16,
+            Runnable::run);
+        checkpointer.update(VIDEO, 5_000);
+        awaitWrites(checkpointer, 1);
+        assertEquals(5_000, store.getHistoryEntry(VIDEO.getId()).getPositionMillis());
+        checkpointer.close();
+    }
+
+    @Test
+    public void failedWriteIsRetriedByTheTimer() throws Exception {
+        AtomicInteger opens = new AtomicInteger();
+        PositionCheckpointer checkpointer = new PositionCheckpointer(() -> {
+            if (opens.incrementAndGet() == 1) {
+                throw new IOException("disk full");
+            }
+            return store;
+        }, FLUSH_INTERVAL_MILLIS, 16, Runnable::run);
+        checkpointer.update(VIDEO, 5_000);
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (opens.get() == 0) {
+            assertTrue("the timer never fired", System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+        // Lands on the entry re-queued by the failure, so only the re-armed timer can write it
+        checkpointer.update(VIDEO, 6_000);
+        awaitWrites(checkpointer, 1);
+        assertEquals(6_000, store.getHistoryEntry(VIDEO.getId()).getPositionMillis());
+        checkpointer.close();
+    }
+
+    private static void awaitWrites(PositionCheckpointer checkpointer, long writes) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + TIMEOUT_MILLIS;
+        while (checkpointer.getWrites() < writes) {
+            assertTrue("positions were never written: " + checkpointer, System.currentTimeMillis() < deadline);
+            Thread.sleep(1);
+        }
+    }
+}
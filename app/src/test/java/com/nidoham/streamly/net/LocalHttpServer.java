@@ -0,0 +1,429 @@
+package com.nidoham.streamly.net;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TimeZone;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.CRC32;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal HTTP/1.1 server on the loopback interface, a stand-in origin for exercising and
+ * benchmarking {@link HttpTransport} without a network. Serves static resources with ETag and
+ * Last-Modified validators, answers conditional requests with 304, gzips text bodies for clients
+ * that accept it (sent chunked, identity bodies use Content-Length) and can add a fixed latency.
+ * Single byte ranges are answered with 206, honouring If-Range, and bodies can be throttled or cut off
+ * part way to exercise resumable downloads.
+ * Not meant for anything but tests and benchmarks: no TLS, no request pipelining.
+ */
+public final class LocalHttpServer implements Closeable {
+
+    private static final class Resource {
+        final byte[] body;
+        final byte[] gzipped;
+        final String contentType;
+        final String etag;
+        final String lastModified;
+
+        Resource(byte[] body, byte[] gzipped, String contentType, String etag, String lastModified) {
+            this.body = body;
+            this.gzipped = gzipped;
+            this.contentType = contentType;
+            this.etag = etag;
+            this.lastModified = lastModified;
+        }
+    }
+
+    private static final int CHUNK_BYTES = 8 * 1024;
+    private static final int MAX_LINE_BYTES = 16 * 1024;
+
+    private final ServerSocket serverSocket;
+    private final ExecutorService workers;
+    private final Map<String, Resource> resources = new ConcurrentHashMap<>();
+    private volatile long latencyMillis = 0;
+    private volatile boolean keepAlive = true;
+    private volatile boolean rangeSupport = true;
+    private volatile long bytesPerSecond = 0;
+    private final AtomicInteger responsesToCut = new AtomicInteger();
+    private volatile long cutAfterBytes = 0;
+    private volatile boolean closed = false;
+
+    private final AtomicLong connectionsAccepted = new AtomicLong();
+    private final AtomicLong requestsServed = new AtomicLong();
+    private final AtomicLong notModifiedServed = new AtomicLong();
+    private final AtomicLong bodyBytesSent = new AtomicLong();
+
+    /**
+     * Binds an ephemeral loopback port and starts accepting
+     */
+    public LocalHttpServer() throws IOException {
+        serverSocket = new ServerSocket(0, 128, InetAddress.getLoopbackAddress());
+        AtomicInteger threadCount = new AtomicInteger();
+        workers = Executors.newCachedThreadPool(runnable -> {
+            Thread thread = new Thread(runnable, "local-http-" + threadCount.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        });
+        workers.execute(this::acceptLoop);
+    }
+
+    /**
+     * @param path Absolute path including any query, e.g. "/feed?page=2"
+     * @return The URL of a path on this server
+     */
+    public String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+
+    /**
+     * Publishes or replaces a resource; replacing with different content changes its validators
+     */
+    public void putResource(String path, byte[] body, String contentType) {
+        CRC32 crc = new CRC32();
+        crc.update(body, 0, body.length);
+        String etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(body.length) + "\"";
+        SimpleDateFormat format = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US);
+        format.setTimeZone(TimeZone.getTimeZone("GMT"));
+        boolean compressible = contentType.startsWith("text/") || contentType.contains("json");
+        resources.put(path, new Resource(body.clone(), compressible ? gzip(body) : null, contentType, etag,
+            format.format(new Date())));
+    }
+
+    /**
+     * @param latencyMillis Delay before each response, standing in for network round trip and server time
+     */
+    public void setLatencyMillis(long latencyMillis) {
+        this.latencyMillis = latencyMillis;
+    }
+
+    /**
+     * @param keepAlive False to close every connection after one response, as a baseline for pooling
+     */
+    public void setKeepAlive(boolean keepAlive) {
+        this.keepAlive = keepAlive;
+    }
+
+    /**
+     * @param rangeSupport False to ignore Range headers and always send the whole resource
+     */
+    public void setRangeSupport(boolean rangeSupport) {
+        this.rangeSupport = rangeSupport;
+    }
+
+    /**
+     * @param bytesPerSecond Rate each response body is sent at, 0 for unlimited
+     */
+    public void setBytesPerSecond(long bytesPerSecond) {
+        this.bytesPerSecond = bytesPerSecond;
+    }
+
+    /**
+     * Makes the next responses drop their connection part way through the body
+     * @param count Number of responses to cut
+     * @param afterBytes Body bytes sent before the connection is closed
+     */
+    public void cutResponses(int count, long afterBytes) {
+        cutAfterBytes = afterBytes;
+        responsesToCut.set(count);
+    }
+
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.get();
+    }
+
+    public long getRequestsServed() {
+        return requestsServed.get();
+    }
+
+    public long getNotModifiedServed() {
+        return notModifiedServed.get();
+    }
+
+    public long getBodyBytesSent() {
+        return bodyBytesSent.get();
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Socket socket = serverSocket.accept();
+                connectionsAccepted.incrementAndGet();
+                workers.execute(() -> serve(socket));
+            } catch (IOException e) {
+                if (!closed) {
+                    // Transient accept failure, e.g. out of file descriptors
+                    sleep(10);
+                }
+            }
+        }
+    }
+
+    private void serve(Socket socket) {
+        try (Socket connection = socket) {
+            connection.setTcpNoDelay(true);
+            InputStream in = new BufferedInputStream(connection.getInputStream());
+            OutputStream out = new BufferedOutputStream(connection.getOutputStream());
+            while (!closed) {
+                String requestLine = readLine(in);
+                if (requestLine == null || requestLine.isEmpty()) {
+                    return;
+                }
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(in)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    if (colon > 0) {
+                        headers.put(line.substring(0, colon).trim().toLowerCase(Locale.US), line.substring(colon + 1).trim());
+                    }
+                }
+                if (line == null) {
+                    return;
+                }
+                skipBody(in, headers);
+                boolean close = !keepAlive || HttpConnection.containsToken(headers.get("connection"), "close");
+                if (latencyMillis > 0) {
+                    sleep(latencyMillis);
+                }
+                respond(out, requestLine, headers, close);
+                out.flush();
+                requestsServed.incrementAndGet();
+                if (close) {
+                    return;
+                }
+            }
+        } catch (SocketException e) {
+            // Client went away
+        } catch (IOException e) {
+            // Malformed request or broken connection, drop it
+        }
+    }
+
+    private void respond(OutputStream out, String requestLine, Map<String, String> headers, boolean close)
+            throws IOException {
+        String[] parts = requestLine.split(" ");
+        String method = parts[0];
+        Resource resource = parts.length >= 2 ? resources.get(parts[1]) : null;
+        StringBuilder head = new StringBuilder(256);
+        String connection = close ? "close" : "keep-alive";
+        if (resource == null || !("GET".equals(method) || "HEAD".equals(method))) {
+            int code = resource == null ? 404 : 405;
+            head.append("HTTP/1.1 ").append(code).append(code == 404 ? " Not Found" : " Method Not Allowed")
+                .append("\r\nContent-Length: 0\r\nConnection: ").append(connection).append("\r\n\r\n");
+            out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            return;
+        }
+
+        String ifNoneMatch = headers.get("if-none-match");
+        String ifModifiedSince = headers.get("if-modified-since");
+        boolean unchanged = ifNoneMatch != null
+            ? HttpConnection.containsToken(ifNoneMatch, resource.etag) || "*".equals(ifNoneMatch.trim())
+            : resource.lastModified.equals(ifModifiedSince);
+        if (unchanged) {
+            notModifiedServed.incrementAndGet();
+            head.append("HTTP/1.1 304 Not Modified\r\nETag: ").append(resource.etag)
+                .append("\r\nConnection: ").append(connection).append("\r\n\r\n");
+            out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            return;
+        }
+
+        String range = rangeSupport ? headers.get("range") : null;
+        String ifRange = headers.get("if-range");
+        if (range != null && ifRange != null
+                && !ifRange.equals(resource.etag) && !ifRange.equals(resource.lastModified)) {
+            // The client's copy is of another version, it needs the whole resource
+            range = null;
+        }
+        long[] span = range != null ? parseRange(range, resource.body.length) : null;
+        if (range != null && span == null) {
+            head.append("HTTP/1.1 416 Range Not Satisfiable\r\nContent-Range: bytes */").append(resource.body.length)
+                .append("\r\nContent-Length: 0\r\nConnection: ").append(connection).append("\r\n\r\n");
+            out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+            return;
+        }
+
+        boolean gzip = span == null && resource.gzipped != null
+            && HttpConnection.containsToken(headers.get("accept-encoding"), "gzip");
+        head.append(span != null ? "HTTP/1.1 206 Partial Content" : "HTTP/1.1 200 OK")
+            .append("\r\nContent-Type: ").append(resource.contentType)
+            .append("\r\nETag: ").append(resource.etag)
+            .append("\r\nLast-Modified: ").append(resource.lastModified)
+            .append("\r\nConnection: ").append(connection).append("\r\n");
+        if (rangeSupport) {
+            head.append("Accept-Ranges: bytes\r\n");
+        }
+        byte[] body = gzip ? resource.gzipped : resource.body;
+        int offset = span != null ? (int) span[0] : 0;
+        int length = span != null ? (int) (span[1] - span[0] + 1) : body.length;
+        if (span != null) {
+            head.append("Content-Range: bytes ").append(span[0]).append('-').append(span[1]).append('/')
+                .append(resource.body.length).append("\r\n");
+        }
+        if (gzip) {
+            head.append("Content-Encoding: gzip\r\nTransfer-Encoding: chunked\r\n\r\n");
+        } else {
+            head.append("Content-Length: ").append(length).append("\r\n\r\n");
+        }
+        out.write(head.toString().getBytes(StandardCharsets.ISO_8859_1));
+        if ("HEAD".equals(method)) {
+            return;
+        }
+        if (gzip) {
+            for (int chunk = 0; chunk < body.length; chunk += CHUNK_BYTES) {
+                int chunkLength = Math.min(CHUNK_BYTES, body.length - chunk);
+                out.write((Integer.toHexString(chunkLength) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.write(body, chunk, chunkLength);
+                out.write('\r');
+                out.write('\n');
+            }
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            bodyBytesSent.addAndGet(body.length);
+        } else {
+            writeBody(out, body, offset, length);
+        }
+    }
+
+    /**
+     * Sends an identity body, paced to the configured rate and cut short if a cut is pending
+     */
+    private void writeBody(OutputStream out, byte[] body, int offset, int length) throws IOException {
+        long cutAt = responsesToCut.getAndUpdate(count -> Math.max(0, count - 1)) > 0 ? cutAfterBytes : Long.MAX_VALUE;
+        long rate = bytesPerSecond;
+        long startNanos = System.nanoTime();
+        int sent = 0;
+        while (sent < length) {
+            int piece = Math.min(CHUNK_BYTES, length - sent);
+            if (sent + piece > cutAt) {
+                out.write(body, offset + sent, (int) Math.max(0, cutAt - sent));
+                out.flush();
+                bodyBytesSent.addAndGet(Math.max(0, cutAt - sent));
+                throw new SocketException("Response cut after " + cutAt + " bytes");
+            }
+            out.write(body, offset + sent, piece);
+            sent += piece;
+            bodyBytesSent.addAndGet(piece);
+            if (rate > 0) {
+                out.flush();
+                long dueNanos = startNanos + sent * 1_000_000_000L / rate;
+                long waitMillis = (dueNanos - System.nanoTime()) / 1_000_000;
+                if (waitMillis > 0) {
+                    sleep(waitMillis);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return Inclusive first and last byte of a single "bytes=" range, or null if it cannot be satisfied
+     */
+    private static long[] parseRange(String range, long length) {
+        if (!range.startsWith("bytes=") || range.indexOf(',') >= 0) {
+            return null;
+        }
+        String spec = range.substring(6).trim();
+        int dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            if (dash == 0) {
+                long suffix = Long.parseLong(spec.substring(1));
+                return suffix <= 0 || length == 0 ? null : new long[] {Math.max(0, length - suffix), length - 1};
+            }
+            long first = Long.parseLong(spec.substring(0, dash));
+            long last = dash == spec.length() - 1 ? length - 1
+                : Math.min(length - 1, Long.parseLong(spec.substring(dash + 1)));
+            return first >= length || last < first ? null : new long[] {first, last};
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private static void skipBody(InputStream in, Map<String, String> headers) throws IOException {
+        String length = headers.get("content-length");
+        if (length == null) {
+            return;
+        }
+        long remaining = Long.parseLong(length);
+        while (remaining > 0) {
+            long skipped = in.skip(remaining);
+            if (skipped <= 0) {
+                if (in.read() == -1) {
+                    throw new IOException("Request body truncated");
+                }
+                skipped = 1;
+            }
+            remaining -= skipped;
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(64);
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b == '\n') {
+                byte[] bytes = line.toByteArray();
+                int length = bytes.length > 0 && bytes[bytes.length - 1] == '\r' ? bytes.length - 1 : bytes.length;
+                return new String(bytes, 0, length, StandardCharsets.ISO_8859_1);
+            }
+            line.write(b);
+            if (line.size() > MAX_LINE_BYTES) {
+                throw new IOException("Line too long");
+            }
+        }
+        return null;
+    }
+
+    private static byte[] gzip(byte[] data) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(data.length / 4 + 64);
+        try (GZIPOutputStream out = new GZIPOutputStream(bytes)) {
+            out.write(data);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        try {
+            serverSocket.close();
+        } catch (IOException ignored) {
+            // Already closed
+        }
+        workers.shutdownNow();
+    }
+
+    @Override
+    public String toString() {
+        return "LocalHttpServer[port=" + serverSocket.getLocalPort() + ", connections=" + connectionsAccepted
+            + ", requests=" + requestsServed + ", notModified=" + notModifiedServed + ", bodyBytes=" + bodyBytesSent + "]";
+    }
+}
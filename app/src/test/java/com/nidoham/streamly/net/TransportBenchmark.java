@@ -0,0 +1,138 @@
+package com.nidoham.streamly.net;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Offline benchmark of {@link HttpTransport} against a {@link LocalHttpServer}.
+ * Measures keep-alive pooling against connection-per-request, revalidation savings, gzip savings and
+ * how far a visible request overtakes a queue of prefetches, asserting the property each one exists
+ * for. Only the last is timed, and is a {@link Benchmark} that prints its numbers.
+ */
+public class TransportBenchmark {
+
+    private static final int FEED_ITEMS = 200;
+    private static final int REQUESTS = 500;
+
+    private LocalHttpServer server;
+
+    @Before
+    public void setUp() throws IOException {
+        server = new LocalHttpServer();
+        server.putResource("/feed", sampleFeed(), "application/json; charset=utf-8");
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    public void keepAlivePoolReusesConnections() throws IOException {
+        server.setKeepAlive(false);
+        long perRequest = connectionsFor(REQUESTS, 0);
+        assertEquals(REQUESTS, perRequest);
+
+        server.setKeepAlive(true);
+        long pooled = connectionsFor(REQUESTS, 8);
+        // At most one connection per concurrent request slot
+        assertTrue("opened " + pooled, pooled <= 8);
+    }
+
+    private long connectionsFor(int requests, int idlePerHost) throws IOException {
+        long connectionsBefore = server.getConnectionsAccepted();
+        HttpTransport transport = new HttpTransport(new ConnectionPool(idlePerHost, 30_000), null,
+            8, 8, 5_000, 10_000, 4 * 1024 * 1024);
+        HttpRequest request = HttpRequest.get(server.url("/feed")).withRevalidation(false);
+        List<HttpTransport.Call> calls = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            calls.add(transport.enqueue(request, null));
+        }
+        for (HttpTransport.Call call : calls) {
+            assertEquals(200, transport.await(call).getCode());
+        }
+        transport.getConnectionPool().evictAll();
+        return server.getConnectionsAccepted() - connectionsBefore;
+    }
+
+    @Test
+    public void refetchesAreRevalidatedAndBodiesGzipped() throws IOException {
+        int refetches = REQUESTS / 10;
+        HttpTransport transport = new HttpTransport(new ConnectionPool(4, 30_000),
+            new ValidatorCache(4 * 1024 * 1024, null, 1024 * 1024), 4, 4, 5_000, 10_000, 4 * 1024 * 1024);
+        HttpRequest request = HttpRequest.get(server.url("/feed"));
+        HttpResponse first = transport.execute(request);
+        assertTrue("gzip did not shrink the body", first.getWireBytes() < first.getBody().length / 2);
+        long refetchWire = 0;
+        for (int i = 0; i < refetches; i++) {
+            HttpResponse response = transport.execute(request);
+            assertTrue("expected 304 on refetch " + i, response.isNotModified());
+            assertEquals(first.getBody().length, response.getBody().length);
+            refetchWire += response.getWireBytes();
+        }
+        transport.getConnectionPool().evictAll();
+        assertEquals(refetches, transport.getNotModifiedCount());
+        assertTrue(refetchWire < first.getWireBytes() * refetches / 2);
+        assertTrue(transport.getBytesSavedByRevalidation() > 0);
+    }
+
+    /**
+     * Fills the per-host limit with prefetches, then measures when a late visible request completes
+     */
+    @Test
+    @Category(Benchmark.class)
+    public void visibleRequestOvertakesPrefetches() throws IOException {
+        server.setLatencyMillis(5);
+        HttpTransport transport = new HttpTransport(new ConnectionPool(2, 30_000), null,
+            8, 2, 5_000, 10_000, 4 * 1024 * 1024);
+        String url = server.url("/feed");
+        long start = System.nanoTime();
+        List<HttpTransport.Call> prefetches = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            prefetches.add(transport.enqueue(HttpRequest.get(url).withRevalidation(false)
+                .withPriority(RequestPriority.PREFETCH), null));
+        }
+        transport.execute(HttpRequest.get(url).withRevalidation(false).withPriority(RequestPriority.VISIBLE));
+        double visibleMillis = (System.nanoTime() - start) / 1e6;
+        for (HttpTransport.Call call : prefetches) {
+            transport.await(call);
+        }
+        double allMillis = (System.nanoTime() - start) / 1e6;
+        transport.getConnectionPool().evictAll();
+        // 40 prefetches two at a time take 20 latencies; the visible request waits for about two
+        assertTrue(String.format(Locale.US, "visible %.0fms, all %.0fms", visibleMillis, allMillis),
+            visibleMillis * 3 < allMillis);
+        System.out.println(String.format(Locale.US,
+            "priority: visible request behind 40 prefetches (2 per host) done after %.0fms, queue drained after %.0fms%n"
+                + "  visible wait %s%n  prefetch wait %s",
+            visibleMillis, allMillis, transport.getQueueWait(RequestPriority.VISIBLE).summary(),
+            transport.getQueueWait(RequestPriority.PREFETCH).summary()));
+    }
+
+    /**
+     * Repetitive JSON of about the size of a feed page
+     */
+    private static byte[] sampleFeed() {
+        StringBuilder json = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < FEED_ITEMS; i++) {
+            if (i > 0) {
+                json.append(',');
+            }
+            json.append("{\"id\":\"video_").append(i).append("\",\"title\":\"Sample video number ").append(i)
+                .append("\",\"channel\":\"Channel ").append(i % 17).append("\",\"durationSeconds\":")
+                .append(60 + i * 7 % 900).append(",\"viewCount\":").append(i * 1_337L).append('}');
+        }
+        return json.append("],\"next\":\"").append(FEED_ITEMS).append("\"}").toString().getBytes(StandardCharsets.UTF_8);
+    }
+}
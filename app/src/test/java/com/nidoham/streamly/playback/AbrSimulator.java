@@ -0,0 +1,261 @@
+package com.nidoham.streamly.playback;
+
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.function.Supplier;
+
+/**
+ * Replays the segment scheduler against bandwidth traces on simulated time, so quality policies
+ * can be compared on startup delay, stalls and delivered bitrate without a device or network.
+ * {@link AbrSimulatorTest} runs it over the synthetic traces; recorded traces can be replayed through
+ * {@link #run(List)} after {@link BandwidthTrace#parse}.
+ */
+public final class AbrSimulator {
+
+    private static final long[] LADDER_BPS = {400_000, 800_000, 1_400_000, 2_800_000, 5_000_000};
+    private static final long SEGMENT_SECONDS = 4;
+    private static final double CONTENT_SECONDS = 600;
+    private static final double RTT_SECONDS = 0.08;
+    // Progress is checked against the abandonment rule at this interval during a download
+    private static final double TICK_SECONDS = 0.1;
+    private static final double TARGET_BUFFER_SECONDS = 30;
+    private static final double START_BUFFER_SECONDS = 2;
+    private static final double RESUME_BUFFER_SECONDS = 5;
+
+    /**
+     * Outcome of one playback session
+     */
+    public static final class Result {
+        double startupSeconds;
+        int stalls;
+        double stallSeconds;
+        double playedSeconds;
+        double deliveredBitSeconds;
+        int switches;
+        int abandoned;
+        long wastedBytes;
+
+        public double getStartupSeconds() {
+            return startupSeconds;
+        }
+
+        public int getStalls() {
+            return stalls;
+        }
+
+        public double getStallSeconds() {
+            return stallSeconds;
+        }
+
+        /**
+         * @return Average declared bitrate of the media that was buffered
+         */
+        public long getAverageBitrateBps() {
+            return playedSeconds > 0 ? (long) (deliveredBitSeconds / playedSeconds) : 0;
+        }
+
+        public int getSwitches() {
+            return switches;
+        }
+
+        public int getAbandoned() {
+            return abandoned;
+        }
+
+        /**
+         * @return Seconds of media buffered, the whole content unless the session was cut short
+         */
+        public double getPlayedSeconds() {
+            return playedSeconds;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "startup %5.2fs  stalls %2d (%5.1fs)  avg %5dkbps  switches %3d"
+                    + "  abandoned %2d (%dKB wasted)", startupSeconds, stalls, stallSeconds,
+                getAverageBitrateBps() / 1000, switches, abandoned, wastedBytes / 1024);
+        }
+    }
+
+    private final Manifest manifest;
+    private final BandwidthTrace trace;
+    private final boolean honorAbandon;
+
+    private double now = 0;
+    private double playhead = 0;
+    private double bufferedUntil = 0;
+    private boolean playing = false;
+    private boolean started = false;
+    private final Result result = new Result();
+
+    private AbrSimulator(Manifest manifest, BandwidthTrace trace, boolean honorAbandon) {
+        this.manifest = manifest;
+        this.trace = trace;
+        this.honorAbandon = honorAbandon;
+    }
+
+    /**
+     * Plays the whole manifest over the trace
+     * @param honorAbandon Whether the scheduler's abandonment advice is followed
+     */
+    public static Result simulate(Manifest manifest, BandwidthTrace trace, QualityPolicy policy,
+                                  BandwidthEstimator estimator, boolean honorAbandon) {
+        return new AbrSimulator(manifest, trace, honorAbandon).run(new SegmentScheduler(manifest, estimator, policy,
+            TARGET_BUFFER_SECONDS, START_BUFFER_SECONDS, RESUME_BUFFER_SECONDS));
+    }
+
+    private Result run(SegmentScheduler scheduler) {
+        double contentEnd = manifest.getDurationSeconds();
+        while (playhead < contentEnd - 1e-6) {
+            SegmentScheduler.Request request = scheduler.nextRequest(playhead, bufferedUntil);
+            if (request == null) {
+                if (scheduler.isComplete()) {
+                    if (!playing) {
+                        startPlaying();
+                    }
+                    advance(bufferedUntil - playhead);
+                    break;
+                }
+                // Buffer is full, idle until it drains below the target
+                advance(Math.max(TICK_SECONDS, bufferedUntil - playhead - TARGET_BUFFER_SECONDS + TICK_SECONDS));
+                continue;
+            }
+            download(scheduler, request);
+            if (!playing && scheduler.canPlay(bufferedUntil - playhead, started)) {
+                startPlaying();
+            }
+        }
+        result.switches = scheduler.getSwitchCount();
+        result.abandoned = scheduler.getAbandonCount();
+        return result;
+    }
+
+    private void download(SegmentScheduler scheduler, SegmentScheduler.Request request) {
+        long size = actualBytes(request);
+        double requestStart = now;
+        advance(RTT_SECONDS);
+        double loaded = 0;
+        while (true) {
+            double tickBytes = trace.bytesBetween(now, now + TICK_SECONDS);
+            if (loaded + tickBytes >= size) {
+                advance(trace.transferSeconds(now, size - loaded));
+                break;
+            }
+            loaded += tickBytes;
+            advance(TICK_SECONDS);
+            long elapsedNanos = (long) ((now - requestStart) * 1e9);
+            if (honorAbandon && scheduler.shouldAbandon(request, (long) loaded, elapsedNanos,
+                    bufferedUntil - playhead)) {
+                scheduler.onAbandoned(request, (long) loaded, elapsedNanos);
+                result.wastedBytes += (long) loaded;
+                return;
+            }
+        }
+        scheduler.onLoaded(request, size, (long) ((now - requestStart) * 1e9));
+        Segment segment = request.getSegment();
+        bufferedUntil = Math.max(bufferedUntil, segment.getEndSeconds());
+        result.playedSeconds += segment.getDurationSeconds();
+        result.deliveredBitSeconds += request.getRendition().getBandwidthBps() * segment.getDurationSeconds();
+    }
+
+    /**
+     * Encoders overshoot and undershoot the declared rate; deterministic +-25% per segment
+     */
+    private static long actualBytes(SegmentScheduler.Request request) {
+        long hash = request.getSegment().getUrl().hashCode() * 0x9E3779B97F4A7C15L;
+        double factor = 0.75 + ((hash >>> 40) & 0xFFFF) / 65535.0 * 0.5;
+        return Math.max(1, (long) (request.getExpectedBytes() * factor));
+    }
+
+    private void startPlaying() {
+        playing = true;
+        if (!started) {
+            started = true;
+            result.startupSeconds = now;
+        }
+    }
+
+    /**
+     * Moves the clock forward, draining the buffer while playing and counting stall time otherwise
+     */
+    private void advance(double seconds) {
+        if (seconds <= 0) {
+            return;
+        }
+        if (playing) {
+            double played = Math.min(seconds, bufferedUntil - playhead);
+            playhead += played;
+            if (played < seconds && playhead < manifest.getDurationSeconds() - 1e-6) {
+                playing = false;
+                result.stalls++;
+                result.stallSeconds += seconds - played;
+            }
+        } else if (started) {
+            result.stallSeconds += seconds;
+        }
+        now += seconds;
+    }
+
+    /**
+     * Content with the default ladder, 4 second segments of every rendition
+     */
+    public static Manifest createManifest() {
+        List<Rendition> renditions = new ArrayList<>();
+        URI base = URI.create("http://simulated.invalid/video/");
+        for (long bps : LADDER_BPS) {
+            String id = (bps / 1000) + "k";
+            SegmentTemplate segments = SegmentTemplate.withDuration(base, "$RepresentationID$/$Number$.m4s", id, bps,
+                1, 1, SEGMENT_SECONDS, CONTENT_SECONDS);
+            renditions.add(new Rendition(id, bps, 0, 0, null, null, null, segments));
+        }
+        return new Manifest(Manifest.Format.DASH, renditions, new ArrayList<>(), CONTENT_SECONDS, false, 0);
+    }
+
+    /**
+     * Synthetic traces covering slow, spiky and collapsing connections
+     */
+    public static List<BandwidthTrace> syntheticTraces() {
+        List<BandwidthTrace> traces = new ArrayList<>();
+        traces.add(BandwidthTrace.randomWalk("3g-variable", 17, 300_000, 3_000_000, 900));
+        traces.add(BandwidthTrace.spiky("lte-spiky", 23, 8_000_000, 300_000, 0.12, 900));
+        traces.add(new BandwidthTrace("step-down", new double[] {60, 120, 60},
+            new double[] {6_000_000, 700_000, 4_000_000}));
+        traces.add(BandwidthTrace.alternating("commute", 20, 4_000_000, 10, 350_000));
+        traces.add(BandwidthTrace.randomWalk("edge-slow", 5, 250_000, 900_000, 900));
+        return traces;
+    }
+
+    /**
+     * Compares the buffer-based policy, with and without abandonment, against a plain throughput rule
+     * @return Report with one line per trace and policy
+     */
+    public static String run(List<BandwidthTrace> traces) {
+        Manifest manifest = createManifest();
+        String[] names = {"throughput", "buffer", "buffer+abandon"};
+        List<Supplier<QualityPolicy>> policies = new ArrayList<>();
+        policies.add(() -> new ThroughputQualityPolicy(0.75));
+        policies.add(() -> new BufferBasedQualityPolicy(5, 20, 0.7, 0.9));
+        policies.add(() -> new BufferBasedQualityPolicy(5, 20, 0.7, 0.9));
+        StringBuilder report = new StringBuilder();
+        double[] totalStalls = new double[names.length];
+        long[] totalBitrate = new long[names.length];
+        for (BandwidthTrace trace : traces) {
+            report.append(trace).append('\n');
+            for (int i = 0; i < names.length; i++) {
+                Result result = simulate(manifest, trace, policies.get(i).get(),
+                    new BandwidthEstimator(1_000_000, 20), i == 2);
+                totalStalls[i] += result.getStallSeconds();
+                totalBitrate[i] += result.getAverageBitrateBps();
+                report.append(String.format(Locale.US, "  %-15s %s%n", names[i], result));
+            }
+        }
+        report.append("Totals\n");
+        for (int i = 0; i < names.length; i++) {
+            report.append(String.format(Locale.US, "  %-15s stalled %6.1fs  mean bitrate %5dkbps%n", names[i],
+                totalStalls[i], totalBitrate[i] / traces.size() / 1000));
+        }
+        return report.toString();
+    }
+}
@@ -0,0 +1,82 @@
+package com.nidoham.streamly.playback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Collections;
+import org.junit.Test;
+
+public class AbrSimulatorTest {
+
+    private static final double CONTENT_SECONDS = 600;
+
+    private static AbrSimulator.Result play(BandwidthTrace trace, QualityPolicy policy, boolean abandon) {
+        return AbrSimulator.simulate(AbrSimulator.createManifest(), trace, policy,
+            new BandwidthEstimator(1_000_000, 20), abandon);
+    }
+
+    private static QualityPolicy throughput() {
+        return new ThroughputQualityPolicy(0.75);
+    }
+
+    private static QualityPolicy bufferBased() {
+        return new BufferBasedQualityPolicy(5, 20, 0.7, 0.9);
+    }
+
+    @Test
+    public void everyPolicyPlaysEveryTraceToTheEnd() {
+        for (BandwidthTrace trace : AbrSimulator.syntheticTraces()) {
+            for (int abandon = 0; abandon < 2; abandon++) {
+                AbrSimulator.Result result = play(trace, bufferBased(), abandon == 1);
+                assertEquals(trace + " " + result, CONTENT_SECONDS, result.getPlayedSeconds(), 1e-6);
+                assertTrue(trace + " " + result, result.getStartupSeconds() < 4);
+            }
+            AbrSimulator.Result result = play(trace, throughput(), false);
+            assertEquals(trace + " " + result, CONTENT_SECONDS, result.getPlayedSeconds(), 1e-6);
+        }
+    }
+
+    @Test
+    public void bufferPolicyStallsNoMoreAndDeliversMore() {
+        double throughputStalls = 0;
+        double bufferStalls = 0;
+        long throughputBitrate = 0;
+        long bufferBitrate = 0;
+        for (BandwidthTrace trace : AbrSimulator.syntheticTraces()) {
+            AbrSimulator.Result plain = play(trace, throughput(), false);
+            AbrSimulator.Result buffer = play(trace, bufferBased(), false);
+            throughputStalls += plain.getStallSeconds();
+            bufferStalls += buffer.getStallSeconds();
+            throughputBitrate += plain.getAverageBitrateBps();
+            bufferBitrate += buffer.getAverageBitrateBps();
+        }
+        assertTrue(bufferStalls + "s vs " + throughputStalls + "s", bufferStalls <= throughputStalls);
+        assertTrue(bufferBitrate + " vs " + throughputBitrate, bufferBitrate >= throughputBitrate);
+    }
+
+    @Test
+    public void bufferPolicyDoesNotChaseSpikes() {
+        BandwidthTrace spiky = BandwidthTrace.spiky("lte-spiky", 23, 8_000_000, 300_000, 0.12, 900);
+        AbrSimulator.Result plain = play(spiky, throughput(), false);
+        AbrSimulator.Result buffer = play(spiky, bufferBased(), false);
+        assertTrue(buffer + " vs " + plain, buffer.getSwitches() * 5 < plain.getSwitches());
+    }
+
+    @Test
+    public void abandonsSegmentsWhenBandwidthCollapses() {
+        BandwidthTrace stepDown = new BandwidthTrace("step-down", new double[] {60, 120, 60},
+            new double[] {6_000_000, 700_000, 4_000_000});
+        assertTrue(play(stepDown, bufferBased(), true).getAbandoned() > 0);
+        assertEquals(0, play(stepDown, bufferBased(), false).getAbandoned());
+    }
+
+    @Test
+    public void parsesRecordedTraces() throws IOException {
+        BandwidthTrace trace = BandwidthTrace.parse("recorded",
+            new StringReader("# seconds kbps\n10 2000\n\n5 500 # tunnel\n"));
+        assertEquals((10 * 2_000_000 + 5 * 500_000) / 15.0, trace.getMeanBps(), 1);
+        assertTrue(AbrSimulator.run(Collections.singletonList(trace)).startsWith("recorded"));
+    }
+}
@@ -0,0 +1,182 @@
+package com.nidoham.streamly.playback;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Piecewise constant throughput over time, replayed cyclically, for simulating playback offline.
+ * Traces are read from text with one "&lt;seconds&gt; &lt;kbps&gt;" step per line, '#' starting a comment,
+ * or generated with the synthetic profiles below.
+ */
+public final class BandwidthTrace {
+
+    private final String name;
+    private final double[] stepSeconds;
+    private final double[] stepBps;
+    private final double periodSeconds;
+
+    public BandwidthTrace(String name, double[] stepSeconds, double[] stepBps) {
+        if (stepSeconds.length == 0 || stepSeconds.length != stepBps.length) {
+            throw new IllegalArgumentException("Trace needs matching, non-empty steps");
+        }
+        double period = 0;
+        for (double seconds : stepSeconds) {
+            if (seconds <= 0) {
+                throw new IllegalArgumentException("Step durations must be positive");
+            }
+            period += seconds;
+        }
+        this.name = name;
+        this.stepSeconds = stepSeconds.clone();
+        this.stepBps = stepBps.clone();
+        this.periodSeconds = period;
+    }
+
+    public static BandwidthTrace parse(String name, Reader reader) throws IOException {
+        List<double[]> steps = new ArrayList<>();
+        BufferedReader lines = new BufferedReader(reader);
+        String line;
+        while ((line = lines.readLine()) != null) {
+            int comment = line.indexOf('#');
+            String content = (comment >= 0 ? line.substring(0, comment) : line).trim();
+            if (content.isEmpty()) {
+                continue;
+            }
+            String[] fields = content.split("\\s+");
+            if (fields.length < 2) {
+                throw new IOException("Expected '<seconds> <kbps>': " + line);
+            }
+            try {
+                steps.add(new double[] {Double.parseDouble(fields[0]), Double.parseDouble(fields[1]) * 1000});
+            } catch (NumberFormatException e) {
+                throw new IOException("Bad trace line: " + line);
+            }
+        }
+        double[] seconds = new double[steps.size()];
+        double[] bps = new double[steps.size()];
+        for (int i = 0; i < seconds.length; i++) {
+            seconds[i] = steps.get(i)[0];
+            bps[i] = steps.get(i)[1];
+        }
+        return new BandwidthTrace(name, seconds, bps);
+    }
+
+    /**
+     * Throughput wandering between limits once a second, like a moving 3G/HSPA connection
+     */
+    public static BandwidthTrace randomWalk(String name, long seed, double minBps, double maxBps, int seconds) {
+        Random random = new Random(seed);
+        double[] durations = new double[seconds];
+        double[] bps = new double[seconds];
+        double current = (minBps + maxBps) / 2;
+        for (int i = 0; i < seconds; i++) {
+            current *= Math.exp(random.nextGaussian() * 0.25);
+            current = Math.max(minBps, Math.min(maxBps, current));
+            durations[i] = 1;
+            bps[i] = current;
+        }
+        return new BandwidthTrace(name, durations, bps);
+    }
+
+    /**
+     * Fast connection with short deep dips, like LTE at a cell edge
+     */
+    public static BandwidthTrace spiky(String name, long seed, double baseBps, double dipBps, double dipChance,
+                                       int seconds) {
+        Random random = new Random(seed);
+        double[] durations = new double[seconds];
+        double[] bps = new double[seconds];
+        for (int i = 0; i < seconds; i++) {
+            durations[i] = 1;
+            bps[i] = random.nextDouble() < dipChance ? dipBps : baseBps * (0.7 + 0.6 * random.nextDouble());
+        }
+        return new BandwidthTrace(name, durations, bps);
+    }
+
+    /**
+     * Alternating good and bad stretches, like a train passing through tunnels
+     */
+    public static BandwidthTrace alternating(String name, double goodSeconds, double goodBps, double badSeconds,
+                                             double badBps) {
+        return new BandwidthTrace(name, new double[] {goodSeconds, badSeconds}, new double[] {goodBps, badBps});
+    }
+
+    /**
+     * Time needed to transfer a number of bytes starting at a point in the trace
+     */
+    public double transferSeconds(double startSeconds, double bytes) {
+        double bits = bytes * 8;
+        double time = startSeconds;
+        int step = stepAt(time);
+        double stepEnd = stepEndAfter(time, step);
+        while (true) {
+            double available = (stepEnd - time) * stepBps[step];
+            if (available >= bits) {
+                return time + bits / stepBps[step] - startSeconds;
+            }
+            bits -= available;
+            time = stepEnd;
+            step = (step + 1) % stepSeconds.length;
+            stepEnd = time + stepSeconds[step];
+        }
+    }
+
+    /**
+     * Bytes transferred between two points in the trace
+     */
+    public double bytesBetween(double startSeconds, double endSeconds) {
+        double bits = 0;
+        double time = startSeconds;
+        int step = stepAt(time);
+        double stepEnd = stepEndAfter(time, step);
+        while (time < endSeconds) {
+            double until = Math.min(stepEnd, endSeconds);
+            bits += (until - time) * stepBps[step];
+            time = until;
+            step = (step + 1) % stepSeconds.length;
+            stepEnd = time + stepSeconds[step];
+        }
+        return bits / 8;
+    }
+
+    private int stepAt(double timeSeconds) {
+        double offset = timeSeconds % periodSeconds;
+        for (int i = 0; i < stepSeconds.length; i++) {
+            if (offset < stepSeconds[i]) {
+                return i;
+            }
+            offset -= stepSeconds[i];
+        }
+        return stepSeconds.length - 1;
+    }
+
+    private double stepEndAfter(double timeSeconds, int step) {
+        double offset = timeSeconds % periodSeconds;
+        double end = 0;
+        for (int i = 0; i <= step; i++) {
+            end += stepSeconds[i];
+        }
+        return timeSeconds + (end - offset);
+    }
+
+    public double getMeanBps() {
+        double bits = 0;
+        for (int i = 0; i < stepSeconds.length; i++) {
+            bits += stepSeconds[i] * stepBps[i];
+        }
+        return bits / periodSeconds;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String toString() {
+        return name + " (" + stepSeconds.length + " steps, mean " + Math.round(getMeanBps() / 1000) + "kbps)";
+    }
+}
@@ -0,0 +1,115 @@
+package com.nidoham.streamly.playback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import org.junit.Test;
+
+public class DashManifestParserTest {
+
+    private static final String MANIFEST_URL = "https://cdn.example.com/dash/manifest.mpd";
+
+    static byte[] fixture(String name) throws IOException {
+        try (InputStream in = DashManifestParserTest.class.getResourceAsStream(name)) {
+            assertNotNull("missing fixture " + name, in);
+            return in.readAllBytes();
+        }
+    }
+
+    private static Manifest parse(String name) throws IOException {
+        return new DashManifestParser().parse(MANIFEST_URL, fixture(name));
+    }
+
+    @Test
+    public void expandsIdentifiersWithFormatWidths() {
+        assertEquals("v1/seg-00042.m4s", SegmentTemplate.expand("$RepresentationID$/seg-$Number%05d$.m4s", "v1",
+            500_000, 42, 0));
+        assertEquals("t-0000012345-500000.m4s", SegmentTemplate.expand("t-$Time%010d$-$Bandwidth$.m4s", "v1",
+            500_000, 1, 12_345));
+        // Wider values are not cut, $$ is a literal dollar and unknown identifiers stay as written
+        assertEquals("123456/$/$Unknown$", SegmentTemplate.expand("$Number%03d$/$$/$Unknown$", "v1", 1, 123_456,
+            0));
+    }
+
+    @Test
+    public void fixedDurationTemplateEndsAtThePeriod() throws IOException {
+        Manifest manifest = parse("template-number.mpd");
+        assertEquals(Manifest.Format.DASH, manifest.getFormat());
+        assertFalse(manifest.isLive());
+        assertEquals(10, manifest.getDurationSeconds(), 1e-9);
+        assertEquals(2, manifest.getMinBufferSeconds(), 1e-9);
+        List<Rendition> renditions = manifest.getRenditions();
+        assertEquals(2, renditions.size());
+
+        Rendition low = renditions.get(0);
+        assertEquals("v360", low.getId());
+        assertEquals(800_000, low.getBandwidthBps());
+        assertEquals(640, low.getWidth());
+        assertEquals("avc1.64001f", low.getCodecs());
+        assertEquals("https://cdn.example.com/dash/video/v360/init.mp4", low.getInitSegment().getUrl());
+        SegmentIndex segments = low.getSegments();
+        // 10 s in 4 s segments: two full ones and a 2 s remainder
+        assertEquals(3, segments.getSegmentCount());
+        assertEquals("https://cdn.example.com/dash/video/v360/seg-00007-800000.m4s", segments.getSegment(0).getUrl());
+        assertEquals("https://cdn.example.com/dash/video/v360/seg-00009-800000.m4s", segments.getSegment(2).getUrl());
+        assertEquals(8, segments.getSegment(2).getStartSeconds(), 1e-9);
+        assertEquals(2, segments.getSegment(2).getDurationSeconds(), 1e-9);
+        assertFalse(segments.getSegment(0).hasRange());
+
+        // The representation's own template overrides media and inherits the rest
+        Rendition high = renditions.get(1);
+        assertEquals("https://cdn.example.com/dash/video/v720/$7.m4s", high.getSegments().getSegment(0).getUrl());
+        assertEquals("https://cdn.example.com/dash/video/v720/init.mp4", high.getInitSegment().getUrl());
+    }
+
+    @Test
+    public void openEndedTimelineRepeatRunsToThePeriodEnd() throws IOException {
+        Manifest manifest = parse("timeline.mpd");
+        assertEquals(1, manifest.getRenditions().size());
+        assertEquals(1, manifest.getAudioRenditions().size());
+
+        Rendition video = manifest.getRenditions().get(0);
+        assertEquals(1920, video.getWidth());
+        assertEquals("https://cdn.example.com/show/hd.mp4", video.getInitSegment().getUrl());
+        SegmentIndex segments = video.getSegments();
+        double[] starts = {0, 2, 4, 6, 7, 9, 11, 13};
+        double[] durations = {2, 2, 2, 1, 2, 2, 2, 2};
+        assertEquals(starts.length, segments.getSegmentCount());
+        for (int i = 0; i < starts.length; i++) {
+            Segment segment = segments.getSegment(i);
+            assertEquals("start of " + i, starts[i], segment.getStartSeconds(), 1e-9);
+            assertEquals("duration of " + i, durations[i], segment.getDurationSeconds(), 1e-9);
+        }
+        assertEquals("https://cdn.example.com/show/hd_00006000.m4s", segments.getSegment(3).getUrl());
+        assertEquals(15, segments.getSegment(starts.length - 1).getEndSeconds(), 1e-9);
+
+        Rendition audio = manifest.getAudioRenditions().get(0);
+        assertEquals(8, audio.getSegments().getSegmentCount());
+        assertEquals("https://cdn.example.com/show/audio/8.m4a", audio.getSegments().getSegment(7).getUrl());
+        assertEquals(1, audio.getSegments().getSegment(7).getDurationSeconds(), 1e-9);
+    }
+
+    @Test
+    public void refusesDocumentTypeDeclarations() throws IOException {
+        try {
+            parse("doctype.mpd");
+            fail("a DOCTYPE must be refused before any entity is expanded");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Malformed MPD"));
+        }
+    }
+
+    @Test
+    public void parsesXsDurations() {
+        assertEquals(3723.5, DashManifestParser.parseDuration("PT1H2M3.5S"), 1e-9);
+        assertEquals(86_400 + 60, DashManifestParser.parseDuration("P1DT1M"), 1e-9);
+        assertTrue(Double.isNaN(DashManifestParser.parseDuration("")));
+        assertTrue(Double.isNaN(DashManifestParser.parseDuration("1H")));
+    }
+}
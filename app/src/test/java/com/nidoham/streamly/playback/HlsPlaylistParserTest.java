@@ -0,0 +1,106 @@
+package com.nidoham.streamly.playback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.Map;
+import org.junit.Test;
+
+public class HlsPlaylistParserTest {
+
+    private static final String BASE_URL = "https://cdn.example.com/hls/";
+
+    private static String fixture(String name) throws IOException {
+        return new String(DashManifestParserTest.fixture(name), StandardCharsets.UTF_8);
+    }
+
+    @Test
+    public void masterPlaylistListsEveryVariantByBandwidth() throws IOException {
+        String text = fixture("master.m3u8");
+        assertTrue(HlsPlaylistParser.isMasterPlaylist(text));
+        Manifest manifest = new HlsPlaylistParser().parseMaster(BASE_URL + "master.m3u8", text);
+        assertEquals(Manifest.Format.HLS, manifest.getFormat());
+        List<Rendition> variants = manifest.getRenditions();
+        assertEquals(3, variants.size());
+
+        Rendition audioOnly = variants.get(0);
+        assertEquals(64_000, audioOnly.getBandwidthBps());
+        assertEquals(0, audioOnly.getWidth());
+        assertEquals("https://audio.example.com/only.m3u8", audioOnly.getPlaylistUrl());
+
+        Rendition low = variants.get(1);
+        assertEquals(800_000, low.getBandwidthBps());
+        assertEquals(640, low.getWidth());
+        assertEquals(360, low.getHeight());
+        // The quoted comma belongs to CODECS and does not end the attribute
+        assertEquals("avc1.4d401e,mp4a.40.2", low.getCodecs());
+        assertEquals(BASE_URL + "low/index.m3u8", low.getPlaylistUrl());
+        assertNull("segments come from the media playlist", low.getSegments());
+
+        assertEquals(1280, variants.get(2).getWidth());
+        assertEquals(BASE_URL + "mid/index.m3u8", variants.get(2).getPlaylistUrl());
+    }
+
+    @Test
+    public void byteRangesContinueFromThePreviousSegment() throws IOException {
+        String text = fixture("byterange.m3u8");
+        assertFalse(HlsPlaylistParser.isMasterPlaylist(text));
+        HlsPlaylistParser.MediaPlaylist playlist = new HlsPlaylistParser().parseMedia(BASE_URL + "v/index.m3u8",
+            text);
+        assertEquals(4, playlist.getTargetDurationSeconds(), 1e-9);
+        assertEquals(42, playlist.getMediaSequence());
+        assertTrue(playlist.isEnded());
+        assertEquals(12, playlist.getDurationSeconds(), 1e-9);
+
+        Segment init = playlist.getInitSegment();
+        assertEquals(BASE_URL + "v/main.mp4", init.getUrl());
+        assertEquals("bytes=0-719", init.getRangeHeader());
+
+        SegmentList segments = playlist.getSegments();
+        assertEquals(4, segments.getSegmentCount());
+        assertEquals("bytes=720-1719", segments.getSegment(0).getRangeHeader());
+        // No offset given: starts where the previous range ended
+        assertEquals("bytes=1720-2919", segments.getSegment(1).getRangeHeader());
+        assertEquals("bytes=5000-5799", segments.getSegment(2).getRangeHeader());
+        Segment tail = segments.getSegment(3);
+        assertEquals(BASE_URL + "v/tail.mp4", tail.getUrl());
+        assertFalse(tail.hasRange());
+        assertEquals(10.5, tail.getStartSeconds(), 1e-9);
+        assertEquals(1.5, tail.getDurationSeconds(), 1e-9);
+    }
+
+    @Test
+    public void parsesQuotedAttributeLists() {
+        Map<String, String> attributes = HlsPlaylistParser.parseAttributes(
+            "URI=\"init.mp4\",BYTERANGE=\"720@0\",CODECS=\"a,b\",BANDWIDTH=1");
+        assertEquals("init.mp4", attributes.get("URI"));
+        assertEquals("720@0", attributes.get("BYTERANGE"));
+        assertEquals("a,b", attributes.get("CODECS"));
+        assertEquals("1", attributes.get("BANDWIDTH"));
+    }
+
+    @Test
+    public void rejectsEncryptedAndMalformedPlaylists() {
+        String[] bad = {
+            "#EXTM3U\n#EXT-X-KEY:METHOD=AES-128,URI=\"key\"\n#EXTINF:4,\na.ts\n",
+            "#EXTM3U\na.ts\n",
+            "#EXTM3U\n#EXTINF:four,\na.ts\n",
+            "#EXT-X-VERSION:3\n",
+            "",
+        };
+        for (String text : bad) {
+            try {
+                new HlsPlaylistParser().parseMedia(BASE_URL + "index.m3u8", text);
+                fail("accepted " + text);
+            } catch (IOException expected) {
+                // Refused as it should be
+            }
+        }
+    }
+}
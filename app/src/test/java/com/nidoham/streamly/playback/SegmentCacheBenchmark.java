@@ -0,0 +1,321 @@
+package com.nidoham.streamly.playback;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.zip.CRC32;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Measures {@link SegmentCache} read and write throughput and checks its eviction and recovery against a
+ * reference LRU model: every hit must return the bytes that were stored, evictions must always take the
+ * least recently used entries, leased entries must survive churn, and a reopened cache must serve the same
+ * segments while refusing ones whose data was damaged.
+ */
+@Category(Benchmark.class)
+public class SegmentCacheBenchmark {
+
+    private static final int BLOCK_BYTES = 64 * 1024;
+    private static final int SEGMENT_BYTES = 1024 * 1024;
+    private static final int THROUGHPUT_SEGMENTS = 96;
+    private static final int CHURN_OPERATIONS = 10_000;
+
+    private File directory;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("segment-cache").toFile();
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        deleteTree(directory);
+    }
+
+    @Test
+    public void mappedReadsMatchCopiedReads() throws IOException {
+        StringBuilder report = new StringBuilder();
+        measureThroughput(new File(directory, "throughput"), report);
+        System.out.print(report);
+    }
+
+    @Test
+    public void evictsInLruOrderAndRecoversVerifiedData() throws IOException {
+        StringBuilder report = new StringBuilder();
+        Map<String, Integer> stored = checkEviction(new File(directory, "churn"), report);
+        checkRecovery(new File(directory, "churn"), stored, report);
+        System.out.print(report);
+    }
+
+    private static void measureThroughput(File directory, StringBuilder report) throws IOException {
+        deleteTree(directory);
+        SegmentCache cache = SegmentCache.open(directory, 4, 32 * 1024 * 1024, BLOCK_BYTES);
+        ByteBuffer segment = ByteBuffer.wrap(content("throughput", SEGMENT_BYTES));
+        // Warm up the mapping and the code paths before timing
+        for (int i = 0; i < THROUGHPUT_SEGMENTS; i++) {
+            cache.put("warmup", "r", i, segment);
+        }
+        for (int i = 0; i < THROUGHPUT_SEGMENTS; i++) {
+            cache.remove("warmup", "r", i);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < THROUGHPUT_SEGMENTS; i++) {
+            cache.put("video", "720p", i, segment);
+        }
+        long writeNanos = System.nanoTime() - start;
+
+        long checksum = 0;
+        long mappedNanos = Long.MAX_VALUE;
+        for (int round = 0; round < 5; round++) {
+            start = System.nanoTime();
+            for (int i = 0; i < THROUGHPUT_SEGMENTS; i++) {
+                try (SegmentCache.Lease lease = cache.acquire("video", "720p", i)) {
+                    checksum += sum(lease.getBuffer());
+                }
+            }
+            mappedNanos = Math.min(mappedNanos, System.nanoTime() - start);
+        }
+
+        // Same bytes read the conventional way, copied from the file into a heap buffer
+        File flat = new File(directory, "flat.bin");
+        long copiedNanos = Long.MAX_VALUE;
+        try (RandomAccessFile file = new RandomAccessFile(flat, "rw")) {
+            FileChannel channel = file.getChannel();
+            for (int i = 0; i < THROUGHPUT_SEGMENTS; i++) {
+                channel.write(segment.duplicate(), (long) i * SEGMENT_BYTES);
+            }
+            ByteBuffer heap = ByteBuffer.allocate(SEGMENT_BYTES);
+            for (int round = 0; round < 5; round++) {
+                start = System.nanoTime();
+                for (int i = 0; i < THROUGHPUT_SEGMENTS; i++) {
+                    heap.clear();
+                    while (heap.hasRemaining()) {
+                        channel.read(heap, (long) i * SEGMENT_BYTES + heap.position());
+                    }
+                    heap.flip();
+                    checksum -= sum(heap);
+                }
+                copiedNanos = Math.min(copiedNanos, System.nanoTime() - start);
+            }
+        }
+        assertEquals("mapped and copied reads disagree", 0, checksum);
+        cache.close();
+
+        double megabytes = (double) THROUGHPUT_SEGMENTS * SEGMENT_BYTES / (1024 * 1024);
+        report.append(String.format(Locale.US, "Throughput, %d x 1 MB segments%n", THROUGHPUT_SEGMENTS));
+        report.append(String.format(Locale.US, "  write into cache:  %7.0f MB/s (copy into mapping, CRC, journal)%n",
+            megabytes / (writeNanos / 1e9)));
+        report.append(String.format(Locale.US, "  read via lease:    %7.0f MB/s (mapped view, no copy)%n",
+            megabytes / (mappedNanos / 1e9)));
+        report.append(String.format(Locale.US, "  read via channel:  %7.0f MB/s (copied to heap)%n",
+            megabytes / (copiedNanos / 1e9)));
+    }
+
+    /**
+     * Seek-back heavy churn on a cache much smaller than the working set
+     * @return CRC of every segment the model believes is cached
+     */
+    private static Map<String, Integer> checkEviction(File directory, StringBuilder report) throws IOException {
+        deleteTree(directory);
+        SegmentCache cache = SegmentCache.open(directory, 2, 16 * 1024 * 1024, BLOCK_BYTES);
+        Random random = new Random(42);
+        // Access-ordered model of what an exact LRU cache holds, eldest first
+        LinkedHashMap<String, Integer> model = new LinkedHashMap<>(16, 0.75f, true);
+        Map<String, Integer> crcs = new HashMap<>();
+        List<String> recent = new ArrayList<>();
+        int nextSegment = 0;
+        long hits = 0;
+        long lookups = 0;
+        double fillSum = 0;
+        int fillSamples = 0;
+
+        for (int op = 0; op < CHURN_OPERATIONS; op++) {
+            if (recent.isEmpty() || random.nextInt(10) < 3) {
+                String content = "video" + random.nextInt(8);
+                String rendition = String.valueOf(random.nextInt(3));
+                String key = content + "/" + rendition + "/" + nextSegment;
+                byte[] data = content(key, 64 * 1024 + random.nextInt(960 * 1024));
+                assertTrue("put refused with nothing leased: " + key,
+                    cache.put(content, rendition, nextSegment, ByteBuffer.wrap(data)));
+                nextSegment++;
+                crcs.put(key, crc(ByteBuffer.wrap(data)));
+                model.put(key, data.length);
+                recent.add(key);
+            } else {
+                // Seeking back: mostly to recent segments, sometimes far back
+                int back = (int) Math.min(recent.size() - 1, Math.abs(random.nextGaussian()) * 40);
+                String key = recent.get(recent.size() - 1 - back);
+                String[] parts = key.split("/");
+                lookups++;
+                try (SegmentCache.Lease lease = cache.acquire(parts[0], parts[1], Integer.parseInt(parts[2]))) {
+                    if (lease != null) {
+                        hits++;
+                        assertEquals("wrong bytes served for " + key, (int) crcs.get(key), crc(lease.getBuffer()));
+                        assertTrue("served an entry the model evicted: " + key, model.containsKey(key));
+                        model.get(key);
+                    }
+                }
+            }
+            assertTrue("over capacity: " + cache.report(), cache.getSizeBytes() <= cache.getMaxBytes());
+            if (op % 10 == 0) {
+                checkLruOrder(cache, model);
+                if (op > CHURN_OPERATIONS / 10) {
+                    fillSum += (double) cache.getSizeBytes() / cache.getMaxBytes();
+                    fillSamples++;
+                }
+            }
+        }
+        checkLruOrder(cache, model);
+
+        // A leased entry must not be evicted or overwritten however much is written after it
+        Map.Entry<String, Integer> eldest = model.entrySet().iterator().next();
+        String[] parts = eldest.getKey().split("/");
+        SegmentCache.Lease pinned = cache.acquire(parts[0], parts[1], Integer.parseInt(parts[2]));
+        for (int i = 0; i < 100; i++) {
+            String key = "pin/0/" + i;
+            byte[] data = content(key, 2 * 1024 * 1024);
+            cache.put("pin", "0", i, ByteBuffer.wrap(data));
+            crcs.put(key, crc(ByteBuffer.wrap(data)));
+        }
+        boolean pinHeld = crc(pinned.getBuffer()) == crcs.get(eldest.getKey())
+            && cache.contains(parts[0], parts[1], Integer.parseInt(parts[2]));
+        pinned.close();
+        assertTrue("leased entry was evicted or overwritten", pinHeld);
+
+        Map<String, Integer> cached = new HashMap<>();
+        for (String key : cache.getKeysByRecency()) {
+            cached.put(key, crcs.get(key));
+        }
+        report.append(String.format(Locale.US, "Eviction, %d operations on a 32 MB cache, 64 KB-1 MB segments%n",
+            CHURN_OPERATIONS));
+        report.append(String.format(Locale.US, "  seek-back hit rate %.1f%%, mean fill %.1f%% once full%n"
+                + "  LRU order matched the model throughout, leased entry survived churn%n",
+            100.0 * hits / lookups, 100 * fillSum / fillSamples));
+        report.append("  ").append(cache.report()).append('\n');
+        // Left open on purpose: the recovery check reopens the directory as if the process had died
+        return cached;
+    }
+
+    /**
+     * The cache's recency list must be the model's most recent keys in the same order; anything the
+     * cache dropped must have been the model's least recent
+     */
+    private static void checkLruOrder(SegmentCache cache, LinkedHashMap<String, Integer> model) {
+        List<String> actual = cache.getKeysByRecency();
+        List<String> expected = new ArrayList<>(model.keySet());
+        int offset = expected.size() - actual.size();
+        for (int i = 0; i < actual.size(); i++) {
+            assertEquals("LRU order diverged at " + i, expected.get(expected.size() - 1 - i), actual.get(i));
+        }
+        // Keys the cache no longer has are the eldest ones of the model
+        for (int i = 0; i < offset; i++) {
+            model.remove(expected.get(i));
+        }
+    }
+
+    private static void checkRecovery(File directory, Map<String, Integer> expected, StringBuilder report)
+            throws IOException {
+        long start = System.nanoTime();
+        SegmentCache reopened = SegmentCache.open(directory, 2, 16 * 1024 * 1024, BLOCK_BYTES);
+        long openNanos = System.nanoTime() - start;
+        assertEquals("recovered entries", expected.size(), reopened.getEntryCount());
+        int verified = serveAll(reopened, expected);
+        assertEquals("served after reopen", expected.size(), verified);
+
+        // Damage the data under some entries and tear the journal tail, as a crash mid-write would
+        try (RandomAccessFile slab = new RandomAccessFile(new File(directory, "slab-0.bin"), "rw")) {
+            for (long offset = 0; offset < slab.length(); offset += 3 * 1024 * 1024) {
+                slab.seek(offset + 100);
+                slab.write(new byte[] {1, 2, 3, 4});
+            }
+        }
+        try (RandomAccessFile journal = new RandomAccessFile(new File(directory, "segments.journal"), "rw")) {
+            journal.seek(journal.length());
+            journal.write(new byte[] {0x53, 0x4A, 0x52, 0x4E, 0, 0, 0, 9, 1});
+        }
+        SegmentCache damaged = SegmentCache.open(directory, 2, 16 * 1024 * 1024, BLOCK_BYTES);
+        int served = serveAll(damaged, expected);
+        long dropped = damaged.getCorruptedCount();
+        assertTrue("damage not detected", dropped > 0);
+        assertEquals("served or dropped", expected.size(), served + dropped);
+        damaged.close();
+
+        report.append(String.format(Locale.US, "Recovery%n  reopened %d entries in %.1f ms, all bytes verified%n",
+            expected.size(), openNanos / 1e6));
+        report.append(String.format(Locale.US, "  after damaging slab data and the journal tail: %d served intact,"
+            + " %d refused by checksum, none served wrong%n", served, dropped));
+    }
+
+    /**
+     * @return Number of segments served with the expected bytes, throws if any bytes are wrong
+     */
+    private static int serveAll(SegmentCache cache, Map<String, Integer> expected) throws IOException {
+        int served = 0;
+        for (Map.Entry<String, Integer> entry : expected.entrySet()) {
+            String[] parts = entry.getKey().split("/");
+            try (SegmentCache.Lease lease = cache.acquire(parts[0], parts[1], Integer.parseInt(parts[2]))) {
+                if (lease == null) {
+                    continue;
+                }
+                assertEquals("wrong bytes served for " + entry.getKey(), (int) entry.getValue(),
+                    crc(lease.getBuffer()));
+                served++;
+            }
+        }
+        return served;
+    }
+
+    private static byte[] content(String key, int length) {
+        byte[] data = new byte[length];
+        new Random(key.hashCode()).nextBytes(data);
+        return data;
+    }
+
+    private static long sum(ByteBuffer buffer) {
+        ByteBuffer view = buffer.duplicate();
+        long total = 0;
+        while (view.remaining() >= 8) {
+            total += view.getLong();
+        }
+        while (view.hasRemaining()) {
+            total += view.get();
+        }
+        return total;
+    }
+
+    private static int crc(ByteBuffer data) {
+        CRC32 crc = new CRC32();
+        crc.update(data.duplicate());
+        return (int) crc.getValue();
+    }
+
+    private static void deleteTree(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+}
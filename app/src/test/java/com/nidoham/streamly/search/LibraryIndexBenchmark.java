@@ -0,0 +1,475 @@
+package com.nidoham.streamly.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import com.nidoham.streamly.task.SerialExecutor;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.TaskScheduler;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Builds a {@link LibraryIndex} over 20k library items, a third of them Bengali, with titles, channel
+ * names, descriptions and, for a quarter of them, captions. Items arrive in small batches as a library
+ * grows, so segments are written and merged along the way. Query latency is measured on the merged
+ * index as it stands, after churn that replaces and removes items, and after a full merge; its p99 must
+ * stay in single-digit milliseconds each time. Rankings are compared with a plain in-memory inverted
+ * index scored the same way whenever the index holds no deleted documents, since deleted ones still
+ * count in its term statistics. Also checks that a reopened index answers the same and that a damaged
+ * segment is dropped and restored by a sync.
+ */
+@Category(Benchmark.class)
+public class LibraryIndexBenchmark {
+
+    private static final int ITEMS = 20_000;
+    private static final int BATCH = 200;
+    private static final int LIMIT = 10;
+    private static final int QUERIES = 2_000;
+    private static final int CHECKED_QUERIES = 300;
+    private static final long MAX_P99_NANOS = 10_000_000;
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+
+    private static final String[] LATIN_SYLLABLES = {"ka", "lo", "mi", "ra", "ne", "so", "tu", "vi", "ber", "dan",
+        "fel", "gor", "hin", "jas", "lum", "mor", "pex", "qua", "rin", "sta", "tor", "ul", "wen", "xi", "yor", "zel"};
+    private static final String[] BENGALI_CONSONANTS = {"\u0995", "\u0996", "\u0997", "\u099A", "\u099C", "\u099F",
+        "\u09A1", "\u09A4", "\u09A6", "\u09A8", "\u09AA", "\u09AC", "\u09AD", "\u09AE", "\u09B0", "\u09B2", "\u09B6",
+        "\u09B8", "\u09B9"};
+    private static final String[] BENGALI_VOWEL_SIGNS = {"", "\u09BE", "\u09BF", "\u09C0", "\u09C1", "\u09C7",
+        "\u09CB"};
+    // Genitive -er, plural -gulo and locative -te, as the tokenizer strips them
+    private static final String[] BENGALI_SUFFIXES = {"\u09C7\u09B0", "\u0997\u09C1\u09B2\u09CB", "\u09A4\u09C7"};
+
+    /**
+     * The reference: terms mapped to (item, weighted frequency) pairs in hash maps
+     */
+    private static final class Reference {
+        final Map<String, Map<String, Integer>> postings = new HashMap<>();
+        final Map<String, Integer> lengths = new HashMap<>();
+        final Map<String, Set<String>> terms = new HashMap<>();
+
+        void add(LibraryDocument document) {
+            remove(document.getId());
+            Map<String, Integer> freqs = new HashMap<>();
+            count(freqs, document.getTitle(), 3);
+            count(freqs, document.getChannelName(), 2);
+            count(freqs, document.getDescription(), 1);
+            count(freqs, document.getCaptions(), 1);
+            int length = 0;
+            for (Map.Entry<String, Integer> freq : freqs.entrySet()) {
+                postings.computeIfAbsent(freq.getKey(), term -> new HashMap<>()).put(document.getId(), freq.getValue());
+                length += freq.getValue();
+            }
+            lengths.put(document.getId(), length);
+            terms.put(document.getId(), freqs.keySet());
+        }
+
+        void remove(String id) {
+            if (lengths.remove(id) == null) {
+                return;
+            }
+            for (String term : terms.remove(id)) {
+                postings.get(term).remove(id);
+            }
+        }
+
+        /**
+         * @return Every matching item's score
+         */
+        Map<String, Float> score(String query) {
+            long total = 0;
+            for (int length : lengths.values()) {
+                total += length;
+            }
+            float averageLength = (float) total / lengths.size();
+            Map<String, Float> scores = new HashMap<>();
+            for (String term : new LinkedHashSet<>(TextTokenizer.tokenize(query))) {
+                Map<String, Integer> docs = postings.get(term);
+                if (docs == null || docs.isEmpty()) {
+                    continue;
+                }
+                float idf = (float) Math.log(1 + (lengths.size() - docs.size() + 0.5) / (docs.size() + 0.5));
+                for (Map.Entry<String, Integer> doc : docs.entrySet()) {
+                    float norm = K1 * (1 - B + B * lengths.get(doc.getKey()) / averageLength);
+                    int freq = doc.getValue();
+                    float score = scores.getOrDefault(doc.getKey(), 0f);
+                    scores.put(doc.getKey(), score + idf * freq * (K1 + 1) / (freq + norm));
+                }
+            }
+            return scores;
+        }
+
+        private static void count(Map<String, Integer> freqs, String text, int weight) {
+            for (String term : TextTokenizer.tokenize(text)) {
+                freqs.merge(term, weight, Integer::sum);
+            }
+        }
+    }
+
+    private File directory;
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setUp() throws IOException {
+        directory = Files.createTempDirectory("library-index").toFile();
+        scheduler = new TaskScheduler(2);
+    }
+
+    @After
+    public void tearDown() throws IOException {
+        scheduler.shutdown();
+        deleteTree(directory);
+    }
+
+    private SerialExecutor maintenance() {
+        return new SerialExecutor(scheduler, TaskPriority.MAINTENANCE);
+    }
+
+    @Test
+    public void ranksAsTheReferenceThroughChurnMergeAndRepair() throws Exception {
+        int itemCount = ITEMS;
+        StringBuilder report = new StringBuilder();
+        Random random = new Random(11);
+        String[] latinWords = vocabulary(random, 20_000, false);
+        String[] bengaliWords = vocabulary(random, 10_000, true);
+        List<LibraryDocument> documents = new ArrayList<>();
+        long textBytes = 0;
+        for (int i = 0; i < itemCount; i++) {
+            LibraryDocument document = document(random, "v" + i, latinWords, bengaliWords, "");
+            documents.add(document);
+            textBytes += utf8Length(document.getTitle()) + utf8Length(document.getChannelName())
+                + utf8Length(document.getDescription()) + utf8Length(document.getCaptions());
+        }
+
+        LibraryIndex index = new LibraryIndex(directory, maintenance(), 1_000);
+        Reference reference = new Reference();
+        long start = System.nanoTime();
+        long slowestBatch = 0;
+        for (int from = 0; from < itemCount; from += BATCH) {
+            long batchStart = System.nanoTime();
+            for (LibraryDocument document : documents.subList(from, Math.min(itemCount, from + BATCH))) {
+                index.add(document);
+            }
+            index.flush().get();
+            slowestBatch = Math.max(slowestBatch, System.nanoTime() - batchStart);
+        }
+        double indexMillis = (System.nanoTime() - start) / 1e6;
+        for (LibraryDocument document : documents) {
+            reference.add(document);
+        }
+        assertEquals("indexed items", itemCount, index.getDocumentCount());
+        report.append(String.format(Locale.US, "indexed %d items in batches of %d: %.0f ms (slowest batch with "
+                + "merges %.0f ms), %d merges, %d segments, %d KB on disk for %d KB of text%n", itemCount, BATCH,
+            indexMillis, slowestBatch / 1e6, index.getMerges(), index.getSegmentCount(), index.getSizeBytes() / 1024,
+            textBytes / 1024));
+
+        List<String> queries = queries(random, documents);
+        report.append("grown index: ").append(latency(index, queries)).append('\n');
+        report.append(String.format(Locale.US, "%d queries ranked as the reference does%n",
+            compare(index, reference, queries.subList(0, CHECKED_QUERIES))));
+
+        // Churn: retitle some items and remove others
+        Set<String> removed = new HashSet<>();
+        for (int i = 0; i < itemCount / 5; i++) {
+            int item = random.nextInt(itemCount);
+            String id = "v" + item;
+            if (i % 3 == 0) {
+                index.remove(id);
+                reference.remove(id);
+                removed.add(id);
+            } else if (!removed.contains(id)) {
+                LibraryDocument retitled = document(random, id, latinWords, bengaliWords, "zzretitled" + item + " ");
+                index.add(retitled);
+                reference.add(retitled);
+                documents.set(item, retitled);
+            }
+            if (i % 100 == 99) {
+                index.flush().get();
+            }
+        }
+        index.flush().get();
+        for (String id : removed) {
+            List<SearchHit> hits = index.search(documents.get(Integer.parseInt(id.substring(1))).getTitle(), 50);
+            for (SearchHit hit : hits) {
+                assertNotEquals("removed item still found", id, hit.getId());
+            }
+        }
+        int retitledFound = 0;
+        for (int item = 0; item < itemCount; item++) {
+            String id = "v" + item;
+            if (documents.get(item).getTitle().startsWith("zzretitled") && !removed.contains(id)) {
+                List<SearchHit> hits = index.search("zzretitled" + item, 1);
+                assertEquals("retitled " + id + " not found", 1, hits.size());
+                assertEquals(id, hits.get(0).getId());
+                retitledFound++;
+            }
+        }
+        report.append(String.format(Locale.US, "after churn (%d removed, %d retitled, all checked): %d segments, "
+                + "%s%n", removed.size(), retitledFound, index.getSegmentCount(), latency(index, queries)));
+
+        start = System.nanoTime();
+        index.forceMerge().get();
+        double mergeMillis = (System.nanoTime() - start) / 1e6;
+        assertEquals("segments after a force merge", 1, index.getSegmentCount());
+        report.append(String.format(Locale.US, "full merge %.0f ms, %d KB: %s%n", mergeMillis,
+            index.getSizeBytes() / 1024, latency(index, queries)));
+        report.append(String.format(Locale.US, "%d queries ranked as the reference does after the merge%n",
+            compare(index, reference, queries.subList(CHECKED_QUERIES, 2 * CHECKED_QUERIES))));
+        bengali(index, random, documents, report);
+
+        // Reopen, then damage the newest segment and let a sync repair it
+        List<SearchHit> before = index.search(queries.get(0), LIMIT);
+        index.close();
+        start = System.nanoTime();
+        LibraryIndex reopened = new LibraryIndex(directory, maintenance(), 1_000);
+        reopened.flush().get();
+        double reopenMillis = (System.nanoTime() - start) / 1e6;
+        assertTrue("reopened index answers differently", sameHits(before, reopened.search(queries.get(0), LIMIT)));
+        reopened.add(document(random, "extra", latinWords, bengaliWords, ""));
+        reopened.close();
+        File newest = newestSegment(directory);
+        try (RandomAccessFile file = new RandomAccessFile(newest, "rw")) {
+            file.seek(file.length() / 2);
+            int b = file.read();
+            file.seek(file.length() / 2);
+            file.write(b ^ 0xFF);
+        }
+        LibraryIndex repaired = new LibraryIndex(directory, maintenance(), 1_000);
+        repaired.flush().get();
+        int afterDamage = repaired.getDocumentCount();
+        List<LibraryDocument> live = new ArrayList<>();
+        for (LibraryDocument document : documents) {
+            if (!removed.contains(document.getId())) {
+                live.add(document);
+            }
+        }
+        repaired.sync(() -> live);
+        repaired.flush().get();
+        assertEquals("items after sync", live.size(), repaired.getDocumentCount());
+        assertTrue("repaired index answers differently", sameHits(before, repaired.search(queries.get(0), LIMIT)));
+        report.append(String.format(Locale.US, "reopen %.0f ms; damaged segment dropped (%d items left), sync "
+            + "restored %d items%n", reopenMillis, afterDamage, repaired.getDocumentCount()));
+        report.append(repaired);
+        repaired.close();
+        System.out.println(report);
+    }
+
+    /**
+     * Times every query twice and reports the second round, failing if its p99 reaches {@link #MAX_P99_NANOS}
+     */
+    private static String latency(LibraryIndex index, List<String> queries) {
+        long[] nanos = new long[queries.size()];
+        int hits = 0;
+        for (int round = 0; round < 2; round++) {
+            for (int q = 0; q < queries.size(); q++) {
+                long start = System.nanoTime();
+                hits += index.search(queries.get(q), LIMIT).size();
+                nanos[q] = System.nanoTime() - start;
+            }
+        }
+        assertTrue("no hits at all", hits > 0);
+        Arrays.sort(nanos);
+        long p99 = nanos[(int) (nanos.length * 0.99)];
+        String summary = String.format(Locale.US, "%d queries, p50 %.2f ms, p99 %.2f ms, max %.2f ms", nanos.length,
+            nanos[nanos.length / 2] / 1e6, p99 / 1e6, nanos[nanos.length - 1] / 1e6);
+        assertTrue("query latency over budget: " + summary, p99 < MAX_P99_NANOS);
+        return summary;
+    }
+
+    /**
+     * Hits must carry the reference's scores, in order, and nothing left out may score higher than the
+     * last hit returned
+     */
+    private static int compare(LibraryIndex index, Reference reference, List<String> queries) {
+        int compared = 0;
+        for (String query : queries) {
+            Map<String, Float> expected = reference.score(query);
+            List<Float> ranked = new ArrayList<>(expected.values());
+            ranked.sort((a, b) -> Float.compare(b, a));
+            List<SearchHit> hits = index.search(query, LIMIT);
+            assertEquals("wrong hit count for " + query, Math.min(LIMIT, ranked.size()), hits.size());
+            for (int i = 0; i < hits.size(); i++) {
+                SearchHit hit = hits.get(i);
+                Float score = expected.get(hit.getId());
+                assertNotNull("unexpected hit " + hit + " for " + query, score);
+                assertTrue("wrong score for " + hit + " in " + query, close(score, hit.getScore()));
+                assertTrue("wrong rank " + i + " for " + query, close(ranked.get(i), hit.getScore()));
+            }
+            compared++;
+        }
+        return compared;
+    }
+
+    /**
+     * Inflected and decomposed spellings of a Bengali word must find what the word itself finds
+     */
+    private static void bengali(LibraryIndex index, Random random, List<LibraryDocument> documents,
+                                StringBuilder report) {
+        int checked = 0;
+        int inflectedFound = 0;
+        while (checked < 500) {
+            LibraryDocument document = documents.get(random.nextInt(documents.size()));
+            String title = document.getTitle();
+            if (title == null || title.charAt(0) < '\u0980' || title.charAt(0) > '\u09FF') {
+                continue;
+            }
+            String[] words = title.split(" ");
+            String word = words[random.nextInt(words.length)];
+            if (!TextTokenizer.tokenize(word).equals(Collections.singletonList(SearchText.normalize(word)))) {
+                // Already inflected
+                continue;
+            }
+            List<SearchHit> plain = index.search(word, LIMIT);
+            String inflected = word + BENGALI_SUFFIXES[random.nextInt(BENGALI_SUFFIXES.length)];
+            if (sameHits(plain, index.search(inflected, LIMIT))) {
+                inflectedFound++;
+            }
+            String typed = Normalizer.normalize(word, Normalizer.Form.NFD);
+            assertTrue("decomposed " + word + " finds other items", sameHits(plain, index.search(typed, LIMIT)));
+            checked++;
+        }
+        report.append(String.format(Locale.US, "Bengali: %d of %d inflected title words find the same items as "
+            + "the word, all %d decomposed spellings do%n", inflectedFound, checked, checked));
+    }
+
+    private static List<String> queries(Random random, List<LibraryDocument> documents) {
+        List<String> queries = new ArrayList<>();
+        while (queries.size() < QUERIES) {
+            LibraryDocument document = documents.get(random.nextInt(documents.size()));
+            String source = random.nextInt(3) == 0 && document.getDescription() != null
+                ? document.getDescription() : document.getTitle();
+            String[] words = source.split(" ");
+            int length = 1 + random.nextInt(3);
+            int from = random.nextInt(Math.max(1, words.length - length));
+            StringBuilder query = new StringBuilder();
+            for (int w = from; w < Math.min(words.length, from + length); w++) {
+                query.append(query.length() > 0 ? " " : "").append(words[w]);
+            }
+            queries.add(query.toString());
+        }
+        return queries;
+    }
+
+    private static LibraryDocument document(Random random, String id, String[] latinWords, String[] bengaliWords,
+                                            String titlePrefix) {
+        boolean bengali = random.nextInt(3) == 0;
+        String[] words = bengali ? bengaliWords : latinWords;
+        String title = titlePrefix + text(random, words, 3 + random.nextInt(8), bengali);
+        String channel = text(random, words, 1 + random.nextInt(3), bengali);
+        String description = text(random, words, 15 + random.nextInt(50), bengali);
+        String captions = random.nextInt(4) == 0 ? text(random, words, 150 + random.nextInt(450), bengali) : null;
+        return new LibraryDocument(id, title, channel, description, captions);
+    }
+
+    /**
+     * Words drawn with a skew, so a few are in most items and most are rare, like real text
+     */
+    private static String text(Random random, String[] words, int count, boolean bengali) {
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            if (i > 0) {
+                text.append(' ');
+            }
+            text.append(words[(int) (words.length * Math.pow(random.nextDouble(), 3))]);
+            if (bengali && random.nextInt(6) == 0) {
+                text.append(BENGALI_SUFFIXES[random.nextInt(BENGALI_SUFFIXES.length)]);
+            }
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFC);
+    }
+
+    private static String[] vocabulary(Random random, int size, boolean bengali) {
+        Set<String> words = new LinkedHashSet<>();
+        while (words.size() < size) {
+            StringBuilder word = new StringBuilder();
+            int syllables = 1 + random.nextInt(bengali ? 3 : 4);
+            for (int s = 0; s < syllables; s++) {
+                if (bengali) {
+                    word.append(BENGALI_CONSONANTS[random.nextInt(BENGALI_CONSONANTS.length)])
+                        .append(BENGALI_VOWEL_SIGNS[random.nextInt(BENGALI_VOWEL_SIGNS.length)]);
+                } else {
+                    word.append(LATIN_SYLLABLES[random.nextInt(LATIN_SYLLABLES.length)]);
+                }
+            }
+            String folded = TextTokenizer.tokenize(word).isEmpty() ? "" : TextTokenizer.tokenize(word).get(0);
+            // Keep only words the tokenizer leaves alone, so the reference and the index see the same terms
+            if (folded.equals(SearchText.normalize(word))) {
+                words.add(word.toString());
+            }
+        }
+        return words.toArray(new String[0]);
+    }
+
+    private static boolean sameHits(List<SearchHit> a, List<SearchHit> b) {
+        if (a.size() != b.size()) {
+            return false;
+        }
+        for (int i = 0; i < a.size(); i++) {
+            if (!a.get(i).getId().equals(b.get(i).getId()) || !close(a.get(i).getScore(), b.get(i).getScore())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean close(float a, float b) {
+        return Math.abs(a - b) <= 1e-4f * Math.max(1, Math.abs(a));
+    }
+
+    private static File newestSegment(File directory) throws IOException {
+        File newest = null;
+        for (File file : directory.listFiles()) {
+            if (file.getName().startsWith("segment-")
+                    && (newest == null || segmentNumber(file) > segmentNumber(newest))) {
+                newest = file;
+            }
+        }
+        if (newest == null) {
+            throw new IOException("No segment in " + directory);
+        }
+        return newest;
+    }
+
+    private static long segmentNumber(File file) {
+        return Long.parseLong(file.getName().substring("segment-".length()));
+    }
+
+    private static long utf8Length(String text) {
+        return text != null ? text.getBytes(StandardCharsets.UTF_8).length : 0;
+    }
+
+    private static void deleteTree(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child : children) {
+                deleteTree(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Cannot delete " + file);
+        }
+    }
+}
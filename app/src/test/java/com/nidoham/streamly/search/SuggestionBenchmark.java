@@ -0,0 +1,276 @@
+package com.nidoham.streamly.search;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import com.nidoham.streamly.Benchmark;
+import com.nidoham.streamly.task.SerialExecutor;
+import com.nidoham.streamly.task.TaskPriority;
+import com.nidoham.streamly.task.TaskScheduler;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.Set;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Measures {@link SuggestionProvider} with 100k terms, a third of them Bengali: a full build, small
+ * incremental batches against rebuilding from scratch, per-keystroke latency while typing words
+ * keystroke by keystroke, and heap footprint. Bengali words are typed the way keyboards emit them,
+ * e.g. the vowel sign O as E followed by AA, while the stored titles are precomposed (NFC), and every
+ * keystroke is checked to still find its word; a plain lowercase prefix match on the same text is
+ * reported next to it. Results are compared with a brute-force scan of every term.
+ */
+@Category(Benchmark.class)
+public class SuggestionBenchmark {
+
+    private static final int TERMS = 100_000;
+    private static final int LIMIT = 8;
+    private static final int TYPED_WORDS = 5_000;
+    private static final int CHECKED_QUERIES = 400;
+    private static final int BATCHES = 50;
+    private static final int BATCH_TERMS = 20;
+
+    private static final String[] LATIN_SYLLABLES = {"ka", "lo", "mi", "ra", "ne", "so", "tu", "vi", "ber", "dan",
+        "fel", "gor", "hin", "jas", "lum", "mor", "pex", "qua", "rin", "sta", "tor", "ul", "wen", "xi", "yor", "zel"};
+    // Consonants, some with a nukta precomposed (RRA, YYA), as text on the web usually has them
+    private static final String[] BENGALI_CONSONANTS = {"\u0995", "\u0996", "\u0997", "\u099A", "\u099C", "\u099F",
+        "\u09A1", "\u09A4", "\u09A6", "\u09A8", "\u09AA", "\u09AC", "\u09AD", "\u09AE", "\u09B0", "\u09B2", "\u09B6",
+        "\u09B8", "\u09B9", "\u09DC", "\u09DF"};
+    // Inherent vowel, AA, I, II, U, E, O and AU; O and AU are single precomposed code points
+    private static final String[] BENGALI_VOWEL_SIGNS = {"", "\u09BE", "\u09BF", "\u09C0", "\u09C1", "\u09C7",
+        "\u09CB", "\u09CC"};
+
+    private TaskScheduler scheduler;
+
+    @Before
+    public void setUp() {
+        scheduler = new TaskScheduler(2);
+    }
+
+    @After
+    public void tearDown() {
+        scheduler.shutdown();
+    }
+
+    @Test
+    public void suggestsAsAFullScanWhileTypingBengaliAndLatin() throws Exception {
+        int termCount = TERMS;
+        StringBuilder report = new StringBuilder();
+        Random random = new Random(7);
+        List<String> texts = new ArrayList<>(termCount);
+        Set<String> keys = new HashSet<>();
+        while (texts.size() < termCount) {
+            String text = random.nextInt(3) == 0 ? bengaliTerm(random) : latinTerm(random);
+            if (keys.add(SearchText.normalize(text))) {
+                texts.add(text);
+            }
+        }
+        keys.clear();
+        SuggestionKind[] kinds = SuggestionKind.values();
+        int[] uses = new int[termCount];
+        SuggestionKind[] termKinds = new SuggestionKind[termCount];
+        for (int i = 0; i < termCount; i++) {
+            // A long tail: most terms were used once, a few very often
+            uses[i] = 1 + (int) Math.min(500, Math.pow(random.nextDouble(), -1.5) - 1);
+            termKinds[i] = kinds[random.nextInt(kinds.length)];
+        }
+
+        SerialExecutor executor = new SerialExecutor(scheduler, TaskPriority.MAINTENANCE);
+        SuggestionProvider provider = new SuggestionProvider(executor, 10_000);
+        long start = System.nanoTime();
+        for (int i = 0; i < termCount; i++) {
+            provider.record(texts.get(i), termKinds[i], uses[i]);
+        }
+        provider.awaitFlush();
+        double buildMillis = (System.nanoTime() - start) / 1e6;
+        assertEquals("indexed terms", termCount, provider.size());
+        report.append(String.format(Locale.US, "build %d terms (%d keys): %.0f ms, ~%d KB with UTF-16 strings "
+                + "(%.0f bytes per term)%n", termCount, provider.getKeyCount(), buildMillis,
+            provider.estimateBytes() / 1024, (double) provider.estimateBytes() / termCount));
+
+        incremental(provider, texts, random, report);
+        checkAgainstScan(provider, random, report);
+        typing(provider, texts, random, report);
+        report.append(provider);
+        System.out.println(report);
+    }
+
+    /**
+     * Small batches go into the delta, compared with building everything again
+     */
+    private static void incremental(SuggestionProvider provider, List<String> texts, Random random,
+                                    StringBuilder report) throws Exception {
+        long batchNanos = 0;
+        for (int b = 0; b < BATCHES; b++) {
+            for (int i = 0; i < BATCH_TERMS; i++) {
+                // Half new queries, half reuses of known terms that must move up
+                String text = i % 2 == 0 ? latinTerm(random) + " " + b : texts.get(random.nextInt(texts.size()));
+                provider.record(text, SuggestionKind.QUERY);
+            }
+            long start = System.nanoTime();
+            provider.awaitFlush();
+            batchNanos += System.nanoTime() - start;
+        }
+        List<Suggestion> all = new ArrayList<>();
+        for (String text : texts) {
+            all.add(new Suggestion(text, SearchText.normalize(text), SuggestionKind.WATCHED, 1));
+        }
+        long start = System.nanoTime();
+        SuggestionIndex rebuilt = SuggestionIndex.build(all);
+        double rebuildMillis = (System.nanoTime() - start) / 1e6;
+        assertEquals("rebuild lost terms", texts.size(), rebuilt.size());
+        report.append(String.format(Locale.US, "batch of %d terms: %.2f ms incremental vs %.0f ms full rebuild%n",
+            BATCH_TERMS, batchNanos / 1e6 / BATCHES, rebuildMillis));
+
+        // Enough new terms to push the delta past its share of the base
+        int burst = provider.size() / 8 + 1;
+        for (int i = 0; i < burst; i++) {
+            provider.record(latinTerm(random) + " x" + i, SuggestionKind.CHANNEL);
+        }
+        start = System.nanoTime();
+        provider.awaitFlush();
+        report.append(String.format(Locale.US, "burst of %d new terms merged into the base: %.0f ms%n", burst,
+            (System.nanoTime() - start) / 1e6));
+    }
+
+    /**
+     * Types words keystroke by keystroke and times every suggestion lookup
+     */
+    private static void typing(SuggestionProvider provider, List<String> texts, Random random, StringBuilder report) {
+        int bengaliKeystrokes = 0;
+        int naiveFound = 0;
+        List<long[]> runs = new ArrayList<>();
+        for (int round = 0; round < 2; round++) {
+            long[] nanos = new long[TYPED_WORDS * 40];
+            int samples = 0;
+            for (int w = 0; w < TYPED_WORDS; w++) {
+                String text = texts.get(random.nextInt(texts.size()));
+                String[] words = text.split(" ");
+                String word = words[random.nextInt(words.length)];
+                // Keyboards send decomposed vowel signs and nuktas one key at a time
+                String keystrokes = Normalizer.normalize(word, Normalizer.Form.NFD);
+                boolean bengali = word.charAt(0) >= '\u0980' && word.charAt(0) <= '\u09FF';
+                for (int typed = 1; typed <= keystrokes.length() && samples < nanos.length; typed++) {
+                    String input = keystrokes.substring(0, typed);
+                    long start = System.nanoTime();
+                    List<Suggestion> suggestions = provider.suggest(input, LIMIT);
+                    nanos[samples++] = System.nanoTime() - start;
+                    assertFalse("nothing for " + input, suggestions.isEmpty());
+                    if (round == 1 && bengali) {
+                        bengaliKeystrokes++;
+                        if (word.toLowerCase(Locale.ROOT).startsWith(input.toLowerCase(Locale.ROOT))) {
+                            naiveFound++;
+                        }
+                        assertTrue("folded keystrokes of " + word + " do not prefix it",
+                            SearchText.normalize(word).startsWith(SearchText.normalizePrefix(input)));
+                    }
+                }
+            }
+            runs.add(Arrays.copyOf(nanos, samples));
+        }
+        long[] nanos = runs.get(1);
+        Arrays.sort(nanos);
+        report.append(String.format(Locale.US,
+            "per keystroke over %d lookups: p50 %.1f us, p99 %.1f us, p99.9 %.1f us, max %.0f us%n", nanos.length,
+            nanos[nanos.length / 2] / 1e3, nanos[(int) (nanos.length * 0.99)] / 1e3,
+            nanos[(int) (nanos.length * 0.999)] / 1e3, nanos[nanos.length - 1] / 1e3));
+        report.append(String.format(Locale.US, "Bengali keystrokes still matching their word: %d of %d folded, "
+            + "%d of %d with a plain prefix match%n", bengaliKeystrokes, bengaliKeystrokes, naiveFound,
+            bengaliKeystrokes));
+    }
+
+    /**
+     * Compares results with scanning every term: same scores in the same order, and every term
+     * scoring above the last one returned is returned
+     */
+    private static void checkAgainstScan(SuggestionProvider provider, Random random, StringBuilder report) {
+        List<Suggestion> everything = provider.allTerms();
+        int checked = 0;
+        for (int q = 0; q < CHECKED_QUERIES; q++) {
+            Suggestion target = everything.get(random.nextInt(everything.size()));
+            String[] words = target.getKey().split(" ");
+            String word = words[random.nextInt(words.length)];
+            String prefix = word.substring(0, 1 + random.nextInt(Math.min(4, word.length())));
+            List<Suggestion> expected = new ArrayList<>();
+            for (Suggestion term : everything) {
+                if (term.getKey().startsWith(prefix) || term.getKey().contains(" " + prefix)) {
+                    expected.add(term);
+                }
+            }
+            expected.sort((a, b) -> Integer.compare(b.getScore(), a.getScore()));
+            List<Suggestion> actual = provider.suggest(prefix, LIMIT);
+            assertEquals("wrong count for " + prefix, Math.min(LIMIT, expected.size()), actual.size());
+            for (int i = 0; i < actual.size(); i++) {
+                assertEquals("wrong ranking for " + prefix, expected.get(i).getScore(), actual.get(i).getScore());
+            }
+            int last = actual.get(actual.size() - 1).getScore();
+            Set<String> returned = new HashSet<>();
+            for (Suggestion suggestion : actual) {
+                returned.add(suggestion.getKey());
+            }
+            for (Suggestion term : expected) {
+                assertTrue("missed " + term + " for " + prefix,
+                    term.getScore() <= last || returned.contains(term.getKey()));
+            }
+            checked++;
+        }
+        report.append(String.format(Locale.US, "%d prefix queries identical to a full scan%n", checked));
+    }
+
+    private static String latinTerm(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 1 + random.nextInt(5);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(random.nextInt(10) == 0 ? " - " : " ");
+            }
+            int syllables = 1 + random.nextInt(3);
+            int wordStart = text.length();
+            for (int s = 0; s < syllables; s++) {
+                text.append(LATIN_SYLLABLES[random.nextInt(LATIN_SYLLABLES.length)]);
+            }
+            if (random.nextInt(3) == 0) {
+                text.setCharAt(wordStart, Character.toUpperCase(text.charAt(wordStart)));
+            }
+            if (random.nextInt(20) == 0) {
+                text.append('\u00E9');
+            }
+        }
+        return text.toString();
+    }
+
+    private static String bengaliTerm(Random random) {
+        StringBuilder text = new StringBuilder();
+        int words = 1 + random.nextInt(4);
+        for (int w = 0; w < words; w++) {
+            if (w > 0) {
+                text.append(' ');
+            }
+            int syllables = 1 + random.nextInt(3);
+            for (int s = 0; s < syllables; s++) {
+                text.append(BENGALI_CONSONANTS[random.nextInt(BENGALI_CONSONANTS.length)]);
+                if (random.nextInt(8) == 0) {
+                    // A conjunct: virama and a second consonant
+                    text.append('\u09CD').append(BENGALI_CONSONANTS[random.nextInt(BENGALI_CONSONANTS.length - 2)]);
+                }
+                text.append(BENGALI_VOWEL_SIGNS[random.nextInt(BENGALI_VOWEL_SIGNS.length)]);
+            }
+            if (random.nextInt(10) == 0) {
+                text.append('\u09CE');
+            }
+        }
+        if (random.nextInt(8) == 0) {
+            text.append(" \u09E8\u09E6\u09E8").append((char) ('\u09E6' + random.nextInt(10)));
+        }
+        return Normalizer.normalize(text, Normalizer.Form.NFC);
+    }
+}
@@ -0,0 +1,116 @@
+package com.nidoham.streamly.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import org.junit.Test;
+
+public class SplashGateTest {
+
+    private static final long MIN = 300;
+    private static final long MAX = 2000;
+
+    /**
+     * Fake looper: delayed actions run when the test advances the clock past their due time
+     */
+    private static final class FakeScheduler implements SplashGate.Scheduler {
+        long now = 0;
+        final List<long[]> due = new ArrayList<>();
+        final List<Runnable> actions = new ArrayList<>();
+
+        @Override
+        public void postDelayed(Runnable action, long delayMillis) {
+            due.add(new long[] {now + delayMillis});
+            actions.add(action);
+        }
+
+        @Override
+        public void cancel(Runnable action) {
+            for (int i = actions.size() - 1; i >= 0; i--) {
+                if (actions.get(i) == action) {
+                    actions.remove(i);
+                    due.remove(i);
+                }
+            }
+        }
+
+        void advanceTo(long time) {
+            now = time;
+            Iterator<long[]> times = due.iterator();
+            Iterator<Runnable> runs = actions.iterator();
+            List<Runnable> ready = new ArrayList<>();
+            while (times.hasNext()) {
+                long at = times.next()[0];
+                Runnable action = runs.next();
+                if (at <= time) {
+                    times.remove();
+                    runs.remove();
+                    ready.add(action);
+                }
+            }
+            for (Runnable action : ready) {
+                action.run();
+            }
+        }
+    }
+
+    private final FakeScheduler scheduler = new FakeScheduler();
+    private int releases = 0;
+    private final SplashGate gate = new SplashGate(scheduler, () -> scheduler.now, MIN, MAX, () -> releases++);
+
+    @Test
+    public void timeoutReleasesWhenStartupNeverFinishes() {
+        gate.start();
+        scheduler.advanceTo(MAX - 1);
+        assertFalse(gate.isReleased());
+        scheduler.advanceTo(MAX);
+        assertTrue(gate.isReleased());
+        assertEquals(1, releases);
+    }
+
+    @Test
+    public void readyAfterMinimumReleasesAtOnce() {
+        gate.start();
+        scheduler.advanceTo(800);
+        gate.onCriticalReady();
+        assertEquals(1, releases);
+        // The timeout was cancelled, so the hand-off does not happen twice
+        scheduler.advanceTo(MAX);
+        assertEquals(1, releases);
+        assertTrue(scheduler.actions.isEmpty());
+    }
+
+    @Test
+    public void readyBeforeMinimumWaitsForIt() {
+        gate.start();
+        scheduler.advanceTo(100);
+        gate.onCriticalReady();
+        assertFalse(gate.isReleased());
+        scheduler.advanceTo(MIN - 1);
+        assertFalse(gate.isReleased());
+        scheduler.advanceTo(MIN);
+        assertEquals(1, releases);
+        scheduler.advanceTo(MAX);
+        assertEquals(1, releases);
+    }
+
+    @Test
+    public void readyAfterTimeoutIsIgnored() {
+        gate.start();
+        scheduler.advanceTo(MAX);
+        gate.onCriticalReady();
+        assertEquals(1, releases);
+    }
+
+    @Test
+    public void cancelDropsTheTimeout() {
+        gate.start();
+        gate.cancel();
+        scheduler.advanceTo(MAX);
+        assertFalse(gate.isReleased());
+    }
+}
@@ -0,0 +1,83 @@
+package com.nidoham.streamly.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import org.junit.Test;
+
+public class StartupGraphTest {
+
+    static StartupTask task(String name, boolean critical, String... dependencies) {
+        return new StartupTask(name, false, critical, dependencies) {
+            @Override
+            public void run() {
+            }
+        };
+    }
+
+    @Test
+    public void ordersEveryTaskAfterItsDependencies() {
+        StartupGraph graph = new StartupGraph(Arrays.asList(
+            task("ui", true, "prefs", "fonts"),
+            task("fonts", false),
+            task("prefs", false, "disk"),
+            task("disk", false)));
+
+        List<String> order = new ArrayList<>();
+        for (StartupTask task : graph.getTopologicalOrder()) {
+            order.add(task.getName());
+        }
+        assertEquals(4, order.size());
+        for (StartupTask task : graph.getTopologicalOrder()) {
+            for (String dependency : task.getDependencies()) {
+                assertTrue(dependency + " before " + task.getName(),
+                    order.indexOf(dependency) < order.indexOf(task.getName()));
+            }
+        }
+    }
+
+    @Test
+    public void rejectsCycles() {
+        try {
+            new StartupGraph(Arrays.asList(task("a", false, "c"), task("b", false, "a"), task("c", false, "b"),
+                task("root", false)));
+            fail("cycle accepted");
+        } catch (IllegalArgumentException expected) {
+            assertTrue(expected.getMessage(), expected.getMessage().contains("[a, b, c]"));
+        }
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsSelfDependency() {
+        new StartupGraph(Arrays.asList(task("a", false, "a")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownDependencies() {
+        new StartupGraph(Arrays.asList(task("a", false, "missing")));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsDuplicateNames() {
+        new StartupGraph(Arrays.asList(task("a", false), task("a", true)));
+    }
+
+    @Test
+    public void criticalClosureIncludesTransitiveDependencies() {
+        StartupGraph graph = new StartupGraph(Arrays.asList(
+            task("disk", false),
+            task("prefs", false, "disk"),
+            task("ui", true, "prefs"),
+            task("fonts", false),
+            task("analytics", false, "prefs")));
+
+        assertEquals(new HashSet<>(Arrays.asList("ui", "prefs", "disk")), graph.getCriticalClosure());
+        assertEquals(Arrays.asList(graph.getTask("prefs")), graph.getDependents("disk"));
+        assertEquals(2, graph.getDependents("prefs").size());
+    }
+}
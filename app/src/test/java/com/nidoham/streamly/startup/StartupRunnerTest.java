@@ -0,0 +1,135 @@
+package com.nidoham.streamly.startup;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import org.junit.Test;
+
+public class StartupRunnerTest {
+
+    private final List<String> ran = Collections.synchronizedList(new ArrayList<>());
+
+    private StartupTask task(String name, boolean critical, String... dependencies) {
+        return new StartupTask(name, false, critical, dependencies) {
+            @Override
+            public void run() {
+                ran.add(getName());
+            }
+        };
+    }
+
+    private StartupTask failing(String name, String... dependencies) {
+        return new StartupTask(name, false, false, dependencies) {
+            @Override
+            public void run() {
+                throw new IllegalStateException("broken " + getName());
+            }
+        };
+    }
+
+    private static final class RecordingListener implements StartupRunner.Listener {
+        StartupTimings critical;
+        StartupTimings all;
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        public void onCriticalTasksFinished(StartupTimings timings) {
+            critical = timings;
+            events.add("critical");
+        }
+
+        @Override
+        public void onAllTasksFinished(StartupTimings timings) {
+            all = timings;
+            events.add("all");
+        }
+    }
+
+    @Test
+    public void runsTasksInDependencyOrder() {
+        StartupGraph graph = new StartupGraph(Arrays.asList(
+            task("ui", true, "prefs"), task("prefs", false, "disk"), task("disk", false)));
+        RecordingListener listener = new RecordingListener();
+        new StartupRunner(graph, Runnable::run, Runnable::run, listener).start();
+
+        assertEquals(Arrays.asList("disk", "prefs", "ui"), ran);
+        assertEquals(Arrays.asList("critical", "all"), listener.events);
+    }
+
+    @Test
+    public void skipsDependentsOfFailedTasks() {
+        StartupGraph graph = new StartupGraph(Arrays.asList(
+            failing("prefs"), task("ui", false, "prefs"), task("theme", false, "ui"), task("fonts", false)));
+        RecordingListener listener = new RecordingListener();
+        new StartupRunner(graph, Runnable::run, Runnable::run, listener).start();
+
+        assertEquals(Collections.singletonList("fonts"), ran);
+        StartupTimings timings = listener.all;
+        assertNotNull(timings);
+        assertEquals(StartupTimings.Status.FAILED, timings.get("prefs").status);
+        assertTrue(timings.get("prefs").error instanceof IllegalStateException);
+        assertEquals(StartupTimings.Status.SKIPPED, timings.get("ui").status);
+        assertEquals(StartupTimings.Status.SKIPPED, timings.get("theme").status);
+        assertEquals(StartupTimings.Status.COMPLETED, timings.get("fonts").status);
+    }
+
+    @Test
+    public void reportsCriticalBeforeSlowOptionalWork() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        StartupTask slow = new StartupTask("slow", false, false) {
+            @Override
+            public void run() throws Exception {
+                release.await(10, TimeUnit.SECONDS);
+            }
+        };
+        StartupGraph graph = new StartupGraph(Arrays.asList(task("prefs", false), task("ui", true, "prefs"), slow));
+        RecordingListener listener = new RecordingListener();
+        ExecutorService workers = Executors.newFixedThreadPool(2);
+        ExecutorService main = Executors.newSingleThreadExecutor();
+        try {
+            new StartupRunner(graph, main, workers, listener).start();
+            waitFor(main, () -> listener.critical != null);
+            assertNull(listener.all);
+            assertEquals(2, listener.critical.getCriticalPath().size());
+            assertEquals("prefs", listener.critical.getCriticalPath().get(0).name);
+            assertEquals("ui", listener.critical.getCriticalPath().get(1).name);
+
+            release.countDown();
+            waitFor(main, () -> listener.all != null);
+            assertEquals(Arrays.asList("critical", "all"), listener.events);
+        } finally {
+            workers.shutdown();
+            main.shutdown();
+        }
+    }
+
+    @Test
+    public void finishesImmediatelyWithoutCriticalTasks() {
+        RecordingListener listener = new RecordingListener();
+        new StartupRunner(new StartupGraph(Collections.<StartupTask>emptyList()), Runnable::run, Runnable::run,
+            listener).start();
+        assertEquals(Arrays.asList("critical", "all"), listener.events);
+    }
+
+    /**
+     * Polls the condition on the main executor, where the listener writes its fields
+     */
+    private static void waitFor(ExecutorService main, Callable<Boolean> condition) throws Exception {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        while (!main.submit(condition).get()) {
+            assertTrue("timed out", System.nanoTime() < deadline);
+            Thread.sleep(5);
+        }
+    }
+}
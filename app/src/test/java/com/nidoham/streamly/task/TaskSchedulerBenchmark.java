@@ -0,0 +1,291 @@
+package com.nidoham.streamly.task;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import com.nidoham.streamly.Benchmark;
+import com.nidoham.streamly.metrics.LatencyHistogram;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.experimental.categories.Category;
+
+/**
+ * Measures {@link TaskScheduler} against a FIFO thread pool of the same size. A burst of prefetch and
+ * maintenance work is queued, then a fetch and two image decodes arrive every 15 ms; the wait before
+ * each starts is reported per lane. Only this part is a {@link Benchmark}. Tasks sleep rather than spin, as the I/O they stand for would, so
+ * the numbers do not depend on the cores of the machine. Also checks that subtasks forked by one
+ * worker are spread by stealing, that a cancelled scope drops its queued tasks and delivers nothing,
+ * and that queue depths return to zero under concurrent submits and cancels.
+ */
+public class TaskSchedulerBenchmark {
+
+    private static final int THREADS = 4;
+    private static final int PREFETCH_TASKS = 400;
+    private static final long PREFETCH_MILLIS = 5;
+    private static final int MAINTENANCE_TASKS = 40;
+    private static final long MAINTENANCE_MILLIS = 20;
+    private static final int ROUNDS = 100;
+    private static final long ROUND_MILLIS = 15;
+    private static final long FETCH_MILLIS = 2;
+    private static final long DECODE_MILLIS = 3;
+    private static final int SUBTASKS = 200;
+    private static final int STRESS_TASKS = 20_000;
+
+    @Test
+    @Category(Benchmark.class)
+    public void visibleWorkOvertakesQueuedBackgroundWork() throws Exception {
+        StringBuilder report = new StringBuilder();
+        // Once untimed, so class loading and compilation stay out of the measured run
+        measurePool(THREADS, new StringBuilder());
+        measureScheduler(THREADS, new StringBuilder());
+        LatencyHistogram[] pool = measurePool(THREADS, report);
+        LatencyHistogram[] scheduler = measureScheduler(THREADS, report);
+        System.out.print(report);
+        for (TaskPriority priority : new TaskPriority[] {TaskPriority.USER_VISIBLE, TaskPriority.VISIBLE_IMAGE}) {
+            long poolWait = pool[priority.ordinal()].getPercentileMicros(50);
+            long schedulerWait = scheduler[priority.ordinal()].getPercentileMicros(50);
+            assertTrue(priority + " waited " + schedulerWait + " us against " + poolWait + " us on a FIFO pool",
+                schedulerWait * 4 < poolWait);
+        }
+    }
+
+    @Test
+    public void forkedSubtasksAreStolen() throws Exception {
+        checkStealing(THREADS);
+    }
+
+    @Test
+    public void cancelledScopeDropsQueuedWorkAndDeliversNothing() throws Exception {
+        checkCancellation();
+    }
+
+    @Test
+    public void depthsReturnToZeroUnderConcurrentSubmitsAndCancels() throws Exception {
+        checkAccounting(THREADS);
+    }
+
+    /**
+     * @return Wait before start per lane, indexed by ordinal
+     */
+    private static LatencyHistogram[] measureScheduler(int threads, StringBuilder report) throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(threads);
+        List<Future<?>> all = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < MAINTENANCE_TASKS; i++) {
+            all.add(scheduler.submit(TaskPriority.MAINTENANCE, () -> sleep(MAINTENANCE_MILLIS)));
+        }
+        for (int i = 0; i < PREFETCH_TASKS; i++) {
+            all.add(scheduler.submit(TaskPriority.PREFETCH, () -> sleep(PREFETCH_MILLIS)));
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            all.add(scheduler.submit(TaskPriority.USER_VISIBLE, () -> sleep(FETCH_MILLIS)));
+            all.add(scheduler.submit(TaskPriority.VISIBLE_IMAGE, () -> sleep(DECODE_MILLIS)));
+            all.add(scheduler.submit(TaskPriority.VISIBLE_IMAGE, () -> sleep(DECODE_MILLIS)));
+            sleep(ROUND_MILLIS);
+        }
+        for (Future<?> future : all) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        scheduler.shutdown();
+        report.append(String.format(Locale.US, "scheduler, %d threads, all done in %d ms:%n", threads,
+            TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        LatencyHistogram[] waits = new LatencyHistogram[TaskPriority.values().length];
+        for (TaskPriority priority : TaskPriority.values()) {
+            waits[priority.ordinal()] = scheduler.getWaitTimes(priority);
+            report.append(String.format(Locale.US, "  %-13s max depth %3d, wait %s%n", priority,
+                scheduler.getMaxQueueDepth(priority), scheduler.getWaitTimes(priority).summary()));
+        }
+        return waits;
+    }
+
+    /**
+     * @return Wait before start per lane, indexed by ordinal
+     */
+    private static LatencyHistogram[] measurePool(int threads, StringBuilder report) throws Exception {
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new LinkedBlockingQueue<>());
+        LatencyHistogram[] waits = new LatencyHistogram[TaskPriority.values().length];
+        for (int i = 0; i < waits.length; i++) {
+            waits[i] = new LatencyHistogram();
+        }
+        List<Future<?>> all = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int i = 0; i < MAINTENANCE_TASKS; i++) {
+            all.add(submitTimed(pool, waits[TaskPriority.MAINTENANCE.ordinal()], MAINTENANCE_MILLIS));
+        }
+        for (int i = 0; i < PREFETCH_TASKS; i++) {
+            all.add(submitTimed(pool, waits[TaskPriority.PREFETCH.ordinal()], PREFETCH_MILLIS));
+        }
+        for (int round = 0; round < ROUNDS; round++) {
+            all.add(submitTimed(pool, waits[TaskPriority.USER_VISIBLE.ordinal()], FETCH_MILLIS));
+            all.add(submitTimed(pool, waits[TaskPriority.VISIBLE_IMAGE.ordinal()], DECODE_MILLIS));
+            all.add(submitTimed(pool, waits[TaskPriority.VISIBLE_IMAGE.ordinal()], DECODE_MILLIS));
+            sleep(ROUND_MILLIS);
+        }
+        for (Future<?> future : all) {
+            future.get();
+        }
+        long elapsed = System.nanoTime() - start;
+        pool.shutdown();
+        report.append(String.format(Locale.US, "FIFO pool, %d threads, all done in %d ms:%n", threads,
+            TimeUnit.NANOSECONDS.toMillis(elapsed)));
+        for (TaskPriority priority : TaskPriority.values()) {
+            report.append(String.format(Locale.US, "  %-13s wait %s%n", priority,
+                waits[priority.ordinal()].summary()));
+        }
+        return waits;
+    }
+
+    private static Future<?> submitTimed(ExecutorService pool, LatencyHistogram waits, long millis) {
+        long submitted = System.nanoTime();
+        return pool.submit(() -> {
+            waits.recordNanos(System.nanoTime() - submitted);
+            sleep(millis);
+        });
+    }
+
+    /**
+     * One task forks all subtasks onto its own deque; without stealing they would run one by one
+     */
+    private static void checkStealing(int threads) throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(threads);
+        CountDownLatch done = new CountDownLatch(SUBTASKS);
+        scheduler.submit(TaskPriority.USER_VISIBLE, () -> {
+            for (int i = 0; i < SUBTASKS; i++) {
+                scheduler.submit(TaskPriority.USER_VISIBLE, () -> {
+                    sleep(FETCH_MILLIS);
+                    done.countDown();
+                    return null;
+                });
+            }
+            return null;
+        });
+        assertTrue("forked subtasks did not finish", done.await(30, TimeUnit.SECONDS));
+        long stolen = scheduler.getStolenCount(TaskPriority.USER_VISIBLE);
+        scheduler.shutdown();
+        assertTrue("no subtask was stolen", threads == 1 || stolen > 0);
+    }
+
+    /**
+     * Cancels a scope on its callback thread while both workers are busy and its work is still queued
+     */
+    private static void checkCancellation() throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(2);
+        ExecutorService mainThread = Executors.newSingleThreadExecutor();
+        TaskScope scope = scheduler.newScope(mainThread);
+        CountDownLatch blocked = new CountDownLatch(2);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger delivered = new AtomicInteger();
+        AtomicInteger deliveredAfterCancel = new AtomicInteger();
+        for (int i = 0; i < 2; i++) {
+            scope.submit(TaskPriority.USER_VISIBLE, () -> {
+                blocked.countDown();
+                return release.await(10, TimeUnit.SECONDS);
+            }, result -> delivered.incrementAndGet());
+        }
+        assertTrue("workers did not start", blocked.await(10, TimeUnit.SECONDS));
+        List<Future<Integer>> queued = new ArrayList<>();
+        for (int i = 0; i < 1_000; i++) {
+            queued.add(scope.submit(TaskPriority.PREFETCH, () -> 1, result -> delivered.incrementAndGet()));
+        }
+        assertEquals("queued tasks", 1_000, scheduler.getQueueDepth(TaskPriority.PREFETCH));
+        int cancelled = mainThread.submit(() -> {
+            int count = scope.cancel();
+            // Anything delivered from here on reaches a listener of a cancelled scope
+            mainThread.execute(() -> deliveredAfterCancel.set(delivered.get()));
+            return count;
+        }).get();
+        Future<Integer> late = scope.submit(TaskPriority.USER_VISIBLE, () -> 1, result -> delivered.incrementAndGet());
+        release.countDown();
+        Thread.sleep(200);
+        mainThread.submit(() -> null).get();
+        assertEquals("cancelled tasks", 1_002, cancelled);
+        assertEquals("cancelled tasks still counted as queued", 0, scheduler.getQueueDepth(TaskPriority.PREFETCH));
+        assertEquals("listeners ran after cancel", 0, delivered.get());
+        assertEquals("listeners ran after cancel", 0, deliveredAfterCancel.get());
+        assertTrue("a cancelled scope accepted work", late.isCancelled());
+        assertEquals("a cancelled scope kept work", 0, scope.getPendingCount());
+        try {
+            queued.get(0).get();
+            fail("a cancelled task returned a result");
+        } catch (CancellationException expected) {
+            // The future reports the cancellation
+        }
+        scheduler.shutdown();
+        mainThread.shutdown();
+    }
+
+    /**
+     * Depth and counts must add up while several threads submit and cancel at once
+     */
+    private static void checkAccounting(int threads) throws Exception {
+        TaskScheduler scheduler = new TaskScheduler(threads);
+        TaskPriority[] priorities = TaskPriority.values();
+        int submitters = 4;
+        List<Thread> running = new ArrayList<>();
+        List<List<Future<Integer>>> futures = new ArrayList<>();
+        for (int t = 0; t < submitters; t++) {
+            List<Future<Integer>> mine = new ArrayList<>();
+            futures.add(mine);
+            int seed = t;
+            Thread thread = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < STRESS_TASKS / submitters; i++) {
+                    Future<Integer> future = scheduler.submit(priorities[random.nextInt(priorities.length)], () -> 1);
+                    mine.add(future);
+                    if (random.nextBoolean()) {
+                        mine.get(random.nextInt(mine.size())).cancel(false);
+                    }
+                }
+            });
+            running.add(thread);
+            thread.start();
+        }
+        for (Thread thread : running) {
+            thread.join();
+        }
+        int ran = 0;
+        int cancelled = 0;
+        for (List<Future<Integer>> mine : futures) {
+            for (Future<Integer> future : mine) {
+                if (future.isCancelled()) {
+                    cancelled++;
+                } else {
+                    ran += future.get();
+                }
+            }
+        }
+        long counted = 0;
+        for (TaskPriority priority : priorities) {
+            assertEquals(priority + " depth is not zero", 0, scheduler.getQueueDepth(priority));
+            counted += scheduler.getCompletedCount(priority) + scheduler.getCancelledCount(priority);
+        }
+        scheduler.shutdown();
+        // A task cancelled while running is counted both as completed and as cancelled
+        assertEquals("tasks lost", STRESS_TASKS, ran + cancelled);
+        assertTrue("tasks not counted", ran + cancelled <= counted);
+    }
+
+    private static Void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+}